@@ -74,6 +74,11 @@
 
     private ExtendedResolver headResolver;
 
+    /**
+     * The resolver which validates like this one but never asks the user.
+     */
+    private final Resolver nonInteractiveResolver = new NonInteractiveResolver();
+
     /**
      * Creates a new instance of this class. Tries to use the system's
      * default forwarders.
@@ -107,6 +112,11 @@ public ConfigurableDnssecResolver(ExtendedResolver headResolver)
         reset();
         Lookup.setDefaultResolver(this);
 
+        // answers cached so far did not pass validation
+        Cache cache = Lookup.getDefaultCache(DClass.IN);
+        if (cache instanceof DnsCache)
+            ((DnsCache) cache).setValidating(true);
+
         DnsUtilActivator.getNotificationService().
             registerDefaultNotificationForEvent(
                 ConfigurableDnssecResolver.EVENT_TYPE,
@@ -226,6 +236,19 @@ public Message send(Message query)
         return msg;
     }
 
+    /**
+     * Gets a resolver which validates the answers like this one but never
+     * notifies or asks the user, e.g. for the background refresh of the DNS
+     * cache. An answer which does not validate securely is rejected with a
+     * <tt>DnssecRuntimeException</tt>, as the user was not asked about it.
+     *
+     * @return the non-interactive resolver
+     */
+    public Resolver getNonInteractiveResolver()
+    {
+        return nonInteractiveResolver;
+    }
+
     /**
      * Defines the return code from the DNSSEC verification dialog.
      */
@@ -468,4 +491,83 @@ public void reset()
         if(logger.isTraceEnabled())
             logger.trace("Loaded trust anchors " + sb.toString());
     }
+
+    /**
+     * Resolver which validates the answers of the head resolver without the
+     * user's settings and dialogs. The settings are applied to the wrapping
+     * <tt>ConfigurableDnssecResolver</tt>.
+     */
+    private class NonInteractiveResolver
+        implements Resolver
+    {
+        /**
+         * Sends a query and returns the answer if it validated securely.
+         *
+         * @throws DnssecRuntimeException when the answer did not validate
+         *             securely.
+         */
+        public Message send(Message query)
+            throws IOException
+        {
+            SecureMessage msg
+                = new SecureMessage(
+                        ConfigurableDnssecResolver.super.send(query));
+
+            if (!msg.isSecure())
+                throw new DnssecRuntimeException(getExceptionMessage(msg));
+            return msg;
+        }
+
+        /**
+         * Not supported, the answers are only needed synchronously.
+         *
+         * @throws UnsupportedOperationException always
+         */
+        public Object sendAsync(Message query, ResolverListener listener)
+        {
+            throw new UnsupportedOperationException("sendAsync");
+        }
+
+        public void setPort(int port)
+        {
+            ConfigurableDnssecResolver.this.setPort(port);
+        }
+
+        public void setTCP(boolean flag)
+        {
+            ConfigurableDnssecResolver.this.setTCP(flag);
+        }
+
+        public void setIgnoreTruncation(boolean flag)
+        {
+            ConfigurableDnssecResolver.this.setIgnoreTruncation(flag);
+        }
+
+        public void setEDNS(int level)
+        {
+            ConfigurableDnssecResolver.this.setEDNS(level);
+        }
+
+        @SuppressWarnings("rawtypes")
+        public void setEDNS(int level, int payloadSize, int flags, List options)
+        {
+            ConfigurableDnssecResolver.this.setEDNS(
+                    level, payloadSize, flags, options);
+        }
+
+        public void setTSIGKey(TSIG key)
+        {
+            ConfigurableDnssecResolver.this.setTSIGKey(key);
+        }
+
+        public void setTimeout(int secs, int msecs)
+        {
+            ConfigurableDnssecResolver.this.setTimeout(secs, msecs);
+        }
+
+        public void setTimeout(int secs)
+        {
+            ConfigurableDnssecResolver.this.setTimeout(secs);
+        }
+    }
 }
@@ -0,0 +1,552 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.dns;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.util.Logger;
+
+import org.xbill.DNS.*;
+
+/**
+ * The process-wide DNS cache which is installed as the default cache of
+ * dnsjava, so that all providers share the answers of their lookups.
+ *
+ * <p>
+ * The caching itself (record TTLs and negative caching of NXDOMAIN and NODATA
+ * answers) is done by the dnsjava <tt>Cache</tt>. On top of it this class
+ * </p>
+ * <ul>
+ * <li>counts hits, negative hits and misses;</li>
+ * <li>refreshes answers in the background shortly before they expire if they
+ * are in active use, e.g. the SRV and A records of the registrars of the
+ * accounts, so that re-registrations do not wait for the resolver;</li>
+ * <li>does not serve answers obtained without validation once the DNSSEC
+ * resolver is in use, and only refreshes answers which validated securely in
+ * that case, through its non-interactive resolver, so that a background
+ * refresh never asks the user about an insecure answer.</li>
+ * </ul>
+ */
+public class DnsCache
+    extends Cache
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>DnsCache</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger = Logger.getLogger(DnsCache.class);
+
+    /**
+     * The interval in milliseconds at which answers are checked for refresh.
+     */
+    static final long PREFETCH_INTERVAL = 5000;
+
+    /**
+     * The part of its TTL an answer must have left for it not to be
+     * refreshed yet, in percent.
+     */
+    static final int PREFETCH_THRESHOLD = 10;
+
+    /**
+     * The time in milliseconds after its last use after which an answer is no
+     * longer considered in active use.
+     */
+    static final long IDLE_TIMEOUT = 10 * 60 * 1000;
+
+    /**
+     * The answers which may be refreshed, by name and type.
+     */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * The number of lookups answered with records.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of lookups answered with a cached NXDOMAIN or NODATA.
+     */
+    private final AtomicLong negativeHits = new AtomicLong();
+
+    /**
+     * The number of lookups which had to be sent to the resolver.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The number of answers refreshed in the background.
+     */
+    private final AtomicLong prefetches = new AtomicLong();
+
+    /**
+     * The question of the answer that {@link #addMessage(Message)} last did
+     * not return a response for on the current thread. <tt>Lookup</tt> follows
+     * such an answer up with a lookup of the same question, which was already
+     * counted as a miss and is not counted again. The next lookup of the
+     * thread clears it, whether it is the follow-up or not.
+     */
+    private final ThreadLocal<String> followUp = new ThreadLocal<String>();
+
+    /**
+     * Whether the answers are validated by the DNSSEC resolver.
+     */
+    private volatile boolean validating;
+
+    /**
+     * The executor which runs the background refresh or <tt>null</tt> if it is
+     * not running.
+     */
+    private ScheduledExecutorService prefetchExecutor;
+
+    /**
+     * Initializes a new <tt>DnsCache</tt> for the <tt>IN</tt> class.
+     */
+    public DnsCache()
+    {
+        super(DClass.IN);
+    }
+
+    /**
+     * Returns the cached answer for a name and type, counting the lookup as
+     * a hit or miss and marking the answer as in use. The lookup following up
+     * an answer of the resolver is not counted.
+     *
+     * @param name the name to look up
+     * @param type the type of the records to look up
+     * @param minCred the minimum credibility of the answer
+     * @return the cached answer
+     */
+    @Override
+    public SetResponse lookupRecords(Name name, int type, int minCred)
+    {
+        String key = key(name, type);
+        String followedUp = followUp.get();
+
+        if (followedUp != null)
+            followUp.remove();
+
+        SetResponse response = super.lookupRecords(name, type, minCred);
+
+        if (key.equals(followedUp))
+        {
+            // counted as a miss before the answer was added
+        }
+        else if (response.isSuccessful() || response.isCNAME()
+            || response.isDNAME())
+        {
+            hits.incrementAndGet();
+        }
+        else if (response.isNXDOMAIN() || response.isNXRRSET())
+        {
+            negativeHits.incrementAndGet();
+        }
+        else
+        {
+            misses.incrementAndGet();
+        }
+
+        synchronized (entries)
+        {
+            Entry entry = entries.get(key);
+
+            if (entry != null)
+                entry.lastUsed = System.currentTimeMillis();
+        }
+        return response;
+    }
+
+    /**
+     * Adds the answer of the resolver to the cache and remembers when it
+     * expires, so that it can be refreshed in time.
+     *
+     * @param in the answer of the resolver
+     * @return the cached answer for the question of <tt>in</tt>
+     */
+    @Override
+    public SetResponse addMessage(Message in)
+    {
+        SetResponse response = cacheMessage(in);
+        Record question = in.getQuestion();
+
+        // Lookup looks the question up again when no response is returned
+        if (response == null && question != null)
+            followUp.set(key(question.getName(), question.getType()));
+        return response;
+    }
+
+    /**
+     * Adds an answer of the resolver to the cache and remembers when it
+     * expires, so that it can be refreshed in time.
+     *
+     * @param in the answer of the resolver
+     * @return the cached answer for the question of <tt>in</tt>
+     */
+    private SetResponse cacheMessage(Message in)
+    {
+        SetResponse response = super.addMessage(in);
+        Record question = in.getQuestion();
+
+        if (question == null)
+            return response;
+
+        String key = key(question.getName(), question.getType());
+        long ttl = getAnswerTTL(in);
+
+        synchronized (entries)
+        {
+            if (ttl <= 0)
+            {
+                // negative answers and errors are not refreshed
+                entries.remove(key);
+            }
+            else
+            {
+                Entry entry = entries.get(key);
+                long now = System.currentTimeMillis();
+
+                if (entry == null)
+                {
+                    if (getMaxEntries() > 0
+                            && entries.size() >= getMaxEntries())
+                        return response;
+                    entry
+                        = new Entry(question.getName(), question.getType());
+                    entry.lastUsed = now;
+                    entries.put(key, entry);
+                }
+                entry.ttl = ttl * 1000;
+                entry.expires = now + entry.ttl;
+                entry.secure = in.getHeader().getFlag(Flags.AD);
+                entry.prefetching = false;
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Removes all answers from the cache.
+     */
+    @Override
+    public synchronized void clearCache()
+    {
+        super.clearCache();
+        synchronized (entries)
+        {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Sets whether the answers are validated by the DNSSEC resolver. The
+     * answers cached until the validation is enabled were not validated and
+     * are removed.
+     *
+     * @param validating <tt>true</tt> if the answers are validated by the
+     * DNSSEC resolver
+     */
+    public void setValidating(boolean validating)
+    {
+        if (validating && !this.validating)
+            clearCache();
+        this.validating = validating;
+    }
+
+    /**
+     * Starts refreshing the answers in active use in the background.
+     */
+    public synchronized void startPrefetch()
+    {
+        if (prefetchExecutor != null)
+            return;
+
+        prefetchExecutor
+            = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t
+                                = new Thread(
+                                        r,
+                                        DnsCache.class.getSimpleName());
+
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        prefetchExecutor.scheduleWithFixedDelay(
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        prefetch(
+                                getPrefetchResolver(),
+                                System.currentTimeMillis());
+                    }
+                },
+                PREFETCH_INTERVAL,
+                PREFETCH_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the resolver to refresh the answers with: the default resolver
+     * or, if it is the DNSSEC resolver, its non-interactive resolver, so that
+     * a background refresh never asks the user about an answer.
+     *
+     * @return the resolver to refresh the answers with
+     */
+    private static Resolver getPrefetchResolver()
+    {
+        Resolver resolver = Lookup.getDefaultResolver();
+
+        if (resolver instanceof ConfigurableDnssecResolver)
+        {
+            resolver
+                = ((ConfigurableDnssecResolver) resolver)
+                    .getNonInteractiveResolver();
+        }
+        return resolver;
+    }
+
+    /**
+     * Stops refreshing answers in the background.
+     */
+    public synchronized void stopPrefetch()
+    {
+        if (prefetchExecutor != null)
+        {
+            prefetchExecutor.shutdownNow();
+            prefetchExecutor = null;
+        }
+    }
+
+    /**
+     * Refreshes the answers which are in active use and have less than
+     * {@link #PREFETCH_THRESHOLD} percent of their TTL left, and forgets the
+     * answers which are no longer in use.
+     *
+     * @param resolver the resolver to send the queries to
+     * @param now the current time in milliseconds
+     * @return the number of refreshed answers
+     */
+    int prefetch(Resolver resolver, long now)
+    {
+        List<Entry> due = new ArrayList<Entry>();
+
+        synchronized (entries)
+        {
+            for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();)
+            {
+                Entry entry = i.next();
+
+                if (now - entry.lastUsed > IDLE_TIMEOUT)
+                {
+                    i.remove();
+                }
+                else if (!entry.prefetching
+                    && entry.expires > now
+                    && (entry.expires - now) * 100
+                        <= entry.ttl * PREFETCH_THRESHOLD
+                    && (entry.secure || !validating))
+                {
+                    entry.prefetching = true;
+                    due.add(entry);
+                }
+            }
+        }
+
+        int count = 0;
+
+        for (Entry entry : due)
+        {
+            try
+            {
+                Message query
+                    = Message.newQuery(
+                            Record.newRecord(entry.name, entry.type, DClass.IN));
+
+                cacheMessage(resolver.send(query));
+                prefetches.incrementAndGet();
+                count++;
+            }
+            catch (Exception e)
+            {
+                // the answer expires and is resolved by the next lookup
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug(
+                            "Failed to refresh " + entry.name + "/"
+                                + Type.string(entry.type),
+                            e);
+                }
+                synchronized (entries)
+                {
+                    entry.prefetching = false;
+                }
+            }
+        }
+
+        if (count > 0 && logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Refreshed " + count + " DNS answers; hits: " + getHits()
+                        + ", negative hits: " + getNegativeHits()
+                        + ", misses: " + getMisses());
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of lookups answered with cached records.
+     *
+     * @return the number of hits
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups answered with a cached NXDOMAIN or NODATA.
+     *
+     * @return the number of negative hits
+     */
+    public long getNegativeHits()
+    {
+        return negativeHits.get();
+    }
+
+    /**
+     * Returns the number of lookups which had to be sent to the resolver.
+     *
+     * @return the number of misses
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of answers refreshed in the background.
+     *
+     * @return the number of refreshed answers
+     */
+    public long getPrefetches()
+    {
+        return prefetches.get();
+    }
+
+    /**
+     * Returns the lowest TTL of the records answering the question of a
+     * message, capped by the maximum TTL of this cache.
+     *
+     * @param in the answer of the resolver
+     * @return the TTL in seconds or <tt>0</tt> if the message does not answer
+     * its question with records
+     */
+    private long getAnswerTTL(Message in)
+    {
+        if (in.getRcode() != Rcode.NOERROR)
+            return 0;
+
+        int type = in.getQuestion().getType();
+        long ttl = -1;
+
+        for (Record r : in.getSectionArray(Section.ANSWER))
+        {
+            if (r.getType() == type || r.getType() == Type.CNAME)
+            {
+                ttl = (ttl < 0) ? r.getTTL() : Math.min(ttl, r.getTTL());
+            }
+        }
+
+        int maxCache = getMaxCache();
+
+        if (ttl > 0 && maxCache >= 0)
+            ttl = Math.min(ttl, maxCache);
+        return Math.max(ttl, 0);
+    }
+
+    /**
+     * Returns the key of the answers for a name and type.
+     *
+     * @param name the name
+     * @param type the type
+     * @return the key
+     */
+    private static String key(Name name, int type)
+    {
+        return name.toString().toLowerCase() + "/" + type;
+    }
+
+    /**
+     * An answer which may be refreshed. Guarded by <tt>entries</tt>.
+     */
+    private static class Entry
+    {
+        /**
+         * The name of the question.
+         */
+        final Name name;
+
+        /**
+         * The type of the question.
+         */
+        final int type;
+
+        /**
+         * The TTL of the answer in milliseconds.
+         */
+        long ttl;
+
+        /**
+         * The time in milliseconds at which the answer expires.
+         */
+        long expires;
+
+        /**
+         * The time in milliseconds at which the answer was last looked up.
+         */
+        long lastUsed;
+
+        /**
+         * Whether the answer validated securely.
+         */
+        boolean secure;
+
+        /**
+         * Whether a refresh of the answer is in progress.
+         */
+        boolean prefetching;
+
+        /**
+         * Initializes a new <tt>Entry</tt>.
+         *
+         * @param name the name of the question
+         * @param type the type of the question
+         */
+        Entry(Name name, int type)
+        {
+            this.name = name;
+            this.type = type;
+        }
+    }
+}
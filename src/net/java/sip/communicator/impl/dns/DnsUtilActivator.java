@@ -61,6 +61,11 @@
     private static ResourceManagementService resourceService;
     private static BundleContext bundleContext;
 
+    /**
+     * The DNS cache shared by all lookups.
+     */
+    private static DnsCache dnsCache;
+
     /**
      * The address of the backup resolver we would use by default.
      */
@@ -124,6 +129,10 @@ public void start(BundleContext context)
 
         Lookup.setPacketLogger(new DnsJavaLogger());
 
+        dnsCache = new DnsCache();
+        Lookup.setDefaultCache(dnsCache, DClass.IN);
+        dnsCache.startPrefetch();
+
         if(loadDNSProxyForward())
         {
             // dns is forced to go through a proxy so skip any further settings
@@ -295,7 +304,7 @@ private static void logDNSServers()
     }
 
     /**
-     * Doesn't do anything.
+     * Stops the background refresh of the DNS cache.
      *
      * @param context The execution context of the bundle being stopped.
      * @throws Exception If this method throws an exception, the bundle is
@@ -306,6 +315,28 @@ private static void logDNSServers()
     public void stop(BundleContext context)
         throws Exception
     {
+        if (dnsCache != null)
+        {
+            dnsCache.stopPrefetch();
+            if (logger.isInfoEnabled())
+            {
+                logger.info("DNS cache hits: " + dnsCache.getHits()
+                    + ", negative hits: " + dnsCache.getNegativeHits()
+                    + ", misses: " + dnsCache.getMisses()
+                    + ", prefetches: " + dnsCache.getPrefetches());
+            }
+        }
+    }
+
+    /**
+     * Returns the DNS cache shared by all lookups.
+     *
+     * @return the shared <tt>DnsCache</tt> or <tt>null</tt> if the bundle has
+     * not been started
+     */
+    public static DnsCache getDnsCache()
+    {
+        return dnsCache;
     }
 
     /**
@@ -25,6 +25,7 @@
 import java.text.*;
 import java.util.*;
 import java.util.Map;
+import java.util.concurrent.*;
 import java.util.regex.*;
 
 import javax.swing.*;
@@ -151,6 +152,26 @@
         "([^<]*+)(?:<(?:[^>\"]*(?:\"[^\"]*+\"?)*)*+>?)?",
         Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
 
+    /**
+     * Precompiled matcher for the patterns of all replacement services. The
+     * patterns are shared between all conversation panels and only recompiled
+     * when the available replacement services or their patterns change.
+     */
+    private static final ReplacementServiceMatcher REPLACEMENT_MATCHER
+        = new ReplacementServiceMatcher();
+
+    /**
+     * The replacer that turns URLs into links.
+     */
+    private static final Replacer URL_REPLACER = new URLReplacer(URL_PATTERN);
+
+    /**
+     * The replacer used for highlighting the most recently used keyword.
+     * Cached, since compiling the keyword pattern for every message is
+     * expensive.
+     */
+    private volatile KeywordReplacer keywordReplacer = new KeywordReplacer(null);
+
     /**
      * List for observing text messages.
      */
@@ -240,6 +261,46 @@
 
     private String lastMessageUID = null;
 
+    /**
+     * The window that bounds the number of messages kept in the document.
+     */
+    private final ChatTranscriptWindow transcriptWindow
+        = new ChatTranscriptWindow(ChatTranscriptWindow.DEFAULT_WINDOW_SIZE,
+            ChatTranscriptWindow.DEFAULT_MARGIN);
+
+    /**
+     * The executor used for formatting batches of messages in parallel.
+     * Created on first use and shared by all conversation panels.
+     */
+    private static ExecutorService formatExecutor;
+
+    /**
+     * The number of nested batches in progress. See {@link #startBatch()}.
+     */
+    private int batchDepth = 0;
+
+    /**
+     * The HTML of the messages appended during the current batch, which has
+     * not been inserted in the document yet.
+     */
+    private final StringBuilder batchBuffer = new StringBuilder();
+
+    /**
+     * The messages appended during the current batch, which still need to be
+     * processed by the replacement services, as pairs of element ID and
+     * message content.
+     */
+    private final java.util.List<String[]> batchReplacements
+        = new ArrayList<String[]>();
+
+    /**
+     * The contact address of the last message, as it is set in the name
+     * attribute of the message element, or <tt>null</tt> if the last message
+     * isn't a user message. Used for detecting consecutive messages while the
+     * last message is still in the batch buffer.
+     */
+    private String lastMessageContactAddress = null;
+
     private boolean isSimpleTheme = true;
 
     private ShowPreviewDialog showPreview
@@ -469,6 +530,8 @@ public void setBounds(int x, int y, int width, int height)
      */
     public String getMessageContents(String messageUID)
     {
+        flushBatch();
+
         Element root = document.getDefaultRootElement();
         Element e = document.getElement(
             root,
@@ -548,6 +611,13 @@ public String processMessage(   ChatMessage chatMessage,
         String endHeaderTag = "";
 
         lastMessageUID = chatMessage.getMessageUID();
+        lastMessageContactAddress
+            = (messageType.equals(Chat.INCOMING_MESSAGE)
+                || messageType.equals(Chat.OUTGOING_MESSAGE)
+                || messageType.equals(Chat.HISTORY_INCOMING_MESSAGE)
+                || messageType.equals(Chat.HISTORY_OUTGOING_MESSAGE)
+                || messageType.equals(Chat.SMS_MESSAGE))
+            ? contactName : null;
 
         if (messageType.equals(Chat.INCOMING_MESSAGE))
         {
@@ -559,7 +629,7 @@ public String processMessage(   ChatMessage chatMessage,
                 contactDisplayName,
                 getContactAvatar(protocolProvider, contactAddress),
                 date,
-                formatMessageAsHTML(message, contentType, keyword),
+                formatMessageAsHTML(chatMessage, keyword),
                 ChatHtmlUtils.HTML_CONTENT_TYPE,
                 false,
                 isSimpleTheme);
@@ -572,7 +642,7 @@ else if (messageType.equals(Chat.OUTGOING_MESSAGE))
                 contactDisplayName,
                 getContactAvatar(protocolProvider),
                 date,
-                formatMessageAsHTML(message, contentType, keyword),
+                formatMessageAsHTML(chatMessage, keyword),
                 ChatHtmlUtils.HTML_CONTENT_TYPE,
                 false,
                 isSimpleTheme);
@@ -585,7 +655,7 @@ else if (messageType.equals(Chat.HISTORY_INCOMING_MESSAGE))
                 contactDisplayName,
                 getContactAvatar(protocolProvider, contactAddress),
                 date,
-                formatMessageAsHTML(message, contentType, keyword),
+                formatMessageAsHTML(chatMessage, keyword),
                 ChatHtmlUtils.HTML_CONTENT_TYPE,
                 true,
                 isSimpleTheme);
@@ -598,7 +668,7 @@ else if (messageType.equals(Chat.HISTORY_OUTGOING_MESSAGE))
                 contactDisplayName,
                 getContactAvatar(protocolProvider),
                 date,
-                formatMessageAsHTML(message, contentType, keyword),
+                formatMessageAsHTML(chatMessage, keyword),
                 ChatHtmlUtils.HTML_CONTENT_TYPE,
                 true,
                 isSimpleTheme);
@@ -728,13 +798,6 @@ public void run()
             return;
         }
 
-        Element lastMsgElement = document.getElement(
-            ChatHtmlUtils.MESSAGE_TEXT_ID + previousMessageUID);
-
-        String contactAddress
-            = (String) lastMsgElement.getAttributes()
-                .getAttribute(Attribute.NAME);
-
         boolean isHistory
             = (chatMessage.getMessageType()
                 .equals(Chat.HISTORY_INCOMING_MESSAGE)
@@ -742,13 +805,39 @@ public void run()
                 .equals(Chat.HISTORY_OUTGOING_MESSAGE))
                 ? true : false;
 
+        // In the simple theme messages are appended to the body, so a
+        // consecutive message can stay in the batch with its predecessor.
+        // Otherwise it has to be inserted in the element of its predecessor.
+        if (isSimpleTheme && batchBuffer.length() > 0)
+        {
+            String newMessage = ChatHtmlUtils.createMessageTag(
+                                    chatMessage.getMessageUID(),
+                                    lastMessageContactAddress,
+                                    formatMessageAsHTML(chatMessage, keyword),
+                                    ChatHtmlUtils.HTML_CONTENT_TYPE,
+                                    chatMessage.getDate(),
+                                    false,
+                                    isHistory,
+                                    isSimpleTheme);
+
+            batchBuffer.append(newMessage);
+            finishMessageAdd(newMessage);
+            return;
+        }
+
+        flushBatch();
+
+        Element lastMsgElement = document.getElement(
+            ChatHtmlUtils.MESSAGE_TEXT_ID + previousMessageUID);
+
+        String contactAddress
+            = (String) lastMsgElement.getAttributes()
+                .getAttribute(Attribute.NAME);
+
         String newMessage = ChatHtmlUtils.createMessageTag(
                                     chatMessage.getMessageUID(),
                                     contactAddress,
-                                    formatMessageAsHTML(
-                                        chatMessage.getMessage(),
-                                        chatMessage.getContentType(),
-                                        keyword),
+                                    formatMessageAsHTML(chatMessage, keyword),
                                     ChatHtmlUtils.HTML_CONTENT_TYPE,
                                     chatMessage.getDate(),
                                     false,
@@ -802,6 +891,8 @@ public void run()
             return;
         }
 
+        flushBatch();
+
         String correctedUID = chatMessage.getCorrectedMessageUID();
         if (correctedUID != null && correctedUID.equals(lastMessageUID))
         {
@@ -908,6 +999,27 @@ public void run()
             message = StringEscapeUtils.escapeHtml4(original);
         }
 
+        if (batchDepth > 0)
+            batchBuffer.append(message);
+        else
+            insertBeforeEndOfBody(message);
+
+        String lastElemContent = getElementContent(lastMessageUID, message);
+
+        if (lastElemContent != null)
+        {
+            finishMessageAdd(lastElemContent);
+        }
+    }
+
+    /**
+     * Inserts the given HTML at the end of the body of the document and
+     * scrolls to the bottom.
+     *
+     * @param html the HTML to insert
+     */
+    private void insertBeforeEndOfBody(String html)
+    {
         synchronized (scrollToBottomRunnable)
         {
             Element root = document.getDefaultRootElement();
@@ -918,7 +1030,7 @@ public void run()
                             // the body element
                             root.getElement(root.getElementCount() - 1),
                             // the message to insert
-                            message);
+                            html);
 
                 // Need to call explicitly scrollToBottom, because for some
                 // reason the componentResized event isn't fired every time we
@@ -934,13 +1046,6 @@ public void run()
                 logger.error("Insert in the HTMLDocument failed.", e);
             }
         }
-
-        String lastElemContent = getElementContent(lastMessageUID, message);
-
-        if (lastElemContent != null)
-        {
-            finishMessageAdd(lastElemContent);
-        }
     }
 
     /**
@@ -952,122 +1057,273 @@ public void run()
      */
     private void finishMessageAdd(final String message)
     {
+        // The remaining operations are performed once for the whole batch,
+        // after the messages have been inserted in the document.
+        if (batchDepth > 0)
+        {
+            batchReplacements.add(new String[]
+                {ChatHtmlUtils.MESSAGE_TEXT_ID + lastMessageUID, message});
+            return;
+        }
+
         // If we're not in chat history case we need to be sure the document
         // has not exceeded the required size (number of messages).
         if (!isHistory)
             ensureDocumentSize();
 
-        /*
-         * Replacements will be processed only if it is enabled in the
-         * property.
-         */
+        if (isReplacementEnabled())
+        {
+            processReplacement(ChatHtmlUtils.MESSAGE_TEXT_ID + lastMessageUID,
+                                message);
+        }
+    }
+
+    /**
+     * Indicates whether messages need to be processed by the replacement
+     * services. Replacements will be processed only if it is enabled in the
+     * property.
+     *
+     * @return <tt>true</tt> if replacements are enabled
+     */
+    private boolean isReplacementEnabled()
+    {
         ConfigurationService cfg = GuiActivator.getConfigurationService();
 
-        if (cfg.getBoolean(ReplacementProperty.REPLACEMENT_ENABLE, true)
+        return cfg.getBoolean(ReplacementProperty.REPLACEMENT_ENABLE, true)
                 ||cfg.getBoolean(ReplacementProperty.REPLACEMENT_PROPOSAL, true)
                 || cfg.getBoolean(
                         ReplacementProperty.getPropertyName("SMILEY"),
-                        true))
-        {
-            processReplacement(ChatHtmlUtils.MESSAGE_TEXT_ID + lastMessageUID,
-                                message);
-        }
+                        true);
     }
 
     /**
-    * Formats the given message. Processes the messages and replaces links to
-    * video/image sources with their previews or any other substitution. Spawns
-    * a separate thread for replacement.
-    *
-    * @param messageID the messageID element.
-    * @param chatString the message.
-    */
-    void processReplacement(final String messageID, final String chatString)
+     * Starts a batch of appended messages. Until the matching call to
+     * {@link #endBatch()}, appended messages are collected and inserted in
+     * the document in a single edit, followed by a single scroll to the
+     * bottom. Batches are meant for loading history and backlog and may be
+     * nested. Must be called on the event dispatch thread.
+     */
+    public void startBatch()
     {
-        new ReplacementWorker(messageID, chatString).start();
+        batchDepth++;
     }
 
     /**
-     * Ensures that the document won't become too big. When the document reaches
-     * a certain size the first message in the page is removed.
+     * Ends a batch of appended messages, inserts the collected messages in
+     * the document and starts their replacement processing. Must be called on
+     * the event dispatch thread.
      */
-    private void ensureDocumentSize()
+    public void endBatch()
     {
-        if (document.getLength() > Chat.CHAT_BUFFER_SIZE)
+        if (batchDepth == 0 || --batchDepth > 0)
+            return;
+
+        flushBatch();
+
+        if (!isHistory)
+            ensureDocumentSize();
+
+        if (isReplacementEnabled())
         {
-            String[] ids = new String[]
-                                      {ChatHtmlUtils.MESSAGE_TEXT_ID,
-                                       "statusMessage",
-                                       "systemMessage",
-                                       "actionMessage"};
+            for (String[] replacement : batchReplacements)
+                processReplacement(replacement[0], replacement[1]);
+        }
+        batchReplacements.clear();
+    }
 
-            Element firstMsgElement = findElement(Attribute.ID, ids);
+    /**
+     * Inserts the messages collected in the current batch in the document.
+     * Called before operations that need the previous messages to be present
+     * in the document.
+     */
+    private void flushBatch()
+    {
+        if (batchBuffer.length() == 0)
+            return;
 
-            int startIndex = firstMsgElement.getStartOffset();
-            int endIndex = firstMsgElement.getEndOffset();
+        String html = batchBuffer.toString();
+        batchBuffer.setLength(0);
+        insertBeforeEndOfBody(html);
+    }
 
-            try
-            {
-                // Remove the message.
-                this.document.remove(startIndex, endIndex - startIndex);
-            }
-            catch (BadLocationException e)
+    /**
+     * Formats the content of the given messages as HTML in parallel, such that
+     * this does not need to be done on the event dispatch thread when the
+     * messages are displayed. Only the content of user messages without
+     * keyword highlighting is formatted ahead. Must not be called on the event
+     * dispatch thread.
+     *
+     * @param chatMessages the messages to format
+     */
+    public void formatMessages(java.util.List<ChatMessage> chatMessages)
+    {
+        final java.util.List<ChatMessage> messages
+            = new ArrayList<ChatMessage>();
+        for (ChatMessage chatMessage : chatMessages)
+        {
+            String type = chatMessage.getMessageType();
+            if (type.equals(Chat.INCOMING_MESSAGE)
+                || type.equals(Chat.OUTGOING_MESSAGE)
+                || type.equals(Chat.HISTORY_INCOMING_MESSAGE)
+                || type.equals(Chat.HISTORY_OUTGOING_MESSAGE))
+                messages.add(chatMessage);
+        }
+        if (messages.isEmpty())
+            return;
+
+        int parallelism
+            = Math.min(Runtime.getRuntime().availableProcessors(),
+                messages.size());
+        java.util.List<Callable<Object>> tasks
+            = new ArrayList<Callable<Object>>(parallelism);
+        for (int i = 0; i < parallelism; i++)
+        {
+            final int first = i;
+            final int step = parallelism;
+            tasks.add(new Callable<Object>()
             {
-                logger.error("Error removing messages from chat: ", e);
-            }
+                public Object call()
+                {
+                    for (int j = first; j < messages.size(); j += step)
+                    {
+                        ChatMessage chatMessage = messages.get(j);
+                        chatMessage.setFormattedMessage(
+                            formatMessageAsHTML(chatMessage.getMessage(),
+                                chatMessage.getContentType(),
+                                null));
+                    }
+                    return null;
+                }
+            });
+        }
 
-            if(firstMsgElement.getName().equals("table"))
+        try
+        {
+            for (Future<Object> future : getFormatExecutor().invokeAll(tasks))
             {
-                // as we have removed a header for maybe several messages,
-                // delete all messages without header
-                deleteAllMessagesWithoutHeader();
+                try
+                {
+                    future.get();
+                }
+                catch (ExecutionException e)
+                {
+                    // Messages that aren't formatted yet will be formatted
+                    // when they are displayed.
+                    logger.error("Failed to format messages.", e.getCause());
+                }
             }
         }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
-     * Deletes all messages "div"s that are missing their header the table tag.
-     * The method calls itself recursively.
+     * Returns the executor used for formatting messages in parallel.
+     *
+     * @return the executor used for formatting messages in parallel
      */
-    private void deleteAllMessagesWithoutHeader()
+    private static synchronized ExecutorService getFormatExecutor()
     {
-        String[] ids = new String[]
-            {ChatHtmlUtils.MESSAGE_TEXT_ID,
-                "statusMessage",
-                "systemMessage",
-                "actionMessage"};
+        if (formatExecutor == null)
+        {
+            int threads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor
+                = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread thread
+                                = new Thread(r, "ChatMessageFormatter");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            formatExecutor = executor;
+        }
+        return formatExecutor;
+    }
 
-        Element firstMsgElement = findElement(Attribute.ID, ids);
+    /**
+    * Formats the given message. Processes the messages and replaces links to
+    * video/image sources with their previews or any other substitution. Spawns
+    * a separate thread for replacement.
+    *
+    * @param messageID the messageID element.
+    * @param chatString the message.
+    */
+    void processReplacement(final String messageID, final String chatString)
+    {
+        new ReplacementWorker(messageID, chatString).start();
+    }
 
-        if(firstMsgElement == null
-            || !firstMsgElement.getName().equals("div"))
-        {
+    /**
+     * Ensures that the document won't become too big. When the document
+     * exceeds the transcript window, the oldest messages are removed from the
+     * page in a single edit. Removed messages can be loaded again from
+     * history. Trimming is postponed while the user has scrolled up to read
+     * older messages, unless the document reaches its hard limit.
+     */
+    private void ensureDocumentSize()
+    {
+        if (!transcriptWindow.isTrimNeeded(document))
             return;
-        }
 
-        int startIndex = firstMsgElement.getStartOffset();
-        int endIndex = firstMsgElement.getEndOffset();
+        if (!isScrolledToBottom() && !transcriptWindow.isOverflowing(document))
+            return;
 
         try
         {
-            // Remove the message.
-            if(endIndex - startIndex < document.getLength())
-                this.document.remove(startIndex, endIndex - startIndex);
-            else
-            {
-                // currently there is a problem of deleting the last message
-                // if it is the last message on the view
-                return;
-            }
+            transcriptWindow.trim(document);
         }
         catch (BadLocationException e)
         {
             logger.error("Error removing messages from chat: ", e);
-
-            return;
         }
+    }
+
+    /**
+     * Indicates whether the conversation is scrolled to (near) its bottom,
+     * i.e. the user is following the most recent messages.
+     *
+     * @return <tt>true</tt> if scrolled to the bottom
+     */
+    private boolean isScrolledToBottom()
+    {
+        JScrollBar verticalScrollBar = getVerticalScrollBar();
+
+        if (verticalScrollBar == null)
+            return true;
+
+        return verticalScrollBar.getValue()
+                + verticalScrollBar.getVisibleAmount()
+                + verticalScrollBar.getBlockIncrement()
+            >= verticalScrollBar.getMaximum();
+    }
+
+    /**
+     * Formats the content of the given chat message. Reuses the content that
+     * was formatted ahead by {@link #formatMessages(java.util.List)}, if
+     * available and no keyword needs to be highlighted.
+     *
+     * @param chatMessage the chat message
+     * @param keyword the word to be highlighted
+     * @return the formatted message
+     */
+    private String formatMessageAsHTML(ChatMessage chatMessage, String keyword)
+    {
+        String formatted = chatMessage.getFormattedMessage();
+
+        if (formatted != null && keyword == null)
+            return formatted;
 
-        deleteAllMessagesWithoutHeader();
+        return formatMessageAsHTML(chatMessage.getMessage(),
+                                   chatMessage.getContentType(),
+                                   keyword);
     }
 
     /**
@@ -1102,12 +1358,30 @@ private String formatMessageAsHTML(final String original,
 
         return processReplacers(source,
             new NewlineReplacer(),
-            new URLReplacer(URL_PATTERN),
-            new KeywordReplacer(keyword),
+            URL_REPLACER,
+            getKeywordReplacer(keyword),
             new BrTagReplacer(),
             new ImgTagReplacer());
     }
 
+    /**
+     * Returns the keyword replacer for the provided keyword. The previously
+     * used replacer is reused if the keyword has not changed.
+     *
+     * @param keyword the keyword to highlight
+     * @return the keyword replacer
+     */
+    private KeywordReplacer getKeywordReplacer(final String keyword)
+    {
+        KeywordReplacer replacer = this.keywordReplacer;
+        if (!StringUtils.isEquals(replacer.getKeyword(), keyword))
+        {
+            replacer = new KeywordReplacer(keyword);
+            this.keywordReplacer = replacer;
+        }
+        return replacer;
+    }
+
     /**
      * Process provided replacers one by one sequentially. The output of the
      * first replacer is then fed as input into the second replacer, and so on.
@@ -1507,6 +1781,8 @@ public String getToolTipText(MouseEvent event)
      */
     public void addComponent(ChatConversationComponent component)
     {
+        flushBatch();
+
         synchronized (scrollToBottomRunnable)
         {
             StyleSheet styleSheet = document.getStyleSheet();
@@ -1614,19 +1890,22 @@ public String processMeCommand(ChatMessage chatMessage)
                 + " " + message.substring(4))
                 + endHeaderTag;
 
-        Map<String, ReplacementService> listSources =
-            GuiActivator.getReplacementSources();
-        for (ReplacementService source : listSources.values())
+        Collection<ReplacementService> listSources =
+            GuiActivator.getReplacementSources().values();
+        ReplacementServiceMatcher.Snapshot replacements =
+            REPLACEMENT_MATCHER.getSnapshot(listSources);
+        for (ReplacementService source : listSources)
         {
             boolean isSmiley = source instanceof SmiliesReplacementService;
             if (!isSmiley)
             {
                 continue;
             }
-            String sourcePattern = source.getPattern();
-            Pattern p =
-                Pattern.compile(sourcePattern, Pattern.CASE_INSENSITIVE
-                    | Pattern.DOTALL);
+            Pattern p = replacements.getPattern(source);
+            if (p == null)
+            {
+                continue;
+            }
             Matcher m = p.matcher(chatString);
             chatString =
                 m.replaceAll(ChatHtmlUtils.HTML_CONTENT_TYPE
@@ -1716,22 +1995,33 @@ private boolean isConsecutiveMessage(ChatMessage chatMessage)
         if (lastMessageUID == null)
             return false;
 
-        Element lastMsgElement = document.getElement(
-            ChatHtmlUtils.MESSAGE_TEXT_ID + lastMessageUID);
+        String contactAddress;
 
-        if (lastMsgElement == null)
+        if (batchBuffer.length() > 0)
         {
-            // This will happen if the last message is a non-user message, such
-            // as a system message. For these messages we *do* update the
-            // lastMessageUID, however we do *not* include the new UID in the
-            // newly appended message.
-            logger.info("Could not find message with ID " + lastMessageUID);
-            return false;
+            // The last message hasn't been inserted in the document yet.
+            contactAddress = lastMessageContactAddress;
         }
+        else
+        {
+            Element lastMsgElement = document.getElement(
+                ChatHtmlUtils.MESSAGE_TEXT_ID + lastMessageUID);
 
-        String contactAddress
-            = (String) lastMsgElement.getAttributes()
-                .getAttribute(Attribute.NAME);
+            if (lastMsgElement == null)
+            {
+                // This will happen if the last message is a non-user message,
+                // such as a system message. For these messages we *do* update
+                // the lastMessageUID, however we do *not* include the new UID
+                // in the newly appended message.
+                logger.info("Could not find message with ID "
+                    + lastMessageUID);
+                return false;
+            }
+
+            contactAddress
+                = (String) lastMsgElement.getAttributes()
+                    .getAttribute(Attribute.NAME);
+        }
 
         if (contactAddress != null
                 && (chatMessage.getMessageType()
@@ -1785,20 +2075,6 @@ public void dispose()
         clear();
     }
 
-    /**
-     *
-     * @param attribute
-     * @param matchStrings
-     * @return
-     */
-    private Element findElement(HTML.Attribute attribute,
-                                String[] matchStrings)
-    {
-        return findFirstElement(document.getDefaultRootElement(),
-                                attribute,
-                                matchStrings);
-    }
-
     /**
      * Finds the first element with <tt>name</tt>.
      * @param name the name to search for.
@@ -1809,39 +2085,6 @@ private Element findFirstElement(String name)
         return findFirstElement(document.getDefaultRootElement(), name);
     }
 
-    /**
-     *
-     * @param element
-     * @param attrName
-     * @param matchStrings
-     * @return
-     */
-    private Element findFirstElement(   Element element,
-                                        HTML.Attribute attrName,
-                                        String[] matchStrings)
-    {
-        String attr = (String) element.getAttributes().getAttribute(attrName);
-
-        if(attr != null)
-            for (String matchString : matchStrings)
-                if (attr.startsWith(matchString))
-                    return element;
-
-        Element resultElement = null;
-
-        // Count how many messages we have in the document.
-        for (int i = 0; i < element.getElementCount(); i++)
-        {
-            resultElement = findFirstElement(element.getElement(i),
-                                        attrName,
-                                        matchStrings);
-            if (resultElement != null)
-                return resultElement;
-        }
-
-        return null;
-    }
-
     /**
      * Finds the first element with <tt>name</tt> among the child elements of
      * <tt>element</tt>.
@@ -2180,33 +2423,27 @@ public Object construct() throws Exception
                 closingTag = divMatcher.group(3);
             }
 
-            StringBuilder msgBuff;
-            for (Map.Entry<String, ReplacementService> entry : GuiActivator
-                .getReplacementSources().entrySet())
-            {
-                msgBuff = new StringBuilder();
-                processReplacementService(entry.getValue(), msgStore, msgBuff);
-                msgStore = msgBuff.toString();
-            }
+            final ReplacementServiceMatcher.Snapshot replacements =
+                REPLACEMENT_MATCHER.getSnapshot(
+                    GuiActivator.getReplacementSources().values());
+            final StringBuilder msgBuff = new StringBuilder();
+            processReplacementServices(replacements, msgStore, msgBuff);
 
-            return openingTag + msgStore + closingTag;
+            return openingTag + msgBuff.toString() + closingTag;
         }
 
         /**
-         * Process message for a ReplacementService.
+         * Process message for all ReplacementServices in a single pass.
          *
-         * @param service the service.
+         * @param replacements the compiled patterns of the replacement
+         *            services.
          * @param msg the message.
          * @param buff current accumulated buffer.
          */
-        private void processReplacementService(final ReplacementService service,
+        private void processReplacementServices(
+            final ReplacementServiceMatcher.Snapshot replacements,
             final String msg, final StringBuilder buff)
         {
-            String sourcePattern = service.getPattern();
-            Pattern pattern =
-                Pattern.compile(sourcePattern, Pattern.CASE_INSENSITIVE
-                    | Pattern.DOTALL);
-
             int startPos = 0;
 
             Matcher plainTextInHtmlMatcher =
@@ -2235,7 +2472,7 @@ private void processReplacementService(final ReplacementService service,
                     final boolean isURL =
                         URL_PATTERN.matcher(plaintext).matches();
 
-                    processText(plaintext, buff, pattern, service, isURL);
+                    processText(plaintext, buff, replacements, isURL);
 
                     startPos = endMatchPosition;
                 }
@@ -2250,15 +2487,15 @@ private void processReplacementService(final ReplacementService service,
          *
          * @param plainText the nodes text.
          * @param msgBuff the currently accumulated buffer.
-         * @param pattern the pattern for current replacement service, created
-         *            earlier so we don't create it for every text we check.
-         * @param rService the replacement service.
+         * @param replacements the compiled patterns of all replacement
+         *            services, created earlier so we don't create them for
+         *            every text we check.
          * @param isURL whether this content matches the URL pattern
          */
         private void processText(final String plainText,
                                  final StringBuilder msgBuff,
-                                 final Pattern pattern,
-                                 final ReplacementService rService,
+                                 final ReplacementServiceMatcher.Snapshot
+                                     replacements,
                                  final boolean isURL)
         {
             final ShowPreviewDialog previewDialog = showPreview;
@@ -2271,17 +2508,14 @@ private void processText(final String plainText,
                 return;
             }
 
-            Matcher m = pattern.matcher(plainText);
+            Matcher m = replacements.matcher(plainText);
+            if (m == null)
+            {
+                msgBuff.append(StringEscapeUtils.escapeHtml4(plainText));
+                return;
+            }
 
             ConfigurationService cfg = GuiActivator.getConfigurationService();
-            boolean isSmiley
-                = rService instanceof SmiliesReplacementService;
-            boolean isDirectImage
-                = rService instanceof DirectImageReplacementService;
-            boolean isEnabledForSource
-                = cfg.getBoolean(
-                ReplacementProperty.getPropertyName(
-                    rService.getSourceName()), true);
 
             int startPos = 0;
             while (m.find())
@@ -2290,6 +2524,17 @@ private void processText(final String plainText,
                     .substring(startPos, m.start())));
                 startPos = m.end();
 
+                ReplacementService rService
+                    = replacements.getMatchingService(m);
+                boolean isSmiley
+                    = rService instanceof SmiliesReplacementService;
+                boolean isDirectImage
+                    = rService instanceof DirectImageReplacementService;
+                boolean isEnabledForSource
+                    = cfg.getBoolean(
+                    ReplacementProperty.getPropertyName(
+                        rService.getSourceName()), true);
+
                 String group = m.group();
                 String temp = rService.getReplacement(group);
                 String group0 = m.group(0);
@@ -74,6 +74,12 @@
      */
     private String correctedMessageUID;
 
+    /**
+     * The message content formatted as HTML ahead of display, or <tt>null</tt>
+     * if the message has not been formatted yet.
+     */
+    private volatile String formattedMessage;
+
     /**
      * Creates a <tt>ChatMessage</tt> by specifying all parameters of the
      * message.
@@ -269,4 +275,26 @@ public String getCorrectedMessageUID()
     {
         return correctedMessageUID;
     }
+
+    /**
+     * Returns the message content formatted as HTML ahead of display.
+     *
+     * @return the formatted message content, or <tt>null</tt> if the message
+     * has not been formatted yet
+     */
+    public String getFormattedMessage()
+    {
+        return formattedMessage;
+    }
+
+    /**
+     * Sets the message content formatted as HTML ahead of display, such that
+     * the formatting does not need to be done on the event dispatch thread.
+     *
+     * @param formattedMessage the formatted message content
+     */
+    public void setFormattedMessage(String formattedMessage)
+    {
+        this.formattedMessage = formattedMessage;
+    }
 }
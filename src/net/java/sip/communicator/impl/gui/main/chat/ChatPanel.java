@@ -419,9 +419,12 @@ else if (chatSession instanceof ConferenceChatSession)
             // Initialize chat participants' panel.
             Iterator<ChatContact<?>> chatParticipants
                 = chatSession.getParticipants();
+            List<ChatContact<?>> chatContacts
+                = new ArrayList<ChatContact<?>>();
 
             while (chatParticipants.hasNext())
-                chatContactListPanel.addContact(chatParticipants.next());
+                chatContacts.add(chatParticipants.next());
+            chatContactListPanel.addContacts(chatContacts);
         }
     }
 
@@ -806,15 +809,23 @@ public boolean isPrivateMessagingChat()
     }
 
     /**
-     * Process history messages.
+     * Prepares history messages for display. Converts the records coming from
+     * history to chat messages and formats their content in parallel. Called
+     * outside the event dispatch thread, such that only the insertion in the
+     * document is left to the event dispatch thread.
      *
      * @param historyList The collection of messages coming from history.
      * @param escapedMessageID The incoming message needed to be ignored if
      * contained in history.
+     * @return the chat messages and file records to display
      */
-    private void processHistory( Collection<Object> historyList,
-                                String escapedMessageID)
+    private List<Object> prepareHistory(Collection<Object> historyList,
+                                        String escapedMessageID)
     {
+        List<Object> history = new ArrayList<Object>(historyList.size());
+        List<ChatMessage> chatMessages
+            = new ArrayList<ChatMessage>(historyList.size());
+
         Iterator<Object> iterator = historyList.iterator();
 
         String messageType;
@@ -822,7 +833,7 @@ private void processHistory( Collection<Object> historyList,
         while (iterator.hasNext())
         {
             Object o = iterator.next();
-            String historyString = "";
+            ChatMessage chatMessage = null;
 
             if(o instanceof MessageDeliveredEvent)
             {
@@ -837,7 +848,7 @@ private void processHistory( Collection<Object> historyList,
                 else
                     messageType = Chat.HISTORY_OUTGOING_MESSAGE;
 
-                historyString = processHistoryMessage(
+                chatMessage = createHistoryMessage(
                             GuiActivator.getUIService().getMainFrame()
                                 .getAccountAddress(protocolProvider),
                             GuiActivator.getUIService().getMainFrame()
@@ -863,7 +874,7 @@ else if(o instanceof MessageReceivedEvent)
                     else
                         messageType = Chat.HISTORY_INCOMING_MESSAGE;
 
-                    historyString = processHistoryMessage(
+                    chatMessage = createHistoryMessage(
                                 evt.getSourceContact().getAddress(),
                                 evt.getSourceContact().getDisplayName(),
                                 evt.getTimestamp(),
@@ -881,7 +892,7 @@ else if(o instanceof ChatRoomMessageDeliveredEvent)
                 ProtocolProviderService protocolProvider = evt
                     .getSourceChatRoom().getParentProvider();
 
-                historyString = processHistoryMessage(
+                chatMessage = createHistoryMessage(
                             GuiActivator.getUIService().getMainFrame()
                                 .getAccountAddress(protocolProvider),
                             GuiActivator.getUIService().getMainFrame()
@@ -900,7 +911,7 @@ else if(o instanceof ChatRoomMessageReceivedEvent)
                 if(!evt.getMessage().getMessageUID()
                         .equals(escapedMessageID))
                 {
-                    historyString = processHistoryMessage(
+                    chatMessage = createHistoryMessage(
                             evt.getSourceChatRoomMember().getContactAddress(),
                             evt.getSourceChatRoomMember().getName(),
                             evt.getTimestamp(),
@@ -915,17 +926,56 @@ else if (o instanceof FileRecord)
                 FileRecord fileRecord = (FileRecord) o;
 
                 if (!fileRecord.getID().equals(escapedMessageID))
+                    history.add(fileRecord);
+            }
+
+            if (chatMessage != null)
+            {
+                history.add(chatMessage);
+                chatMessages.add(chatMessage);
+            }
+        }
+
+        conversationPanel.formatMessages(chatMessages);
+
+        return history;
+    }
+
+    /**
+     * Process history messages. All messages are inserted in the document in
+     * a single batch.
+     *
+     * @param history the chat messages and file records prepared by
+     * {@link #prepareHistory(Collection, String)}
+     */
+    private void processHistory(List<Object> history)
+    {
+        conversationPanel.startBatch();
+        try
+        {
+            for (Object o : history)
+            {
+                if (o instanceof ChatMessage)
+                {
+                    String historyString
+                        = processHistoryMessage((ChatMessage) o);
+
+                    if (historyString != null)
+                        conversationPanel.appendMessageToEnd(
+                            historyString, ChatHtmlUtils.HTML_CONTENT_TYPE);
+                }
+                else if (o instanceof FileRecord)
                 {
                     FileHistoryConversationComponent component
-                        = new FileHistoryConversationComponent(fileRecord);
+                        = new FileHistoryConversationComponent((FileRecord) o);
 
                     conversationPanel.addComponent(component);
                 }
             }
-
-            if (historyString != null)
-                conversationPanel.appendMessageToEnd(
-                    historyString, ChatHtmlUtils.HTML_CONTENT_TYPE);
+        }
+        finally
+        {
+            conversationPanel.endBatch();
         }
 
         fireChatHistoryChange();
@@ -1149,8 +1199,7 @@ private void applyMessageCorrection(ChatMessage message)
     }
 
     /**
-     * Passes the message to the contained <code>ChatConversationPanel</code>
-     * for processing.
+     * Creates a chat message for a message coming from history.
      *
      * @param contactName The name of the contact sending the message.
      * @param contactDisplayName the display name of the contact sending the
@@ -1162,20 +1211,31 @@ private void applyMessageCorrection(ChatMessage message)
      * @param contentType the content type of the message (html or plain text)
      * @param messageId The ID of the message.
      *
-     * @return a string containing the processed message.
+     * @return the chat message
      */
-    private String processHistoryMessage(String contactName,
-                                         String contactDisplayName,
-                                         Date date,
-                                         String messageType,
-                                         String message,
-                                         String contentType,
-                                         String messageId)
+    private ChatMessage createHistoryMessage(String contactName,
+                                             String contactDisplayName,
+                                             Date date,
+                                             String messageType,
+                                             String message,
+                                             String contentType,
+                                             String messageId)
     {
-        ChatMessage chatMessage = new ChatMessage(
+        return new ChatMessage(
             contactName, contactDisplayName, date,
                 messageType, null, message, contentType, messageId, null);
+    }
 
+    /**
+     * Passes the message to the contained <code>ChatConversationPanel</code>
+     * for processing.
+     *
+     * @param chatMessage the message coming from history
+     *
+     * @return a string containing the processed message.
+     */
+    private String processHistoryMessage(ChatMessage chatMessage)
+    {
         String processedMessage =
             this.conversationPanel.processMessage(chatMessage,
                 chatSession.getCurrentChatTransport().getProtocolProvider(),
@@ -1963,7 +2023,7 @@ public void loadHistory(final String escapedMessageID)
 
         SwingWorker historyWorker = new SwingWorker()
         {
-            private Collection<Object> historyList;
+            private List<Object> history;
 
             @Override
             public Object construct() throws Exception
@@ -1975,10 +2035,13 @@ public Object construct() throws Exception
                 loadHistoryPeriod();
 
                 // Load the last N=CHAT_HISTORY_SIZE messages from history.
-                historyList = chatSession.getHistory(
+                Collection<Object> historyList = chatSession.getHistory(
                     ConfigurationUtils.getChatHistorySize());
 
-                return historyList;
+                if (historyList != null && historyList.size() > 0)
+                    history = prepareHistory(historyList, escapedMessageID);
+
+                return history;
             }
 
             /**
@@ -1988,9 +2051,9 @@ public Object construct() throws Exception
             @Override
             public void finished()
             {
-                if(historyList != null && historyList.size() > 0)
+                if(history != null && history.size() > 0)
                 {
-                    processHistory(historyList, escapedMessageID);
+                    processHistory(history);
                 }
                 isHistoryLoaded = true;
 
@@ -2204,7 +2267,8 @@ public Object construct() throws Exception
                 if(c !=null && c.size() > 0)
                 {
                     SwingUtilities.invokeLater(
-                            new HistoryMessagesLoader(c));
+                            new HistoryMessagesLoader(
+                                prepareHistory(c, "")));
                 }
 
                 return "";
@@ -2252,7 +2316,8 @@ public Object construct() throws Exception
 
                 if(c != null && c.size() > 0)
                     SwingUtilities.invokeLater(
-                            new HistoryMessagesLoader(c));
+                            new HistoryMessagesLoader(
+                                prepareHistory(c, "")));
 
                 return "";
             }
@@ -2271,9 +2336,9 @@ public void finished()
      */
     private class HistoryMessagesLoader implements Runnable
     {
-        private final Collection<Object> chatHistory;
+        private final List<Object> chatHistory;
 
-        public HistoryMessagesLoader(Collection<Object> history)
+        public HistoryMessagesLoader(List<Object> history)
         {
             this.chatHistory = history;
         }
@@ -2284,7 +2349,7 @@ public void run()
                 = getChatConversationPanel();
 
             chatConversationPanel.clear();
-            processHistory(chatHistory, "");
+            processHistory(chatHistory);
             chatConversationPanel.setDefaultContent();
         }
     }
@@ -2300,6 +2365,18 @@ public void addChatContact(ChatContact<?> chatContact)
             chatContactListPanel.addContact(chatContact);
     }
 
+    /**
+     * Adds the given <tt>chatContacts</tt> to the list of chat contacts
+     * participating in the corresponding to this chat panel chat at once.
+     * @param chatContacts the contacts to add
+     */
+    public void addChatContacts(
+        Collection<? extends ChatContact<?>> chatContacts)
+    {
+        if (chatContactListPanel != null)
+            chatContactListPanel.addContacts(chatContacts);
+    }
+
     /**
      * Removes the given <tt>chatContact</tt> from the list of chat contacts
      * participating in the corresponding to this chat panel chat.
@@ -2824,20 +2901,28 @@ private void addIncomingEvents()
         {
             Iterator<Object> eventBufferIter = incomingEventBuffer.iterator();
 
-            while(eventBufferIter.hasNext())
+            conversationPanel.startBatch();
+            try
             {
-                Object incomingEvent = eventBufferIter.next();
-
-                if (incomingEvent instanceof ChatMessage)
-                {
-                    this.displayChatMessage((ChatMessage) incomingEvent);
-                }
-                else if (incomingEvent instanceof ChatConversationComponent)
+                while(eventBufferIter.hasNext())
                 {
-                    this.getChatConversationPanel()
-                        .addComponent((ChatConversationComponent)incomingEvent);
+                    Object incomingEvent = eventBufferIter.next();
+
+                    if (incomingEvent instanceof ChatMessage)
+                    {
+                        this.displayChatMessage((ChatMessage) incomingEvent);
+                    }
+                    else if (incomingEvent instanceof ChatConversationComponent)
+                    {
+                        this.getChatConversationPanel().addComponent(
+                            (ChatConversationComponent)incomingEvent);
+                    }
                 }
             }
+            finally
+            {
+                conversationPanel.endBatch();
+            }
         }
     }
 
@@ -0,0 +1,240 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.chat;
+
+import javax.swing.text.*;
+import javax.swing.text.html.*;
+
+/**
+ * Bounds the number of live messages in the document of a chat transcript.
+ *
+ * <p>
+ * Messages are counted by their message element, i.e. the element with an id
+ * starting with {@link ChatHtmlUtils#MESSAGE_TEXT_ID}. In the simple theme
+ * every message is a top-level block of the body, but in the advanced theme
+ * consecutive messages are nested in the bubble of the preceding message, so a
+ * single top-level block may hold many messages. Top-level blocks without a
+ * message, such as headers and status lines, count as one. The window keeps
+ * the most recent <tt>windowSize</tt> messages. Once <tt>margin</tt>
+ * additional messages have been appended, the oldest top-level blocks are
+ * removed in a single document edit, instead of removing one message per
+ * appended message. This keeps both the cost of appending and the
+ * size of the document constant, regardless of the number of messages that
+ * passed through the chat. Removed messages remain available through the
+ * message history.
+ * </p>
+ *
+ * <p>
+ * Messages are never separated from their header: when the cut would leave
+ * consecutive messages without their header, those messages are removed as
+ * well.
+ * </p>
+ */
+public class ChatTranscriptWindow
+{
+    /**
+     * Default number of messages that are kept in the document.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 300;
+
+    /**
+     * Default number of messages that may be appended before trimming.
+     */
+    public static final int DEFAULT_MARGIN = 100;
+
+    /**
+     * The number of messages that are kept in the document.
+     */
+    private final int windowSize;
+
+    /**
+     * The number of messages that may be appended before trimming.
+     */
+    private final int margin;
+
+    /**
+     * Constructor.
+     *
+     * @param windowSize the number of messages to keep in the document
+     * @param margin the number of messages that may be appended before
+     * trimming
+     */
+    public ChatTranscriptWindow(final int windowSize, final int margin)
+    {
+        if (windowSize < 1)
+        {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        if (margin < 1)
+        {
+            throw new IllegalArgumentException("margin must be positive");
+        }
+        this.windowSize = windowSize;
+        this.margin = margin;
+    }
+
+    /**
+     * Check whether the document has grown beyond the window and its margin.
+     *
+     * @param document the chat document
+     * @return returns <tt>true</tt> if the document should be trimmed
+     */
+    public boolean isTrimNeeded(final HTMLDocument document)
+    {
+        return countMessages(getBody(document))
+            > this.windowSize + this.margin;
+    }
+
+    /**
+     * Check whether the document has grown beyond the hard limit of the
+     * window. Trimming may be postponed while the user is reading older
+     * messages, but not beyond this limit.
+     *
+     * @param document the chat document
+     * @return returns <tt>true</tt> if the document must be trimmed
+     */
+    public boolean isOverflowing(final HTMLDocument document)
+    {
+        return countMessages(getBody(document))
+            > this.windowSize + 2 * this.margin;
+    }
+
+    /**
+     * Remove the oldest top-level blocks from the document, such that at most
+     * <tt>windowSize</tt> messages remain. Blocks are never split, so the
+     * most recent block is always kept, even if it holds more messages than
+     * the window.
+     *
+     * @param document the chat document
+     * @return returns the number of removed messages
+     * @throws BadLocationException in case of failure to remove the blocks
+     */
+    public int trim(final HTMLDocument document)
+        throws BadLocationException
+    {
+        final Element body = getBody(document);
+        final int count = body.getElementCount();
+        final int[] sizes = new int[count];
+        int remaining = 0;
+        for (int i = 0; i < count; i++)
+        {
+            sizes[i] = countBlockMessages(body.getElement(i));
+            remaining += sizes[i];
+        }
+        // Once the window is reached, keep cutting as long as the cut would
+        // separate consecutive messages from their header.
+        int cut = 0;
+        int removed = 0;
+        while (cut < count - 1
+            && (remaining > this.windowSize
+                || (cut > 0 && isMessage(body.getElement(cut)))))
+        {
+            remaining -= sizes[cut];
+            removed += sizes[cut];
+            cut++;
+        }
+        if (cut == 0)
+        {
+            return 0;
+        }
+        final int start = body.getElement(0).getStartOffset();
+        final int end = body.getElement(cut).getStartOffset();
+        document.remove(start, end - start);
+        return removed;
+    }
+
+    /**
+     * Count the messages in the body of the chat document.
+     *
+     * @param body the body element
+     * @return returns the number of messages in the body
+     */
+    private static int countMessages(final Element body)
+    {
+        int count = 0;
+        for (int i = 0; i < body.getElementCount(); i++)
+        {
+            count += countBlockMessages(body.getElement(i));
+        }
+        return count;
+    }
+
+    /**
+     * Count the messages in a top-level block of the body.
+     *
+     * @param block the top-level block
+     * @return returns the number of message elements in the block, or 1 for a
+     *         block without messages
+     */
+    private static int countBlockMessages(final Element block)
+    {
+        return Math.max(countMessageElements(block), 1);
+    }
+
+    /**
+     * Count the message elements in an element and its descendants.
+     *
+     * @param element the element
+     * @return returns the number of message elements
+     */
+    private static int countMessageElements(final Element element)
+    {
+        if (isMessage(element))
+        {
+            return 1;
+        }
+        int count = 0;
+        for (int i = 0; i < element.getElementCount(); i++)
+        {
+            final Element child = element.getElement(i);
+            if (!child.isLeaf())
+            {
+                count += countMessageElements(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the body element of the chat document.
+     *
+     * @param document the chat document
+     * @return returns the body element
+     */
+    private static Element getBody(final HTMLDocument document)
+    {
+        final Element root = document.getDefaultRootElement();
+        return root.getElement(root.getElementCount() - 1);
+    }
+
+    /**
+     * Check whether the element is a message element. As a top-level block, a
+     * message element is a consecutive message of the simple theme, i.e. a
+     * message that is displayed below the header of a preceding message.
+     *
+     * @param element the element
+     * @return returns <tt>true</tt> if the element holds the text of a message
+     */
+    private static boolean isMessage(final Element element)
+    {
+        final Object id =
+            element.getAttributes().getAttribute(HTML.Attribute.ID);
+        return "div".equals(element.getName()) && id != null
+            && id.toString().startsWith(ChatHtmlUtils.MESSAGE_TEXT_ID);
+    }
+}
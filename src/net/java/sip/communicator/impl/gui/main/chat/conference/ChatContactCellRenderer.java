@@ -177,8 +177,7 @@ else if (member != null)
 
                                 if(binBytes != null)
                                     this.rightLabel.setIcon(
-                                        ImageUtils.getScaledRoundedIcon(
-                                            binBytes, 25, 25));
+                                        getScaledAvatar(list, binBytes));
                                 break;
                             }
                         }
@@ -224,8 +223,7 @@ else if (member != null)
 
                         if (cImage != null)
                             this.rightLabel.setIcon(
-                                    ImageUtils.getScaledRoundedIcon(
-                                            cImage, 25, 25));
+                                getScaledAvatar(list, cImage));
                     }
                 }
             }
@@ -244,4 +242,19 @@ else if (member != null)
 
         return this;
     }
+
+    /**
+     * Gets an avatar scaled to the size of the cells. An avatar which has not
+     * been scaled before is scaled in the background and the list repainted
+     * once it has been, so that painting a large chat room does not wait for
+     * the avatars of all its members.
+     *
+     * @param list the list which is painted
+     * @param imageBytes the bytes of the avatar
+     * @return the scaled avatar or <tt>null</tt> if it is not available yet
+     */
+    private ImageIcon getScaledAvatar(JList list, byte[] imageBytes)
+    {
+        return ImageUtils.getScaledRoundedIcon(imageBytes, 25, 25, list);
+    }
 }
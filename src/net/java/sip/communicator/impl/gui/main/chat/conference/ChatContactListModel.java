@@ -30,6 +30,14 @@
  * <tt>ChatContact</tt>s. The primary purpose of the implementation is to sort
  * the <tt>ChatContact</tt>s according to their member roles and in alphabetical
  * order according to their names.
+ * <p>
+ * The <tt>ChatContact</tt>s are kept sorted by the role and the name they had
+ * when they were added or last changed, so that they are found and inserted
+ * by binary search, and are indexed by their descriptors, so that a chat room
+ * with thousands of members does not have them compared one by one on each
+ * join, leave and change. The index is by identity, because the hash code of
+ * some descriptors, such as IRC chat room members, changes with their name.
+ * </p>
  *
  * @author Lyubomir Marinov
  */
@@ -40,10 +48,16 @@
 
     /**
      * The backing store of this <tt>AbstractListModel</tt> listing the
-     * <tt>ChatContact</tt>s.
+     * <tt>ChatContact</tt>s in the order of {@link #sorter}.
      */
-    private final List<ChatContact<?>> chatContacts
-        = new ArrayList<ChatContact<?>>();
+    private final List<Entry> chatContacts = new ArrayList<Entry>();
+
+    /**
+     * The entries of {@link #chatContacts} by the identities of the
+     * descriptors of their <tt>ChatContact</tt>s.
+     */
+    private final Map<Object, Entry> entries
+        = new IdentityHashMap<Object, Entry>();
 
     /**
      * Current chat session.
@@ -56,41 +70,32 @@
      * privileges and then they are sorted according to their names in
      * alphabetical order.
      */
-    private final Comparator<ChatContact<?>> sorter
-        = new Comparator<ChatContact<?>>()
+    private static final Comparator<Entry> sorter
+        = new Comparator<Entry>()
         {
-            public int compare(ChatContact<?> chatContact0, ChatContact<?> chatContact1)
+            public int compare(Entry entry0, Entry entry1)
             {
                 /*
                  * Place ChatMembers with more privileges at the beginning of
                  * the list.
                  */
-                if (chatContact0 instanceof ConferenceChatContact)
+                if (entry0.conference)
                 {
-                    if (chatContact1 instanceof ConferenceChatContact)
+                    if (entry1.conference)
                     {
-                        int role0
-                            = ((ConferenceChatContact) chatContact0).getRole()
-                                    .getRoleIndex();
-                        int role1
-                            = ((ConferenceChatContact) chatContact1).getRole()
-                                    .getRoleIndex();
-
-                        if (role0 > role1)
+                        if (entry0.role > entry1.role)
                             return -1;
-                        else if (role0 < role1)
+                        else if (entry0.role < entry1.role)
                             return 1;
                     }
                     else
                         return -1;
                 }
-                else if (chatContact1 instanceof ConferenceChatContact)
+                else if (entry1.conference)
                     return 1;
 
                 /* By default, sort the ChatContacts in alphabetical order. */
-                return
-                    chatContact0.getName().compareToIgnoreCase(
-                            chatContact1.getName());
+                return entry0.name.compareToIgnoreCase(entry1.name);
             }
         };
 
@@ -120,24 +125,42 @@ public ChatContactListModel(ChatSession chatSession)
     public void chatRoomPropertyChanged(ChatRoomMemberPropertyChangeEvent ev)
     {
         // Translate into
-        // ListDataListener.contentsChanged.
-        int chatContactCount = chatContacts.size();
+        // ListDataListener.contentsChanged or, if the ChatContact has moved,
+        // ListDataListener.intervalRemoved and intervalAdded.
+        ChatContact<?> chatContact;
+        int oldIndex;
+        int newIndex;
 
-        for (int i = 0; i < chatContactCount; i++)
+        synchronized(chatContacts)
         {
-            ChatContact<?> chatContact = chatContacts.get(i);
+            Entry entry = find(ev.getSourceChatRoomMember());
+
+            if (entry == null)
+                return;
+
+            chatContact = entry.chatContact;
+            oldIndex = indexOf(entry);
 
-            if(chatContact.getDescriptor().equals(ev.getSourceChatRoomMember()))
+            Entry changed = new Entry(chatContact);
+
+            if (sorter.compare(entry, changed) == 0)
+                newIndex = oldIndex;
+            else
             {
-                fireContentsChanged(chatContact, i, i);
-                /*
-                 * TODO Can ev.sourceChatRoomMember
-                 * equal more than one chatContacts
-                 * element? If it cannot, it will be
-                 * more efficient to break here.
-                 */
+                chatContacts.remove(oldIndex);
+                newIndex = insertionIndex(changed);
+                chatContacts.add(newIndex, changed);
+                entries.put(chatContact.getDescriptor(), changed);
             }
         }
+
+        if (newIndex == oldIndex)
+            fireContentsChanged(chatContact, newIndex, newIndex);
+        else
+        {
+            fireIntervalRemoved(this, oldIndex, oldIndex);
+            fireIntervalAdded(this, newIndex, newIndex);
+        }
     }
 
     /**
@@ -152,32 +175,104 @@ public void addElement(ChatContact<?> chatContact)
         if (chatContact == null)
             throw new IllegalArgumentException("chatContact");
 
-        int index = -1;
+        int index;
 
         synchronized(chatContacts)
         {
-            int chatContactCount = chatContacts.size();
+            // We don't want duplicates.
+            if (entries.containsKey(chatContact.getDescriptor()))
+                return;
 
-            for (int i = 0; i < chatContactCount; i++)
+            Entry entry = new Entry(chatContact);
+
+            index = insertionIndex(entry);
+            chatContacts.add(index, entry);
+            entries.put(chatContact.getDescriptor(), entry);
+        }
+        fireIntervalAdded(this, index, index);
+    }
+
+    /**
+     * Adds a number of <tt>ChatContact</tt>s to this
+     * <tt>AbstractListModel</tt> implementation at once and preserves the
+     * sorting it applies. The <tt>ChatContact</tt>s are merged into the
+     * sorted list in a single pass and the listeners are notified once per
+     * run of adjacent added <tt>ChatContact</tt>s.
+     *
+     * @param chatContacts the <tt>ChatContact</tt>s to be added to this
+     * <tt>AbstractListModel</tt>
+     */
+    public void addElements(Collection<? extends ChatContact<?>> chatContacts)
+    {
+        List<Entry> added = new ArrayList<Entry>(chatContacts.size());
+        List<int[]> intervals = new ArrayList<int[]>();
+
+        synchronized(this.chatContacts)
+        {
+            for (ChatContact<?> chatContact : chatContacts)
             {
-                ChatContact<?> containedChatContact = chatContacts.get(i);
+                if (chatContact == null)
+                    throw new IllegalArgumentException("chatContact");
+
+                Object descriptor = chatContact.getDescriptor();
 
                 // We don't want duplicates.
-                if (chatContact.equals(containedChatContact))
-                    return;
-                if ((index == -1)
-                        && (sorter.compare(containedChatContact, chatContact) > 0))
+                if (!entries.containsKey(descriptor))
+                {
+                    Entry entry = new Entry(chatContact);
+
+                    added.add(entry);
+                    entries.put(descriptor, entry);
+                }
+            }
+            if (added.isEmpty())
+                return;
+
+            Collections.sort(added, sorter);
+
+            List<Entry> merged
+                = new ArrayList<Entry>(this.chatContacts.size() + added.size());
+            Iterator<Entry> existingIter = this.chatContacts.iterator();
+            Entry existing = next(existingIter);
+            int[] interval = null;
+
+            for (Entry entry : added)
+            {
+                // Existing ChatContacts go before the added ones they are
+                // equal to, as they do with addElement.
+                while ((existing != null)
+                        && (sorter.compare(existing, entry) <= 0))
+                {
+                    merged.add(existing);
+                    existing = next(existingIter);
+                    interval = null;
+                }
+
+                int index = merged.size();
+
+                merged.add(entry);
+                if (interval == null)
                 {
-                    index = i;
-                    // Continue in order to prevent duplicates.
+                    interval = new int[] { index, index };
+                    intervals.add(interval);
                 }
+                else
+                    interval[1] = index;
+            }
+            while (existing != null)
+            {
+                merged.add(existing);
+                existing = next(existingIter);
             }
-            if (index == -1)
-                index = chatContactCount;
 
-            chatContacts.add(index, chatContact);
+            this.chatContacts.clear();
+            this.chatContacts.addAll(merged);
         }
-        fireIntervalAdded(this, index, index);
+
+        // The intervals are in increasing order of their indices in the new
+        // list so each one is valid once the ones before it have been added.
+        for (int[] interval : intervals)
+            fireIntervalAdded(this, interval[0], interval[1]);
     }
 
     /* Implements ListModel#getElementAt(int). */
@@ -185,7 +280,7 @@ public ChatContact<?> getElementAt(int index)
     {
         synchronized(chatContacts)
         {
-            return chatContacts.get(index);
+            return chatContacts.get(index).chatContact;
         }
     }
 
@@ -209,10 +304,16 @@ public void removeElement(ChatContact<?> chatContact)
     {
         synchronized(chatContacts)
         {
-            int index = chatContacts.indexOf(chatContact);
+            Entry entry = find(chatContact.getDescriptor());
+
+            if ((entry == null) || !entry.chatContact.equals(chatContact))
+                return;
 
-            if ((index >= 0) && chatContacts.remove(chatContact))
-                fireIntervalRemoved(this, index, index);
+            int index = indexOf(entry);
+
+            chatContacts.remove(index);
+            entries.remove(entry.chatContact.getDescriptor());
+            fireIntervalRemoved(this, index, index);
         }
     }
 
@@ -228,11 +329,102 @@ public void removeAllElements()
         {
             int contactsSize = chatContacts.size();
             chatContacts.clear();
+            entries.clear();
 
             fireIntervalRemoved(this, 0, contactsSize - 1);
         }
     }
 
+    /**
+     * Finds the <tt>Entry</tt> of the <tt>ChatContact</tt> with a specific
+     * descriptor. A descriptor which is not the one of an entry but is equal
+     * to it, such as a new instance for the same chat room member, is found by
+     * a linear search.
+     *
+     * @param descriptor the descriptor of the <tt>ChatContact</tt>
+     * @return the <tt>Entry</tt> of the <tt>ChatContact</tt> with
+     * <tt>descriptor</tt> or <tt>null</tt> if there is no such entry
+     */
+    private Entry find(Object descriptor)
+    {
+        Entry entry = entries.get(descriptor);
+
+        if (entry == null)
+        {
+            for (Entry e : chatContacts)
+            {
+                if (e.chatContact.getDescriptor().equals(descriptor))
+                    return e;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the next <tt>Entry</tt> of an <tt>Iterator</tt>.
+     *
+     * @param iter the <tt>Iterator</tt>
+     * @return the next <tt>Entry</tt> of <tt>iter</tt> or <tt>null</tt> if it
+     * has no more entries
+     */
+    private static Entry next(Iterator<Entry> iter)
+    {
+        return iter.hasNext() ? iter.next() : null;
+    }
+
+    /**
+     * Finds the index at which an <tt>Entry</tt> is to be inserted into
+     * {@link #chatContacts}, after the entries it is equal to.
+     *
+     * @param entry the <tt>Entry</tt> to insert
+     * @return the index at which <tt>entry</tt> is to be inserted
+     */
+    private int insertionIndex(Entry entry)
+    {
+        int low = 0;
+        int high = chatContacts.size();
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (sorter.compare(chatContacts.get(mid), entry) <= 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Finds the index of an <tt>Entry</tt> of {@link #chatContacts}.
+     *
+     * @param entry the <tt>Entry</tt> to find
+     * @return the index of <tt>entry</tt> in <tt>chatContacts</tt>
+     */
+    private int indexOf(Entry entry)
+    {
+        int low = 0;
+        int high = chatContacts.size();
+
+        // Find the first of the entries equal to entry.
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (sorter.compare(chatContacts.get(mid), entry) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        for (int i = low, count = chatContacts.size(); i < count; i++)
+        {
+            if (chatContacts.get(i) == entry)
+                return i;
+        }
+        throw new IllegalStateException("entry");
+    }
+
     /**
      * Runs clean-up.
      */
@@ -246,4 +438,55 @@ public void dispose()
                 .getChatRoom().removeMemberPropertyChangeListener(this);
         }
     }
+
+    /**
+     * A <tt>ChatContact</tt> of the list along with the role and the name it
+     * is sorted by, so that the sorting of the list remains consistent when
+     * they change until the list is notified about the change.
+     */
+    private static class Entry
+    {
+        /**
+         * The <tt>ChatContact</tt>.
+         */
+        final ChatContact<?> chatContact;
+
+        /**
+         * Whether {@link #chatContact} is a <tt>ConferenceChatContact</tt>.
+         */
+        final boolean conference;
+
+        /**
+         * The index of the role of {@link #chatContact} if it is a
+         * <tt>ConferenceChatContact</tt>.
+         */
+        final int role;
+
+        /**
+         * The name of {@link #chatContact}.
+         */
+        final String name;
+
+        /**
+         * Initializes a new <tt>Entry</tt> with the current role and name of
+         * a specific <tt>ChatContact</tt>.
+         *
+         * @param chatContact the <tt>ChatContact</tt>
+         */
+        Entry(ChatContact<?> chatContact)
+        {
+            this.chatContact = chatContact;
+
+            conference = (chatContact instanceof ConferenceChatContact);
+            role
+                = conference
+                    ? ((ConferenceChatContact) chatContact).getRole()
+                            .getRoleIndex()
+                    : 0;
+
+            String name = chatContact.getName();
+
+            this.name = (name == null) ? "" : name;
+        }
+    }
 }
@@ -59,6 +59,22 @@
      */
     private final ChatSessionRenderer sessionRenderer;
 
+    /**
+     * The chat participants by the identities of their
+     * <tt>ChatRoomMember</tt>s. (It is locked along with
+     * <tt>chatParticipants</tt>.) The index is by identity, because the hash
+     * code of some members, such as IRC ones, changes with their nickname.
+     */
+    private final Map<ChatRoomMember, ChatContact<?>> participantsByMember
+        = new IdentityHashMap<ChatRoomMember, ChatContact<?>>();
+
+    /**
+     * The <tt>ChatRoomMemberPresenceChangeEvent</tt>s which are yet to be
+     * handled on the event dispatch thread.
+     */
+    private final List<ChatRoomMemberPresenceChangeEvent> pendingPresenceEvents
+        = new ArrayList<ChatRoomMemberPresenceChangeEvent>();
+
     /**
      * Creates an instance of <tt>ConferenceChatSession</tt>, by specifying the
      * sessionRenderer to be used for communication with the UI and the chatRoom
@@ -395,130 +411,254 @@ public ChatSessionRenderer getChatSessionRenderer()
      * list of chat participants on the right of the chat window. When a
      * <tt>ChatRoomMember</tt> has left or quit, or has being kicked it's
      * removed from the chat window.
+     * <p>
+     * The events are queued and handled in batches on the event dispatch
+     * thread, so that the list of a chat room with thousands of members is
+     * updated once per batch rather than once per member.
+     * </p>
      * @param evt the <tt>ChatRoomMemberPresenceChangeEvent</tt> that notified
      * us
      */
-    public void memberPresenceChanged(
-        final ChatRoomMemberPresenceChangeEvent evt)
+    public void memberPresenceChanged(ChatRoomMemberPresenceChangeEvent evt)
     {
-        if(!SwingUtilities.isEventDispatchThread())
+        synchronized (pendingPresenceEvents)
+        {
+            pendingPresenceEvents.add(evt);
+            // The events queued before will be handled along with this one.
+            if (pendingPresenceEvents.size() > 1)
+                return;
+        }
+
+        if(SwingUtilities.isEventDispatchThread())
+            handlePendingPresenceEvents();
+        else
         {
             SwingUtilities.invokeLater(new Runnable()
             {
                 @Override
                 public void run()
                 {
-                    memberPresenceChanged(evt);
+                    handlePendingPresenceEvents();
                 }
             });
-            return;
         }
+    }
 
+    /**
+     * Handles the queued <tt>ChatRoomMemberPresenceChangeEvent</tt>s in the
+     * order they were received, adding the members who joined in between the
+     * ones who left to the list of chat participants at once.
+     */
+    private void handlePendingPresenceEvents()
+    {
+        List<ChatRoomMemberPresenceChangeEvent> events;
+
+        synchronized (pendingPresenceEvents)
+        {
+            events
+                = new ArrayList<ChatRoomMemberPresenceChangeEvent>(
+                        pendingPresenceEvents);
+            pendingPresenceEvents.clear();
+        }
+
+        List<ChatContact<?>> joined = new ArrayList<ChatContact<?>>();
+
+        for (ChatRoomMemberPresenceChangeEvent evt : events)
+        {
+            ChatRoom sourceChatRoom = (ChatRoom) evt.getSource();
+
+            if(!sourceChatRoom.equals(chatRoomWrapper.getChatRoom()))
+                continue;
+
+            String eventType = evt.getEventType();
+
+            if (eventType.equals(
+                    ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED))
+            {
+                memberJoined(evt, joined);
+            }
+            else if (eventType.equals(
+                        ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT)
+                    || eventType.equals(
+                        ChatRoomMemberPresenceChangeEvent.MEMBER_KICKED)
+                    || eventType.equals(
+                        ChatRoomMemberPresenceChangeEvent.MEMBER_QUIT))
+            {
+                if (!joined.isEmpty())
+                {
+                    sessionRenderer.addChatContacts(joined);
+                    joined = new ArrayList<ChatContact<?>>();
+                }
+                memberLeft(evt);
+            }
+        }
+        if (!joined.isEmpty())
+            sessionRenderer.addChatContacts(joined);
+    }
+
+    /**
+     * Adds a <tt>ChatRoomMember</tt> who has joined the chat to the chat
+     * participants.
+     *
+     * @param evt the <tt>ChatRoomMemberPresenceChangeEvent</tt> that notified
+     * us
+     * @param joined the chat contacts to add to the list of chat participants
+     * on the right of the chat window
+     */
+    private void memberJoined(
+        ChatRoomMemberPresenceChangeEvent evt,
+        List<ChatContact<?>> joined)
+    {
         ChatRoom sourceChatRoom = (ChatRoom) evt.getSource();
+        ChatRoomMember chatRoomMember = evt.getChatRoomMember();
+        ConferenceChatContact chatContact
+            = new ConferenceChatContact(chatRoomMember);
 
-        if(!sourceChatRoom.equals(chatRoomWrapper.getChatRoom()))
-            return;
+        // Check if not ever present in the chat room. In some cases, the
+        // considered chatroom member may appear twice in the chat contact
+        // list panel.
+        synchronized (chatParticipants)
+        {
+            addChatParticipant(chatContact);
+        }
+        joined.add(chatContact);
 
+        ChatRoom room = chatRoomWrapper.getChatRoom();
+        if(room != null)
+        {
+            room.updatePrivateContactPresenceStatus(
+                chatRoomMember.getName());
+        }
+        /*
+         * When the whole list of members of a given chat room is reported,
+         * it doesn't make sense to see "ChatContact has joined #ChatRoom"
+         * for all of them one after the other. Such an event occurs not
+         * because the ChatContact has joined after us but rather she was
+         * there before us.
+         */
+        if (!evt.isReasonUserList())
+        {
+            String statusMessage = GuiActivator.getResources().getI18NString(
+                "service.gui.CHAT_ROOM_USER_JOINED",
+                new String[] {sourceChatRoom.getName()});
+
+            sessionRenderer.updateChatContactStatus(
+                chatContact,
+                statusMessage);
+        }
+    }
+
+    /**
+     * Removes a <tt>ChatRoomMember</tt> who has left or quit, or has been
+     * kicked from the chat participants.
+     *
+     * @param evt the <tt>ChatRoomMemberPresenceChangeEvent</tt> that notified
+     * us
+     */
+    private void memberLeft(ChatRoomMemberPresenceChangeEvent evt)
+    {
+        ChatRoom sourceChatRoom = (ChatRoom) evt.getSource();
         String eventType = evt.getEventType();
         ChatRoomMember chatRoomMember = evt.getChatRoomMember();
-
         String statusMessage = null;
 
-        if (eventType.equals(ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED))
+        if(eventType.equals(ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT))
         {
-            ConferenceChatContact chatContact
-                = new ConferenceChatContact(chatRoomMember);
+            statusMessage = GuiActivator.getResources().getI18NString(
+                "service.gui.CHAT_ROOM_USER_LEFT",
+                new String[] {sourceChatRoom.getName()});
+        }
+        else if(eventType.equals(
+            ChatRoomMemberPresenceChangeEvent.MEMBER_KICKED))
+        {
+            statusMessage = GuiActivator.getResources().getI18NString(
+                "service.gui.CHAT_ROOM_USER_KICKED",
+                new String[] {sourceChatRoom.getName()});
+        }
+        else if(eventType.equals(
+            ChatRoomMemberPresenceChangeEvent.MEMBER_QUIT))
+        {
+            statusMessage = GuiActivator.getResources().getI18NString(
+                "service.gui.CHAT_ROOM_USER_QUIT",
+                new String[] {sourceChatRoom.getName()});
+        }
 
-            // Check if not ever present in the chat room. In some cases, the
-            // considered chatroom member may appear twice in the chat contact
-            // list panel.
-            synchronized (chatParticipants)
-            {
-                if (!chatParticipants.contains(chatContact))
-                    chatParticipants.add(chatContact);
-                    sessionRenderer.addChatContact(chatContact);
-            }
-            
+        // Keeping the list of chat participants current is required in order
+        // to get good member name tab-completion.
+        ChatContact<?> chatContact;
+
+        synchronized (chatParticipants)
+        {
+            chatContact = removeChatParticipant(chatRoomMember);
+        }
+
+        if (chatContact != null)
+        {
+            sessionRenderer.updateChatContactStatus(
+                chatContact, statusMessage);
+
+            sessionRenderer.removeChatContact(chatContact);
             ChatRoom room = chatRoomWrapper.getChatRoom();
             if(room != null)
             {
                 room.updatePrivateContactPresenceStatus(
                     chatRoomMember.getName());
             }
-            /*
-             * When the whole list of members of a given chat room is reported,
-             * it doesn't make sense to see "ChatContact has joined #ChatRoom"
-             * for all of them one after the other. Such an event occurs not
-             * because the ChatContact has joined after us but rather she was
-             * there before us.
-             */
-            if (!evt.isReasonUserList())
-            {
-                statusMessage = GuiActivator.getResources().getI18NString(
-                    "service.gui.CHAT_ROOM_USER_JOINED",
-                    new String[] {sourceChatRoom.getName()});
+        }
+    }
 
-                sessionRenderer.updateChatContactStatus(
-                    chatContact,
-                    statusMessage);
-            }
+    /**
+     * Adds a <tt>ConferenceChatContact</tt> to the chat participants unless
+     * its <tt>ChatRoomMember</tt> is already there. (It is assumed that
+     * <tt>chatParticipants</tt> is locked.)
+     *
+     * @param chatContact the <tt>ConferenceChatContact</tt> to add
+     */
+    private void addChatParticipant(ConferenceChatContact chatContact)
+    {
+        if (!participantsByMember.containsKey(chatContact.getDescriptor()))
+        {
+            participantsByMember.put(chatContact.getDescriptor(), chatContact);
+            chatParticipants.add(chatContact);
         }
-        else if (eventType.equals(ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT)
-            || eventType.equals(ChatRoomMemberPresenceChangeEvent.MEMBER_KICKED)
-            || eventType.equals(ChatRoomMemberPresenceChangeEvent.MEMBER_QUIT))
+    }
+
+    /**
+     * Removes the chat participant of a <tt>ChatRoomMember</tt>. A member
+     * which is not the one of a participant but is equal to it, such as a new
+     * instance for the same member, is found by a linear search. (It is
+     * assumed that <tt>chatParticipants</tt> is locked.)
+     *
+     * @param chatRoomMember the <tt>ChatRoomMember</tt> whose participant is
+     * to be removed
+     * @return the removed chat participant or <tt>null</tt> if
+     * <tt>chatRoomMember</tt> has none
+     */
+    private ChatContact<?> removeChatParticipant(ChatRoomMember chatRoomMember)
+    {
+        ChatContact<?> chatContact
+            = participantsByMember.remove(chatRoomMember);
+
+        if (chatContact == null)
         {
-            if(eventType.equals(ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT))
-            {
-                statusMessage = GuiActivator.getResources().getI18NString(
-                    "service.gui.CHAT_ROOM_USER_LEFT",
-                    new String[] {sourceChatRoom.getName()});
-            }
-            else if(eventType.equals(
-                ChatRoomMemberPresenceChangeEvent.MEMBER_KICKED))
-            {
-                statusMessage = GuiActivator.getResources().getI18NString(
-                    "service.gui.CHAT_ROOM_USER_KICKED",
-                    new String[] {sourceChatRoom.getName()});
-            }
-            else if(eventType.equals(
-                ChatRoomMemberPresenceChangeEvent.MEMBER_QUIT))
-            {
-                statusMessage = GuiActivator.getResources().getI18NString(
-                    "service.gui.CHAT_ROOM_USER_QUIT",
-                    new String[] {sourceChatRoom.getName()});
-            }
+            Iterator<Map.Entry<ChatRoomMember, ChatContact<?>>> iter
+                = participantsByMember.entrySet().iterator();
 
-            ChatContact<?> contact = null;
-            for (ChatContact<?> chatContact : chatParticipants)
+            while (iter.hasNext())
             {
-                if(chatContact.getDescriptor().equals(chatRoomMember))
+                Map.Entry<ChatRoomMember, ChatContact<?>> entry = iter.next();
+
+                if (entry.getKey().equals(chatRoomMember))
                 {
-                    contact = chatContact;
-                    sessionRenderer.updateChatContactStatus(
-                        chatContact, statusMessage);
-
-                    sessionRenderer.removeChatContact(chatContact);
-                    ChatRoom room = chatRoomWrapper.getChatRoom();
-                    if(room != null)
-                    {
-                        room.updatePrivateContactPresenceStatus(
-                            chatRoomMember.getName());
-                    }
+                    chatContact = entry.getValue();
+                    iter.remove();
                     break;
                 }
             }
-            
-            if (contact != null)
-            {
-                // If contact found, remove from chat participants.
-                // Keeping this list current is required in order to get good
-                // member name tab-completion.
-                synchronized (chatParticipants)
-                {
-                    chatParticipants.remove(contact);
-                }
-            }
         }
+        if (chatContact != null)
+            chatParticipants.remove(chatContact);
+        return chatContact;
     }
 
     public void chatRoomPropertyChangeFailed(
@@ -570,14 +710,11 @@ public void loadChatRoom(ChatRoom chatRoom)
             // Remove all existing contacts.
             sessionRenderer.removeAllChatContacts();
             this.chatParticipants.clear();
+            this.participantsByMember.clear();
             // Add the new list of members.
             for (ChatRoomMember member : chatRoom.getMembers())
-            {
-                ConferenceChatContact contact =
-                    new ConferenceChatContact(member);
-                chatParticipants.add(contact);
-                sessionRenderer.addChatContact(contact);
-            }
+                addChatParticipant(new ConferenceChatContact(member));
+            sessionRenderer.addChatContacts(chatParticipants);
         }
 
         // Add all listeners to the new chat room.
@@ -626,7 +763,7 @@ private void initChatParticipants()
 
         if ((chatRoom != null) && chatRoom.isJoined())
             for (ChatRoomMember member : chatRoom.getMembers())
-                chatParticipants.add(new ConferenceChatContact(member));
+                addChatParticipant(new ConferenceChatContact(member));
     }
 
     /**
@@ -107,6 +107,12 @@
 
     private int lastProgress = 0;
 
+    /**
+     * The query loading the messages or the dates being shown, canceled when
+     * the user asks for others. Only accessed on the event dispatch thread.
+     */
+    private MetaHistoryQuery historyQuery;
+
     /**
      * If the <code>historyContact</code> is a <code>MetaContact</code>,
      * contains the <code>OperationSetBasicInstantMessaging</code> instances to
@@ -561,17 +567,45 @@ public void run() {
         }
      }
 
+    /**
+     * Starts a query, canceling the query of the messages or dates previously
+     * requested.
+     *
+     * @param query the query of the messages or dates requested now
+     */
+    private void setHistoryQuery(MetaHistoryQuery query)
+    {
+        if (historyQuery != null)
+            historyQuery.cancel();
+        historyQuery = query;
+    }
+
+    /**
+     * Returns the descriptor of the history to query.
+     *
+     * @return the <tt>MetaContact</tt> or the <tt>ChatRoom</tt> of the
+     * history or <tt>null</tt> if the chat room is not available
+     */
+    private Object getHistoryDescriptor()
+    {
+        if (historyContact instanceof ChatRoomWrapper)
+            return ((ChatRoomWrapper) historyContact).getChatRoom();
+        else
+            return historyContact;
+    }
+
     /**
      * Loads history messages in the right panel.
      */
-    private class MessagesLoader extends Thread
+    private class MessagesLoader
+        implements MetaHistoryQueryListener
     {
         private final Date startDate;
         private final Date endDate;
 
         /**
-         * Creates a MessageLoader thread charged to load history messages in
-         * the right panel.
+         * Creates a MessageLoader charged to load history messages in the
+         * right panel.
          *
          * @param startDate the start date of the history to load
          * @param endDate the end date of the history to load
@@ -582,38 +616,42 @@ public MessagesLoader (Date startDate, Date endDate)
             this.endDate = endDate;
         }
 
-        @Override
-        public void run()
+        /**
+         * Starts loading the messages in the background.
+         */
+        public void start()
         {
-            final Collection<Object> msgList;
+            Object descriptor = getHistoryDescriptor();
 
-            if(historyContact instanceof MetaContact)
-            {
-                msgList = history.findByPeriod(
-                    HISTORY_FILTER,
-                    historyContact,
-                    startDate, endDate);
-            }
-            else if (historyContact instanceof ChatRoomWrapper)
-            {
-                ChatRoomWrapper chatRoomWrapper
-                    = (ChatRoomWrapper) historyContact;
-
-                if(chatRoomWrapper.getChatRoom() == null)
-                    return;
+            if (descriptor == null)
+                return;
 
-                msgList = history.findByPeriod(
+            setHistoryQuery(
+                history.findByPeriod(
                     HISTORY_FILTER,
-                    chatRoomWrapper.getChatRoom(),
-                    startDate, endDate);
-            }
-            else
-                msgList = null;
+                    descriptor,
+                    startDate, endDate,
+                    this));
+        }
+
+        public void recordsReceived(
+            MetaHistoryQuery query,
+            Collection<Object> records)
+        {
+        }
 
+        public void queryCompleted(
+            final MetaHistoryQuery query,
+            final Collection<Object> msgList)
+        {
             Runnable updateMessagesPanel = new Runnable()
             {
                 public void run()
                 {
+                    // the user has asked for other messages meanwhile
+                    if (query != historyQuery)
+                        return;
+
                     HTMLDocument doc = createHistory(msgList);
 
                     if(searchKeyword == null || searchKeyword.length() == 0)
@@ -629,14 +667,15 @@ public void run()
     /**
      * Loads dates found for keyword.
      */
-    private class KeywordDatesLoader extends Thread
+    private class KeywordDatesLoader
+        implements MetaHistoryQueryListener
     {
         private Vector<Date> keywordDatesVector = new Vector<Date>();
         private final String keyword;
 
         /**
-         * Creates a KeywordDatesLoader thread charged to load a list of dates
-         * of messages found by the given keyword.
+         * Creates a KeywordDatesLoader charged to load a list of dates of
+         * messages found by the given keyword.
          *
          * @param keyword the keyword to search for
          */
@@ -645,31 +684,35 @@ public KeywordDatesLoader(String keyword)
             this.keyword = keyword;
         }
 
-        @Override
-        public void run()
+        /**
+         * Starts searching for the keyword in the background.
+         */
+        public void start()
         {
-            Collection<Object> msgList = null;
+            Object descriptor = getHistoryDescriptor();
 
-            if (historyContact instanceof MetaContact)
-            {
-                msgList = history.findByKeyword(
-                    HISTORY_FILTER,
-                    historyContact, keyword);
-            }
-            else if (historyContact instanceof ChatRoomWrapper)
-            {
-                ChatRoomWrapper chatRoomWrapper
-                    = (ChatRoomWrapper) historyContact;
-
-                if (chatRoomWrapper.getChatRoom() == null)
-                    return;
+            if (descriptor == null)
+                return;
 
-                msgList = history.findByKeyword(
+            setHistoryQuery(
+                history.findByKeywords(
                     HISTORY_FILTER,
-                    chatRoomWrapper.getChatRoom(), keyword);
-            }
+                    descriptor,
+                    new String[] { keyword },
+                    false,
+                    this));
+        }
 
-            if (msgList != null)
+        public void recordsReceived(
+            MetaHistoryQuery query,
+            Collection<Object> records)
+        {
+        }
+
+        public void queryCompleted(
+            final MetaHistoryQuery query,
+            Collection<Object> msgList)
+        {
             for (Object o : msgList)
             {
                 Date date = new Date(0);
@@ -701,6 +744,10 @@ else if (o instanceof MessageReceivedEvent)
             {
                 public void run()
                 {
+                    // the user has asked for other messages meanwhile
+                    if (query != historyQuery)
+                        return;
+
                     datesPanel.removeAllDates();
                     if(keywordDatesVector.size() > 0)
                     {
@@ -759,6 +806,7 @@ protected void close(boolean isEscaped)
          * collection.
          */
         history.removeSearchProgressListener(this);
+        setHistoryQuery(null);
 
         if (basicInstantMessagings != null)
         {
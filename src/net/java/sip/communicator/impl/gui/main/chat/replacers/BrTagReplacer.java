@@ -32,6 +32,13 @@
 public class BrTagReplacer
     implements Replacer
 {
+    /**
+     * The regex to match something like &lt;br .. /&gt; or &lt;BR .. /&gt;.
+     * This regex is case sensitive and keeps the style or other attributes of
+     * the &lt;br&gt; tag.
+     */
+    private static final Pattern BR_TAG_PATTERN =
+        Pattern.compile("<\\s*[bB][rR](.*?)(/\\s*>)");
 
     /**
      * BrTagReplacer expects HTML content.
@@ -55,11 +62,7 @@ public boolean expectsPlainText()
     @Override
     public void replace(final StringBuilder target, final String piece)
     {
-        // Compile the regex to match something like <br .. /> or <BR .. />.
-        // This regex is case sensitive and keeps the style or other
-        // attributes of the <br> tag.
-        Matcher m =
-            Pattern.compile("<\\s*[bB][rR](.*?)(/\\s*>)").matcher(piece);
+        Matcher m = BR_TAG_PATTERN.matcher(piece);
         int start = 0;
 
         // while we find some <br /> closing tags with a slash inside.
@@ -33,6 +33,13 @@
 public class ImgTagReplacer
     implements Replacer
 {
+    /**
+     * The regex to match something like &lt;img ... /&gt; or
+     * &lt;IMG ... /&gt;. This regex is case sensitive and keeps the style,
+     * src or other attributes of the &lt;img&gt; tag.
+     */
+    private static final Pattern IMG_TAG_PATTERN =
+        Pattern.compile("<\\s*[iI][mM][gG](.*?)(/\\s*>)");
 
     /**
      * Img tag replacer expects HTML content.
@@ -54,11 +61,7 @@ public boolean expectsPlainText()
     @Override
     public void replace(final StringBuilder target, final String piece)
     {
-        // Compile the regex to match something like <img ... /> or
-        // <IMG ... />. This regex is case sensitive and keeps the style,
-        // src or other attributes of the <img> tag.
-        final Pattern p = Pattern.compile("<\\s*[iI][mM][gG](.*?)(/\\s*>)");
-        final Matcher m = p.matcher(piece);
+        final Matcher m = IMG_TAG_PATTERN.matcher(piece);
         int slashIndex;
         int start = 0;
 
@@ -51,6 +51,12 @@
      */
     private final String keyword;
 
+    /**
+     * The compiled pattern for matching the keyword, or <tt>null</tt> if
+     * there is no keyword to highlight.
+     */
+    private final Pattern pattern;
+
     /**
      * The keyword replacer with parameter for providing the keyword to
      * highlight.
@@ -60,6 +66,26 @@
     public KeywordReplacer(final String keyword)
     {
         this.keyword = keyword;
+        if (keyword == null || keyword.isEmpty())
+        {
+            this.pattern = null;
+        }
+        else
+        {
+            this.pattern =
+                Pattern.compile("(^|\\W)(" + Pattern.quote(keyword)
+                    + ")(\\W|$)", Pattern.CASE_INSENSITIVE);
+        }
+    }
+
+    /**
+     * Get the keyword that is highlighted by this replacer.
+     *
+     * @return returns the keyword, may be <tt>null</tt>
+     */
+    public String getKeyword()
+    {
+        return this.keyword;
     }
 
     /**
@@ -84,15 +110,13 @@ public boolean expectsPlainText()
     @Override
     public void replace(final StringBuilder target, final String piece)
     {
-        if (this.keyword == null || this.keyword.isEmpty())
+        if (this.pattern == null)
         {
             target.append(StringEscapeUtils.escapeHtml4(piece));
             return;
         }
 
-        final Matcher m =
-            Pattern.compile("(^|\\W)(" + Pattern.quote(keyword) + ")(\\W|$)",
-                Pattern.CASE_INSENSITIVE).matcher(piece);
+        final Matcher m = this.pattern.matcher(piece);
         int prevEnd = 0;
         while (m.find())
         {
@@ -0,0 +1,228 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.chat.replacers;
+
+import java.util.*;
+import java.util.regex.*;
+
+import net.java.sip.communicator.service.replacement.*;
+
+/**
+ * Precompiled matcher for the patterns of all available
+ * {@link ReplacementService}s.
+ *
+ * <p>
+ * The patterns of all replacement services are compiled once into a single
+ * combined pattern of the form <tt>(p1)|(p2)|...|(pn)</tt>, such that a piece
+ * of text can be processed for all replacement services in a single pass. The
+ * group that participated in a match identifies the replacement service. In
+ * case of matches of multiple services at the same position, the service that
+ * comes first wins.
+ * </p>
+ *
+ * <p>
+ * The compiled patterns are cached and only recompiled when the set of
+ * replacement services changes or when a service reports a different pattern,
+ * e.g. after reloading the smiley pack.
+ * </p>
+ */
+public class ReplacementServiceMatcher
+{
+    /**
+     * Flags used for compiling replacement service patterns.
+     */
+    private static final int FLAGS = Pattern.CASE_INSENSITIVE | Pattern.DOTALL;
+
+    /**
+     * The currently compiled snapshot.
+     */
+    private volatile Snapshot snapshot =
+        new Snapshot(Collections.<ReplacementService>emptyList());
+
+    /**
+     * Get a compiled snapshot for the provided replacement services. The
+     * previously compiled snapshot is reused if it still matches the provided
+     * services and their patterns.
+     *
+     * @param services the replacement services in order of precedence
+     * @return returns the compiled snapshot
+     */
+    public Snapshot getSnapshot(final Collection<ReplacementService> services)
+    {
+        if (services == null)
+        {
+            throw new IllegalArgumentException("services cannot be null");
+        }
+        Snapshot current = this.snapshot;
+        if (current.isUpToDate(services))
+        {
+            return current;
+        }
+        synchronized (this)
+        {
+            current = this.snapshot;
+            if (!current.isUpToDate(services))
+            {
+                current = new Snapshot(services);
+                this.snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Immutable compiled state for a specific list of replacement services.
+     */
+    public static final class Snapshot
+    {
+        /**
+         * The replacement services in order of precedence.
+         */
+        private final ReplacementService[] services;
+
+        /**
+         * The (uncompiled) patterns of the replacement services at the time of
+         * compilation.
+         */
+        private final String[] sources;
+
+        /**
+         * The compiled patterns of the individual replacement services.
+         */
+        private final Pattern[] patterns;
+
+        /**
+         * Index of the group in the combined pattern that corresponds to the
+         * replacement service with the same index.
+         */
+        private final int[] groups;
+
+        /**
+         * The combined pattern, or <tt>null</tt> if there are no replacement
+         * services.
+         */
+        private final Pattern combined;
+
+        /**
+         * Compile the snapshot.
+         *
+         * @param services the replacement services in order of precedence
+         */
+        private Snapshot(final Collection<ReplacementService> services)
+        {
+            final int size = services.size();
+            this.services = services.toArray(new ReplacementService[size]);
+            this.sources = new String[size];
+            this.patterns = new Pattern[size];
+            this.groups = new int[size];
+            final StringBuilder regex = new StringBuilder();
+            int group = 1;
+            for (int i = 0; i < size; i++)
+            {
+                this.sources[i] = this.services[i].getPattern();
+                this.patterns[i] = Pattern.compile(this.sources[i], FLAGS);
+                this.groups[i] = group;
+                group += 1 + this.patterns[i].matcher("").groupCount();
+                if (i > 0)
+                {
+                    regex.append('|');
+                }
+                regex.append('(').append(this.sources[i]).append(')');
+            }
+            this.combined =
+                size == 0 ? null : Pattern.compile(regex.toString(), FLAGS);
+        }
+
+        /**
+         * Check whether this snapshot was compiled for exactly these
+         * replacement services with their current patterns.
+         *
+         * @param services the replacement services
+         * @return returns <tt>true</tt> if up-to-date, or <tt>false</tt> if it
+         *         needs to be recompiled
+         */
+        private boolean isUpToDate(final Collection<ReplacementService> services)
+        {
+            if (services.size() != this.services.length)
+            {
+                return false;
+            }
+            int i = 0;
+            for (ReplacementService service : services)
+            {
+                if (service != this.services[i]
+                    || !this.sources[i].equals(service.getPattern()))
+                {
+                    return false;
+                }
+                i++;
+            }
+            return true;
+        }
+
+        /**
+         * Get the compiled pattern of an individual replacement service.
+         *
+         * @param service the replacement service
+         * @return returns the compiled pattern or <tt>null</tt> if service is
+         *         not part of this snapshot
+         */
+        public Pattern getPattern(final ReplacementService service)
+        {
+            for (int i = 0; i < this.services.length; i++)
+            {
+                if (this.services[i] == service)
+                {
+                    return this.patterns[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Create a matcher of the combined pattern for the provided text.
+         *
+         * @param text the text to match
+         * @return returns the matcher or <tt>null</tt> if there are no
+         *         replacement services
+         */
+        public Matcher matcher(final CharSequence text)
+        {
+            return this.combined == null ? null : this.combined.matcher(text);
+        }
+
+        /**
+         * Get the replacement service that is responsible for the current
+         * match of a matcher created by {@link #matcher(CharSequence)}.
+         *
+         * @param matcher the matcher that found a match
+         * @return returns the matching replacement service
+         */
+        public ReplacementService getMatchingService(final Matcher matcher)
+        {
+            for (int i = 0; i < this.groups.length; i++)
+            {
+                if (matcher.start(this.groups[i]) >= 0)
+                {
+                    return this.services[i];
+                }
+            }
+            throw new IllegalStateException("no replacement service matched");
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package net.java.sip.communicator.impl.metahistory;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.service.callhistory.*;
 import net.java.sip.communicator.service.callhistory.event.*;
@@ -38,6 +39,11 @@
  * The Meta History Service is wrapper around the other known
  * history services. Query them all at once, sort the result and return all
  * merged records in one collection.
+ * <p>
+ * The services are queried in parallel, so a query takes as long as the
+ * slowest service rather than the sum of all of them. The sorted records of
+ * the services are then merged, stopping as soon as the requested number of
+ * records is reached.
  *
  * @author Damian Minkov
  */
@@ -51,6 +57,12 @@
     private static final Logger logger =
         Logger.getLogger(MetaHistoryServiceImpl.class);
 
+    /**
+     * Orders the records of all the services by their timestamp.
+     */
+    private static final Comparator<Object> RECORDS_COMPARATOR
+        = new RecordsComparator();
+
     /**
      * The BundleContext that we got from the OSGI bus.
      */
@@ -64,6 +76,11 @@
     private final List<HistorySearchProgressListener> progressListeners
         = new ArrayList<HistorySearchProgressListener>();
 
+    /**
+     * The executor which queries the history services in parallel.
+     */
+    private volatile ExecutorService queryExecutor;
+
     /**
      * Returns all the records for the descriptor after the given date.
      *
@@ -76,55 +93,41 @@
      * @throws RuntimeException
      */
     public Collection<Object> findByStartDate(String[] services,
-            Object descriptor, Date startDate)
+            Object descriptor, final Date startDate)
         throws RuntimeException
     {
-        MessageProgressWrapper listenWrapper
-            = new MessageProgressWrapper(services.length);
-
-        TreeSet<Object> result = new TreeSet<Object>(new RecordsComparator());
-        for (int i = 0; i < services.length; i++)
+        RecordsQuery query = new RecordsQuery(startDate, null, null)
         {
-            String name = services[i];
-            Object serv = getService(name);
-            if(serv instanceof MessageHistoryService)
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, MetaContact metaContact)
             {
-                MessageHistoryService mhs =
-                    (MessageHistoryService)serv;
-                listenWrapper.setIx(i);
-                mhs.addSearchProgressListener(listenWrapper);
+                return mhs.findByStartDate(metaContact, startDate);
+            }
 
-                if(descriptor instanceof MetaContact)
-                {
-                    result.addAll(
-                        mhs.findByStartDate((MetaContact)descriptor, startDate));
-                }
-                else if(descriptor instanceof ChatRoom)
-                {
-                    result.addAll(
-                        mhs.findByStartDate((ChatRoom)descriptor, startDate));
-                }
-                mhs.removeSearchProgressListener(listenWrapper);
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, ChatRoom room)
+            {
+                return mhs.findByStartDate(room, startDate);
             }
-            else if(serv instanceof FileHistoryService
-                    && descriptor instanceof MetaContact)
+
+            @Override
+            Collection<?> findFiles(
+                FileHistoryService fhs, MetaContact metaContact)
             {
-                result.addAll(
-                    ((FileHistoryService)serv).findByStartDate(
-                        (MetaContact)descriptor, startDate));
+                return fhs.findByStartDate(metaContact, startDate);
             }
-            else if(serv instanceof CallHistoryService)
+
+            @Override
+            Collection<?> findCalls(CallHistoryService chs)
             {
-                CallHistoryService chs = (CallHistoryService)serv;
-                listenWrapper.setIx(i);
-                chs.addSearchProgressListener(listenWrapper);
-                result.addAll(chs.findByStartDate(startDate));
-                chs.removeSearchProgressListener(listenWrapper);
+                return chs.findByStartDate(startDate);
             }
-        }
-        listenWrapper.fireLastProgress(startDate, null, null);
+        };
 
-        return result;
+        return startQuery(services, descriptor, query, null)
+            .waitForResult();
     }
 
     /**
@@ -142,53 +145,67 @@ public Collection<Object> findByEndDate(String[] services,
             Object descriptor, Date endDate)
         throws RuntimeException
     {
-        MessageProgressWrapper listenWrapper
-            = new MessageProgressWrapper(services.length);
+        return startQuery(
+                services, descriptor, createFindByEndDate(endDate), null)
+            .waitForResult();
+    }
 
-        TreeSet<Object> result = new TreeSet<Object>(new RecordsComparator());
-        for (int i = 0; i < services.length; i++)
+    /**
+     * Starts a query for all the records before the given date and returns
+     * without waiting for its result.
+     *
+     * @param services the services classnames we will query
+     * @param descriptor CallPeer address(String),
+     *  MetaContact or ChatRoom.
+     * @param endDate Date the date of the last record to return
+     * @param listener the listener notified of the records found
+     * @return the query, which may be canceled
+     */
+    public MetaHistoryQuery findByEndDate(String[] services,
+            Object descriptor, Date endDate,
+            MetaHistoryQueryListener listener)
+    {
+        return startQuery(
+                services, descriptor, createFindByEndDate(endDate), listener);
+    }
+
+    /**
+     * Creates the query for all the records before the given date.
+     *
+     * @param endDate Date the date of the last record to return
+     * @return the query for each of the services
+     */
+    private RecordsQuery createFindByEndDate(final Date endDate)
+    {
+        return new RecordsQuery(null, endDate, null)
         {
-            String name = services[i];
-            Object serv = getService(name);
-            if(serv instanceof MessageHistoryService)
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, MetaContact metaContact)
             {
-                MessageHistoryService mhs =
-                    (MessageHistoryService)serv;
-                listenWrapper.setIx(i);
-                mhs.addSearchProgressListener(listenWrapper);
-
-                if(descriptor instanceof MetaContact)
-                {
-                    result.addAll(
-                        mhs.findByEndDate((MetaContact)descriptor, endDate));
-                }
-                else if(descriptor instanceof ChatRoom)
-                {
-                    result.addAll(
-                        mhs.findByEndDate((ChatRoom)descriptor, endDate));
-                }
-                mhs.removeSearchProgressListener(listenWrapper);
+                return mhs.findByEndDate(metaContact, endDate);
             }
-            else if(serv instanceof FileHistoryService
-                    && descriptor instanceof MetaContact)
+
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, ChatRoom room)
             {
-                result.addAll(
-                    ((FileHistoryService)serv).findByEndDate(
-                        (MetaContact)descriptor, endDate));
+                return mhs.findByEndDate(room, endDate);
             }
-            else if(serv instanceof CallHistoryService)
+
+            @Override
+            Collection<?> findFiles(
+                FileHistoryService fhs, MetaContact metaContact)
             {
-                CallHistoryService chs = (CallHistoryService)serv;
-                listenWrapper.setIx(i);
-                chs.addSearchProgressListener(listenWrapper);
-                result.addAll(
-                    chs.findByEndDate(endDate));
-                chs.removeSearchProgressListener(listenWrapper);
+                return fhs.findByEndDate(metaContact, endDate);
             }
-        }
-        listenWrapper.fireLastProgress(null, endDate, null);
 
-        return result;
+            @Override
+            Collection<?> findCalls(CallHistoryService chs)
+            {
+                return chs.findByEndDate(endDate);
+            }
+        };
     }
 
     /**
@@ -207,56 +224,76 @@ public Collection<Object> findByPeriod(String[] services,
             Object descriptor, Date startDate, Date endDate)
         throws RuntimeException
     {
-        MessageProgressWrapper listenWrapper
-            = new MessageProgressWrapper(services.length);
+        return startQuery(
+                services,
+                descriptor,
+                createFindByPeriod(startDate, endDate),
+                null)
+            .waitForResult();
+    }
 
-        LinkedList<Object> result = new LinkedList<Object>();
-        for (int i = 0; i < services.length; i++)
+    /**
+     * Starts a query for all the records between the given dates and returns
+     * without waiting for its result.
+     *
+     * @param services the services classnames we will query
+     * @param descriptor CallPeer address(String),
+     *  MetaContact or ChatRoom.
+     * @param startDate Date the date of the first record to return
+     * @param endDate Date the date of the last record to return
+     * @param listener the listener notified of the records found
+     * @return the query, which may be canceled
+     */
+    public MetaHistoryQuery findByPeriod(String[] services,
+            Object descriptor, Date startDate, Date endDate,
+            MetaHistoryQueryListener listener)
+    {
+        return startQuery(
+                services,
+                descriptor,
+                createFindByPeriod(startDate, endDate),
+                listener);
+    }
+
+    /**
+     * Creates the query for all the records between the given dates.
+     *
+     * @param startDate Date the date of the first record to return
+     * @param endDate Date the date of the last record to return
+     * @return the query for each of the services
+     */
+    private RecordsQuery createFindByPeriod(
+            final Date startDate, final Date endDate)
+    {
+        return new RecordsQuery(startDate, endDate, null)
         {
-            String name = services[i];
-            Object serv = getService(name);
-            if(serv instanceof MessageHistoryService)
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, MetaContact metaContact)
             {
-                MessageHistoryService mhs =
-                    (MessageHistoryService)serv;
-                listenWrapper.setIx(i);
-                mhs.addSearchProgressListener(listenWrapper);
-
-                if(descriptor instanceof MetaContact)
-                {
-                    result.addAll(
-                        mhs.findByPeriod(
-                            (MetaContact)descriptor, startDate, endDate));
-                }
-                else if(descriptor instanceof ChatRoom)
-                {
-                    result.addAll(
-                        mhs.findByPeriod(
-                            (ChatRoom)descriptor, startDate, endDate));
-                }
-                mhs.removeSearchProgressListener(listenWrapper);
+                return mhs.findByPeriod(metaContact, startDate, endDate);
             }
-            else if(serv instanceof FileHistoryService
-                    && descriptor instanceof MetaContact)
+
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, ChatRoom room)
             {
-                result.addAll(
-                    ((FileHistoryService)serv).findByPeriod(
-                        (MetaContact)descriptor, startDate, endDate));
+                return mhs.findByPeriod(room, startDate, endDate);
             }
-            else if(serv instanceof CallHistoryService)
+
+            @Override
+            Collection<?> findFiles(
+                FileHistoryService fhs, MetaContact metaContact)
             {
-                CallHistoryService chs = (CallHistoryService)serv;
-                listenWrapper.setIx(i);
-                chs.addSearchProgressListener(listenWrapper);
-                result.addAll(
-                    chs.findByPeriod(startDate, endDate));
-                chs.removeSearchProgressListener(listenWrapper);
+                return fhs.findByPeriod(metaContact, startDate, endDate);
             }
-        }
-        listenWrapper.fireLastProgress(startDate, endDate, null);
 
-        Collections.sort(result, new RecordsComparator());
-        return result;
+            @Override
+            Collection<?> findCalls(CallHistoryService chs)
+            {
+                return chs.findByPeriod(startDate, endDate);
+            }
+        };
     }
 
     /**
@@ -296,75 +333,53 @@ public Collection<Object> findByPeriod(String[] services,
      * @throws RuntimeException
      */
     public Collection<Object> findByPeriod(String[] services,
-            Object descriptor, Date startDate, Date endDate,
-            String[] keywords, boolean caseSensitive)
+            Object descriptor, final Date startDate, final Date endDate,
+            final String[] keywords, final boolean caseSensitive)
         throws RuntimeException
     {
-        MessageProgressWrapper listenWrapper
-            = new MessageProgressWrapper(services.length);
-
-        TreeSet<Object> result = new TreeSet<Object>(new RecordsComparator());
-        for (int i = 0; i < services.length; i++)
+        RecordsQuery query = new RecordsQuery(startDate, endDate, keywords)
         {
-            String name = services[i];
-            Object serv = getService(name);
-            if(serv instanceof MessageHistoryService)
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, MetaContact metaContact)
             {
-                MessageHistoryService mhs =
-                    (MessageHistoryService)serv;
-                listenWrapper.setIx(i);
-                mhs.addSearchProgressListener(listenWrapper);
-
-                if(descriptor instanceof MetaContact)
-                {
-                    result.addAll(
-                        mhs.findByPeriod(
-                            (MetaContact)descriptor,
-                            startDate, endDate,
-                            keywords, caseSensitive));
-                }
-                else if(descriptor instanceof ChatRoom)
-                {
-                    result.addAll(
-                        mhs.findByPeriod(
-                            (ChatRoom)descriptor,
-                            startDate, endDate,
-                            keywords, caseSensitive));
-                }
-                mhs.removeSearchProgressListener(listenWrapper);
+                return mhs.findByPeriod(
+                    metaContact,
+                    startDate, endDate,
+                    keywords, caseSensitive);
             }
-            else if(serv instanceof FileHistoryService
-                    && descriptor instanceof MetaContact)
+
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, ChatRoom room)
             {
-                result.addAll(
-                    ((FileHistoryService)serv).findByPeriod(
-                        (MetaContact)descriptor,
-                        startDate, endDate,
-                        keywords, caseSensitive));
+                return mhs.findByPeriod(
+                    room,
+                    startDate, endDate,
+                    keywords, caseSensitive);
             }
-            else if(serv instanceof CallHistoryService)
-            {
-                CallHistoryService chs = (CallHistoryService)serv;
-                listenWrapper.setIx(i);
-                chs.addSearchProgressListener(listenWrapper);
-                Collection<CallRecord> cs =
-                    chs.findByPeriod(startDate, endDate);
 
-                Iterator<CallRecord> iter = cs.iterator();
-                while (iter.hasNext())
-                {
-                    CallRecord callRecord = iter.next();
+            @Override
+            Collection<?> findFiles(
+                FileHistoryService fhs, MetaContact metaContact)
+            {
+                return fhs.findByPeriod(
+                    metaContact,
+                    startDate, endDate,
+                    keywords, caseSensitive);
+            }
 
-                    if(matchCallPeer(
-                            callRecord.getPeerRecords(), keywords, caseSensitive))
-                        result.add(callRecord);
-                }
-                chs.removeSearchProgressListener(listenWrapper);
+            @Override
+            Collection<?> findCalls(CallHistoryService chs)
+            {
+                return matchCallPeers(
+                    chs.findByPeriod(startDate, endDate),
+                    keywords, caseSensitive);
             }
-        }
-        listenWrapper.fireLastProgress(startDate, endDate, keywords);
+        };
 
-        return result;
+        return startQuery(services, descriptor, query, null)
+            .waitForResult();
     }
 
     /**
@@ -439,69 +454,81 @@ public Collection<Object> findByKeywords(String[] services,
             Object descriptor, String[] keywords, boolean caseSensitive)
         throws RuntimeException
     {
-        MessageProgressWrapper listenWrapper
-            = new MessageProgressWrapper(services.length);
+        return startQuery(
+                services,
+                descriptor,
+                createFindByKeywords(keywords, caseSensitive),
+                null)
+            .waitForResult();
+    }
 
-        TreeSet<Object> result = new TreeSet<Object>(new RecordsComparator());
-        for (int i = 0; i < services.length; i++)
+    /**
+     * Starts a query for all the records having the given keywords and
+     * returns without waiting for its result.
+     *
+     * @param services the services classnames we will query
+     * @param descriptor CallPeer address(String),
+     *  MetaContact or ChatRoom.
+     * @param keywords keyword
+     * @param caseSensitive is keywords search case sensitive
+     * @param listener the listener notified of the records found
+     * @return the query, which may be canceled
+     */
+    public MetaHistoryQuery findByKeywords(String[] services,
+            Object descriptor, String[] keywords, boolean caseSensitive,
+            MetaHistoryQueryListener listener)
+    {
+        return startQuery(
+                services,
+                descriptor,
+                createFindByKeywords(keywords, caseSensitive),
+                listener);
+    }
+
+    /**
+     * Creates the query for all the records having the given keywords.
+     *
+     * @param keywords keyword
+     * @param caseSensitive is keywords search case sensitive
+     * @return the query for each of the services
+     */
+    private RecordsQuery createFindByKeywords(
+            final String[] keywords, final boolean caseSensitive)
+    {
+        return new RecordsQuery(null, null, keywords)
         {
-            String name = services[i];
-            Object serv = getService(name);
-            if(serv instanceof MessageHistoryService)
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, MetaContact metaContact)
             {
-                MessageHistoryService mhs =
-                    (MessageHistoryService)serv;
-                listenWrapper.setIx(i);
-                mhs.addSearchProgressListener(listenWrapper);
-
-                if(descriptor instanceof MetaContact)
-                {
-                    result.addAll(
-                        mhs.findByKeywords(
-                            (MetaContact)descriptor, keywords, caseSensitive));
-                }
-                else if(descriptor instanceof ChatRoom)
-                {
-                    result.addAll(
-                        mhs.findByKeywords(
-                            (ChatRoom)descriptor,
-                            keywords, caseSensitive));
-                }
-                mhs.removeSearchProgressListener(listenWrapper);
+                return mhs.findByKeywords(
+                    metaContact, keywords, caseSensitive);
             }
-            else if(serv instanceof FileHistoryService
-                    && descriptor instanceof MetaContact)
+
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, ChatRoom room)
             {
-                result.addAll(
-                    ((FileHistoryService)serv).findByKeywords(
-                        (MetaContact)descriptor,
-                        keywords, caseSensitive));
+                return mhs.findByKeywords(room, keywords, caseSensitive);
             }
-            else if(serv instanceof CallHistoryService)
+
+            @Override
+            Collection<?> findFiles(
+                FileHistoryService fhs, MetaContact metaContact)
             {
-                CallHistoryService chs = (CallHistoryService)serv;
-                listenWrapper.setIx(i);
-                chs.addSearchProgressListener(listenWrapper);
+                return fhs.findByKeywords(
+                    metaContact, keywords, caseSensitive);
+            }
 
+            @Override
+            Collection<?> findCalls(CallHistoryService chs)
+            {
                 // this will get all call records
-                Collection<CallRecord> cs =
-                    chs.findByEndDate(new Date());
-
-                Iterator<CallRecord> iter = cs.iterator();
-                while (iter.hasNext())
-                {
-                    CallRecord callRecord = iter.next();
-
-                    if(matchCallPeer(
-                            callRecord.getPeerRecords(), keywords, caseSensitive))
-                        result.add(callRecord);
-                }
-                chs.removeSearchProgressListener(listenWrapper);
+                return matchCallPeers(
+                    chs.findByEndDate(new Date()),
+                    keywords, caseSensitive);
             }
-        }
-        listenWrapper.fireLastProgress(null, null, keywords);
-
-        return result;
+        };
     }
 
     /**
@@ -519,64 +546,67 @@ public Collection<Object> findLast(String[] services,
             Object descriptor, int count)
         throws RuntimeException
     {
-        MessageProgressWrapper listenWrapper
-            = new MessageProgressWrapper(services.length);
+        return startQuery(
+                services, descriptor, createFindLast(count), null)
+            .waitForResult();
+    }
 
-        TreeSet<Object> result = new TreeSet<Object>(new RecordsComparator());
-        for (int i = 0; i < services.length; i++)
+    /**
+     * Starts a query for the supplied number of recent records and returns
+     * without waiting for its result.
+     *
+     * @param services the services classnames we will query
+     * @param descriptor CallPeer address(String),
+     *  MetaContact or ChatRoom.
+     * @param count messages count
+     * @param listener the listener notified of the records found
+     * @return the query, which may be canceled
+     */
+    public MetaHistoryQuery findLast(String[] services,
+            Object descriptor, int count,
+            MetaHistoryQueryListener listener)
+    {
+        return startQuery(
+                services, descriptor, createFindLast(count), listener);
+    }
+
+    /**
+     * Creates the query for the supplied number of recent records.
+     *
+     * @param count messages count
+     * @return the query for each of the services
+     */
+    private RecordsQuery createFindLast(final int count)
+    {
+        return new RecordsQuery(null, null, null, count, true)
         {
-            String name = services[i];
-            Object serv = getService(name);
-            if(serv instanceof MessageHistoryService)
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, MetaContact metaContact)
             {
-                MessageHistoryService mhs =
-                    (MessageHistoryService)serv;
-                listenWrapper.setIx(i);
-                mhs.addSearchProgressListener(listenWrapper);
-
-                if(descriptor instanceof MetaContact)
-                {
-                    result.addAll(
-                        mhs.findLast(
-                            (MetaContact)descriptor,
-                            count));
-                }
-                else if(descriptor instanceof ChatRoom)
-                {
-                    result.addAll(
-                        mhs.findLast(
-                            (ChatRoom)descriptor,
-                            count));
-                }
-                mhs.removeSearchProgressListener(listenWrapper);
+                return mhs.findLast(metaContact, count);
             }
-            else if(serv instanceof FileHistoryService
-                    && descriptor instanceof MetaContact)
+
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, ChatRoom room)
             {
-                result.addAll(
-                    ((FileHistoryService)serv).findLast(
-                        (MetaContact)descriptor,
-                        count));
+                return mhs.findLast(room, count);
             }
-            else if(serv instanceof CallHistoryService)
+
+            @Override
+            Collection<?> findFiles(
+                FileHistoryService fhs, MetaContact metaContact)
             {
-                CallHistoryService chs = (CallHistoryService)serv;
-                listenWrapper.setIx(i);
-                chs.addSearchProgressListener(listenWrapper);
-                result.addAll(
-                    chs.findLast(count));
-                chs.removeSearchProgressListener(listenWrapper);
+                return fhs.findLast(metaContact, count);
             }
-        }
-        listenWrapper.fireLastProgress(null, null, null);
-
-        LinkedList<Object> resultAsList = new LinkedList<Object>(result);
-        int startIndex = resultAsList.size() - count;
-
-        if(startIndex < 0)
-            startIndex = 0;
 
-        return resultAsList.subList(startIndex, resultAsList.size());
+            @Override
+            Collection<?> findCalls(CallHistoryService chs)
+            {
+                return chs.findLast(count);
+            }
+        };
     }
 
     /**
@@ -592,79 +622,42 @@ else if(serv instanceof CallHistoryService)
      * @throws RuntimeException
      */
     public Collection<Object> findFirstMessagesAfter(String[] services,
-            Object descriptor, Date date, int count)
+            Object descriptor, final Date date, final int count)
         throws RuntimeException
     {
-        MessageProgressWrapper listenWrapper
-            = new MessageProgressWrapper(services.length);
-
-        TreeSet<Object> result = new TreeSet<Object>(new RecordsComparator());
-        for (int i = 0; i < services.length; i++)
+        RecordsQuery query = new RecordsQuery(date, null, null, count, false)
         {
-            String name = services[i];
-            Object serv = getService(name);
-            if(serv instanceof MessageHistoryService)
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, MetaContact metaContact)
             {
-                MessageHistoryService mhs =
-                    (MessageHistoryService)serv;
-                listenWrapper.setIx(i);
-                mhs.addSearchProgressListener(listenWrapper);
-
-                if(descriptor instanceof MetaContact)
-                {
-                    result.addAll(
-                        mhs.findFirstMessagesAfter(
-                            (MetaContact)descriptor,
-                            date,
-                            count));
-                }
-                else if(descriptor instanceof ChatRoom)
-                {
-                    result.addAll(
-                        mhs.findFirstMessagesAfter(
-                            (ChatRoom)descriptor,
-                            date,
-                            count));
-                }
-                mhs.removeSearchProgressListener(listenWrapper);
+                return mhs.findFirstMessagesAfter(metaContact, date, count);
             }
-            else if(serv instanceof FileHistoryService
-                    && descriptor instanceof MetaContact)
+
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, ChatRoom room)
             {
-                result.addAll(
-                    ((FileHistoryService)serv).findFirstRecordsAfter(
-                        (MetaContact)descriptor,
-                        date,
-                        count));
+                return mhs.findFirstMessagesAfter(room, date, count);
             }
-            else if(serv instanceof CallHistoryService)
-            {
-                CallHistoryService chs = (CallHistoryService)serv;
-                listenWrapper.setIx(i);
-                chs.addSearchProgressListener(listenWrapper);
 
-                Collection<CallRecord> col = chs.findByStartDate(date);
-                if(col.size() > count)
-                {
-                    // before we make a sublist make sure there are sorted in the
-                    // right order
-                    List<CallRecord> l = new LinkedList<CallRecord>(col);
-                    Collections.sort(l, new RecordsComparator());
-                    result.addAll(l.subList(0, count));
-                }
-                else
-                    result.addAll(col);
-                chs.removeSearchProgressListener(listenWrapper);
+            @Override
+            Collection<?> findFiles(
+                FileHistoryService fhs, MetaContact metaContact)
+            {
+                return fhs.findFirstRecordsAfter(metaContact, date, count);
             }
-        }
-        listenWrapper.fireLastProgress(date, null, null);
-        LinkedList<Object> resultAsList = new LinkedList<Object>(result);
 
-        int toIndex = count;
-        if(toIndex > resultAsList.size())
-            toIndex = resultAsList.size();
+            @Override
+            Collection<?> findCalls(CallHistoryService chs)
+            {
+                // trimmed to the first count records once sorted
+                return chs.findByStartDate(date);
+            }
+        };
 
-        return resultAsList.subList(0, toIndex);
+        return startQuery(services, descriptor, query, null)
+            .waitForResult();
     }
 
     /**
@@ -680,77 +673,42 @@ else if(serv instanceof CallHistoryService)
      * @throws RuntimeException
      */
     public Collection<Object> findLastMessagesBefore(String[] services,
-            Object descriptor, Date date, int count)
+            Object descriptor, final Date date, final int count)
         throws RuntimeException
     {
-        MessageProgressWrapper listenWrapper
-            = new MessageProgressWrapper(services.length);
-
-        TreeSet<Object> result = new TreeSet<Object>(new RecordsComparator());
-        for (int i = 0; i < services.length; i++)
+        RecordsQuery query = new RecordsQuery(date, null, null, count, true)
         {
-            String name = services[i];
-            Object serv = getService(name);
-            if(serv instanceof MessageHistoryService)
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, MetaContact metaContact)
             {
-                MessageHistoryService mhs =
-                    (MessageHistoryService)serv;
-                listenWrapper.setIx(i);
-                mhs.addSearchProgressListener(listenWrapper);
-
-                if(descriptor instanceof MetaContact)
-                {
-                    result.addAll(
-                        mhs.findLastMessagesBefore(
-                            (MetaContact)descriptor,
-                            date,
-                            count));
-                }
-                else if(descriptor instanceof ChatRoom)
-                {
-                    result.addAll(
-                        mhs.findLastMessagesBefore(
-                            (ChatRoom)descriptor,
-                            date,
-                            count));
-                }
-                mhs.removeSearchProgressListener(listenWrapper);
+                return mhs.findLastMessagesBefore(metaContact, date, count);
             }
-            else if(serv instanceof FileHistoryService
-                    && descriptor instanceof MetaContact)
+
+            @Override
+            Collection<?> findMessages(
+                MessageHistoryService mhs, ChatRoom room)
             {
-                result.addAll(
-                    ((FileHistoryService)serv).findLastRecordsBefore(
-                        (MetaContact)descriptor,
-                        date,
-                        count));
+                return mhs.findLastMessagesBefore(room, date, count);
             }
-            else if(serv instanceof CallHistoryService)
-            {
-                CallHistoryService chs = (CallHistoryService)serv;
-                listenWrapper.setIx(i);
-                chs.addSearchProgressListener(listenWrapper);
 
-                Collection<CallRecord> col = chs.findByEndDate(date);
-                if(col.size() > count)
-                {
-                    List<CallRecord> l = new LinkedList<CallRecord>(col);
-                    result.addAll(l.subList(l.size() - count, l.size()));
-                }
-                else
-                    result.addAll(col);
-                chs.removeSearchProgressListener(listenWrapper);
+            @Override
+            Collection<?> findFiles(
+                FileHistoryService fhs, MetaContact metaContact)
+            {
+                return fhs.findLastRecordsBefore(metaContact, date, count);
             }
-        }
-        listenWrapper.fireLastProgress(date, null, null);
 
-        LinkedList<Object> resultAsList = new LinkedList<Object>(result);
-        int startIndex = resultAsList.size() - count;
-
-        if(startIndex < 0)
-            startIndex = 0;
+            @Override
+            Collection<?> findCalls(CallHistoryService chs)
+            {
+                // trimmed to the last count records once sorted
+                return chs.findByEndDate(date);
+            }
+        };
 
-        return resultAsList.subList(startIndex, resultAsList.size());
+        return startQuery(services, descriptor, query, null)
+            .waitForResult();
     }
 
     /**
@@ -855,6 +813,31 @@ else if(callPeer.getPeerAddress().toLowerCase().
        return false;
    }
 
+   /**
+    * Returns the call records having a participant which matches the given
+    * keywords.
+    *
+    * @param callRecords the call records to filter
+    * @param keywords the keywords to match
+    * @param caseSensitive is keywords search case sensitive
+    * @return the matching call records
+    */
+   private List<CallRecord> matchCallPeers(
+       Collection<CallRecord> callRecords,
+       String[] keywords,
+       boolean caseSensitive)
+   {
+       List<CallRecord> result = new ArrayList<CallRecord>();
+
+       for (CallRecord callRecord : callRecords)
+       {
+           if(matchCallPeer(
+                   callRecord.getPeerRecords(), keywords, caseSensitive))
+               result.add(callRecord);
+       }
+       return result;
+   }
+
     public void serviceChanged(ServiceEvent serviceEvent)
     {
         if(serviceEvent.getType() == ServiceEvent.UNREGISTERING)
@@ -880,6 +863,23 @@ public void start(BundleContext bc)
 
         services.clear();
 
+        queryExecutor
+            = Executors.newCachedThreadPool(
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t
+                                = new Thread(
+                                        r,
+                                        MetaHistoryServiceImpl.class
+                                            .getSimpleName());
+
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+
         // start listening for newly register or removed services
         bc.addServiceListener(this);
     }
@@ -893,6 +893,81 @@ public void stop(BundleContext bc)
     {
         bc.removeServiceListener(this);
         services.clear();
+
+        ExecutorService queryExecutor = this.queryExecutor;
+
+        if (queryExecutor != null)
+        {
+            this.queryExecutor = null;
+            queryExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Starts querying the history services in parallel.
+     *
+     * @param services the services classnames we will query
+     * @param descriptor CallPeer address(String),
+     *  MetaContact or ChatRoom.
+     * @param query the query for each of the services
+     * @param listener the listener notified of the records found or
+     * <tt>null</tt>
+     * @return the started query
+     */
+    private HistoryQuery startQuery(
+            String[] services,
+            Object descriptor,
+            RecordsQuery query,
+            MetaHistoryQueryListener listener)
+    {
+        Object[] servs = new Object[services.length];
+
+        for (int i = 0; i < services.length; i++)
+            servs[i] = getService(services[i]);
+
+        HistoryQuery historyQuery
+            = new HistoryQuery(servs, descriptor, query, listener);
+
+        historyQuery.start();
+        return historyQuery;
+    }
+
+    /**
+     * Notifies the progress listeners that a search has completed.
+     *
+     * @param startDate the start date of the search or <tt>null</tt>
+     * @param endDate the end date of the search or <tt>null</tt>
+     * @param keywords the keywords of the search or <tt>null</tt>
+     */
+    private void fireLastProgress(
+        Date startDate, Date endDate, String[] keywords)
+    {
+        ProgressEvent ev = new ProgressEvent(
+            MetaHistoryServiceImpl.this,
+            startDate,
+            endDate,
+            keywords);
+        ev.setProgress(HistorySearchProgressListener.PROGRESS_MAXIMUM_VALUE);
+
+        fireProgressEvent(ev);
+    }
+
+    /**
+     * Notifies the progress listeners of the progress of a search.
+     *
+     * @param ev the progress of the search
+     */
+    private void fireProgressEvent(ProgressEvent ev)
+    {
+        Iterable<HistorySearchProgressListener> listeners;
+        synchronized(progressListeners)
+        {
+            listeners
+                = new ArrayList<HistorySearchProgressListener>(
+                        progressListeners);
+        }
+        for (HistorySearchProgressListener listener : listeners)
+            listener.progressChanged(ev);
     }
 
     /**
@@ -929,58 +1004,535 @@ public int compare(Object o1, Object o2)
         }
     }
 
-    private class MessageProgressWrapper
-        implements MessageHistorySearchProgressListener,
-        CallHistorySearchProgressListener
+    /**
+     * The query made to each of the history services, depending on their
+     * kind.
+     */
+    private static abstract class RecordsQuery
     {
-        private final int count;
+        /**
+         * The start date of the search, reported to the progress listeners.
+         */
+        final Date startDate;
+
+        /**
+         * The end date of the search, reported to the progress listeners.
+         */
+        final Date endDate;
+
+        /**
+         * The keywords of the search, reported to the progress listeners.
+         */
+        final String[] keywords;
+
+        /**
+         * The maximum number of records to return.
+         */
+        final int count;
+
+        /**
+         * Whether the last <tt>count</tt> records are returned rather than
+         * the first ones.
+         */
+        final boolean last;
+
+        /**
+         * Initializes a new <tt>RecordsQuery</tt> for all the matching
+         * records.
+         *
+         * @param startDate the start date of the search or <tt>null</tt>
+         * @param endDate the end date of the search or <tt>null</tt>
+         * @param keywords the keywords of the search or <tt>null</tt>
+         */
+        RecordsQuery(Date startDate, Date endDate, String[] keywords)
+        {
+            this(startDate, endDate, keywords, Integer.MAX_VALUE, false);
+        }
 
-        private int ix;
+        /**
+         * Initializes a new <tt>RecordsQuery</tt> for a number of the
+         * matching records.
+         *
+         * @param startDate the start date of the search or <tt>null</tt>
+         * @param endDate the end date of the search or <tt>null</tt>
+         * @param keywords the keywords of the search or <tt>null</tt>
+         * @param count the maximum number of records to return
+         * @param last <tt>true</tt> to return the last <tt>count</tt>
+         * records, <tt>false</tt> to return the first ones
+         */
+        RecordsQuery(
+                Date startDate,
+                Date endDate,
+                String[] keywords,
+                int count,
+                boolean last)
+        {
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.keywords = keywords;
+            this.count = Math.max(0, count);
+            this.last = last;
+        }
 
-        public MessageProgressWrapper(int count)
+        /**
+         * Queries the message history of a contact.
+         *
+         * @param mhs the message history service
+         * @param metaContact the contact
+         * @return the matching records
+         */
+        abstract Collection<?> findMessages(
+            MessageHistoryService mhs, MetaContact metaContact);
+
+        /**
+         * Queries the message history of a chat room.
+         *
+         * @param mhs the message history service
+         * @param room the chat room
+         * @return the matching records
+         */
+        abstract Collection<?> findMessages(
+            MessageHistoryService mhs, ChatRoom room);
+
+        /**
+         * Queries the file transfer history of a contact.
+         *
+         * @param fhs the file history service
+         * @param metaContact the contact
+         * @return the matching records
+         */
+        abstract Collection<?> findFiles(
+            FileHistoryService fhs, MetaContact metaContact);
+
+        /**
+         * Queries the call history.
+         *
+         * @param chs the call history service
+         * @return the matching records
+         */
+        abstract Collection<?> findCalls(CallHistoryService chs);
+    }
+
+    /**
+     * A query of several history services, each of them queried on a thread
+     * of {@link #queryExecutor}.
+     */
+    private class HistoryQuery
+        implements MetaHistoryQuery
+    {
+        /**
+         * The history services to query.
+         */
+        private final Object[] services;
+
+        /**
+         * CallPeer address(String), MetaContact or ChatRoom.
+         */
+        private final Object descriptor;
+
+        /**
+         * The query made to each of the services.
+         */
+        private final RecordsQuery query;
+
+        /**
+         * The listener notified of the records found or <tt>null</tt>.
+         */
+        private final MetaHistoryQueryListener listener;
+
+        /**
+         * The progress of each of the services, shared by their
+         * <tt>MessageProgressWrapper</tt>s.
+         */
+        private final int[] progress;
+
+        /**
+         * The sorted records returned by each of the services.
+         */
+        private final List<List<Object>> results;
+
+        /**
+         * The tasks querying the services.
+         */
+        private final Future<?>[] tasks;
+
+        /**
+         * The number of services which have not returned their records yet.
+         */
+        private int remaining;
+
+        /**
+         * The status of this query, one of the QUERY_XXXX constants.
+         */
+        private int status = QUERY_IN_PROGRESS;
+
+        /**
+         * The error which has stopped this query or <tt>null</tt>.
+         */
+        private Throwable error;
+
+        /**
+         * The merged records of all the services.
+         */
+        private List<Object> result = Collections.emptyList();
+
+        /**
+         * Initializes a new <tt>HistoryQuery</tt>.
+         *
+         * @param services the history services to query
+         * @param descriptor CallPeer address(String),
+         *  MetaContact or ChatRoom.
+         * @param query the query made to each of the services
+         * @param listener the listener notified of the records found or
+         * <tt>null</tt>
+         */
+        HistoryQuery(
+                Object[] services,
+                Object descriptor,
+                RecordsQuery query,
+                MetaHistoryQueryListener listener)
         {
-            this.count = count;
+            this.services = services;
+            this.descriptor = descriptor;
+            this.query = query;
+            this.listener = listener;
+
+            progress = new int[services.length];
+            results
+                = new ArrayList<List<Object>>(
+                        Collections.nCopies(
+                                services.length,
+                                Collections.emptyList()));
+            tasks = new Future<?>[services.length];
+            remaining = services.length;
         }
 
-        public void setIx(int ix)
+        /**
+         * Starts querying the services.
+         */
+        void start()
         {
-            this.ix = ix;
+            if (services.length == 0)
+            {
+                synchronized (this)
+                {
+                    merge(QUERY_COMPLETED);
+                }
+                fireLastProgress(
+                    query.startDate, query.endDate, query.keywords);
+                return;
+            }
+            synchronized (this)
+            {
+                submitTasks();
+            }
         }
 
-        private void fireProgress(int origProgress, int maxVal,
-            Date startDate, Date endDate, String[] keywords)
+        /**
+         * Submits a task querying each of the services.
+         */
+        private void submitTasks()
         {
-            ProgressEvent ev = new ProgressEvent(
-                MetaHistoryServiceImpl.this,
-                startDate,
-                endDate,
-                keywords);
+            ExecutorService queryExecutor
+                = MetaHistoryServiceImpl.this.queryExecutor;
+
+            for (int i = 0; i < services.length; i++)
+            {
+                final int ix = i;
+
+                try
+                {
+                    tasks[i]
+                        = queryExecutor.submit(
+                                new Runnable()
+                                {
+                                    public void run()
+                                    {
+                                        query(ix);
+                                    }
+                                });
+                }
+                catch (RuntimeException re)
+                {
+                    // the service has been stopped
+                    failed(ix, re);
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Cancels this query. The running tasks are not interrupted, as the
+         * history services may not expect it, but their records are dropped.
+         */
+        public synchronized void cancel()
+        {
+            if (status != QUERY_IN_PROGRESS)
+                return;
+
+            status = QUERY_CANCELED;
+            for (Future<?> task : tasks)
+            {
+                if (task != null)
+                    task.cancel(false);
+            }
+            notifyAll();
+        }
+
+        /**
+         * Returns the status of this query.
+         *
+         * @return one of the QUERY_XXXX constants
+         */
+        public synchronized int getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * Returns the sorted records found by this query.
+         *
+         * @return the sorted records found by this query
+         */
+        public synchronized Collection<Object> getResult()
+        {
+            return result;
+        }
+
+        /**
+         * Waits for this query to complete. This query is canceled if the
+         * current thread is interrupted.
+         *
+         * @return the sorted records found by this query
+         * @throws RuntimeException if a history service has failed
+         */
+        synchronized Collection<Object> waitForResult()
+        {
+            while (status == QUERY_IN_PROGRESS)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ie)
+                {
+                    cancel();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (status == QUERY_ERROR)
+            {
+                if (error instanceof RuntimeException)
+                    throw (RuntimeException) error;
+                else if (error instanceof Error)
+                    throw (Error) error;
+                else
+                    throw new RuntimeException(error);
+            }
+            return result;
+        }
+
+        /**
+         * Queries one of the services.
+         *
+         * @param ix the index of the service
+         */
+        private void query(int ix)
+        {
+            List<Object> records;
+
+            try
+            {
+                records = find(ix);
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+                failed(ix, t);
+                return;
+            }
+            received(ix, records);
+        }
+
+        /**
+         * Queries one of the services and sorts its records.
+         *
+         * @param ix the index of the service
+         * @return the sorted records returned by the service
+         */
+        private List<Object> find(int ix)
+        {
+            Object serv = services[ix];
+            MessageProgressWrapper listenWrapper
+                = new MessageProgressWrapper(progress, ix);
+            Collection<?> found = null;
+
+            if(serv instanceof MessageHistoryService)
+            {
+                MessageHistoryService mhs =
+                    (MessageHistoryService)serv;
+                mhs.addSearchProgressListener(listenWrapper);
+
+                try
+                {
+                    if(descriptor instanceof MetaContact)
+                    {
+                        found
+                            = query.findMessages(
+                                    mhs, (MetaContact) descriptor);
+                    }
+                    else if(descriptor instanceof ChatRoom)
+                    {
+                        found = query.findMessages(mhs, (ChatRoom) descriptor);
+                    }
+                }
+                finally
+                {
+                    mhs.removeSearchProgressListener(listenWrapper);
+                }
+            }
+            else if(serv instanceof FileHistoryService
+                    && descriptor instanceof MetaContact)
+            {
+                found
+                    = query.findFiles(
+                            (FileHistoryService) serv,
+                            (MetaContact) descriptor);
+            }
+            else if(serv instanceof CallHistoryService)
+            {
+                CallHistoryService chs = (CallHistoryService)serv;
+                chs.addSearchProgressListener(listenWrapper);
+
+                try
+                {
+                    found = query.findCalls(chs);
+                }
+                finally
+                {
+                    chs.removeSearchProgressListener(listenWrapper);
+                }
+            }
+
+            if (found == null || found.isEmpty())
+                return Collections.emptyList();
+
+            List<Object> records = new ArrayList<Object>(found);
+
+            // the services mostly return sorted records, which sort quickly
+            Collections.sort(records, RECORDS_COMPARATOR);
+            if (records.size() > query.count)
+            {
+                records
+                    = query.last
+                        ? records.subList(
+                                records.size() - query.count,
+                                records.size())
+                        : records.subList(0, query.count);
+            }
+            return records;
+        }
 
-            double part1 = origProgress/
-                ((double)maxVal*count);
-            double convProgress =
-                part1*HistorySearchProgressListener.PROGRESS_MAXIMUM_VALUE +
-                ix*HistorySearchProgressListener.PROGRESS_MAXIMUM_VALUE/count;
+        /**
+         * Stores the records returned by one of the services and completes
+         * this query once all of them have returned theirs.
+         *
+         * @param ix the index of the service
+         * @param records the sorted records returned by the service
+         */
+        private void received(int ix, List<Object> records)
+        {
+            synchronized (this)
+            {
+                if (status != QUERY_IN_PROGRESS)
+                    return;
 
-            ev.setProgress((int)convProgress);
+                results.set(ix, records);
+                remaining--;
 
-            fireEvent(ev);
+                if (listener != null && !records.isEmpty())
+                {
+                    listener.recordsReceived(
+                        this,
+                        Collections.unmodifiableList(records));
+                }
+                if (remaining > 0)
+                    return;
+                merge(QUERY_COMPLETED);
+            }
+            fireLastProgress(query.startDate, query.endDate, query.keywords);
         }
 
-        private void fireEvent(ProgressEvent ev)
+        /**
+         * Stops this query because one of the services has failed.
+         *
+         * @param ix the index of the service
+         * @param t the error
+         */
+        private synchronized void failed(int ix, Throwable t)
         {
-            Iterable<HistorySearchProgressListener> listeners;
-            synchronized(progressListeners)
+            if (status != QUERY_IN_PROGRESS)
+                return;
+
+            logger.error("Failed to query " + services[ix], t);
+            for (Future<?> task : tasks)
             {
-                listeners
-                    = new ArrayList<HistorySearchProgressListener>(
-                            progressListeners);
+                if (task != null)
+                    task.cancel(false);
             }
-            for (HistorySearchProgressListener listener : listeners)
-                listener.progressChanged(ev);
+            error = t;
+            merge(QUERY_ERROR);
+        }
+
+        /**
+         * Merges the records returned by the services, ends this query and
+         * notifies the listener.
+         *
+         * @param status the final status of this query
+         */
+        private void merge(int status)
+        {
+            result
+                = Collections.unmodifiableList(
+                        RecordsMerger.merge(
+                                results,
+                                RECORDS_COMPARATOR,
+                                query.count,
+                                query.last));
+            this.status = status;
+            notifyAll();
+
+            if (listener != null)
+                listener.queryCompleted(this, result);
         }
+    }
 
-        public void fireLastProgress(
+    /**
+     * Reports the progress of one of the services of a query as part of the
+     * progress of the whole query.
+     */
+    private class MessageProgressWrapper
+        implements MessageHistorySearchProgressListener,
+        CallHistorySearchProgressListener
+    {
+        /**
+         * The progress of each of the services of the query.
+         */
+        private final int[] progress;
+
+        /**
+         * The index of the service.
+         */
+        private final int ix;
+
+        public MessageProgressWrapper(int[] progress, int ix)
+        {
+            this.progress = progress;
+            this.ix = ix;
+        }
+
+        private void fireProgress(int origProgress, int maxVal,
             Date startDate, Date endDate, String[] keywords)
         {
             ProgressEvent ev = new ProgressEvent(
@@ -988,9 +1540,22 @@ public void fireLastProgress(
                 startDate,
                 endDate,
                 keywords);
-            ev.setProgress(HistorySearchProgressListener.PROGRESS_MAXIMUM_VALUE);
 
-            fireEvent(ev);
+            // the services are queried in parallel
+            int total = 0;
+            synchronized(progress)
+            {
+                progress[ix]
+                    = (int) ((double) origProgress
+                        * HistorySearchProgressListener.PROGRESS_MAXIMUM_VALUE
+                        / maxVal);
+                for (int p : progress)
+                    total += p;
+            }
+
+            ev.setProgress(total / progress.length);
+
+            fireProgressEvent(ev);
         }
 
         public void progressChanged(
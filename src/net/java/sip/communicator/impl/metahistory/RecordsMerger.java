@@ -0,0 +1,167 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.metahistory;
+
+import java.util.*;
+
+/**
+ * Merges the sorted records returned by several history services. Only the
+ * records which make it into the result are visited, so asking for the last
+ * <tt>count</tt> records costs <tt>count</tt> steps whatever the number of
+ * records the services have returned.
+ */
+class RecordsMerger
+{
+    /**
+     * Prevents the initialization of <tt>RecordsMerger</tt> instances.
+     */
+    private RecordsMerger()
+    {
+    }
+
+    /**
+     * Merges sorted lists. Equal elements keep the order of the lists they
+     * come from.
+     *
+     * @param lists the lists to merge, each sorted by <tt>comparator</tt>
+     * @param comparator the order of the elements
+     * @param count the maximum number of elements to return
+     * @param last <tt>true</tt> to return the last <tt>count</tt> elements,
+     * <tt>false</tt> to return the first <tt>count</tt> elements
+     * @return the merged elements, sorted by <tt>comparator</tt>
+     */
+    static <T> List<T> merge(
+            List<? extends List<? extends T>> lists,
+            final Comparator<? super T> comparator,
+            int count,
+            final boolean last)
+    {
+        int size = 0;
+
+        for (List<? extends T> list : lists)
+            size += list.size();
+        size = Math.min(size, count);
+
+        PriorityQueue<Cursor<T>> heads
+            = new PriorityQueue<Cursor<T>>(
+                    Math.max(1, lists.size()),
+                    new Comparator<Cursor<T>>()
+                    {
+                        public int compare(Cursor<T> c1, Cursor<T> c2)
+                        {
+                            int result
+                                = comparator.compare(c1.head(), c2.head());
+
+                            if (result == 0)
+                                result = c1.index - c2.index;
+
+                            // the last elements are taken from the end
+                            return last ? -result : result;
+                        }
+                    });
+
+        for (int i = 0; i < lists.size(); i++)
+        {
+            List<? extends T> list = lists.get(i);
+
+            if (!list.isEmpty())
+                heads.add(new Cursor<T>(list, i, last));
+        }
+
+        List<T> result = new ArrayList<T>(size);
+
+        while (result.size() < size)
+        {
+            Cursor<T> cursor = heads.poll();
+
+            result.add(cursor.head());
+            if (cursor.advance())
+                heads.add(cursor);
+        }
+        if (last)
+            Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * The position in one of the merged lists.
+     */
+    private static class Cursor<T>
+    {
+        /**
+         * The position of the list among the merged lists.
+         */
+        final int index;
+
+        /**
+         * The iterator over the list.
+         */
+        private final ListIterator<? extends T> iterator;
+
+        /**
+         * Whether the list is read from its end.
+         */
+        private final boolean reverse;
+
+        /**
+         * The next element of the list.
+         */
+        private T head;
+
+        /**
+         * Initializes a new <tt>Cursor</tt> on the first element of a
+         * non-empty list, or on its last element if <tt>reverse</tt>.
+         *
+         * @param list the list
+         * @param index the position of the list among the merged lists
+         * @param reverse whether the list is read from its end
+         */
+        Cursor(List<? extends T> list, int index, boolean reverse)
+        {
+            this.index = index;
+            this.reverse = reverse;
+            iterator = list.listIterator(reverse ? list.size() : 0);
+            advance();
+        }
+
+        /**
+         * Returns the next element of the list.
+         *
+         * @return the next element of the list
+         */
+        T head()
+        {
+            return head;
+        }
+
+        /**
+         * Moves to the next element of the list.
+         *
+         * @return <tt>false</tt> if the list has no more elements
+         */
+        boolean advance()
+        {
+            if (reverse ? iterator.hasPrevious() : iterator.hasNext())
+            {
+                head = reverse ? iterator.previous() : iterator.next();
+                return true;
+            }
+            return false;
+        }
+    }
+}
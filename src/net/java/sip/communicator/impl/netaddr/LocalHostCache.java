@@ -0,0 +1,196 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.netaddr;
+
+import java.net.*;
+import java.nio.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Caches the local (source) address which the routing table selects for a
+ * destination, by destination prefix. Destinations in the same prefix are
+ * expected to be routed alike, so one route lookup serves all of them. The
+ * cache is lock-free for readers and must be cleared whenever the network
+ * configuration changes.
+ */
+public class LocalHostCache
+{
+    /**
+     * The maximum number of cached prefixes. The cache is cleared when it is
+     * full, which only happens with a very large number of distinct
+     * destinations.
+     */
+    private static final int MAX_ENTRIES = 4096;
+
+    /**
+     * The length of the IPv4 destination prefixes in bits.
+     */
+    private final int ipv4PrefixLength;
+
+    /**
+     * The length of the IPv6 destination prefixes in bits.
+     */
+    private final int ipv6PrefixLength;
+
+    /**
+     * The local addresses by destination prefix.
+     */
+    private final ConcurrentMap<ByteBuffer, InetAddress> localHosts
+        = new ConcurrentHashMap<ByteBuffer, InetAddress>();
+
+    /**
+     * The number of lookups answered from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of lookups which were not answered from the cache.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The number of times the cache was cleared. A route lookup which
+     * started before the cache was cleared may have seen the old network
+     * configuration and is not cached.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * Initializes a new <tt>LocalHostCache</tt>.
+     *
+     * @param ipv4PrefixLength the length of the IPv4 destination prefixes in
+     * bits, <tt>32</tt> to cache by destination address
+     * @param ipv6PrefixLength the length of the IPv6 destination prefixes in
+     * bits, <tt>128</tt> to cache by destination address
+     */
+    public LocalHostCache(int ipv4PrefixLength, int ipv6PrefixLength)
+    {
+        this.ipv4PrefixLength = Math.max(0, Math.min(32, ipv4PrefixLength));
+        this.ipv6PrefixLength = Math.max(0, Math.min(128, ipv6PrefixLength));
+    }
+
+    /**
+     * Returns the cached local address for a destination.
+     *
+     * @param destination the destination
+     * @return the local address for <tt>destination</tt> or <tt>null</tt> if
+     * none is cached
+     */
+    public InetAddress get(InetAddress destination)
+    {
+        InetAddress localHost = localHosts.get(getPrefix(destination));
+
+        if (localHost == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return localHost;
+    }
+
+    /**
+     * Returns the current generation of the cache, to be passed to
+     * {@link #put(InetAddress, InetAddress, int)} once the route lookup
+     * completes.
+     *
+     * @return the current generation of the cache
+     */
+    public int getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Caches the local address for the prefix of a destination unless the
+     * cache was cleared since the route lookup started.
+     *
+     * @param destination the destination
+     * @param localHost the local address selected for <tt>destination</tt>
+     * @param generation the generation of the cache obtained before the route
+     * lookup started
+     */
+    public void put(
+            InetAddress destination,
+            InetAddress localHost,
+            int generation)
+    {
+        ByteBuffer prefix = getPrefix(destination);
+
+        if (localHosts.size() >= MAX_ENTRIES)
+            localHosts.clear();
+        localHosts.put(prefix, localHost);
+
+        // a concurrent clear() may have missed the new entry
+        if (this.generation.get() != generation)
+            localHosts.remove(prefix, localHost);
+    }
+
+    /**
+     * Removes all cached addresses.
+     */
+    public void clear()
+    {
+        generation.incrementAndGet();
+        localHosts.clear();
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups which were not answered from the cache.
+     *
+     * @return the number of misses
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the prefix of a destination as a cache key.
+     *
+     * @param destination the destination
+     * @return the address bytes of <tt>destination</tt> with the bits after
+     * the prefix length cleared
+     */
+    private ByteBuffer getPrefix(InetAddress destination)
+    {
+        byte[] address = destination.getAddress();
+        int prefixLength
+            = (address.length == 4) ? ipv4PrefixLength : ipv6PrefixLength;
+
+        for (int i = 0; i < address.length; i++)
+        {
+            int bits = prefixLength - i * 8;
+
+            if (bits <= 0)
+                address[i] = 0;
+            else if (bits < 8)
+                address[i] &= (byte) (0xFF << (8 - bits));
+        }
+        return ByteBuffer.wrap(address);
+    }
+}
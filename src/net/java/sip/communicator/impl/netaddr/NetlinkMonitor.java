@@ -0,0 +1,441 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.netaddr;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+import com.sun.jna.*;
+
+/**
+ * Reports changes of the links, addresses and routes of the host as they
+ * happen by listening to the Linux rtnetlink multicast groups on a netlink
+ * socket, which is opened through JNA as Java cannot open netlink sockets.
+ *
+ * <p>
+ * The monitor only tells that something changed; the listeners are expected
+ * to look at the interfaces or routes to find out what. The socket belongs to
+ * this process, so nothing is left behind if the JVM exits without
+ * {@link #stop()}.
+ * </p>
+ */
+public class NetlinkMonitor
+    implements Runnable
+{
+    /**
+     * Our class logger.
+     */
+    private static final Logger logger = Logger.getLogger(NetlinkMonitor.class);
+
+    /**
+     * JNA interface to the socket functions of LibC.
+     */
+    public static interface LibC
+        extends Library
+    {
+        public static final int AF_NETLINK = 16;
+        public static final int SOCK_RAW = 3;
+        public static final int NETLINK_ROUTE = 0;
+
+        public static final int SOL_SOCKET = 1;
+        public static final int SO_RCVTIMEO = 20;
+
+        public static final int EINTR = 4;
+        public static final int EAGAIN = 11;
+        public static final int ENOBUFS = 105;
+
+        // see the man pages for the mapped C functions
+        int socket(int domain, int type, int protocol);
+        int bind(int fd, sockaddr_nl addr, int addrlen);
+        int setsockopt(
+                int fd,
+                int level,
+                int optname,
+                timeval optval,
+                int optlen);
+        NativeLong recv(int fd, byte[] buf, NativeLong len, int flags);
+        int close(int fd);
+        String strerror(int error);
+    }
+
+    /**
+     * JNA mapping of <tt>sockaddr_nl</tt>.
+     */
+    public static class sockaddr_nl
+        extends Structure
+    {
+        public short nl_family;
+        public short nl_pad;
+        public int nl_pid;
+        public int nl_groups;
+
+        @Override
+        protected List getFieldOrder()
+        {
+            return
+                Arrays.asList(
+                        new String[]
+                        {
+                            "nl_family",
+                            "nl_pad",
+                            "nl_pid",
+                            "nl_groups"
+                        });
+        }
+    }
+
+    /**
+     * JNA mapping of <tt>timeval</tt>.
+     */
+    public static class timeval
+        extends Structure
+    {
+        public NativeLong tv_sec;
+        public NativeLong tv_usec;
+
+        @Override
+        protected List getFieldOrder()
+        {
+            return Arrays.asList(new String[] { "tv_sec", "tv_usec" });
+        }
+    }
+
+    /**
+     * The rtnetlink multicast groups of the links (<tt>RTMGRP_LINK</tt>), the
+     * IPv4 and IPv6 addresses (<tt>RTMGRP_IPV4_IFADDR</tt>,
+     * <tt>RTMGRP_IPV6_IFADDR</tt>) and the IPv4 and IPv6 routes
+     * (<tt>RTMGRP_IPV4_ROUTE</tt>, <tt>RTMGRP_IPV6_ROUTE</tt>).
+     */
+    private static final int GROUPS = 0x1 | 0x10 | 0x100 | 0x40 | 0x400;
+
+    /**
+     * The size of <tt>nlmsghdr</tt>, which starts every netlink message.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * The types of the rtnetlink messages of links and addresses.
+     */
+    private static final int RTM_NEWLINK = 16, RTM_DELLINK = 17,
+        RTM_NEWADDR = 20, RTM_DELADDR = 21;
+
+    /**
+     * The types of the rtnetlink messages of routes.
+     */
+    private static final int RTM_NEWROUTE = 24, RTM_DELROUTE = 25;
+
+    /**
+     * Returned by {@link #parse(ByteBuffer)} when links or addresses changed.
+     */
+    static final int LINK_CHANGED = 1;
+
+    /**
+     * Returned by {@link #parse(ByteBuffer)} when routes changed.
+     */
+    static final int ROUTE_CHANGED = 2;
+
+    /**
+     * The size of the buffer the messages are received in.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The time in seconds after which a receive returns without a message,
+     * so that the reading thread notices that the monitor was stopped.
+     */
+    private static final int RECEIVE_TIMEOUT = 1;
+
+    /**
+     * The task to run on every change of the links or addresses.
+     */
+    private final Runnable listener;
+
+    /**
+     * The task to run on every change of the routes.
+     */
+    private final Runnable routeListener;
+
+    /**
+     * LibC or <tt>null</tt> if the monitor has never started.
+     */
+    private LibC libc;
+
+    /**
+     * The netlink socket or <tt>-1</tt> if the monitor is not running. It is
+     * closed by the reading thread.
+     */
+    private int fd = -1;
+
+    /**
+     * Whether the monitor reports changes.
+     */
+    private volatile boolean alive;
+
+    /**
+     * Initializes a new <tt>NetlinkMonitor</tt>.
+     *
+     * @param listener the task to run on every change of the links or
+     * addresses
+     * @param routeListener the task to run on every change of the routes
+     */
+    public NetlinkMonitor(Runnable listener, Runnable routeListener)
+    {
+        this.listener = listener;
+        this.routeListener = routeListener;
+    }
+
+    /**
+     * Starts listening for changes.
+     *
+     * @return <tt>true</tt> if the monitor has started, <tt>false</tt> if
+     * netlink messages cannot be received on this host
+     */
+    public synchronized boolean start()
+    {
+        if (alive)
+            return true;
+
+        try
+        {
+            if (libc == null)
+                libc = (LibC) Native.loadLibrary("c", LibC.class);
+            fd = open(libc);
+        }
+        catch (LinkageError le)
+        {
+            if (logger.isInfoEnabled())
+                logger.info("Cannot monitor netlink, JNA is not available: "
+                    + le.getMessage());
+            return false;
+        }
+        catch (IOException ioe)
+        {
+            if (logger.isInfoEnabled())
+                logger.info("Cannot monitor netlink: " + ioe.getMessage());
+            return false;
+        }
+
+        alive = true;
+
+        Thread t = new Thread(this, NetlinkMonitor.class.getSimpleName());
+
+        t.setDaemon(true);
+        t.start();
+        return true;
+    }
+
+    /**
+     * Opens a netlink socket which receives the messages of the rtnetlink
+     * multicast groups of links, addresses and routes.
+     *
+     * @param libc LibC
+     * @return the netlink socket
+     * @throws IOException if the socket cannot be opened
+     */
+    private static int open(LibC libc)
+        throws IOException
+    {
+        int fd = libc.socket(LibC.AF_NETLINK, LibC.SOCK_RAW, LibC.NETLINK_ROUTE);
+
+        if (fd < 0)
+            throw new IOException(libc.strerror(Native.getLastError()));
+
+        sockaddr_nl addr = new sockaddr_nl();
+        timeval timeout = new timeval();
+
+        addr.nl_family = LibC.AF_NETLINK;
+        addr.nl_groups = GROUPS;
+        timeout.tv_sec = new NativeLong(RECEIVE_TIMEOUT);
+        timeout.tv_usec = new NativeLong(0);
+        if (libc.bind(fd, addr, addr.size()) < 0
+            || libc.setsockopt(
+                    fd,
+                    LibC.SOL_SOCKET, LibC.SO_RCVTIMEO,
+                    timeout, timeout.size()) < 0)
+        {
+            IOException ioe
+                = new IOException(libc.strerror(Native.getLastError()));
+
+            libc.close(fd);
+            throw ioe;
+        }
+        return fd;
+    }
+
+    /**
+     * Stops listening for changes. The socket is closed by the reading thread
+     * once its current receive returns.
+     */
+    public synchronized void stop()
+    {
+        alive = false;
+        fd = -1;
+    }
+
+    /**
+     * Returns whether the monitor reports changes. The monitor stops if the
+     * netlink socket fails.
+     *
+     * @return <tt>true</tt> if the monitor reports changes
+     */
+    public boolean isAlive()
+    {
+        return alive;
+    }
+
+    /**
+     * Returns whether a socket is the one the monitor reads from.
+     *
+     * @param fd the socket
+     * @return <tt>true</tt> if the monitor is running and reads from
+     * <tt>fd</tt>
+     */
+    private synchronized boolean isCurrent(int fd)
+    {
+        return alive && this.fd == fd;
+    }
+
+    /**
+     * Receives the messages of the netlink socket and notifies the listeners
+     * of the changes they report.
+     */
+    public void run()
+    {
+        LibC libc;
+        int fd;
+
+        synchronized (this)
+        {
+            libc = this.libc;
+            fd = this.fd;
+        }
+        if (fd < 0)
+            return;
+
+        byte[] buf = new byte[BUFFER_SIZE];
+        NativeLong len = new NativeLong(buf.length);
+
+        try
+        {
+            while (isCurrent(fd))
+            {
+                int received = libc.recv(fd, buf, len, 0).intValue();
+
+                if (received < 0)
+                {
+                    int error = Native.getLastError();
+
+                    // the receive timed out so that a stop is noticed
+                    if (error == LibC.EAGAIN || error == LibC.EINTR)
+                        continue;
+                    if (error == LibC.ENOBUFS)
+                    {
+                        // messages were lost, so anything may have changed
+                        if (logger.isDebugEnabled())
+                            logger.debug("Netlink messages were lost");
+                        listener.run();
+                        routeListener.run();
+                        continue;
+                    }
+                    throw new IOException(libc.strerror(error));
+                }
+
+                int changes
+                    = parse(
+                            ByteBuffer.wrap(buf, 0, received)
+                                .order(ByteOrder.nativeOrder()));
+
+                if (logger.isTraceEnabled())
+                    logger.trace("netlink: " + received + " bytes, " + changes);
+                if ((changes & LINK_CHANGED) != 0)
+                    listener.run();
+                if ((changes & ROUTE_CHANGED) != 0)
+                    routeListener.run();
+            }
+        }
+        catch (IOException ioe)
+        {
+            if (isCurrent(fd))
+                logger.warn("Error reading netlink messages", ioe);
+        }
+        catch (Throwable t)
+        {
+            logger.error("Error handling netlink message", t);
+            if (t instanceof ThreadDeath)
+                throw (ThreadDeath) t;
+        }
+        finally
+        {
+            libc.close(fd);
+            synchronized (this)
+            {
+                if (this.fd == fd)
+                {
+                    if (alive)
+                        logger.warn("Netlink monitor has stopped");
+                    alive = false;
+                    this.fd = -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds out which changes the rtnetlink messages received in one datagram
+     * report. Only the headers of the messages are looked at, so a message
+     * which was truncated because it did not fit the buffer still counts.
+     *
+     * @param messages the received messages in native byte order
+     * @return a combination of {@link #LINK_CHANGED} and
+     * {@link #ROUTE_CHANGED}, or zero if the messages report neither
+     */
+    static int parse(ByteBuffer messages)
+    {
+        int changes = 0;
+        int offset = messages.position();
+        int limit = messages.limit();
+
+        while (offset + HEADER_SIZE <= limit)
+        {
+            int length = messages.getInt(offset);
+            int type = messages.getShort(offset + 4) & 0xffff;
+
+            switch (type)
+            {
+                case RTM_NEWLINK:
+                case RTM_DELLINK:
+                case RTM_NEWADDR:
+                case RTM_DELADDR:
+                    changes |= LINK_CHANGED;
+                    break;
+                case RTM_NEWROUTE:
+                case RTM_DELROUTE:
+                    changes |= ROUTE_CHANGED;
+                    break;
+            }
+            if (length < HEADER_SIZE)
+                break;
+            // the messages are aligned to four bytes
+            offset += (length + 3) & ~3;
+        }
+        return changes;
+    }
+}
@@ -81,11 +81,71 @@
      */
     public static final int DEFAULT_STUN_SERVER_PORT = 3478;
 
+    /**
+     * The name of the property containing the length in bits of the IPv4
+     * destination prefixes by which the local host addresses are cached.
+     */
+    public static final String LOCALHOST_CACHE_IPV4_PREFIX_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.netaddr.LOCALHOST_CACHE_IPV4_PREFIX";
+
+    /**
+     * The name of the property containing the length in bits of the IPv6
+     * destination prefixes by which the local host addresses are cached.
+     */
+    public static final String LOCALHOST_CACHE_IPV6_PREFIX_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.netaddr.LOCALHOST_CACHE_IPV6_PREFIX";
+
+    /**
+     * The local host addresses returned by {@link #getLocalHost(InetAddress)}
+     * by destination prefix, or <tt>null</tt> if the service is not started.
+     * Cleared on every change of the network configuration or the routes.
+     */
+    private volatile LocalHostCache localHostCache = null;
+
+    /**
+     * Clears the cached local host addresses when the network configuration
+     * changes.
+     */
+    private final NetworkConfigurationChangeListener localHostCacheInvalidator
+        = new NetworkConfigurationChangeListener()
+        {
+            public void configurationChanged(ChangeEvent event)
+            {
+                LocalHostCache localHostCache
+                    = NetworkAddressManagerServiceImpl.this.localHostCache;
+
+                if (localHostCache != null
+                        && event.getType() != ChangeEvent.DNS_CHANGE)
+                {
+                    localHostCache.clear();
+                }
+            }
+        };
+
+    /**
+     * Clears the cached local host addresses when the routes change, which
+     * may change the local address used for a destination without a change of
+     * the interfaces.
+     */
+    private final Runnable localHostCacheRouteInvalidator
+        = new Runnable()
+        {
+            public void run()
+            {
+                LocalHostCache localHostCache
+                    = NetworkAddressManagerServiceImpl.this.localHostCache;
+
+                if (localHostCache != null)
+                    localHostCache.clear();
+            }
+        };
+
     /**
      * A thread which periodically scans network interfaces and reports
      * changes in network configuration.
      */
-    private NetworkConfigurationWatcher networkConfigurationWatcher = null;
+    private volatile NetworkConfigurationWatcher networkConfigurationWatcher
+        = null;
 
     /**
      * The service name to use when discovering TURN servers through DNS using
@@ -106,6 +166,30 @@ public void start()
      {
          this.localHostFinderSocket = initRandomPortSocket();
 
+         ConfigurationService config
+             = NetaddrActivator.getConfigurationService();
+         int ipv4PrefixLength = 32;
+         int ipv6PrefixLength = 128;
+
+         if (config != null)
+         {
+             ipv4PrefixLength
+                 = config.getInt(
+                         LOCALHOST_CACHE_IPV4_PREFIX_PROPERTY_NAME,
+                         ipv4PrefixLength);
+             ipv6PrefixLength
+                 = config.getInt(
+                         LOCALHOST_CACHE_IPV6_PREFIX_PROPERTY_NAME,
+                         ipv6PrefixLength);
+         }
+         // the cache is only correct as long as it learns about changes of
+         // the network configuration
+         addNetworkConfigurationChangeListener(localHostCacheInvalidator);
+         networkConfigurationWatcher
+             .addRouteChangeListener(localHostCacheRouteInvalidator);
+         this.localHostCache
+             = new LocalHostCache(ipv4PrefixLength, ipv6PrefixLength);
+
          // set packet logging to ice4j stack
          StunStack.setPacketLogger(new Ice4jPacketLogger());
      }
@@ -119,6 +203,26 @@ public void stop()
      {
          try
          {
+             LocalHostCache localHostCache = this.localHostCache;
+
+             if (localHostCache != null)
+             {
+                 this.localHostCache = null;
+                 removeNetworkConfigurationChangeListener(
+                         localHostCacheInvalidator);
+                 if(networkConfigurationWatcher != null)
+                 {
+                     networkConfigurationWatcher.removeRouteChangeListener(
+                             localHostCacheRouteInvalidator);
+                 }
+                 if (logger.isDebugEnabled())
+                 {
+                     logger.debug(
+                             "Local host cache hits: "
+                                 + localHostCache.getHits() + ", misses: "
+                                 + localHostCache.getMisses());
+                 }
+             }
              if(networkConfigurationWatcher != null)
                  networkConfigurationWatcher.stop();
          }
@@ -131,6 +235,51 @@ public void stop()
     /**
      * Returns an InetAddress instance that represents the localhost, and that
      * a socket can bind upon or distribute to peers as a contact address.
+     * The address is cached by destination prefix until the network
+     * configuration changes, so that concurrent callers do not have to wait
+     * for a route lookup each.
+     *
+     * @param intendedDestination the destination that we'd like to use the
+     * localhost address with.
+     *
+     * @return an InetAddress instance representing the local host, and that
+     * a socket can bind upon or distribute to peers as a contact address.
+     */
+    public InetAddress getLocalHost(InetAddress intendedDestination)
+    {
+        LocalHostCache localHostCache = this.localHostCache;
+        InetAddress localHost;
+
+        if (localHostCache == null)
+            return findLocalHost(intendedDestination);
+
+        localHost = localHostCache.get(intendedDestination);
+        if (localHost == null)
+        {
+            int generation = localHostCache.getGeneration();
+
+            localHost = findLocalHost(intendedDestination);
+            if (localHost != null && !localHost.isAnyLocalAddress())
+            {
+                localHostCache.put(
+                        intendedDestination,
+                        localHost,
+                        generation);
+            }
+        }
+        else if (logger.isTraceEnabled())
+        {
+            logger.trace(
+                    "Returning the cached localhost address '" + localHost
+                        + "' for intended destination '"
+                        + intendedDestination + "'");
+        }
+        return localHost;
+    }
+
+    /**
+     * Asks the routing table of the host for the local address to use with a
+     * specific destination.
      *
      * @param intendedDestination the destination that we'd like to use the
      * localhost address with.
@@ -138,8 +287,7 @@ public void stop()
      * @return an InetAddress instance representing the local host, and that
      * a socket can bind upon or distribute to peers as a contact address.
      */
-    public synchronized InetAddress getLocalHost(
-            InetAddress intendedDestination)
+    private InetAddress findLocalHost(InetAddress intendedDestination)
     {
         InetAddress localHost = null;
 
@@ -205,10 +353,13 @@ else if (OSUtils.IS_MAC)
             //no point in making sure that the localHostFinderSocket is
             //initialized.
             //better let it through a NullPointerException.
-            localHostFinderSocket.connect(intendedDestination,
-                                          RANDOM_ADDR_DISC_PORT);
-            localHost = localHostFinderSocket.getLocalAddress();
-            localHostFinderSocket.disconnect();
+            synchronized (localHostFinderSocket)
+            {
+                localHostFinderSocket.connect(intendedDestination,
+                                              RANDOM_ADDR_DISC_PORT);
+                localHost = localHostFinderSocket.getLocalAddress();
+                localHostFinderSocket.disconnect();
+            }
         }
 
         //windows socket implementations return the any address so we need to
@@ -241,29 +392,17 @@ else if (OSUtils.IS_MAC)
                 {
                     //return the first globally routable ipv6 address we find
                     //on the machine (and hope it's a good one)
-                    boolean done = false;
-                    Enumeration<NetworkInterface> ifaces
-                        = NetworkInterface.getNetworkInterfaces();
-
-                    while (!done && ifaces.hasMoreElements())
+                    for (InetAddress address
+                            : getInterfaceSnapshot().getAllAddresses())
                     {
-                        Enumeration<InetAddress> addresses
-                            = ifaces.nextElement().getInetAddresses();
-
-                        while (addresses.hasMoreElements())
+                        if ((address instanceof Inet6Address)
+                                && !address.isAnyLocalAddress()
+                                && !address.isLinkLocalAddress()
+                                && !address.isLoopbackAddress()
+                                && !address.isSiteLocalAddress())
                         {
-                            InetAddress address = addresses.nextElement();
-
-                            if ((address instanceof Inet6Address)
-                                    && !address.isAnyLocalAddress()
-                                    && !address.isLinkLocalAddress()
-                                    && !address.isLoopbackAddress()
-                                    && !address.isSiteLocalAddress())
-                            {
-                                localHost = address;
-                                done = true;
-                                break;
-                            }
+                            localHost = address;
+                            break;
                         }
                     }
                 }
@@ -274,26 +413,14 @@ else if (OSUtils.IS_MAC)
                     if (intendedDestination instanceof Inet4Address)
                     {
                         // return the first non-loopback interface we find.
-                        boolean done = false;
-                        Enumeration<NetworkInterface> ifaces
-                            = NetworkInterface.getNetworkInterfaces();
-
-                        while (!done && ifaces.hasMoreElements())
+                        for (InetAddress address
+                                : getInterfaceSnapshot().getAllAddresses())
                         {
-                            Enumeration<InetAddress> addresses
-                                = ifaces.nextElement().getInetAddresses();
-
-                            while (addresses.hasMoreElements())
+                            if ((address instanceof Inet4Address)
+                                    && !address.isLoopbackAddress())
                             {
-                                InetAddress address = addresses.nextElement();
-
-                                if ((address instanceof Inet4Address)
-                                        && !address.isLoopbackAddress())
-                                {
-                                    localHost = address;
-                                    done = true;
-                                    break;
-                                }
+                                localHost = address;
+                                break;
                             }
                         }
                     }
@@ -311,6 +438,26 @@ else if (OSUtils.IS_MAC)
         return localHost;
     }
 
+    /**
+     * Returns a snapshot of the network interfaces of the host. The snapshot
+     * of the network configuration watcher is reused if there is one, so that
+     * the interfaces are not enumerated on every call.
+     *
+     * @return a snapshot of the network interfaces
+     * @throws SocketException if the interfaces cannot be enumerated
+     */
+    private NetworkInterfaceSnapshot getInterfaceSnapshot()
+        throws SocketException
+    {
+        NetworkInterfaceSnapshot snapshot = null;
+
+        if (networkConfigurationWatcher != null)
+            snapshot = networkConfigurationWatcher.getSnapshot();
+        if (snapshot == null)
+            snapshot = NetworkInterfaceSnapshot.capture();
+        return snapshot;
+    }
+
     /**
      * Returns the hardware address (i.e. MAC address) of the specified
      * interface name.
@@ -19,17 +19,22 @@
 
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.service.netaddr.event.*;
 import net.java.sip.communicator.service.sysactivity.*;
 import net.java.sip.communicator.service.sysactivity.event.*;
 import net.java.sip.communicator.util.*;
+import net.java.sip.communicator.util.Logger;
 
+import org.jitsi.util.*;
 import org.osgi.framework.*;
 
 /**
- * Periodically checks the current network interfaces to track changes
- * and fire events on those changes.
+ * Checks the current network interfaces to track changes and fire events on
+ * those changes. The interfaces are checked when the system activity service
+ * or, on Linux, the {@link NetlinkMonitor} reports a change; periodically
+ * otherwise. Bursts of change notifications are debounced into a single check.
  *
  * @author Damian Minkov
  */
@@ -55,6 +60,68 @@
      */
     private static final int CHECK_INTERVAL = 3000; // 3 sec.
 
+    /**
+     * Interval between checks of the network configuration while the
+     * {@link NetlinkMonitor} reports changes, in case it misses one.
+     */
+    private static final int MONITORED_CHECK_INTERVAL = 60000; // 1 min.
+
+    /**
+     * The time in milliseconds for which a check waits for further change
+     * notifications, so that a burst of them results in a single check.
+     */
+    private static final int DEBOUNCE_DELAY = 300;
+
+    /**
+     * The latest snapshot of the network interfaces.
+     */
+    private volatile NetworkInterfaceSnapshot snapshot;
+
+    /**
+     * The executor which runs the checks of the network interfaces and
+     * maintains {@link #activeInterfaces}.
+     */
+    private final ScheduledExecutorService checkExecutor
+        = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t
+                            = new Thread(
+                                    r,
+                                    NetworkConfigurationWatcher.class
+                                        .getSimpleName());
+
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+    /**
+     * Whether a check has been scheduled and has not started yet. Guarded by
+     * <tt>checkExecutor</tt>.
+     */
+    private boolean checkPending = false;
+
+    /**
+     * The milliseconds to wait before firing up events in the pending check.
+     * Guarded by <tt>checkExecutor</tt>.
+     */
+    private int pendingWaitBeforeFiringUpEvents = 0;
+
+    /**
+     * Whether the pending check prints debug info. Guarded by
+     * <tt>checkExecutor</tt>.
+     */
+    private boolean pendingPrintDebugInfo = false;
+
+    /**
+     * The source of link and address change notifications on Linux or
+     * <tt>null</tt> if none is used.
+     */
+    private NetlinkMonitor netlinkMonitor = null;
+
     /**
      * Whether thread checking for network notifications is running.
      */
@@ -66,17 +133,34 @@
     private SystemActivityNotificationsService
             systemActivityNotificationsService = null;
 
+    /**
+     * The tasks to run when the routes of the host may have changed.
+     */
+    private final CopyOnWriteArrayList<Runnable> routeChangeListeners
+        = new CopyOnWriteArrayList<Runnable>();
+
     /**
      * The thread dispatcher of network change events.
      */
-    private NetworkEventDispatcher eventDispatcher =
-            new NetworkEventDispatcher();
+    private final NetworkEventDispatcher eventDispatcher;
 
     /**
      * Inits configuration watcher.
      */
     NetworkConfigurationWatcher()
     {
+        this(new NetworkEventDispatcher());
+    }
+
+    /**
+     * Inits configuration watcher.
+     *
+     * @param eventDispatcher the dispatcher of the network change events
+     */
+    NetworkConfigurationWatcher(NetworkEventDispatcher eventDispatcher)
+    {
+        this.eventDispatcher = eventDispatcher;
+
         try
         {
             checkNetworkInterfaces(false, 0, true);
@@ -111,6 +195,29 @@ void addNetworkConfigurationChangeListener(
         }
     }
 
+    /**
+     * Adds a task to run when the routes of the host may have changed. Route
+     * changes are reported by the netlink monitor; when the interfaces are
+     * polled instead, the task is run on every poll because route changes
+     * cannot be told apart.
+     *
+     * @param listener the task to run
+     */
+    void addRouteChangeListener(Runnable listener)
+    {
+        routeChangeListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes a task added by {@link #addRouteChangeListener(Runnable)}.
+     *
+     * @param listener the task to remove
+     */
+    void removeRouteChangeListener(Runnable listener)
+    {
+        routeChangeListeners.remove(listener);
+    }
+
     /**
      * Used to fire initial events to newly added listers.
      * @param listener the listener to fire.
@@ -118,55 +225,80 @@ void addNetworkConfigurationChangeListener(
     private void initialFireEvents(
             NetworkConfigurationChangeListener listener)
     {
-        try
-        {
-            Enumeration<NetworkInterface> e =
-            NetworkInterface.getNetworkInterfaces();
+        NetworkInterfaceSnapshot current = getSnapshot();
+
+        if(current == null)
+            return;
 
-            while (e.hasMoreElements())
+        for(Map.Entry<String, List<InetAddress>> en
+                : current.getActiveInterfaces().entrySet())
+        {
+            for(InetAddress inetAddress : en.getValue())
             {
-                NetworkInterface networkInterface = e.nextElement();
+                NetworkEventDispatcher.fireChangeEvent(
+                    new ChangeEvent(
+                            en.getKey(),
+                            ChangeEvent.ADDRESS_UP,
+                            inetAddress,
+                            false,
+                            true),
+                    listener);
+            }
 
-                if(networkInterface.isLoopback())
-                    continue;
+            NetworkEventDispatcher.fireChangeEvent(
+                new ChangeEvent(en.getKey(),
+                    ChangeEvent.IFACE_UP, null, false, true),
+                listener);
+        }
+    }
 
-                // if interface is up and has some valid(non-local) address
-                // add it to currently active
-                if(networkInterface.isUp())
-                {
-                    Enumeration<InetAddress> as =
-                        networkInterface.getInetAddresses();
-                    boolean hasAddress = false;
-                    while (as.hasMoreElements())
-                    {
-                        InetAddress inetAddress = as.nextElement();
-                        if(inetAddress.isLinkLocalAddress())
-                            continue;
-
-                        hasAddress = true;
-                        NetworkEventDispatcher.fireChangeEvent(
-                            new ChangeEvent(
-                                    networkInterface.getName(),
-                                    ChangeEvent.ADDRESS_UP,
-                                    inetAddress,
-                                    false,
-                                    true),
-                            listener);
-                    }
+    /**
+     * Returns the latest snapshot of the network interfaces. The snapshot is
+     * taken again if no notification source keeps it up to date and it is
+     * older than the check interval.
+     *
+     * @return the latest snapshot of the network interfaces or <tt>null</tt>
+     * if the interfaces cannot be enumerated
+     */
+    NetworkInterfaceSnapshot getSnapshot()
+    {
+        NetworkInterfaceSnapshot current = snapshot;
 
-                    if(hasAddress)
-                        NetworkEventDispatcher.fireChangeEvent(
-                            new ChangeEvent(networkInterface.getName(),
-                                ChangeEvent.IFACE_UP, null, false, true),
-                            listener);
-                }
+        if(current == null
+            || (!isMonitored()
+                && System.currentTimeMillis() - current.getTimestamp()
+                    > CHECK_INTERVAL))
+        {
+            try
+            {
+                current = captureSnapshot();
+                snapshot = current;
             }
+            catch (SocketException e)
+            {
+                logger.error("Error checking network interfaces", e);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Returns whether changes of the network interfaces are reported to us as
+     * they happen.
+     *
+     * @return <tt>true</tt> if the system activity service or the netlink
+     * monitor report the changes of the network interfaces
+     */
+    private boolean isMonitored()
+    {
+        if(netlinkMonitor != null && netlinkMonitor.isAlive())
+            return true;
 
+        SystemActivityNotificationsService service
+            = systemActivityNotificationsService;
 
-        } catch (SocketException e)
-        {
-            logger.error("Error checking network interfaces", e);
-        }
+        return service != null
+            && service.isSupported(SystemActivityEvent.EVENT_NETWORK_CHANGE);
     }
 
     /**
@@ -194,6 +326,28 @@ private void handleNewSystemActivityNotificationsService(
             if(!isRunning)
             {
                 isRunning = true;
+
+                if(OSUtils.IS_LINUX)
+                {
+                    netlinkMonitor = new NetlinkMonitor(
+                            new Runnable()
+                            {
+                                public void run()
+                                {
+                                    netlinkChanged();
+                                }
+                            },
+                            new Runnable()
+                            {
+                                public void run()
+                                {
+                                    routeChanged();
+                                }
+                            });
+                    if(!netlinkMonitor.start())
+                        netlinkMonitor = null;
+                }
+
                 Thread th = new Thread(this);
                 // set to max priority to prevent detecting sleep if the cpu is
                 // overloaded
@@ -267,6 +421,11 @@ void stop()
             }
         }
 
+        if(netlinkMonitor != null)
+            netlinkMonitor.stop();
+
+        checkExecutor.shutdownNow();
+
         if(eventDispatcher != null)
             eventDispatcher.stop();
     }
@@ -285,17 +444,11 @@ public void activityChanged(SystemActivityEvent event)
         {
             // oo standby lets fire down to all interfaces
             // so they can reconnect
-            downAllInterfaces();
+            scheduleDownAllInterfaces();
         }
         else if(event.getEventID() == SystemActivityEvent.EVENT_NETWORK_CHANGE)
         {
-            try
-            {
-                checkNetworkInterfaces(true, 0, true);
-            } catch (SocketException e)
-            {
-                logger.error("Error checking network interfaces", e);
-            }
+            scheduleCheck(0, true);
         }
         else if(event.getEventID() == SystemActivityEvent.EVENT_DNS_CHANGE)
         {
@@ -311,6 +464,136 @@ else if(event.getEventID() == SystemActivityEvent.EVENT_DNS_CHANGE)
         }
     }
 
+    /**
+     * Schedules a check of the network interfaces when the netlink monitor
+     * reports a change.
+     */
+    void netlinkChanged()
+    {
+        scheduleCheck(1000, false);
+    }
+
+    /**
+     * Runs the route change listeners.
+     */
+    void routeChanged()
+    {
+        for (Runnable listener : routeChangeListeners)
+        {
+            try
+            {
+                listener.run();
+            }
+            catch (Throwable t)
+            {
+                logger.error("Error handling route change", t);
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+            }
+        }
+    }
+
+    /**
+     * Schedules a check of the network interfaces. The check waits for
+     * {@link #DEBOUNCE_DELAY} milliseconds; the requests made in the meantime
+     * are merged into it.
+     *
+     * @param waitBeforeFiringUpEvents milliseconds to wait before
+     * firing events for interfaces up.
+     * @param printDebugInfo whether to print debug info.
+     */
+    private void scheduleCheck(
+            int waitBeforeFiringUpEvents,
+            boolean printDebugInfo)
+    {
+        synchronized(checkExecutor)
+        {
+            pendingWaitBeforeFiringUpEvents
+                = Math.max(
+                        pendingWaitBeforeFiringUpEvents,
+                        waitBeforeFiringUpEvents);
+            pendingPrintDebugInfo |= printDebugInfo;
+
+            if(checkPending)
+                return;
+
+            try
+            {
+                checkExecutor.schedule(
+                        new Runnable()
+                        {
+                            public void run()
+                            {
+                                runPendingCheck();
+                            }
+                        },
+                        DEBOUNCE_DELAY,
+                        TimeUnit.MILLISECONDS);
+                checkPending = true;
+            }
+            catch(RejectedExecutionException ree)
+            {
+                // we are stopped
+            }
+        }
+    }
+
+    /**
+     * Runs the check scheduled by {@link #scheduleCheck(int, boolean)}.
+     */
+    private void runPendingCheck()
+    {
+        int waitBeforeFiringUpEvents;
+        boolean printDebugInfo;
+
+        synchronized(checkExecutor)
+        {
+            waitBeforeFiringUpEvents = pendingWaitBeforeFiringUpEvents;
+            printDebugInfo = pendingPrintDebugInfo;
+            checkPending = false;
+            pendingWaitBeforeFiringUpEvents = 0;
+            pendingPrintDebugInfo = false;
+        }
+
+        try
+        {
+            checkNetworkInterfaces(
+                    true, waitBeforeFiringUpEvents, printDebugInfo);
+        }
+        catch (SocketException e)
+        {
+            logger.error("Error checking network interfaces", e);
+        }
+        catch (Throwable t)
+        {
+            logger.error("Error checking network interfaces", t);
+            if (t instanceof ThreadDeath)
+                throw (ThreadDeath) t;
+        }
+    }
+
+    /**
+     * Schedules firing down events for all interfaces.
+     */
+    private void scheduleDownAllInterfaces()
+    {
+        try
+        {
+            checkExecutor.execute(
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            downAllInterfaces();
+                        }
+                    });
+        }
+        catch(RejectedExecutionException ree)
+        {
+            // we are stopped
+        }
+    }
+
     /**
      * Down all interfaces and fire events for it.
      */
@@ -345,41 +628,18 @@ private void checkNetworkInterfaces(
             boolean printDebugInfo)
         throws SocketException
     {
-        Enumeration<NetworkInterface> e =
-            NetworkInterface.getNetworkInterfaces();
+        NetworkInterfaceSnapshot current = captureSnapshot();
+
+        snapshot = current;
 
         Map<String, List<InetAddress>> currentActiveInterfaces =
             new HashMap<String, List<InetAddress>>();
 
-        while (e.hasMoreElements())
+        for(Map.Entry<String, List<InetAddress>> en
+                : current.getActiveInterfaces().entrySet())
         {
-            NetworkInterface networkInterface = e.nextElement();
-
-            if(networkInterface.isLoopback())
-                continue;
-
-            // if interface is up and has some valid(non-local) address
-            // add it to currently active
-            if(networkInterface.isUp())
-            {
-                List<InetAddress> addresses =
-                    new ArrayList<InetAddress>();
-
-                Enumeration<InetAddress> as =
-                    networkInterface.getInetAddresses();
-                while (as.hasMoreElements())
-                {
-                    InetAddress inetAddress = as.nextElement();
-                    if(inetAddress.isLinkLocalAddress())
-                        continue;
-
-                    addresses.add(inetAddress);
-                }
-
-                if(addresses.size() > 0)
-                    currentActiveInterfaces.put(
-                        networkInterface.getName(), addresses);
-            }
+            currentActiveInterfaces.put(
+                en.getKey(), new ArrayList<InetAddress>(en.getValue()));
         }
 
         // add network debug info, to track wake up problems
@@ -536,12 +796,27 @@ private void checkNetworkInterfaces(
     }
 
     /**
-     * Main loop of this thread.
+     * Enumerates the network interfaces of the host.
+     *
+     * @return a new snapshot of the network interfaces
+     * @throws SocketException if the interfaces cannot be enumerated
+     */
+    NetworkInterfaceSnapshot captureSnapshot()
+        throws SocketException
+    {
+        return NetworkInterfaceSnapshot.capture();
+    }
+
+    /**
+     * Main loop of this thread. Detects standby and checks the network
+     * interfaces periodically unless the netlink monitor reports their
+     * changes, in which case they are checked only once in a while in case a
+     * change was missed.
      */
     public void run()
     {
         long last = 0;
-        boolean isAfterStandby = false;
+        long lastCheck = 0;
 
         while(isRunning)
         {
@@ -550,18 +825,11 @@ public void run()
             // if time spent between checks is more than 4 times
             // longer than the check interval we consider it as a
             // new check after standby
-            if(!isAfterStandby && last != 0)
-                isAfterStandby = (last + 4*CHECK_INTERVAL - curr) < 0;
-
-            if(isAfterStandby)
+            if(last != 0 && (last + 4*CHECK_INTERVAL - curr) < 0)
             {
                 // oo standby lets fire down to all interfaces
                 // so they can reconnect
-                downAllInterfaces();
-
-                // we have fired events for standby, make it to false now
-                // so we can calculate it again next time
-                isAfterStandby = false;
+                scheduleDownAllInterfaces();
 
                 last = curr;
 
@@ -577,25 +845,23 @@ public void run()
                 continue;
             }
 
-            try
-            {
-                boolean networkIsUP = activeInterfaces.size() > 0;
-
-                checkNetworkInterfaces(true, 1000, false);
+            boolean monitored
+                = netlinkMonitor != null && netlinkMonitor.isAlive();
 
-                // fire that network has gone up
-                if(!networkIsUP && activeInterfaces.size() > 0)
-                {
-                    isAfterStandby = false;
-                }
-
-                // save the last time that we checked
-                last = System.currentTimeMillis();
-            } catch (SocketException e)
+            if(!monitored || curr - lastCheck >= MONITORED_CHECK_INTERVAL)
             {
-                logger.error("Error checking network interfaces", e);
+                scheduleCheck(1000, false);
+                lastCheck = curr;
             }
 
+            // polling the interfaces does not tell whether the routes
+            // changed, so they are assumed to have changed
+            if(!monitored)
+                routeChanged();
+
+            // save the last time that we checked
+            last = System.currentTimeMillis();
+
             synchronized(this)
             {
                 try{
@@ -0,0 +1,151 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.netaddr;
+
+import java.net.*;
+import java.util.*;
+
+/**
+ * An immutable view of the network interfaces of the host and their addresses
+ * at one point in time. Enumerating the interfaces is expensive on hosts with
+ * many (virtual) interfaces, so the snapshot taken by the
+ * <tt>NetworkConfigurationWatcher</tt> on every configuration change is shared
+ * with the other users of the interface list.
+ */
+public class NetworkInterfaceSnapshot
+{
+    /**
+     * The addresses of all interfaces, by interface name, in enumeration
+     * order.
+     */
+    private final Map<String, List<InetAddress>> addresses;
+
+    /**
+     * The addresses of the active interfaces, by interface name: the
+     * interfaces which are up, are not a loopback and have at least one
+     * address which is not link-local. Link-local addresses are left out.
+     */
+    private final Map<String, List<InetAddress>> activeInterfaces;
+
+    /**
+     * The time in milliseconds at which the snapshot was taken.
+     */
+    private final long timestamp;
+
+    /**
+     * Enumerates the network interfaces of the host.
+     *
+     * @return a new snapshot of the network interfaces
+     * @throws SocketException if the interfaces cannot be enumerated
+     */
+    public static NetworkInterfaceSnapshot capture()
+        throws SocketException
+    {
+        Map<String, List<InetAddress>> addresses
+            = new LinkedHashMap<String, List<InetAddress>>();
+        Map<String, List<InetAddress>> activeInterfaces
+            = new HashMap<String, List<InetAddress>>();
+        Enumeration<NetworkInterface> e
+            = NetworkInterface.getNetworkInterfaces();
+
+        while (e != null && e.hasMoreElements())
+        {
+            NetworkInterface networkInterface = e.nextElement();
+            List<InetAddress> ifaceAddresses
+                = Collections.list(networkInterface.getInetAddresses());
+
+            addresses.put(
+                    networkInterface.getName(),
+                    Collections.unmodifiableList(ifaceAddresses));
+
+            if(networkInterface.isLoopback() || !networkInterface.isUp())
+                continue;
+
+            List<InetAddress> active = new ArrayList<InetAddress>();
+
+            for (InetAddress inetAddress : ifaceAddresses)
+            {
+                if(!inetAddress.isLinkLocalAddress())
+                    active.add(inetAddress);
+            }
+            if(active.size() > 0)
+            {
+                activeInterfaces.put(
+                        networkInterface.getName(),
+                        Collections.unmodifiableList(active));
+            }
+        }
+
+        return new NetworkInterfaceSnapshot(addresses, activeInterfaces);
+    }
+
+    /**
+     * Initializes a new <tt>NetworkInterfaceSnapshot</tt>.
+     *
+     * @param addresses the addresses of all interfaces by interface name
+     * @param activeInterfaces the addresses of the active interfaces by
+     * interface name
+     */
+    NetworkInterfaceSnapshot(
+            Map<String, List<InetAddress>> addresses,
+            Map<String, List<InetAddress>> activeInterfaces)
+    {
+        this.addresses = Collections.unmodifiableMap(addresses);
+        this.activeInterfaces = Collections.unmodifiableMap(activeInterfaces);
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the addresses of the active interfaces: the interfaces which are
+     * up, are not a loopback and have at least one address which is not
+     * link-local.
+     *
+     * @return the non link-local addresses of the active interfaces by
+     * interface name
+     */
+    public Map<String, List<InetAddress>> getActiveInterfaces()
+    {
+        return activeInterfaces;
+    }
+
+    /**
+     * Returns the addresses of all interfaces, including the interfaces which
+     * are down and the loopback, in the order in which the interfaces were
+     * enumerated.
+     *
+     * @return all addresses of the host
+     */
+    public List<InetAddress> getAllAddresses()
+    {
+        List<InetAddress> all = new ArrayList<InetAddress>();
+
+        for (List<InetAddress> ifaceAddresses : addresses.values())
+            all.addAll(ifaceAddresses);
+        return all;
+    }
+
+    /**
+     * Returns the time at which this snapshot was taken.
+     *
+     * @return the time in milliseconds at which this snapshot was taken
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+}
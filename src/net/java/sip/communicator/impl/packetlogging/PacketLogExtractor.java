@@ -0,0 +1,348 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.packetlogging;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.*;
+import java.util.zip.*;
+
+/**
+ * Extracts the packets of one SIP call (by Call-ID) or XMPP stanza or Jingle
+ * session (by id) from the packet log segments into a single pcap file. Only
+ * the segments whose {@link PacketLogIndex} lists the key are read; segments
+ * without an index, such as the file being written, are scanned.
+ *
+ * <p>
+ * Usage: <tt>java
+ * net.java.sip.communicator.impl.packetlogging.PacketLogExtractor
+ * &lt;log dir&gt; &lt;key&gt; &lt;output.pcap&gt; [&lt;name&gt;]</tt>, where
+ * <tt>name</tt> is the name of the files, <tt>jitsi</tt> by default.
+ * </p>
+ */
+public class PacketLogExtractor
+{
+    /**
+     * The length of the pcap file global header.
+     */
+    private static final int GLOBAL_HEADER_LENGTH = 24;
+
+    /**
+     * The length of the pcap header of each packet.
+     */
+    private static final int RECORD_HEADER_LENGTH = 16;
+
+    /**
+     * The length of the fake ethernet header of each packet.
+     */
+    private static final int ETHERNET_HEADER_LENGTH = 14;
+
+    /**
+     * Prevents the initialization of <tt>PacketLogExtractor</tt> instances.
+     */
+    private PacketLogExtractor()
+    {
+    }
+
+    /**
+     * Extracts the packets with a key from the packet log segments, oldest
+     * first.
+     *
+     * @param dir the directory of the packet log files
+     * @param name the name of the files, without the index and extension
+     * @param key the Call-ID, stanza id or Jingle session id
+     * @param out the stream to write the pcap file with the packets to
+     * @return the number of extracted packets
+     * @throws IOException if a segment cannot be read or the packets cannot
+     * be written
+     */
+    public static int extract(
+            File dir,
+            String name,
+            String key,
+            OutputStream out)
+        throws IOException
+    {
+        SortedMap<Integer, File> segments = getSegments(dir, name);
+        boolean headerWritten = false;
+        int count = 0;
+
+        for (Map.Entry<Integer, File> e : segments.entrySet())
+        {
+            File segment = e.getValue();
+            File indexFile
+                = new File(dir, name + e.getKey() + PacketLogIndex.EXTENSION);
+            List<Long> offsets = null;
+
+            if (indexFile.exists())
+            {
+                offsets = PacketLogIndex.read(indexFile).getOffsets(key);
+                if (offsets.isEmpty())
+                    continue;
+            }
+
+            DataInputStream in = openSegment(segment);
+
+            try
+            {
+                byte[] globalHeader = new byte[GLOBAL_HEADER_LENGTH];
+
+                in.readFully(globalHeader);
+                if (!headerWritten)
+                {
+                    out.write(globalHeader);
+                    headerWritten = true;
+                }
+                count += copyRecords(in, offsets, key, out);
+            }
+            catch (EOFException eofe)
+            {
+                // the file being written may end with a partial record
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Returns the segments of a packet log, oldest first.
+     *
+     * @param dir the directory of the packet log files
+     * @param name the name of the files, without the index and extension
+     * @return the segment files by descending segment number
+     */
+    static SortedMap<Integer, File> getSegments(File dir, String name)
+    {
+        SortedMap<Integer, File> segments
+            = new TreeMap<Integer, File>(Collections.reverseOrder());
+        Pattern pattern
+            = Pattern.compile(
+                    Pattern.quote(name) + "(\\d+)\\.pcap(\\.gz)?");
+        File[] files = dir.listFiles();
+
+        if (files == null)
+            return segments;
+        for (File file : files)
+        {
+            Matcher m = pattern.matcher(file.getName());
+
+            if (m.matches())
+            {
+                Integer i = Integer.valueOf(m.group(1));
+
+                // prefer the compressed segment if both exist
+                if (m.group(2) != null || !segments.containsKey(i))
+                    segments.put(i, file);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Opens a segment, decompressing it if it is compressed.
+     *
+     * @param segment the segment file
+     * @return the uncompressed content of <tt>segment</tt>
+     * @throws IOException if the file cannot be opened
+     */
+    private static DataInputStream openSegment(File segment)
+        throws IOException
+    {
+        InputStream in = new FileInputStream(segment);
+
+        if (segment.getName().endsWith(".gz"))
+            in = new GZIPInputStream(in, 65536);
+        return new DataInputStream(new BufferedInputStream(in, 65536));
+    }
+
+    /**
+     * Copies the records of a segment at given offsets or with a key.
+     *
+     * @param in the segment, positioned after its global header
+     * @param offsets the offsets of the records to copy, or <tt>null</tt> to
+     * copy the records of the packets with <tt>key</tt>
+     * @param key the Call-ID, stanza id or Jingle session id
+     * @param out the stream to copy the records to
+     * @return the number of copied records
+     * @throws IOException if the segment cannot be read or the records
+     * cannot be written
+     */
+    private static int copyRecords(
+            DataInputStream in,
+            List<Long> offsets,
+            String key,
+            OutputStream out)
+        throws IOException
+    {
+        byte[] header = new byte[RECORD_HEADER_LENGTH];
+        byte[] data = new byte[65536];
+        long position = GLOBAL_HEADER_LENGTH;
+        int next = 0;
+        int count = 0;
+
+        while (offsets == null || next < offsets.size())
+        {
+            try
+            {
+                in.readFully(header);
+            }
+            catch (EOFException eofe)
+            {
+                break;
+            }
+
+            int length
+                = (header[8] & 0xff)
+                    | ((header[9] & 0xff) << 8)
+                    | ((header[10] & 0xff) << 16)
+                    | ((header[11] & 0xff) << 24);
+
+            if (length < 0)
+                throw new IOException("Invalid pcap record length " + length);
+
+            boolean wanted;
+
+            if (offsets == null)
+            {
+                if (data.length < length)
+                    data = new byte[length];
+                in.readFully(data, 0, length);
+                wanted = hasKey(data, length, key);
+            }
+            else
+            {
+                wanted = (offsets.get(next) == position);
+                if (wanted)
+                {
+                    next++;
+                    if (data.length < length)
+                        data = new byte[length];
+                    in.readFully(data, 0, length);
+                }
+                else
+                {
+                    skipFully(in, length);
+                }
+            }
+
+            if (wanted)
+            {
+                out.write(header);
+                out.write(data, 0, length);
+                count++;
+            }
+            position += RECORD_HEADER_LENGTH + length;
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether a packet has a key, by looking at the payload after its
+     * fake headers.
+     *
+     * @param data the packet with its fake ethernet, IP and transport headers
+     * @param length the length of the packet
+     * @param key the Call-ID, stanza id or Jingle session id
+     * @return <tt>true</tt> if the SIP Call-ID or an XMPP id of the packet is
+     * <tt>key</tt>
+     */
+    private static boolean hasKey(byte[] data, int length, String key)
+    {
+        if (length < ETHERNET_HEADER_LENGTH + 20)
+            return false;
+
+        boolean isIPv4 = data[12] == 0x08 && data[13] == 0x00;
+        int ipHeaderLength = isIPv4 ? 20 : 40;
+        int protocol
+            = data[ETHERNET_HEADER_LENGTH + (isIPv4 ? 9 : 6)] & 0xff;
+        int transportHeaderLength = (protocol == 0x11) ? 8 : 32;
+        int offset
+            = ETHERNET_HEADER_LENGTH + ipHeaderLength + transportHeaderLength;
+
+        if (offset >= length)
+            return false;
+
+        return key.equals(
+                    PacketLogIndex.getSipCallId(data, offset, length - offset))
+            || PacketLogIndex.getXmppIds(data, offset, length - offset)
+                    .contains(key);
+    }
+
+    /**
+     * Skips bytes of a stream.
+     *
+     * @param in the stream
+     * @param length the number of bytes to skip
+     * @throws IOException if the stream ends before
+     */
+    private static void skipFully(InputStream in, long length)
+        throws IOException
+    {
+        while (length > 0)
+        {
+            long skipped = in.skip(length);
+
+            if (skipped <= 0)
+            {
+                if (in.read() < 0)
+                    throw new EOFException();
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    /**
+     * Extracts the packets with a key from the packet log segments into a
+     * pcap file.
+     *
+     * @param args the directory of the packet log files, the key, the output
+     * file and, optionally, the name of the files
+     * @throws IOException if the packets cannot be extracted
+     */
+    public static void main(String[] args)
+        throws IOException
+    {
+        if (args.length < 3)
+        {
+            System.err.println(
+                    "Usage: PacketLogExtractor <log dir> <key> <output.pcap>"
+                        + " [<name>]");
+            System.exit(1);
+        }
+
+        String name = (args.length > 3) ? args[3] : "jitsi";
+        OutputStream out
+            = new BufferedOutputStream(new FileOutputStream(args[2]));
+        int count;
+
+        try
+        {
+            count = extract(new File(args[0]), name, args[1], out);
+        }
+        finally
+        {
+            out.close();
+        }
+        System.out.println("Extracted " + count + " packets to " + args[2]);
+    }
+}
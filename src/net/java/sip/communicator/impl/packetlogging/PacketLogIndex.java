@@ -0,0 +1,555 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.packetlogging;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The index of a packet log segment: the time range and the protocols of its
+ * packets, and the offsets of the packets of each SIP call (by Call-ID) and
+ * XMPP stanza or Jingle session (by id). It is stored next to the segment,
+ * so that the packets of a call can be found without decompressing and
+ * scanning every segment.
+ *
+ * <p>
+ * The index is a text file with one entry per line:
+ * </p>
+ * <pre>
+ * start &lt;first packet time in ms&gt;
+ * end &lt;last packet time in ms&gt;
+ * protocol &lt;protocol&gt; &lt;packet count&gt;
+ * key &lt;protocol&gt; &lt;key&gt; &lt;record offset&gt; ...
+ * </pre>
+ * <p>
+ * The record offsets are the positions of the pcap records in the
+ * uncompressed segment.
+ * </p>
+ */
+public class PacketLogIndex
+{
+    /**
+     * The extension of index files.
+     */
+    public static final String EXTENSION = ".idx";
+
+    /**
+     * The maximum number of bytes of a packet searched for its keys.
+     */
+    private static final int MAX_KEY_SCAN_LENGTH = 4096;
+
+    /**
+     * The maximum number of distinct keys in an index. Packets with new keys
+     * are not indexed by key once the index is full.
+     */
+    private static final int MAX_KEYS = 100000;
+
+    /**
+     * The time in milliseconds of the first packet, or <tt>-1</tt> if the
+     * segment is empty.
+     */
+    private long start = -1;
+
+    /**
+     * The time in milliseconds of the last packet, or <tt>-1</tt> if the
+     * segment is empty.
+     */
+    private long end = -1;
+
+    /**
+     * The number of packets by protocol.
+     */
+    private final Map<String, Integer> protocols
+        = new TreeMap<String, Integer>();
+
+    /**
+     * The record offsets by key, in the order the keys were first seen.
+     */
+    private final Map<Key, List<Long>> offsets
+        = new LinkedHashMap<Key, List<Long>>();
+
+    /**
+     * Records a packet of the segment.
+     *
+     * @param protocol the name of the protocol of the packet
+     * @param keys the keys of the packet, may be empty
+     * @param timestamp the time of the packet in milliseconds
+     * @param offset the position of the pcap record of the packet in the
+     * uncompressed segment
+     */
+    public void add(
+            String protocol,
+            Collection<String> keys,
+            long timestamp,
+            long offset)
+    {
+        if (start < 0 || timestamp < start)
+            start = timestamp;
+        if (timestamp > end)
+            end = timestamp;
+
+        Integer count = protocols.get(protocol);
+
+        protocols.put(protocol, (count == null) ? 1 : count + 1);
+
+        for (String key : keys)
+        {
+            Key k = new Key(protocol, key);
+            List<Long> keyOffsets = offsets.get(k);
+
+            if (keyOffsets == null)
+            {
+                if (offsets.size() >= MAX_KEYS)
+                    continue;
+                keyOffsets = new ArrayList<Long>();
+                offsets.put(k, keyOffsets);
+            }
+            keyOffsets.add(offset);
+        }
+    }
+
+    /**
+     * Returns the time of the first packet of the segment.
+     *
+     * @return the time in milliseconds of the first packet or <tt>-1</tt> if
+     * the segment is empty
+     */
+    public long getStart()
+    {
+        return start;
+    }
+
+    /**
+     * Returns the time of the last packet of the segment.
+     *
+     * @return the time in milliseconds of the last packet or <tt>-1</tt> if
+     * the segment is empty
+     */
+    public long getEnd()
+    {
+        return end;
+    }
+
+    /**
+     * Returns the number of packets of the segment.
+     *
+     * @return the number of packets
+     */
+    public int getPacketCount()
+    {
+        int count = 0;
+
+        for (Integer c : protocols.values())
+            count += c;
+        return count;
+    }
+
+    /**
+     * Returns the protocols of the packets of the segment.
+     *
+     * @return the number of packets by protocol name
+     */
+    public Map<String, Integer> getProtocols()
+    {
+        return Collections.unmodifiableMap(protocols);
+    }
+
+    /**
+     * Returns whether the segment has packets in a time range.
+     *
+     * @param from the start of the time range in milliseconds
+     * @param to the end of the time range in milliseconds
+     * @return <tt>true</tt> if the segment has packets between <tt>from</tt>
+     * and <tt>to</tt>
+     */
+    public boolean overlaps(long from, long to)
+    {
+        return start >= 0 && start <= to && end >= from;
+    }
+
+    /**
+     * Returns the offsets of the records of the packets with a key, of any
+     * protocol.
+     *
+     * @param key the Call-ID, stanza id or Jingle session id
+     * @return the record offsets in ascending order, empty if no packet has
+     * <tt>key</tt>
+     */
+    public List<Long> getOffsets(String key)
+    {
+        SortedSet<Long> result = new TreeSet<Long>();
+
+        for (Map.Entry<Key, List<Long>> e : offsets.entrySet())
+        {
+            if (e.getKey().key.equals(key))
+                result.addAll(e.getValue());
+        }
+        return new ArrayList<Long>(result);
+    }
+
+    /**
+     * Writes this index to a file.
+     *
+     * @param file the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file)
+        throws IOException
+    {
+        Writer out
+            = new BufferedWriter(
+                    new OutputStreamWriter(
+                            new FileOutputStream(file), "UTF-8"));
+
+        try
+        {
+            out.write("start " + start + "\n");
+            out.write("end " + end + "\n");
+            for (Map.Entry<String, Integer> e : protocols.entrySet())
+                out.write("protocol " + e.getKey() + " " + e.getValue() + "\n");
+            for (Map.Entry<Key, List<Long>> e : offsets.entrySet())
+            {
+                out.write("key " + e.getKey().protocol + " " + e.getKey().key);
+                for (Long offset : e.getValue())
+                    out.write(" " + offset);
+                out.write("\n");
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads an index from a file.
+     *
+     * @param file the file to read from
+     * @return the index
+     * @throws IOException if the file cannot be read or is not an index
+     */
+    public static PacketLogIndex read(File file)
+        throws IOException
+    {
+        PacketLogIndex index = new PacketLogIndex();
+        BufferedReader in
+            = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+        try
+        {
+            String line;
+
+            while ((line = in.readLine()) != null)
+            {
+                String[] fields = line.split(" ");
+
+                try
+                {
+                    if ("start".equals(fields[0]))
+                    {
+                        index.start = Long.parseLong(fields[1]);
+                    }
+                    else if ("end".equals(fields[0]))
+                    {
+                        index.end = Long.parseLong(fields[1]);
+                    }
+                    else if ("protocol".equals(fields[0]))
+                    {
+                        index.protocols.put(
+                                fields[1],
+                                Integer.parseInt(fields[2]));
+                    }
+                    else if ("key".equals(fields[0]))
+                    {
+                        List<Long> keyOffsets = new ArrayList<Long>();
+
+                        for (int i = 3; i < fields.length; i++)
+                            keyOffsets.add(Long.parseLong(fields[i]));
+                        index.offsets.put(
+                                new Key(fields[1], fields[2]),
+                                keyOffsets);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    throw new IOException(
+                            "Invalid packet log index line: " + line,
+                            e);
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return index;
+    }
+
+    /**
+     * Returns the SIP Call-ID of a message.
+     *
+     * @param data the array containing the message
+     * @param offset the offset of the message in <tt>data</tt>
+     * @param length the length of the message
+     * @return the Call-ID or <tt>null</tt> if the message has none
+     */
+    public static String getSipCallId(byte[] data, int offset, int length)
+    {
+        int end = offset + Math.min(length, MAX_KEY_SCAN_LENGTH);
+        int lineStart = offset;
+
+        while (lineStart < end)
+        {
+            int lineEnd = lineStart;
+
+            while (lineEnd < end && data[lineEnd] != '\n')
+                lineEnd++;
+
+            // the headers end with an empty line
+            if (lineEnd == lineStart
+                    || (lineEnd == lineStart + 1 && data[lineStart] == '\r'))
+                break;
+
+            int valueStart = -1;
+
+            if (startsWithIgnoreCase(data, lineStart, lineEnd, "Call-ID"))
+                valueStart = lineStart + 7;
+            else if (startsWithIgnoreCase(data, lineStart, lineEnd, "i"))
+                valueStart = lineStart + 1;
+
+            if (valueStart >= 0)
+            {
+                while (valueStart < lineEnd && data[valueStart] == ' ')
+                    valueStart++;
+                if (valueStart < lineEnd && data[valueStart] == ':')
+                {
+                    String callId
+                        = trim(data, valueStart + 1, lineEnd);
+
+                    if (callId.length() != 0)
+                        return callId;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the id of the first stanza of an XMPP packet and the session id
+     * of its Jingle element, if any.
+     *
+     * @param data the array containing the packet
+     * @param offset the offset of the packet in <tt>data</tt>
+     * @param length the length of the packet
+     * @return the stanza id and the Jingle session id, empty if the packet
+     * has neither
+     */
+    public static List<String> getXmppIds(byte[] data, int offset, int length)
+    {
+        List<String> ids = new ArrayList<String>(2);
+        int end = offset + Math.min(length, MAX_KEY_SCAN_LENGTH);
+        int tagEnd = offset;
+
+        while (tagEnd < end && data[tagEnd] != '>')
+            tagEnd++;
+
+        String id = getAttribute(data, offset, tagEnd, "id");
+
+        if (id != null)
+            ids.add(id);
+
+        int jingle = indexOf(data, tagEnd, end, "<jingle ");
+
+        if (jingle >= 0)
+        {
+            int jingleEnd = jingle;
+
+            while (jingleEnd < end && data[jingleEnd] != '>')
+                jingleEnd++;
+
+            String sid = getAttribute(data, jingle, jingleEnd, "sid");
+
+            if (sid != null && !sid.equals(id))
+                ids.add(sid);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the value of an attribute of an XML start tag.
+     *
+     * @param data the array containing the tag
+     * @param start the position of the start of the tag
+     * @param end the position of the end of the tag
+     * @param name the name of the attribute
+     * @return the value of the attribute or <tt>null</tt> if the tag has no
+     * such attribute
+     */
+    private static String getAttribute(
+            byte[] data,
+            int start,
+            int end,
+            String name)
+    {
+        int i = start;
+
+        while ((i = indexOf(data, i, end, name + "=")) >= 0)
+        {
+            int valueStart = i + name.length() + 1;
+
+            if (data[i - 1] == ' ' && valueStart < end)
+            {
+                byte quote = data[valueStart];
+
+                if (quote == '"' || quote == '\'')
+                {
+                    int valueEnd = valueStart + 1;
+
+                    while (valueEnd < end && data[valueEnd] != quote)
+                        valueEnd++;
+                    if (valueEnd < end)
+                        return trim(data, valueStart + 1, valueEnd);
+                }
+            }
+            i = valueStart;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the position of an ASCII string in an array.
+     *
+     * @param data the array to search
+     * @param start the position to start searching at
+     * @param end the position to stop searching at
+     * @param s the string to find
+     * @return the position of <tt>s</tt> or <tt>-1</tt> if it is not found
+     */
+    private static int indexOf(byte[] data, int start, int end, String s)
+    {
+        for (int i = Math.max(start, 1); i + s.length() <= end; i++)
+        {
+            int j = 0;
+
+            while (j < s.length() && data[i + j] == s.charAt(j))
+                j++;
+            if (j == s.length())
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether a line starts with an ASCII string, ignoring case.
+     *
+     * @param data the array containing the line
+     * @param start the position of the start of the line
+     * @param end the position of the end of the line
+     * @param s the string
+     * @return <tt>true</tt> if the line starts with <tt>s</tt>
+     */
+    private static boolean startsWithIgnoreCase(
+            byte[] data,
+            int start,
+            int end,
+            String s)
+    {
+        if (end - start < s.length())
+            return false;
+        for (int i = 0; i < s.length(); i++)
+        {
+            if (Character.toLowerCase((char) data[start + i])
+                    != Character.toLowerCase(s.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the text in an array without the surrounding white space.
+     * Keys are written to the index separated by spaces, so white space in
+     * the text is replaced.
+     *
+     * @param data the array containing the text
+     * @param start the position of the start of the text
+     * @param end the position of the end of the text
+     * @return the trimmed text
+     */
+    private static String trim(byte[] data, int start, int end)
+    {
+        String s;
+
+        try
+        {
+            s = new String(data, start, end - start, "UTF-8");
+        }
+        catch (UnsupportedEncodingException uee)
+        {
+            // UTF-8 is always supported
+            throw new RuntimeException(uee);
+        }
+        return s.trim().replaceAll("\\s", "_");
+    }
+
+    /**
+     * The key of a packet together with its protocol.
+     */
+    private static class Key
+    {
+        /**
+         * The name of the protocol.
+         */
+        final String protocol;
+
+        /**
+         * The Call-ID, stanza id or Jingle session id.
+         */
+        final String key;
+
+        /**
+         * Initializes a new <tt>Key</tt>.
+         *
+         * @param protocol the name of the protocol
+         * @param key the Call-ID, stanza id or Jingle session id
+         */
+        Key(String protocol, String key)
+        {
+            this.protocol = protocol;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+
+            Key other = (Key) o;
+
+            return protocol.equals(other.protocol) && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * protocol.hashCode() + key.hashCode();
+        }
+    }
+}
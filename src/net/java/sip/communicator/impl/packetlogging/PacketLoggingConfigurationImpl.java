@@ -29,6 +29,48 @@
 public class PacketLoggingConfigurationImpl
     extends PacketLoggingConfiguration
 {
+    /**
+     * The name of the property containing the number of packets which may be
+     * waiting to be saved. Packets logged while this many are waiting are
+     * dropped.
+     */
+    public static final String PACKET_LOGGING_QUEUE_CAPACITY_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.packetlogging.QUEUE_CAPACITY";
+
+    /**
+     * The name of the property telling whether the packets of each protocol
+     * are saved in their own files.
+     */
+    public static final String PACKET_LOGGING_PER_PROTOCOL_FILES_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.packetlogging.PER_PROTOCOL_FILES";
+
+    /**
+     * The name of the property telling whether rotated packet log files are
+     * compressed.
+     */
+    public static final String PACKET_LOGGING_COMPRESS_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.packetlogging.COMPRESS";
+
+    /**
+     * The default number of packets which may be waiting to be saved.
+     */
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * The number of packets which may be waiting to be saved.
+     */
+    private final int queueCapacity;
+
+    /**
+     * Whether the packets of each protocol are saved in their own files.
+     */
+    private final boolean perProtocolFiles;
+
+    /**
+     * Whether rotated packet log files are compressed.
+     */
+    private final boolean compress;
+
     /**
      * Creates new PacketLoggingConfiguration and load values from
      * configuration service and if missing uses already defined
@@ -72,6 +114,52 @@
             configService.getInt(
                 PACKET_LOGGING_FILE_COUNT_PROPERTY_NAME,
                 getLogfileCount()));
+
+        queueCapacity
+            = configService.getInt(
+                PACKET_LOGGING_QUEUE_CAPACITY_PROPERTY_NAME,
+                DEFAULT_QUEUE_CAPACITY);
+        perProtocolFiles
+            = configService.getBoolean(
+                PACKET_LOGGING_PER_PROTOCOL_FILES_PROPERTY_NAME,
+                false);
+        compress
+            = configService.getBoolean(
+                PACKET_LOGGING_COMPRESS_PROPERTY_NAME,
+                true);
+    }
+
+    /**
+     * Returns the number of packets which may be waiting to be saved. Read
+     * when the service starts.
+     *
+     * @return the capacity of the queue of packets to save
+     */
+    public int getQueueCapacity()
+    {
+        return queueCapacity;
+    }
+
+    /**
+     * Returns whether the packets of each protocol are saved in their own
+     * files. Read when the service starts.
+     *
+     * @return <tt>true</tt> if every protocol has its own files
+     */
+    public boolean isPerProtocolFiles()
+    {
+        return perProtocolFiles;
+    }
+
+    /**
+     * Returns whether rotated packet log files are compressed. Read when the
+     * service starts.
+     *
+     * @return <tt>true</tt> if rotated files are compressed with gzip
+     */
+    public boolean isCompress()
+    {
+        return compress;
     }
 
     /**
@@ -19,11 +19,11 @@
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
-import com.google.common.collect.*;
 import net.java.sip.communicator.util.*;
 
-import org.jitsi.service.fileaccess.*;
 import org.jitsi.service.packetlogging.*;
 
 /**
@@ -42,268 +42,116 @@
             = Logger.getLogger(PacketLoggingServiceImpl.class);
 
     /**
-     * The max size of the <tt>EvictingQueue</tt> that the saver thread
-     * is using.
-     *
-     * TODO this needs to be configurable eventually.
-     */
-    private static final int EVICTING_QUEUE_MAX_SIZE = 1000;
-
-    /**
-     * The OutputStream we are currently writing to.
+     * The time in milliseconds the saver thread waits for packets before it
+     * checks whether it has been stopped.
      */
-    private FileOutputStream outputStream = null;
+    private static final long SAVER_WAIT_TIMEOUT = 500;
 
     /**
      * The thread that queues packets and saves them to file.
      */
-    private SaverThread saverThread = new SaverThread();
-
-    /**
-     * The current configuration.
-     */
-    private PacketLoggingConfiguration packetLoggingConfiguration = null;
-
-    /**
-     * The fake ethernet header we use as template.
-     */
-    private final static byte[] fakeEthernetHeader =
-        new byte[]{
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00
-        };
-
-    /** IEEE 802.3 EtherType for IPv4 */
-    private final static byte[] ipv4EtherType =
-        new byte[] { 0x08, 0x00 };
-
-    /** IEEE 802.3 EtherType for IPv6 */
-    private final static byte[] ipv6EtherType =
-        new byte[] { (byte)0x86, (byte)0xdd };
-
-    /**
-     * The fake ipv4 header we use as template.
-     */
-    private final static byte[] ipHeaderTemplate =
-        new byte[]{
-                (byte)0x45, (byte)0x00,
-                (byte)0x03, (byte)0x48, (byte)0xc9, (byte)0x14,
-                (byte)0x00, (byte)0x00, (byte)0x35,(byte)0x11,
-                (byte)0x00, (byte)0x00, // check sum
-                (byte)0xd5, (byte)0xc0, (byte)0x3b, (byte)0x4b,//src
-                (byte)0xc0, (byte)0xa8, (byte)0x00, (byte)0x34 //dst
-        };
-
-    /**
-     * The fake ipv6 header we use as template.
-     */
-    private final static byte[] ip6HeaderTemplate =
-        new byte[]{
-                (byte)0x60, (byte)0x00, (byte)0x00, (byte)0x00, // version, traffic, flowable
-                (byte)0x00, (byte)0x00, // length
-                (byte)0x11, // next header
-                (byte)0x40, // hop limit
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // src
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // src
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // src
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // src
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // dst
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // dst
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // dst
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00 // dst
-        };
-
-    /**
-     * The fake udp header we use as template.
-     */
-    private final static byte[] udpHeaderTemplate =
-        new byte[]{
-                (byte)0x13, (byte)0xc4,
-                (byte)0x13, (byte)0xc4,
-                (byte)0x03, (byte)0x34,
-                (byte)0x00, (byte)0x00// checksum
-
-        };
-
-    /**
-     * The fake tcp header we use as template.
-     */
-    private final static byte[] tcpHeaderTemplate =
-            new byte[]{
-                (byte)0xb7, (byte)0x61, // src port
-                (byte)0x13, (byte)0xc4, // dst port
-                (byte)0x4f, (byte)0x20, (byte)0x37, (byte)0x3b, // seq number
-                (byte)0x11, (byte)0x1d, (byte)0xbc, (byte)0x54, // ack number
-                (byte)0x80, // header length
-                (byte)0x18, // flags
-                (byte)0x00, (byte)0x2e, // windows size
-                (byte)0xac, (byte)0x78, // check sum
-                (byte)0x00, (byte)0x00,
-                (byte)0x01, (byte)0x01, (byte)0x08, (byte)0x0a, // options
-                (byte)0x00, (byte)0x06, (byte)0xd4, (byte)0x48, // options
-                (byte)0x6e, (byte)0xcc, (byte)0x76, (byte)0xbd  // options
-            };
+    private SaverThread saverThread = null;
 
     /**
-     * Using this object to lock and protectd the two counters
-     * used for tcp seq and ack numbers.
+     * The executor which compresses and indexes the rotated files in the
+     * background, one at a time.
      */
-    private Object tcpCounterLock = new Object();
+    private ExecutorService rotationExecutor = null;
 
     /**
-     * The seq that the sender will send.
+     * The packets waiting to be saved, or <tt>null</tt> if the service is not
+     * started.
      */
-    private long srcCount = 1;
+    private volatile RingBuffer<Packet> pktsToSave = null;
 
     /**
-     * This is the ack number send from the sender.
+     * The number of packets dropped because too many were waiting to be
+     * saved, by protocol ordinal.
      */
-    private long dstCount = 1;
+    private final AtomicLongArray droppedPackets
+        = new AtomicLongArray(ProtocolName.values().length);
 
     /**
-     * A counter watching how much has been written to the file.
-     */
-    private long written = 0;
-
-    /**
-     * All the files we can use for writing.
+     * The current configuration.
      */
-    private File[] files;
+    private PacketLoggingConfigurationImpl packetLoggingConfiguration = null;
 
     /**
-     * Starting the packet logger. Generating the files we can use,
-     * rotate any previous files and open the current file for writing.
+     * Starting the packet logger. The files are generated, any previous
+     * files rotated and the current file opened for writing when the first
+     * packet is saved.
      */
     public void start()
     {
-        saverThread.start();
-    }
+        PacketLoggingConfigurationImpl cfg
+            = (PacketLoggingConfigurationImpl) getConfiguration();
 
-    /**
-     * Generates the files we will later use for writing.
-     * @throws Exception
-     */
-    private void getFileNames()
-        throws Exception
-    {
-        int fileCount = getConfiguration().getLogfileCount();
-
-        files = new File[fileCount];
-        for(int i = 0; i < fileCount; i++)
-        {
-            files[i]
-                = PacketLoggingActivator.getFileAccessService()
-                    .getPrivatePersistentFile(
-                        new File(PacketLoggingActivator.LOGGING_DIR_NAME,
-                            "jitsi" + i + ".pcap").toString(),
-                        FileCategory.LOG);
-        }
+        rotationExecutor
+            = Executors.newSingleThreadExecutor(
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t
+                                = new Thread(
+                                        r,
+                                        PacketLoggingServiceImpl.class
+                                                .getName()
+                                            + " RotationThread");
+
+                            t.setDaemon(true);
+                            t.setPriority(Thread.MIN_PRIORITY);
+                            return t;
+                        }
+                    });
+        pktsToSave = new RingBuffer<Packet>(cfg.getQueueCapacity());
+        saverThread
+            = new SaverThread(
+                    pktsToSave,
+                    cfg.isPerProtocolFiles(),
+                    cfg.isCompress());
+        saverThread.start();
     }
 
     /**
-     * Rotates any existing files and use the newly created first one
-     * for writing.
-     * @throws IOException
+     * Stops the packet logging. The packets which are waiting are saved
+     * before the files are closed.
      */
-    private void rotateFiles()
-        throws IOException
+    public void stop()
     {
-        if(outputStream != null)
-        {
-            outputStream.flush();
-            outputStream.close();
-        }
+        pktsToSave = null;
 
-        for (int i = getConfiguration().getLogfileCount() - 2; i >= 0; i--)
+        if (saverThread != null)
         {
-            File f1 = files[i];
-            File f2 = files[i+1];
-
-            if (f1.exists())
+            saverThread.stopRunning();
+            try
+            {
+                saverThread.join(SAVER_WAIT_TIMEOUT * 4);
+            }
+            catch (InterruptedException ie)
             {
-                if (f2.exists())
-                    f2.delete();
-                f1.renameTo(f2);
+                Thread.currentThread().interrupt();
             }
+            saverThread = null;
         }
-
-        outputStream = new FileOutputStream(files[0]);
-        written = 0;
-        createGlobalHeader();
-    }
-
-    /**
-     * Stops the packet logging.
-     */
-    public void stop()
-    {
-        saverThread.stopRunning();
-
-        if(outputStream != null)
+        if (rotationExecutor != null)
         {
+            // let the last rotated file be compressed
+            rotationExecutor.shutdown();
             try
             {
-                outputStream.flush();
-                outputStream.close();
+                rotationExecutor.awaitTermination(
+                        SAVER_WAIT_TIMEOUT * 10,
+                        TimeUnit.MILLISECONDS);
             }
-            catch(IOException e)
+            catch (InterruptedException ie)
             {
-                e.printStackTrace();
-            }
-            finally
-            {
-                outputStream = null;
+                Thread.currentThread().interrupt();
             }
+            rotationExecutor = null;
         }
     }
 
-    /**
-     * Creates pcap file global header.
-     * @throws IOException
-     */
-    private void createGlobalHeader()
-            throws IOException
-    {
-        /* magic number(swapped) */
-        outputStream.write(0xd4);
-        outputStream.write(0xc3);
-        outputStream.write(0xb2);
-        outputStream.write(0xa1);
-
-        /* major version number */
-        outputStream.write(0x02);
-        outputStream.write(0x00);
-
-        /* minor version number */
-        outputStream.write(0x04);
-        outputStream.write(0x00);
-
-        /* GMT to local correction */
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-
-        /* accuracy of timestamps */
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-
-        /* max length of captured packets, in octets */
-        outputStream.write(0xff);
-        outputStream.write(0xff);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-
-        /* data link type(ethernet) */
-        outputStream.write(0x01);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-        outputStream.write(0x00);
-    }
-
     /**
      * Checks is logging globally enabled for the service.
      *
@@ -403,283 +251,84 @@ public void logPacket(
             int packetOffset,
             int packetLength)
     {
-        saverThread.queuePacket(
-            new Packet(protocol,
-                       sourceAddress,
-                       sourcePort,
-                       destinationAddress,
-                       destinationPort,
-                       transport,
-                       sender,
-                       packetContent,
-                       packetOffset,
-                       packetLength));
-    }
-
-    /**
-     * Returns the current Packet Logging Configuration.
-     *
-     * @return the Packet Logging Configuration.
-     */
-    public PacketLoggingConfiguration getConfiguration()
-    {
-        if(packetLoggingConfiguration == null)
-            packetLoggingConfiguration = new PacketLoggingConfigurationImpl();
-
-        return packetLoggingConfiguration;
-    }
-
-    /**
-     * Dump the packet to the output file stream.
-     *
-     * @param packet the packet ot save.
-     * @throws Exception when error occurs saving to file stream or when
-     *  rotating files.
-     */
-    private void savePacket(Packet packet)
-        throws Exception
-    {
-        // if one of the addresses is ipv4 we are using ipv4,
-        // local udp addresses come as 0.0.0.0.0....0.0.0 when
-        // ipv6 is enabled in the underlying os
-        boolean isIPv4 = packet.sourceAddress.length == 4
-                || packet.destinationAddress.length == 4;
-
-        byte[] ipHeader;
-
-        if(isIPv4)
-        {
-            ipHeader = new byte[ipHeaderTemplate.length];
-            System.arraycopy(
-                    ipHeaderTemplate, 0, ipHeader, 0, ipHeader.length);
-            System.arraycopy(packet.sourceAddress,
-                    0,
-                    ipHeader,
-                    12,
-                    4);
-            System.arraycopy(packet.destinationAddress,
-                    0,
-                    ipHeader,
-                    16,
-                    4);
-        }
-        else
+        RingBuffer<Packet> pktsToSave = this.pktsToSave;
+
+        if (pktsToSave == null)
+            return;
+
+        boolean queued
+            = pktsToSave.offer(
+                new Packet(protocol,
+                           sourceAddress,
+                           sourcePort,
+                           destinationAddress,
+                           destinationPort,
+                           transport,
+                           sender,
+                           packetContent,
+                           packetOffset,
+                           packetLength));
+
+        if (!queued)
         {
-            ipHeader = new byte[ip6HeaderTemplate.length];
-            System.arraycopy(
-                    ip6HeaderTemplate, 0, ipHeader, 0, ipHeader.length);
-            System.arraycopy(packet.sourceAddress,
-                    0,
-                    ipHeader,
-                    8,
-                    16);
-
-            System.arraycopy(packet.destinationAddress,
-                    0,
-                    ipHeader,
-                    24,
-                    16);
-        }
+            droppedPackets.incrementAndGet(protocol.ordinal());
 
-        byte[] transportHeader;
-        short len;
-        if(packet.transport == TransportName.UDP)
-        {
-            byte[] udpHeader = new byte[udpHeaderTemplate.length];
-            transportHeader = udpHeader;
-            System.arraycopy(udpHeaderTemplate, 0,
-                    udpHeader, 0, udpHeader.length);
-
-            writeShort(packet.sourcePort, udpHeader, 0);
-            writeShort(packet.destinationPort, udpHeader, 2);
-            len = (short)(packet.packetLength + udpHeader.length);
-            writeShort(len, udpHeader, 4);
-        }
-        else
-        {
-            transportHeader = new byte[tcpHeaderTemplate.length];
-            System.arraycopy(tcpHeaderTemplate, 0, transportHeader,
-                   0, transportHeader.length);
+            long dropped = getDroppedPacketCount();
 
-            writeShort(packet.sourcePort, transportHeader, 0);
-            writeShort(packet.destinationPort, transportHeader, 2);
-
-            len = (short)(packet.packetLength + transportHeader.length);
-
-            if(packet.sender)
+            // do not flood the log while the disk cannot keep up
+            if ((dropped & (dropped - 1)) == 0)
             {
-                long seqnum;
-                long acknum;
-                synchronized(tcpCounterLock)
-                {
-                    seqnum = srcCount;
-                    srcCount += packet.packetLength;
-                    acknum = dstCount;
-                }
-
-                intToBytes((int)(seqnum & 0xffffffff),
-                       transportHeader, 4);
-                intToBytes((int)(acknum & 0xffffffff),
-                       transportHeader, 8);
+                logger.warn(
+                        "Queue is full, " + dropped
+                            + " packets have been dropped so far.");
             }
-            else
-            {
-                long seqnum;
-                long acknum;
-                synchronized(tcpCounterLock)
-                {
-                    seqnum = dstCount;
-                    dstCount += packet.packetLength;
-                    acknum = srcCount;
-                }
-
-                intToBytes((int)(seqnum & 0xffffffff),
-                       transportHeader, 4);
-                intToBytes((int)(acknum & 0xffffffff),
-                       transportHeader, 8);
-            }
-        }
-
-        // now set ip header total length
-        if(isIPv4)
-        {
-            short ipTotalLen = (short)(len + ipHeader.length);
-            writeShort(ipTotalLen, ipHeader, 2);
-
-            if(packet.transport == TransportName.UDP)
-                ipHeader[9] = (byte)0x11;
-            else
-                ipHeader[9] = (byte)0x06;
-
-           int chk2 = computeChecksum(ipHeader);
-           ipHeader[10] = (byte) (chk2 >> 8);
-           ipHeader[11] = (byte) (chk2 & 0xff);
-        }
-        else
-        {
-            writeShort(len, ipHeader, 4);
-
-            if(packet.transport == TransportName.UDP)
-                ipHeader[6] = (byte)0x11;
-            else
-                ipHeader[6] = (byte)0x06;
-        }
-
-        long current = System.currentTimeMillis();
-        int tsSec = (int)(current/1000);
-        int tsUsec = (int)((current%1000) * 1000);
-        int feakHeaderLen = fakeEthernetHeader.length +
-                (isIPv4 ? ipv4EtherType : ipv6EtherType).length +
-                ipHeader.length + transportHeader.length;
-        int inclLen = packet.packetLength + feakHeaderLen;
-        int origLen = inclLen;
-
-        synchronized(this)
-        {
-            // open files only if needed
-            if(outputStream == null)
-            {
-                getFileNames();
-                rotateFiles();// this one opens the file for write
-            }
-
-            long limit = getConfiguration().getLimit();
-
-            if((limit > 0) && (written > limit))
-                rotateFiles();
-
-            addInt(tsSec);
-            addInt(tsUsec);
-            addInt(inclLen);
-            addInt(origLen);
-
-            outputStream.write(fakeEthernetHeader);
-            outputStream.write(isIPv4 ? ipv4EtherType : ipv6EtherType);
-            outputStream.write(ipHeader);
-            outputStream.write(transportHeader);
-            outputStream.write(
-                    packet.packetContent,
-                    packet.packetOffset,
-                    packet.packetLength);
-            outputStream.flush();
-
-            written += inclLen + 16;
         }
     }
 
     /**
-     * Writes int to the file. Used for packet headers.
-     * @param d the value to write.
-     * @throws IOException
+     * Returns the number of packets of a protocol which were dropped because
+     * too many packets were waiting to be saved.
+     *
+     * @param protocol the protocol
+     * @return the number of dropped packets of <tt>protocol</tt>
      */
-    private void addInt(int d)
-        throws IOException
+    public long getDroppedPacketCount(ProtocolName protocol)
     {
-        outputStream.write ((d & 0xff));
-        outputStream.write(((d & 0xff00) >> 8));
-        outputStream.write(((d & 0xff0000) >> 16));
-        outputStream.write(((d & 0xff000000) >> 24));
+        return droppedPackets.get(protocol.ordinal());
     }
 
     /**
-     * Converts a 32-bit word representation of an IPv4 address to a
-     * byte array.
+     * Returns the number of packets which were dropped because too many
+     * packets were waiting to be saved.
      *
-     * @param address The 32-bit word representation of the IPv4 address.
-     * @param data The byte array in which to store the IPv4 data.
-     * @param offset The offset into the array where the data start.
+     * @return the number of dropped packets
      */
-    private static final void intToBytes(int address, byte[] data,
-                                       int offset)
+    public long getDroppedPacketCount()
     {
-        data[offset] = (byte)(0xff & (address >>> 24));
-        data[offset + 1] = (byte)(0xff & (address >>> 16));
-        data[offset + 2] = (byte)(0xff & (address >>> 8));
-        data[offset + 3] = (byte)(0xff & address);
-    }
+        long dropped = 0;
 
-    /**
-     * Puts the short value to the array.
-     * @param value value to convert to bytes.
-     * @param data destination data
-     * @param offset offset in the data
-     */
-    private static void writeShort(int value, byte[] data, int offset)
-    {
-        data[offset] = (byte) (value >> 8);
-        data[offset + 1] = (byte) value;
+        for (int i = 0; i < droppedPackets.length(); i++)
+            dropped += droppedPackets.get(i);
+        return dropped;
     }
 
     /**
-     * Calculates checksums assuming the checksum is a 16-bit header field.
+     * Returns the current Packet Logging Configuration.
+     *
+     * @return the Packet Logging Configuration.
      */
-    private int computeChecksum(byte[] data)
+    public PacketLoggingConfiguration getConfiguration()
     {
-        int total = 0;
-        int i = 0;
-
-        // Don't Skip existing checksum cause its set to 0000
-        int imax = data.length - (data.length % 2);
-
-        while(i < imax)
-            total+=(((data[i++] & 0xff) << 8) | (data[i++] & 0xff));
-
-        if(i < data.length)
-            total+=((data[i] & 0xff) << 8);
-
-        // Fold to 16 bits
-        while((total & 0xffff0000) != 0)
-            total = (total & 0xffff) + (total >>> 16);
-
-        total = (~total & 0xffff);
+        if(packetLoggingConfiguration == null)
+            packetLoggingConfiguration = new PacketLoggingConfigurationImpl();
 
-        return total;
+        return packetLoggingConfiguration;
     }
 
     /**
      * The data we receive and that we will dump in a file.
      */
-    private static class Packet
+    static class Packet
     {
         /**
          * The protocol logging this packet.
@@ -731,6 +380,11 @@ private int computeChecksum(byte[] data)
          */
         int packetLength;
 
+        /**
+         * The time in milliseconds at which the packet was logged.
+         */
+        long timestamp;
+
         /**
          * Creates a packet with the needed data.
          * @param protocol the source protocol that logs this packet.
@@ -767,6 +421,7 @@ private Packet(ProtocolName protocol,
             this.packetContent = packetContent;
             this.packetOffset = packetOffset;
             this.packetLength = packetLength;
+            this.timestamp = System.currentTimeMillis();
         }
     }
 
@@ -780,94 +435,203 @@ private Packet(ProtocolName protocol,
         /**
          * start/stop indicator.
          */
-        private boolean stopped = true;
+        private volatile boolean stopped = false;
 
         /**
          * List of packets queued to be written in the file.
          */
-        private final EvictingQueue<Packet> pktsToSave
-            = EvictingQueue.create(EVICTING_QUEUE_MAX_SIZE);
+        private final RingBuffer<Packet> pktsToSave;
+
+        /**
+         * Whether the packets of each protocol are saved in their own files.
+         */
+        private final boolean perProtocolFiles;
+
+        /**
+         * Whether the rotated files are compressed.
+         */
+        private final boolean compress;
+
+        /**
+         * The writers of the files, by protocol if every protocol has its own
+         * files.
+         */
+        private final Map<ProtocolName, PcapWriter> writers
+            = new EnumMap<ProtocolName, PcapWriter>(ProtocolName.class);
+
+        /**
+         * The writer of the file of all protocols.
+         */
+        private PcapWriter writer = null;
 
         /**
          * Initializes a new <tt>SaverThread</tt>.
+         *
+         * @param pktsToSave the packets queued to be written in the file
+         * @param perProtocolFiles whether the packets of each protocol are
+         * saved in their own files
+         * @param compress whether the rotated files are compressed
          */
-        SaverThread()
+        SaverThread(
+                RingBuffer<Packet> pktsToSave,
+                boolean perProtocolFiles,
+                boolean compress)
         {
+            this.pktsToSave = pktsToSave;
+            this.perProtocolFiles = perProtocolFiles;
+            this.compress = compress;
+
             setName(PacketLoggingServiceImpl.class.getName() + " SaverThread");
+            setDaemon(true);
         }
 
         /**
-         * Sends instant messages in separate thread so we don't block
-         * our calling thread.
+         * Saves the queued packets in batches in separate thread so we don't
+         * block our calling thread.
          */
         @Override
         public void run()
         {
-            stopped = false;
-            while(!stopped)
-            {
-                Packet pktToSave;
+            Packet[] batch = new Packet[PcapWriter.BATCH_SIZE];
 
-                synchronized(this)
+            try
+            {
+                while(true)
                 {
-                    if(pktsToSave.isEmpty())
+                    int count = pktsToSave.drainTo(batch);
+
+                    if (count == 0)
                     {
-                        try
-                        {
-                            wait();
-                        }
-                        catch (InterruptedException iex)
-                        {
-                        }
+                        // the packets queued before the stop have been saved
+                        if (stopped)
+                            break;
+                        pktsToSave.await(SAVER_WAIT_TIMEOUT);
                         continue;
                     }
 
-                    pktToSave = pktsToSave.poll();
+                    savePackets(batch, count);
+                    Arrays.fill(batch, 0, count, null);
                 }
+            }
+            finally
+            {
+                closeWriters();
+            }
+        }
+
+        /**
+         * Writes a batch of packets, every run of consecutive packets going
+         * to the same file with a single write.
+         *
+         * @param batch the packets to save
+         * @param count the number of packets in <tt>batch</tt>
+         */
+        private void savePackets(Packet[] batch, int count)
+        {
+            int start = 0;
 
-                if(pktToSave != null)
+            while (start < count)
+            {
+                PcapWriter writer = getWriter(batch[start].protocol);
+                int end = start + 1;
+
+                while (end < count
+                        && getWriter(batch[end].protocol) == writer)
+                    end++;
+
+                try
                 {
-                    try
-                    {
-                        savePacket(pktToSave);
-                    }
-                    catch(Throwable t)
-                    {
-                        /*
-                         * XXX ThreadDeath must be rethrown; otherwise, the
-                         * related Thread will not die.
-                         */
-                        if (t instanceof ThreadDeath)
-                            throw (ThreadDeath) t;
-                        else
-                            logger.error("Error writing packet to file", t);
-                    }
+                    writer.write(batch, start, end - start);
+                }
+                catch(Throwable t)
+                {
+                    /*
+                     * XXX ThreadDeath must be rethrown; otherwise, the
+                     * related Thread will not die.
+                     */
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                    else
+                        logger.error("Error writing packet to file", t);
                 }
+                start = end;
             }
         }
 
         /**
-         * Interrupts this sender so that it would no longer send messages.
+         * Returns the writer of the file the packets of a protocol are saved
+         * in.
+         *
+         * @param protocol the protocol
+         * @return the writer for <tt>protocol</tt>
          */
-        public synchronized void stopRunning()
+        private PcapWriter getWriter(ProtocolName protocol)
         {
-            stopped = true;
-            notifyAll();
+            if (!perProtocolFiles)
+            {
+                if (writer == null)
+                    writer = createWriter("jitsi");
+                return writer;
+            }
+
+            PcapWriter writer = writers.get(protocol);
+
+            if (writer == null)
+            {
+                writer
+                    = createWriter("jitsi-" + protocol.name().toLowerCase());
+                writers.put(protocol, writer);
+            }
+            return writer;
         }
 
         /**
-         * Schedule new packet for save.
-         * @param packet new packet to save.
+         * Creates the writer of a set of files.
+         *
+         * @param name the name of the files, without the index and extension
+         * @return the writer
          */
-        public synchronized void queuePacket(Packet packet)
+        private PcapWriter createWriter(String name)
         {
-            if (EVICTING_QUEUE_MAX_SIZE - pktsToSave.size() == 0)
+            return
+                new PcapWriter(
+                        name,
+                        getConfiguration(),
+                        rotationExecutor,
+                        compress);
+        }
+
+        /**
+         * Closes the files of all writers.
+         */
+        private void closeWriters()
+        {
+            List<PcapWriter> all = new ArrayList<PcapWriter>(writers.values());
+
+            if (writer != null)
+                all.add(writer);
+            for (PcapWriter w : all)
             {
-                logger.warn("Queue is full, packets are being evicted.");
+                try
+                {
+                    w.close();
+                }
+                catch(IOException e)
+                {
+                    logger.error("Error closing packet log file", e);
+                }
             }
+            writers.clear();
+            writer = null;
+        }
 
-            pktsToSave.add(packet);
-            notifyAll();
+        /**
+         * Stops this saver once the queued packets have been saved.
+         */
+        public void stopRunning()
+        {
+            stopped = true;
+            pktsToSave.wakeUp();
         }
     }
 }
@@ -0,0 +1,842 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.packetlogging;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import net.java.sip.communicator.impl.packetlogging.PacketLoggingServiceImpl.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.fileaccess.*;
+import org.jitsi.service.packetlogging.*;
+import org.jitsi.service.packetlogging.PacketLoggingService.*;
+
+/**
+ * Writes packets to a set of rotating files in pcap(tcpdump/wireshark)
+ * format. Each packet gets fake ethernet, IP and UDP or TCP headers so that
+ * wireshark can dissect it.
+ *
+ * <p>
+ * Packets are written in batches: the headers of a batch are built in
+ * buffers which are reused for every batch, and the headers and packet
+ * contents are written to the file with a single gathering write. A
+ * <tt>PcapWriter</tt> is not thread-safe; it is used by the saver thread of
+ * the <tt>PacketLoggingServiceImpl</tt> only.
+ * </p>
+ *
+ * <p>
+ * The current file is <tt>&lt;name&gt;0.pcap</tt>. On rotation it becomes
+ * the segment <tt>&lt;name&gt;1.pcap.gz</tt> (or <tt>&lt;name&gt;1.pcap</tt>
+ * if compression is off) and the older segments are shifted. Every segment
+ * has a {@link PacketLogIndex} in <tt>&lt;name&gt;N.idx</tt>. The rotated
+ * file is compressed in the background, so the saver thread only has to
+ * rename it.
+ * </p>
+ */
+class PcapWriter
+{
+    /**
+     * The maximum number of packets written with a single gathering write.
+     */
+    static final int BATCH_SIZE = 64;
+
+    /**
+     * The length of the pcap header of each packet.
+     */
+    private static final int RECORD_HEADER_LENGTH = 16;
+
+    /**
+     * The extension of packet log files.
+     */
+    private static final String PCAP_EXTENSION = ".pcap";
+
+    /**
+     * The extension of compressed packet log segments.
+     */
+    private static final String COMPRESSED_EXTENSION = ".gz";
+
+    /**
+     * Our Logger.
+     */
+    private static final Logger logger = Logger.getLogger(PcapWriter.class);
+
+    /**
+     * The maximum length of the headers we write before a packet: the pcap
+     * record header, the ethernet header, the IPv6 header and the TCP header.
+     */
+    private static final int MAX_HEADER_LENGTH = RECORD_HEADER_LENGTH + 14
+        + 40 + 32;
+
+    /**
+     * The pcap file global header.
+     */
+    private final static byte[] globalHeader =
+        new byte[]{
+                /* magic number(swapped) */
+                (byte)0xd4, (byte)0xc3, (byte)0xb2, (byte)0xa1,
+                /* major version number */
+                (byte)0x02, (byte)0x00,
+                /* minor version number */
+                (byte)0x04, (byte)0x00,
+                /* GMT to local correction */
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+                /* accuracy of timestamps */
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+                /* max length of captured packets, in octets */
+                (byte)0xff, (byte)0xff, (byte)0x00, (byte)0x00,
+                /* data link type(ethernet) */
+                (byte)0x01, (byte)0x00, (byte)0x00, (byte)0x00
+        };
+
+    /**
+     * The fake ethernet header we use as template.
+     */
+    private final static byte[] fakeEthernetHeader =
+        new byte[]{
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00
+        };
+
+    /** IEEE 802.3 EtherType for IPv4 */
+    private final static byte[] ipv4EtherType =
+        new byte[] { 0x08, 0x00 };
+
+    /** IEEE 802.3 EtherType for IPv6 */
+    private final static byte[] ipv6EtherType =
+        new byte[] { (byte)0x86, (byte)0xdd };
+
+    /**
+     * The fake ipv4 header we use as template.
+     */
+    private final static byte[] ipHeaderTemplate =
+        new byte[]{
+                (byte)0x45, (byte)0x00,
+                (byte)0x03, (byte)0x48, (byte)0xc9, (byte)0x14,
+                (byte)0x00, (byte)0x00, (byte)0x35,(byte)0x11,
+                (byte)0x00, (byte)0x00, // check sum
+                (byte)0xd5, (byte)0xc0, (byte)0x3b, (byte)0x4b,//src
+                (byte)0xc0, (byte)0xa8, (byte)0x00, (byte)0x34 //dst
+        };
+
+    /**
+     * The fake ipv6 header we use as template.
+     */
+    private final static byte[] ip6HeaderTemplate =
+        new byte[]{
+                (byte)0x60, (byte)0x00, (byte)0x00, (byte)0x00, // version, traffic, flowable
+                (byte)0x00, (byte)0x00, // length
+                (byte)0x11, // next header
+                (byte)0x40, // hop limit
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // src
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // src
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // src
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // src
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // dst
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // dst
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, // dst
+                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00 // dst
+        };
+
+    /**
+     * The fake udp header we use as template.
+     */
+    private final static byte[] udpHeaderTemplate =
+        new byte[]{
+                (byte)0x13, (byte)0xc4,
+                (byte)0x13, (byte)0xc4,
+                (byte)0x03, (byte)0x34,
+                (byte)0x00, (byte)0x00// checksum
+
+        };
+
+    /**
+     * The fake tcp header we use as template.
+     */
+    private final static byte[] tcpHeaderTemplate =
+            new byte[]{
+                (byte)0xb7, (byte)0x61, // src port
+                (byte)0x13, (byte)0xc4, // dst port
+                (byte)0x4f, (byte)0x20, (byte)0x37, (byte)0x3b, // seq number
+                (byte)0x11, (byte)0x1d, (byte)0xbc, (byte)0x54, // ack number
+                (byte)0x80, // header length
+                (byte)0x18, // flags
+                (byte)0x00, (byte)0x2e, // windows size
+                (byte)0xac, (byte)0x78, // check sum
+                (byte)0x00, (byte)0x00,
+                (byte)0x01, (byte)0x01, (byte)0x08, (byte)0x0a, // options
+                (byte)0x00, (byte)0x06, (byte)0xd4, (byte)0x48, // options
+                (byte)0x6e, (byte)0xcc, (byte)0x76, (byte)0xbd  // options
+            };
+
+    /**
+     * The name of the files, without the index and extension.
+     */
+    private final String name;
+
+    /**
+     * The current configuration.
+     */
+    private final PacketLoggingConfiguration configuration;
+
+    /**
+     * The executor which shifts and compresses the rotated segments.
+     */
+    private final ExecutorService rotationExecutor;
+
+    /**
+     * Whether the rotated segments are compressed.
+     */
+    private final boolean compress;
+
+    /**
+     * The index of the packets of the current file.
+     */
+    private PacketLogIndex index = null;
+
+    /**
+     * The number of rotations, used to name the rotated files until they
+     * have been moved to their place.
+     */
+    private int rotations = 0;
+
+    /**
+     * The header buffers of the packets of a batch, reused for every batch.
+     */
+    private final ByteBuffer[] headers = new ByteBuffer[BATCH_SIZE];
+
+    /**
+     * The buffers of a gathering write: the header and the content of each
+     * packet of the batch in turn.
+     */
+    private final ByteBuffer[] gather = new ByteBuffer[2 * BATCH_SIZE];
+
+    /**
+     * The channel of the file we are currently writing to.
+     */
+    private FileChannel channel = null;
+
+    /**
+     * All the files we can use for writing.
+     */
+    private File[] files;
+
+    /**
+     * A counter watching how much has been written to the file.
+     */
+    private long written = 0;
+
+    /**
+     * The seq that the sender will send.
+     */
+    private long srcCount = 1;
+
+    /**
+     * This is the ack number send from the sender.
+     */
+    private long dstCount = 1;
+
+    /**
+     * Initializes a new <tt>PcapWriter</tt>. The files are only created when
+     * the first packet is written.
+     *
+     * @param name the name of the files, without the index and extension
+     * @param configuration the current configuration
+     * @param rotationExecutor the executor which shifts and compresses the
+     * rotated segments. It must run one task at a time.
+     * @param compress whether the rotated segments are compressed
+     */
+    PcapWriter(
+            String name,
+            PacketLoggingConfiguration configuration,
+            ExecutorService rotationExecutor,
+            boolean compress)
+    {
+        this.name = name;
+        this.configuration = configuration;
+        this.rotationExecutor = rotationExecutor;
+        this.compress = compress;
+
+        for (int i = 0; i < headers.length; i++)
+            headers[i] = ByteBuffer.wrap(new byte[MAX_HEADER_LENGTH]);
+    }
+
+    /**
+     * Writes a batch of packets to the current file, rotating the files
+     * first if the current one has reached the size limit.
+     *
+     * @param packets the packets to write
+     * @param offset the index of the first packet to write
+     * @param count the number of packets to write, at most
+     * {@link #BATCH_SIZE}
+     * @throws Exception when error occurs writing to the file or when
+     * rotating files.
+     */
+    void write(Packet[] packets, int offset, int count)
+        throws Exception
+    {
+        // open files only if needed
+        if(channel == null)
+        {
+            getFileNames();
+            rotateFiles();// this one opens the file for write
+        }
+
+        long limit = configuration.getLimit();
+
+        if((limit > 0) && (written > limit))
+            rotateFiles();
+
+        int buffers = 0;
+        long length = 0;
+
+        try
+        {
+            for (int i = 0; i < count; i++)
+            {
+                Packet packet = packets[offset + i];
+                ByteBuffer header = headers[i];
+                int headerLength = fillHeader(packet, header.array());
+
+                header.clear().limit(headerLength);
+                index.add(
+                        packet.protocol.name(),
+                        getKeys(packet),
+                        packet.timestamp,
+                        globalHeader.length + written + length);
+                gather[buffers++] = header;
+                gather[buffers++]
+                    = ByteBuffer.wrap(
+                            packet.packetContent,
+                            packet.packetOffset,
+                            packet.packetLength);
+                length += headerLength + packet.packetLength;
+            }
+
+            long remaining = length;
+
+            while (remaining > 0)
+                remaining -= channel.write(gather, 0, buffers);
+            written += length;
+        }
+        finally
+        {
+            // do not keep the packet contents alive until the next batch
+            Arrays.fill(gather, 0, buffers, null);
+        }
+    }
+
+    /**
+     * Closes the current file and writes its index.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    void close()
+        throws IOException
+    {
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            finally
+            {
+                channel = null;
+            }
+            index.write(getIndexFile(0));
+        }
+    }
+
+    /**
+     * Returns the keys by which a packet is indexed.
+     *
+     * @param packet the packet
+     * @return the SIP Call-ID, or the XMPP stanza id and Jingle session id of
+     * <tt>packet</tt>
+     */
+    private static Collection<String> getKeys(Packet packet)
+    {
+        switch (packet.protocol)
+        {
+        case SIP:
+            String callId
+                = PacketLogIndex.getSipCallId(
+                        packet.packetContent,
+                        packet.packetOffset,
+                        packet.packetLength);
+
+            if (callId != null)
+                return Collections.singletonList(callId);
+            break;
+        case JABBER:
+            return PacketLogIndex.getXmppIds(
+                    packet.packetContent,
+                    packet.packetOffset,
+                    packet.packetLength);
+        default:
+            break;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns a segment file.
+     *
+     * @param i the number of the segment, <tt>0</tt> for the current file
+     * @param compressed whether to return the compressed file
+     * @return the file of segment <tt>i</tt>
+     */
+    private File getSegmentFile(int i, boolean compressed)
+    {
+        return compressed
+            ? new File(files[i].getPath() + COMPRESSED_EXTENSION)
+            : files[i];
+    }
+
+    /**
+     * Returns the index file of a segment.
+     *
+     * @param i the number of the segment, <tt>0</tt> for the current file
+     * @return the index file of segment <tt>i</tt>
+     */
+    private File getIndexFile(int i)
+    {
+        String path = files[i].getPath();
+
+        return new File(
+                path.substring(0, path.length() - PCAP_EXTENSION.length())
+                    + PacketLogIndex.EXTENSION);
+    }
+
+    /**
+     * Generates the files we will later use for writing.
+     * @throws Exception
+     */
+    private void getFileNames()
+        throws Exception
+    {
+        int fileCount = configuration.getLogfileCount();
+
+        files = new File[fileCount];
+        for(int i = 0; i < fileCount; i++)
+        {
+            files[i]
+                = PacketLoggingActivator.getFileAccessService()
+                    .getPrivatePersistentFile(
+                        new File(PacketLoggingActivator.LOGGING_DIR_NAME,
+                            name + i + PCAP_EXTENSION).toString(),
+                        FileCategory.LOG);
+        }
+    }
+
+    /**
+     * Rotates any existing files and use the newly created first one
+     * for writing. The current file is moved aside and left to the rotation
+     * executor to be compressed and put in the place of the first segment.
+     * @throws IOException
+     */
+    private void rotateFiles()
+        throws IOException
+    {
+        close();
+
+        File current = files[0];
+
+        if (current.exists())
+        {
+            File currentIndex = getIndexFile(0);
+            String rotatedPath
+                = current.getPath() + "." + (rotations++) + ".rotated";
+            File rotated = new File(rotatedPath);
+            File rotatedIndex
+                = new File(rotatedPath + PacketLogIndex.EXTENSION);
+
+            rotatedIndex.delete();
+            if (currentIndex.exists())
+                currentIndex.renameTo(rotatedIndex);
+            if (rotated.exists())
+                rotated.delete();
+            if (current.renameTo(rotated))
+            {
+                Runnable task = new RotationTask(rotated, rotatedIndex);
+
+                try
+                {
+                    rotationExecutor.execute(task);
+                }
+                catch (RejectedExecutionException ree)
+                {
+                    // the service is stopping
+                    task.run();
+                }
+            }
+        }
+
+        channel = new FileOutputStream(files[0]).getChannel();
+        written = 0;
+        index = new PacketLogIndex();
+
+        ByteBuffer header = ByteBuffer.wrap(globalHeader);
+
+        while (header.hasRemaining())
+            channel.write(header);
+    }
+
+    /**
+     * Moves a file, replacing the file at the destination.
+     *
+     * @param from the file to move
+     * @param to the destination
+     */
+    private static void move(File from, File to)
+    {
+        if (from.exists())
+        {
+            if (to.exists())
+                to.delete();
+            from.renameTo(to);
+        }
+    }
+
+    /**
+     * Shifts the segments by one and puts a rotated file in the place of the
+     * first segment, compressing it if configured.
+     */
+    private class RotationTask
+        implements Runnable
+    {
+        /**
+         * The rotated file.
+         */
+        private final File rotated;
+
+        /**
+         * The index of the rotated file.
+         */
+        private final File rotatedIndex;
+
+        /**
+         * Initializes a new <tt>RotationTask</tt>.
+         *
+         * @param rotated the rotated file
+         * @param rotatedIndex the index of the rotated file
+         */
+        RotationTask(File rotated, File rotatedIndex)
+        {
+            this.rotated = rotated;
+            this.rotatedIndex = rotatedIndex;
+        }
+
+        /**
+         * Shifts the segments and puts the rotated file in place.
+         */
+        public void run()
+        {
+            try
+            {
+                if (files.length < 2)
+                    return;
+
+                for (int i = files.length - 2; i >= 1; i--)
+                {
+                    move(
+                            getSegmentFile(i, false),
+                            getSegmentFile(i + 1, false));
+                    move(getSegmentFile(i, true), getSegmentFile(i + 1, true));
+                    move(getIndexFile(i), getIndexFile(i + 1));
+                }
+
+                if (compress)
+                    compress(rotated, getSegmentFile(1, true));
+                else
+                    move(rotated, getSegmentFile(1, false));
+                move(rotatedIndex, getIndexFile(1));
+            }
+            catch (IOException ioe)
+            {
+                logger.error("Error compressing packet log " + rotated, ioe);
+                // keep the packets even if they cannot be compressed
+                move(rotated, getSegmentFile(1, false));
+                move(rotatedIndex, getIndexFile(1));
+            }
+            finally
+            {
+                rotated.delete();
+                rotatedIndex.delete();
+            }
+        }
+
+        /**
+         * Compresses a file with gzip.
+         *
+         * @param from the file to compress
+         * @param to the compressed file
+         * @throws IOException if the file cannot be compressed
+         */
+        private void compress(File from, File to)
+            throws IOException
+        {
+            File tmp = new File(to.getPath() + ".tmp");
+            InputStream in = new FileInputStream(from);
+
+            try
+            {
+                OutputStream out
+                    = new GZIPOutputStream(new FileOutputStream(tmp), 65536);
+
+                try
+                {
+                    byte[] buffer = new byte[65536];
+                    int read;
+
+                    while ((read = in.read(buffer)) != -1)
+                        out.write(buffer, 0, read);
+                }
+                finally
+                {
+                    out.close();
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+            move(tmp, to);
+        }
+    }
+
+    /**
+     * Builds the pcap record header and the fake ethernet, IP and transport
+     * headers of a packet.
+     *
+     * @param packet the packet
+     * @param header the array to build the headers in
+     * @return the length of the headers
+     */
+    private int fillHeader(Packet packet, byte[] header)
+    {
+        // if one of the addresses is ipv4 we are using ipv4,
+        // local udp addresses come as 0.0.0.0.0....0.0.0 when
+        // ipv6 is enabled in the underlying os
+        boolean isIPv4 = packet.sourceAddress.length == 4
+                || packet.destinationAddress.length == 4;
+        boolean isUDP = packet.transport == TransportName.UDP;
+        int ipOffset = RECORD_HEADER_LENGTH + fakeEthernetHeader.length
+            + ipv4EtherType.length;
+        int ipHeaderLength
+            = isIPv4 ? ipHeaderTemplate.length : ip6HeaderTemplate.length;
+        int transportOffset = ipOffset + ipHeaderLength;
+        int transportHeaderLength
+            = isUDP ? udpHeaderTemplate.length : tcpHeaderTemplate.length;
+        int headerLength = transportOffset + transportHeaderLength;
+
+        System.arraycopy(
+                fakeEthernetHeader, 0,
+                header, RECORD_HEADER_LENGTH,
+                fakeEthernetHeader.length);
+        System.arraycopy(
+                isIPv4 ? ipv4EtherType : ipv6EtherType, 0,
+                header, RECORD_HEADER_LENGTH + fakeEthernetHeader.length,
+                ipv4EtherType.length);
+
+        if(isIPv4)
+        {
+            System.arraycopy(
+                    ipHeaderTemplate, 0, header, ipOffset, ipHeaderLength);
+            System.arraycopy(packet.sourceAddress,
+                    0,
+                    header,
+                    ipOffset + 12,
+                    4);
+            System.arraycopy(packet.destinationAddress,
+                    0,
+                    header,
+                    ipOffset + 16,
+                    4);
+        }
+        else
+        {
+            System.arraycopy(
+                    ip6HeaderTemplate, 0, header, ipOffset, ipHeaderLength);
+            System.arraycopy(packet.sourceAddress,
+                    0,
+                    header,
+                    ipOffset + 8,
+                    16);
+            System.arraycopy(packet.destinationAddress,
+                    0,
+                    header,
+                    ipOffset + 24,
+                    16);
+        }
+
+        short len = (short)(packet.packetLength + transportHeaderLength);
+
+        if(isUDP)
+        {
+            System.arraycopy(udpHeaderTemplate, 0,
+                    header, transportOffset, transportHeaderLength);
+
+            writeShort(packet.sourcePort, header, transportOffset);
+            writeShort(packet.destinationPort, header, transportOffset + 2);
+            writeShort(len, header, transportOffset + 4);
+        }
+        else
+        {
+            System.arraycopy(tcpHeaderTemplate, 0,
+                    header, transportOffset, transportHeaderLength);
+
+            writeShort(packet.sourcePort, header, transportOffset);
+            writeShort(packet.destinationPort, header, transportOffset + 2);
+
+            long seqnum;
+            long acknum;
+
+            if(packet.sender)
+            {
+                seqnum = srcCount;
+                srcCount += packet.packetLength;
+                acknum = dstCount;
+            }
+            else
+            {
+                seqnum = dstCount;
+                dstCount += packet.packetLength;
+                acknum = srcCount;
+            }
+
+            intToBytes((int)(seqnum & 0xffffffff),
+                   header, transportOffset + 4);
+            intToBytes((int)(acknum & 0xffffffff),
+                   header, transportOffset + 8);
+        }
+
+        // now set ip header total length
+        if(isIPv4)
+        {
+            short ipTotalLen = (short)(len + ipHeaderLength);
+            writeShort(ipTotalLen, header, ipOffset + 2);
+
+            header[ipOffset + 9] = isUDP ? (byte)0x11 : (byte)0x06;
+
+            int chk2 = computeChecksum(header, ipOffset, ipHeaderLength);
+            header[ipOffset + 10] = (byte) (chk2 >> 8);
+            header[ipOffset + 11] = (byte) (chk2 & 0xff);
+        }
+        else
+        {
+            writeShort(len, header, ipOffset + 4);
+
+            header[ipOffset + 6] = isUDP ? (byte)0x11 : (byte)0x06;
+        }
+
+        int inclLen = packet.packetLength + headerLength
+            - RECORD_HEADER_LENGTH;
+        int origLen = inclLen;
+
+        writeIntLE((int)(packet.timestamp / 1000), header, 0);
+        writeIntLE((int)((packet.timestamp % 1000) * 1000), header, 4);
+        writeIntLE(inclLen, header, 8);
+        writeIntLE(origLen, header, 12);
+
+        return headerLength;
+    }
+
+    /**
+     * Puts an int value in little-endian byte order to the array. Used for
+     * pcap packet headers.
+     *
+     * @param value value to convert to bytes.
+     * @param data destination data
+     * @param offset offset in the data
+     */
+    private static void writeIntLE(int value, byte[] data, int offset)
+    {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+        data[offset + 2] = (byte) (value >> 16);
+        data[offset + 3] = (byte) (value >> 24);
+    }
+
+    /**
+     * Converts a 32-bit word representation of an IPv4 address to a
+     * byte array.
+     *
+     * @param address The 32-bit word representation of the IPv4 address.
+     * @param data The byte array in which to store the IPv4 data.
+     * @param offset The offset into the array where the data start.
+     */
+    private static final void intToBytes(int address, byte[] data,
+                                       int offset)
+    {
+        data[offset] = (byte)(0xff & (address >>> 24));
+        data[offset + 1] = (byte)(0xff & (address >>> 16));
+        data[offset + 2] = (byte)(0xff & (address >>> 8));
+        data[offset + 3] = (byte)(0xff & address);
+    }
+
+    /**
+     * Puts the short value to the array.
+     * @param value value to convert to bytes.
+     * @param data destination data
+     * @param offset offset in the data
+     */
+    private static void writeShort(int value, byte[] data, int offset)
+    {
+        data[offset] = (byte) (value >> 8);
+        data[offset + 1] = (byte) value;
+    }
+
+    /**
+     * Calculates checksums assuming the checksum is a 16-bit header field.
+     *
+     * @param data the array containing the header
+     * @param offset the offset of the header in <tt>data</tt>
+     * @param length the length of the header
+     * @return the checksum of the header
+     */
+    private static int computeChecksum(byte[] data, int offset, int length)
+    {
+        int total = 0;
+        int i = offset;
+        int end = offset + length;
+
+        // Don't Skip existing checksum cause its set to 0000
+        int imax = end - (length % 2);
+
+        while(i < imax)
+            total+=(((data[i++] & 0xff) << 8) | (data[i++] & 0xff));
+
+        if(i < end)
+            total+=((data[i] & 0xff) << 8);
+
+        // Fold to 16 bits
+        while((total & 0xffff0000) != 0)
+            total = (total & 0xffff) + (total >>> 16);
+
+        total = (~total & 0xffff);
+
+        return total;
+    }
+}
@@ -51,6 +51,11 @@
      */
     private final IRCApi irc;
 
+    /**
+     * Rate-limited send queue.
+     */
+    private final SendQueue queue;
+
     /**
      * Connection state instance.
      */
@@ -70,12 +75,13 @@
      * Constructor.
      *
      * @param irc the IRCApi instance
+     * @param queue the rate-limited send queue
      * @param connectionState the connection state
      * @param operationSet the persistent presence operation set
      * @param nickWatchList SYNCHRONIZED the nick watch list
      * @param serverIdentity the server identity
      */
-    BasicPollerPresenceWatcher(final IRCApi irc,
+    BasicPollerPresenceWatcher(final IRCApi irc, final SendQueue queue,
         final IIRCState connectionState,
         final OperationSetPersistentPresenceIrcImpl operationSet,
         final Set<String> nickWatchList,
@@ -86,6 +92,11 @@
             throw new IllegalArgumentException("irc cannot be null");
         }
         this.irc = irc;
+        if (queue == null)
+        {
+            throw new IllegalArgumentException("queue cannot be null");
+        }
+        this.queue = queue;
         if (connectionState == null)
         {
             throw new IllegalArgumentException("connectionState cannot be null");
@@ -235,8 +246,7 @@ public void run()
                 if (query.length() + nick.length() >= maxQueryLength)
                 {
                     this.queryList.add(nicks);
-                    BasicPollerPresenceWatcher.this.irc
-                        .rawMessage(createQuery(query));
+                    send(createQuery(query));
                     // Initialize new data types
                     query.delete(0, query.length());
                     nicks = new LinkedList<String>();
@@ -249,11 +259,25 @@ public void run()
             {
                 // Send remaining entries.
                 this.queryList.add(nicks);
-                BasicPollerPresenceWatcher.this.irc
-                    .rawMessage(createQuery(query));
+                send(createQuery(query));
             }
         }
 
+        /**
+         * Queue an ISON query.
+         *
+         * ISON replies are matched to the queries in FIFO order, which the
+         * send queue preserves within a priority class.
+         *
+         * @param query the ISON query
+         */
+        private void send(final String query)
+        {
+            BasicPollerPresenceWatcher.this.queue.sendRaw(
+                SendQueue.Priority.MAINTENANCE,
+                BasicPollerPresenceWatcher.this.irc, query);
+        }
+
         /**
          * Create an ISON query from the StringBuilder containing the list of
          * nicks.
@@ -56,6 +56,11 @@
      */
     private final IRCApi irc;
 
+    /**
+     * Rate-limited send queue.
+     */
+    private final SendQueue queue;
+
     /**
      * Connection state.
      */
@@ -123,11 +128,13 @@
      * Constructor.
      *
      * @param irc thread-safe IRCApi instance
+     * @param queue the rate-limited send queue
      * @param connectionState the connection state
      * @param provider the provider instance
      * @param config client configuration
      */
-    public ChannelManager(final IRCApi irc, final IIRCState connectionState,
+    public ChannelManager(final IRCApi irc, final SendQueue queue,
+        final IIRCState connectionState,
         final ProtocolProviderServiceIrcImpl provider,
         final ClientConfig config, final boolean awayNotifyCapability)
     {
@@ -136,6 +143,11 @@ public ChannelManager(final IRCApi irc, final IIRCState connectionState,
             throw new IllegalArgumentException("irc instance cannot be null");
         }
         this.irc = irc;
+        if (queue == null)
+        {
+            throw new IllegalArgumentException("queue cannot be null");
+        }
+        this.queue = queue;
         if (connectionState == null)
         {
             throw new IllegalArgumentException(
@@ -310,8 +322,7 @@ public void join(final ChatRoomIrcImpl chatroom, final String password)
             this.joined.put(chatRoomId, null);
             // TODO Refactor this ridiculous nesting of functions and
             // classes.
-            this.irc.joinChannel(chatRoomId, password,
-                new Callback<IRCChannel>()
+            final Callback<IRCChannel> joinCallback = new Callback<IRCChannel>()
                 {
 
                     @Override
@@ -440,7 +451,24 @@ public void onFailure(final Exception e)
                             }
                         }
                     }
-                });
+                };
+            this.queue.send(SendQueue.Priority.CONTROL, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    ChannelManager.this.irc.joinChannel(chatRoomId, password,
+                        joinCallback);
+                }
+            }, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    joinCallback.onFailure(new IllegalStateException(
+                        "Connection closed before joining channel."));
+                }
+            });
 
             try
             {
@@ -545,8 +573,16 @@ public void setSubject(final ChatRoomIrcImpl chatroom, final String subject)
                 + " characters according to server parameters.");
         }
         LOGGER.trace("Setting chat room topic to '" + subject + "'");
-        this.irc.changeTopic(chatroom.getIdentifier(), subject == null ? ""
-            : subject);
+        final String topic = subject == null ? "" : subject;
+        this.queue.send(SendQueue.Priority.CONTROL, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ChannelManager.this.irc.changeTopic(chatroom.getIdentifier(),
+                    topic);
+            }
+        });
     }
 
     /**
@@ -572,14 +608,21 @@ private void leave(final String chatRoomName)
             throw new IllegalStateException("Not connected to an IRC server.");
         }
 
-        try
+        this.queue.send(SendQueue.Priority.CONTROL, new Runnable()
         {
-            this.irc.leaveChannel(chatRoomName);
-        }
-        catch (ApiException e)
-        {
-            LOGGER.warn("exception occurred while leaving channel", e);
-        }
+            @Override
+            public void run()
+            {
+                try
+                {
+                    ChannelManager.this.irc.leaveChannel(chatRoomName);
+                }
+                catch (ApiException e)
+                {
+                    LOGGER.warn("exception occurred while leaving channel", e);
+                }
+            }
+        });
     }
 
     /**
@@ -601,8 +644,8 @@ public void grant(final ChatRoomIrcImpl chatRoom, final String userAddress,
             throw new IllegalArgumentException(
                 "This mode does not modify user permissions.");
         }
-        this.irc.changeMode(chatRoom.getIdentifier() + " +" + mode.getSymbol()
-            + " " + userAddress);
+        changeMode(chatRoom.getIdentifier() + " +" + mode.getSymbol() + " "
+            + userAddress);
     }
 
     /**
@@ -624,8 +667,25 @@ public void revoke(final ChatRoomIrcImpl chatRoom,
             throw new IllegalArgumentException(
                 "This mode does not modify user permissions.");
         }
-        this.irc.changeMode(chatRoom.getIdentifier() + " -" + mode.getSymbol()
-            + " " + userAddress);
+        changeMode(chatRoom.getIdentifier() + " -" + mode.getSymbol() + " "
+            + userAddress);
+    }
+
+    /**
+     * Queue a mode change.
+     *
+     * @param modeString the mode string
+     */
+    private void changeMode(final String modeString)
+    {
+        this.queue.send(SendQueue.Priority.CONTROL, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ChannelManager.this.irc.changeMode(modeString);
+            }
+        });
     }
 
     /**
@@ -646,7 +706,7 @@ public void banParticipant(final ChatRoomIrcImpl chatroom,
             return;
         }
         kickParticipant(chatroom, member, reason);
-        this.irc.changeMode(String.format("%s +b %s!%s@%s",
+        changeMode(String.format("%s +b %s!%s@%s",
             chatroom.getIdentifier(), "*",
             member.getIdent(), member.getHostname()));
     }
@@ -672,8 +732,15 @@ public void kickParticipant(final ChatRoomIrcImpl chatroom,
                 + "longer than " + this.isupportKickLen.intValue()
                 + " characters according to server parameters.");
         }
-        this.irc.kick(chatroom.getIdentifier(), member.getContactAddress(),
-            reason);
+        this.queue.send(SendQueue.Priority.CONTROL, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ChannelManager.this.irc.kick(chatroom.getIdentifier(),
+                    member.getContactAddress(), reason);
+            }
+        });
     }
 
     /**
@@ -688,10 +755,21 @@ public void invite(final String memberId, final ChatRoomIrcImpl chatroom)
         {
             throw new IllegalStateException("Not connected to an IRC server.");
         }
-        this.irc.rawMessage("INVITE " + memberId + " "
+        sendRaw(SendQueue.Priority.CONTROL, "INVITE " + memberId + " "
             + chatroom.getIdentifier());
     }
 
+    /**
+     * Queue a raw IRC line.
+     *
+     * @param priority the priority class of the line
+     * @param line the raw line
+     */
+    private void sendRaw(final SendQueue.Priority priority, final String line)
+    {
+        this.queue.sendRaw(priority, this.irc, line);
+    }
+
     /**
      * Convert a member mode character to a ChatRoomMemberRole instance.
      *
@@ -898,7 +976,8 @@ private ChatRoomListener(final ChatRoomIrcImpl chatroom,
                     + "(away-notify capability is " + awayNotifyCapability
                     + ")");
             }
-            this.irc.rawMessage("WHO " + chatroom.getIdentifier());
+            sendRaw(SendQueue.Priority.MAINTENANCE,
+                "WHO " + chatroom.getIdentifier());
         }
 
         /**
@@ -910,7 +989,8 @@ private void createPeriodicPresenceWatcher() {
                 @Override
                 public void run()
                 {
-                    irc.rawMessage("WHO " + chatroom.getIdentifier());
+                    sendRaw(SendQueue.Priority.MAINTENANCE,
+                        "WHO " + chatroom.getIdentifier());
                 }
             };
             this.presenceTaskTimer.schedule(task, TASK_INITIAL_DELAY,
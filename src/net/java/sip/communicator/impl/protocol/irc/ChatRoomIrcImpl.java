@@ -1058,10 +1058,29 @@ public void sendMessage(final Message message)
             }
             else
             {
-                connection.getMessageManager().message(this, messagePortion);
-                this.fireMessageDeliveredEvent(new MessageIrcImpl(
-                    messagePortion, message.getContentType(), message
-                        .getEncoding(), message.getSubject()));
+                final MessageIrcImpl delivered =
+                    new MessageIrcImpl(messagePortion,
+                        message.getContentType(), message.getEncoding(),
+                        message.getSubject());
+                connection.getMessageManager().message(this, messagePortion,
+                    new MessageManager.DeliveryListener()
+                    {
+                        @Override
+                        public void delivered()
+                        {
+                            fireMessageDeliveredEvent(delivered);
+                        }
+
+                        @Override
+                        public void failed(final Exception cause)
+                        {
+                            fireMessageDeliveryFailedEvent(
+                                ChatRoomMessageDeliveryFailedEvent
+                                    .NETWORK_FAILURE,
+                                "Message could not be sent to the server.",
+                                new Date(), message);
+                        }
+                    });
             }
         }
     }
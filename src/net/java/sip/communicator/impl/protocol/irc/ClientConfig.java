@@ -84,6 +84,22 @@
      */
     SASL getSASL();
 
+    /**
+     * Get the maximum number of lines that may be sent to the IRC server in a
+     * single burst before outbound lines get rate-limited.
+     *
+     * @return returns the burst size (at least 1)
+     */
+    int getSendBurst();
+
+    /**
+     * Get the interval after which one more line may be sent to the IRC
+     * server, once the burst is exhausted.
+     *
+     * @return returns the refill interval in milliseconds
+     */
+    long getSendRefillInterval();
+
     /**
      * SASL authentication data.
      *
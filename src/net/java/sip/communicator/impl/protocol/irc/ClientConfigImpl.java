@@ -62,6 +62,16 @@
      */
     private SASLImpl sasl = null;
 
+    /**
+     * Number of lines that may be sent in a single burst.
+     */
+    private int sendBurst = SendQueue.DEFAULT_BURST;
+
+    /**
+     * Interval in milliseconds after which one more line may be sent.
+     */
+    private long sendRefillInterval = SendQueue.DEFAULT_REFILL_INTERVAL;
+
     /**
      * Get version 3 allowed flag.
      *
@@ -194,6 +204,56 @@ public void setSASL(final SASLImpl sasl)
         this.sasl = sasl;
     }
 
+    /**
+     * Get the number of lines that may be sent in a single burst.
+     *
+     * @return returns the burst size
+     */
+    @Override
+    public int getSendBurst()
+    {
+        return this.sendBurst;
+    }
+
+    /**
+     * Set the number of lines that may be sent in a single burst.
+     *
+     * @param burst the burst size, must be at least 1
+     */
+    public void setSendBurst(final int burst)
+    {
+        if (burst < 1)
+        {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        this.sendBurst = burst;
+    }
+
+    /**
+     * Get the interval after which one more line may be sent.
+     *
+     * @return returns the refill interval in milliseconds
+     */
+    @Override
+    public long getSendRefillInterval()
+    {
+        return this.sendRefillInterval;
+    }
+
+    /**
+     * Set the interval after which one more line may be sent.
+     *
+     * @param interval the refill interval in milliseconds
+     */
+    public void setSendRefillInterval(final long interval)
+    {
+        if (interval < 0)
+        {
+            throw new IllegalArgumentException("interval cannot be negative");
+        }
+        this.sendRefillInterval = interval;
+    }
+
     /**
      * Type for storing SASL authentication data.
      *
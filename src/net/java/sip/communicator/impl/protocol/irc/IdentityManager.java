@@ -64,6 +64,11 @@
      */
     private final IRCApi irc;
 
+    /**
+     * Rate-limited send queue.
+     */
+    private final SendQueue queue;
+
     /**
      * The connection state.
      */
@@ -90,10 +95,12 @@
      * Constructor.
      *
      * @param irc thread-safe IRCApi instance
+     * @param queue the rate-limited send queue
      * @param connectionState the connection state
      * @param provider the protocol provider instance
      */
-    public IdentityManager(final IRCApi irc, final IIRCState connectionState,
+    public IdentityManager(final IRCApi irc, final SendQueue queue,
+        final IIRCState connectionState,
         final ProtocolProviderServiceIrcImpl provider)
     {
         if (irc == null)
@@ -101,6 +108,11 @@ public IdentityManager(final IRCApi irc, final IIRCState connectionState,
             throw new IllegalArgumentException("irc instance cannot be null");
         }
         this.irc = irc;
+        if (queue == null)
+        {
+            throw new IllegalArgumentException("queue cannot be null");
+        }
+        this.queue = queue;
         if (connectionState == null)
         {
             throw new IllegalArgumentException(
@@ -114,34 +126,24 @@ public IdentityManager(final IRCApi irc, final IIRCState connectionState,
         this.provider = provider;
         this.irc.addListener(new IdentityListener());
         // query user's WHOIS identity as perceived by the IRC server
-        queryIdentity(this.irc, this.connectionState, new WhoisListener());
+        queryIdentity(this.irc, this.queue, this.connectionState,
+            new WhoisListener());
         isupportNickLen = parseISupportNickLen(this.connectionState);
     }
 
     /**
      * Issue WHOIS query to discover identity as seen by the server.
      */
-    private static void queryIdentity(final IRCApi irc, final IIRCState state,
+    private static void queryIdentity(final IRCApi irc,
+        final SendQueue queue, final IIRCState state,
         final WhoisListener listener)
     {
         // This method should be as light-weight as possible, since it is called
-        // from the constructor.
-        new Thread()
-        {
-
-            public void run()
-            {
-                try
-                {
-                    irc.addListener(listener);
-                    irc.rawMessage("WHOIS " + state.getNickname());
-                }
-                catch (final RuntimeException e)
-                {
-                    LOGGER.error("Failed to deliver WHOIS message.", e);
-                }
-            };
-        }.start();
+        // from the constructor. The send queue delivers the query on its own
+        // thread.
+        irc.addListener(listener);
+        queue.sendRaw(SendQueue.Priority.MAINTENANCE, irc,
+            "WHOIS " + state.getNickname());
     }
 
     /**
@@ -185,7 +187,15 @@ public String getNick()
      */
     public void setNick(final String nick)
     {
-        this.irc.changeNick(checkNick(nick, this.isupportNickLen));
+        final String newNick = checkNick(nick, this.isupportNickLen);
+        this.queue.send(SendQueue.Priority.USER, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                IdentityManager.this.irc.changeNick(newNick);
+            }
+        });
     }
 
     /**
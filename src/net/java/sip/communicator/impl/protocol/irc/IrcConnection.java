@@ -91,6 +91,11 @@
      */
     private final IIRCState connectionState;
 
+    /**
+     * Rate-limited queue for outbound lines.
+     */
+    private final SendQueue queue;
+
     /**
      * Callback to inform on connection interruptions.
      */
@@ -183,30 +188,36 @@
             connectSynchronized(this.context.provider, params, this.irc,
                 negotiator);
 
+        // instantiate rate-limited send queue for the connection
+        this.queue =
+            new SendQueue(params.getServer().getHostname(),
+                config.getSendBurst(), config.getSendRefillInterval());
+
         // instantiate identity manager for the connection
         this.identity =
-            new IdentityManager(this.irc, this.connectionState,
+            new IdentityManager(this.irc, this.queue, this.connectionState,
                 this.context.provider);
 
         // instantiate message manager for the connection
         this.message =
-            new MessageManager(this, this.irc, this.connectionState,
-                this.context.provider, this.identity);
+            new MessageManager(this, this.irc, this.queue,
+                this.connectionState, this.context.provider, this.identity);
 
         // instantiate channel manager for the connection
         this.channel =
-            new ChannelManager(this.irc, this.connectionState,
+            new ChannelManager(this.irc, this.queue, this.connectionState,
                 this.context.provider, this.config, handler.awayNotify);
 
         // instantiate presence manager for the connection
         this.presence =
-            new PresenceManager(this.irc, this.connectionState,
+            new PresenceManager(this.irc, this.queue, this.connectionState,
                 this.context.provider.getPersistentPresence(),
                 this.config, this.context.nickWatchList);
 
         // instantiate server channel lister
         this.channelLister =
-            new ServerChannelLister(this.irc, this.connectionState);
+            new ServerChannelLister(this.irc, this.queue,
+                this.connectionState);
     }
 
     /**
@@ -344,6 +355,7 @@ public boolean isSecureConnection()
      */
     void disconnect()
     {
+        this.queue.stop();
         try
         {
             this.irc.disconnect();
@@ -366,6 +378,16 @@ public IRCApi getClient()
         return this.irc;
     }
 
+    /**
+     * Get the rate-limited send queue. (Guaranteed to be non-null.)
+     *
+     * @return returns the send queue instance
+     */
+    public SendQueue getSendQueue()
+    {
+        return this.queue;
+    }
+
     /**
      * Get the presence manager. (Guaranteed to be non-null.)
      *
@@ -458,6 +480,7 @@ public void onError(final ErrorMessage msg)
             LOGGER.debug("Local user received ERROR message: removing server "
                 + "listener.");
             IrcConnection.this.irc.deleteListener(this);
+            IrcConnection.this.queue.stop();
 
             // If listener is available, inform of connection interrupt.
             if (IrcConnection.this.connectionListener != null)
@@ -491,6 +514,7 @@ public void onClientError(ClientErrorMessage msg)
             LOGGER.debug("Local user received CLIENT ERROR message: removing "
                 + "server listener.");
             IrcConnection.this.irc.deleteListener(this);
+            IrcConnection.this.queue.stop();
 
             // If listener is available, inform of connection interrupt.
             if (IrcConnection.this.connectionListener != null)
@@ -520,6 +544,7 @@ public void onUserQuit(final QuitMessage msg)
             LOGGER.debug("Local user's QUIT message received: removing "
                 + "server listener.");
             IrcConnection.this.irc.deleteListener(this);
+            IrcConnection.this.queue.stop();
 
             // If listener is available, inform of connection interrupt.
             if (IrcConnection.this.connectionListener != null)
@@ -71,6 +71,11 @@
      */
     private final IRCApi irc;
 
+    /**
+     * Rate-limited send queue.
+     */
+    private final SendQueue queue;
+
     /**
      * Connection state.
      */
@@ -96,12 +101,13 @@
      *
      * @param connection IrcConnection instance
      * @param irc thread-safe IRCApi instance
+     * @param queue the rate-limited send queue
      * @param connectionState the connection state
      * @param provider the provider instance
      * @param identity the identity manager
      */
     public MessageManager(final IrcConnection connection, final IRCApi irc,
-            final IIRCState connectionState,
+            final SendQueue queue, final IIRCState connectionState,
             final ProtocolProviderServiceIrcImpl provider,
             final IdentityManager identity)
     {
@@ -115,6 +121,11 @@ public MessageManager(final IrcConnection connection, final IRCApi irc,
             throw new IllegalArgumentException("irc cannot be null");
         }
         this.irc = irc;
+        if (queue == null)
+        {
+            throw new IllegalArgumentException("queue cannot be null");
+        }
+        this.queue = queue;
         if (connectionState == null)
         {
             throw new IllegalArgumentException(
@@ -245,10 +256,13 @@ private void command(final String source, final String message)
      *
      * @param chatroom The chat room to send the message to.
      * @param message The message to send.
+     * @param listener The listener that is told whether the message has
+     *            been sent once its turn in the send queue has come.
      * @throws OperationFailedException OperationFailedException is thrown when
      *             message is too large to be processed by IRC server.
      */
-    public void message(final ChatRoomIrcImpl chatroom, final String message)
+    public void message(final ChatRoomIrcImpl chatroom, final String message,
+        final DeliveryListener listener)
         throws OperationFailedException
     {
         if (!this.connectionState.isConnected())
@@ -268,16 +282,7 @@ public void message(final ChatRoomIrcImpl chatroom, final String message)
                 "Message is too large for this IRC server.",
                 OperationFailedException.ILLEGAL_ARGUMENT);
         }
-        try
-        {
-            this.irc.message(target, message);
-            LOGGER.trace("Message delivered to server successfully.");
-        }
-        catch (RuntimeException e)
-        {
-            LOGGER.trace("Failed to deliver message: " + e.getMessage(), e);
-            throw e;
-        }
+        send(target, message, listener);
     }
 
     /**
@@ -285,10 +290,13 @@ public void message(final ChatRoomIrcImpl chatroom, final String message)
      *
      * @param contact The contact to send the message to.
      * @param message The message to send.
+     * @param listener The listener that is told whether the message has
+     *            been sent once its turn in the send queue has come.
      * @throws OperationFailedException OperationFailedException is thrown when
      *             message is too large to be processed by IRC server.
      */
-    public void message(final Contact contact, final Message message)
+    public void message(final Contact contact, final Message message,
+        final DeliveryListener listener)
         throws OperationFailedException
     {
         if (!this.connectionState.isConnected())
@@ -311,16 +319,53 @@ public void message(final Contact contact, final Message message)
                 "Message is too large for this IRC server.",
                 OperationFailedException.ILLEGAL_ARGUMENT);
         }
-        try
+        send(target, message.getContent(), listener);
+    }
+
+    /**
+     * Queue a message for delivery to the IRC server.
+     *
+     * Messages are sent with user priority, such that they overtake any
+     * pending maintenance queries while still respecting the server's flood
+     * limits. The listener is told about the outcome from the send queue's
+     * thread, once the message is written or has failed, or from the calling
+     * thread in case the queue has already been stopped.
+     *
+     * @param target the target nick or channel
+     * @param message the message content
+     * @param listener the listener that is told about the outcome
+     */
+    private void send(final String target, final String message,
+        final DeliveryListener listener)
+    {
+        this.queue.send(SendQueue.Priority.USER, new Runnable()
         {
-            this.irc.message(target, message.getContent());
-            LOGGER.trace("Message delivered to server successfully.");
-        }
-        catch (RuntimeException e)
+            @Override
+            public void run()
+            {
+                try
+                {
+                    MessageManager.this.irc.message(target, message);
+                }
+                catch (RuntimeException e)
+                {
+                    LOGGER.warn("Failed to send message to " + target, e);
+                    listener.failed(e);
+                    return;
+                }
+                LOGGER.trace("Message delivered to server successfully.");
+                listener.delivered();
+            }
+        }, new Runnable()
         {
-            LOGGER.trace("Failed to deliver message: " + e.getMessage(), e);
-            throw e;
-        }
+            @Override
+            public void run()
+            {
+                LOGGER.debug("Message to " + target
+                    + " discarded, connection is closing.");
+                listener.failed(null);
+            }
+        });
     }
 
     /**
@@ -528,4 +573,24 @@ public void onUserAction(final UserActionMsg msg)
                 .fireMessageReceived(message, from);
         }
     }
+
+    /**
+     * Listener for the outcome of sending a message through the send queue.
+     */
+    public static interface DeliveryListener
+    {
+        /**
+         * The message has been written to the IRC server.
+         */
+        void delivered();
+
+        /**
+         * The message could not be written to the IRC server.
+         *
+         * @param cause the exception that occurred while writing the message,
+         *            or <tt>null</tt> if the message was discarded because the
+         *            connection was closed before its turn came
+         */
+        void failed(Exception cause);
+    }
 }
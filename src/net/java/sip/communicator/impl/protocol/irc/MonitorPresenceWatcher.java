@@ -49,6 +49,11 @@
      */
     private final IRCApi irc;
 
+    /**
+     * Rate-limited send queue.
+     */
+    private final SendQueue queue;
+
     /**
      * IRC connection state.
      */
@@ -72,6 +77,7 @@
      * Constructor.
      *
      * @param irc the IRCApi instance
+     * @param queue the rate-limited send queue
      * @param connectionState the connection state
      * @param nickWatchList SYNCHRONIZED the nick watch list
      * @param monitored SYNCHRONIZED The shared collection which contains all
@@ -79,7 +85,8 @@
      *            command.
      * @param operationSet the persistent presence operation set
      */
-    MonitorPresenceWatcher(final IRCApi irc, final IIRCState connectionState,
+    MonitorPresenceWatcher(final IRCApi irc, final SendQueue queue,
+        final IIRCState connectionState,
         final Set<String> nickWatchList, final Set<String> monitored,
         final OperationSetPersistentPresenceIrcImpl operationSet,
         final int maxListSize)
@@ -89,6 +96,11 @@
             throw new IllegalArgumentException("irc cannot be null");
         }
         this.irc = irc;
+        if (queue == null)
+        {
+            throw new IllegalArgumentException("queue cannot be null");
+        }
+        this.queue = queue;
         if (connectionState == null)
         {
             throw new IllegalArgumentException(
@@ -107,7 +119,7 @@
         this.monitoredList = monitored;
         this.irc.addListener(new MonitorReplyListener(this.monitoredList,
             operationSet));
-        setUpMonitor(this.irc, this.nickWatchList, maxListSize);
+        setUpMonitor(this.irc, this.queue, this.nickWatchList, maxListSize);
         LOGGER.debug("MONITOR presence watcher initialized.");
     }
 
@@ -117,7 +129,7 @@
      * Created a static method as not to interfere too much with a state that is
      * still being initialized.
      */
-    private static void setUpMonitor(final IRCApi irc,
+    private static void setUpMonitor(final IRCApi irc, final SendQueue queue,
         final Collection<String> nickWatchList, final int maxListSize)
     {
         List<String> current;
@@ -137,7 +149,8 @@ private static void setUpMonitor(final IRCApi irc,
             if (query.length() + nick.length() + 1 > maxLength)
             {
                 // full payload, send monitor query now
-                irc.rawMessage("MONITOR + " + query);
+                queue.sendRaw(SendQueue.Priority.MAINTENANCE, irc,
+                    "MONITOR + " + query);
                 query.delete(0, query.length());
             }
             else if (query.length() > 0)
@@ -149,7 +162,8 @@ else if (query.length() > 0)
         if (query.length() > 0)
         {
             // send query for remaining nicks
-            irc.rawMessage("MONITOR + " + query);
+            queue.sendRaw(SendQueue.Priority.MAINTENANCE, irc,
+                "MONITOR + " + query);
         }
     }
 
@@ -158,7 +172,8 @@ public void add(final String nick)
     {
         LOGGER.trace("Adding nick '" + nick + "' to MONITOR watch list.");
         this.nickWatchList.add(nick);
-        this.irc.rawMessage("MONITOR + " + nick);
+        this.queue.sendRaw(SendQueue.Priority.MAINTENANCE, this.irc,
+            "MONITOR + " + nick);
     }
 
     @Override
@@ -166,7 +181,8 @@ public void remove(final String nick)
     {
         LOGGER.trace("Removing nick '" + nick + "' from MONITOR watch list.");
         this.nickWatchList.remove(nick);
-        this.irc.rawMessage("MONITOR - " + nick);
+        this.queue.sendRaw(SendQueue.Priority.MAINTENANCE, this.irc,
+            "MONITOR - " + nick);
         // 'MONITOR - nick' command does not send confirmation, so immediately
         // remove nick from monitored list.
         this.monitoredList.remove(nick);
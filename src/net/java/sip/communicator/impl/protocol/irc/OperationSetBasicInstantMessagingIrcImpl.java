@@ -18,6 +18,7 @@
 package net.java.sip.communicator.impl.protocol.irc;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import net.java.sip.communicator.impl.protocol.irc.exception.*;
 import net.java.sip.communicator.service.protocol.*;
@@ -122,6 +123,7 @@ public void sendInstantMessage(final Contact to, final Message original)
             return;
         }
 
+        final Delivery delivery = new Delivery(original, to);
         try
         {
             for (MessageDeliveredEvent event : msgDeliveryPendingEvts)
@@ -190,7 +192,9 @@ public void sendInstantMessage(final Contact to, final Message original)
                     }
                     else
                     {
-                        connection.getMessageManager().message(to, message);
+                        delivery.expect();
+                        connection.getMessageManager().message(to, message,
+                            delivery);
                     }
                 }
                 catch (RuntimeException e)
@@ -199,19 +203,20 @@ public void sendInstantMessage(final Contact to, final Message original)
                     throw e;
                 }
             }
-            fireMessageDelivered(original, to);
+            // All parts are queued. The message is delivered once the last of
+            // them has been sent.
+            delivery.delivered();
         }
         catch (OperationFailedException e)
         {
             // Message delivery failed. Most obvious possibility is that the
             // message was too large for the IRC network to handle.
-            fireMessageDeliveryFailed(original, to, e.getErrorCode());
+            delivery.fail(e.getErrorCode());
         }
         catch (RuntimeException e)
         {
             LOGGER.warn("Failed to deliver message: " + original, e);
-            fireMessageDeliveryFailed(original, to,
-                MessageDeliveryFailedEvent.NETWORK_FAILURE);
+            delivery.fail(MessageDeliveryFailedEvent.NETWORK_FAILURE);
         }
     }
 
@@ -311,4 +316,92 @@ public int getMaxNumberOfMessages(final Contact contact)
     {
         return OperationSetBasicInstantMessagingTransport.UNLIMITED;
     }
+
+    /**
+     * Delivery of a message that is sent in one or more parts through the
+     * send queue. Fires a single delivered event once all parts have been
+     * sent, or a single delivery failed event as soon as one part fails.
+     */
+    private final class Delivery
+        implements MessageManager.DeliveryListener
+    {
+        /**
+         * The message as it was sent by the user.
+         */
+        private final Message message;
+
+        /**
+         * The contact the message is sent to.
+         */
+        private final Contact to;
+
+        /**
+         * The number of parts that have not been sent yet, plus one that is
+         * held while the parts are being queued.
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        /**
+         * Whether the outcome of the delivery has been fired already.
+         */
+        private final AtomicBoolean done = new AtomicBoolean(false);
+
+        /**
+         * Constructor.
+         *
+         * @param message the message as it was sent by the user
+         * @param to the contact the message is sent to
+         */
+        private Delivery(final Message message, final Contact to)
+        {
+            this.message = message;
+            this.to = to;
+        }
+
+        /**
+         * Expect one more part to be sent.
+         */
+        private void expect()
+        {
+            this.pending.incrementAndGet();
+        }
+
+        /**
+         * One part has been sent, or all parts have been queued.
+         */
+        @Override
+        public void delivered()
+        {
+            if (this.pending.decrementAndGet() == 0
+                && this.done.compareAndSet(false, true))
+            {
+                fireMessageDelivered(this.message, this.to);
+            }
+        }
+
+        /**
+         * One part could not be sent.
+         *
+         * @param cause the cause of the failure, if any
+         */
+        @Override
+        public void failed(final Exception cause)
+        {
+            fail(MessageDeliveryFailedEvent.NETWORK_FAILURE);
+        }
+
+        /**
+         * Fire the delivery failed event unless the outcome has been fired
+         * already.
+         *
+         * @param errorCode the error code of the failure
+         */
+        private void fail(final int errorCode)
+        {
+            if (this.done.compareAndSet(false, true))
+            {
+                fireMessageDeliveryFailed(this.message, this.to, errorCode);
+            }
+        }
+    }
 }
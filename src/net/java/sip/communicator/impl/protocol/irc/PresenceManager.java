@@ -60,6 +60,11 @@
      */
     private final IRCApi irc;
 
+    /**
+     * Rate-limited send queue.
+     */
+    private final SendQueue queue;
+
     /**
      * IRC client connection state.
      */
@@ -127,6 +132,7 @@
      * Constructor.
      *
      * @param irc thread-safe irc client library instance
+     * @param queue the rate-limited send queue
      * @param connectionState irc client connection state instance
      * @param operationSet OperationSetPersistentPresence irc implementation for
      *            handling presence changes.
@@ -134,7 +140,8 @@
      * @param persistentNickWatchList persistent nick watch list to use (The
      *            sortedset implementation must be synchronized!)
      */
-    public PresenceManager(final IRCApi irc, final IIRCState connectionState,
+    public PresenceManager(final IRCApi irc, final SendQueue queue,
+        final IIRCState connectionState,
         final OperationSetPersistentPresenceIrcImpl operationSet,
         final ClientConfig config,
         final SortedSet<String> persistentNickWatchList)
@@ -155,6 +162,11 @@ public PresenceManager(final IRCApi irc, final IIRCState connectionState,
             throw new IllegalArgumentException("irc cannot be null");
         }
         this.irc = irc;
+        if (queue == null)
+        {
+            throw new IllegalArgumentException("queue cannot be null");
+        }
+        this.queue = queue;
         final SortedSet<String> nickWatchList;
         if (persistentNickWatchList == null)
         {
@@ -184,7 +196,8 @@ public PresenceManager(final IRCApi irc, final IIRCState connectionState,
             final SortedSet<String> monitoredNicks =
                 Collections.synchronizedSortedSet(new TreeSet<String>());
             this.watcher =
-                new MonitorPresenceWatcher(this.irc, this.connectionState,
+                new MonitorPresenceWatcher(this.irc, this.queue,
+                    this.connectionState,
                     nickWatchList, monitoredNicks, this.operationSet,
                     this.isupportMonitor);
             if (enablePresencePolling)
@@ -198,8 +211,9 @@ public PresenceManager(final IRCApi irc, final IIRCState connectionState,
                 final Set<String> unmonitoredNicks =
                     new DynamicDifferenceSet<String>(nickWatchList,
                         monitoredNicks);
-                new BasicPollerPresenceWatcher(this.irc, this.connectionState,
-                    this.operationSet, unmonitoredNicks, this.serverIdentity);
+                new BasicPollerPresenceWatcher(this.irc, this.queue,
+                    this.connectionState, this.operationSet, unmonitoredNicks,
+                    this.serverIdentity);
             }
         }
         else if (this.isupportWatch != null)
@@ -212,7 +226,8 @@ else if (this.isupportWatch != null)
             final SortedSet<String> monitoredNicks =
                 Collections.synchronizedSortedSet(new TreeSet<String>());
             this.watcher =
-                new WatchPresenceWatcher(this.irc, this.connectionState,
+                new WatchPresenceWatcher(this.irc, this.queue,
+                    this.connectionState,
                     nickWatchList, monitoredNicks, this.operationSet,
                     this.isupportWatch);
             if (enablePresencePolling)
@@ -226,16 +241,18 @@ else if (this.isupportWatch != null)
                 final Set<String> unmonitoredNicks =
                     new DynamicDifferenceSet<String>(nickWatchList,
                         monitoredNicks);
-                new BasicPollerPresenceWatcher(this.irc, this.connectionState,
-                    this.operationSet, unmonitoredNicks, this.serverIdentity);
+                new BasicPollerPresenceWatcher(this.irc, this.queue,
+                    this.connectionState, this.operationSet, unmonitoredNicks,
+                    this.serverIdentity);
             }
         }
         else if (enablePresencePolling)
         {
             // Enable basic poller as the only presence mechanism.
             this.watcher =
-                new BasicPollerPresenceWatcher(this.irc, this.connectionState,
-                    this.operationSet, nickWatchList, this.serverIdentity);
+                new BasicPollerPresenceWatcher(this.irc, this.queue,
+                    this.connectionState, this.operationSet, nickWatchList,
+                    this.serverIdentity);
         } else {
             this.watcher = null;
         }
@@ -383,11 +400,12 @@ public void away(final boolean isAway, final String awayMessage)
         if (isAway && (!this.away || awayMessage != null))
         {
             // In case we aren't AWAY yet, or if there is a message to set.
-            this.irc.rawMessage("AWAY :" + this.submittedMessage);
+            this.queue.sendRaw(SendQueue.Priority.USER, this.irc,
+                "AWAY :" + this.submittedMessage);
         }
         else if (isAway != this.away)
         {
-            this.irc.rawMessage("AWAY");
+            this.queue.sendRaw(SendQueue.Priority.USER, this.irc, "AWAY");
         }
     }
 
@@ -434,9 +452,26 @@ public IrcStatusEnum query(final String nick)
                 IrcStatusEnum.OFFLINE);
         synchronized (result)
         {
-            this.irc.addListener(new WhoisReplyListener(nick, result));
-            this.irc.rawMessage("WHOIS "
-                + IdentityManager.checkNick(nick, null));
+            final WhoisReplyListener listener =
+                new WhoisReplyListener(nick, result);
+            this.irc.addListener(listener);
+            this.queue.sendRaw(SendQueue.Priority.MAINTENANCE, this.irc,
+                "WHOIS " + IdentityManager.checkNick(nick, null),
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        PresenceManager.this.irc.deleteListener(listener);
+                        synchronized (result)
+                        {
+                            result.setDone(new IllegalStateException(
+                                "Connection closed before querying "
+                                    + "presence."));
+                            result.notifyAll();
+                        }
+                    }
+                });
             while (!result.isDone())
             {
                 LOGGER.debug("Waiting for presence status based on WHOIS "
@@ -47,6 +47,18 @@
      */
     public static final String CONTACT_PRESENCE_TASK = "CONTACT_PRESENCE_TASK";
 
+    /**
+     * Property for the number of lines that may be sent to the IRC server in a
+     * single burst.
+     */
+    public static final String SEND_BURST = "SEND_BURST";
+
+    /**
+     * Property for the interval (in milliseconds) after which one more line
+     * may be sent to the IRC server once the burst is exhausted.
+     */
+    public static final String SEND_REFILL_INTERVAL = "SEND_REFILL_INTERVAL";
+
     /**
      * Property indicating SASL is enabled.
      */
@@ -279,6 +279,15 @@ public void register(final SecurityAuthority authority)
             accountID.getAccountPropertyBoolean(
                 ProtocolProviderFactoryIrcImpl.CONTACT_PRESENCE_TASK, true);
 
+        int sendBurst =
+            accountID.getAccountPropertyInt(
+                ProtocolProviderFactoryIrcImpl.SEND_BURST,
+                SendQueue.DEFAULT_BURST);
+        int sendRefillInterval =
+            accountID.getAccountPropertyInt(
+                ProtocolProviderFactoryIrcImpl.SEND_REFILL_INTERVAL,
+                (int) SendQueue.DEFAULT_REFILL_INTERVAL);
+
         boolean saslEnabled = accountID.getAccountPropertyBoolean(
                 ProtocolProviderFactoryIrcImpl.SASL_ENABLED, false);
         String saslUser = accountID.getAccountPropertyString(
@@ -335,6 +344,8 @@ public void register(final SecurityAuthority authority)
         final Proxy proxy = loadProxy();
         config.setProxy(proxy);
         config.setResolveByProxy(resolveDnsThroughProxy);
+        config.setSendBurst(Math.max(1, sendBurst));
+        config.setSendRefillInterval(Math.max(0, sendRefillInterval));
         if (saslEnabled)
         {
             final SASLImpl sasl =
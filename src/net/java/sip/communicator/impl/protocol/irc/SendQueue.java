@@ -0,0 +1,582 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+import com.ircclouds.irc.api.*;
+
+/**
+ * Rate-limited outbound send queue for an IRC connection.
+ *
+ * <p>
+ * IRC servers disconnect clients that send too many lines in a short period
+ * ("Excess Flood"). All outbound lines that are not directly in response to
+ * the connection life cycle are submitted to this queue. The queue releases
+ * them according to a token bucket: up to <tt>burst</tt> lines may be sent
+ * immediately, after which one line is released every
+ * <tt>refillInterval</tt> milliseconds.
+ * </p>
+ *
+ * <p>
+ * Lines are released in order of {@link Priority}, and in FIFO order within
+ * the same priority. Consequently, messages typed by the user overtake
+ * periodic maintenance queries such as WHO and LIST.
+ * </p>
+ */
+public class SendQueue
+{
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(SendQueue.class);
+
+    /**
+     * Default number of lines that can be sent in a single burst.
+     */
+    public static final int DEFAULT_BURST = 5;
+
+    /**
+     * Default interval in milliseconds after which a new line may be sent.
+     */
+    public static final long DEFAULT_REFILL_INTERVAL = 2000L;
+
+    /**
+     * Ratio between milliseconds and nanoseconds.
+     */
+    private static final long RATIO_MILLISECONDS_TO_NANOSECONDS = 1000000L;
+
+    /**
+     * Priority classes for outbound lines. Priorities are ordered from highest
+     * to lowest.
+     */
+    public enum Priority
+    {
+        /**
+         * Messages and commands issued directly by the user.
+         */
+        USER,
+
+        /**
+         * Channel control operations such as joining, parting and changing
+         * modes.
+         */
+        CONTROL,
+
+        /**
+         * Maintenance queries such as WHO, LIST and presence polling.
+         */
+        MAINTENANCE
+    }
+
+    /**
+     * Pending tasks per priority class.
+     */
+    private final Map<Priority, LinkedList<Entry>> queues =
+        new EnumMap<Priority, LinkedList<Entry>>(Priority.class);
+
+    /**
+     * Number of sent lines per priority class.
+     */
+    private final Map<Priority, Long> sent =
+        new EnumMap<Priority, Long>(Priority.class);
+
+    /**
+     * Maximum number of tokens in the bucket.
+     */
+    private final int burst;
+
+    /**
+     * Time in nanoseconds needed to refill a single token.
+     */
+    private final long refillNanos;
+
+    /**
+     * Current number of available tokens.
+     */
+    private int tokens;
+
+    /**
+     * Time stamp (in nanoseconds) of the last refill.
+     */
+    private long lastRefill;
+
+    /**
+     * Number of lines that had to wait for a token before being sent.
+     */
+    private long throttled = 0L;
+
+    /**
+     * Number of lines that were discarded because the queue was stopped.
+     */
+    private long dropped = 0L;
+
+    /**
+     * Largest number of lines waiting in the queue at the same time.
+     */
+    private int maximumSize = 0;
+
+    /**
+     * Longest time in milliseconds that a line waited in the queue.
+     */
+    private long maximumDelay = 0L;
+
+    /**
+     * Flag indicating that the queue is stopped.
+     */
+    private boolean stopped = false;
+
+    /**
+     * Worker thread that releases queued lines.
+     */
+    private final Thread worker;
+
+    /**
+     * Constructor.
+     *
+     * @param name name of the queue, used to name the worker thread
+     * @param burst maximum number of lines that may be sent at once
+     * @param refillInterval interval in milliseconds after which one more line
+     *            may be sent
+     */
+    public SendQueue(final String name, final int burst,
+        final long refillInterval)
+    {
+        if (burst < 1)
+        {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        if (refillInterval < 0)
+        {
+            throw new IllegalArgumentException(
+                "refillInterval cannot be negative");
+        }
+        this.burst = burst;
+        this.refillNanos = refillInterval * RATIO_MILLISECONDS_TO_NANOSECONDS;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+        for (Priority priority : Priority.values())
+        {
+            this.queues.put(priority, new LinkedList<Entry>());
+            this.sent.put(priority, 0L);
+        }
+        this.worker = new Thread(new Worker(), "IRC send queue " + name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Submit a task that sends a single line to the IRC server.
+     *
+     * @param priority the priority class of the line
+     * @param task the task that sends the line
+     */
+    public void send(final Priority priority, final Runnable task)
+    {
+        send(priority, task, null);
+    }
+
+    /**
+     * Submit a task that sends a single line to the IRC server.
+     *
+     * The <tt>discarded</tt> callback is called in case the task never gets
+     * executed because the queue was stopped. This allows callers that wait
+     * for a reply to stop waiting.
+     *
+     * @param priority the priority class of the line
+     * @param task the task that sends the line
+     * @param discarded callback in case the task is discarded (optional)
+     */
+    public void send(final Priority priority, final Runnable task,
+        final Runnable discarded)
+    {
+        if (priority == null)
+        {
+            throw new IllegalArgumentException("priority cannot be null");
+        }
+        if (task == null)
+        {
+            throw new IllegalArgumentException("task cannot be null");
+        }
+        synchronized (this.queues)
+        {
+            if (!this.stopped)
+            {
+                this.queues.get(priority).add(
+                    new Entry(task, discarded, System.nanoTime()));
+                final int size = size();
+                if (size > this.maximumSize)
+                {
+                    this.maximumSize = size;
+                }
+                this.queues.notifyAll();
+                return;
+            }
+            this.dropped++;
+        }
+        LOGGER.debug("Send queue is stopped, dropping task.");
+        if (discarded != null)
+        {
+            discarded.run();
+        }
+    }
+
+    /**
+     * Submit a raw IRC line.
+     *
+     * @param priority the priority class of the line
+     * @param irc the IRC client instance that sends the line
+     * @param line the raw line
+     */
+    public void sendRaw(final Priority priority, final IRCApi irc,
+        final String line)
+    {
+        sendRaw(priority, irc, line, null);
+    }
+
+    /**
+     * Submit a raw IRC line.
+     *
+     * @param priority the priority class of the line
+     * @param irc the IRC client instance that sends the line
+     * @param line the raw line
+     * @param discarded callback in case the line is discarded (optional)
+     */
+    public void sendRaw(final Priority priority, final IRCApi irc,
+        final String line, final Runnable discarded)
+    {
+        if (irc == null)
+        {
+            throw new IllegalArgumentException("irc cannot be null");
+        }
+        send(priority, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                irc.rawMessage(line);
+            }
+        }, discarded);
+    }
+
+    /**
+     * Stop the queue. Pending lines are discarded and no new lines are
+     * accepted.
+     */
+    public void stop()
+    {
+        final List<Entry> pending = new ArrayList<Entry>();
+        synchronized (this.queues)
+        {
+            if (this.stopped)
+            {
+                return;
+            }
+            this.stopped = true;
+            for (LinkedList<Entry> queue : this.queues.values())
+            {
+                pending.addAll(queue);
+                queue.clear();
+            }
+            this.dropped += pending.size();
+            this.queues.notifyAll();
+        }
+        if (pending.size() > 0 && LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Send queue stopped, dropped " + pending.size()
+                + " pending lines.");
+        }
+        for (Entry entry : pending)
+        {
+            if (entry.discarded == null)
+            {
+                continue;
+            }
+            try
+            {
+                entry.discarded.run();
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.warn("Failure in callback for discarded line.", e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of lines currently waiting to be sent.
+     *
+     * @return returns number of queued lines
+     */
+    public int getQueueSize()
+    {
+        synchronized (this.queues)
+        {
+            return size();
+        }
+    }
+
+    /**
+     * Get the number of lines sent for a priority class.
+     *
+     * @param priority the priority class
+     * @return returns number of sent lines
+     */
+    public long getSentCount(final Priority priority)
+    {
+        synchronized (this.queues)
+        {
+            return this.sent.get(priority);
+        }
+    }
+
+    /**
+     * Get the number of lines that had to wait for the rate limit.
+     *
+     * @return returns number of throttled lines
+     */
+    public long getThrottledCount()
+    {
+        synchronized (this.queues)
+        {
+            return this.throttled;
+        }
+    }
+
+    /**
+     * Get the number of lines that were discarded because the queue was
+     * stopped.
+     *
+     * @return returns number of dropped lines
+     */
+    public long getDroppedCount()
+    {
+        synchronized (this.queues)
+        {
+            return this.dropped;
+        }
+    }
+
+    /**
+     * Get the largest number of lines that were waiting at the same time.
+     *
+     * @return returns maximum queue size
+     */
+    public int getMaximumQueueSize()
+    {
+        synchronized (this.queues)
+        {
+            return this.maximumSize;
+        }
+    }
+
+    /**
+     * Get the longest time a line has waited in the queue.
+     *
+     * @return returns the maximum delay in milliseconds
+     */
+    public long getMaximumDelay()
+    {
+        synchronized (this.queues)
+        {
+            return this.maximumDelay;
+        }
+    }
+
+    /**
+     * Count all queued lines. Must be called while holding the queue lock.
+     *
+     * @return returns number of queued lines
+     */
+    private int size()
+    {
+        int size = 0;
+        for (LinkedList<Entry> queue : this.queues.values())
+        {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * Refill tokens according to elapsed time. Must be called while holding
+     * the queue lock.
+     *
+     * @param now the current time in nanoseconds
+     */
+    private void refill(final long now)
+    {
+        if (this.refillNanos == 0)
+        {
+            this.tokens = this.burst;
+            this.lastRefill = now;
+            return;
+        }
+        final long elapsed = now - this.lastRefill;
+        final long newTokens = elapsed / this.refillNanos;
+        if (newTokens <= 0)
+        {
+            return;
+        }
+        if (this.tokens + newTokens >= this.burst)
+        {
+            this.tokens = this.burst;
+            this.lastRefill = now;
+        }
+        else
+        {
+            this.tokens += (int) newTokens;
+            this.lastRefill += newTokens * this.refillNanos;
+        }
+    }
+
+    /**
+     * Take the next entry according to priority. Must be called while holding
+     * the queue lock.
+     *
+     * @return returns next entry and its priority or <tt>null</tt> if all
+     *         queues are empty
+     */
+    private Map.Entry<Priority, Entry> poll()
+    {
+        for (Map.Entry<Priority, LinkedList<Entry>> queue
+            : this.queues.entrySet())
+        {
+            final Entry entry = queue.getValue().poll();
+            if (entry != null)
+            {
+                return new AbstractMap.SimpleImmutableEntry<Priority, Entry>(
+                    queue.getKey(), entry);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Queued task together with its submission time.
+     */
+    private static final class Entry
+    {
+        /**
+         * The task that sends the line.
+         */
+        private final Runnable task;
+
+        /**
+         * Callback in case the task is discarded. (Optional)
+         */
+        private final Runnable discarded;
+
+        /**
+         * Submission time in nanoseconds.
+         */
+        private final long submitted;
+
+        /**
+         * Constructor.
+         *
+         * @param task the task
+         * @param discarded the callback in case the task is discarded
+         * @param submitted the submission time in nanoseconds
+         */
+        private Entry(final Runnable task, final Runnable discarded,
+            final long submitted)
+        {
+            this.task = task;
+            this.discarded = discarded;
+            this.submitted = submitted;
+        }
+    }
+
+    /**
+     * Worker that releases queued lines as tokens become available.
+     */
+    private final class Worker
+        implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            boolean waitedForToken = false;
+            while (true)
+            {
+                final Map.Entry<Priority, Entry> next;
+                synchronized (SendQueue.this.queues)
+                {
+                    try
+                    {
+                        if (SendQueue.this.stopped)
+                        {
+                            return;
+                        }
+                        if (size() == 0)
+                        {
+                            SendQueue.this.queues.wait();
+                            continue;
+                        }
+                        final long now = System.nanoTime();
+                        refill(now);
+                        if (SendQueue.this.tokens == 0)
+                        {
+                            final long waitNanos =
+                                SendQueue.this.lastRefill
+                                    + SendQueue.this.refillNanos - now;
+                            waitedForToken = true;
+                            SendQueue.this.queues.wait(Math.max(1L, waitNanos
+                                / RATIO_MILLISECONDS_TO_NANOSECONDS));
+                            continue;
+                        }
+                        next = poll();
+                        SendQueue.this.tokens--;
+                        final Priority priority = next.getKey();
+                        SendQueue.this.sent.put(priority,
+                            SendQueue.this.sent.get(priority) + 1);
+                        final long delay =
+                            (now - next.getValue().submitted)
+                                / RATIO_MILLISECONDS_TO_NANOSECONDS;
+                        if (waitedForToken)
+                        {
+                            SendQueue.this.throttled++;
+                            waitedForToken = false;
+                        }
+                        if (delay > SendQueue.this.maximumDelay)
+                        {
+                            SendQueue.this.maximumDelay = delay;
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        LOGGER.debug("Send queue worker interrupted.", e);
+                        return;
+                    }
+                }
+                try
+                {
+                    next.getValue().task.run();
+                }
+                catch (RuntimeException e)
+                {
+                    LOGGER.warn("Failed to send queued line: "
+                        + e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
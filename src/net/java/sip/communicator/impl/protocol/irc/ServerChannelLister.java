@@ -63,6 +63,11 @@
      */
     private final IRCApi irc;
 
+    /**
+     * Rate-limited send queue.
+     */
+    private final SendQueue queue;
+
     /**
      * IRCApi connection state.
      */
@@ -81,9 +86,10 @@
      * Constructor.
      *
      * @param irc thread-safe irc api instance
+     * @param queue the rate-limited send queue
      * @param connectionState irc connection state
      */
-    public ServerChannelLister(final IRCApi irc,
+    public ServerChannelLister(final IRCApi irc, final SendQueue queue,
         final IIRCState connectionState)
     {
         if (irc == null)
@@ -91,6 +97,11 @@ public ServerChannelLister(final IRCApi irc,
             throw new IllegalArgumentException("irc instance cannot be null");
         }
         this.irc = irc;
+        if (queue == null)
+        {
+            throw new IllegalArgumentException("queue cannot be null");
+        }
+        this.queue = queue;
         if (connectionState == null)
         {
             throw new IllegalArgumentException(
@@ -121,7 +132,7 @@ public List<String> getList()
                 LOGGER
                     .trace("Chat room list null or outdated. Start retrieving "
                         + "new chat room list.");
-                Result<List<String>, Exception> listSignal =
+                final Result<List<String>, Exception> listSignal =
                     new Result<List<String>, Exception>(
                         new LinkedList<String>());
                 synchronized (listSignal)
@@ -130,7 +141,27 @@ public List<String> getList()
                     {
                         this.irc
                             .addListener(new ChannelListListener(listSignal));
-                        this.irc.rawMessage("LIST");
+                        this.queue.send(SendQueue.Priority.MAINTENANCE,
+                            new Runnable()
+                            {
+                                @Override
+                                public void run()
+                                {
+                                    ServerChannelLister.this.irc
+                                        .rawMessage("LIST");
+                                }
+                            }, new Runnable()
+                            {
+                                @Override
+                                public void run()
+                                {
+                                    synchronized (listSignal)
+                                    {
+                                        listSignal.setDone();
+                                        listSignal.notifyAll();
+                                    }
+                                }
+                            });
                         while (!listSignal.isDone())
                         {
                             LOGGER.trace("Waiting for list ...");
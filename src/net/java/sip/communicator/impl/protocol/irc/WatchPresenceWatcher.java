@@ -49,6 +49,11 @@
      */
     private final IRCApi irc;
 
+    /**
+     * Rate-limited send queue.
+     */
+    private final SendQueue queue;
+
     /**
      * IRC connection state.
      */
@@ -63,6 +68,7 @@
      * Constructor.
      *
      * @param irc the IRCApi instance
+     * @param queue the rate-limited send queue
      * @param connectionState the connection state
      * @param nickWatchList SYNCHRONIZED the nick watch list
      * @param monitored SYNCHRONIZED The shared collection which contains all
@@ -70,7 +76,8 @@
      *            command.
      * @param operationSet the persistent presence operation set
      */
-    WatchPresenceWatcher(final IRCApi irc, final IIRCState connectionState,
+    WatchPresenceWatcher(final IRCApi irc, final SendQueue queue,
+        final IIRCState connectionState,
         final Set<String> nickWatchList, final Set<String> monitored,
         final OperationSetPersistentPresenceIrcImpl operationSet,
         final int maxListSize)
@@ -80,6 +87,11 @@
             throw new IllegalArgumentException("irc cannot be null");
         }
         this.irc = irc;
+        if (queue == null)
+        {
+            throw new IllegalArgumentException("queue cannot be null");
+        }
+        this.queue = queue;
         if (connectionState == null)
         {
             throw new IllegalArgumentException(
@@ -92,7 +104,7 @@
         }
         this.nickWatchList = nickWatchList;
         this.irc.addListener(new WatchReplyListener(monitored, operationSet));
-        setUpWatch(this.irc, this.nickWatchList, maxListSize);
+        setUpWatch(this.irc, this.queue, this.nickWatchList, maxListSize);
         LOGGER.debug("WATCH presence watcher initialized.");
     }
 
@@ -102,7 +114,7 @@
      * Created a static method as not to interfere too much with a state that is
      * still being initialized.
      */
-    private static void setUpWatch(final IRCApi irc,
+    private static void setUpWatch(final IRCApi irc, final SendQueue queue,
         final Collection<String> nickWatchList, final int maxListSize)
     {
         List<String> current;
@@ -122,7 +134,8 @@ private static void setUpWatch(final IRCApi irc,
             if (query.length() + nick.length() + 2 > maxLength)
             {
                 // full payload, send monitor query now
-                irc.rawMessage("WATCH " + query);
+                queue.sendRaw(SendQueue.Priority.MAINTENANCE, irc,
+                    "WATCH " + query);
                 query.delete(0, query.length());
             }
             else if (query.length() > 0)
@@ -134,7 +147,8 @@ else if (query.length() > 0)
         if (query.length() > 0)
         {
             // send query for remaining nicks
-            irc.rawMessage("WATCH " + query);
+            queue.sendRaw(SendQueue.Priority.MAINTENANCE, irc,
+                "WATCH " + query);
         }
     }
 
@@ -143,7 +157,8 @@ public void add(final String nick)
     {
         LOGGER.trace("Adding nick '" + nick + "' to WATCH watch list.");
         this.nickWatchList.add(nick);
-        this.irc.rawMessage("WATCH +" + nick);
+        this.queue.sendRaw(SendQueue.Priority.MAINTENANCE, this.irc,
+            "WATCH +" + nick);
     }
 
     @Override
@@ -151,7 +166,8 @@ public void remove(final String nick)
     {
         LOGGER.trace("Removing nick '" + nick + "' from WATCH watch list.");
         this.nickWatchList.remove(nick);
-        this.irc.rawMessage("WATCH -" + nick);
+        this.queue.sendRaw(SendQueue.Priority.MAINTENANCE, this.irc,
+            "WATCH -" + nick);
     }
 
     /**
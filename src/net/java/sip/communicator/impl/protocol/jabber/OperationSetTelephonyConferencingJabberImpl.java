@@ -74,11 +74,6 @@
     public static final String DISABLE_COIN_PROP_NAME
         = "net.java.sip.communicator.impl.protocol.jabber.DISABLE_COIN";
 
-    /**
-     * Synchronization object.
-     */
-    private final Object lock = new Object();
-
     /**
      * Field indicates whether COIN notification are disabled or not.
      */
@@ -118,18 +113,44 @@ protected void notifyCallPeers(Call call)
     {
         if (!isCoinDisabled && call.isConferenceFocus())
         {
-            synchronized (lock)
+            // send conference-info to all CallPeers of the specified call.
+            for (Iterator<? extends CallPeer> i = call.getCallPeers();
+                    i.hasNext();)
             {
-                // send conference-info to all CallPeers of the specified call.
-                for (Iterator<? extends CallPeer> i = call.getCallPeers();
-                        i.hasNext();)
-                {
-                    notify(i.next());
-                }
+                scheduleNotify(i.next());
             }
         }
     }
 
+    /**
+     * Schedules a COIN to a specific <tt>CallPeer</tt>, such that COINs are
+     * sent to it at most once per {@link #COIN_MIN_INTERVAL}. The COINs to the
+     * <tt>CallPeer</tt>s of a conference are sent in parallel.
+     *
+     * @param callPeer the <tt>CallPeer</tt> to notify.
+     */
+    private void scheduleNotify(final CallPeer callPeer)
+    {
+        if(!(callPeer instanceof CallPeerJabberImpl))
+            return;
+
+        long timeSinceLastCoin = System.currentTimeMillis()
+                - ((CallPeerJabberImpl) callPeer)
+                    .getLastConferenceInfoSentTimestamp();
+
+        ConferenceNotificationScheduler.getInstance().schedule(
+                callPeer,
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        OperationSetTelephonyConferencingJabberImpl.this
+                                .notify(callPeer);
+                    }
+                },
+                COIN_MIN_INTERVAL - timeSinceLastCoin);
+    }
+
     /**
      * Notifies a specific <tt>CallPeer</tt> about changes in the telephony
      * conference-related information.
@@ -150,34 +171,7 @@ private void notify(CallPeer callPeer)
                 || peerState == CallPeerState.FAILED)
             return;
 
-        final CallPeerJabberImpl callPeerJabber = (CallPeerJabberImpl)callPeer;
-
-        final long timeSinceLastCoin = System.currentTimeMillis()
-                - callPeerJabber.getLastConferenceInfoSentTimestamp();
-        if (timeSinceLastCoin < COIN_MIN_INTERVAL)
-        {
-            if (callPeerJabber.isConfInfoScheduled())
-                return;
-
-            logger.info("Scheduling to send a COIN to " + callPeerJabber);
-            callPeerJabber.setConfInfoScheduled(true);
-            new Thread(new Runnable(){
-                @Override
-                public void run()
-                {
-                    try
-                    {
-                        Thread.sleep(1 + COIN_MIN_INTERVAL - timeSinceLastCoin);
-                    }
-                    catch (InterruptedException ie) {}
-
-                    OperationSetTelephonyConferencingJabberImpl.this
-                            .notify(callPeerJabber);
-                }
-            }).start();
-
-            return;
-        }
+        CallPeerJabberImpl callPeerJabber = (CallPeerJabberImpl)callPeer;
 
         // check that callPeer supports COIN before sending him a
         // conference-info
@@ -194,7 +188,6 @@ public void run()
                     ProtocolProviderServiceJabberImpl.URN_XMPP_JINGLE_COIN))
             {
                 logger.info(callPeer.getAddress() + " does not support COIN");
-                callPeerJabber.setConfInfoScheduled(false);
                 return;
             }
         }
@@ -203,17 +196,15 @@ public void run()
             logger.warn("Failed to retrieve DiscoverInfo for " + to, xmppe);
         }
 
-        ConferenceInfoDocument currentConfInfo
-                = getCurrentConferenceInfo(callPeerJabber);
-        ConferenceInfoDocument lastSentConfInfo
+        ConferenceInfoState currentConfInfo
+                = getCurrentConferenceState(callPeerJabber);
+        ConferenceInfoState lastSentConfInfo
                 = callPeerJabber.getLastConferenceInfoSent();
 
-        ConferenceInfoDocument diff;
-
-        if (lastSentConfInfo == null)
-            diff = currentConfInfo;
-        else
-            diff = getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
+        ConferenceInfoDocument diff
+                = currentConfInfo == null
+                    ? null
+                    : getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
 
         if (diff != null)
         {
@@ -231,13 +222,12 @@ public void run()
 
                 // We save currentConfInfo, because it is of state "full", while
                 // diff could be a partial
-                currentConfInfo.setVersion(newVersion);
-                callPeerJabber.setLastConferenceInfoSent(currentConfInfo);
+                callPeerJabber.setLastConferenceInfoSent(
+                        currentConfInfo.withVersion(newVersion));
                 callPeerJabber.setLastConferenceInfoSentTimestamp(
                         System.currentTimeMillis());
             }
         }
-        callPeerJabber.setConfInfoScheduled(false);
     }
 
     /**
@@ -487,16 +477,17 @@ private void handleCoin(CallPeerJabberImpl callPeer, CoinIQ coinIQ)
      * SID.
      */
     @Override
-    protected ConferenceInfoDocument getCurrentConferenceInfo(
+    protected ConferenceInfoState getCurrentConferenceState(
             MediaAwareCallPeer<?,?,?> callPeer)
     {
-        ConferenceInfoDocument confInfo
-                = super.getCurrentConferenceInfo(callPeer);
+        ConferenceInfoState confInfo
+                = super.getCurrentConferenceState(callPeer);
 
         if (callPeer instanceof CallPeerJabberImpl
                 && confInfo != null)
         {
-            confInfo.setSid(((CallPeerJabberImpl)callPeer).getSID());
+            confInfo
+                = confInfo.withSid(((CallPeerJabberImpl)callPeer).getSID());
         }
         return confInfo;
     }
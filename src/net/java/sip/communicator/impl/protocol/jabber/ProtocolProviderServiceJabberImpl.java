@@ -23,6 +23,7 @@
 import java.security.cert.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.net.ssl.*;
 
@@ -758,12 +759,18 @@ private void initializeConnectAndLogin(SecurityAuthority authority,
             }
             else
             {
-                for (InetSocketAddress isa : addrs)
+                List<InetSocketAddress> remaining
+                    = new LinkedList<InetSocketAddress>(Arrays.asList(addrs));
+
+                while(!remaining.isEmpty())
                 {
+                    RacingSocketFactory socketFactory
+                        = createSocketFactory(remaining);
+
                     try
                     {
-                        state = connectAndLogin(isa, serviceName,
-                            loginStrategy);
+                        state = connectAndLogin(remaining.get(0),
+                            socketFactory, serviceName, loginStrategy);
                         if(state == ConnectState.ABORT_CONNECTING
                             || state == ConnectState.STOP_TRYING)
                             return;
@@ -774,6 +781,7 @@ private void initializeConnectAndLogin(SecurityAuthority authority,
                         if(isAuthenticationFailed(ex))
                             throw ex;
                     }
+                    removeTriedAddresses(remaining, socketFactory);
                 }
             }
         }
@@ -846,16 +854,18 @@ private ConnectState connectUsingSRVRecords(
 
         if(srvRecords != null)
         {
-            for(SRVRecord srv : srvRecords)
+            // resolve all targets at once, they are tried in order below
+            List<Future<InetSocketAddress[]>> srvAddrs
+                = AsyncDnsResolver.getInstance()
+                    .getAandAAAARecords(srvRecords);
+
+            for(int i = 0; i < srvRecords.length; i++)
             {
+                SRVRecord srv = srvRecords[i];
                 InetSocketAddress[] addrs = null;
                 try
                 {
-                    addrs =
-                        NetworkUtils.getAandAAAARecords(
-                            srv.getTarget(),
-                            srv.getPort()
-                        );
+                    addrs = AsyncDnsResolver.get(srvAddrs.get(i));
                 }
                 catch (ParseException e)
                 {
@@ -874,8 +884,14 @@ private ConnectState connectUsingSRVRecords(
                     continue;
                 }
 
-                for (InetSocketAddress isa : addrs)
+                List<InetSocketAddress> remaining
+                    = new LinkedList<InetSocketAddress>(Arrays.asList(addrs));
+
+                while(!remaining.isEmpty())
                 {
+                    RacingSocketFactory socketFactory
+                        = createSocketFactory(remaining);
+
                     try
                     {
                         // if failover mechanism is enabled, use it,
@@ -891,12 +907,13 @@ private ConnectState connectUsingSRVRecords(
                         }
 
                         ConnectState state = connectAndLogin(
-                            isa, serviceName, loginStrategy);
+                            remaining.get(0), socketFactory,
+                            serviceName, loginStrategy);
                         return state;
                     }
                     catch(XMPPException ex)
                     {
-                        logger.error("Error connecting to " + isa
+                        logger.error("Error connecting to " + remaining
                             + " for domain:" + domain
                             + " serviceName:" + serviceName, ex);
 
@@ -905,6 +922,7 @@ private ConnectState connectUsingSRVRecords(
                         if(isAuthenticationFailed(ex))
                             throw ex;
                     }
+                    removeTriedAddresses(remaining, socketFactory);
                 }
             }
         }
@@ -915,6 +933,52 @@ private ConnectState connectUsingSRVRecords(
         return ConnectState.CONTINUE_TRYING;
     }
 
+    /**
+     * Creates the socket factory which races the connections to the
+     * remaining addresses of a server as described in RFC 8305: the first
+     * address gets a head start and the addresses of both families are then
+     * tried in turn.
+     *
+     * @param addrs the remaining addresses of the server, in order of
+     * preference
+     * @return the socket factory or <tt>null</tt> to connect to the first
+     * address only, when it is the only one or when a proxy is used
+     */
+    private RacingSocketFactory createSocketFactory(
+        List<InetSocketAddress> addrs)
+    {
+        // a proxy connects to the server itself
+        if(addrs.size() < 2
+            || (proxy != null
+                && proxy.getProxyType()
+                    != org.jivesoftware.smack.proxy.ProxyInfo.ProxyType.NONE))
+            return null;
+
+        return new RacingSocketFactory(
+            addrs.toArray(new InetSocketAddress[addrs.size()]), 0);
+    }
+
+    /**
+     * Removes the addresses of a server which a failed login has used up.
+     * When the connections were raced, only the address which was connected
+     * to is used up, unless none of them could be connected to.
+     *
+     * @param addrs the remaining addresses of the server
+     * @param socketFactory the socket factory used by the login or
+     * <tt>null</tt> if it connected to the first address only
+     */
+    private static void removeTriedAddresses(
+        List<InetSocketAddress> addrs,
+        RacingSocketFactory socketFactory)
+    {
+        if(socketFactory == null)
+            addrs.remove(0);
+        else if(socketFactory.getConnectedAddress() == null)
+            addrs.clear();
+        else
+            addrs.remove(socketFactory.getConnectedAddress());
+    }
+
     /**
      * Tries to login to the XMPP server with the supplied user ID. If the
      * protocol is Google Talk, the user ID including the service name is used.
@@ -922,11 +986,15 @@ private ConnectState connectUsingSRVRecords(
      * name fails, a second attempt including the service name is made.
      *
      * @param currentAddress the IP address to connect to
+     * @param socketFactory the socket factory which races the connections to
+     * all the addresses of the server or <tt>null</tt> to connect to
+     * <tt>currentAddress</tt> only
      * @param serviceName the domain name of the user's login
      * @param loginStrategy the login strategy to use
      * @throws XMPPException when a failure occurs
      */
     private ConnectState connectAndLogin(InetSocketAddress currentAddress,
+        RacingSocketFactory socketFactory,
         String serviceName,
         JabberLoginStrategy loginStrategy)
         throws XMPPException
@@ -952,7 +1020,7 @@ private ConnectState connectAndLogin(InetSocketAddress currentAddress,
         try
         {
             return connectAndLogin(
-                currentAddress, serviceName,
+                currentAddress, socketFactory, serviceName,
                 userID, resource, loginStrategy);
         }
         catch(XMPPException ex)
@@ -992,7 +1060,7 @@ private ConnectState connectAndLogin(InetSocketAddress currentAddress,
                 {
                     // logging in might need the service name
                     return connectAndLogin(
-                        currentAddress, serviceName,
+                        currentAddress, socketFactory, serviceName,
                         userID + "@" + serviceName,
                         resource,
                         loginStrategy);
@@ -1109,6 +1177,9 @@ private void loadProxy() throws OperationFailedException
      * final - Abort due to certificate cancel or keep trying cause only current
      * address has failed or stop trying cause we succeeded.
      * @param address the address to connect to
+     * @param socketFactory the socket factory which races the connections to
+     * all the addresses of the server or <tt>null</tt> to connect to
+     * <tt>address</tt> only
      * @param serviceName the service name to use
      * @param userName the username to use
      * @param resource and the resource.
@@ -1117,8 +1188,8 @@ private void loadProxy() throws OperationFailedException
      * @throws XMPPException if we cannot connect for some reason
      */
     private ConnectState connectAndLogin(
-            InetSocketAddress address, String serviceName,
-            String userName, String resource,
+            InetSocketAddress address, RacingSocketFactory socketFactory,
+            String serviceName, String userName, String resource,
             JabberLoginStrategy loginStrategy)
         throws XMPPException
     {
@@ -1139,6 +1210,8 @@ private ConnectState connectAndLogin(
                         address.getAddress().getHostAddress(),
                         address.getPort(),
                         serviceName, proxy);
+            if(socketFactory != null)
+                confConn.setSocketFactory(socketFactory);
         }
 
         // if we have OperationSetPersistentPresence skip sending initial
@@ -1233,6 +1306,11 @@ else if (tlsRequired)
 
         connection.connect();
 
+        // the socket factory may have connected to another address
+        if(socketFactory != null
+            && socketFactory.getConnectedAddress() != null)
+            this.address = socketFactory.getConnectedAddress();
+
         setTrafficClass();
 
         if(abortConnecting)
@@ -0,0 +1,159 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.net.*;
+
+import javax.net.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * The socket factory handed to Smack for a direct connection to a server with
+ * several addresses. Instead of connecting to the host and port Smack asks
+ * for, it races the connections to all the addresses of the server as
+ * described in RFC 8305, so that an unreachable address family does not
+ * delay the login.
+ */
+class RacingSocketFactory
+    extends SocketFactory
+{
+    /**
+     * The addresses of the server, in order of preference.
+     */
+    private final InetSocketAddress[] addresses;
+
+    /**
+     * The timeout of each connection attempt in milliseconds.
+     */
+    private final int timeout;
+
+    /**
+     * The address of the last connected socket.
+     */
+    private volatile InetSocketAddress connectedAddress;
+
+    /**
+     * Initializes a new <tt>RacingSocketFactory</tt>.
+     *
+     * @param addresses the addresses of the server, in order of preference
+     * @param timeout the timeout of each connection attempt in milliseconds,
+     * <tt>0</tt> for none
+     */
+    RacingSocketFactory(InetSocketAddress[] addresses, int timeout)
+    {
+        this.addresses = addresses;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the address the last socket created by this factory is
+     * connected to.
+     *
+     * @return the connected address or <tt>null</tt> if no socket could be
+     * connected yet
+     */
+    InetSocketAddress getConnectedAddress()
+    {
+        return connectedAddress;
+    }
+
+    /**
+     * Connects to the first reachable address of the server. The host and
+     * port are those of the preferred address and are ignored.
+     *
+     * @param host ignored
+     * @param port ignored
+     * @return the connected socket
+     * @throws IOException if none of the addresses could be connected to
+     */
+    @Override
+    public Socket createSocket(String host, int port)
+        throws IOException
+    {
+        return connect();
+    }
+
+    /**
+     * Connects to the first reachable address of the server. The host and
+     * port are those of the preferred address and are ignored.
+     *
+     * @param host ignored
+     * @param port ignored
+     * @return the connected socket
+     * @throws IOException if none of the addresses could be connected to
+     */
+    @Override
+    public Socket createSocket(InetAddress host, int port)
+        throws IOException
+    {
+        return connect();
+    }
+
+    /**
+     * Not supported, the racing sockets are not bound to a local address.
+     *
+     * @throws SocketException always
+     */
+    @Override
+    public Socket createSocket(
+            String host, int port,
+            InetAddress localHost, int localPort)
+        throws IOException
+    {
+        throw new SocketException("Local addresses are not supported");
+    }
+
+    /**
+     * Not supported, the racing sockets are not bound to a local address.
+     *
+     * @throws SocketException always
+     */
+    @Override
+    public Socket createSocket(
+            InetAddress address, int port,
+            InetAddress localAddress, int localPort)
+        throws IOException
+    {
+        throw new SocketException("Local addresses are not supported");
+    }
+
+    /**
+     * Races the connections to the addresses of the server.
+     *
+     * @return the connected socket
+     * @throws IOException if none of the addresses could be connected to
+     */
+    private Socket connect()
+        throws IOException
+    {
+        Socket socket
+            = AsyncDnsResolver.getInstance().connect(addresses, timeout);
+
+        for (InetSocketAddress address : addresses)
+        {
+            if (address.equals(socket.getRemoteSocketAddress()))
+            {
+                connectedAddress = address;
+                break;
+            }
+        }
+        return socket;
+    }
+}
@@ -471,6 +471,21 @@ protected void populateSubscribeRequest(
                     e);
         }
         req.setHeader(expHeader);
+
+        // headers specific to the subscription
+        try
+        {
+            subscription.populateSubscribeRequest(req, headerFactory);
+        }
+        catch (ParseException e)
+        {
+            logger.error("wrong subscription specific header", e);
+            throw new OperationFailedException(
+                    "An unexpected error occurred while"
+                    + "constructing the subscription specific headers",
+                    OperationFailedException.INTERNAL_ERROR,
+                    e);
+        }
     }
 
     /**
@@ -577,7 +592,9 @@ public boolean processRequest(RequestEvent requestEvent)
         ContentTypeHeader ctheader
             = (ContentTypeHeader) request.getHeader(ContentTypeHeader.NAME);
         if ((ctheader != null)
-                && !ctheader.getContentSubType().equalsIgnoreCase(contentSubType))
+                && !ctheader.getContentSubType().equalsIgnoreCase(contentSubType)
+                && ((subscription == null)
+                        || !subscription.acceptsContent(ctheader)))
         {
             // send a 415 response (rfc3261)
             Response response;
@@ -1180,6 +1197,40 @@ public Subscription(Address toAddress, String eventId)
             super(toAddress, eventId);
         }
 
+        /**
+         * Determines whether this <tt>Subscription</tt> understands the
+         * content of a NOTIFY <tt>Request</tt> of a type other than the one
+         * of its event package. The default implementation understands none.
+         *
+         * @param contentType the type of the content of the NOTIFY
+         * <tt>Request</tt>
+         * @return <tt>true</tt> if this <tt>Subscription</tt> processes
+         * content of the specified type
+         */
+        protected boolean acceptsContent(ContentTypeHeader contentType)
+        {
+            return false;
+        }
+
+        /**
+         * Adds the headers specific to this <tt>Subscription</tt>, such as
+         * the extensions it requires the notifier to support, to a SUBSCRIBE
+         * <tt>Request</tt> populated with the headers of its event package.
+         * The default implementation adds none.
+         *
+         * @param req the SUBSCRIBE <tt>Request</tt> describing this
+         * <tt>Subscription</tt>
+         * @param headerFactory the <tt>HeaderFactory</tt> to create the
+         * headers with
+         * @throws ParseException if creating a header fails
+         */
+        protected void populateSubscribeRequest(
+                Request req,
+                HeaderFactory headerFactory)
+            throws ParseException
+        {
+        }
+
         /**
          * Notifies this <tt>Subscription</tt> that an active NOTIFY
          * <tt>Request</tt> has been received and it may process the
@@ -17,6 +17,7 @@
  */
 package net.java.sip.communicator.impl.protocol.sip;
 
+import java.io.*;
 import java.net.URI;
 import java.text.*;
 import java.util.*;
@@ -127,6 +128,19 @@
      */
     private PollOfflineContactsTask pollingTask = null;
 
+    /**
+     * The URI of the resource list server which the presence of the whole
+     * contact list is subscribed to, or <tt>null</tt> to subscribe to each
+     * contact.
+     */
+    private final String rlsUri;
+
+    /**
+     * The subscription to the resource list server if we are subscribed to
+     * it, or <tt>null</tt>.
+     */
+    private volatile ResourceListSubscription rlsSubscription = null;
+
     /**
      * If we should be totally silenced, just doing local operations
      */
@@ -153,6 +167,18 @@
      */
     private static final String WATCHERINFO_XML = "watcherinfo+xml";
 
+    /**
+     * XML documents types.
+     * The root of the notifications of resource lists as said in rfc4662.
+     */
+    private static final String RLMI_XML        = "rlmi+xml";
+
+    /**
+     * The option tag of the extension for subscriptions to resource lists
+     * defined in rfc4662.
+     */
+    private static final String EVENTLIST_OPTION = "eventlist";
+
     // pidf elements and attributes
     private static final String PRESENCE_ELEMENT= "presence";
     private static final String NS_ELEMENT      = "xmlns";
@@ -166,7 +192,6 @@
     private static final String BASIC_ELEMENT   = "basic";
     private static final String CONTACT_ELEMENT = "contact";
     private static final String NOTE_ELEMENT    = "note";
-    private static final String PRIORITY_ATTRIBUTE  = "priority";
 
     // rpid elements and attributes
     private static final String RPID_NS_ELEMENT = "xmlns:rpid";
@@ -175,9 +200,7 @@
     private static final String DM_NS_ELEMENT   = "xmlns:dm";
     private static final String DM_NS_VALUE     =
                                     "urn:ietf:params:xml:ns:pidf:data-model";
-    private static final String PERSON_ELEMENT  = "person";
     private static final String NS_PERSON_ELT   = "dm:person";
-    private static final String ACTIVITY_ELEMENT= "activities";
     private static final String NS_ACTIVITY_ELT = "rpid:activities";
     private static final String AWAY_ELEMENT    = "away";
     private static final String NS_AWAY_ELT     = "rpid:away";
@@ -185,22 +208,8 @@
     private static final String NS_BUSY_ELT     = "rpid:busy";
     private static final String OTP_ELEMENT     = "on-the-phone";
     private static final String NS_OTP_ELT      = "rpid:on-the-phone";
-    private static final String STATUS_ICON_ELEMENT = "status-icon";
     private static final String NS_STATUS_ICON_ELT  = "rpid:status-icon";
 
-    // namespace wildcard
-    private static final String ANY_NS          = "*";
-
-    private static final String WATCHERINFO_NS_VALUE
-            = "urn:ietf:params:xml:ns:watcherinfo";
-    private static final String WATCHERINFO_ELEMENT= "watcherinfo";
-    private static final String STATE_ATTRIBUTE = "state";
-    private static final String VERSION_ATTRIBUTE = "version";
-    private static final String WATCHERLIST_ELEMENT= "watcher-list";
-    private static final String RESOURCE_ATTRIBUTE = "resource";
-    private static final String PACKAGE_ATTRIBUTE = "package";
-    private static final String WATCHER_ELEMENT= "watcher";
-
     /**
      * The <code>EventPackageNotifier</code> which provides the ability of this
      * instance to act as a notifier for the presence event package.
@@ -378,6 +387,10 @@ protected Subscription createSubscription(
         this.pollingTaskPeriod
             = (pollingPeriod > 0) ? (pollingPeriod * 1000) : 30000;
 
+        this.rlsUri
+            = provider.getAccountID().getAccountPropertyString(
+                    SipAccountID.RLS_URI);
+
         // if we force the p2p mode, we start by not using a distant PA
         this.useDistantPA = !forceP2PMode;
 
@@ -2095,219 +2108,119 @@ else if (contact.getPresenceStatus()
       */
      public void setPidfPresenceStatus(String presenceDoc)
      {
-         Document doc = convertDocument(presenceDoc);
-
-         if (doc == null)
-             return;
-
          if (logger.isDebugEnabled())
              logger.debug("parsing:\n" + presenceDoc);
 
          // <presence>
-         NodeList presList = doc.getElementsByTagNameNS(PIDF_NS_VALUE,
-                 PRESENCE_ELEMENT);
-
-         if (presList.getLength() == 0)
-         {
-             presList = doc.getElementsByTagNameNS(ANY_NS, PRESENCE_ELEMENT);
+         PresenceDocumentParser.Presence presence;
 
-             if (presList.getLength() == 0)
-             {
-                 logger.error("no presence element in this document");
-                 return;
-             }
-         }
-         if (presList.getLength() > 1)
+         try
          {
-             logger.warn("more than one presence element in this document");
+             presence = PresenceDocumentParser.parsePresence(presenceDoc);
          }
-         Node presNode = presList.item(0);
-         if (presNode.getNodeType() != Node.ELEMENT_NODE)
+         catch (IOException ioe)
          {
-             logger.error("the presence node is not an element");
+             logger.error("can't parse the PIDF document", ioe);
              return;
          }
-         Element presence = (Element) presNode;
 
          // RPID area
 
          // due to a lot of changes in the past years to this functionality,
-         // the namespace used by servers and clients are often wrong so we just
-         // ignore namespaces here
+         // the namespace used by servers and clients are often wrong so the
+         // parser just ignores namespaces here
 
          PresenceStatus personStatus = null;
-         URI personStatusIcon = null;
-         NodeList personList = presence.getElementsByTagNameNS(ANY_NS,
-                 PERSON_ELEMENT);
+         String activity = presence.getActivity();
+
+         if (AWAY_ELEMENT.equals(activity))
+         {
+             personStatus = sipStatusEnum.getStatus(SipStatusEnum.AWAY);
+         }
+         else if (BUSY_ELEMENT.equals(activity))
+         {
+             personStatus = sipStatusEnum.getStatus(SipStatusEnum.BUSY);
+         }
+         else if (OTP_ELEMENT.equals(activity))
+         {
+             personStatus
+                 = sipStatusEnum.getStatus(SipStatusEnum.ON_THE_PHONE);
+         }
 
-         //if (personList.getLength() > 1) {
-         //    logger.error("more than one person in this document");
-         //    return;
-         //}
+         URI personStatusIcon = null;
+         String statusIcon = presence.getStatusIcon();
 
-         if (personList.getLength() > 0)
+         if (statusIcon != null && statusIcon.length() != 0)
          {
-             Node personNode = personList.item(0);
-             if (personNode.getNodeType() != Node.ELEMENT_NODE)
+             try
              {
-                 logger.error("the person node is not an element");
-                 return;
+                 personStatusIcon = URI.create(statusIcon);
              }
-             Element person = (Element) personNode;
-
-             NodeList activityList =
-                 person.getElementsByTagNameNS(ANY_NS, ACTIVITY_ELEMENT);
-             if (activityList.getLength() > 0)
+             catch (IllegalArgumentException ex)
              {
-                 Element activity = null;
-                 // find the first correct activity
-                 for (int i = 0; i < activityList.getLength(); i++)
-                 {
-                     Node activityNode = activityList.item(i);
+                 logger.error("Person's status icon uri: " +
+                         statusIcon + " is invalid");
+             }
+         }
 
-                     if (activityNode.getNodeType() != Node.ELEMENT_NODE)
-                         continue;
+         if (personStatusIcon != null)
+         {
+             ContactSipImpl contact
+                 = resolveContactID(getEntityContactID(presence));
 
-                     activity = (Element) activityNode;
+             if (contact != null)
+                 updateContactIcon(contact, personStatusIcon);
+         }
 
-                     NodeList statusList = activity.getChildNodes();
-                     for (int j = 0; j < statusList.getLength(); j++)
-                     {
-                         Node statusNode = statusList.item(j);
-                         if (statusNode.getNodeType() == Node.ELEMENT_NODE)
-                         {
-                             String statusname = statusNode.getLocalName();
-                             if (statusname.equals(AWAY_ELEMENT))
-                             {
-                                 personStatus = sipStatusEnum
-                                     .getStatus(SipStatusEnum.AWAY);
-                                 break;
-                             }
-                             else if (statusname.equals(BUSY_ELEMENT))
-                             {
-                                 personStatus = sipStatusEnum
-                                     .getStatus(SipStatusEnum.BUSY);
-                                 break;
-                             }
-                             else if (statusname.equals(OTP_ELEMENT))
-                             {
-                                 personStatus = sipStatusEnum
-                                     .getStatus(SipStatusEnum.ON_THE_PHONE);
-                                 break;
-                             }
-                         }
-                     }
-                     if (personStatus != null)
-                         break;
-                 }
-             }
-             NodeList statusIconList = person.getElementsByTagNameNS(ANY_NS,
-                     STATUS_ICON_ELEMENT);
-             if (statusIconList.getLength() > 0)
+         // search for a <note> that can define a more precise
+         // status this is not recommended by RFC3863 but some im
+         // clients use this.
+         String presenceNote = presence.getNote();
+
+         if (presenceNote != null)
+         {
+             switch (presenceNote.toLowerCase())
              {
-                 Element statusIcon;
-                 Node statusIconNode = statusIconList.item(0);
-                 if (statusIconNode.getNodeType() == Node.ELEMENT_NODE)
-                 {
-                     statusIcon = (Element) statusIconNode;
-                     String content = getTextContent(statusIcon);
-                     if (content != null && content.trim().length() != 0)
-                     {
-                         try
-                         {
-                             personStatusIcon = URI.create(content);
-                         }
-                         catch (IllegalArgumentException ex)
-                         {
-                             logger.error("Person's status icon uri: " +
-                                     content + " is invalid");
-                         }
-                     }
-                 }
+                 case "ready":
+                 case "available":
+                     personStatus = sipStatusEnum
+                         .getStatus(SipStatusEnum.ONLINE);
+                     break;
+                 case "ringing":
+                 case "on the phone":
+                 case "on hold":
+                     personStatus = sipStatusEnum
+                         .getStatus(SipStatusEnum.ON_THE_PHONE);
+                     break;
+                 case "unavailable":
+                     personStatus = sipStatusEnum
+                         .getStatus(SipStatusEnum.OFFLINE);
+                     break;
              }
          }
 
-          if(personStatusIcon != null)
-          {
-              String contactID =
-                  XMLUtils.getAttribute(presNode, ENTITY_ATTRIBUTE);
-
-              if (contactID.startsWith("pres:"))
-              {
-                  contactID = contactID.substring("pres:".length());
-              }
-              Contact contact = resolveContactID(contactID);
-              updateContactIcon((ContactSipImpl) contact, personStatusIcon);
-         }
-
-        // search for a <note> that can define a more precise
-        // status this is not recommended by RFC3863 but some im
-        // clients use this.
-        NodeList presNoteList = getPidfChilds(presence, NOTE_ELEMENT);
-        if (presNoteList.getLength() >= 1)
-        {
-            Node noteNode = presNoteList.item(presNoteList.getLength() - 1);
-            if (noteNode.getNodeType() == Node.ELEMENT_NODE)
-            {
-                String state = getTextContent((Element)noteNode);
-                if (state != null)
-                {
-                    switch (state.toLowerCase())
-                    {
-                        case "ready":
-                        case "available":
-                            personStatus = sipStatusEnum
-                                .getStatus(SipStatusEnum.ONLINE);
-                            break;
-                        case "ringing":
-                        case "on the phone":
-                        case "on hold":
-                            personStatus = sipStatusEnum
-                                .getStatus(SipStatusEnum.ON_THE_PHONE);
-                            break;
-                        case "unavailable":
-                            personStatus = sipStatusEnum
-                                .getStatus(SipStatusEnum.OFFLINE);
-                            break;
-                    }
-                }
-            }
-        }
-
          // Vector containing the list of status to set for each contact in
          // the presence document ordered by priority (highest first).
          // <SipContact, Float (priority), SipStatusEnum>
          List<Object[]> newPresenceStates = new Vector<Object[]>(3, 2);
 
          // <tuple>
-         NodeList tupleList = getPidfChilds(presence, TUPLE_ELEMENT);
-         for (int i = 0; i < tupleList.getLength(); i++)
+         for (PresenceDocumentParser.Tuple tuple : presence.getTuples())
          {
-             Node tupleNode = tupleList.item(i);
-
-             if (tupleNode.getNodeType() != Node.ELEMENT_NODE)
-                 continue;
-
-             Element tuple = (Element) tupleNode;
-
              // <contact>
-             NodeList contactList = getPidfChilds(tuple, CONTACT_ELEMENT);
+             List<PresenceDocumentParser.Contact> contactList
+                 = tuple.getContacts();
 
              // we use a vector here and not an unique contact to handle an
              // error case where many contacts are associated with a status
              // Vector<ContactSipImpl>
              List<Object[]> sipcontact = new Vector<Object[]>(1, 3);
              String contactID = null;
-             if (contactList.getLength() == 0)
+             if (contactList.isEmpty())
              {
                  // use the entity attribute of the presence node
-                 contactID = XMLUtils.getAttribute(
-                         presNode, ENTITY_ATTRIBUTE);
-                 // also accept entity URIs starting with pres: instead of sip:
-                 if (contactID.startsWith("pres:"))
-                 {
-                     contactID = contactID.substring("pres:".length());
-                 }
+                 contactID = getEntityContactID(presence);
+
                  Contact tmpContact = resolveContactID(contactID);
 
                  if (tmpContact != null)
@@ -2318,16 +2231,9 @@ else if (statusname.equals(OTP_ELEMENT))
              else
              {
                  // this is normally not permitted by RFC3863
-                 for (int j = 0; j < contactList.getLength(); j++)
+                 for (PresenceDocumentParser.Contact contact : contactList)
                  {
-                     Node contactNode = contactList.item(j);
-
-                     if (contactNode.getNodeType() != Node.ELEMENT_NODE)
-                         continue;
-
-                     Element contact = (Element) contactNode;
-
-                     contactID = getTextContent(contact);
+                     contactID = contact.getUri();
                      // also accept entity URIs starting with pres: instead
                      // of sip:
                      if (contactID.startsWith("pres:"))
@@ -2343,7 +2249,7 @@ else if (statusname.equals(OTP_ELEMENT))
                      Object tab[] = new Object[2];
 
                      // search if the contact has a priority
-                     String prioStr = contact.getAttribute(PRIORITY_ATTRIBUTE);
+                     String prioStr = contact.getPriority();
                      Float prio = null;
                      try
                      {
@@ -2414,82 +2320,30 @@ else if (statusname.equals(OTP_ELEMENT))
                  continue;
              }
 
-             // <status>
-             NodeList statusList = getPidfChilds(tuple, STATUS_ELEMENT);
-
-             // in case of many status, just consider the last one
-             // this is normally not permitted by RFC3863
-             int index = statusList.getLength() - 1;
-             Node statusNode = null;
-             do
-             {
-                 Node temp = statusList.item(index);
-                 if (temp.getNodeType() == Node.ELEMENT_NODE)
-                 {
-                     statusNode = temp;
-                     break;
-                 }
-                 index--;
-             }
-             while (index >= 0);
-
-             Element basic = null;
+             // <status> and <basic>, in case of many of them the parser just
+             // considers the last ones, this is normally not permitted by
+             // RFC3863
+             String basic = tuple.getBasic();
 
-             if (statusNode == null)
+             if (!tuple.hasStatus())
              {
                  if (logger.isDebugEnabled())
                      logger.debug("no valid status in this tuple");
              }
-             else
+             else if (basic == null)
              {
-                 Element status = (Element) statusNode;
-
-                 // <basic>
-                 NodeList basicList = getPidfChilds(status, BASIC_ELEMENT);
-
-                 // in case of many basic, just consider the last one
-                 // this is normally not permitted by RFC3863
-                 index = basicList.getLength() - 1;
-                 Node basicNode = null;
-                 do
-                 {
-                     Node temp = basicList.item(index);
-                     if (temp.getNodeType() == Node.ELEMENT_NODE)
-                     {
-                         basicNode = temp;
-                         break;
-                     }
-                     index--;
-                 }
-                 while (index >= 0);
-
-                 if (basicNode == null)
-                 {
-                     if (logger.isDebugEnabled())
-                         logger.debug("no valid <basic> in this status");
-                 }
-                 else
-                 {
-                     basic = (Element) basicNode;
-                 }
+                 if (logger.isDebugEnabled())
+                     logger.debug("no valid <basic> in this status");
              }
 
              // search for a <note> that can define a more precise
              // status this is not recommended by RFC3863 but some im
              // clients use this.
-             NodeList noteList = getPidfChilds(tuple, NOTE_ELEMENT);
-
              boolean changed = false;
-             for (int k = 0; k < noteList.getLength() && !changed; k++)
+             for (Iterator<String> notes = tuple.getNotes().iterator();
+                     notes.hasNext() && !changed;)
              {
-                 Node noteNode = noteList.item(k);
-
-                 if (noteNode.getNodeType() != Node.ELEMENT_NODE)
-                     continue;
-
-                 Element note = (Element) noteNode;
-
-                 String state = getTextContent(note);
+                 String state = notes.next();
 
                  Iterator<PresenceStatus> states
                      = sipStatusEnum.getSupportedStatusSet();
@@ -2510,7 +2364,7 @@ else if (statusname.equals(OTP_ELEMENT))
 
              if (changed == false && basic != null)
              {
-                 if (getTextContent(basic).equalsIgnoreCase(ONLINE_STATUS))
+                 if (basic.equalsIgnoreCase(ONLINE_STATUS))
                  {
                      // if its online(open) we use the person status
                      // if any, otherwise just mark as online
@@ -2529,8 +2383,7 @@ else if (statusname.equals(OTP_ELEMENT))
                                  newPresenceStates);
                      }
                  }
-                 else if (getTextContent(basic).equalsIgnoreCase(
-                         OFFLINE_STATUS))
+                 else if (basic.equalsIgnoreCase(OFFLINE_STATUS))
                  {
                      // if its offline we ignore person status
                      newPresenceStates = setStatusForContacts(
@@ -2561,6 +2414,26 @@ else if (getTextContent(basic).equalsIgnoreCase(
          }
      }
 
+     /**
+      * Returns the ID of the contact a PIDF document describes the presence
+      * of, accepting entity URIs starting with pres: instead of sip:.
+      *
+      * @param presence the parsed PIDF document
+      * @return the ID of the contact of the entity attribute of the presence
+      * element, an empty string if it has none
+      */
+     private static String getEntityContactID(
+             PresenceDocumentParser.Presence presence)
+     {
+         String contactID = presence.getEntity();
+
+         if (contactID == null)
+             return "";
+         if (contactID.startsWith("pres:"))
+             contactID = contactID.substring("pres:".length());
+         return contactID;
+     }
+
     /**
      * Parses watchers info document rfc3858.
      * @param watcherInfoDoc the doc.
@@ -2576,51 +2449,32 @@ public void setWatcherInfoStatus(
             return;
         }
 
-        Document doc = convertDocument(watcherInfoDoc);
-
-         if (doc == null)
-             return;
-
          if (logger.isDebugEnabled())
              logger.debug("parsing:\n" + watcherInfoDoc);
 
         // <watcherinfo>
-        NodeList watchList = doc.getElementsByTagNameNS(
-                WATCHERINFO_NS_VALUE, WATCHERINFO_ELEMENT);
-        if (watchList.getLength() == 0)
-        {
-            watchList = doc.getElementsByTagNameNS(
-                     ANY_NS, WATCHERINFO_ELEMENT);
+        PresenceDocumentParser.WatcherInfo watcherInfo;
 
-            if (watchList.getLength() == 0)
-            {
-                logger.error("no watcherinfo element in this document");
-                return;
-            }
-        }
-        if (watchList.getLength() > 1)
+        try
         {
-            logger.warn("more than one watcherinfo element in this document");
+            watcherInfo
+                = PresenceDocumentParser.parseWatcherInfo(watcherInfoDoc);
         }
-        Node watcherInfoNode = watchList.item(0);
-        if (watcherInfoNode.getNodeType() != Node.ELEMENT_NODE)
+        catch (IOException ioe)
         {
-            logger.error("the watcherinfo node is not an element");
+            logger.error("can't parse the watcherinfo document", ioe);
             return;
         }
 
-        Element watcherInfo = (Element)watcherInfoNode;
-
         // we don't take in account whether the state is full or partial.
         if(logger.isDebugEnabled())
             logger.debug("Watcherinfo is with state: "
-                    + watcherInfo.getAttribute(STATE_ATTRIBUTE));
+                    + watcherInfo.getState());
 
         int currentVersion = -1;
         try
         {
-            currentVersion =
-                Integer.parseInt(watcherInfo.getAttribute(VERSION_ATTRIBUTE));
+            currentVersion = Integer.parseInt(watcherInfo.getVersion());
         }
         catch(Throwable t)
         {
@@ -2636,33 +2490,21 @@ public void setWatcherInfoStatus(
             subscriber.version = currentVersion;
 
         // we need watcher list only for our resource
-        Element wlist = XMLUtils.locateElement(
-                watcherInfo, WATCHERLIST_ELEMENT, RESOURCE_ATTRIBUTE,
-                parentProvider.getRegistrarConnection()
-                    .getAddressOfRecord().getURI().toString());
+        PresenceDocumentParser.WatcherList wlist
+            = watcherInfo.getWatcherList(
+                    parentProvider.getRegistrarConnection()
+                        .getAddressOfRecord().getURI().toString());
 
-        if(wlist == null ||
-            !wlist.getAttribute(PACKAGE_ATTRIBUTE).equals(PRESENCE_ELEMENT))
+        if(wlist == null || !PRESENCE_ELEMENT.equals(wlist.getPackage()))
         {
             logger.error("Watcher list for us is missing in this document!");
             return;
         }
 
-        NodeList watcherList = wlist.getElementsByTagNameNS(ANY_NS,
-                 WATCHER_ELEMENT);
-        for(int i = 0; i < watcherList.getLength(); i++)
+        for (PresenceDocumentParser.Watcher watcher : wlist.getWatchers())
         {
-            Node watcherNode = watcherList.item(i);
-            if (watcherNode.getNodeType() != Node.ELEMENT_NODE)
-            {
-                logger.error("the watcher node is not an element");
-                return;
-            }
-
-            Element watcher = (Element)watcherNode;
-
-            String status = watcher.getAttribute(STATUS_ELEMENT);
-            String contactID = getTextContent(watcher);
+            String status = watcher.getStatus();
+            String contactID = watcher.getUri();
 
             //String event - subscribe, approved, deactivated, probation,
             //rejected, timeout, giveup, noresource
@@ -2751,52 +2593,6 @@ private void updateContactIcon(ContactSipImpl contact, URI imageUri)
                 newImage);
     }
 
-     /**
-      * Secured call to XMLUtils.getText (no null returned but an empty string)
-      *
-      * @param node the node with which call <tt>XMLUtils.getText()</tt>
-      *
-      * @return the string contained in the node or an empty string if there is
-      * no text information in the node.
-      */
-     private String getTextContent(Element node)
-     {
-         String res = XMLUtils.getText(node);
-
-         if (res == null)
-         {
-             logger.warn("no text for element '" + node.getNodeName() + "'");
-             return "";
-         }
-
-         return res;
-     }
-
-     /**
-      * Gets the list of the descendant of an element in the pidf namespace.
-      * If the list is empty, we try to get this list in any namespace.
-      * This method is useful for being able to read pidf document without any
-      * namespace or with a wrong namespace.
-      *
-      * @param element the base element concerned.
-      * @param childName the name of the descendants to match on.
-      *
-      * @return The list of all the descendant node.
-      */
-     private NodeList getPidfChilds(Element element, String childName)
-     {
-         NodeList res;
-
-         res = element.getElementsByTagNameNS(PIDF_NS_VALUE, childName);
-
-         if (res.getLength() == 0)
-         {
-             res = element.getElementsByTagNameNS(ANY_NS, childName);
-         }
-
-         return res;
-     }
-
      /**
       * Associate the provided presence state to the contacts considering the
       * current presence states and priorities.
@@ -2940,6 +2736,22 @@ public void unsubscribeToAllContact()
      */
     private void unsubscribeToAllEventSubscribers()
     {
+        ResourceListSubscription rlsSubscription = this.rlsSubscription;
+
+        if (rlsSubscription != null)
+        {
+            this.rlsSubscription = null;
+            try
+            {
+                subscriber.unsubscribe(rlsSubscription.getAddress(), false);
+            }
+            catch (Throwable ex)
+            {
+                logger.error("Failed to send the unsubscription " +
+                        "for the resource list.", ex);
+            }
+        }
+
         if(this.watcherInfoSubscriber != null)
         {
             try
@@ -3107,6 +2919,84 @@ public void run()
          }
      }
 
+    /**
+     * Subscribes to each contact in the list and starts polling the offline
+     * ones, unless it is already done.
+     */
+    private synchronized void startPollingContacts()
+    {
+        if (pollingTask != null)
+            return;
+
+        // Subcribe to each contact in the list
+        for (ContactSipImpl contact : ssContactList
+                .getAllContacts(ssContactList.getRootGroup()))
+        {
+            forcePollContact(contact);
+        }
+
+        // create the new polling task
+        pollingTask = new PollOfflineContactsTask();
+
+        // start polling the offline contacts
+        timer.schedule(pollingTask, pollingTaskPeriod, pollingTaskPeriod);
+    }
+
+    /**
+     * Subscribes to the presence of the whole contact list at the resource
+     * list server.
+     *
+     * @return <tt>true</tt> if the SUBSCRIBE request has been sent,
+     * <tt>false</tt> if the contacts are to be subscribed to one by one
+     */
+    private boolean subscribeToResourceList()
+    {
+        try
+        {
+            ResourceListSubscription subscription
+                = new ResourceListSubscription(
+                        parentProvider.parseAddressString(rlsUri));
+
+            rlsSubscription = subscription;
+            subscriber.subscribe(subscription);
+            return true;
+        }
+        catch (ParseException ex)
+        {
+            logger.error("Invalid resource list server URI: " + rlsUri, ex);
+        }
+        catch (OperationFailedException ex)
+        {
+            logger.error("Failed to create and send the subcription " +
+                    "for the resource list.", ex);
+        }
+        rlsSubscription = null;
+        return false;
+    }
+
+    /**
+     * Subscribes to each contact because the resource list server cannot
+     * handle a subscription, unless the subscription has already been
+     * replaced.
+     *
+     * @param subscription the subscription to the resource list server
+     */
+    private void fallBackToContactSubscriptions(
+            ResourceListSubscription subscription)
+    {
+        if (rlsSubscription != subscription)
+            return;
+
+        rlsSubscription = null;
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    rlsUri + " is no resource list server, subscribing"
+                        + " to each contact");
+        }
+        startPollingContacts();
+    }
+
      /**
      * Will wait for every SUBSCRIBE, NOTIFY and PUBLISH transaction
      * to finish before continuing the unsubscription
@@ -3191,23 +3081,17 @@ else if (evt.getNewState().equals(RegistrationState.REGISTERED))
             * anything because we've already set it up in response to
             * the first REGISTERED.
             */
-            if ((!presenceEnabled) || (pollingTask != null))
+            if ((!presenceEnabled)
+                    || (pollingTask != null)
+                    || (rlsSubscription != null))
             {
                 return;
             }
 
-            // Subcribe to each contact in the list
-            for (ContactSipImpl contact : ssContactList
-                    .getAllContacts(ssContactList.getRootGroup()))
-            {
-                forcePollContact(contact);
-            }
-
-            // create the new polling task
-            pollingTask = new PollOfflineContactsTask();
-
-            // start polling the offline contacts
-            timer.schedule(pollingTask, pollingTaskPeriod, pollingTaskPeriod);
+            // Subscribe to the whole contact list at once if there is a
+            // resource list server, to each contact otherwise
+            if ((rlsUri == null) || !subscribeToResourceList())
+                startPollingContacts();
 
             if(this.useDistantPA)
             {
@@ -3270,6 +3154,14 @@ else if (evt.getNewState().equals(RegistrationState.CONNECTION_FAILED)
                         , oldContactStatus);
             }
 
+            ResourceListSubscription rlsSubscription = this.rlsSubscription;
+
+            if (rlsSubscription != null)
+            {
+                this.rlsSubscription = null;
+                subscriber.removeSubscription(rlsSubscription.getAddress());
+            }
+
             if(this.useDistantPA)
             {
                 try
@@ -3773,4 +3665,232 @@ protected void processTerminatedRequest(
             logger.error("Subscription to presence watcher info terminated!");
         }
     }
+
+    /**
+     * Represents a subscription to the presence of the whole contact list at
+     * a resource list server as defined in rfc4662.
+     */
+    private class ResourceListSubscription
+        extends EventPackageSubscriber.Subscription
+    {
+        /**
+         * The version of the last notification of the list.
+         */
+        private int version = -1;
+
+        /**
+         * Initializes a new <tt>ResourceListSubscription</tt>.
+         *
+         * @param toAddress the URI of the resource list
+         */
+        public ResourceListSubscription(Address toAddress)
+        {
+            super(toAddress);
+        }
+
+        /**
+         * Accepts the multipart/related notifications of resource lists.
+         *
+         * @param contentType the type of the content of the NOTIFY request
+         * @return <tt>true</tt> if the content is a notification of a
+         * resource list
+         */
+        @Override
+        protected boolean acceptsContent(ContentTypeHeader contentType)
+        {
+            return ResourceListNotification.MULTIPART_CONTENT_TYPE
+                .equalsIgnoreCase(
+                        contentType.getContentType() + "/"
+                            + contentType.getContentSubType());
+        }
+
+        /**
+         * Tells the server that we support subscriptions to resource lists.
+         *
+         * @param req the SUBSCRIBE request
+         * @param headerFactory the factory of the headers
+         * @throws ParseException if creating a header fails
+         */
+        @Override
+        protected void populateSubscribeRequest(
+                Request req,
+                HeaderFactory headerFactory)
+            throws ParseException
+        {
+            req.addHeader(headerFactory.createSupportedHeader(EVENTLIST_OPTION));
+            req.addHeader(
+                    headerFactory.createAcceptHeader("application", RLMI_XML));
+            req.addHeader(
+                    headerFactory.createAcceptHeader("multipart", "related"));
+        }
+
+        /**
+         * Updates the presence of the contacts of the list, or subscribes to
+         * each contact if the server does not handle the subscription as a
+         * subscription to a resource list.
+         *
+         * @param requestEvent the event of the NOTIFY request
+         * @param rawContent the content of the NOTIFY request
+         */
+        @Override
+        protected void processActiveRequest(
+                RequestEvent requestEvent,
+                byte[] rawContent)
+        {
+            Request request = requestEvent.getRequest();
+
+            if (!isEventList(request))
+            {
+                // the URI is a single presentity, not a resource list
+                try
+                {
+                    subscriber.unsubscribe(getAddress(), false);
+                }
+                catch (OperationFailedException ex)
+                {
+                    logger.error("Failed to send the unsubscription " +
+                            "for the resource list.", ex);
+                }
+                fallBackToContactSubscriptions(this);
+                return;
+            }
+            if (rawContent == null)
+                return;
+
+            ContentTypeHeader contentType
+                = (ContentTypeHeader) request.getHeader(ContentTypeHeader.NAME);
+            ResourceListNotification notification;
+
+            try
+            {
+                notification
+                    = ResourceListNotification.parse(
+                            contentType.getParameter("boundary"),
+                            rawContent);
+            }
+            catch (IOException ex)
+            {
+                logger.error("Invalid resource list notification", ex);
+                return;
+            }
+
+            // a notification sent before the last one
+            if (notification.getVersion() <= version)
+                return;
+            version = notification.getVersion();
+
+            for (ResourceListNotification.Resource resource
+                    : notification.getResources())
+            {
+                ContactSipImpl contact = resolveContactID(resource.getUri());
+
+                if ((contact != null)
+                        && !contact.isResolved()
+                        && SubscriptionStateHeader.ACTIVE.equalsIgnoreCase(
+                                resource.getState()))
+                {
+                    finalizeSubscription(contact);
+                }
+
+                if ((resource.getContent() != null)
+                        && resource.getContentType().endsWith(PIDF_XML))
+                {
+                    setPidfPresenceStatus(resource.getContent());
+                }
+                else if ((contact != null)
+                        && SubscriptionStateHeader.TERMINATED.equalsIgnoreCase(
+                                resource.getState()))
+                {
+                    changePresenceStatusForContact(
+                        contact,
+                        sipStatusEnum.getStatus(SipStatusEnum.UNKNOWN));
+                }
+            }
+        }
+
+        /**
+         * Determines whether a NOTIFY request is a notification of a resource
+         * list, which carries a Require header with the eventlist option.
+         *
+         * @param request the NOTIFY request
+         * @return <tt>true</tt> if <tt>request</tt> notifies of a resource
+         * list
+         */
+        private boolean isEventList(Request request)
+        {
+            ListIterator<?> requireHeaders
+                = request.getHeaders(RequireHeader.NAME);
+
+            while ((requireHeaders != null) && requireHeaders.hasNext())
+            {
+                RequireHeader requireHeader
+                    = (RequireHeader) requireHeaders.next();
+
+                if (EVENTLIST_OPTION.equalsIgnoreCase(
+                        requireHeader.getOptionTag()))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Subscribes to each contact as the server refused the subscription
+         * to the resource list.
+         *
+         * @param responseEvent the event of the response
+         * @param statusCode the status code of the response
+         */
+        @Override
+        protected void processFailureResponse(
+                ResponseEvent responseEvent,
+                int statusCode)
+        {
+            fallBackToContactSubscriptions(this);
+        }
+
+        /**
+         * Logs the acceptance of the subscription to the resource list.
+         *
+         * @param responseEvent the event of the response
+         * @param statusCode the status code of the response
+         */
+        @Override
+        protected void processSuccessResponse(
+                ResponseEvent responseEvent,
+                int statusCode)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Subscribed to the resource list " + rlsUri
+                        + " status:" + statusCode);
+        }
+
+        /**
+         * Subscribes again to the resource list if the server asks for it,
+         * to each contact otherwise.
+         *
+         * @param requestEvent the event of the NOTIFY request
+         * @param reasonCode the reason of the termination
+         */
+        @Override
+        protected void processTerminatedRequest(
+                RequestEvent requestEvent,
+                String reasonCode)
+        {
+            if (rlsSubscription != this)
+                return;
+
+            if (SubscriptionStateHeader.DEACTIVATED.equalsIgnoreCase(
+                        reasonCode)
+                    || SubscriptionStateHeader.TIMEOUT.equalsIgnoreCase(
+                        reasonCode))
+            {
+                // rfc3265: the subscription may be retried immediately
+                if (subscribeToResourceList())
+                    return;
+            }
+            fallBackToContactSubscriptions(this);
+        }
+    }
 }
@@ -562,20 +562,22 @@ protected byte[] createNotifyContent(
                 return null;
             }
 
-            ConferenceInfoDocument currentConfInfo
-                    = getCurrentConferenceInfo(callPeer);
-            ConferenceInfoDocument lastSentConfInfo
+            ConferenceInfoState currentConfInfo
+                    = getCurrentConferenceState(callPeer);
+            ConferenceInfoState lastSentConfInfo
                     = callPeer.getLastConferenceInfoSent();
 
+            if (currentConfInfo == null)
+                return null;
+
             //Uncomment this when the rest of the code can handle a return value
             //of null in case no NOTIFY needs to be sent.
             /*
             ConferenceInfoDocument diff
-                    = lastSentConfInfo == null
-                      ? currentConfInfo
-                      :getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
+                    = getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
             */
-            ConferenceInfoDocument diff = currentConfInfo;
+            ConferenceInfoDocument diff
+                    = getConferenceInfoDiff(null, currentConfInfo);
 
             if (diff == null)
                 return null;
@@ -586,11 +588,11 @@ protected byte[] createNotifyContent(
                         ? 1
                         : lastSentConfInfo.getVersion() + 1;
                 diff.setVersion(newVersion);
-                currentConfInfo.setVersion(newVersion);
 
                 // We save currentConfInfo, because it is of state "full", while
                 // diff could be a partial
-                callPeer.setLastConferenceInfoSent(currentConfInfo);
+                callPeer.setLastConferenceInfoSent(
+                        currentConfInfo.withVersion(newVersion));
                 callPeer.setLastConferenceInfoSentTimestamp(
                         System.currentTimeMillis());
 
@@ -902,57 +904,60 @@ public void notify( final Subscription subscription,
                         OperationFailedException.INTERNAL_ERROR);
             }
 
-            final long timeSinceLastNotify = System.currentTimeMillis()
+            long timeSinceLastNotify = System.currentTimeMillis()
                     - callPeer.getLastConferenceInfoSentTimestamp();
             if (timeSinceLastNotify < MIN_NOTIFY_INTERVAL)
             {
-                if (callPeer.isConfInfoScheduled())
-                    return;
-
-                logger.info("Scheduling to send a conference-info NOTIFY to "
-                        + callPeer);
-                callPeer.setConfInfoScheduled(true);
-                new Thread(new Runnable(){
-                    @Override
-                    public void run()
-                    {
-                        try
-                        {
-                            Thread.sleep(1 + MIN_NOTIFY_INTERVAL
-                                         - timeSinceLastNotify);
-                        }
-                        catch (InterruptedException ie) {}
-
-                        try
-                        {
-                            ConferenceEventPackageNotifier.this.notify(
-                                    subscription, subscriptionState, reason);
-                        }
-                        catch (OperationFailedException e)
-                        {
-                            logger.error("Failed to send NOTIFY request");
-                        }
-                    }
-                }).start();
-
+                /*
+                 * Coalesce with any NOTIFY already scheduled for callPeer, so
+                 * that a burst of changes results in a single NOTIFY.
+                 */
+                boolean scheduled
+                    = ConferenceNotificationScheduler.getInstance().schedule(
+                            callPeer,
+                            new Runnable()
+                            {
+                                public void run()
+                                {
+                                    try
+                                    {
+                                        ConferenceEventPackageNotifier.this
+                                            .notify(
+                                                subscription,
+                                                subscriptionState,
+                                                reason);
+                                    }
+                                    catch (OperationFailedException e)
+                                    {
+                                        logger.error(
+                                                "Failed to send NOTIFY request",
+                                                e);
+                                    }
+                                }
+                            },
+                            1 + MIN_NOTIFY_INTERVAL - timeSinceLastNotify);
+
+                if (scheduled && logger.isInfoEnabled())
+                {
+                    logger.info(
+                            "Scheduling to send a conference-info NOTIFY to "
+                                + callPeer);
+                }
                 return;
             }
 
-            ConferenceInfoDocument currentConfInfo
-                    = getCurrentConferenceInfo(callPeer);
-            ConferenceInfoDocument lastSentConfInfo
+            ConferenceInfoState currentConfInfo
+                    = getCurrentConferenceState(callPeer);
+            ConferenceInfoState lastSentConfInfo
                     = callPeer.getLastConferenceInfoSent();
 
             ConferenceInfoDocument diff
-                    = lastSentConfInfo == null
-                      ? currentConfInfo
-                      :getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
+                    = currentConfInfo == null
+                      ? null
+                      : getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
 
             if (diff == null)
-            {
-                callPeer.setConfInfoScheduled(false);
                 return; //no change -- no need to send NOTIFY
-            }
 
             int newVersion
                     = lastSentConfInfo == null
@@ -999,8 +1004,8 @@ public void run()
 
                     // We save currentConfInfo, because it is of state "full",
                     // while diff could be a partial
-                    currentConfInfo.setVersion(newVersion);
-                    callPeer.setLastConferenceInfoSent(currentConfInfo);
+                    callPeer.setLastConferenceInfoSent(
+                            currentConfInfo.withVersion(newVersion));
                     callPeer.setLastConferenceInfoSentTimestamp(
                             System.currentTimeMillis());
                 }
@@ -1017,8 +1022,6 @@ public void run()
 
             if (SubscriptionState.TERMINATED.equals(subscriptionState))
                 removeSubscription(callId, subscription);
-
-            callPeer.setConfInfoScheduled(false);
         }
     }
 }
@@ -0,0 +1,894 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.io.*;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+/**
+ * Parses the PIDF documents (RFC 3863) with their RPID extensions (RFC 4480)
+ * and the watcher information documents (RFC 3858) carried in the NOTIFY
+ * requests of the presence event packages in a single pass, without building
+ * a DOM, into the few values the presence operation set maps to presence
+ * statuses.
+ *
+ * <p>
+ * As a lot of implementations get the namespaces wrong, elements are matched
+ * by their local name. Where a document has elements of the same name in the
+ * PIDF namespace and in other namespaces, the ones in the PIDF namespace are
+ * preferred.
+ * </p>
+ */
+class PresenceDocumentParser
+{
+    /**
+     * The namespace of PIDF documents.
+     */
+    private static final String PIDF_NS_VALUE = "urn:ietf:params:xml:ns:pidf";
+
+    /**
+     * The RPID activities which map to a presence status.
+     */
+    private static final Set<String> ACTIVITIES
+        = new HashSet<String>(Arrays.asList("away", "busy", "on-the-phone"));
+
+    /**
+     * The factory of the parsers, which do not need DTDs nor external
+     * entities.
+     */
+    private static final XMLInputFactory xmlInputFactory;
+
+    static
+    {
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(
+                XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    /**
+     * Prevents the initialization of <tt>PresenceDocumentParser</tt>
+     * instances.
+     */
+    private PresenceDocumentParser()
+    {
+    }
+
+    /**
+     * Creates a parser of an XML document which does not resolve DTDs nor
+     * external entities.
+     *
+     * @param document the document
+     * @return a parser of <tt>document</tt>
+     * @throws XMLStreamException if creating the parser fails
+     */
+    static XMLStreamReader createReader(Reader document)
+        throws XMLStreamException
+    {
+        return xmlInputFactory.createXMLStreamReader(document);
+    }
+
+    /**
+     * Creates a parser of an XML document which does not resolve DTDs nor
+     * external entities.
+     *
+     * @param document the document, in the encoding it declares
+     * @return a parser of <tt>document</tt>
+     * @throws XMLStreamException if creating the parser fails
+     */
+    static XMLStreamReader createReader(InputStream document)
+        throws XMLStreamException
+    {
+        return xmlInputFactory.createXMLStreamReader(document);
+    }
+
+    /**
+     * Parses a PIDF document.
+     *
+     * @param document the PIDF document
+     * @return the presence described by <tt>document</tt>
+     * @throws IOException if <tt>document</tt> is not a well-formed XML
+     * document with a presence element
+     */
+    static Presence parsePresence(String document)
+        throws IOException
+    {
+        try
+        {
+            XMLStreamReader reader = createReader(new StringReader(document));
+
+            try
+            {
+                return parsePresence(reader);
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException xse)
+        {
+            throw new IOException("invalid PIDF document", xse);
+        }
+    }
+
+    /**
+     * Parses the first presence element of a PIDF document.
+     *
+     * @param reader the parser of the document
+     * @return the presence described by the document
+     * @throws XMLStreamException if the document is not well-formed
+     * @throws IOException if the document has no presence element
+     */
+    private static Presence parsePresence(XMLStreamReader reader)
+        throws XMLStreamException,
+               IOException
+    {
+        if (!nextElement(reader, "presence"))
+            throw new IOException("no presence element in this document");
+
+        Presence presence
+            = new Presence(reader.getAttributeValue(null, "entity"));
+        Preferred<String> note = new Preferred<String>();
+        int depth = 1;
+        // the depths of the elements we are in, 0 when we are not in them
+        int personDepth = 0;
+        int activitiesDepth = 0;
+        int tupleDepth = 0;
+        int statusDepth = 0;
+        boolean personParsed = false;
+        Tuple tuple = null;
+        Preferred<Contact> contacts = null;
+        Preferred<String> tupleNotes = null;
+        Preferred<Preferred<String>> statuses = null;
+        Preferred<String> basics = null;
+
+        while (depth > 0)
+        {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                if (depth == statusDepth)
+                {
+                    statusDepth = 0;
+                }
+                else if (depth == tupleDepth)
+                {
+                    tuple.contacts = contacts.get();
+                    tuple.notes = tupleNotes.get();
+
+                    Preferred<String> status = statuses.getLast();
+
+                    if (status != null)
+                    {
+                        tuple.hasStatus = true;
+                        tuple.basic = status.getLast();
+                    }
+                    presence.tuples.add(tuple);
+                    tupleDepth = 0;
+                    tuple = null;
+                }
+                else if (depth == activitiesDepth)
+                {
+                    activitiesDepth = 0;
+                }
+                else if (depth == personDepth)
+                {
+                    personDepth = 0;
+                    personParsed = true;
+                }
+                depth--;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT)
+                continue;
+
+            depth++;
+
+            String name = reader.getLocalName();
+            boolean pidf = PIDF_NS_VALUE.equals(reader.getNamespaceURI());
+
+            if ("note".equals(name))
+            {
+                String text = readText(reader);
+
+                note.add(pidf, text);
+                if (tuple != null)
+                    tupleNotes.add(pidf, text);
+                depth--;
+            }
+            else if (tuple != null)
+            {
+                if ("contact".equals(name))
+                {
+                    String priority
+                        = reader.getAttributeValue(null, "priority");
+
+                    contacts.add(pidf, new Contact(readText(reader), priority));
+                    depth--;
+                }
+                else if ("status".equals(name))
+                {
+                    basics = new Preferred<String>();
+                    statuses.add(pidf, basics);
+                    statusDepth = depth;
+                }
+                else if ("basic".equals(name) && (statusDepth != 0))
+                {
+                    basics.add(pidf, readText(reader));
+                    depth--;
+                }
+            }
+            else if ("tuple".equals(name))
+            {
+                tuple = new Tuple();
+                contacts = new Preferred<Contact>();
+                tupleNotes = new Preferred<String>();
+                statuses = new Preferred<Preferred<String>>();
+                tupleDepth = depth;
+            }
+            else if (personDepth != 0)
+            {
+                if ("activities".equals(name))
+                {
+                    activitiesDepth = depth;
+                }
+                else if ((depth == activitiesDepth + 1)
+                        && (activitiesDepth != 0)
+                        && (presence.activity == null)
+                        && ACTIVITIES.contains(name))
+                {
+                    presence.activity = name;
+                }
+                else if ("status-icon".equals(name)
+                        && (presence.statusIcon == null))
+                {
+                    presence.statusIcon = readText(reader);
+                    depth--;
+                }
+            }
+            else if ("person".equals(name) && !personParsed)
+            {
+                personDepth = depth;
+            }
+        }
+
+        presence.note = note.getLast();
+        return presence;
+    }
+
+    /**
+     * Parses a watcher information document.
+     *
+     * @param document the watcher information document
+     * @return the watcher information described by <tt>document</tt>
+     * @throws IOException if <tt>document</tt> is not a well-formed XML
+     * document with a watcherinfo element
+     */
+    static WatcherInfo parseWatcherInfo(String document)
+        throws IOException
+    {
+        try
+        {
+            XMLStreamReader reader = createReader(new StringReader(document));
+
+            try
+            {
+                return parseWatcherInfo(reader);
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException xse)
+        {
+            throw new IOException("invalid watcherinfo document", xse);
+        }
+    }
+
+    /**
+     * Parses the first watcherinfo element of a watcher information document.
+     *
+     * @param reader the parser of the document
+     * @return the watcher information described by the document
+     * @throws XMLStreamException if the document is not well-formed
+     * @throws IOException if the document has no watcherinfo element
+     */
+    private static WatcherInfo parseWatcherInfo(XMLStreamReader reader)
+        throws XMLStreamException,
+               IOException
+    {
+        if (!nextElement(reader, "watcherinfo"))
+            throw new IOException("no watcherinfo element in this document");
+
+        WatcherInfo watcherInfo
+            = new WatcherInfo(
+                    reader.getAttributeValue(null, "state"),
+                    reader.getAttributeValue(null, "version"));
+        WatcherList watcherList = null;
+        int depth = 1;
+
+        while (depth > 0)
+        {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                depth--;
+                if ((watcherList != null) && (depth == 1))
+                    watcherList = null;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT)
+                continue;
+
+            depth++;
+
+            String name = reader.getLocalName();
+
+            if ("watcher-list".equals(name) && (depth == 2))
+            {
+                watcherList
+                    = new WatcherList(
+                            reader.getAttributeValue(null, "resource"),
+                            reader.getAttributeValue(null, "package"));
+                watcherInfo.watcherLists.add(watcherList);
+            }
+            else if ("watcher".equals(name) && (watcherList != null))
+            {
+                String status = reader.getAttributeValue(null, "status");
+                String watcherEvent = reader.getAttributeValue(null, "event");
+
+                watcherList.watchers.add(
+                        new Watcher(status, watcherEvent, readText(reader)));
+                depth--;
+            }
+        }
+        return watcherInfo;
+    }
+
+    /**
+     * Moves a parser to the next element with a specific local name.
+     *
+     * @param reader the parser
+     * @param name the local name of the element
+     * @return <tt>true</tt> if the parser is on the start of the element,
+     * <tt>false</tt> if the document has no more element with
+     * <tt>name</tt>
+     * @throws XMLStreamException if the document is not well-formed
+     */
+    private static boolean nextElement(XMLStreamReader reader, String name)
+        throws XMLStreamException
+    {
+        while (reader.hasNext())
+        {
+            if ((reader.next() == XMLStreamConstants.START_ELEMENT)
+                    && name.equals(reader.getLocalName()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the text of the element a parser is on, ignoring the text of the
+     * elements it contains, and moves the parser to the end of the element.
+     *
+     * @param reader the parser on the start of an element
+     * @return the trimmed text of the element
+     * @throws XMLStreamException if the document is not well-formed
+     */
+    private static String readText(XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+
+        while (depth > 0)
+        {
+            switch (reader.next())
+            {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                if (depth == 1)
+                    text.append(reader.getText());
+                break;
+            }
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * The values of the elements with the same name, keeping the ones in the
+     * PIDF namespace apart from the others so that they are preferred.
+     *
+     * @param <T> the type of the values
+     */
+    private static class Preferred<T>
+    {
+        /**
+         * The values of the elements in the PIDF namespace.
+         */
+        private final List<T> pidf = new ArrayList<T>(1);
+
+        /**
+         * The values of the elements in any namespace.
+         */
+        private final List<T> any = new ArrayList<T>(1);
+
+        /**
+         * Adds the value of an element.
+         *
+         * @param inPidfNamespace whether the element is in the PIDF namespace
+         * @param value the value of the element
+         */
+        void add(boolean inPidfNamespace, T value)
+        {
+            if (inPidfNamespace)
+                pidf.add(value);
+            any.add(value);
+        }
+
+        /**
+         * Returns the values of the elements in the PIDF namespace if there
+         * are some, of all the elements otherwise.
+         *
+         * @return the preferred values
+         */
+        List<T> get()
+        {
+            return pidf.isEmpty() ? any : pidf;
+        }
+
+        /**
+         * Returns the last of the preferred values.
+         *
+         * @return the last of the preferred values or <tt>null</tt> if there
+         * is none
+         */
+        T getLast()
+        {
+            List<T> values = get();
+
+            return values.isEmpty() ? null : values.get(values.size() - 1);
+        }
+    }
+
+    /**
+     * The values of a PIDF document which make a presence status.
+     */
+    static class Presence
+    {
+        /**
+         * The entity attribute of the presence element.
+         */
+        private final String entity;
+
+        /**
+         * The first RPID activity of the person which maps to a presence
+         * status.
+         */
+        private String activity;
+
+        /**
+         * The RPID status icon of the person.
+         */
+        private String statusIcon;
+
+        /**
+         * The last note of the document.
+         */
+        private String note;
+
+        /**
+         * The tuples of the document.
+         */
+        private final List<Tuple> tuples = new ArrayList<Tuple>(2);
+
+        /**
+         * Initializes a new <tt>Presence</tt>.
+         *
+         * @param entity the entity attribute of the presence element
+         */
+        Presence(String entity)
+        {
+            this.entity = entity;
+        }
+
+        /**
+         * Returns the entity attribute of the presence element.
+         *
+         * @return the entity the document describes the presence of or
+         * <tt>null</tt>
+         */
+        String getEntity()
+        {
+            return entity;
+        }
+
+        /**
+         * Returns the first activity of the person which maps to a presence
+         * status.
+         *
+         * @return "away", "busy", "on-the-phone" or <tt>null</tt>
+         */
+        String getActivity()
+        {
+            return activity;
+        }
+
+        /**
+         * Returns the status icon of the person.
+         *
+         * @return the URI of the status icon or <tt>null</tt>
+         */
+        String getStatusIcon()
+        {
+            return statusIcon;
+        }
+
+        /**
+         * Returns the last note of the document, including the notes of the
+         * tuples.
+         *
+         * @return the last note or <tt>null</tt>
+         */
+        String getNote()
+        {
+            return note;
+        }
+
+        /**
+         * Returns the tuples of the document.
+         *
+         * @return the tuples of the document
+         */
+        List<Tuple> getTuples()
+        {
+            return tuples;
+        }
+    }
+
+    /**
+     * The values of a tuple of a PIDF document.
+     */
+    static class Tuple
+    {
+        /**
+         * The contacts of the tuple.
+         */
+        private List<Contact> contacts;
+
+        /**
+         * The notes of the tuple.
+         */
+        private List<String> notes;
+
+        /**
+         * Whether the tuple has a status.
+         */
+        private boolean hasStatus;
+
+        /**
+         * The basic status of the last status of the tuple.
+         */
+        private String basic;
+
+        /**
+         * Returns the contacts of the tuple.
+         *
+         * @return the contacts of the tuple
+         */
+        List<Contact> getContacts()
+        {
+            return contacts;
+        }
+
+        /**
+         * Returns the notes of the tuple.
+         *
+         * @return the notes of the tuple
+         */
+        List<String> getNotes()
+        {
+            return notes;
+        }
+
+        /**
+         * Returns whether the tuple has a status.
+         *
+         * @return <tt>true</tt> if the tuple has a status
+         */
+        boolean hasStatus()
+        {
+            return hasStatus;
+        }
+
+        /**
+         * Returns the last basic status of the last status of the tuple.
+         *
+         * @return "open", "closed" or <tt>null</tt> if the status has no
+         * basic status
+         */
+        String getBasic()
+        {
+            return basic;
+        }
+    }
+
+    /**
+     * A contact of a tuple of a PIDF document.
+     */
+    static class Contact
+    {
+        /**
+         * The URI of the contact.
+         */
+        private final String uri;
+
+        /**
+         * The priority attribute of the contact.
+         */
+        private final String priority;
+
+        /**
+         * Initializes a new <tt>Contact</tt>.
+         *
+         * @param uri the URI of the contact
+         * @param priority the priority attribute of the contact
+         */
+        Contact(String uri, String priority)
+        {
+            this.uri = uri;
+            this.priority = priority;
+        }
+
+        /**
+         * Returns the URI of the contact.
+         *
+         * @return the URI of the contact
+         */
+        String getUri()
+        {
+            return uri;
+        }
+
+        /**
+         * Returns the priority attribute of the contact.
+         *
+         * @return the priority attribute of the contact or <tt>null</tt>
+         */
+        String getPriority()
+        {
+            return priority;
+        }
+    }
+
+    /**
+     * The values of a watcher information document.
+     */
+    static class WatcherInfo
+    {
+        /**
+         * The state attribute of the document.
+         */
+        private final String state;
+
+        /**
+         * The version attribute of the document.
+         */
+        private final String version;
+
+        /**
+         * The watcher lists of the document.
+         */
+        private final List<WatcherList> watcherLists
+            = new ArrayList<WatcherList>(1);
+
+        /**
+         * Initializes a new <tt>WatcherInfo</tt>.
+         *
+         * @param state the state attribute of the document
+         * @param version the version attribute of the document
+         */
+        WatcherInfo(String state, String version)
+        {
+            this.state = state;
+            this.version = version;
+        }
+
+        /**
+         * Returns the state attribute of the document.
+         *
+         * @return "full", "partial" or <tt>null</tt>
+         */
+        String getState()
+        {
+            return state;
+        }
+
+        /**
+         * Returns the version attribute of the document.
+         *
+         * @return the version attribute of the document or <tt>null</tt>
+         */
+        String getVersion()
+        {
+            return version;
+        }
+
+        /**
+         * Returns the watcher list of a resource.
+         *
+         * @param resource the URI of the resource
+         * @return the first watcher list of <tt>resource</tt> or
+         * <tt>null</tt>
+         */
+        WatcherList getWatcherList(String resource)
+        {
+            for (WatcherList watcherList : watcherLists)
+            {
+                if (resource.equals(watcherList.getResource()))
+                    return watcherList;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A watcher list of a watcher information document.
+     */
+    static class WatcherList
+    {
+        /**
+         * The URI of the watched resource.
+         */
+        private final String resource;
+
+        /**
+         * The event package of the watched resource.
+         */
+        private final String eventPackage;
+
+        /**
+         * The watchers of the resource.
+         */
+        private final List<Watcher> watchers = new ArrayList<Watcher>();
+
+        /**
+         * Initializes a new <tt>WatcherList</tt>.
+         *
+         * @param resource the URI of the watched resource
+         * @param eventPackage the event package of the watched resource
+         */
+        WatcherList(String resource, String eventPackage)
+        {
+            this.resource = resource;
+            this.eventPackage = eventPackage;
+        }
+
+        /**
+         * Returns the URI of the watched resource.
+         *
+         * @return the URI of the watched resource
+         */
+        String getResource()
+        {
+            return resource;
+        }
+
+        /**
+         * Returns the event package of the watched resource.
+         *
+         * @return the event package of the watched resource
+         */
+        String getPackage()
+        {
+            return eventPackage;
+        }
+
+        /**
+         * Returns the watchers of the resource.
+         *
+         * @return the watchers of the resource
+         */
+        List<Watcher> getWatchers()
+        {
+            return watchers;
+        }
+    }
+
+    /**
+     * A watcher of a watcher list.
+     */
+    static class Watcher
+    {
+        /**
+         * The status of the subscription of the watcher.
+         */
+        private final String status;
+
+        /**
+         * The event which changed the status of the subscription.
+         */
+        private final String event;
+
+        /**
+         * The URI of the watcher.
+         */
+        private final String uri;
+
+        /**
+         * Initializes a new <tt>Watcher</tt>.
+         *
+         * @param status the status of the subscription of the watcher
+         * @param event the event which changed the status
+         * @param uri the URI of the watcher
+         */
+        Watcher(String status, String event, String uri)
+        {
+            this.status = status;
+            this.event = event;
+            this.uri = uri;
+        }
+
+        /**
+         * Returns the status of the subscription of the watcher.
+         *
+         * @return "pending", "active", "waiting", "terminated" or
+         * <tt>null</tt>
+         */
+        String getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * Returns the event which changed the status of the subscription.
+         *
+         * @return the event which changed the status or <tt>null</tt>
+         */
+        String getEvent()
+        {
+            return event;
+        }
+
+        /**
+         * Returns the URI of the watcher.
+         *
+         * @return the URI of the watcher
+         */
+        String getUri()
+        {
+            return uri;
+        }
+    }
+}
@@ -2733,6 +2733,7 @@ boolean registerUsingNextAddress()
             }
             else if(connection.getNextAddress())
             {
+                connection.raceAddresses();
                 sipRegistrarConnection.setTransport(connection.getTransport());
                 sipRegistrarConnection.register();
                 return true;
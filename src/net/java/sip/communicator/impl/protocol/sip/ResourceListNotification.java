@@ -0,0 +1,614 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+/**
+ * The content of a NOTIFY request of a subscription to a resource list as
+ * defined in RFC 4662 "A Session Initiation Protocol (SIP) Event Notification
+ * Extension for Resource Lists": a multipart/related body whose root part is
+ * a Resource List Meta-Information (RLMI) document listing the resources and
+ * the state of the subscriptions to them, and whose other parts carry the
+ * notifications of the resources, such as PIDF documents. Nested lists are
+ * flattened into the resources of the root list.
+ */
+class ResourceListNotification
+{
+    /**
+     * The content type of RLMI documents.
+     */
+    static final String RLMI_CONTENT_TYPE = "application/rlmi+xml";
+
+    /**
+     * The content type of the notifications of resource lists.
+     */
+    static final String MULTIPART_CONTENT_TYPE = "multipart/related";
+
+    /**
+     * The content type of the parts which do not specify theirs (RFC 2045).
+     */
+    private static final String DEFAULT_CONTENT_TYPE = "text/plain";
+
+    /**
+     * The namespace of RLMI documents.
+     */
+    private static final String RLMI_NS_VALUE = "urn:ietf:params:xml:ns:rlmi";
+
+    /**
+     * The charset which maps every byte to a char and back, used to split a
+     * multipart body without decoding its parts.
+     */
+    private static final Charset BINARY = Charset.forName("ISO-8859-1");
+
+    /**
+     * The charset of the parts which do not specify theirs.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The URI of the resource list.
+     */
+    private final String uri;
+
+    /**
+     * The version of the RLMI document of the list.
+     */
+    private final int version;
+
+    /**
+     * Whether the notification carries the state of all the resources of the
+     * list rather than of the resources which have changed only.
+     */
+    private final boolean fullState;
+
+    /**
+     * The resources of the list and of the lists nested in it.
+     */
+    private final List<Resource> resources;
+
+    /**
+     * Initializes a new <tt>ResourceListNotification</tt>.
+     *
+     * @param uri the URI of the resource list
+     * @param version the version of the RLMI document of the list
+     * @param fullState whether the notification carries the state of all the
+     * resources of the list
+     * @param resources the resources of the list
+     */
+    private ResourceListNotification(
+            String uri,
+            int version,
+            boolean fullState,
+            List<Resource> resources)
+    {
+        this.uri = uri;
+        this.version = version;
+        this.fullState = fullState;
+        this.resources = resources;
+    }
+
+    /**
+     * Returns the URI of the resource list.
+     *
+     * @return the URI of the resource list
+     */
+    String getUri()
+    {
+        return uri;
+    }
+
+    /**
+     * Returns the version of the RLMI document of the list.
+     *
+     * @return the version of the RLMI document of the list
+     */
+    int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns whether the notification carries the state of all the resources
+     * of the list rather than of the resources which have changed only.
+     *
+     * @return <tt>true</tt> if the notification carries the full state of
+     * the list
+     */
+    boolean isFullState()
+    {
+        return fullState;
+    }
+
+    /**
+     * Returns the resources of the list and of the lists nested in it.
+     *
+     * @return the resources of the list
+     */
+    List<Resource> getResources()
+    {
+        return resources;
+    }
+
+    /**
+     * Parses the body of a NOTIFY request of a subscription to a resource
+     * list.
+     *
+     * @param boundary the boundary parameter of the multipart/related content
+     * type of the body
+     * @param body the body of the NOTIFY request
+     * @return the parsed notification
+     * @throws IOException if the body is not a valid notification of a
+     * resource list
+     */
+    static ResourceListNotification parse(String boundary, byte[] body)
+        throws IOException
+    {
+        return parseMultipart(boundary, new String(body, BINARY));
+    }
+
+    /**
+     * Parses a multipart/related body whose root part is an RLMI document.
+     *
+     * @param boundary the boundary of the parts of the body
+     * @param body the body, decoded with the {@link #BINARY} charset
+     * @return the parsed notification
+     * @throws IOException if the body is not a valid notification of a
+     * resource list
+     */
+    private static ResourceListNotification parseMultipart(
+            String boundary,
+            String body)
+        throws IOException
+    {
+        if ((boundary == null) || (boundary.length() == 0))
+            throw new IOException("no boundary");
+
+        List<Part> parts = splitParts(boundary, body);
+        Part root = null;
+        Map<String, Part> partsById = new HashMap<String, Part>();
+
+        for (Part part : parts)
+        {
+            if ((root == null) && part.isOfType(RLMI_CONTENT_TYPE))
+                root = part;
+            if (part.contentId != null)
+                partsById.put(part.contentId, part);
+        }
+        if (root == null)
+            throw new IOException("no RLMI part");
+
+        return parseRlmi(root.getContent(), partsById);
+    }
+
+    /**
+     * Splits a multipart body into its parts.
+     *
+     * @param boundary the boundary of the parts
+     * @param body the body, decoded with the {@link #BINARY} charset
+     * @return the parts of the body
+     * @throws IOException if the body is not a valid multipart body
+     */
+    private static List<Part> splitParts(String boundary, String body)
+        throws IOException
+    {
+        String delimiter = "--" + boundary;
+        List<Part> parts = new ArrayList<Part>();
+        int start = body.indexOf(delimiter);
+
+        if (start < 0)
+            throw new IOException("no part delimited by " + boundary);
+
+        while (true)
+        {
+            start += delimiter.length();
+            // the close delimiter
+            if (body.startsWith("--", start))
+                break;
+
+            int end = body.indexOf("\r\n" + delimiter, start);
+
+            if (end < 0)
+                throw new IOException("unterminated part");
+
+            parts.add(new Part(body.substring(skipLine(body, start), end)));
+            start = end + 2;
+        }
+        return parts;
+    }
+
+    /**
+     * Returns the index of the start of the line following an index.
+     *
+     * @param s the string
+     * @param index the index in <tt>s</tt>
+     * @return the index of the start of the next line or the length of
+     * <tt>s</tt> if there is none
+     */
+    private static int skipLine(String s, int index)
+    {
+        int eol = s.indexOf('\n', index);
+
+        return (eol < 0) ? s.length() : (eol + 1);
+    }
+
+    /**
+     * Parses an RLMI document and the notifications of its resources.
+     *
+     * @param rlmi the RLMI document
+     * @param partsById the parts of the multipart body by Content-ID, which
+     * carry the notifications of the resources
+     * @return the parsed notification
+     * @throws IOException if the RLMI document is not valid
+     */
+    private static ResourceListNotification parseRlmi(
+            byte[] rlmi,
+            Map<String, Part> partsById)
+        throws IOException
+    {
+        String uri = null;
+        int version = -1;
+        boolean fullState = false;
+        List<Resource> resources = new ArrayList<Resource>();
+        Resource resource = null;
+
+        try
+        {
+            XMLStreamReader reader
+                = PresenceDocumentParser.createReader(
+                        new ByteArrayInputStream(rlmi));
+
+            try
+            {
+                while (reader.hasNext())
+                {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT)
+                        continue;
+                    if (!RLMI_NS_VALUE.equals(reader.getNamespaceURI()))
+                        continue;
+
+                    String name = reader.getLocalName();
+
+                    if ("list".equals(name))
+                    {
+                        uri = reader.getAttributeValue(null, "uri");
+                        version
+                            = Integer.parseInt(
+                                    reader.getAttributeValue(null, "version"));
+                        fullState
+                            = Boolean.parseBoolean(
+                                    reader.getAttributeValue(
+                                            null, "fullState"));
+                    }
+                    else if ("resource".equals(name))
+                    {
+                        resource
+                            = new Resource(
+                                    reader.getAttributeValue(null, "uri"));
+                        resources.add(resource);
+                    }
+                    else if ("instance".equals(name) && (resource != null))
+                    {
+                        resource.state
+                            = reader.getAttributeValue(null, "state");
+                        resource.reason
+                            = reader.getAttributeValue(null, "reason");
+
+                        String cid = reader.getAttributeValue(null, "cid");
+                        Part part = (cid == null) ? null : partsById.get(cid);
+
+                        if (part == null)
+                            continue;
+
+                        if (part.isOfType(MULTIPART_CONTENT_TYPE))
+                        {
+                            // a nested list
+                            resources.remove(resource);
+                            resources.addAll(
+                                    parseMultipart(
+                                            part.getParameter("boundary"),
+                                            part.body)
+                                        .getResources());
+                            resource = null;
+                        }
+                        else
+                        {
+                            resource.contentType = part.contentType;
+                            resource.content = part.getText();
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException xse)
+        {
+            throw new IOException("invalid RLMI document", xse);
+        }
+        catch (NumberFormatException nfe)
+        {
+            throw new IOException("invalid RLMI version", nfe);
+        }
+
+        if (uri == null)
+            throw new IOException("no list in the RLMI document");
+
+        return
+            new ResourceListNotification(uri, version, fullState, resources);
+    }
+
+    /**
+     * A resource of a resource list.
+     */
+    static class Resource
+    {
+        /**
+         * The URI of the resource.
+         */
+        private final String uri;
+
+        /**
+         * The state of the subscription to the resource.
+         */
+        private String state;
+
+        /**
+         * The reason of the termination of the subscription to the resource.
+         */
+        private String reason;
+
+        /**
+         * The content type of the notification of the resource.
+         */
+        private String contentType;
+
+        /**
+         * The notification of the resource.
+         */
+        private String content;
+
+        /**
+         * Initializes a new <tt>Resource</tt>.
+         *
+         * @param uri the URI of the resource
+         */
+        Resource(String uri)
+        {
+            this.uri = uri;
+        }
+
+        /**
+         * Returns the URI of the resource.
+         *
+         * @return the URI of the resource
+         */
+        String getUri()
+        {
+            return uri;
+        }
+
+        /**
+         * Returns the state of the subscription to the resource.
+         *
+         * @return "active", "pending", "terminated" or <tt>null</tt> if the
+         * list has no instance of the resource
+         */
+        String getState()
+        {
+            return state;
+        }
+
+        /**
+         * Returns the reason of the termination of the subscription to the
+         * resource.
+         *
+         * @return the reason of the termination of the subscription or
+         * <tt>null</tt>
+         */
+        String getReason()
+        {
+            return reason;
+        }
+
+        /**
+         * Returns the content type of the notification of the resource.
+         *
+         * @return the content type of the notification such as
+         * <tt>application/pidf+xml</tt> or <tt>null</tt> if the list carries
+         * no notification for the resource
+         */
+        String getContentType()
+        {
+            return contentType;
+        }
+
+        /**
+         * Returns the notification of the resource.
+         *
+         * @return the notification of the resource or <tt>null</tt> if the
+         * list carries none
+         */
+        String getContent()
+        {
+            return content;
+        }
+    }
+
+    /**
+     * A part of a multipart body.
+     */
+    private static class Part
+    {
+        /**
+         * The Content-ID of the part without its angle brackets.
+         */
+        final String contentId;
+
+        /**
+         * The lower case type and sub-type of the Content-Type of the part.
+         */
+        final String contentType;
+
+        /**
+         * The parameters of the Content-Type of the part, by lower case name.
+         */
+        private final Map<String, String> parameters
+            = new HashMap<String, String>();
+
+        /**
+         * The body of the part, decoded with the {@link #BINARY} charset.
+         */
+        final String body;
+
+        /**
+         * Initializes a new <tt>Part</tt>.
+         *
+         * @param part the headers and the body of the part, decoded with the
+         * {@link #BINARY} charset
+         */
+        Part(String part)
+        {
+            String contentId = null;
+            String contentType = null;
+            int index = 0;
+
+            while (index < part.length())
+            {
+                int next = skipLine(part, index);
+                String line = part.substring(index, next).trim();
+
+                index = next;
+                if (line.length() == 0)
+                    break;
+
+                int colon = line.indexOf(':');
+
+                if (colon < 0)
+                    continue;
+
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+
+                if ("Content-ID".equalsIgnoreCase(name))
+                {
+                    if (value.startsWith("<") && value.endsWith(">"))
+                        value = value.substring(1, value.length() - 1);
+                    contentId = value;
+                }
+                else if ("Content-Type".equalsIgnoreCase(name))
+                {
+                    String[] params = value.split(";");
+
+                    contentType = params[0].trim().toLowerCase();
+                    for (int i = 1; i < params.length; i++)
+                    {
+                        int eq = params[i].indexOf('=');
+
+                        if (eq < 0)
+                            continue;
+
+                        String paramValue = params[i].substring(eq + 1).trim();
+
+                        if ((paramValue.length() > 1)
+                                && paramValue.startsWith("\"")
+                                && paramValue.endsWith("\""))
+                        {
+                            paramValue
+                                = paramValue.substring(
+                                        1,
+                                        paramValue.length() - 1);
+                        }
+                        parameters.put(
+                                params[i].substring(0, eq).trim().toLowerCase(),
+                                paramValue);
+                    }
+                }
+            }
+
+            this.contentId = contentId;
+            this.contentType
+                = (contentType == null) ? DEFAULT_CONTENT_TYPE : contentType;
+            this.body = part.substring(index);
+        }
+
+        /**
+         * Returns whether the part has a specific content type.
+         *
+         * @param type the lower case type and sub-type
+         * @return <tt>true</tt> if the part is of type <tt>type</tt>
+         */
+        boolean isOfType(String type)
+        {
+            return type.equals(contentType);
+        }
+
+        /**
+         * Returns a parameter of the Content-Type of the part.
+         *
+         * @param name the lower case name of the parameter
+         * @return the value of the parameter or <tt>null</tt>
+         */
+        String getParameter(String name)
+        {
+            return parameters.get(name);
+        }
+
+        /**
+         * Returns the raw body of the part.
+         *
+         * @return the raw body of the part
+         */
+        byte[] getContent()
+        {
+            return body.getBytes(BINARY);
+        }
+
+        /**
+         * Returns the body of the part decoded with its charset.
+         *
+         * @return the body of the part as text
+         * @throws IOException if the charset of the part is not supported
+         */
+        String getText()
+            throws IOException
+        {
+            String charset = getParameter("charset");
+
+            try
+            {
+                return
+                    new String(
+                            getContent(),
+                            (charset == null)
+                                ? UTF_8
+                                : Charset.forName(charset));
+            }
+            catch (IllegalArgumentException iae)
+            {
+                throw new IOException("unsupported charset " + charset, iae);
+            }
+        }
+    }
+}
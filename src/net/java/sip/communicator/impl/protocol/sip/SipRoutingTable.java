@@ -0,0 +1,270 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+
+import javax.sip.message.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+/**
+ * The providers which out-of-dialog requests received by the shared SIP stack
+ * may be dispatched to, indexed by the user ID of their account. Finding the
+ * candidates for a Request-URI user costs the same whatever the number of
+ * accounts.
+ * <p>
+ * The table is copied on every change, which only happens when an account
+ * registers or unregisters, so that requests are dispatched without locking.
+ * Whether a provider accepts a request from the address it comes from is not
+ * indexed: the address of the registrar changes with every registration
+ * refresh, so it is checked for the few candidates only.
+ * </p>
+ */
+class SipRoutingTable
+{
+    /**
+     * The empty list of providers.
+     */
+    private static final Route[] NO_ROUTES = new Route[0];
+
+    /**
+     * The routes to all the providers, in the order they were added.
+     */
+    private volatile Route[] routes = NO_ROUTES;
+
+    /**
+     * The routes to the providers by the user ID of their account.
+     */
+    private volatile Map<String, Route[]> routesByUser
+        = Collections.emptyMap();
+
+    /**
+     * Adds a provider to the table.
+     *
+     * @param provider the provider to add
+     * @return <tt>false</tt> if the table already contains <tt>provider</tt>
+     */
+    synchronized boolean add(ProtocolProviderServiceSipImpl provider)
+    {
+        for (Route route : routes)
+        {
+            if (route.provider == provider)
+                return false;
+        }
+
+        Route[] newRoutes = Arrays.copyOf(routes, routes.length + 1);
+
+        newRoutes[routes.length] = new Route(provider);
+        update(newRoutes);
+        return true;
+    }
+
+    /**
+     * Removes a provider from the table.
+     *
+     * @param provider the provider to remove
+     * @return <tt>false</tt> if the table does not contain <tt>provider</tt>
+     */
+    synchronized boolean remove(ProtocolProviderServiceSipImpl provider)
+    {
+        for (int i = 0; i < routes.length; i++)
+        {
+            if (routes[i].provider == provider)
+            {
+                Route[] newRoutes = new Route[routes.length - 1];
+
+                System.arraycopy(routes, 0, newRoutes, 0, i);
+                System.arraycopy(
+                        routes, i + 1,
+                        newRoutes, i,
+                        newRoutes.length - i);
+                update(newRoutes);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the routes and rebuilds the index.
+     *
+     * @param newRoutes the new routes
+     */
+    private void update(Route[] newRoutes)
+    {
+        Map<String, Route[]> newRoutesByUser = new HashMap<String, Route[]>();
+
+        for (Route route : newRoutes)
+        {
+            Route[] userRoutes = newRoutesByUser.get(route.userID);
+
+            if (userRoutes == null)
+            {
+                userRoutes = new Route[] { route };
+            }
+            else
+            {
+                userRoutes = Arrays.copyOf(userRoutes, userRoutes.length + 1);
+                userRoutes[userRoutes.length - 1] = route;
+            }
+            newRoutesByUser.put(route.userID, userRoutes);
+        }
+
+        routesByUser = newRoutesByUser;
+        routes = newRoutes;
+    }
+
+    /**
+     * Returns the number of providers in the table.
+     *
+     * @return the number of providers in the table
+     */
+    int size()
+    {
+        return routes.length;
+    }
+
+    /**
+     * Returns all the providers in the table.
+     *
+     * @return a copy of the providers in the table
+     */
+    List<ProtocolProviderServiceSipImpl> getProviders()
+    {
+        Route[] routes = this.routes;
+        List<ProtocolProviderServiceSipImpl> providers
+            = new ArrayList<ProtocolProviderServiceSipImpl>(routes.length);
+
+        for (Route route : routes)
+            providers.add(route.provider);
+        return providers;
+    }
+
+    /**
+     * Returns the providers whose account has a user ID and which accept a
+     * request from the address it comes from.
+     *
+     * @param userID the user of the Request-URI
+     * @param request the request to dispatch
+     * @return the candidate providers for <tt>request</tt>
+     */
+    List<ProtocolProviderServiceSipImpl> getCandidates(
+            String userID,
+            Request request)
+    {
+        Route[] userRoutes = (userID == null) ? null : routesByUser.get(userID);
+
+        if (userRoutes == null)
+            return Collections.emptyList();
+
+        List<ProtocolProviderServiceSipImpl> candidates
+            = new ArrayList<ProtocolProviderServiceSipImpl>(userRoutes.length);
+
+        for (Route route : userRoutes)
+        {
+            if (route.accepts(request))
+                candidates.add(route.provider);
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns any provider which accepts a request from the address it comes
+     * from.
+     *
+     * @param request the request to dispatch
+     * @return a provider which accepts <tt>request</tt> or <tt>null</tt> if
+     * none does
+     */
+    ProtocolProviderServiceSipImpl getAnyCandidate(Request request)
+    {
+        for (Route route : routes)
+        {
+            if (route.accepts(request))
+                return route.provider;
+        }
+        return null;
+    }
+
+    /**
+     * A provider with the properties of its account used for dispatching,
+     * read once when the provider registers.
+     */
+    private static class Route
+    {
+        /**
+         * The provider.
+         */
+        final ProtocolProviderServiceSipImpl provider;
+
+        /**
+         * The user ID of the account of the provider.
+         */
+        final String userID;
+
+        /**
+         * Whether the provider accepts requests which do not come from its
+         * registrar.
+         */
+        private final boolean forceProxyBypass;
+
+        /**
+         * Initializes a new <tt>Route</tt>.
+         *
+         * @param provider the provider
+         */
+        Route(ProtocolProviderServiceSipImpl provider)
+        {
+            this.provider = provider;
+
+            AccountID accountID = provider.getAccountID();
+
+            userID = accountID.getUserID();
+            forceProxyBypass
+                = accountID.getAccountPropertyBoolean(
+                        ProtocolProviderFactory.FORCE_PROXY_BYPASS, false);
+        }
+
+        /**
+         * Returns whether the provider accepts a request from the address it
+         * comes from. Providers connected to a registrar only accept
+         * requests from it.
+         *
+         * @param request the request to dispatch
+         * @return <tt>true</tt> if the provider accepts <tt>request</tt>
+         */
+        boolean accepts(Request request)
+        {
+            if (forceProxyBypass)
+            {
+                // Proxy check is disabled all connections are
+                // ok (HA sipXecs, sipXcom, ...)
+                return true;
+            }
+
+            SipRegistrarConnection registrarConnection
+                = provider.getRegistrarConnection();
+
+            //RegistrarLess connections are ok
+            return registrarConnection == null
+                || registrarConnection.isRegistrarless()
+                || registrarConnection.isRequestFromSameConnection(request);
+        }
+    }
+}
@@ -23,6 +23,7 @@
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.net.ssl.*;
 
 import javax.sip.*;
@@ -87,12 +88,40 @@
 
     /**
      * The candidate recipients to choose from when dispatching messages
-     * received from one the JAIN-SIP <tt>SipProvider</tt>-s. for thread safety
-     * issues reasons, better iterate on a copy of that set using
-     * <tt>getSipListeners()</tt>.
+     * received from one the JAIN-SIP <tt>SipProvider</tt>-s, indexed by the
+     * user ID of their account. It is also the lock for starting and stopping
+     * to listen.
      */
-    private final Set<ProtocolProviderServiceSipImpl> listeners
-        = new HashSet<ProtocolProviderServiceSipImpl>();
+    private final SipRoutingTable listeners = new SipRoutingTable();
+
+    /**
+     * The property indicating the number of threads which process the
+     * received messages. With the default of <tt>0</tt> they are processed
+     * on the threads of the JAIN-SIP stack which received them.
+     */
+    private static final String DISPATCH_THREAD_COUNT_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.protocol.sip.DISPATCH_THREAD_COUNT";
+
+    /**
+     * The threads which process the received messages, or <tt>null</tt> if
+     * they are processed on the threads of the JAIN-SIP stack.
+     */
+    private ExecutorService dispatchExecutor;
+
+    /**
+     * Keeps the events of a dialog, and more generally of a Call-ID, in the
+     * order they were received when they are processed by the
+     * <tt>dispatchExecutor</tt>, or <tt>null</tt> if the received messages
+     * are processed on the threads of the JAIN-SIP stack.
+     */
+    private volatile KeyedSerialExecutor dispatcher;
+
+    /**
+     * The latencies of the processing of the received messages, by SIP
+     * method of the requests and of the requests the responses answer.
+     */
+    private final ConcurrentMap<String, DispatchLatency> dispatchLatencies
+        = new ConcurrentHashMap<String, DispatchLatency>();
 
     /**
      * The property indicating the preferred UDP and TCP
@@ -232,12 +261,9 @@ public void removeSipListener(ProtocolProviderServiceSipImpl listener)
      *
      * @return a copy of the <tt>listeners</tt> set.
      */
-    private Set<ProtocolProviderServiceSipImpl> getSipListeners()
+    private List<ProtocolProviderServiceSipImpl> getSipListeners()
     {
-        synchronized(this.listeners)
-        {
-            return new HashSet<ProtocolProviderServiceSipImpl>(this.listeners);
-        }
+        return this.listeners.getProviders();
     }
 
     /**
@@ -285,6 +311,7 @@ private void startListening()
             this.createProvider(this.getPreferredSecurePort(),
                             bindRetriesValue, true);
             this.stack.start();
+            startDispatching();
             if (logger.isTraceEnabled())
                 logger.trace("started listening");
         }
@@ -492,6 +519,73 @@ private void stopListening()
         {
             logger.fatal("Failed to stop listening", ex);
         }
+        finally
+        {
+            stopDispatching();
+        }
+    }
+
+    /**
+     * Starts the threads which process the received messages if the user
+     * preferences ask for them.
+     */
+    private void startDispatching()
+    {
+        int threadCount
+            = SipActivator.getConfigurationService().getInt(
+                    DISPATCH_THREAD_COUNT_PROPERTY_NAME, 0);
+
+        if (threadCount <= 0)
+            return;
+
+        dispatchExecutor
+            = Executors.newFixedThreadPool(
+                    threadCount,
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t
+                                = new Thread(
+                                        r,
+                                        SipStackSharing.class.getSimpleName());
+
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        dispatcher = new KeyedSerialExecutor(dispatchExecutor);
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    "Processing received messages on " + threadCount
+                        + " thread(s)");
+        }
+    }
+
+    /**
+     * Stops the threads which process the received messages, if any, once
+     * they have processed the messages already received, and logs the
+     * latencies of the processing.
+     */
+    private void stopDispatching()
+    {
+        dispatcher = null;
+        if (dispatchExecutor != null)
+        {
+            dispatchExecutor.shutdown();
+            dispatchExecutor = null;
+        }
+
+        if (logger.isInfoEnabled())
+        {
+            for (Map.Entry<String, DispatchLatency> e
+                    : dispatchLatencies.entrySet())
+            {
+                logger.info(e.getKey() + ": " + e.getValue());
+            }
+        }
+        dispatchLatencies.clear();
     }
 
     /**
@@ -587,7 +681,28 @@ private int getBindRetriesValue()
      * @param event the event received for a
      * <tt>SipProvider</tt>.
      */
-    public void processDialogTerminated(DialogTerminatedEvent event)
+    public void processDialogTerminated(final DialogTerminatedEvent event)
+    {
+        dispatch(
+                event.getDialog().getCallId().getCallId(),
+                null,
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        dispatchDialogTerminated(event);
+                    }
+                });
+    }
+
+    /**
+     * Dispatches a <tt>DialogTerminatedEvent</tt> to the
+     * <tt>ProtocolProviderServiceSipImpl</tt> which the dialog is marked
+     * with.
+     *
+     * @param event the event received for a <tt>SipProvider</tt>.
+     */
+    private void dispatchDialogTerminated(DialogTerminatedEvent event)
     {
         try
         {
@@ -695,6 +810,49 @@ public void processRequest(RequestEvent event)
                 }
             }
 
+            final RequestEvent requestEvent = event;
+
+            dispatch(
+                    getCallID(request),
+                    request.getMethod(),
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            dispatchRequest(requestEvent);
+                        }
+                    });
+        }
+        catch(Throwable exc)
+        {
+
+            /*
+             * Any exception thrown within our code should be caught here so
+             * that we could log it rather than interrupt stack activity with
+             * it.
+             */
+            this.logApplicationException(DialogTerminatedEvent.class, exc);
+
+            // Unfortunately, death can hardly be ignored.
+            if (exc instanceof ThreadDeath)
+                throw (ThreadDeath) exc;
+        }
+    }
+
+    /**
+     * Dispatches a <tt>RequestEvent</tt> whose server transaction has been
+     * created to the <tt>ProtocolProviderServiceSipImpl</tt> which the
+     * transaction or the dialog is marked with, or to the one found for the
+     * request.
+     *
+     * @param event the event received for a <tt>SipProvider</tt>.
+     */
+    private void dispatchRequest(RequestEvent event)
+    {
+        try
+        {
+            Request request = event.getRequest();
+
             ProtocolProviderServiceSipImpl service
                 = getServiceData(event.getServerTransaction());
             if (service != null)
@@ -755,7 +913,31 @@ public void processRequest(RequestEvent event)
      *
      * @param event the event received for a <tt>SipProvider</tt>.
      */
-    public void processResponse(ResponseEvent event)
+    public void processResponse(final ResponseEvent event)
+    {
+        Response response = event.getResponse();
+        CSeqHeader cseq = (CSeqHeader) response.getHeader(CSeqHeader.NAME);
+
+        dispatch(
+                getCallID(response),
+                (cseq == null) ? null : cseq.getMethod() + " response",
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        dispatchResponse(event);
+                    }
+                });
+    }
+
+    /**
+     * Dispatches a <tt>ResponseEvent</tt> to the
+     * <tt>ProtocolProviderServiceSipImpl</tt> which the client transaction is
+     * marked with.
+     *
+     * @param event the event received for a <tt>SipProvider</tt>.
+     */
+    private void dispatchResponse(ResponseEvent event)
     {
         try
         {
@@ -812,7 +994,31 @@ public void processResponse(ResponseEvent event)
      *
      * @param event the event received for a <tt>SipProvider</tt>.
      */
-    public void processTimeout(TimeoutEvent event)
+    public void processTimeout(final TimeoutEvent event)
+    {
+        dispatch(
+                getCallID(
+                    event.isServerTransaction()
+                        ? event.getServerTransaction()
+                        : event.getClientTransaction()),
+                null,
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        dispatchTimeout(event);
+                    }
+                });
+    }
+
+    /**
+     * Dispatches a <tt>TimeoutEvent</tt> to the
+     * <tt>ProtocolProviderServiceSipImpl</tt> which the transaction is marked
+     * with.
+     *
+     * @param event the event received for a <tt>SipProvider</tt>.
+     */
+    private void dispatchTimeout(TimeoutEvent event)
     {
         try
         {
@@ -855,7 +1061,33 @@ public void processTimeout(TimeoutEvent event)
      * @param event the event received for a
      * <tt>SipProvider</tt>.
      */
-    public void processTransactionTerminated(TransactionTerminatedEvent event)
+    public void processTransactionTerminated(
+            final TransactionTerminatedEvent event)
+    {
+        dispatch(
+                getCallID(
+                    event.isServerTransaction()
+                        ? event.getServerTransaction()
+                        : event.getClientTransaction()),
+                null,
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        dispatchTransactionTerminated(event);
+                    }
+                });
+    }
+
+    /**
+     * Dispatches a <tt>TransactionTerminatedEvent</tt> to the
+     * <tt>ProtocolProviderServiceSipImpl</tt> which the transaction is marked
+     * with.
+     *
+     * @param event the event received for a <tt>SipProvider</tt>.
+     */
+    private void dispatchTransactionTerminated(
+            TransactionTerminatedEvent event)
     {
         try
         {
@@ -908,16 +1140,13 @@ private ProtocolProviderServiceSipImpl findTargetFor(Request request)
             return null;
         }
 
-        List<ProtocolProviderServiceSipImpl> currentListenersCopy
-            = new ArrayList<ProtocolProviderServiceSipImpl>(
-                                this.getSipListeners());
-
-        // Let's first narrow down candidate choice by comparing
-        // addresses and ports (no point in delivering to a provider with a
-        // non matching IP address  since they will reject it anyway).
-        filterByAddress(currentListenersCopy, request);
+        // Only the providers which accept a request from the address it
+        // comes from are candidates (no point in delivering to a provider
+        // with a non matching IP address since they will reject it anyway).
+        ProtocolProviderServiceSipImpl anyCandidate
+            = this.listeners.getAnyCandidate(request);
 
-        if(currentListenersCopy.size() == 0)
+        if(anyCandidate == null)
         {
             logger.error("no listeners");
             return null;
@@ -929,22 +1158,16 @@ private ProtocolProviderServiceSipImpl findTargetFor(Request request)
         {
             String requestUser = ((SipURI) requestURI).getUser();
 
-            List<ProtocolProviderServiceSipImpl> candidates =
-                new ArrayList<ProtocolProviderServiceSipImpl>();
-
             // check if the Request-URI username is
             // one of ours usernames
-            for(ProtocolProviderServiceSipImpl listener : currentListenersCopy)
+            List<ProtocolProviderServiceSipImpl> candidates
+                = this.listeners.getCandidates(requestUser, request);
+
+            if (logger.isTraceEnabled())
             {
-                String ourUserID = listener.getAccountID().getUserID();
-                //logger.trace(ourUserID + " *** " + requestUser);
-                if(ourUserID.equals(requestUser))
-                {
-                    if (logger.isTraceEnabled())
-                        logger.trace("suitable candidate found: "
-                                + listener.getAccountID());
-                    candidates.add(listener);
-                }
+                for(ProtocolProviderServiceSipImpl candidate : candidates)
+                    logger.trace("suitable candidate found: "
+                            + candidate.getAccountID());
             }
 
             // the perfect match
@@ -1026,8 +1249,7 @@ private ProtocolProviderServiceSipImpl findTargetFor(Request request)
             }
 
             // fallback on any account
-            ProtocolProviderServiceSipImpl target =
-                currentListenersCopy.iterator().next();
+            ProtocolProviderServiceSipImpl target = anyCandidate;
             if (logger.isDebugEnabled())
                 logger.debug("Will randomly dispatch to \"" + target
                         .getAccountID()
@@ -1044,49 +1266,6 @@ private ProtocolProviderServiceSipImpl findTargetFor(Request request)
         return null;
     }
 
-    /**
-     * Removes from the specified list of candidates providers connected to a
-     * registrar that does not match the IP address that we are receiving a
-     * request from.
-     *
-     * @param candidates the list of providers we've like to filter.
-     * @param request the request that we are currently dispatching
-     */
-    private void filterByAddress(
-                    List<ProtocolProviderServiceSipImpl> candidates,
-                    Request                              request)
-    {
-        Iterator<ProtocolProviderServiceSipImpl> iterPP =
-            candidates.iterator();
-        while (iterPP.hasNext())
-        {
-            ProtocolProviderServiceSipImpl candidate = iterPP.next();
-            boolean forceProxyBypass
-                = candidate.getAccountID()
-                    .getAccountPropertyBoolean(
-                        ProtocolProviderFactory.FORCE_PROXY_BYPASS, false);
-            if(forceProxyBypass)
-            {
-                // Proxy check is disabled all connections are
-                // ok (HA sipXecs, sipXcom, ...)
-                continue;
-            } 
-            if(candidate.getRegistrarConnection() == null)
-            {
-                //RegistrarLess connections are ok
-                continue;
-            }
-
-            if (   !candidate.getRegistrarConnection().isRegistrarless()
-                && !candidate.getRegistrarConnection()
-                        .isRequestFromSameConnection(request))
-            {
-                iterPP.remove();
-            }
-        }
-
-    }
-
     /**
      * Retrieves and returns that ProtocolProviderService that this transaction
      * belongs to, or <tt>null</tt> if we couldn't associate it with a provider
@@ -1126,6 +1305,104 @@ private void filterByAddress(
         return service;
     }
 
+    /**
+     * Processes an event received from the JAIN-SIP stack, either on the
+     * current thread or, if the user preferences ask for it, on the
+     * <tt>dispatchExecutor</tt> after the events previously received with the
+     * same Call-ID.
+     *
+     * @param callID the Call-ID of the event or <tt>null</tt> if it has none
+     * in which case it is processed on the current thread
+     * @param method the name the latency of the processing is recorded under
+     * or <tt>null</tt> not to record it
+     * @param task processes the event
+     */
+    private void dispatch(String callID, String method, final Runnable task)
+    {
+        final DispatchLatency latency;
+
+        if (method == null)
+        {
+            latency = null;
+        }
+        else
+        {
+            DispatchLatency newLatency = new DispatchLatency();
+            DispatchLatency oldLatency
+                = dispatchLatencies.putIfAbsent(method, newLatency);
+
+            latency = (oldLatency == null) ? newLatency : oldLatency;
+        }
+
+        final long received = System.nanoTime();
+        Runnable timedTask
+            = (latency == null)
+                ? task
+                : new Runnable()
+                {
+                    public void run()
+                    {
+                        long started = System.nanoTime();
+
+                        try
+                        {
+                            task.run();
+                        }
+                        finally
+                        {
+                            latency.record(
+                                    received,
+                                    started,
+                                    System.nanoTime());
+                        }
+                    }
+                };
+        KeyedSerialExecutor dispatcher = this.dispatcher;
+
+        if ((dispatcher != null) && (callID != null))
+        {
+            try
+            {
+                dispatcher.execute(callID, timedTask);
+                return;
+            }
+            catch (RejectedExecutionException ree)
+            {
+                // we are stopping, process the event right away
+            }
+        }
+        timedTask.run();
+    }
+
+    /**
+     * Returns the Call-ID of a message.
+     *
+     * @param message the message
+     * @return the Call-ID of <tt>message</tt> or <tt>null</tt> if it has none
+     */
+    private static String getCallID(javax.sip.message.Message message)
+    {
+        CallIdHeader callIdHeader
+            = (CallIdHeader) message.getHeader(CallIdHeader.NAME);
+
+        return (callIdHeader == null) ? null : callIdHeader.getCallId();
+    }
+
+    /**
+     * Returns the Call-ID of the request of a transaction.
+     *
+     * @param transaction the transaction
+     * @return the Call-ID of the request of <tt>transaction</tt> or
+     * <tt>null</tt> if there is no transaction or it has no Call-ID
+     */
+    private static String getCallID(Transaction transaction)
+    {
+        Request request
+            = (transaction == null) ? null : transaction.getRequest();
+
+        return (request == null) ? null : getCallID(request);
+    }
+
     /**
      * Logs exceptions that have occurred in the application while processing
      * events originating from the stack.
@@ -1317,7 +1594,7 @@ public void configurationChanged(ChangeEvent event)
 
         if(event.getType() == ChangeEvent.ADDRESS_DOWN)
         {
-            for(final ProtocolProviderServiceSipImpl pp : listeners)
+            for(final ProtocolProviderServiceSipImpl pp : getSipListeners())
             {
                 if(pp.getRegistrarConnection().getTransport() != null
                    && (pp.getRegistrarConnection().getTransport()
@@ -1439,4 +1716,40 @@ public void run()
                     protocolProvider.getRegistrarConnection().getTransport());
         }
     }
+
+    /**
+     * The latencies of the processing of the messages with a SIP method.
+     */
+    private static class DispatchLatency
+    {
+        /**
+         * The time the messages waited for the processing of the messages
+         * received before them with the same Call-ID.
+         */
+        private final LatencyHistogram queued = new LatencyHistogram();
+
+        /**
+         * The time the processing of the messages took.
+         */
+        private final LatencyHistogram processed = new LatencyHistogram();
+
+        /**
+         * Records the latency of the processing of a message.
+         *
+         * @param received the time the message was received in nanoseconds
+         * @param started the time its processing started in nanoseconds
+         * @param completed the time its processing completed in nanoseconds
+         */
+        void record(long received, long started, long completed)
+        {
+            queued.record(started - received);
+            processed.record(completed - started);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "queued " + queued + ", processed " + processed;
+        }
+    }
 }
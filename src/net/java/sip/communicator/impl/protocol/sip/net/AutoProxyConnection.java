@@ -379,6 +379,26 @@ else if(TCP.equalsIgnoreCase(naptrRecords[naptrIndex][1]))
         return false;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see net.java.sip.communicator.impl.protocol.sip.net.ProxyConnection#
+     * getHostAddresses()
+     */
+    @Override
+    protected InetSocketAddress[] getHostAddresses()
+    {
+        switch(state)
+        {
+            case NaptrSrvHostIPs:
+            case SrvHostIPs:
+            case Hosts:
+                return socketAddresses;
+            default:
+                return null;
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
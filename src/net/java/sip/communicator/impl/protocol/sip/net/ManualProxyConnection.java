@@ -107,6 +107,18 @@ public boolean getNextAddressFromDns()
         return true;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see net.java.sip.communicator.impl.protocol.sip.net.ProxyConnection#
+     * getHostAddresses()
+     */
+    @Override
+    protected InetSocketAddress[] getHostAddresses()
+    {
+        return lookups;
+    }
+
     /*
      * (non-Javadoc)
      *
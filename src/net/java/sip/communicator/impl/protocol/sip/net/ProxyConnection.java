@@ -19,11 +19,15 @@
 
 import static net.java.sip.communicator.service.protocol.ProtocolProviderFactory.PROXY_AUTO_CONFIG;
 
+import java.io.*;
 import java.net.*;
 import java.util.*;
 
+import javax.sip.*;
+
 import net.java.sip.communicator.impl.protocol.sip.*;
 import net.java.sip.communicator.service.dns.*;
+import net.java.sip.communicator.util.*;
 
 /**
  * Abstract class for the determining the address for the SIP proxy.
@@ -32,6 +36,15 @@
  */
 public abstract class ProxyConnection
 {
+    private final static Logger logger
+        = Logger.getLogger(ProxyConnection.class);
+
+    /**
+     * The timeout in milliseconds of each connection attempt of
+     * {@link #raceAddresses()}.
+     */
+    private static final int CONNECT_TIMEOUT = 10000;
+
     private List<String> returnedAddresses = new LinkedList<String>();
 
     protected String transport;
@@ -78,7 +91,19 @@ public final String getOutboundProxyString()
         if(socketAddress == null)
             return null;
 
-        InetAddress proxyAddress = socketAddress.getAddress();
+        return getProxyString(socketAddress);
+    }
+
+    /**
+     * Formats an address with the current transport like
+     * {@link #getOutboundProxyString()}.
+     *
+     * @param address the address to format
+     * @return the address in the form <tt>1.2.3.4:5060/UDP</tt>
+     */
+    private String getProxyString(InetSocketAddress address)
+    {
+        InetAddress proxyAddress = address.getAddress();
         StringBuilder proxyStringBuffer
             = new StringBuilder(proxyAddress.getHostAddress());
 
@@ -89,7 +114,7 @@ public final String getOutboundProxyString()
         }
 
         proxyStringBuffer.append(':');
-        proxyStringBuffer.append(socketAddress.getPort());
+        proxyStringBuffer.append(address.getPort());
         proxyStringBuffer.append('/');
         proxyStringBuffer.append(transport);
 
@@ -142,6 +167,81 @@ public final boolean getNextAddress() throws DnssecException
         return result;
     }
 
+    /**
+     * Races the connections to the addresses of the host of the current
+     * address as described in RFC 8305 when the transport is TCP or TLS. The
+     * current address gets a head start, the addresses of both families which
+     * were not returned yet are then tried in turn and the first one to
+     * connect becomes the current address. Its connection is handed over to
+     * the stack, which then uses it for the first request instead of
+     * connecting itself. The current address is kept if none connects, so
+     * that the failover continues as without racing.
+     */
+    public final void raceAddresses()
+    {
+        if(socketAddress == null
+            || !(ListeningPoint.TCP.equalsIgnoreCase(transport)
+                || ListeningPoint.TLS.equalsIgnoreCase(transport)))
+            return;
+
+        InetSocketAddress[] hostAddresses = getHostAddresses();
+
+        if(hostAddresses == null)
+            return;
+
+        List<InetSocketAddress> candidates
+            = new ArrayList<InetSocketAddress>(hostAddresses.length);
+
+        candidates.add(socketAddress);
+        for(InetSocketAddress address : hostAddresses)
+        {
+            if(!address.equals(socketAddress)
+                && !returnedAddresses.contains(getProxyString(address)))
+                candidates.add(address);
+        }
+        if(candidates.size() < 2)
+            return;
+
+        Socket socket;
+
+        try
+        {
+            socket = AsyncDnsResolver.getInstance().connect(
+                candidates.toArray(new InetSocketAddress[candidates.size()]),
+                CONNECT_TIMEOUT);
+        }
+        catch(IOException e)
+        {
+            if(logger.isDebugEnabled())
+                logger.debug("No address of " + candidates + " connected", e);
+            return;
+        }
+
+        for(InetSocketAddress candidate : candidates)
+        {
+            if(candidate.equals(socket.getRemoteSocketAddress()))
+            {
+                // the winner is not returned again by the failover
+                socketAddress = candidate;
+                returnedAddresses.add(getOutboundProxyString());
+                break;
+            }
+        }
+        SslNetworkLayer.offerConnectedSocket(socket);
+    }
+
+    /**
+     * Returns the addresses of the host the current address was resolved
+     * from, so that {@link #raceAddresses()} can try them at once.
+     *
+     * @return the addresses of the host of the current address or
+     * <tt>null</tt> if they are not known
+     */
+    protected InetSocketAddress[] getHostAddresses()
+    {
+        return null;
+    }
+
     /**
      * Implementations must use this method to get the next address, but do not
      * have to care about duplicate addresses.
@@ -59,6 +59,26 @@
      private static final String SIP_DSCP_PROPERTY =
          "net.java.sip.communicator.impl.protocol.SIP_DSCP";
 
+    /**
+     * The time in milliseconds a socket handed over by
+     * {@link #offerConnectedSocket(Socket)} waits for the stack to use it
+     * before it is closed.
+     */
+    private static final long CONNECTED_SOCKET_TIMEOUT = 30000;
+
+    /**
+     * The connected sockets handed over by
+     * {@link #offerConnectedSocket(Socket)}, by remote address.
+     */
+    private static final Map<InetSocketAddress, Socket> connectedSockets
+        = new HashMap<InetSocketAddress, Socket>();
+
+    /**
+     * The timer which closes the connected sockets the stack did not use.
+     * Guarded by {@link #connectedSockets}.
+     */
+    private static Timer connectedSocketsTimer;
+
     /**
      * The service we use to interact with user.
      */
@@ -112,11 +132,109 @@ public ServerSocket createServerSocket(int port, int backlog,
     public Socket createSocket(InetAddress address, int port)
         throws IOException
     {
-        Socket sock = new Socket(address, port);
+        Socket sock = takeConnectedSocket(address, port, null);
+
+        if (sock == null)
+            sock = new Socket(address, port);
         setTrafficClass(sock);
         return sock;
     }
 
+    /**
+     * Hands a connected socket over to the stack: the next stream or SSL
+     * socket it creates to the same remote address, without binding it to a
+     * specific local address, is this one. The socket is closed if the stack
+     * does not use it within {@link #CONNECTED_SOCKET_TIMEOUT}.
+     *
+     * @param socket the connected socket
+     */
+    static void offerConnectedSocket(final Socket socket)
+    {
+        final InetSocketAddress remoteAddress
+            = (InetSocketAddress) socket.getRemoteSocketAddress();
+        Socket replaced;
+
+        synchronized (connectedSockets)
+        {
+            replaced = connectedSockets.put(remoteAddress, socket);
+            if (connectedSocketsTimer == null)
+            {
+                connectedSocketsTimer
+                    = new Timer(SslNetworkLayer.class.getSimpleName(), true);
+            }
+            connectedSocketsTimer.schedule(
+                new TimerTask()
+                {
+                    @Override
+                    public void run()
+                    {
+                        synchronized (connectedSockets)
+                        {
+                            if (connectedSockets.get(remoteAddress) != socket)
+                                return;
+                            connectedSockets.remove(remoteAddress);
+                        }
+                        closeSocket(socket);
+                    }
+                },
+                CONNECTED_SOCKET_TIMEOUT);
+        }
+        if (replaced != null)
+            closeSocket(replaced);
+    }
+
+    /**
+     * Takes the socket handed over by {@link #offerConnectedSocket(Socket)}
+     * for a remote address.
+     *
+     * @param address the address to connect to
+     * @param port the port to connect to
+     * @param myAddress the local address the socket is to be bound to or
+     * <tt>null</tt> for any
+     * @return the connected socket or <tt>null</tt> if there is none for
+     * <tt>address</tt> and <tt>myAddress</tt>
+     */
+    private static Socket takeConnectedSocket(
+            InetAddress address, int port,
+            InetAddress myAddress)
+    {
+        InetSocketAddress remoteAddress = new InetSocketAddress(address, port);
+        Socket sock;
+
+        synchronized (connectedSockets)
+        {
+            sock = connectedSockets.remove(remoteAddress);
+        }
+        if (sock != null
+            && myAddress != null
+            && !myAddress.isAnyLocalAddress()
+            && !myAddress.equals(sock.getLocalAddress()))
+        {
+            closeSocket(sock);
+            sock = null;
+        }
+        if (sock != null && logger.isDebugEnabled())
+            logger.debug("Using the connected socket " + sock);
+        return sock;
+    }
+
+    /**
+     * Closes a socket, ignoring failures.
+     *
+     * @param sock the socket to close
+     */
+    private static void closeSocket(Socket sock)
+    {
+        try
+        {
+            sock.close();
+        }
+        catch (IOException e)
+        {
+            logger.debug("Failed to close socket " + sock, e);
+        }
+    }
+
     /**
      * Constructs a datagram socket and binds it to any available port on the
      * local host machine. Comparable to "new java.net.DatagramSocket();"
@@ -270,10 +388,7 @@ private SSLSocketFactory getSSLSocketFactory(InetAddress address)
     public SSLSocket createSSLSocket(InetAddress address, int port)
         throws IOException
     {
-        SSLSocket sock = (SSLSocket) getSSLSocketFactory(address).createSocket(
-            address, port);
-        setTrafficClass(sock);
-        return sock;
+        return createSSLSocket(address, port, null);
     }
 
     /**
@@ -290,8 +405,22 @@ public SSLSocket createSSLSocket(InetAddress address, int port,
             InetAddress myAddress)
         throws IOException
     {
-        SSLSocket sock = (SSLSocket) getSSLSocketFactory(address).createSocket(
-            address, port, myAddress, 0);
+        SSLSocketFactory factory = getSSLSocketFactory(address);
+        Socket connected = takeConnectedSocket(address, port, myAddress);
+        SSLSocket sock;
+
+        if (connected != null)
+        {
+            sock = (SSLSocket) factory.createSocket(
+                connected, address.getHostAddress(), port, true);
+        }
+        else if (myAddress != null)
+        {
+            sock = (SSLSocket) factory.createSocket(
+                address, port, myAddress, 0);
+        }
+        else
+            sock = (SSLSocket) factory.createSocket(address, port);
         setTrafficClass(sock);
         return sock;
     }
@@ -311,12 +440,15 @@ public Socket createSocket(InetAddress address, int port,
             InetAddress myAddress)
         throws IOException
     {
-        Socket sock = null;
+        Socket sock = takeConnectedSocket(address, port, myAddress);
 
-        if (myAddress != null)
-            sock = new Socket(address, port, myAddress, 0);
-        else
-            sock = new Socket(address, port);
+        if (sock == null)
+        {
+            if (myAddress != null)
+                sock = new Socket(address, port, myAddress, 0);
+            else
+                sock = new Socket(address, port);
+        }
 
         setTrafficClass(sock);
 
@@ -343,7 +475,17 @@ public Socket createSocket(InetAddress address, int port,
                     InetAddress myAddress, int myPort)
         throws IOException
     {
-        Socket sock = null;
+        // a connected socket is bound to an ephemeral port
+        Socket sock
+            = (myPort == 0)
+                ? takeConnectedSocket(address, port, myAddress)
+                : null;
+
+        if (sock != null)
+        {
+            setTrafficClass(sock);
+            return sock;
+        }
 
         if (myAddress != null)
         {
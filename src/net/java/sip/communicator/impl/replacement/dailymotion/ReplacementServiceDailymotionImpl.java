@@ -44,6 +44,14 @@
         "(https?\\:\\/\\/(www\\.)*?dailymotion\\.com"
         + "\\/video\\/([a-zA-Z0-9_\\-]+))([?#]([a-zA-Z0-9_\\-]+))*";
 
+    /**
+     * The compiled regex used to extract the video id from the link.
+     */
+    private static final Pattern ID_PATTERN =
+        Pattern.compile(
+            "(.+\\/video\\/([a-zA-Z0-9_\\-]+))([?#]([a-zA-Z0-9_\\-]+))*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     /**
      * Configuration label shown in the config form.
      */
@@ -70,11 +78,7 @@ public ReplacementServiceDailymotionImpl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile(
-                "(.+\\/video\\/([a-zA-Z0-9_\\-]+))([?#]([a-zA-Z0-9_\\-]+))*",
-                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-        Matcher m = p.matcher(sourceString);
+        Matcher m = ID_PATTERN.matcher(sourceString);
 
         String thumbUrl = sourceString;
 
@@ -48,7 +48,7 @@
     /**
      * The source implementation reference.
      */
-    private static ReplacementService directImageSource = null;
+    private static ReplacementServiceDirectImageImpl directImageSource = null;
 
     /**
      * The service used for accessing configuration properties.
@@ -97,6 +97,8 @@ public void start(BundleContext context) throws Exception
     public void stop(BundleContext context) throws Exception
     {
         directImageSourceServReg.unregister();
+        directImageSource.stop();
+        directImageSource = null;
         confService = null;
         bundleContext = null;
         logger.info("Direct Image Link source implementation [STOPPED].");
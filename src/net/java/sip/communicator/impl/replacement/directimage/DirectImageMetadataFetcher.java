@@ -0,0 +1,138 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.replacement.directimage;
+
+import java.net.*;
+
+import net.java.sip.communicator.service.replacement.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * Fetches content type and content length of a direct image link in a single
+ * probe. For HTTP(S) links a <tt>HEAD</tt> request is used, falling back to
+ * <tt>GET</tt> for servers that do not support <tt>HEAD</tt>. The body of the
+ * resource is never downloaded.
+ */
+public class DirectImageMetadataFetcher
+    implements LinkMetadataResolver.Fetcher
+{
+    /**
+     * Connect and read time-out in milliseconds.
+     */
+    private static final int TIMEOUT = 5000;
+
+    /**
+     * Resolve content type and length of the link.
+     *
+     * @param sourceString the link
+     * @return returns the metadata
+     * @throws Exception in case of failure to probe the resource
+     */
+    @Override
+    public LinkMetadata fetch(final String sourceString) throws Exception
+    {
+        final URL url = new URL(sourceString);
+        final String protocol = url.getProtocol();
+        if (protocol.equals("http") || protocol.equals("https"))
+        {
+            HttpURLConnection connection = probe(url, "HEAD");
+            final int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_BAD_METHOD
+                || code == HttpURLConnection.HTTP_NOT_IMPLEMENTED)
+            {
+                connection.disconnect();
+                connection = probe(url, "GET");
+            }
+            try
+            {
+                if (connection.getResponseCode() >= 400)
+                {
+                    return LinkMetadata.unresolved(sourceString);
+                }
+                return new LinkMetadata(sourceString,
+                    connection.getContentType(),
+                    connection.getContentLength(), null,
+                    System.currentTimeMillis());
+            }
+            finally
+            {
+                connection.disconnect();
+            }
+        }
+        else if (protocol.equals("ftp"))
+        {
+            final FTPUtils ftp = new FTPUtils(sourceString);
+            try
+            {
+                return new LinkMetadata(sourceString,
+                    getContentTypeFromExtension(sourceString), ftp.getSize(),
+                    null, System.currentTimeMillis());
+            }
+            finally
+            {
+                ftp.disconnect();
+            }
+        }
+        return LinkMetadata.unresolved(sourceString);
+    }
+
+    /**
+     * Open a connection for the provided request method and read the response
+     * headers.
+     *
+     * @param url the URL
+     * @param method the request method
+     * @return returns the connection
+     * @throws Exception in case of failure to connect
+     */
+    private static HttpURLConnection probe(final URL url, final String method)
+        throws Exception
+    {
+        final HttpURLConnection connection =
+            (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        connection.setRequestMethod(method);
+        connection.connect();
+        return connection;
+    }
+
+    /**
+     * Derive the content type from the extension of the link, for protocols
+     * that do not provide a content type.
+     *
+     * @param sourceString the link
+     * @return returns the content type or <tt>null</tt> if unknown
+     */
+    static String getContentTypeFromExtension(final String sourceString)
+    {
+        if (sourceString.endsWith(".png"))
+        {
+            return "image/png";
+        }
+        else if (sourceString.endsWith(".jpg"))
+        {
+            return "image/jpeg";
+        }
+        else if (sourceString.endsWith(".gif"))
+        {
+            return "image/gif";
+        }
+        return null;
+    }
+}
@@ -17,9 +17,10 @@
  */
 package net.java.sip.communicator.impl.replacement.directimage;
 
-import java.net.*;
+import java.io.*;
 
 import org.jitsi.service.configuration.*;
+import org.jitsi.service.fileaccess.*;
 
 import net.java.sip.communicator.service.replacement.*;
 import net.java.sip.communicator.service.replacement.directimage.*;
@@ -69,15 +70,71 @@
     private static final String MAX_IMG_SIZE = 
         "net.java.sip.communicator.impl.replacement.directimage.MAX_IMG_SIZE";
 
+    /**
+     * Location of the persisted link metadata cache, relative to the cache
+     * directory.
+     */
+    private static final String CACHE_FILE =
+        "replacement" + File.separator + "directimage.properties";
+
+    /**
+     * Maximum time in milliseconds to wait for the resolution of a link.
+     */
+    private static final long RESOLVE_TIMEOUT = 10000L;
+
+    /**
+     * Resolver that probes and caches the content type and size of links.
+     */
+    private final LinkMetadataResolver resolver;
+
     /**
      * Constructor for <tt>ReplacementServiceDirectImageImpl</tt>.
      */
     public ReplacementServiceDirectImageImpl()
     {
         setMaxImgSizeFromConf();
+        this.resolver = new LinkMetadataResolver(SOURCE_NAME,
+            new DirectImageMetadataFetcher(),
+            LinkMetadataResolver.DEFAULT_THREADS,
+            LinkMetadataResolver.DEFAULT_QUEUE_CAPACITY,
+            LinkMetadataResolver.DEFAULT_CACHE_SIZE,
+            LinkMetadataResolver.DEFAULT_TTL, getCacheFile());
         logger.trace("Creating a Direct Image Link Source.");
     }
 
+    /**
+     * Stops the link metadata resolver and persists its cache.
+     */
+    void stop()
+    {
+        this.resolver.stop();
+    }
+
+    /**
+     * Returns the file in which link metadata is persisted.
+     *
+     * @return the cache file or <tt>null</tt> if it is not available, in which
+     * case link metadata is cached in memory only.
+     */
+    private static File getCacheFile()
+    {
+        try
+        {
+            FileAccessService fileAccessService
+                = UtilActivator.getFileAccessService();
+            if (fileAccessService != null)
+            {
+                return fileAccessService.getPrivatePersistentFile(CACHE_FILE,
+                    FileCategory.CACHE);
+            }
+        }
+        catch (Exception e)
+        {
+            logger.debug("Failed to get link metadata cache file", e);
+        }
+        return null;
+    }
+
     /**
     * Gets the max allowed size value in bytes from Configuration service and 
     * sets the value to <tt>imgMaxSize</tt> if succeed. If the configuration 
@@ -144,50 +201,31 @@ public String getPattern()
         return URL_PATTERN;
     }
 
-    @Override
     /**
-     * Returns the size of the image in bytes.
+     * Returns the size of the image in bytes. The size is resolved once per
+     * link and cached.
+     *
      * @param sourceString the image link.
      * @return the file size in bytes of the image link provided; -1 if the size
      * isn't available or exceeds the max allowed image size.
      */
+    @Override
     public int getImageSize(String sourceString)
     {
-        int length = -1;
-        try
-        {
-            
-            URL url = new URL(sourceString);
-            String protocol = url.getProtocol();
-            if (protocol.equals("http") || protocol.equals("https"))
-            {
-                HttpURLConnection connection =
-                    (HttpURLConnection)url.openConnection();
-                length = connection.getContentLength();
-                connection.disconnect();
-            }
-            else if (protocol.equals("ftp"))
-            {
-                FTPUtils ftp = new FTPUtils(sourceString);
-                length = ftp.getSize();
-                ftp.disconnect();
-            }
-            
-            if (length > imgMaxSize)
-            {
-                length = -1;
-            }
-        }
-        catch (Exception e)
+        long length
+            = resolver.resolve(sourceString, RESOLVE_TIMEOUT)
+                .getContentLength();
+        if (length > imgMaxSize || length > Integer.MAX_VALUE)
         {
-            logger.debug("Failed to get the length of the image in bytes", e);
+            length = -1;
         }
-        return length;
+        return (int) length;
     }
 
     /**
      * Returns true if the content type of the resource
-     * pointed by sourceString is an image.
+     * pointed by sourceString is an image. The content type is resolved once
+     * per link and cached.
      * @param sourceString the original image link.
      * @return true if the content type of the resource
      * pointed by sourceString is an image.
@@ -195,33 +233,6 @@ else if (protocol.equals("ftp"))
     @Override
     public boolean isDirectImage(String sourceString)
     {
-        boolean isDirectImage = false;
-        try
-        {
-            URL url = new URL(sourceString);
-            String protocol = url.getProtocol();
-            if (protocol.equals("http") || protocol.equals("https"))
-            {
-                HttpURLConnection connection =
-                    (HttpURLConnection)url.openConnection();
-                isDirectImage = connection.getContentType().contains("image");
-                connection.disconnect();
-            }
-            else if (protocol.equals("ftp"))
-            {
-                if (sourceString.endsWith(".png")
-                    || sourceString.endsWith(".jpg")
-                    || sourceString.endsWith(".gif"))
-                {
-                    isDirectImage = true;
-                }
-            }
-        }
-        catch (Exception e)
-        {
-            logger.debug("Failed to retrieve content type information for"
-                + sourceString, e);
-        }
-        return isDirectImage;
+        return resolver.resolve(sourceString, RESOLVE_TIMEOUT).isImage();
     }
 }
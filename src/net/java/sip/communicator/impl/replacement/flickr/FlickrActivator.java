@@ -46,7 +46,7 @@
     /**
      * The source implementation reference.
      */
-    private static ReplacementService flickrSource = null;
+    private static ReplacementServiceFlickrImpl flickrSource = null;
 
     /**
      * Starts the Flickr replacement source bundle
@@ -78,6 +78,8 @@ public void start(BundleContext context) throws Exception
     public void stop(BundleContext context) throws Exception
     {
         flickrServReg.unregister();
+        flickrSource.stop();
+        flickrSource = null;
         logger.info("Flickr source implementation [STOPPED].");
     }
 }
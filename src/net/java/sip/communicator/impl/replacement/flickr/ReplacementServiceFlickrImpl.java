@@ -24,6 +24,7 @@
 import net.java.sip.communicator.service.replacement.*;
 import net.java.sip.communicator.util.*;
 
+import org.jitsi.service.fileaccess.*;
 import org.json.simple.*;
 
 /**
@@ -48,6 +49,14 @@
         "(https?\\:\\/\\/(www\\.)*?flickr\\.com"
         + "\\/photos\\/[0-9a-zA-Z_\\-\\@]+\\/([0-9]+)(\\/[^\"\\<]*)*)";
 
+    /**
+     * The compiled regex used to extract the photo id from the link.
+     */
+    private static final Pattern ID_PATTERN =
+        Pattern.compile(
+            "\\/photos\\/[0-9a-zA-Z_\\-\\@]+\\/([0-9]+)(\\/[^\"\\<]*)*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     /**
      * API Key required to access the Flickr api.
      */
@@ -63,14 +72,72 @@
      */
     public static final String SOURCE_NAME = "FLICKR";
 
+    /**
+     * Location of the persisted thumbnail cache, relative to the cache
+     * directory.
+     */
+    private static final String CACHE_FILE =
+        "replacement" + File.separator + "flickr.properties";
+
+    /**
+     * Maximum time in milliseconds to wait for the resolution of a thumbnail.
+     */
+    private static final long RESOLVE_TIMEOUT = 10000L;
+
+    /**
+     * Resolver that queries and caches thumbnail URLs. Entries are keyed by
+     * the API URL of the photo, such that different links to the same photo
+     * share an entry.
+     */
+    private final LinkMetadataResolver resolver;
+
     /**
      * Constructor for <tt>ReplacementServiceFlickrImpl</tt>.
      */
     public ReplacementServiceFlickrImpl()
     {
+        this.resolver = new LinkMetadataResolver(SOURCE_NAME,
+            new ThumbnailFetcher(),
+            LinkMetadataResolver.DEFAULT_THREADS,
+            LinkMetadataResolver.DEFAULT_QUEUE_CAPACITY,
+            LinkMetadataResolver.DEFAULT_CACHE_SIZE,
+            LinkMetadataResolver.DEFAULT_TTL, getCacheFile());
         logger.trace("Creating a Flickr Source.");
     }
 
+    /**
+     * Stops the thumbnail resolver and persists its cache.
+     */
+    void stop()
+    {
+        this.resolver.stop();
+    }
+
+    /**
+     * Returns the file in which thumbnail URLs are persisted.
+     *
+     * @return the cache file or <tt>null</tt> if it is not available, in which
+     *         case thumbnail URLs are cached in memory only.
+     */
+    private static File getCacheFile()
+    {
+        try
+        {
+            FileAccessService fileAccessService
+                = UtilActivator.getFileAccessService();
+            if (fileAccessService != null)
+            {
+                return fileAccessService.getPrivatePersistentFile(CACHE_FILE,
+                    FileCategory.CACHE);
+            }
+        }
+        catch (Exception e)
+        {
+            logger.debug("Failed to get thumbnail cache file", e);
+        }
+        return null;
+    }
+
     /**
      * Replaces the Flickr image links with their corresponding thumbnails.
      *
@@ -80,59 +147,23 @@ public ReplacementServiceFlickrImpl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile(
-                "\\/photos\\/[0-9a-zA-Z_\\-\\@]+\\/([0-9]+)(\\/[^\"\\<]*)*",
-                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-        Matcher m = p.matcher(sourceString);
+        Matcher m = ID_PATTERN.matcher(sourceString);
         String thumbUrl = sourceString;
 
         while (m.find())
         {
-            try
+            // API URL
+            String url =
+                "http://api.flickr.com/services/rest/"
+                + "?method=flickr.photos.getInfo&api_key="
+                    + API_KEY + "&photo_id=" + m.group(1)
+                    + "&format=json&nojsoncallback=1";
+
+            String thumbnail
+                = resolver.resolve(url, RESOLVE_TIMEOUT).getThumbnailUrl();
+            if (thumbnail != null)
             {
-                // API URL
-                String url =
-                    "http://api.flickr.com/services/rest/"
-                    + "?method=flickr.photos.getInfo&api_key="
-                        + API_KEY + "&photo_id=" + m.group(1)
-                        + "&format=json&nojsoncallback=1";
-
-                URL flickrURL = new URL(url);
-                URLConnection conn = flickrURL.openConnection();
-
-                BufferedReader in =
-                    new BufferedReader(new InputStreamReader(conn
-                        .getInputStream()));
-
-                String inputLine, holder = "";
-
-                while ((inputLine = in.readLine()) != null)
-                    holder = inputLine;
-                in.close();
-
-                JSONObject wrapper = (JSONObject)JSONValue
-                    .parseWithException(holder);
-
-                if (wrapper.get("stat").equals("ok"))
-                {
-                    JSONObject result = (JSONObject)wrapper.get("photo");
-                    if (!(result.isEmpty()))
-                    {
-                        String farmID = String.valueOf(result.get("farm"));
-                        String serverID = (String)result.get("server");
-                        String secret = (String)result.get("secret");
-
-                        thumbUrl =
-                            "http://farm" + farmID + ".static.flickr.com/"
-                                + serverID + "/" + m.group(1) + "_" + secret
-                                + "_t.jpg";
-                    }
-                }
-            }
-            catch(Throwable e)
-            {
-                logger.error("Error parsing", e);
+                thumbUrl = thumbnail;
             }
         }
 
@@ -158,4 +189,66 @@ public String getPattern()
     {
         return FLICKR_PATTERN;
     }
+
+    /**
+     * Queries the Flickr API for the thumbnail URL of a photo.
+     */
+    private static class ThumbnailFetcher
+        implements LinkMetadataResolver.Fetcher
+    {
+        /**
+         * Queries the thumbnail URL of a photo.
+         *
+         * @param url the API URL of the photo
+         * @return the metadata containing the thumbnail URL
+         * @throws Exception in case of failure to query the API
+         */
+        @Override
+        public LinkMetadata fetch(String url) throws Exception
+        {
+            URL flickrURL = new URL(url);
+            URLConnection conn = flickrURL.openConnection();
+
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(conn
+                    .getInputStream()));
+
+            String inputLine, holder = "";
+
+            try
+            {
+                while ((inputLine = in.readLine()) != null)
+                    holder = inputLine;
+            }
+            finally
+            {
+                in.close();
+            }
+
+            JSONObject wrapper = (JSONObject)JSONValue
+                .parseWithException(holder);
+
+            String thumbUrl = null;
+            if (wrapper.get("stat").equals("ok"))
+            {
+                JSONObject result = (JSONObject)wrapper.get("photo");
+                if (!(result.isEmpty()))
+                {
+                    String photoID = url.substring(
+                        url.indexOf("&photo_id=") + "&photo_id=".length(),
+                        url.indexOf("&format="));
+                    String farmID = String.valueOf(result.get("farm"));
+                    String serverID = (String)result.get("server");
+                    String secret = (String)result.get("secret");
+
+                    thumbUrl =
+                        "http://farm" + farmID + ".static.flickr.com/"
+                            + serverID + "/" + photoID + "_" + secret
+                            + "_t.jpg";
+                }
+            }
+            return new LinkMetadata(url, thumbUrl == null ? null
+                : "image/jpeg", -1, thumbUrl, System.currentTimeMillis());
+        }
+    }
 }
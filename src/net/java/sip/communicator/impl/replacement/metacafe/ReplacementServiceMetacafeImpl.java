@@ -44,6 +44,14 @@
         "(https?\\:\\/\\/(www\\.)*?metacafe\\.com"
         + "\\/watch\\/([a-zA-Z0-9_\\-]+))(\\/[a-zA-Z0-9_\\-\\/]+)*";
 
+    /**
+     * The compiled regex used to extract the video id from the link.
+     */
+    private static final Pattern ID_PATTERN =
+        Pattern.compile(
+            "\\/watch\\/([a-zA-Z0-9_\\-]+)(\\/[a-zA-Z0-9_\\-\\/]+)*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     /**
      * Configuration label shown in the config form.
      */
@@ -71,11 +79,7 @@ public ReplacementServiceMetacafeImpl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile(
-                "\\/watch\\/([a-zA-Z0-9_\\-]+)(\\/[a-zA-Z0-9_\\-\\/]+)*",
-                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-        Matcher m = p.matcher(sourceString);
+        Matcher m = ID_PATTERN.matcher(sourceString);
 
         String thumbUrl = sourceString;
 
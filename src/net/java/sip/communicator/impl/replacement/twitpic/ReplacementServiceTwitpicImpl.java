@@ -44,6 +44,14 @@
     public static final String TWITPIC_PATTERN =
         "http:\\/\\/(?:www\\.)?twitpic\\.com\\/([^\\/<]*)";
 
+    /**
+     * The compiled regex used to extract the picture id from the link.
+     */
+    private static final Pattern ID_PATTERN =
+        Pattern.compile(
+            "\\.com\\/([^\\/<]*)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     /**
      * Configuration label shown in the config form.
      */
@@ -71,11 +79,7 @@ public ReplacementServiceTwitpicImpl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile("\\.com\\/([^\\/<]*)", Pattern.CASE_INSENSITIVE
-                | Pattern.DOTALL);
-
-        Matcher m = p.matcher(sourceString);
+        Matcher m = ID_PATTERN.matcher(sourceString);
         String thumbUrl = sourceString;
 
         while (m.find())
@@ -46,6 +46,14 @@
         "(https?\\:\\/\\/(www\\.)*?vbox7\\.com"
         + "\\/play\\:([a-zA-Z0-9_\\-]+))([?&]\\w+=[\\w-]*)*";
 
+    /**
+     * The compiled regex used to extract the video id from the link.
+     */
+    private static final Pattern ID_PATTERN =
+        Pattern.compile(
+            "\\/play\\:([a-zA-Z0-9_\\-]+)([?&]\\w+=[\\w-]*)*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     /**
      * Configuration label shown in the config form.
      */
@@ -72,10 +80,7 @@ public ReplacementServiceVbox7Impl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile("\\/play\\:([a-zA-Z0-9_\\-]+)([?&]\\w+=[\\w-]*)*",
-                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-        Matcher m = p.matcher(sourceString);
+        Matcher m = ID_PATTERN.matcher(sourceString);
         String thumbUrl = sourceString;
         String id = null;
 
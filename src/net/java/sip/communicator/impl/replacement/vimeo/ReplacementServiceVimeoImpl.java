@@ -48,6 +48,14 @@
         "(https?\\:\\/\\/(www\\.)*?vimeo\\.com"
         + "\\/([a-zA-Z0-9_\\-]+))";
 
+    /**
+     * The compiled regex used to extract the video id from the link.
+     */
+    private static final Pattern ID_PATTERN =
+        Pattern.compile(
+            ".+\\.com\\/([a-zA-Z0-9_\\-]+)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     /**
      * Configuration label shown in the config form.
      */
@@ -74,10 +82,7 @@ public ReplacementServiceVimeoImpl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile(".+\\.com\\/([a-zA-Z0-9_\\-]+)",
-                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-        Matcher m = p.matcher(sourceString);
+        Matcher m = ID_PATTERN.matcher(sourceString);
 
         String thumbUrl = sourceString;
 
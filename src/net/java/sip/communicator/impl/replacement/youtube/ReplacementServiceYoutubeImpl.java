@@ -44,6 +44,15 @@
         "(https?\\:\\/\\/(www\\.)*?youtube\\.com"
         + "\\/watch\\?v=([a-zA-Z0-9_\\-]+))([?&]\\w+=[\\w-]+)*";
 
+    /**
+     * The compiled regex used to extract the video id from the link.
+     */
+    private static final Pattern ID_PATTERN =
+        Pattern.compile("https?:\\/\\/(?:[0-9A-Z-]+\\.)?(?:youtu\\"
+            + ".be\\/|youtube\\.com\\S*[^\\w\\-\\s])([\\w\\-]{11})(?=[^\\"
+            + "w\\-]|$)(?![?=&+%\\w]*(?:['\"][^<>]*>|<\\/a>))[?=&+%\\w]*",
+            Pattern.CASE_INSENSITIVE);
+
     /**
      * Configuration label shown in the config form.
      */
@@ -70,12 +79,7 @@ public ReplacementServiceYoutubeImpl()
      */
     public String getReplacement(String sourceString)
     {
-        final String pattern = "https?:\\/\\/(?:[0-9A-Z-]+\\.)?(?:youtu\\"
-            + ".be\\/|youtube\\.com\\S*[^\\w\\-\\s])([\\w\\-]{11})(?=[^\\"
-            + "w\\-]|$)(?![?=&+%\\w]*(?:['\"][^<>]*>|<\\/a>))[?=&+%\\w]*";
-        final Pattern compiledPattern
-            = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
-        Matcher matcher = compiledPattern.matcher(sourceString);
+        Matcher matcher = ID_PATTERN.matcher(sourceString);
         String thumbUrl = sourceString;
         
         while (matcher.find())
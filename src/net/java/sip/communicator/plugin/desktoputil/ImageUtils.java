@@ -21,6 +21,8 @@
 import java.awt.image.*;
 import java.io.*;
 import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 import javax.imageio.*;
 import javax.swing.*;
@@ -59,6 +61,39 @@
         ROUNDED_RECTANGLE;
     }
 
+    /**
+     * The estimate of the memory in bytes the icons scaled from image bytes
+     * may take in {@link #scaledIconCache}, enough for the avatars of a few
+     * thousand contacts at the sizes of the contact list and the chat
+     * windows.
+     */
+    private static final long SCALED_ICON_CACHE_BYTE_BUDGET = 8 * 1024 * 1024;
+
+    /**
+     * The icons scaled from image bytes (e.g. avatars) shared by all the
+     * renderers which paint them.
+     */
+    private static final ScaledImageCache scaledIconCache
+        = new ScaledImageCache(
+                new ScaledImageCache.Loader()
+                {
+                    public ImageIcon load(
+                            byte[] imageBytes,
+                            Object shape,
+                            int width,
+                            int height)
+                    {
+                        return
+                            loadScaledIcon(
+                                    imageBytes,
+                                    (Shape) shape,
+                                    width,
+                                    height);
+                    }
+                },
+                SCALED_ICON_CACHE_BYTE_BUDGET,
+                createImageDecoderExecutor());
+
     /**
      * Returns a scaled image fitting within the given bounds while keeping the
      * aspect ratio.
@@ -365,7 +400,60 @@ public static ImageIcon getScaledEllipticalIcon(  byte[] imageBytes,
     }
 
     /**
-     * Creates a cropped, scaled image.
+     * Creates a rounded corner scaled image without blocking the caller if
+     * it has not been scaled before: the image is then scaled in the
+     * background and the given component is repainted once it has been.
+     *
+     * @param imageBytes The bytes of the image to be scaled.
+     * @param width The maximum width of the scaled image.
+     * @param height The maximum height of the scaled image.
+     * @param repaintWhenLoaded The component to repaint once the image has
+     * been scaled or <tt>null</tt>.
+     *
+     * @return The rounded corner scaled image or <tt>null</tt> if it is being
+     * scaled or could not be created.
+     */
+    public static ImageIcon getScaledRoundedIcon(
+            byte[] imageBytes,
+            int width,
+            int height,
+            final Component repaintWhenLoaded)
+    {
+        if (imageBytes == null || !(imageBytes.length > 0))
+            return null;
+
+        return
+            scaledIconCache.getLater(
+                    imageBytes,
+                    Shape.ROUNDED_RECTANGLE,
+                    width,
+                    height,
+                    (repaintWhenLoaded == null)
+                        ? null
+                        : new Runnable()
+                        {
+                            public void run()
+                            {
+                                repaintWhenLoaded.repaint();
+                            }
+                        });
+    }
+
+    /**
+     * Gets the statistics of the cache of the images scaled from image bytes
+     * (i.e. the number of hits, misses and evictions, its size and the times
+     * it took to scale the images).
+     *
+     * @return the statistics of the cache by name
+     */
+    public static Map<String, String> getScaledIconCacheStatistics()
+    {
+        return scaledIconCache.getStatistics();
+    }
+
+    /**
+     * Creates a cropped, scaled image or gets it from the cache if it has
+     * been created before.
      *
      * @param imageBytes The bytes of the image to be scaled.
      * @param shape The shape of the scaled image.
@@ -382,6 +470,24 @@ private static ImageIcon getScaledIcon(  byte[] imageBytes,
         if (imageBytes == null || !(imageBytes.length > 0))
             return null;
 
+        return scaledIconCache.get(imageBytes, shape, width, height);
+    }
+
+    /**
+     * Creates a cropped, scaled image.
+     *
+     * @param imageBytes The bytes of the image to be scaled.
+     * @param shape The shape of the scaled image.
+     * @param width The maximum width of the scaled image.
+     * @param height The maximum height of the scaled image.
+     *
+     * @return The cropped, scaled image.
+     */
+    private static ImageIcon loadScaledIcon(  byte[] imageBytes,
+                                              Shape shape,
+                                              int width,
+                                              int height)
+    {
         ImageIcon imageIcon = null;
 
         try
@@ -428,6 +534,35 @@ private static ImageIcon getScaledIcon(  byte[] imageBytes,
         return imageIcon;
     }
 
+    /**
+     * Creates the <tt>Executor</tt> which scales the images in the
+     * background: a single daemon thread which terminates when it is idle.
+     *
+     * @return the <tt>Executor</tt> which scales the images in the background
+     */
+    private static Executor createImageDecoderExecutor()
+    {
+        ThreadPoolExecutor executor
+            = new ThreadPoolExecutor(
+                    1, 1,
+                    30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t = new Thread(r, "ImageDecoder");
+
+                            t.setDaemon(true);
+                            t.setPriority(Thread.MIN_PRIORITY);
+                            return t;
+                        }
+                    });
+
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * Returns the buffered image corresponding to the given url image path.
      *
@@ -0,0 +1,492 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.desktoputil;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.swing.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Caches the icons decoded and scaled from image bytes (e.g. avatars) by the
+ * content of the bytes, the shape and the size of the icons, so that the
+ * renderers which paint the same avatars over and over do not decode and
+ * scale them each time.
+ * <p>
+ * The cache is bounded by an estimate of the memory taken by its icons and
+ * the image bytes they were loaded from and evicts the least recently used
+ * icons beyond it. The icons may also be loaded in the background, the
+ * renderers painting without them until they are.
+ * </p>
+ * <p>
+ * The cached icons are shared and must not be modified.
+ * </p>
+ */
+class ScaledImageCache
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>ScaledImageCache</tt> class for
+     * logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ScaledImageCache.class);
+
+    /**
+     * Loads the icons which are not in the cache.
+     */
+    interface Loader
+    {
+        /**
+         * Decodes and scales an icon.
+         *
+         * @param imageBytes the bytes of the image
+         * @param shape the shape of the icon
+         * @param width the maximum width of the icon
+         * @param height the maximum height of the icon
+         * @return the icon or <tt>null</tt> if the image could not be
+         * decoded
+         */
+        ImageIcon load(byte[] imageBytes, Object shape, int width, int height);
+    }
+
+    /**
+     * The value cached for the images which could not be decoded, so that
+     * they are not decoded again.
+     */
+    private static final ImageIcon NO_ICON = new ImageIcon();
+
+    /**
+     * The <tt>Loader</tt> of the icons.
+     */
+    private final Loader loader;
+
+    /**
+     * The estimate of the memory in bytes the cache may take.
+     */
+    private final long byteBudget;
+
+    /**
+     * The <tt>Executor</tt> which loads the icons in the background.
+     */
+    private final Executor executor;
+
+    /**
+     * The icons in the order they were last used.
+     */
+    private final LinkedHashMap<Key, Entry> entries
+        = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    /**
+     * The hash codes of the contents of the image bytes looked up, by the
+     * arrays themselves, so that the renderers which look the same array up
+     * over and over do not hash it each time.
+     */
+    private final Map<byte[], Integer> contentHashCodes
+        = new WeakHashMap<byte[], Integer>();
+
+    /**
+     * The keys of the icons being loaded in the background.
+     */
+    private final Set<Key> pending = new HashSet<Key>();
+
+    /**
+     * The estimate of the memory in bytes the cache takes.
+     */
+    private long usedBytes = 0;
+
+    /**
+     * The number of icons found in the cache.
+     */
+    private long hitCount = 0;
+
+    /**
+     * The number of icons not found in the cache.
+     */
+    private long missCount = 0;
+
+    /**
+     * The number of icons evicted from the cache.
+     */
+    private long evictionCount = 0;
+
+    /**
+     * The times it took to decode and scale the icons.
+     */
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+
+    /**
+     * Creates a new <tt>ScaledImageCache</tt>.
+     *
+     * @param loader the <tt>Loader</tt> of the icons
+     * @param byteBudget the estimate of the memory in bytes the cache may
+     * take
+     * @param executor the <tt>Executor</tt> which is to load the icons in the
+     * background
+     */
+    ScaledImageCache(Loader loader, long byteBudget, Executor executor)
+    {
+        this.loader = loader;
+        this.byteBudget = byteBudget;
+        this.executor = executor;
+    }
+
+    /**
+     * Gets an icon, loading it if it is not in the cache.
+     *
+     * @param imageBytes the bytes of the image
+     * @param shape the shape of the icon
+     * @param width the maximum width of the icon
+     * @param height the maximum height of the icon
+     * @return the icon or <tt>null</tt> if the image could not be decoded
+     */
+    ImageIcon get(byte[] imageBytes, Object shape, int width, int height)
+    {
+        Key key = createKey(imageBytes, shape, width, height);
+        ImageIcon icon = lookUp(key);
+
+        if (icon == null)
+            icon = load(key);
+        return (icon == NO_ICON) ? null : icon;
+    }
+
+    /**
+     * Gets an icon if it is in the cache or else starts loading it in the
+     * background.
+     *
+     * @param imageBytes the bytes of the image
+     * @param shape the shape of the icon
+     * @param width the maximum width of the icon
+     * @param height the maximum height of the icon
+     * @param loaded the <tt>Runnable</tt> to run on the background thread
+     * once the icon has been loaded or <tt>null</tt>
+     * @return the icon or <tt>null</tt> if it is being loaded or the image
+     * could not be decoded
+     */
+    ImageIcon getLater(
+            byte[] imageBytes,
+            Object shape,
+            int width,
+            int height,
+            final Runnable loaded)
+    {
+        final Key key = createKey(imageBytes, shape, width, height);
+        ImageIcon icon = lookUp(key);
+
+        if (icon != null)
+            return (icon == NO_ICON) ? null : icon;
+
+        synchronized (this)
+        {
+            if (!pending.add(key))
+                return null;
+        }
+
+        try
+        {
+            executor.execute(
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                load(key);
+                            }
+                            finally
+                            {
+                                synchronized (ScaledImageCache.this)
+                                {
+                                    pending.remove(key);
+                                }
+                            }
+                            if (loaded != null)
+                                loaded.run();
+                        }
+                    });
+        }
+        catch (RejectedExecutionException ree)
+        {
+            synchronized (this)
+            {
+                pending.remove(key);
+            }
+            icon = load(key);
+            return (icon == NO_ICON) ? null : icon;
+        }
+        return null;
+    }
+
+    /**
+     * Creates the key of an icon.
+     *
+     * @param imageBytes the bytes of the image
+     * @param shape the shape of the icon
+     * @param width the maximum width of the icon
+     * @param height the maximum height of the icon
+     * @return the key of the icon
+     */
+    private Key createKey(
+            byte[] imageBytes,
+            Object shape,
+            int width,
+            int height)
+    {
+        Integer contentHashCode;
+
+        synchronized (contentHashCodes)
+        {
+            contentHashCode = contentHashCodes.get(imageBytes);
+        }
+        if (contentHashCode == null)
+        {
+            contentHashCode = Arrays.hashCode(imageBytes);
+            synchronized (contentHashCodes)
+            {
+                contentHashCodes.put(imageBytes, contentHashCode);
+            }
+        }
+        return new Key(imageBytes, contentHashCode, shape, width, height);
+    }
+
+    /**
+     * Gets an icon from the cache.
+     *
+     * @param key the key of the icon
+     * @return the icon, {@link #NO_ICON} or <tt>null</tt> if it is not in the
+     * cache
+     */
+    private synchronized ImageIcon lookUp(Key key)
+    {
+        Entry entry = entries.get(key);
+
+        if (entry == null)
+        {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.icon;
+    }
+
+    /**
+     * Loads an icon and puts it in the cache.
+     *
+     * @param key the key of the icon
+     * @return the icon or {@link #NO_ICON} if the image could not be decoded
+     */
+    private ImageIcon load(Key key)
+    {
+        long start = System.nanoTime();
+        ImageIcon icon = null;
+
+        try
+        {
+            icon = loader.load(key.imageBytes, key.shape, key.width, key.height);
+        }
+        catch (RuntimeException re)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Could not load image.", re);
+        }
+        loadLatency.record(System.nanoTime() - start);
+
+        if (icon == null)
+            icon = NO_ICON;
+        put(key, icon);
+        return icon;
+    }
+
+    /**
+     * Puts an icon in the cache and evicts the least recently used ones if
+     * the cache is over its budget.
+     *
+     * @param key the key of the icon
+     * @param icon the icon
+     */
+    private synchronized void put(Key key, ImageIcon icon)
+    {
+        long size
+            = key.imageBytes.length
+                + 4L * Math.max(0, icon.getIconWidth())
+                    * Math.max(0, icon.getIconHeight());
+
+        if (size > byteBudget)
+            return;
+
+        Entry previous = entries.put(key, new Entry(icon, size));
+
+        if (previous != null)
+            usedBytes -= previous.size;
+        usedBytes += size;
+
+        Iterator<Entry> iter = entries.values().iterator();
+
+        while ((usedBytes > byteBudget) && iter.hasNext())
+        {
+            usedBytes -= iter.next().size;
+            iter.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes all the icons from the cache.
+     */
+    synchronized void clear()
+    {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Gets the number of icons found in the cache, the number of icons not
+     * found, the number of icons evicted, the size of the cache and the times
+     * it took to load the icons.
+     *
+     * @return the statistics of the cache by name
+     */
+    synchronized Map<String, String> getStatistics()
+    {
+        Map<String, String> statistics = new LinkedHashMap<String, String>();
+
+        statistics.put("hits", Long.toString(hitCount));
+        statistics.put("misses", Long.toString(missCount));
+        statistics.put("evictions", Long.toString(evictionCount));
+        statistics.put("entries", Integer.toString(entries.size()));
+        statistics.put("bytes", usedBytes + "/" + byteBudget);
+        statistics.put("load", loadLatency.toString());
+        return statistics;
+    }
+
+    /**
+     * The key of a cached icon: the content of the image bytes, the shape
+     * and the size of the icon.
+     */
+    private static class Key
+    {
+        /**
+         * The bytes of the image.
+         */
+        final byte[] imageBytes;
+
+        /**
+         * The shape of the icon.
+         */
+        final Object shape;
+
+        /**
+         * The maximum width of the icon.
+         */
+        final int width;
+
+        /**
+         * The maximum height of the icon.
+         */
+        final int height;
+
+        /**
+         * The hash code of the key.
+         */
+        private final int hashCode;
+
+        /**
+         * Creates a new <tt>Key</tt>.
+         *
+         * @param imageBytes the bytes of the image
+         * @param contentHashCode the hash code of the content of
+         * <tt>imageBytes</tt>
+         * @param shape the shape of the icon
+         * @param width the maximum width of the icon
+         * @param height the maximum height of the icon
+         */
+        Key(
+                byte[] imageBytes,
+                int contentHashCode,
+                Object shape,
+                int width,
+                int height)
+        {
+            this.imageBytes = imageBytes;
+            this.shape = shape;
+            this.width = width;
+            this.height = height;
+
+            int hashCode = contentHashCode;
+
+            hashCode = 31 * hashCode + shape.hashCode();
+            hashCode = 31 * hashCode + width;
+            hashCode = 31 * hashCode + height;
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+
+            Key key = (Key) obj;
+
+            return
+                (hashCode == key.hashCode)
+                    && (width == key.width)
+                    && (height == key.height)
+                    && shape.equals(key.shape)
+                    && ((imageBytes == key.imageBytes)
+                        || Arrays.equals(imageBytes, key.imageBytes));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+
+    /**
+     * A cached icon and the estimate of the memory it takes.
+     */
+    private static class Entry
+    {
+        /**
+         * The icon.
+         */
+        final ImageIcon icon;
+
+        /**
+         * The estimate of the memory in bytes the icon takes.
+         */
+        final long size;
+
+        /**
+         * Creates a new <tt>Entry</tt>.
+         *
+         * @param icon the icon
+         * @param size the estimate of the memory in bytes the icon takes
+         */
+        Entry(ImageIcon icon, long size)
+        {
+            this.icon = icon;
+            this.size = size;
+        }
+    }
+}
@@ -19,6 +19,8 @@
 
 import net.java.sip.communicator.impl.protocol.irc.*;
 
+import com.ircclouds.irc.api.*;
+
 /**
  * Implementation of the /join command. Join a channel from the message input
  * line.
@@ -85,7 +87,16 @@ public void execute(final String source, final String line)
             throw new IllegalArgumentException(
                 "Invalid chat room name specified.");
         }
-        this.connection.getClient().joinChannel(channel, password);
+        final IRCApi client = this.connection.getClient();
+        this.connection.getSendQueue().send(SendQueue.Priority.CONTROL,
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    client.joinChannel(channel, password);
+                }
+            });
     }
 
     /**
@@ -19,6 +19,8 @@
 
 import net.java.sip.communicator.impl.protocol.irc.*;
 
+import com.ircclouds.irc.api.*;
+
 /**
  * Implementation of the /me command. Send a message describing an act by local
  * user.
@@ -73,7 +75,16 @@ public void execute(final String source, final String line)
             throw new IllegalArgumentException(
                 "Invalid /me command: message cannot be empty.");
         }
-        this.connection.getClient().act(source, message);
+        final IRCApi client = this.connection.getClient();
+        this.connection.getSendQueue().send(SendQueue.Priority.USER,
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    client.act(source, message);
+                }
+            });
     }
 
     /**
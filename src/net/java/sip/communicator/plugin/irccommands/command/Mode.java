@@ -19,6 +19,8 @@
 
 import net.java.sip.communicator.impl.protocol.irc.*;
 
+import com.ircclouds.irc.api.*;
+
 /**
  * Implementation of the /mode command. Manually manage modes.
  *
@@ -75,7 +77,17 @@ public void execute(final String source, final String line)
             throw new IllegalArgumentException(
                 "The mode command needs mode parameters to function.");
         }
-        this.connection.getClient().changeMode(source + " " + rawModeString);
+        final String mode = source + " " + rawModeString;
+        final IRCApi client = this.connection.getClient();
+        this.connection.getSendQueue().send(SendQueue.Priority.CONTROL,
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    client.changeMode(mode);
+                }
+            });
     }
 
     /**
@@ -19,6 +19,8 @@
 
 import net.java.sip.communicator.impl.protocol.irc.*;
 
+import com.ircclouds.irc.api.*;
+
 /**
  * Implementation of the /msg command. Send a targeted private message.
  *
@@ -89,7 +91,16 @@ public void execute(final String source, final String line)
                 + "format: Zero-length message is not allowed. Message was not "
                 + "sent.");
         }
-        this.connection.getClient().message(target, message);
+        final IRCApi client = this.connection.getClient();
+        this.connection.getSendQueue().send(SendQueue.Priority.USER,
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    client.message(target, message);
+                }
+            });
     }
 
     /**
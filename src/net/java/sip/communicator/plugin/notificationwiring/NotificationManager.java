@@ -30,6 +30,7 @@
 import net.java.sip.communicator.util.*;
 
 import org.apache.commons.lang3.*;
+import org.jitsi.service.configuration.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.service.neomedia.event.*;
 import org.jitsi.service.neomedia.recording.*;
@@ -138,6 +139,18 @@
      */
     public static final String SECURITY_MESSAGE = "SecurityMessage";
 
+    /**
+     * The prefix of the configuration properties which override the default
+     * throttling of the notifications of an event type:
+     * <tt>&lt;prefix&gt;.&lt;eventType&gt;.COALESCE_WINDOW</tt> in
+     * milliseconds, <tt>0</tt> to not coalesce, and
+     * <tt>&lt;prefix&gt;.&lt;eventType&gt;.&lt;actionType&gt;.MAX_ACTIONS</tt>
+     * per <tt>&lt;prefix&gt;.&lt;eventType&gt;.&lt;actionType&gt;.INTERVAL</tt>
+     * in milliseconds, a negative maximum to not rate limit the action.
+     */
+    private static final String THROTTLE_PROPERTY_PREFIX
+        = "net.java.sip.communicator.plugin.notificationwiring.THROTTLE";
+
     /**
      * Fires a chat message notification for the given event type through the
      * <tt>NotificationService</tt>.
@@ -1634,6 +1647,115 @@ private void registerDefaultNotifications()
             NotificationAction.ACTION_POPUP_MESSAGE,
             null,
             null);
+
+        // Coalesce the notifications of busy chats and rooms, file transfers
+        // and typing so that a flood does not pop up and play a sound for
+        // each of them.
+        registerThrottlePolicy(
+                INCOMING_MESSAGE,
+                3000,
+                NotificationWiringActivator.getResources().getI18NString(
+                        "service.gui.NEW_MESSAGES_COALESCED"),
+                5, 1);
+        registerThrottlePolicy(INCOMING_FILE, 3000, null, 5, 1);
+        registerThrottlePolicy(PROACTIVE_NOTIFICATION, 5000, null, 5, 1);
+    }
+
+    /**
+     * Registers the <tt>NotificationThrottlePolicy</tt> of an event type with
+     * the <tt>NotificationService</tt>, overriding its defaults with the
+     * configuration properties prefixed by
+     * {@link #THROTTLE_PROPERTY_PREFIX}.
+     *
+     * @param eventType the event type
+     * @param coalesceWindow the default time in milliseconds during which
+     * the notifications of a chat are coalesced
+     * @param coalescedMessageFormat the <tt>java.text.MessageFormat</tt>
+     * pattern of the message replacing coalesced ones or <tt>null</tt>
+     * @param maxPopups the default maximum number of popups per ten seconds
+     * @param maxSounds the default maximum number of sounds per two seconds
+     */
+    private static void registerThrottlePolicy(
+            String eventType,
+            long coalesceWindow,
+            String coalescedMessageFormat,
+            int maxPopups,
+            int maxSounds)
+    {
+        NotificationService notificationService
+            = NotificationWiringActivator.getNotificationService();
+        ConfigurationService cfg
+            = NotificationWiringActivator.getConfigurationService();
+        String prefix = THROTTLE_PROPERTY_PREFIX + "." + eventType + ".";
+
+        if (cfg != null)
+        {
+            coalesceWindow
+                = cfg.getLong(prefix + "COALESCE_WINDOW", coalesceWindow);
+        }
+
+        NotificationThrottlePolicy policy
+            = new NotificationThrottlePolicy(
+                    Math.max(0, coalesceWindow),
+                    coalescedMessageFormat);
+        boolean throttled = (policy.getCoalesceWindow() > 0);
+
+        throttled
+            |= setRateLimit(
+                    policy, cfg, prefix,
+                    NotificationAction.ACTION_POPUP_MESSAGE,
+                    maxPopups, 10000);
+        throttled
+            |= setRateLimit(
+                    policy, cfg, prefix,
+                    NotificationAction.ACTION_SOUND,
+                    maxSounds, 2000);
+        throttled
+            |= setRateLimit(
+                    policy, cfg, prefix,
+                    NotificationAction.ACTION_COMMAND,
+                    maxPopups, 10000);
+
+        notificationService.setThrottlePolicy(
+                eventType,
+                throttled ? policy : null);
+    }
+
+    /**
+     * Sets the rate limit of an action of a
+     * <tt>NotificationThrottlePolicy</tt>, overriding its defaults with the
+     * configuration properties.
+     *
+     * @param policy the <tt>NotificationThrottlePolicy</tt>
+     * @param cfg the <tt>ConfigurationService</tt> or <tt>null</tt>
+     * @param prefix the prefix of the properties of the event type
+     * @param actionType the type of the action
+     * @param maxActions the default maximum number of executions per interval
+     * @param interval the default interval in milliseconds
+     * @return <tt>true</tt> if the action is rate limited
+     */
+    private static boolean setRateLimit(
+            NotificationThrottlePolicy policy,
+            ConfigurationService cfg,
+            String prefix,
+            String actionType,
+            int maxActions,
+            long interval)
+    {
+        if (cfg != null)
+        {
+            maxActions
+                = cfg.getInt(
+                        prefix + actionType + ".MAX_ACTIONS",
+                        maxActions);
+            interval
+                = cfg.getLong(prefix + actionType + ".INTERVAL", interval);
+        }
+        if ((maxActions < 0) || (interval <= 0))
+            return false;
+
+        policy.setRateLimit(actionType, maxActions, interval);
+        return true;
     }
 
     /**
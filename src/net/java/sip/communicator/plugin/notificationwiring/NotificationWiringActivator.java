@@ -21,6 +21,7 @@
 import net.java.sip.communicator.service.notification.*;
 import net.java.sip.communicator.util.*;
 
+import org.jitsi.service.configuration.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.service.resources.*;
 import org.osgi.framework.*;
@@ -43,6 +44,7 @@
     private static ResourceManagementService resourcesService;
     private static UIService uiService = null;
     private static MediaService mediaService;
+    private static ConfigurationService configurationService;
 
     /**
      * The image loader service.
@@ -156,4 +158,22 @@ public static ImageLoaderService<?> getImageLoaderService()
         }
         return imageLoaderService;
     }
+
+    /**
+     * Returns the <tt>ConfigurationService</tt> obtained from the bundle
+     * context.
+     * @return the <tt>ConfigurationService</tt> obtained from the bundle
+     * context
+     */
+    public static ConfigurationService getConfigurationService()
+    {
+        if (configurationService == null)
+        {
+            configurationService
+                = ServiceUtils.getService(
+                        bundleContext,
+                        ConfigurationService.class);
+        }
+        return configurationService;
+    }
 }
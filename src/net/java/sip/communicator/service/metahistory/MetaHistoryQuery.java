@@ -0,0 +1,72 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.metahistory;
+
+import java.util.*;
+
+/**
+ * A query made through the <tt>MetaHistoryService</tt> which runs in the
+ * background. The wrapped history services are queried at the same time and
+ * the query may be canceled, e.g. when the user changes the search before it
+ * completes.
+ */
+public interface MetaHistoryQuery
+{
+    /**
+     * Indicates that this query has been completed.
+     */
+    public static final int QUERY_COMPLETED = 0;
+
+    /**
+     * Indicates that this query has been canceled.
+     */
+    public static final int QUERY_CANCELED = 1;
+
+    /**
+     * Indicates that this query has been stopped because a history service
+     * failed.
+     */
+    public static final int QUERY_ERROR = 2;
+
+    /**
+     * Indicates that this query is in progress.
+     */
+    public static final int QUERY_IN_PROGRESS = 3;
+
+    /**
+     * Returns the status of this query. One of the static constants
+     * QUERY_XXXX defined in this class.
+     *
+     * @return the status of this query
+     */
+    public int getStatus();
+
+    /**
+     * Cancels this query. The listener of the query is not notified of any
+     * records after this method returns.
+     */
+    public void cancel();
+
+    /**
+     * Returns the sorted records found by this query. The result is empty
+     * until the query has completed.
+     *
+     * @return the sorted records found by this query
+     */
+    public Collection<Object> getResult();
+}
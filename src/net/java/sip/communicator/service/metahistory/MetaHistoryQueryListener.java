@@ -0,0 +1,53 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.metahistory;
+
+import java.util.*;
+
+/**
+ * Notified of the records found by a <tt>MetaHistoryQuery</tt>. The methods
+ * are called on the threads of the query, never after the query has been
+ * canceled.
+ */
+public interface MetaHistoryQueryListener
+{
+    /**
+     * Indicates that one of the wrapped history services has returned its
+     * records, before the others have. For queries limited to a number of
+     * records, not all of them may be part of the final result.
+     *
+     * @param query the query which found the records
+     * @param records the sorted records returned by one history service
+     */
+    public void recordsReceived(
+            MetaHistoryQuery query,
+            Collection<Object> records);
+
+    /**
+     * Indicates that all the wrapped history services have returned their
+     * records, or that one of them has failed in which case the status of the
+     * query is {@link MetaHistoryQuery#QUERY_ERROR} and the result holds the
+     * records of the other services.
+     *
+     * @param query the query which has completed
+     * @param result the sorted records found by the query
+     */
+    public void queryCompleted(
+            MetaHistoryQuery query,
+            Collection<Object> result);
+}
@@ -24,7 +24,9 @@
 /**
  * The Meta History Service is wrapper around the other known
  * history services. Query them all at once, sort the result and return all
- * merged records in one collection.
+ * merged records in one collection. The queries may also be run in the
+ * background, in which case the records of each service are delivered as soon
+ * as it returns them.
  *
  * @author Damian Minkov
  */
@@ -223,6 +225,68 @@ public Collection<Object> findLastMessagesBefore(String[] services,
             Object descriptor, Date date, int count)
         throws RuntimeException;
 
+    /**
+     * Starts a query for all the records before the given date and returns
+     * without waiting for its result.
+     *
+     * @param services the services classnames we will query
+     * @param descriptor CallPeer address(String),
+     *  MetaContact or ChatRoom.
+     * @param endDate Date the date of the last record to return
+     * @param listener the listener notified of the records found
+     * @return the query, which may be canceled
+     */
+    public MetaHistoryQuery findByEndDate(String[] services,
+            Object descriptor, Date endDate,
+            MetaHistoryQueryListener listener);
+
+    /**
+     * Starts a query for all the records between the given dates and returns
+     * without waiting for its result.
+     *
+     * @param services the services classnames we will query
+     * @param descriptor CallPeer address(String),
+     *  MetaContact or ChatRoom.
+     * @param startDate Date the date of the first record to return
+     * @param endDate Date the date of the last record to return
+     * @param listener the listener notified of the records found
+     * @return the query, which may be canceled
+     */
+    public MetaHistoryQuery findByPeriod(String[] services,
+            Object descriptor, Date startDate, Date endDate,
+            MetaHistoryQueryListener listener);
+
+    /**
+     * Starts a query for all the records having the given keywords and
+     * returns without waiting for its result.
+     *
+     * @param services the services classnames we will query
+     * @param descriptor CallPeer address(String),
+     *  MetaContact or ChatRoom.
+     * @param keywords keyword
+     * @param caseSensitive is keywords search case sensitive
+     * @param listener the listener notified of the records found
+     * @return the query, which may be canceled
+     */
+    public MetaHistoryQuery findByKeywords(String[] services,
+            Object descriptor, String[] keywords, boolean caseSensitive,
+            MetaHistoryQueryListener listener);
+
+    /**
+     * Starts a query for the supplied number of recent records and returns
+     * without waiting for its result.
+     *
+     * @param services the services classnames we will query
+     * @param descriptor CallPeer address(String),
+     *  MetaContact or ChatRoom.
+     * @param count messages count
+     * @param listener the listener notified of the records found
+     * @return the query, which may be canceled
+     */
+    public MetaHistoryQuery findLast(String[] services,
+            Object descriptor, int count,
+            MetaHistoryQueryListener listener);
+
     /**
      * Adding progress listener for monitoring progress of search process
      *
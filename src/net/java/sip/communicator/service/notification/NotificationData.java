@@ -114,6 +114,8 @@ public String getEventType()
      */
     Map<String, Object> getExtras()
     {
+        if (extras == null)
+            return Collections.emptyMap();
         return Collections.unmodifiableMap(extras);
     }
 
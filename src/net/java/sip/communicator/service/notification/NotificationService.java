@@ -312,6 +312,19 @@ public NotificationData fireNotification(
      */
     public NotificationData fireNotification(String eventType);
 
+    /**
+     * Coalesces and rate limits the notifications of a specific event type
+     * according to a specific policy. The notifications of event types
+     * without a policy are executed as they are fired.
+     *
+     * @param eventType the type of the event
+     * @param policy the policy to apply to the notifications of
+     * <tt>eventType</tt> or <tt>null</tt> to no longer throttle them
+     */
+    public void setThrottlePolicy(
+            String eventType,
+            NotificationThrottlePolicy policy);
+
     /**
      * Stops a notification if notification is continuous, like playing sounds
      * in loop. Do nothing if there are no such events currently processing.
@@ -38,6 +38,11 @@
     private static ConfigurationService configService;
     private ServiceRegistration notificationService;
 
+    /**
+     * The <tt>NotificationServiceImpl</tt> registered by this activator.
+     */
+    private NotificationServiceImpl notificationServiceImpl;
+
     public void start(BundleContext bc) throws Exception
     {
         bundleContext = bc;
@@ -47,9 +52,10 @@ public void start(BundleContext bc) throws Exception
             logger.logEntry();
             logger.info("Notification Service...[  STARTED ]");
 
+            notificationServiceImpl = new NotificationServiceImpl();
             notificationService = bundleContext.registerService(
                 NotificationService.class.getName(),
-                new NotificationServiceImpl(),
+                notificationServiceImpl,
                 null);
 
             logger.info("Notification Service ...[REGISTERED]");
@@ -63,6 +69,7 @@ public void start(BundleContext bc) throws Exception
     public void stop(BundleContext bc) throws Exception
     {
         notificationService.unregister();
+        notificationServiceImpl.stop();
         logger.info("Notification Service ...[STOPPED]");
     }
 
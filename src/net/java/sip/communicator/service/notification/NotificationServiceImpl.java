@@ -87,6 +87,34 @@
     private final Map<String, Notification> notifications
         = new HashMap<String, Notification>();
 
+    /**
+     * The throttles of the event types which have a
+     * <tt>NotificationThrottlePolicy</tt>.
+     */
+    private final Map<String, NotificationThrottle> throttles
+        = new HashMap<String, NotificationThrottle>();
+
+    /**
+     * The <tt>Timer</tt> which closes the coalesce windows of the throttles,
+     * created with the first throttle.
+     */
+    private Timer throttleTimer;
+
+    /**
+     * Executes the actions of the notifications which make it through the
+     * throttles.
+     */
+    private final NotificationThrottle.Sink throttleSink
+        = new NotificationThrottle.Sink()
+        {
+            public void fire(
+                    NotificationData data,
+                    List<NotificationAction> actions)
+            {
+                fireNotification(data, actions);
+            }
+        };
+
     /**
      * Creates an instance of <tt>NotificationServiceImpl</tt> by loading all
      * previously saved notifications.
@@ -221,7 +249,8 @@ public void addNotificationChangeListener(
     }
 
     /**
-     * Executes a notification data object on the handlers.
+     * Executes a notification data object on the handlers, through the
+     * throttle of its event type if it has one.
      *
      * @param data The notification data to act upon.
      */
@@ -232,13 +261,40 @@ private void fireNotification(NotificationData data)
         if((notification == null) || !notification.isActive())
             return;
 
+        List<NotificationAction> actions = new ArrayList<NotificationAction>();
+
         for(NotificationAction action : notification.getActions().values())
         {
-            String actionType = action.getActionType();
+            if(action.isEnabled())
+                actions.add(action);
+        }
 
-            if(!action.isEnabled())
-                continue;
+        NotificationThrottle throttle;
 
+        synchronized (throttles)
+        {
+            throttle = throttles.get(data.getEventType());
+        }
+        if (throttle == null)
+            fireNotification(data, actions);
+        else
+            throttle.fire(data, actions);
+    }
+
+    /**
+     * Executes specific actions of a notification data object on the
+     * handlers.
+     *
+     * @param data The notification data to act upon.
+     * @param actions The actions to execute.
+     */
+    private void fireNotification(
+            NotificationData data,
+            List<NotificationAction> actions)
+    {
+        for(NotificationAction action : actions)
+        {
+            String actionType = action.getActionType();
             NotificationHandler handler = handlers.get(actionType);
 
             if (handler == null)
@@ -1372,6 +1428,85 @@ public void setActive(String eventType, boolean isActive)
         saveNotification(eventType, null, isActive, false);
     }
 
+    /**
+     * Coalesces and rate limits the notifications of a specific event type
+     * according to a specific policy.
+     *
+     * @param eventType the type of the event
+     * @param policy the policy to apply to the notifications of
+     * <tt>eventType</tt> or <tt>null</tt> to no longer throttle them
+     */
+    public void setThrottlePolicy(
+            String eventType,
+            NotificationThrottlePolicy policy)
+    {
+        synchronized (throttles)
+        {
+            NotificationThrottle throttle = throttles.remove(eventType);
+
+            if (throttle != null)
+            {
+                logThrottleStatistics(eventType, throttle);
+                throttle.clear();
+            }
+            if (policy != null)
+            {
+                if (throttleTimer == null)
+                    throttleTimer = new Timer("NotificationThrottle", true);
+                throttles.put(
+                        eventType,
+                        new NotificationThrottle(
+                                policy,
+                                throttleSink,
+                                throttleTimer));
+            }
+        }
+    }
+
+    /**
+     * Stops the throttles and cancels the notifications held back by them.
+     */
+    void stop()
+    {
+        synchronized (throttles)
+        {
+            for (Map.Entry<String, NotificationThrottle> e
+                    : throttles.entrySet())
+            {
+                logThrottleStatistics(e.getKey(), e.getValue());
+                e.getValue().clear();
+            }
+            throttles.clear();
+            if (throttleTimer != null)
+            {
+                throttleTimer.cancel();
+                throttleTimer = null;
+            }
+        }
+    }
+
+    /**
+     * Logs how many notifications of an event type a throttle has coalesced
+     * and how many actions it has dropped.
+     *
+     * @param eventType the type of the event
+     * @param throttle the throttle of <tt>eventType</tt>
+     */
+    private void logThrottleStatistics(
+            String eventType,
+            NotificationThrottle throttle)
+    {
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    "Throttled notifications of " + eventType
+                        + ": coalesced " + throttle.getCoalescedCount()
+                        + ", superseded " + throttle.getSupersededCount()
+                        + ", rate limited actions "
+                        + throttle.getRateLimitedCount());
+        }
+    }
+
     /**
      * Stops a notification if notification is continuous, like playing sounds
      * in loop. Do nothing if there are no such events currently processing.
@@ -0,0 +1,419 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.notification;
+
+import java.text.*;
+import java.util.*;
+
+/**
+ * Applies a <tt>NotificationThrottlePolicy</tt> to the notifications of an
+ * event type before their actions are executed.
+ * <p>
+ * The first notification of a source is executed right away and opens a
+ * coalesce window for the source. The notifications of the source fired
+ * while the window is open are held back, each one superseding the one held
+ * before it. When the window closes, the held notification is executed,
+ * with its message replaced by the coalesced message of the policy if it
+ * stands for more than one notification, and a new window is opened so that
+ * a flood results in a single notification per window. The executions of the
+ * actions are then limited to the rates of the policy, the ones over the
+ * limit being dropped.
+ * </p>
+ */
+class NotificationThrottle
+{
+    /**
+     * The key of the notifications which do not specify their source.
+     */
+    private static final Object NO_SOURCE = new Object();
+
+    /**
+     * Executes the actions of the notifications which make it through the
+     * throttle.
+     */
+    interface Sink
+    {
+        /**
+         * Executes actions for a notification.
+         *
+         * @param data the notification
+         * @param actions the actions to execute
+         */
+        void fire(NotificationData data, List<NotificationAction> actions);
+    }
+
+    /**
+     * The policy applied by this throttle.
+     */
+    private final NotificationThrottlePolicy policy;
+
+    /**
+     * The <tt>Sink</tt> which executes the actions.
+     */
+    private final Sink sink;
+
+    /**
+     * The <tt>Timer</tt> which closes the coalesce windows.
+     */
+    private final Timer timer;
+
+    /**
+     * The open coalesce windows by source.
+     */
+    private final Map<Object, Window> windows = new HashMap<Object, Window>();
+
+    /**
+     * The rate limiters by action type.
+     */
+    private final Map<String, RateLimiter> rateLimiters
+        = new HashMap<String, RateLimiter>();
+
+    /**
+     * The number of notifications which have been held back.
+     */
+    private long coalescedCount = 0;
+
+    /**
+     * The number of held notifications which have been superseded by a later
+     * one.
+     */
+    private long supersededCount = 0;
+
+    /**
+     * The number of action executions dropped by the rate limiters.
+     */
+    private long rateLimitedCount = 0;
+
+    /**
+     * Creates a new <tt>NotificationThrottle</tt>.
+     *
+     * @param policy the policy to apply
+     * @param sink the <tt>Sink</tt> which executes the actions
+     * @param timer the <tt>Timer</tt> which is to close the coalesce windows
+     */
+    NotificationThrottle(
+            NotificationThrottlePolicy policy,
+            Sink sink,
+            Timer timer)
+    {
+        this.policy = policy;
+        this.sink = sink;
+        this.timer = timer;
+
+        for (String actionType : policy.getRateLimitedActionTypes())
+        {
+            rateLimiters.put(
+                    actionType,
+                    new RateLimiter(
+                            policy.getMaxActions(actionType),
+                            policy.getRateLimitInterval(actionType)));
+        }
+    }
+
+    /**
+     * Gets the policy applied by this throttle.
+     *
+     * @return the policy
+     */
+    NotificationThrottlePolicy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * Executes a notification, holds it back or drops some of its actions
+     * according to the policy.
+     *
+     * @param data the notification
+     * @param actions the actions which are enabled for the notification
+     */
+    void fire(NotificationData data, List<NotificationAction> actions)
+    {
+        Object source
+            = data.getExtra(NotificationData.POPUP_MESSAGE_HANDLER_TAG_EXTRA);
+        final Object key = (source == null) ? NO_SOURCE : source;
+        List<NotificationAction> allowed;
+
+        synchronized (this)
+        {
+            if (policy.getCoalesceWindow() > 0)
+            {
+                Window window = windows.get(key);
+
+                if (window != null)
+                {
+                    coalescedCount++;
+                    if (window.data != null)
+                        supersededCount++;
+                    window.hold(data, actions);
+                    return;
+                }
+                openWindow(key);
+            }
+            allowed = limit(actions);
+        }
+        if (!allowed.isEmpty())
+            sink.fire(data, allowed);
+    }
+
+    /**
+     * Closes the coalesce window of a source and executes the notification
+     * held back during it.
+     *
+     * @param key the source
+     * @param window the window to close
+     */
+    private void closeWindow(Object key, Window window)
+    {
+        NotificationData data;
+        List<NotificationAction> allowed;
+
+        synchronized (this)
+        {
+            if (windows.get(key) != window)
+                return;
+
+            windows.remove(key);
+            if (window.data == null)
+                return;
+
+            data = window.data;
+            if (window.count > 1)
+                data = coalesce(data, window.count);
+            openWindow(key);
+            allowed = limit(window.actions.values());
+        }
+        if (!allowed.isEmpty())
+            sink.fire(data, allowed);
+    }
+
+    /**
+     * Creates the notification which replaces a number of coalesced ones.
+     *
+     * @param last the last coalesced notification
+     * @param count the number of coalesced notifications
+     * @return the notification to execute in place of the coalesced ones
+     */
+    private NotificationData coalesce(NotificationData last, int count)
+    {
+        String format = policy.getCoalescedMessageFormat();
+
+        if (format == null)
+            return last;
+
+        String message
+            = MessageFormat.format(
+                    format,
+                    count,
+                    last.getTitle(),
+                    last.getMessage());
+
+        return
+            new NotificationData(
+                    last.getEventType(),
+                    last.getTitle(),
+                    message,
+                    last.getIcon(),
+                    last.getExtras());
+    }
+
+    /**
+     * Opens the coalesce window of a source.
+     *
+     * @param key the source
+     */
+    private void openWindow(final Object key)
+    {
+        final Window window = new Window();
+
+        windows.put(key, window);
+        timer.schedule(
+                new TimerTask()
+                {
+                    @Override
+                    public void run()
+                    {
+                        closeWindow(key, window);
+                    }
+                },
+                policy.getCoalesceWindow());
+    }
+
+    /**
+     * Drops the actions which are over their rate limits.
+     *
+     * @param actions the actions to execute
+     * @return the actions which are within their rate limits
+     */
+    private List<NotificationAction> limit(
+            Collection<NotificationAction> actions)
+    {
+        List<NotificationAction> allowed
+            = new ArrayList<NotificationAction>(actions.size());
+        long now = System.currentTimeMillis();
+
+        for (NotificationAction action : actions)
+        {
+            RateLimiter rateLimiter
+                = rateLimiters.get(action.getActionType());
+
+            if ((rateLimiter == null) || rateLimiter.acquire(now))
+                allowed.add(action);
+            else
+                rateLimitedCount++;
+        }
+        return allowed;
+    }
+
+    /**
+     * Gets the number of notifications which have been held back.
+     *
+     * @return the number of coalesced notifications
+     */
+    synchronized long getCoalescedCount()
+    {
+        return coalescedCount;
+    }
+
+    /**
+     * Gets the number of held notifications which have been superseded by a
+     * later one.
+     *
+     * @return the number of superseded notifications
+     */
+    synchronized long getSupersededCount()
+    {
+        return supersededCount;
+    }
+
+    /**
+     * Gets the number of action executions dropped by the rate limiters.
+     *
+     * @return the number of dropped action executions
+     */
+    synchronized long getRateLimitedCount()
+    {
+        return rateLimitedCount;
+    }
+
+    /**
+     * Cancels the held notifications.
+     */
+    synchronized void clear()
+    {
+        windows.clear();
+    }
+
+    /**
+     * The notification held back during the coalesce window of a source.
+     */
+    private static class Window
+    {
+        /**
+         * The last notification held back.
+         */
+        NotificationData data;
+
+        /**
+         * The number of notifications held back.
+         */
+        int count = 0;
+
+        /**
+         * The actions enabled for any of the notifications held back by
+         * type, so that an action disabled for some of them (e.g. the popup of
+         * a focused chat) is still executed for the others.
+         */
+        final Map<String, NotificationAction> actions
+            = new LinkedHashMap<String, NotificationAction>();
+
+        /**
+         * Holds back a notification.
+         *
+         * @param data the notification
+         * @param actions the actions enabled for the notification
+         */
+        void hold(NotificationData data, List<NotificationAction> actions)
+        {
+            this.data = data;
+            count++;
+            for (NotificationAction action : actions)
+                this.actions.put(action.getActionType(), action);
+        }
+    }
+
+    /**
+     * Limits the number of executions of an action per interval.
+     */
+    private static class RateLimiter
+    {
+        /**
+         * The maximum number of executions per interval.
+         */
+        private final int maxActions;
+
+        /**
+         * The interval in milliseconds.
+         */
+        private final long interval;
+
+        /**
+         * The start of the current interval.
+         */
+        private long intervalStart = 0;
+
+        /**
+         * The number of executions in the current interval.
+         */
+        private int count = 0;
+
+        /**
+         * Creates a new <tt>RateLimiter</tt>.
+         *
+         * @param maxActions the maximum number of executions per interval
+         * @param interval the interval in milliseconds
+         */
+        RateLimiter(int maxActions, long interval)
+        {
+            this.maxActions = maxActions;
+            this.interval = interval;
+        }
+
+        /**
+         * Determines whether one more execution is within the limit and
+         * counts it if it is.
+         *
+         * @param now the current time in milliseconds
+         * @return <tt>true</tt> if the action may be executed
+         */
+        boolean acquire(long now)
+        {
+            if (now - intervalStart >= interval)
+            {
+                intervalStart = now;
+                count = 0;
+            }
+            if (count < maxActions)
+            {
+                count++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.notification;
+
+import java.util.*;
+
+/**
+ * Describes how the notifications of an event type are to be throttled by the
+ * <tt>NotificationService</tt>.
+ * <p>
+ * The notifications fired for the same source (i.e. the same
+ * {@link NotificationData#POPUP_MESSAGE_HANDLER_TAG_EXTRA}) within the
+ * coalesce window of the first of them are held back and, when the window
+ * closes, replaced by a single notification which supersedes them. The
+ * actions of the notifications which make it through are further limited to
+ * a maximum number per interval per action type.
+ * </p>
+ */
+public class NotificationThrottlePolicy
+{
+    /**
+     * The time in milliseconds during which the notifications of a source
+     * are coalesced.
+     */
+    private final long coalesceWindow;
+
+    /**
+     * The <tt>java.text.MessageFormat</tt> pattern of the message of the
+     * notifications which replace coalesced ones.
+     */
+    private final String coalescedMessageFormat;
+
+    /**
+     * The rate limits by action type.
+     */
+    private final Map<String, RateLimit> rateLimits
+        = new HashMap<String, RateLimit>();
+
+    /**
+     * Creates a new <tt>NotificationThrottlePolicy</tt>.
+     *
+     * @param coalesceWindow the time in milliseconds during which the
+     * notifications of a source are coalesced; <tt>0</tt> to not coalesce
+     * @param coalescedMessageFormat the <tt>java.text.MessageFormat</tt>
+     * pattern of the message of a notification which replaces coalesced ones
+     * with the number of coalesced notifications, the title and the message of
+     * the last of them as arguments; <tt>null</tt> to use the message of the
+     * last coalesced notification
+     */
+    public NotificationThrottlePolicy(
+            long coalesceWindow,
+            String coalescedMessageFormat)
+    {
+        if (coalesceWindow < 0)
+            throw new IllegalArgumentException("coalesceWindow");
+
+        this.coalesceWindow = coalesceWindow;
+        this.coalescedMessageFormat = coalescedMessageFormat;
+    }
+
+    /**
+     * Gets the time in milliseconds during which the notifications of a
+     * source are coalesced.
+     *
+     * @return the coalesce window in milliseconds; <tt>0</tt> if the
+     * notifications are not coalesced
+     */
+    public long getCoalesceWindow()
+    {
+        return coalesceWindow;
+    }
+
+    /**
+     * Gets the <tt>java.text.MessageFormat</tt> pattern of the message of the
+     * notifications which replace coalesced ones.
+     *
+     * @return the pattern or <tt>null</tt> to use the message of the last
+     * coalesced notification
+     */
+    public String getCoalescedMessageFormat()
+    {
+        return coalescedMessageFormat;
+    }
+
+    /**
+     * Limits the number of times an action is executed for the
+     * notifications of the event type.
+     *
+     * @param actionType the type of the action, one of the
+     * <tt>NotificationAction.ACTION_XXX</tt> constants
+     * @param maxActions the maximum number of executions of the action per
+     * <tt>interval</tt>
+     * @param interval the interval in milliseconds
+     */
+    public void setRateLimit(String actionType, int maxActions, long interval)
+    {
+        if ((maxActions < 0) || (interval <= 0))
+            throw new IllegalArgumentException("maxActions or interval");
+
+        synchronized (rateLimits)
+        {
+            rateLimits.put(actionType, new RateLimit(maxActions, interval));
+        }
+    }
+
+    /**
+     * Gets the maximum number of executions of an action per interval.
+     *
+     * @param actionType the type of the action
+     * @return the maximum number of executions per interval or <tt>-1</tt> if
+     * the action is not rate limited
+     */
+    public int getMaxActions(String actionType)
+    {
+        synchronized (rateLimits)
+        {
+            RateLimit rateLimit = rateLimits.get(actionType);
+
+            return (rateLimit == null) ? -1 : rateLimit.maxActions;
+        }
+    }
+
+    /**
+     * Gets the interval of the rate limit of an action.
+     *
+     * @param actionType the type of the action
+     * @return the interval in milliseconds or <tt>0</tt> if the action is not
+     * rate limited
+     */
+    public long getRateLimitInterval(String actionType)
+    {
+        synchronized (rateLimits)
+        {
+            RateLimit rateLimit = rateLimits.get(actionType);
+
+            return (rateLimit == null) ? 0 : rateLimit.interval;
+        }
+    }
+
+    /**
+     * Gets the types of the actions which are rate limited.
+     *
+     * @return the types of the rate limited actions
+     */
+    public Set<String> getRateLimitedActionTypes()
+    {
+        synchronized (rateLimits)
+        {
+            return new HashSet<String>(rateLimits.keySet());
+        }
+    }
+
+    /**
+     * A maximum number of executions of an action per interval.
+     */
+    private static class RateLimit
+    {
+        /**
+         * The maximum number of executions per interval.
+         */
+        final int maxActions;
+
+        /**
+         * The interval in milliseconds.
+         */
+        final long interval;
+
+        /**
+         * Creates a new <tt>RateLimit</tt>.
+         *
+         * @param maxActions the maximum number of executions per interval
+         * @param interval the interval in milliseconds
+         */
+        RateLimit(int maxActions, long interval)
+        {
+            this.maxActions = maxActions;
+            this.interval = interval;
+        }
+    }
+}
@@ -43,6 +43,47 @@
     private static final Logger logger
         = Logger.getLogger(AbstractOperationSetBasicInstantMessaging.class);
 
+    /**
+     * Delivers the message events when they are delivered by the
+     * <tt>AsyncEventDispatcher</tt> of the operation sets.
+     */
+    private static final AsyncEventDispatcher.Delivery<
+            MessageListener,
+            EventObject>
+        MESSAGE_DELIVERY
+            = new AsyncEventDispatcher.Delivery<MessageListener, EventObject>()
+            {
+                public void deliver(MessageListener listener, EventObject event)
+                {
+                    deliverMessageEvent(listener, event);
+                }
+            };
+
+    /**
+     * Transforms the message events and delivers them to the message
+     * listeners when they are transformed by the
+     * <tt>AsyncEventDispatcher</tt> of the operation sets.
+     */
+    private static final AsyncEventDispatcher.Delivery<
+            AbstractOperationSetBasicInstantMessaging,
+            PendingTransform>
+        TRANSFORM_DELIVERY
+            = new AsyncEventDispatcher.Delivery<
+                    AbstractOperationSetBasicInstantMessaging,
+                    PendingTransform>()
+            {
+                public void deliver(
+                        AbstractOperationSetBasicInstantMessaging opSet,
+                        PendingTransform transform)
+                {
+                    opSet.transformAndDeliver(
+                            transform.event,
+                            transform.eventType,
+                            transform.transform,
+                            transform.listeners);
+                }
+            };
+
     /**
      * A list of listeners registered for message events.
      */
@@ -208,8 +249,58 @@ else if (evt instanceof MessageDeliveryFailedEvent)
             eventType = MessageEventType.MessageDeliveryFailed;
         }
 
+        OperationSetInstantMessageTransformImpl opSetMessageTransform
+            = getMessageTransform(evt, eventType);
+        AsyncEventDispatcher dispatcher
+            = ProtocolProviderActivator.getEventDispatcher();
+
+        /*
+         * Transform layers such as OTR may take long so the events are
+         * transformed, in the order they are fired, on the threads of the
+         * dispatcher when there is one.
+         */
+        if ((dispatcher != null)
+                && (opSetMessageTransform != null)
+                && (opSetMessageTransform.getLayers().length != 0))
+        {
+            dispatcher.dispatch(
+                    this,
+                    Collections.singletonList(this),
+                    new PendingTransform(
+                            evt,
+                            eventType,
+                            opSetMessageTransform,
+                            listeners),
+                    TRANSFORM_DELIVERY,
+                    AsyncEventDispatcher.Overflow.BLOCK);
+            return;
+        }
+
+        transformAndDeliver(evt, eventType, opSetMessageTransform, listeners);
+    }
+
+    /**
+     * Transforms a message event and delivers the resulting events to message
+     * listeners.
+     *
+     * @param evt the <tt>EventObject</tt> to transform and deliver
+     * @param eventType the type of <tt>evt</tt>
+     * @param opSetMessageTransform the transform layers of the protocol
+     * provider of <tt>evt</tt> or <tt>null</tt>
+     * @param listeners the <tt>MessageListener</tt>s to deliver the events to
+     */
+    private void transformAndDeliver(
+            EventObject evt,
+            MessageEventType eventType,
+            OperationSetInstantMessageTransformImpl opSetMessageTransform,
+            Collection<MessageListener> listeners)
+    {
+        AsyncEventDispatcher dispatcher
+            = ProtocolProviderActivator.getEventDispatcher();
+
         // Transform the event.
-        EventObject[] events = messageTransform(evt, eventType);
+        EventObject[] events
+            = messageTransform(evt, eventType, opSetMessageTransform);
         for (EventObject event : events)
         {
             try
@@ -217,28 +308,19 @@ else if (evt instanceof MessageDeliveryFailedEvent)
                 if (event == null)
                     return;
 
-                for (MessageListener listener : listeners)
+                if (dispatcher != null)
                 {
-                    switch (eventType)
-                    {
-                    case MessageDelivered:
-                        listener.messageDelivered((MessageDeliveredEvent) event);
-                        break;
-                    case MessageDeliveryFailed:
-                        listener
-                            .messageDeliveryFailed((MessageDeliveryFailedEvent) event);
-                        break;
-                    case MessageReceived:
-                        listener.messageReceived((MessageReceivedEvent) event);
-                        break;
-                    default:
-                        /*
-                         * We either have nothing to do or we do not know what
-                         * to do. Anyway, we'll silence the compiler.
-                         */
-                        break;
-                    }
+                    dispatcher.dispatch(
+                            this,
+                            listeners,
+                            event,
+                            MESSAGE_DELIVERY,
+                            AsyncEventDispatcher.Overflow.BLOCK);
+                    continue;
                 }
+
+                for (MessageListener listener : listeners)
+                    deliverMessageEvent(listener, event);
             }
             catch (Throwable e)
             {
@@ -247,6 +329,35 @@ else if (evt instanceof MessageDeliveryFailedEvent)
         }
     }
 
+    /**
+     * Delivers a message event to a message listener.
+     *
+     * @param listener the <tt>MessageListener</tt>
+     * @param event the <tt>MessageDeliveredEvent</tt>, the
+     * <tt>MessageDeliveryFailedEvent</tt> or the <tt>MessageReceivedEvent</tt>
+     * to deliver to <tt>listener</tt>
+     */
+    private static void deliverMessageEvent(
+            MessageListener listener,
+            EventObject event)
+    {
+        if (event instanceof MessageDeliveredEvent)
+        {
+            listener.messageDelivered((MessageDeliveredEvent) event);
+        }
+        else if (event instanceof MessageDeliveryFailedEvent)
+        {
+            listener.messageDeliveryFailed((MessageDeliveryFailedEvent) event);
+        }
+        else if (event instanceof MessageReceivedEvent)
+        {
+            listener.messageReceived((MessageReceivedEvent) event);
+        }
+        /*
+         * We either have nothing to do or we do not know what to do.
+         */
+    }
+
     /**
      * Notifies all registered message listeners that a message has been
      * received.
@@ -285,7 +396,11 @@ public MessageDeliveredEvent[] messageDeliveryPendingTransform(
             final MessageDeliveredEvent evt)
     {
         EventObject[] transformed = messageTransform(
-            evt, MessageEventType.MessageDeliveryPending);
+            evt,
+            MessageEventType.MessageDeliveryPending,
+            getMessageTransform(
+                    evt,
+                    MessageEventType.MessageDeliveryPending));
 
         final int size = transformed.length;
         MessageDeliveredEvent[] events =
@@ -295,21 +410,21 @@ public MessageDeliveredEvent[] messageDeliveryPendingTransform(
     }
 
     /**
-     * Transform provided source event by processing transform layers in
-     * sequence.
+     * Gets the transform layers of the protocol provider of a message event.
      *
-     * @param evt the source event to transform
-     * @param eventType the event type of the source event
-     * @return returns the resulting (transformed) events, if any. (I.e. an
-     *         array of 0 or more size containing events.)
+     * @param evt the message event
+     * @param eventType the event type of <tt>evt</tt>
+     * @return the <tt>OperationSetInstantMessageTransformImpl</tt> of the
+     * protocol provider of <tt>evt</tt> or <tt>null</tt> if it has none or
+     * <tt>evt</tt> is not transformed
      */
-    private EventObject[] messageTransform(final EventObject evt,
-                                           final MessageEventType eventType)
+    private static OperationSetInstantMessageTransformImpl getMessageTransform(
+            final EventObject evt,
+            final MessageEventType eventType)
     {
         if (evt == null)
-        {
-            return new EventObject[0];
-        }
+            return null;
+
         ProtocolProviderService protocolProvider;
         switch (eventType)
         {
@@ -334,16 +449,44 @@ private EventObject[] messageTransform(final EventObject evt,
                     .getSourceContact().getProtocolProvider();
             break;
         default:
-            return new EventObject[] {evt};
+            return null;
         }
 
-        OperationSetInstantMessageTransformImpl opSetMessageTransform
-            = (OperationSetInstantMessageTransformImpl) protocolProvider
-                .getOperationSet(OperationSetInstantMessageTransform.class);
+        return
+            (OperationSetInstantMessageTransformImpl)
+                protocolProvider.getOperationSet(
+                        OperationSetInstantMessageTransform.class);
+    }
 
+    /**
+     * Transform provided source event by processing transform layers in
+     * sequence.
+     *
+     * @param evt the source event to transform
+     * @param eventType the event type of the source event
+     * @param opSetMessageTransform the transform layers of the protocol
+     * provider of <tt>evt</tt> or <tt>null</tt> if it has none
+     * @return returns the resulting (transformed) events, if any. (I.e. an
+     *         array of 0 or more size containing events.)
+     */
+    private static EventObject[] messageTransform(
+            final EventObject evt,
+            final MessageEventType eventType,
+            final OperationSetInstantMessageTransformImpl opSetMessageTransform)
+    {
+        if (evt == null)
+        {
+            return new EventObject[0];
+        }
         if (opSetMessageTransform == null)
             return new EventObject[] {evt};
 
+        OperationSetInstantMessageTransformImpl.Layer[] layers
+            = opSetMessageTransform.getLayers();
+
+        if (layers.length == 0)
+            return new EventObject[] {evt};
+
         // 'current' contains the events that need to be transformed. It should
         // not contain null values.
         final LinkedList<EventObject> current = new LinkedList<EventObject>();
@@ -352,73 +495,127 @@ private EventObject[] messageTransform(final EventObject evt,
         // 'next' contains the resulting events after transformation in the
         // current iteration. It should not contain null values.
         final LinkedList<EventObject> next = new LinkedList<EventObject>();
-        for (Map.Entry<Integer, Vector<TransformLayer>> entry
-                : opSetMessageTransform.transformLayers.entrySet())
+        for (OperationSetInstantMessageTransformImpl.Layer layer : layers)
         {
-            for (TransformLayer transformLayer : entry.getValue())
+            TransformLayer transformLayer = layer.transformLayer;
+            long startNanos = System.nanoTime();
+
+            next.clear();
+            while (!current.isEmpty())
             {
-                next.clear();
-                while (!current.isEmpty())
+                final EventObject event = current.remove();
+                switch (eventType)
                 {
-                    final EventObject event = current.remove();
-                    switch (eventType)
+                case MessageDelivered:
+                    MessageDeliveredEvent transformedDelivered =
+                        transformLayer.messageDelivered(
+                            (MessageDeliveredEvent) event);
+                    if (transformedDelivered != null)
                     {
-                    case MessageDelivered:
-                        MessageDeliveredEvent transformedDelivered =
-                            transformLayer.messageDelivered(
-                                (MessageDeliveredEvent) event);
-                        if (transformedDelivered != null)
-                        {
-                            next.add(transformedDelivered);
-                        }
-                        break;
-                    case MessageDeliveryPending:
-                        MessageDeliveredEvent[] evts = transformLayer
-                            .messageDeliveryPending(
-                                (MessageDeliveredEvent) event);
-                        for (MessageDeliveredEvent mde : evts)
-                        {
-                            if (mde != null)
-                            {
-                                next.add(mde);
-                            }
-                        }
-                        break;
-                    case MessageDeliveryFailed:
-                        MessageDeliveryFailedEvent transformedDeliveryFailed =
-                            transformLayer.messageDeliveryFailed(
-                                (MessageDeliveryFailedEvent) event);
-                        if (transformedDeliveryFailed != null)
-                        {
-                            next.add(transformedDeliveryFailed);
-                        }
-                        break;
-                    case MessageReceived:
-                        MessageReceivedEvent transformedReceived =
-                            transformLayer
-                                .messageReceived((MessageReceivedEvent) event);
-                        if (transformedReceived != null)
+                        next.add(transformedDelivered);
+                    }
+                    break;
+                case MessageDeliveryPending:
+                    MessageDeliveredEvent[] evts = transformLayer
+                        .messageDeliveryPending(
+                            (MessageDeliveredEvent) event);
+                    for (MessageDeliveredEvent mde : evts)
+                    {
+                        if (mde != null)
                         {
-                            next.add(transformedReceived);
+                            next.add(mde);
                         }
-                        break;
-                    default:
-                        next.add(event);
-                        /*
-                         * We either have nothing to do or we do not know
-                         * what to do. Anyway, we'll silence the compiler.
-                         */
-                        break;
                     }
+                    break;
+                case MessageDeliveryFailed:
+                    MessageDeliveryFailedEvent transformedDeliveryFailed =
+                        transformLayer.messageDeliveryFailed(
+                            (MessageDeliveryFailedEvent) event);
+                    if (transformedDeliveryFailed != null)
+                    {
+                        next.add(transformedDeliveryFailed);
+                    }
+                    break;
+                case MessageReceived:
+                    MessageReceivedEvent transformedReceived =
+                        transformLayer
+                            .messageReceived((MessageReceivedEvent) event);
+                    if (transformedReceived != null)
+                    {
+                        next.add(transformedReceived);
+                    }
+                    break;
+                default:
+                    next.add(event);
+                    /*
+                     * We either have nothing to do or we do not know
+                     * what to do. Anyway, we'll silence the compiler.
+                     */
+                    break;
                 }
-                // Set events for next round of transformations.
-                current.addAll(next);
             }
+            layer.latency.record(System.nanoTime() - startNanos);
+            // Set events for next round of transformations.
+            current.addAll(next);
         }
 
         return current.toArray(new EventObject[current.size()]);
     }
 
+    /**
+     * A message event waiting to be transformed and delivered by the
+     * <tt>AsyncEventDispatcher</tt> of the operation sets.
+     */
+    private static class PendingTransform
+    {
+        /**
+         * The message event.
+         */
+        final EventObject event;
+
+        /**
+         * The type of {@link #event}.
+         */
+        final MessageEventType eventType;
+
+        /**
+         * The transform layers of the protocol provider of {@link #event}.
+         */
+        final OperationSetInstantMessageTransformImpl transform;
+
+        /**
+         * The listeners registered when the event was fired.
+         */
+        final Collection<MessageListener> listeners;
+
+        /**
+         * Initializes a new <tt>PendingTransform</tt>.
+         *
+         * @param event the message event
+         * @param eventType the type of <tt>event</tt>
+         * @param transform the transform layers of the protocol provider of
+         * <tt>event</tt>
+         * @param listeners the listeners registered when the event was fired
+         */
+        PendingTransform(
+                EventObject event,
+                MessageEventType eventType,
+                OperationSetInstantMessageTransformImpl transform,
+                Collection<MessageListener> listeners)
+        {
+            this.event = event;
+            this.eventType = eventType;
+            this.transform = transform;
+            this.listeners = listeners;
+        }
+
+        @Override
+        public String toString()
+        {
+            return event.toString();
+        }
+    }
+
     /**
      * Determines whether the protocol supports the supplied content type
      * for the given contact.
@@ -20,6 +20,7 @@
 import java.util.*;
 
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.util.*;
 
 /**
  * Represents a default implementation of <code>OperationSetMultiUserChat</code>
@@ -31,6 +32,68 @@
 public abstract class AbstractOperationSetMultiUserChat
     implements OperationSetMultiUserChat
 {
+    /**
+     * Delivers <code>ChatRoomInvitationReceivedEvent</code>s when they are
+     * delivered by the <code>AsyncEventDispatcher</code> of the operation
+     * sets.
+     */
+    private static final AsyncEventDispatcher.Delivery<
+            ChatRoomInvitationListener,
+            ChatRoomInvitationReceivedEvent>
+        INVITATION_RECEIVED_DELIVERY
+            = new AsyncEventDispatcher.Delivery<
+                    ChatRoomInvitationListener,
+                    ChatRoomInvitationReceivedEvent>()
+            {
+                public void deliver(
+                        ChatRoomInvitationListener listener,
+                        ChatRoomInvitationReceivedEvent event)
+                {
+                    listener.invitationReceived(event);
+                }
+            };
+
+    /**
+     * Delivers <code>ChatRoomInvitationRejectedEvent</code>s when they are
+     * delivered by the <code>AsyncEventDispatcher</code> of the operation
+     * sets.
+     */
+    private static final AsyncEventDispatcher.Delivery<
+            ChatRoomInvitationRejectionListener,
+            ChatRoomInvitationRejectedEvent>
+        INVITATION_REJECTED_DELIVERY
+            = new AsyncEventDispatcher.Delivery<
+                    ChatRoomInvitationRejectionListener,
+                    ChatRoomInvitationRejectedEvent>()
+            {
+                public void deliver(
+                        ChatRoomInvitationRejectionListener listener,
+                        ChatRoomInvitationRejectedEvent event)
+                {
+                    listener.invitationRejected(event);
+                }
+            };
+
+    /**
+     * Delivers <code>LocalUserChatRoomPresenceChangeEvent</code>s when they
+     * are delivered by the <code>AsyncEventDispatcher</code> of the operation
+     * sets.
+     */
+    private static final AsyncEventDispatcher.Delivery<
+            LocalUserChatRoomPresenceListener,
+            LocalUserChatRoomPresenceChangeEvent>
+        LOCAL_USER_PRESENCE_DELIVERY
+            = new AsyncEventDispatcher.Delivery<
+                    LocalUserChatRoomPresenceListener,
+                    LocalUserChatRoomPresenceChangeEvent>()
+            {
+                public void deliver(
+                        LocalUserChatRoomPresenceListener listener,
+                        LocalUserChatRoomPresenceChangeEvent event)
+                {
+                    listener.localUserPresenceChanged(event);
+                }
+            };
 
     /**
      * The list of the currently registered
@@ -121,6 +184,20 @@ protected void fireInvitationReceived(ChatRoomInvitation invitation)
                                 invitationListeners.size()]);
         }
 
+        AsyncEventDispatcher dispatcher
+            = ProtocolProviderActivator.getEventDispatcher();
+
+        if (dispatcher != null)
+        {
+            dispatcher.dispatch(
+                    this,
+                    Arrays.asList(listeners),
+                    evt,
+                    INVITATION_RECEIVED_DELIVERY,
+                    AsyncEventDispatcher.Overflow.BLOCK);
+            return;
+        }
+
         for (ChatRoomInvitationListener listener : listeners)
             listener.invitationReceived(evt);
     }
@@ -155,6 +232,20 @@ protected void fireInvitationRejectedEvent(ChatRoom sourceChatRoom,
                                 invitationRejectionListeners.size()]);
         }
 
+        AsyncEventDispatcher dispatcher
+            = ProtocolProviderActivator.getEventDispatcher();
+
+        if (dispatcher != null)
+        {
+            dispatcher.dispatch(
+                    this,
+                    Arrays.asList(listeners),
+                    evt,
+                    INVITATION_REJECTED_DELIVERY,
+                    AsyncEventDispatcher.Overflow.BLOCK);
+            return;
+        }
+
         for (ChatRoomInvitationRejectionListener listener : listeners)
             listener.invitationRejected(evt);
     }
@@ -212,6 +303,20 @@ public void fireLocalUserPresenceEvent(
                                 presenceListeners.size()]);
         }
 
+        AsyncEventDispatcher dispatcher
+            = ProtocolProviderActivator.getEventDispatcher();
+
+        if (dispatcher != null)
+        {
+            dispatcher.dispatch(
+                    this,
+                    Arrays.asList(listeners),
+                    evt,
+                    LOCAL_USER_PRESENCE_DELIVERY,
+                    AsyncEventDispatcher.Overflow.BLOCK);
+            return;
+        }
+
         for (LocalUserChatRoomPresenceListener listener : listeners)
             listener.localUserPresenceChanged(evt);
     }
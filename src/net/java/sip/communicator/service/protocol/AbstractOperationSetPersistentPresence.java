@@ -42,6 +42,26 @@
     private static final Logger logger =
         Logger.getLogger(AbstractOperationSetPersistentPresence.class);
 
+    /**
+     * Delivers <tt>ContactPresenceStatusChangeEvent</tt>s when they are
+     * delivered by the <tt>AsyncEventDispatcher</tt> of the operation sets.
+     */
+    private static final AsyncEventDispatcher.Delivery<
+            ContactPresenceStatusListener,
+            ContactPresenceStatusChangeEvent>
+        CONTACT_PRESENCE_STATUS_DELIVERY
+            = new AsyncEventDispatcher.Delivery<
+                    ContactPresenceStatusListener,
+                    ContactPresenceStatusChangeEvent>()
+            {
+                public void deliver(
+                        ContactPresenceStatusListener listener,
+                        ContactPresenceStatusChangeEvent event)
+                {
+                    listener.contactPresenceStatusChanged(event);
+                }
+            };
+
     /**
      * A list of listeners registered for
      * <tt>ContactPresenceStatusChangeEvent</tt>s.
@@ -210,6 +230,20 @@ public void fireContactPresenceStatusChangeEvent(Contact source,
             "Dispatching Contact Status Change. Listeners=" + listeners.size()
                 + " evt=" + evt);
 
+        AsyncEventDispatcher dispatcher
+            = ProtocolProviderActivator.getEventDispatcher();
+
+        if (dispatcher != null)
+        {
+            dispatcher.dispatch(
+                    this,
+                    listeners,
+                    evt,
+                    CONTACT_PRESENCE_STATUS_DELIVERY,
+                    AsyncEventDispatcher.Overflow.BLOCK);
+            return;
+        }
+
         for (ContactPresenceStatusListener listener : listeners)
             listener.contactPresenceStatusChanged(evt);
     }
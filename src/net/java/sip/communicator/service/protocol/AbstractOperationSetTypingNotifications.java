@@ -44,6 +44,47 @@
     private static final Logger logger
         = Logger.getLogger(AbstractOperationSetTypingNotifications.class);
 
+    /**
+     * Delivers received <tt>TypingNotificationEvent</tt>s when they are
+     * delivered by the <tt>AsyncEventDispatcher</tt> of the operation sets.
+     */
+    private static final AsyncEventDispatcher.Delivery<
+            TypingNotificationsListener,
+            TypingNotificationEvent>
+        TYPING_NOTIFICATION_DELIVERY
+            = new AsyncEventDispatcher.Delivery<
+                    TypingNotificationsListener,
+                    TypingNotificationEvent>()
+            {
+                public void deliver(
+                        TypingNotificationsListener listener,
+                        TypingNotificationEvent event)
+                {
+                    listener.typingNotificationReceived(event);
+                }
+            };
+
+    /**
+     * Delivers the <tt>TypingNotificationEvent</tt>s of failed deliveries
+     * when they are delivered by the <tt>AsyncEventDispatcher</tt> of the
+     * operation sets.
+     */
+    private static final AsyncEventDispatcher.Delivery<
+            TypingNotificationsListener,
+            TypingNotificationEvent>
+        TYPING_NOTIFICATION_DELIVERY_FAILED_DELIVERY
+            = new AsyncEventDispatcher.Delivery<
+                    TypingNotificationsListener,
+                    TypingNotificationEvent>()
+            {
+                public void deliver(
+                        TypingNotificationsListener listener,
+                        TypingNotificationEvent event)
+                {
+                    listener.typingNotificationDeliveryFailed(event);
+                }
+            };
+
     /**
      * The provider that created us.
      */
@@ -140,6 +181,21 @@ public void fireTypingNotificationsEvent(
         TypingNotificationEvent evt
             = new TypingNotificationEvent(sourceContact, evtCode);
 
+        AsyncEventDispatcher dispatcher
+            = ProtocolProviderActivator.getEventDispatcher();
+
+        if (dispatcher != null)
+        {
+            // a typing notification is superseded by the next one
+            dispatcher.dispatch(
+                    this,
+                    Arrays.asList(listeners),
+                    evt,
+                    TYPING_NOTIFICATION_DELIVERY,
+                    AsyncEventDispatcher.Overflow.DROP);
+            return;
+        }
+
         for (TypingNotificationsListener listener : listeners)
             listener.typingNotificationReceived(evt);
     }
@@ -177,6 +233,20 @@ public void fireTypingNotificationsDeliveryFailedEvent(
         TypingNotificationEvent evt
             = new TypingNotificationEvent(sourceContact, evtCode);
 
+        AsyncEventDispatcher dispatcher
+            = ProtocolProviderActivator.getEventDispatcher();
+
+        if (dispatcher != null)
+        {
+            dispatcher.dispatch(
+                    this,
+                    Arrays.asList(listeners),
+                    evt,
+                    TYPING_NOTIFICATION_DELIVERY_FAILED_DELIVERY,
+                    AsyncEventDispatcher.Overflow.DROP);
+            return;
+        }
+
         for (TypingNotificationsListener listener : listeners)
             listener.typingNotificationDeliveryFailed(evt);
     }
@@ -19,59 +19,147 @@
 
 import java.util.*;
 
+import net.java.sip.communicator.util.*;
+
 /**
+ * Keeps the <tt>TransformLayer</tt>s of a protocol provider in the order of
+ * their priorities, the layers with the lowest priority value transforming
+ * the messages first and the layers with equal priorities in the order they
+ * were added.
+ * <p>
+ * The layers are kept in an immutable snapshot which is replaced when a layer
+ * is added or removed, so that transforming a message does not lock
+ * anything.
+ * </p>
+ *
  * @author George Politis
  */
 public class OperationSetInstantMessageTransformImpl
     implements OperationSetInstantMessageTransform
 {
-    public final Map<Integer, Vector<TransformLayer>> transformLayers
-        = new Hashtable<Integer, Vector<TransformLayer>>();
-
     private static final int defaultPriority = 1;
 
+    /**
+     * Orders the layers by priority. The sort of the snapshots is stable so
+     * the layers with equal priorities stay in the order they were added.
+     */
+    private static final Comparator<Layer> PRIORITY_ORDER
+        = new Comparator<Layer>()
+        {
+            public int compare(Layer layer1, Layer layer2)
+            {
+                return (layer1.priority < layer2.priority)
+                    ? -1
+                    : ((layer1.priority == layer2.priority) ? 0 : 1);
+            }
+        };
+
+    /**
+     * The layers in the order they transform the messages. The array is
+     * never modified, it is replaced under the lock of this instance.
+     */
+    private volatile Layer[] layers = new Layer[0];
+
     public void addTransformLayer(TransformLayer transformLayer)
     {
         this.addTransformLayer(defaultPriority, transformLayer);
     }
 
-    public void addTransformLayer(int priority, TransformLayer transformLayer)
+    public synchronized void addTransformLayer(
+            int priority,
+            TransformLayer transformLayer)
     {
-        synchronized (transformLayers)
-        {
-            if (!transformLayers.containsKey(defaultPriority))
-                transformLayers.put(defaultPriority,
-                    new Vector<TransformLayer>());
+        Layer[] newLayers = Arrays.copyOf(layers, layers.length + 1);
 
-            transformLayers.get(defaultPriority).add(transformLayer);
-        }
+        newLayers[layers.length] = new Layer(priority, transformLayer);
+        Arrays.sort(newLayers, PRIORITY_ORDER);
+        layers = newLayers;
     }
 
     public boolean containsLayer(TransformLayer layer)
     {
-        synchronized (transformLayers)
+        for (Layer l : layers)
         {
-            for (Map.Entry<Integer, Vector<TransformLayer>> entry
-                    : transformLayers.entrySet())
-            {
-                if (entry.getValue().contains(layer))
-                    return true;
-            }
-
+            if (l.transformLayer.equals(layer))
+                return true;
         }
         return false;
     }
 
-    public void removeTransformLayer(TransformLayer transformLayer)
+    public synchronized void removeTransformLayer(
+            TransformLayer transformLayer)
     {
-        synchronized (transformLayers)
+        List<Layer> newLayers = new ArrayList<Layer>(Arrays.asList(layers));
+
+        for (Iterator<Layer> i = newLayers.iterator(); i.hasNext();)
         {
-            for (Map.Entry<Integer, Vector<TransformLayer>> entry
-                    : transformLayers.entrySet())
-            {
-                entry.getValue().remove(transformLayer);
-            }
+            if (i.next().transformLayer.equals(transformLayer))
+                i.remove();
         }
+        if (newLayers.size() != layers.length)
+            layers = newLayers.toArray(new Layer[newLayers.size()]);
     }
 
+    /**
+     * Returns the layers in the order they transform the messages.
+     *
+     * @return a snapshot of the layers, which must not be modified
+     */
+    Layer[] getLayers()
+    {
+        return layers;
+    }
+
+    /**
+     * Returns the time the layers took to transform the messages.
+     *
+     * @return a description of the time the layers took to transform the
+     * messages, in the order they transform the messages
+     */
+    public Map<String, String> getLayerStatistics()
+    {
+        Map<String, String> statistics = new LinkedHashMap<String, String>();
+
+        for (Layer layer : layers)
+        {
+            statistics.put(
+                    layer.priority + " " + layer.transformLayer,
+                    layer.latency.toString());
+        }
+        return statistics;
+    }
+
+    /**
+     * A <tt>TransformLayer</tt> with its priority and the time it takes to
+     * transform the messages.
+     */
+    static class Layer
+    {
+        /**
+         * The priority of the layer.
+         */
+        final int priority;
+
+        /**
+         * The layer.
+         */
+        final TransformLayer transformLayer;
+
+        /**
+         * The time the layer takes to transform the messages.
+         */
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        /**
+         * Initializes a new <tt>Layer</tt>.
+         *
+         * @param priority the priority of the layer
+         * @param transformLayer the layer
+         */
+        Layer(int priority, TransformLayer transformLayer)
+        {
+            this.priority = priority;
+            this.transformLayer = transformLayer;
+        }
+    }
 }
@@ -25,6 +25,7 @@
 import org.osgi.framework.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Implements <code>BundleActivator</code> for the purposes of
@@ -79,6 +80,50 @@
      */
     private static CalendarService calendarService;
 
+    /**
+     * The name of the property which sets the number of threads delivering
+     * the events of the operation sets to their listeners. The events are
+     * delivered on the threads which fire them if it is zero, the default.
+     */
+    private static final String EVENT_DISPATCH_THREAD_COUNT_PROPERTY_NAME
+        = "net.java.sip.communicator.service.protocol"
+            + ".EVENT_DISPATCH_THREAD_COUNT";
+
+    /**
+     * The name of the property which sets the maximum number of events of an
+     * operation set waiting for a listener when they are delivered by
+     * dedicated threads.
+     */
+    private static final String EVENT_DISPATCH_QUEUE_CAPACITY_PROPERTY_NAME
+        = "net.java.sip.communicator.service.protocol"
+            + ".EVENT_DISPATCH_QUEUE_CAPACITY";
+
+    /**
+     * The default maximum number of events of an operation set waiting for a
+     * listener.
+     */
+    private static final int DEFAULT_EVENT_DISPATCH_QUEUE_CAPACITY = 1000;
+
+    /**
+     * The time in milliseconds above which a listener handling an event of an
+     * operation set is reported as slow.
+     */
+    private static final long SLOW_LISTENER_THRESHOLD = 100;
+
+    /**
+     * The threads which deliver the events of the operation sets to their
+     * listeners, or <tt>null</tt> if the events are delivered on the threads
+     * which fire them.
+     */
+    private static ExecutorService eventDispatchExecutor;
+
+    /**
+     * The <tt>AsyncEventDispatcher</tt> which delivers the events of the
+     * operation sets to their listeners, or <tt>null</tt> if the events are
+     * delivered on the threads which fire them.
+     */
+    private static volatile AsyncEventDispatcher eventDispatcher;
+
     /**
      * The <code>SingleCallInProgressPolicy</code> making sure that the
      * <code>Call</code>s accessible in the <code>BundleContext</code> of this
@@ -219,6 +264,106 @@ public void start(BundleContext bundleContext)
 
         singleCallInProgressPolicy =
             new SingleCallInProgressPolicy(bundleContext);
+
+        startEventDispatching(bundleContext);
+    }
+
+    /**
+     * Starts the threads which deliver the events of the operation sets to
+     * their listeners if the user preferences ask for them.
+     *
+     * @param bundleContext the <code>BundleContext</code> in which the bundle
+     *            activation represented by this <code>BundleActivator</code>
+     *            executes
+     */
+    private static void startEventDispatching(BundleContext bundleContext)
+    {
+        ConfigurationService cfg
+            = ServiceUtils.getService(
+                    bundleContext,
+                    ConfigurationService.class);
+
+        if (cfg == null)
+            return;
+
+        int threadCount
+            = cfg.getInt(EVENT_DISPATCH_THREAD_COUNT_PROPERTY_NAME, 0);
+
+        if (threadCount <= 0)
+            return;
+
+        int capacity
+            = cfg.getInt(
+                    EVENT_DISPATCH_QUEUE_CAPACITY_PROPERTY_NAME,
+                    DEFAULT_EVENT_DISPATCH_QUEUE_CAPACITY);
+
+        eventDispatchExecutor
+            = Executors.newFixedThreadPool(
+                    threadCount,
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t
+                                = new Thread(
+                                        r,
+                                        AsyncEventDispatcher.class
+                                            .getSimpleName());
+
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        eventDispatcher
+            = new AsyncEventDispatcher(
+                    eventDispatchExecutor,
+                    Math.max(1, capacity),
+                    SLOW_LISTENER_THRESHOLD);
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    "Delivering the events of the operation sets on "
+                        + threadCount + " thread(s)");
+        }
+    }
+
+    /**
+     * Stops the threads which deliver the events of the operation sets to
+     * their listeners. The events fired afterwards are delivered on the
+     * threads which fire them.
+     */
+    private static void stopEventDispatching()
+    {
+        AsyncEventDispatcher dispatcher = eventDispatcher;
+
+        eventDispatcher = null;
+        if (eventDispatchExecutor != null)
+        {
+            eventDispatchExecutor.shutdown();
+            eventDispatchExecutor = null;
+        }
+
+        if ((dispatcher != null) && logger.isInfoEnabled())
+        {
+            for (Map.Entry<String, String> e
+                    : dispatcher.getStatistics().entrySet())
+            {
+                logger.info(e.getKey() + ": " + e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Gets the <tt>AsyncEventDispatcher</tt> which delivers the events of the
+     * operation sets to their listeners.
+     *
+     * @return the <tt>AsyncEventDispatcher</tt> which delivers the events of
+     * the operation sets or <tt>null</tt> if the operation sets are to
+     * deliver their events on the threads which fire them
+     */
+    public static AsyncEventDispatcher getEventDispatcher()
+    {
+        return eventDispatcher;
     }
 
     /**
@@ -232,6 +377,8 @@ public void start(BundleContext bundleContext)
      */
     public void stop(BundleContext bundleContext)
     {
+        stopEventDispatching();
+
         if (accountManagerServiceRegistration != null)
         {
             accountManagerServiceRegistration.unregister();
@@ -19,6 +19,7 @@
 
 import java.beans.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
@@ -120,12 +121,33 @@
     private static final String PARTIAL_NOTIFICATIONS_PROP_NAME
             = "RFC4575_PARTIAL_NOTIFICATIONS_ENABLED";
 
+    /**
+     * The time in milliseconds during which changes to a conference are
+     * coalesced into a single round of notifications.
+     */
+    protected static final long NOTIFY_COALESCE_WINDOW = 100;
+
     /**
      * The <tt>OperationSetBasicTelephony</tt> implementation which this
      * instance uses to carry out tasks such as establishing <tt>Call</tt>s.
      */
     private OperationSetBasicTelephonyT basicTelephony;
 
+    /**
+     * The descriptions of the remote users of the conferences in which the
+     * <tt>Call</tt>s of this instance participate, keyed by
+     * <tt>CallConference</tt>.
+     */
+    private final Map<Object, RemoteUsers> remoteUsersCache
+        = new WeakHashMap<Object, RemoteUsers>();
+
+    /**
+     * The generation of the conference-related information, incremented each
+     * time the information changes. Descriptions of remote users computed for
+     * an older generation are not reused.
+     */
+    private final AtomicLong conferenceStateGeneration = new AtomicLong();
+
     /**
      * The <tt>CallPeerListener</tt> which listens to modifications in the
      * properties/state of <tt>CallPeer</tt> so that NOTIFY requests can be sent
@@ -598,12 +620,52 @@ public CallPeer inviteCalleeToCall(String uri, Call call)
      * in which a specific <tt>Call</tt> is participating about changes in the
      * telephony conference-related information.
      *
+     * The notification is not sent right away: all changes to the conference
+     * within {@link #NOTIFY_COALESCE_WINDOW} milliseconds are coalesced into a
+     * single round of notifications.
+     *
      * @param call the <tt>Call</tt> which specifies the telephony conference
      * the associated <tt>CallPeer</tt>s of which are to be notified about
      * changes in the telephony conference-related information
      */
-    @SuppressWarnings("rawtypes")
-    protected void notifyAll(Call call)
+    protected void notifyAll(final Call call)
+    {
+        CallConference conference = call.getConference();
+
+        if (conference == null)
+            conferenceStateChanged();
+        else
+        {
+            for (Call conferenceCall : conference.getCalls())
+            {
+                AbstractOperationSetTelephonyConferencing<?,?,?,?,?> opSet
+                    = getTelephonyConferencing(conferenceCall);
+
+                if (opSet != null)
+                    opSet.conferenceStateChanged();
+            }
+        }
+
+        ConferenceNotificationScheduler.getInstance().schedule(
+                (conference == null) ? call : conference,
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        notifyAllNow(call);
+                    }
+                },
+                NOTIFY_COALESCE_WINDOW);
+    }
+
+    /**
+     * Notifies all <tt>CallPeer</tt>s associated with the telephony conference
+     * in which a specific <tt>Call</tt> is participating about the current
+     * telephony conference-related information.
+     *
+     * @param call the <tt>Call</tt> which specifies the telephony conference
+     */
+    private void notifyAllNow(Call call)
     {
         CallConference conference = call.getConference();
 
@@ -617,19 +679,35 @@ protected void notifyAll(Call call)
              */
             for (Call conferenceCall : conference.getCalls())
             {
-                OperationSetTelephonyConferencing opSet
-                    = conferenceCall.getProtocolProvider().getOperationSet(
-                            OperationSetTelephonyConferencing.class);
+                AbstractOperationSetTelephonyConferencing<?,?,?,?,?> opSet
+                    = getTelephonyConferencing(conferenceCall);
 
-                if (opSet instanceof AbstractOperationSetTelephonyConferencing)
-                {
-                    ((AbstractOperationSetTelephonyConferencing) opSet)
-                        .notifyCallPeers(conferenceCall);
-                }
+                if (opSet != null)
+                    opSet.notifyCallPeers(conferenceCall);
             }
         }
     }
 
+    /**
+     * Gets the <tt>AbstractOperationSetTelephonyConferencing</tt> of the
+     * protocol of a specific <tt>Call</tt>.
+     *
+     * @param call the <tt>Call</tt>
+     * @return the <tt>AbstractOperationSetTelephonyConferencing</tt> of the
+     * protocol of <tt>call</tt> or <tt>null</tt>
+     */
+    private static AbstractOperationSetTelephonyConferencing<?,?,?,?,?>
+        getTelephonyConferencing(Call call)
+    {
+        OperationSetTelephonyConferencing opSet
+            = call.getProtocolProvider().getOperationSet(
+                    OperationSetTelephonyConferencing.class);
+
+        return (opSet instanceof AbstractOperationSetTelephonyConferencing)
+            ? (AbstractOperationSetTelephonyConferencing<?,?,?,?,?>) opSet
+            : null;
+    }
+
     /**
      * Notifies all <tt>CallPeer</tt>s associated with a specific <tt>Call</tt>
      * about changes in the telephony conference-related information. In
@@ -1011,84 +1089,125 @@ public static String stripParametersFromAddress(String address)
     }
 
     /**
-     * Creates a <tt>ConferenceInfoDocument</tt> which describes the current
+     * Creates a <tt>ConferenceInfoState</tt> which describes the current
      * state of the conference in which <tt>callPeer</tt> participates. The
-     * created document contains a "full" description (as opposed to a partial
+     * created state is a "full" description (as opposed to a partial
      * description, see RFC4575).
      *
-     * @return a <tt>ConferenceInfoDocument</tt> which describes the current
+     * The descriptions of the remote users do not depend on <tt>callPeer</tt>
+     * and are computed once per change of the conference, and shared by the
+     * states created for all the <tt>CallPeer</tt>s of the conference.
+     *
+     * @param callPeer the <tt>CallPeer</tt> to which the state is to be sent
+     * @return a <tt>ConferenceInfoState</tt> which describes the current
      * state of the conference in which this <tt>CallPeer</tt> participates.
      */
-    protected ConferenceInfoDocument getCurrentConferenceInfo(
+    protected ConferenceInfoState getCurrentConferenceState(
             MediaAwareCallPeer<?,?,?> callPeer)
     {
-        ConferenceInfoDocument confInfo;
-        try
-        {
-           confInfo = new ConferenceInfoDocument();
-        }
-        catch (XMLException e)
-        {
-            return null;
-        }
-        confInfo.setState(ConferenceInfoDocument.State.FULL);
-        confInfo.setEntity(getLocalEntity(callPeer));
-
         Call call = callPeer.getCall();
         if (call == null)
             return null;
 
-        List<CallPeer> conferenceCallPeers = CallConference.getCallPeers(call);
-        confInfo.setUserCount(
-                1 /* the local peer/user */ + conferenceCallPeers.size());
+        List<ConferenceInfoState.User> remoteUsers = getRemoteUsers(call);
+        List<ConferenceInfoState.User> users
+            = new ArrayList<ConferenceInfoState.User>(1 + remoteUsers.size());
 
         /* The local user */
-        addPeerToConferenceInfo(confInfo, callPeer, false);
+        users.add(createUser(callPeer, false));
 
         /* Remote users */
+        users.addAll(remoteUsers);
+
+        return
+            new ConferenceInfoState(
+                    getLocalEntity(callPeer),
+                    1 /* the local peer/user */ + remoteUsers.size(),
+                    users);
+    }
+
+    /**
+     * Returns the descriptions of the remote users of the conference in which
+     * <tt>call</tt> participates, computing them only if the conference has
+     * changed since they were last computed.
+     *
+     * @param call the <tt>Call</tt> which specifies the conference
+     * @return the descriptions of the remote users of the conference
+     */
+    private List<ConferenceInfoState.User> getRemoteUsers(Call call)
+    {
+        CallConference conference = call.getConference();
+        Object key = (conference == null) ? call : conference;
+        long generation = conferenceStateGeneration.get();
+
+        synchronized (remoteUsersCache)
+        {
+            RemoteUsers cached = remoteUsersCache.get(key);
+
+            if (cached != null && cached.generation == generation)
+                return cached.users;
+        }
+
+        List<CallPeer> conferenceCallPeers = CallConference.getCallPeers(call);
+        List<ConferenceInfoState.User> users
+            = new ArrayList<ConferenceInfoState.User>(
+                    conferenceCallPeers.size());
+
         for (CallPeer conferenceCallPeer : conferenceCallPeers)
         {
             if (conferenceCallPeer instanceof MediaAwareCallPeer<?,?,?>)
             {
-                addPeerToConferenceInfo(
-                        confInfo,
-                        (MediaAwareCallPeer<?,?,?>)conferenceCallPeer,
-                        true);
+                users.add(
+                        createUser(
+                                (MediaAwareCallPeer<?,?,?>) conferenceCallPeer,
+                                true));
             }
         }
+        users = Collections.unmodifiableList(users);
 
-        return confInfo;
+        synchronized (remoteUsersCache)
+        {
+            remoteUsersCache.put(key, new RemoteUsers(generation, users));
+        }
+        return users;
+    }
+
+    /**
+     * Invalidates the descriptions of the remote users computed by
+     * {@link #getRemoteUsers(Call)}, because the conference-related
+     * information has changed.
+     */
+    private void conferenceStateChanged()
+    {
+        conferenceStateGeneration.incrementAndGet();
     }
 
     /**
-     * Adds a <tt>user</tt> element to <tt>confInfo</tt> which describes
+     * Creates a <tt>ConferenceInfoState.User</tt> which describes
      * <tt>callPeer</tt>, or the local peer if <tt>remote</tt> is <tt>false</tt>.
      *
-     * @param confInfo the <tt>ConferenceInformationDocument</tt> to which to
-     * add a <tt>user</tt> element
      * @param callPeer the <tt>CallPeer</tt> which should be described
      * @param remote <tt>true</tt> to describe <tt>callPeer</tt>, or
      * <tt>false</tt> to describe the local peer.
+     * @return the description of the user
      */
-    private void addPeerToConferenceInfo(
-            ConferenceInfoDocument confInfo,
+    private ConferenceInfoState.User createUser(
             MediaAwareCallPeer<?,?,?> callPeer,
             boolean remote)
     {
         String entity
             = remote ? callPeer.getEntity() : getLocalEntity(callPeer);
-        ConferenceInfoDocument.User user = confInfo.addNewUser(entity);
 
         String displayName
             = remote ? callPeer.getDisplayName() : getLocalDisplayName();
-        user.setDisplayText(displayName);
-
-        ConferenceInfoDocument.Endpoint endpoint = user.addNewEndpoint(entity);
 
-        endpoint.setStatus(
-            remote
+        ConferenceInfoDocument.EndpointStatusType status
+            = remote
                 ? getEndpointStatus(callPeer)
-                : ConferenceInfoDocument.EndpointStatusType.connected);
+                : ConferenceInfoDocument.EndpointStatusType.connected;
+
+        List<ConferenceInfoState.Media> medias
+            = new ArrayList<ConferenceInfoState.Media>(2);
 
         CallPeerMediaHandler<?> mediaHandler
             = callPeer.getMediaHandler();
@@ -1153,16 +1272,24 @@ else if (mediaType == MediaType.VIDEO &&
 
                 if ((srcId != -1) || (direction != MediaDirection.INACTIVE))
                 {
-                    ConferenceInfoDocument.Media media
-                        = endpoint.addNewMedia(mediaType.toString());
-
-                    media.setType(mediaType.toString());
-                    if (srcId != -1)
-                        media.setSrcId(Long.toString(srcId));
-                    media.setStatus(direction.toString());
+                    medias.add(
+                            new ConferenceInfoState.Media(
+                                    mediaType.toString(),
+                                    mediaType.toString(),
+                                    (srcId == -1) ? null : Long.toString(srcId),
+                                    direction.toString()));
                 }
             }
         }
+
+        ConferenceInfoState.Endpoint endpoint
+            = new ConferenceInfoState.Endpoint(entity, status, medias);
+
+        return
+            new ConferenceInfoState.User(
+                    entity,
+                    displayName,
+                    Collections.singletonList(endpoint));
     }
 
     /**
@@ -1237,10 +1364,9 @@ private ConferenceInfoDocument.EndpointStatusType getEndpointStatus(
     }
 
     /**
-     * @param from A document with state <tt>full</tt> from which to generate a
-     * "diff".
-     * @param to A document with state <tt>full</tt> to which to generate a
-     * "diff"
+     * @param from The state which was last sent, or <tt>null</tt> if no
+     * state has been sent yet.
+     * @param to The state to which to generate a "diff"
      * @return a <tt>ConferenceInfoDocument</tt>, such that when it is applied
      * to <tt>from</tt> using the procedure defined in section 4.6 of RFC4575,
      * the result is <tt>to</tt>. May return <tt>null</tt> if <tt>from</tt> and
@@ -1248,110 +1374,38 @@ private ConferenceInfoDocument.EndpointStatusType getEndpointStatus(
      * needs to be sent)
      */
     protected ConferenceInfoDocument getConferenceInfoDiff(
-            ConferenceInfoDocument from,
-            ConferenceInfoDocument to)
-        throws IllegalArgumentException
+            ConferenceInfoState from,
+            ConferenceInfoState to)
     {
-        if (from.getState() != ConferenceInfoDocument.State.FULL)
-            throw new IllegalArgumentException("The 'from' document needs to "
-                    + "have state=full");
-        if (to.getState() != ConferenceInfoDocument.State.FULL)
-            throw new IllegalArgumentException("The 'to' document needs to "
-                    + "have state=full");
-
-        if (!isPartialNotificationEnabled())
-        {
-            return conferenceInfoDocumentsMatch(from, to)
-                ? null
-                : to;
-        }
-
-        ConferenceInfoDocument diff;
         try
         {
-            diff = new ConferenceInfoDocument();
-        }
-        catch (XMLException e)
-        {
-            return conferenceInfoDocumentsMatch(from, to)
-                    ? null
-                    : to;
-        }
-
-        diff.setState(ConferenceInfoDocument.State.PARTIAL);
-        diff.setUsersState(ConferenceInfoDocument.State.PARTIAL);
-
-        //temporary, used for xmpp only
-        String sid = to.getSid();
-        if (sid != null && !sid.equals(""))
-            diff.setSid(to.getSid());
-
-        diff.setUserCount(to.getUserCount());
-        diff.setEntity(to.getEntity());
-
-        boolean needsPartial = false;
-        boolean hasDifference = false;
-        if (!from.getEntity().equals(to.getEntity())
-                || from.getUserCount() != to.getUserCount())
-        {
-            hasDifference = true;
-        }
+            if (from == null)
+                return to.toDocument();
 
-        // find users which have been removed in 'to'
-        for (ConferenceInfoDocument.User user : from.getUsers())
-        {
-            if(to.getUser(user.getEntity()) == null)
+            if (!isPartialNotificationEnabled())
             {
-                ConferenceInfoDocument.User deletedUser
-                        = diff.addNewUser(user.getEntity());
-                deletedUser.setState(ConferenceInfoDocument.State.DELETED);
-                hasDifference = true;
-                needsPartial = true;
+                return to.matches(from)
+                    ? null
+                    : to.toDocument();
             }
-        }
 
-        for (ConferenceInfoDocument.User toUser : to.getUsers())
-        {
-            ConferenceInfoDocument.User fromUser
-                    = from.getUser(toUser.getEntity());
-            if (!usersMatch(toUser, fromUser))
-            {
-                hasDifference = true;
-                diff.addUser(toUser);
-            }
-            else
+            ConferenceInfoState.Diff diff = to.diff(from);
+
+            if (logger.isDebugEnabled())
             {
-                //if there is a "user" element which didn't change, we skip it
-                //and we need to send state=partial, because otherwise it will
-                //be removed by the recipient
-                needsPartial = true;
+                logger.debug("Generated partial notification. From: "
+                        + from.getUsers() + "\nTo: " + to.getUsers()
+                        + "\nDiff: "
+                        + (diff == null ? null : diff.getChangedUsers()));
             }
-        }
 
-        if (logger.isDebugEnabled())
-        {
-            logger.debug("Generated partial notification. From: " + from
-                    + "\nTo: " + to + "\nDiff: " + diff + "(hasDifference: "
-                    + hasDifference + ")");
+            return (diff == null) ? null : diff.toDocument();
         }
-
-        if (!hasDifference)
-            return null;
-
-        /*
-         * In some cases (when all the user elements have changed, and none have
-         * been removed) we are essentially generating a full document, but
-         * marking it 'partial'. In this case it is better to send the full
-         * document, just in case the receiver lost the previous document
-         * somehow.
-         */
-        if (!needsPartial)
+        catch (XMLException e)
         {
-            diff.setState(ConferenceInfoDocument.State.FULL);
-            diff.setUsersState(ConferenceInfoDocument.State.FULL);
+            logger.error("Could not create a new ConferenceInfoDocument", e);
+            return null;
         }
-
-        return diff;
     }
 
     /**
@@ -1483,156 +1537,6 @@ else if (endpointState
         return setConferenceInfoDocument(callPeer, newDocument);
     }
 
-    /**
-     * @param a A document with state <tt>full</tt> which to compare to
-     * <tt>b</tt>
-     * @param b A document with state <tt>full</tt> which to compare to
-     * <tt>a</tt>
-     * @return <tt>false</tt> if the two documents are found to be different,
-     * <tt>true</tt> otherwise (that is, it can return true for non-identical
-     * documents).
-     */
-    private boolean conferenceInfoDocumentsMatch(
-            ConferenceInfoDocument a,
-            ConferenceInfoDocument b)
-    {
-        if (a.getState() != ConferenceInfoDocument.State.FULL)
-            throw new IllegalArgumentException("The 'a' document needs to"
-                    + "have state=full");
-        if (b.getState() != ConferenceInfoDocument.State.FULL)
-            throw new IllegalArgumentException("The 'b' document needs to"
-                    + "have state=full");
-
-        if (!stringsMatch(a.getEntity(), b.getEntity()))
-            return false;
-        else if (a.getUserCount() != b.getUserCount())
-            return false;
-        else if (a.getUsers().size() != b.getUsers().size())
-            return false;
-
-        for(ConferenceInfoDocument.User aUser : a.getUsers())
-        {
-            if (!usersMatch(aUser, b.getUser(aUser.getEntity())))
-                return false;
-        }
-        return true;
-    }
-
-    /**
-     * Checks whether two <tt>ConferenceInfoDocument.User</tt> instances
-     * match according to the needs of our implementation. Can return
-     * <tt>true</tt> for users which are not identical.
-     *
-     * @param a A <tt>ConferenceInfoDocument.User</tt> to compare
-     * @param b A <tt>ConferenceInfoDocument.User</tt> to compare
-     * @return <tt>false</tt> if <tt>a</tt> and <tt>b</tt> are found to be
-     * different in a way that is significant for our needs, <tt>true</tt>
-     * otherwise.
-     */
-    private boolean usersMatch(
-            ConferenceInfoDocument.User a,
-            ConferenceInfoDocument.User b)
-    {
-        if (a == null && b == null)
-            return true;
-        else if (a == null || b == null)
-            return false;
-        else if (!stringsMatch(a.getEntity(), b.getEntity()))
-            return false;
-        else if (!stringsMatch(a.getDisplayText(), b.getDisplayText()))
-            return false;
-        else if (a.getEndpoints().size() != b.getEndpoints().size())
-            return false;
-
-        for (ConferenceInfoDocument.Endpoint aEndpoint : a.getEndpoints())
-        {
-            if (!endpointsMatch(aEndpoint, b.getEndpoint(aEndpoint.getEntity())))
-                return false;
-        }
-
-        return true;
-    }
-
-    /**
-     * Checks whether two <tt>ConferenceInfoDocument.Endpoint</tt> instances
-     * match according to the needs of our implementation. Can return
-     * <tt>true</tt> for endpoints which are not identical.
-     *
-     * @param a A <tt>ConferenceInfoDocument.Endpoint</tt> to compare
-     * @param b A <tt>ConferenceInfoDocument.Endpoint</tt> to compare
-     * @return <tt>false</tt> if <tt>a</tt> and <tt>b</tt> are found to be
-     * different in a way that is significant for our needs, <tt>true</tt>
-     * otherwise.
-     */
-    private boolean endpointsMatch(
-            ConferenceInfoDocument.Endpoint a,
-            ConferenceInfoDocument.Endpoint b)
-    {
-        if (a == null && b == null)
-            return true;
-        else if (a == null || b == null)
-            return false;
-        else if (!stringsMatch(a.getEntity(), b.getEntity()))
-            return false;
-        else if (a.getStatus() != b.getStatus())
-            return false;
-        else if (a.getMedias().size() != b.getMedias().size())
-            return false;
-
-        for (ConferenceInfoDocument.Media aMedia : a.getMedias())
-        {
-            if (!mediasMatch(aMedia, b.getMedia(aMedia.getId())))
-                return false;
-        }
-        return true;
-    }
-
-    /**
-     * Checks whether two <tt>ConferenceInfoDocument.Media</tt> instances
-     * match according to the needs of our implementation. Can return
-     * <tt>true</tt> for endpoints which are not identical.
-     *
-     * @param a A <tt>ConferenceInfoDocument.Media</tt> to compare
-     * @param b A <tt>ConferenceInfoDocument.Media</tt> to compare
-     * @return <tt>false</tt> if <tt>a</tt> and <tt>b</tt> are found to be
-     * different in a way that is significant for our needs, <tt>true</tt>
-     * otherwise.
-     */
-    private boolean mediasMatch(
-            ConferenceInfoDocument.Media a,
-            ConferenceInfoDocument.Media b)
-    {
-        if (a == null && b == null)
-            return true;
-        else if (a == null || b == null)
-            return false;
-        else if (!stringsMatch(a.getId(), b.getId()))
-            return false;
-        else if (!stringsMatch(a.getSrcId(), b.getSrcId()))
-            return false;
-        else if (!stringsMatch(a.getType(), b.getType()))
-            return false;
-        else if (!stringsMatch(a.getStatus(), b.getStatus()))
-            return false;
-
-        return true;
-    }
-
-    /**
-     * @param a A <tt>String</tt> to compare to <tt>b</tt>
-     * @param b A <tt>String</tt> to compare to <tt>a</tt>
-     * @return <tt>true</tt> if and only if <tt>a</tt> and <tt>b</tt> are both
-     * <tt>null</tt>, or they are equal as <tt>String</tt>s
-     */
-    private boolean stringsMatch(String a, String b)
-    {
-        if (a == null && b == null)
-            return true;
-        else if (a == null || b == null)
-            return false;
-        return a.equals(b);
-    }
-
     /**
      * Checks whether sending of RFC4575 partial notifications is enabled in
      * the configuration. If disabled, RFC4575 documents will always be sent
@@ -1659,4 +1563,34 @@ public ConferenceDescription setupConference(ChatRoom chatRoom)
     {
         return null;
     }
+
+    /**
+     * The descriptions of the remote users of a conference, together with the
+     * generation of the conference-related information they were computed
+     * for.
+     */
+    private static class RemoteUsers
+    {
+        /**
+         * The generation the descriptions were computed for.
+         */
+        final long generation;
+
+        /**
+         * The descriptions of the remote users.
+         */
+        final List<ConferenceInfoState.User> users;
+
+        /**
+         * Initializes a new <tt>RemoteUsers</tt> instance.
+         *
+         * @param generation the generation the descriptions were computed for
+         * @param users the descriptions of the remote users
+         */
+        RemoteUsers(long generation, List<ConferenceInfoState.User> users)
+        {
+            this.generation = generation;
+            this.users = users;
+        }
+    }
 }
@@ -0,0 +1,812 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+
+import org.jitsi.util.xml.*;
+
+/**
+ * A lightweight, entity-indexed description of the state of a telephony
+ * conference, as it is to be sent to one <tt>CallPeer</tt> in a Conference
+ * Information document (RFC4575).
+ *
+ * <p>
+ * Unlike <tt>ConferenceInfoDocument</tt>, instances are not backed by a DOM
+ * tree. States, <tt>User</tt>s, <tt>Endpoint</tt>s and <tt>Media</tt> are
+ * immutable values, so the descriptions of the remote users can be computed
+ * once per conference and shared by the states of all the <tt>CallPeer</tt>s
+ * of that conference. The session ID and the version are changed by deriving
+ * a new state with {@link #withSid(String)} and {@link #withVersion(int)}. Users are looked up by entity in constant time, which keeps
+ * computing the difference between two states linear in the number of users.
+ * A <tt>ConferenceInfoDocument</tt> is only created at the time the
+ * information is actually sent.
+ * </p>
+ */
+public class ConferenceInfoState
+{
+    /**
+     * The value of the <tt>entity</tt> attribute of the
+     * <tt>conference-info</tt> element.
+     */
+    private final String entity;
+
+    /**
+     * The value of the <tt>user-count</tt> element.
+     */
+    private final int userCount;
+
+    /**
+     * The users of the conference, indexed by entity, in document order.
+     */
+    private final Map<String, User> users;
+
+    /**
+     * The Jingle session ID piggybacked on the <tt>conference-info</tt>
+     * element. Temporary, used for XMPP only.
+     */
+    private final String sid;
+
+    /**
+     * The version of the document which was sent for this state.
+     */
+    private final int version;
+
+    /**
+     * Initializes a new <tt>ConferenceInfoState</tt>.
+     *
+     * @param entity the entity of the conference
+     * @param userCount the number of users in the conference
+     * @param users the users of the conference
+     */
+    public ConferenceInfoState(
+            String entity,
+            int userCount,
+            Collection<User> users)
+    {
+        Map<String, User> map
+            = new LinkedHashMap<String, User>((users.size() * 4) / 3 + 1);
+
+        for (User user : users)
+            map.put(user.getEntity(), user);
+
+        this.entity = entity;
+        this.userCount = userCount;
+        this.users = Collections.unmodifiableMap(map);
+        this.sid = null;
+        this.version = 1;
+    }
+
+    /**
+     * Initializes a new <tt>ConferenceInfoState</tt> which shares the users of
+     * another state.
+     *
+     * @param state the state to copy
+     * @param sid the Jingle session ID
+     * @param version the version of the document
+     */
+    private ConferenceInfoState(
+            ConferenceInfoState state,
+            String sid,
+            int version)
+    {
+        this.entity = state.entity;
+        this.userCount = state.userCount;
+        this.users = state.users;
+        this.sid = sid;
+        this.version = version;
+    }
+
+    /**
+     * Returns the entity of the conference.
+     *
+     * @return the entity of the conference
+     */
+    public String getEntity()
+    {
+        return entity;
+    }
+
+    /**
+     * Returns the number of users in the conference.
+     *
+     * @return the number of users in the conference
+     */
+    public int getUserCount()
+    {
+        return userCount;
+    }
+
+    /**
+     * Returns the users of the conference.
+     *
+     * @return the users of the conference
+     */
+    public Collection<User> getUsers()
+    {
+        return users.values();
+    }
+
+    /**
+     * Returns the user with the specified entity.
+     *
+     * @param entity the entity of the user
+     * @return the user with the specified entity or <tt>null</tt>
+     */
+    public User getUser(String entity)
+    {
+        return users.get(entity);
+    }
+
+    /**
+     * Returns the Jingle session ID piggybacked on the
+     * <tt>conference-info</tt> element.
+     *
+     * @return the Jingle session ID or <tt>null</tt>
+     */
+    public String getSid()
+    {
+        return sid;
+    }
+
+    /**
+     * Returns a state which is equal to this one, except for the Jingle
+     * session ID to piggyback on the <tt>conference-info</tt> element.
+     *
+     * @param sid the Jingle session ID
+     * @return a state with the specified Jingle session ID
+     */
+    public ConferenceInfoState withSid(String sid)
+    {
+        return new ConferenceInfoState(this, sid, version);
+    }
+
+    /**
+     * Returns the version of the document which was sent for this state.
+     *
+     * @return the version of the document which was sent for this state
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns a state which is equal to this one, except for the version of
+     * the document which was sent for it.
+     *
+     * @param version the version
+     * @return a state with the specified version
+     */
+    public ConferenceInfoState withVersion(int version)
+    {
+        return new ConferenceInfoState(this, sid, version);
+    }
+
+    /**
+     * Checks whether this state matches <tt>other</tt>, that is whether
+     * no document needs to be sent to go from one to the other.
+     *
+     * @param other the state to compare to
+     * @return <tt>true</tt> if the states match
+     */
+    public boolean matches(ConferenceInfoState other)
+    {
+        return other != null
+            && stringsMatch(entity, other.entity)
+            && userCount == other.userCount
+            && users.equals(other.users);
+    }
+
+    /**
+     * Computes the difference between <tt>from</tt> and this state.
+     *
+     * @param from the state which was last sent
+     * @return the difference or <tt>null</tt> if the states match
+     */
+    public Diff diff(ConferenceInfoState from)
+    {
+        boolean hasDifference
+            = !stringsMatch(from.entity, entity)
+                || from.userCount != userCount;
+        boolean needsPartial = false;
+        List<String> deleted = new ArrayList<String>();
+        List<User> changed = new ArrayList<User>();
+
+        // find users which have been removed
+        for (String fromEntity : from.users.keySet())
+        {
+            if (!users.containsKey(fromEntity))
+            {
+                deleted.add(fromEntity);
+                hasDifference = true;
+                needsPartial = true;
+            }
+        }
+
+        for (User user : users.values())
+        {
+            if (user.equals(from.users.get(user.getEntity())))
+            {
+                // if there is a "user" element which didn't change, we skip it
+                // and we need to send state=partial, because otherwise it will
+                // be removed by the recipient
+                needsPartial = true;
+            }
+            else
+            {
+                hasDifference = true;
+                changed.add(user);
+            }
+        }
+
+        return hasDifference ? new Diff(needsPartial, deleted, changed) : null;
+    }
+
+    /**
+     * Creates a <tt>ConferenceInfoDocument</tt> with state <tt>full</tt>
+     * which describes this state.
+     *
+     * @return a <tt>ConferenceInfoDocument</tt> which describes this state
+     * @throws XMLException if the document failed to be created
+     */
+    public ConferenceInfoDocument toDocument()
+        throws XMLException
+    {
+        return createDocument(
+                ConferenceInfoDocument.State.FULL,
+                null,
+                Collections.<String>emptyList(),
+                getUsers());
+    }
+
+    /**
+     * Creates a <tt>ConferenceInfoDocument</tt> which describes this state.
+     *
+     * @param state the state of the document
+     * @param usersState the state of the <tt>users</tt> element or
+     * <tt>null</tt> to leave it unspecified
+     * @param deletedUsers the entities of the users to describe as deleted
+     * @param changedUsers the users to describe
+     * @return the <tt>ConferenceInfoDocument</tt>
+     * @throws XMLException if the document failed to be created
+     */
+    private ConferenceInfoDocument createDocument(
+            ConferenceInfoDocument.State state,
+            ConferenceInfoDocument.State usersState,
+            List<String> deletedUsers,
+            Collection<User> changedUsers)
+        throws XMLException
+    {
+        ConferenceInfoDocument document = new ConferenceInfoDocument();
+
+        document.setState(state);
+        if (usersState != null)
+            document.setUsersState(usersState);
+        document.setVersion(version);
+        //temporary, used for xmpp only
+        if (sid != null && !sid.equals(""))
+            document.setSid(sid);
+        document.setEntity(entity);
+        document.setUserCount(userCount);
+
+        for (String deletedEntity : deletedUsers)
+        {
+            document.addNewUser(deletedEntity)
+                .setState(ConferenceInfoDocument.State.DELETED);
+        }
+        for (User user : changedUsers)
+            user.addTo(document);
+        return document;
+    }
+
+    /**
+     * @param a A <tt>String</tt> to compare to <tt>b</tt>
+     * @param b A <tt>String</tt> to compare to <tt>a</tt>
+     * @return <tt>true</tt> if and only if <tt>a</tt> and <tt>b</tt> are both
+     * <tt>null</tt>, or they are equal as <tt>String</tt>s
+     */
+    private static boolean stringsMatch(String a, String b)
+    {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+
+    /**
+     * Returns <tt>null</tt> for an empty string, the way the DOM of a
+     * <tt>ConferenceInfoDocument</tt> omits elements with empty text.
+     *
+     * @param s the string
+     * @return <tt>s</tt> or <tt>null</tt> if <tt>s</tt> is empty
+     */
+    private static String emptyToNull(String s)
+    {
+        return (s == null || s.length() == 0) ? null : s;
+    }
+
+    /**
+     * The difference between two <tt>ConferenceInfoState</tt>s, such that
+     * when it is applied to the first using the procedure defined in section
+     * 4.6 of RFC4575, the result is the second.
+     */
+    public class Diff
+    {
+        /**
+         * Whether the difference needs to be sent with state
+         * <tt>partial</tt>.
+         */
+        private final boolean partial;
+
+        /**
+         * The entities of the users which have been removed.
+         */
+        private final List<String> deletedUsers;
+
+        /**
+         * The users which have been added or changed.
+         */
+        private final Collection<User> changedUsers;
+
+        /**
+         * Initializes a new <tt>Diff</tt>.
+         *
+         * @param partial whether the difference needs state <tt>partial</tt>
+         * @param deletedUsers the entities of the removed users
+         * @param changedUsers the added or changed users
+         */
+        private Diff(
+                boolean partial,
+                List<String> deletedUsers,
+                Collection<User> changedUsers)
+        {
+            this.partial = partial;
+            this.deletedUsers = deletedUsers;
+            this.changedUsers = changedUsers;
+        }
+
+        /**
+         * Returns whether the difference needs to be sent with state
+         * <tt>partial</tt>. In some cases (when all the users have changed,
+         * and none have been removed) the difference describes the whole
+         * conference and is sent with state <tt>full</tt>, just in case the
+         * receiver lost the previous document somehow.
+         *
+         * @return <tt>true</tt> if the difference is partial
+         */
+        public boolean isPartial()
+        {
+            return partial;
+        }
+
+        /**
+         * Returns the entities of the users which have been removed.
+         *
+         * @return the entities of the users which have been removed
+         */
+        public List<String> getDeletedUsers()
+        {
+            return deletedUsers;
+        }
+
+        /**
+         * Returns the users which have been added or changed.
+         *
+         * @return the users which have been added or changed
+         */
+        public Collection<User> getChangedUsers()
+        {
+            return changedUsers;
+        }
+
+        /**
+         * Creates the <tt>ConferenceInfoDocument</tt> to send for this
+         * difference.
+         *
+         * @return the <tt>ConferenceInfoDocument</tt> to send
+         * @throws XMLException if the document failed to be created
+         */
+        public ConferenceInfoDocument toDocument()
+            throws XMLException
+        {
+            ConferenceInfoDocument.State state
+                = partial
+                    ? ConferenceInfoDocument.State.PARTIAL
+                    : ConferenceInfoDocument.State.FULL;
+
+            return createDocument(state, state, deletedUsers, changedUsers);
+        }
+    }
+
+    /**
+     * A <tt>user</tt> element of a Conference Information document.
+     */
+    public static class User
+    {
+        /**
+         * The entity of the user.
+         */
+        private final String entity;
+
+        /**
+         * The text of the <tt>display-text</tt> element.
+         */
+        private final String displayText;
+
+        /**
+         * The endpoints of the user, indexed by entity.
+         */
+        private final Map<String, Endpoint> endpoints;
+
+        /**
+         * Initializes a new <tt>User</tt>.
+         *
+         * @param entity the entity of the user
+         * @param displayText the display text of the user
+         * @param endpoints the endpoints of the user
+         */
+        public User(
+                String entity,
+                String displayText,
+                Collection<Endpoint> endpoints)
+        {
+            this.entity = entity;
+            this.displayText = emptyToNull(displayText);
+
+            Map<String, Endpoint> map = new LinkedHashMap<String, Endpoint>();
+
+            for (Endpoint endpoint : endpoints)
+                map.put(endpoint.getEntity(), endpoint);
+            this.endpoints = Collections.unmodifiableMap(map);
+        }
+
+        /**
+         * Returns the entity of the user.
+         *
+         * @return the entity of the user
+         */
+        public String getEntity()
+        {
+            return entity;
+        }
+
+        /**
+         * Returns the display text of the user.
+         *
+         * @return the display text of the user or <tt>null</tt>
+         */
+        public String getDisplayText()
+        {
+            return displayText;
+        }
+
+        /**
+         * Returns the endpoints of the user.
+         *
+         * @return the endpoints of the user
+         */
+        public Collection<Endpoint> getEndpoints()
+        {
+            return endpoints.values();
+        }
+
+        /**
+         * Returns the endpoint with the specified entity.
+         *
+         * @param entity the entity of the endpoint
+         * @return the endpoint or <tt>null</tt>
+         */
+        public Endpoint getEndpoint(String entity)
+        {
+            return endpoints.get(entity);
+        }
+
+        /**
+         * Adds a <tt>user</tt> element describing this user to
+         * <tt>document</tt>.
+         *
+         * @param document the document to add to
+         */
+        void addTo(ConferenceInfoDocument document)
+        {
+            ConferenceInfoDocument.User user = document.addNewUser(entity);
+
+            user.setDisplayText(displayText);
+            for (Endpoint endpoint : endpoints.values())
+                endpoint.addTo(user);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (o == this)
+                return true;
+            if (!(o instanceof User))
+                return false;
+
+            User other = (User) o;
+
+            return stringsMatch(entity, other.entity)
+                && stringsMatch(displayText, other.displayText)
+                && endpoints.equals(other.endpoints);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (entity == null) ? 0 : entity.hashCode();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "User[" + entity + ", " + endpoints.values() + "]";
+        }
+    }
+
+    /**
+     * An <tt>endpoint</tt> element of a Conference Information document.
+     */
+    public static class Endpoint
+    {
+        /**
+         * The entity of the endpoint.
+         */
+        private final String entity;
+
+        /**
+         * The status of the endpoint.
+         */
+        private final ConferenceInfoDocument.EndpointStatusType status;
+
+        /**
+         * The media of the endpoint, indexed by id.
+         */
+        private final Map<String, Media> medias;
+
+        /**
+         * Initializes a new <tt>Endpoint</tt>.
+         *
+         * @param entity the entity of the endpoint
+         * @param status the status of the endpoint or <tt>null</tt>
+         * @param medias the media of the endpoint
+         */
+        public Endpoint(
+                String entity,
+                ConferenceInfoDocument.EndpointStatusType status,
+                Collection<Media> medias)
+        {
+            this.entity = entity;
+            this.status = status;
+
+            Map<String, Media> map = new LinkedHashMap<String, Media>();
+
+            for (Media media : medias)
+                map.put(media.getId(), media);
+            this.medias = Collections.unmodifiableMap(map);
+        }
+
+        /**
+         * Returns the entity of the endpoint.
+         *
+         * @return the entity of the endpoint
+         */
+        public String getEntity()
+        {
+            return entity;
+        }
+
+        /**
+         * Returns the status of the endpoint.
+         *
+         * @return the status of the endpoint or <tt>null</tt>
+         */
+        public ConferenceInfoDocument.EndpointStatusType getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * Returns the media of the endpoint.
+         *
+         * @return the media of the endpoint
+         */
+        public Collection<Media> getMedias()
+        {
+            return medias.values();
+        }
+
+        /**
+         * Returns the media with the specified id.
+         *
+         * @param id the id of the media
+         * @return the media or <tt>null</tt>
+         */
+        public Media getMedia(String id)
+        {
+            return medias.get(id);
+        }
+
+        /**
+         * Adds an <tt>endpoint</tt> element describing this endpoint to
+         * <tt>user</tt>.
+         *
+         * @param user the user element to add to
+         */
+        void addTo(ConferenceInfoDocument.User user)
+        {
+            ConferenceInfoDocument.Endpoint endpoint
+                = user.addNewEndpoint(entity);
+
+            endpoint.setStatus(status);
+            for (Media media : medias.values())
+                media.addTo(endpoint);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (o == this)
+                return true;
+            if (!(o instanceof Endpoint))
+                return false;
+
+            Endpoint other = (Endpoint) o;
+
+            return stringsMatch(entity, other.entity)
+                && status == other.status
+                && medias.equals(other.medias);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (entity == null) ? 0 : entity.hashCode();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Endpoint[" + entity + ", " + status + ", "
+                + medias.values() + "]";
+        }
+    }
+
+    /**
+     * A <tt>media</tt> element of a Conference Information document.
+     */
+    public static class Media
+    {
+        /**
+         * The id of the media.
+         */
+        private final String id;
+
+        /**
+         * The type of the media.
+         */
+        private final String type;
+
+        /**
+         * The SSRC of the media or <tt>null</tt>.
+         */
+        private final String srcId;
+
+        /**
+         * The status, i.e. direction, of the media.
+         */
+        private final String status;
+
+        /**
+         * Initializes a new <tt>Media</tt>.
+         *
+         * @param id the id of the media
+         * @param type the type of the media
+         * @param srcId the SSRC of the media or <tt>null</tt>
+         * @param status the status of the media
+         */
+        public Media(String id, String type, String srcId, String status)
+        {
+            this.id = id;
+            this.type = emptyToNull(type);
+            this.srcId = emptyToNull(srcId);
+            this.status = emptyToNull(status);
+        }
+
+        /**
+         * Returns the id of the media.
+         *
+         * @return the id of the media
+         */
+        public String getId()
+        {
+            return id;
+        }
+
+        /**
+         * Returns the type of the media.
+         *
+         * @return the type of the media
+         */
+        public String getType()
+        {
+            return type;
+        }
+
+        /**
+         * Returns the SSRC of the media.
+         *
+         * @return the SSRC of the media or <tt>null</tt>
+         */
+        public String getSrcId()
+        {
+            return srcId;
+        }
+
+        /**
+         * Returns the status of the media.
+         *
+         * @return the status of the media
+         */
+        public String getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * Adds a <tt>media</tt> element describing this media to
+         * <tt>endpoint</tt>.
+         *
+         * @param endpoint the endpoint element to add to
+         */
+        void addTo(ConferenceInfoDocument.Endpoint endpoint)
+        {
+            ConferenceInfoDocument.Media media = endpoint.addNewMedia(id);
+
+            media.setType(type);
+            media.setSrcId(srcId);
+            media.setStatus(status);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (o == this)
+                return true;
+            if (!(o instanceof Media))
+                return false;
+
+            Media other = (Media) o;
+
+            return stringsMatch(id, other.id)
+                && stringsMatch(type, other.type)
+                && stringsMatch(srcId, other.srcId)
+                && stringsMatch(status, other.status);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (id == null) ? 0 : id.hashCode();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Media[" + id + ", " + srcId + ", " + status + "]";
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Schedules the conference-info notifications (RFC4575 NOTIFYs and XEP-0298
+ * COINs) sent by a conference focus, coalescing requests per key.
+ *
+ * <p>
+ * A request for a key which already has a scheduled run is merged into that
+ * run instead of producing another notification, so a burst of changes to a
+ * conference (e.g. many members joining or leaving) results in a single
+ * notification round per conference, and in a single notification per
+ * <tt>CallPeer</tt> per minimum notification interval. Runs are executed by a
+ * small, bounded pool of daemon threads which is shared by all protocols.
+ * Runs for the same key never execute concurrently.
+ * </p>
+ */
+public class ConferenceNotificationScheduler
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>ConferenceNotificationScheduler</tt>
+     * class and its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ConferenceNotificationScheduler.class);
+
+    /**
+     * The number of threads which execute notifications.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * The shared instance.
+     */
+    private static ConferenceNotificationScheduler instance;
+
+    /**
+     * The executor which runs the scheduled notifications.
+     */
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * The scheduled runs which have not started yet, by key.
+     */
+    private final Map<Object, Run> pending = new HashMap<Object, Run>();
+
+    /**
+     * The keys of the runs which are executing. Guarded by <tt>pending</tt>.
+     */
+    private final Set<Object> running = new HashSet<Object>();
+
+    /**
+     * The number of runs which have been executed.
+     */
+    private final AtomicLong executed = new AtomicLong();
+
+    /**
+     * The number of requests which have been merged into a scheduled run.
+     */
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * Returns the instance shared by all protocols.
+     *
+     * @return the shared <tt>ConferenceNotificationScheduler</tt>
+     */
+    public static synchronized ConferenceNotificationScheduler getInstance()
+    {
+        if (instance == null)
+            instance = new ConferenceNotificationScheduler(THREADS);
+        return instance;
+    }
+
+    /**
+     * Initializes a new <tt>ConferenceNotificationScheduler</tt>.
+     *
+     * @param threads the maximum number of threads executing notifications
+     */
+    public ConferenceNotificationScheduler(int threads)
+    {
+        executor
+            = new ScheduledThreadPoolExecutor(
+                    threads,
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t
+                                = new Thread(
+                                        r,
+                                        ConferenceNotificationScheduler.class
+                                            .getSimpleName());
+
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules <tt>task</tt> to run for <tt>key</tt> after <tt>delay</tt>
+     * milliseconds. If a run for <tt>key</tt> is already scheduled and has not
+     * started yet, no additional run is scheduled: the scheduled run executes
+     * <tt>task</tt> instead of the task it was scheduled with. If a run for
+     * <tt>key</tt> is executing, the new run is scheduled once the executing
+     * run has finished.
+     *
+     * @param key the key on which requests are coalesced, e.g. a
+     * <tt>CallConference</tt> or a <tt>CallPeer</tt>
+     * @param task the task to run
+     * @param delay the delay in milliseconds
+     * @return <tt>true</tt> if a new run was scheduled, <tt>false</tt> if the
+     * request was merged into a scheduled run
+     */
+    public boolean schedule(Object key, Runnable task, long delay)
+    {
+        synchronized (pending)
+        {
+            Run run = pending.get(key);
+
+            if (run != null)
+            {
+                run.task = task;
+                suppressed.incrementAndGet();
+                if (logger.isTraceEnabled())
+                    logger.trace("Coalesced conference notification: " + key);
+                return false;
+            }
+
+            run = new Run(key, task, delay);
+            pending.put(key, run);
+            if (!running.contains(key))
+                submit(run);
+            return true;
+        }
+    }
+
+    /**
+     * Submits a run to the executor. Must be called with <tt>pending</tt>
+     * locked.
+     *
+     * @param run the run to submit
+     */
+    private void submit(Run run)
+    {
+        try
+        {
+            executor.schedule(
+                    run,
+                    Math.max(0, run.delay),
+                    TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException ree)
+        {
+            pending.remove(run.key);
+            logger.error("Failed to schedule conference notification", ree);
+        }
+    }
+
+    /**
+     * Returns the number of runs which have been executed.
+     *
+     * @return the number of runs which have been executed
+     */
+    public long getExecutedCount()
+    {
+        return executed.get();
+    }
+
+    /**
+     * Returns the number of requests which have been merged into a scheduled
+     * run instead of resulting in a notification of their own.
+     *
+     * @return the number of suppressed requests
+     */
+    public long getSuppressedCount()
+    {
+        return suppressed.get();
+    }
+
+    /**
+     * A scheduled run for a key.
+     */
+    private class Run
+        implements Runnable
+    {
+        /**
+         * The key of the run.
+         */
+        private final Object key;
+
+        /**
+         * The delay in milliseconds before the run executes.
+         */
+        private final long delay;
+
+        /**
+         * The task to execute. Guarded by <tt>pending</tt>.
+         */
+        private Runnable task;
+
+        /**
+         * Initializes a new <tt>Run</tt>.
+         *
+         * @param key the key of the run
+         * @param task the task to execute
+         * @param delay the delay in milliseconds before the run executes
+         */
+        Run(Object key, Runnable task, long delay)
+        {
+            this.key = key;
+            this.task = task;
+            this.delay = delay;
+        }
+
+        /**
+         * Executes the latest task scheduled for the key. Requests made from
+         * now on schedule a new run, which starts after this one has finished,
+         * so that changes made while the task executes are not lost.
+         */
+        public void run()
+        {
+            Runnable task;
+
+            synchronized (pending)
+            {
+                pending.remove(key);
+                running.add(key);
+                task = this.task;
+            }
+
+            long count = executed.incrementAndGet();
+
+            if (logger.isDebugEnabled())
+            {
+                logger.debug(
+                        "Conference notifications executed: " + count
+                            + ", suppressed: " + suppressed.get());
+            }
+
+            try
+            {
+                task.run();
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+                logger.error("Failed to send conference notification", t);
+            }
+            finally
+            {
+                synchronized (pending)
+                {
+                    running.remove(key);
+
+                    Run next = pending.get(key);
+
+                    if (next != null)
+                        submit(next);
+                }
+            }
+        }
+    }
+}
@@ -134,11 +134,11 @@
         = new LinkedList<PropertyChangeListener>();
 
     /**
-     * Represents the last Conference Information (RFC4575) document sent to
-     * this <tt>CallPeer</tt>. This is always a document with state "full", even
-     * if the last document actually sent was a "partial"
+     * Represents the state described by the last Conference Information
+     * (RFC4575) document sent to this <tt>CallPeer</tt>. This is always a
+     * "full" state, even if the last document actually sent was a "partial"
      */
-    private ConferenceInfoDocument lastConferenceInfoSent = null;
+    private ConferenceInfoState lastConferenceInfoSent = null;
 
     /**
      * The time (as obtained by <tt>System.currentTimeMillis()</tt>) at which
@@ -154,17 +154,6 @@
      */
     private ConferenceInfoDocument lastConferenceInfoReceived = null;
 
-    /**
-     * Whether a conference-info document has been scheduled to be sent to this
-     * <tt>CallPeer</tt>
-     */
-    private boolean confInfoScheduled = false;
-
-    /**
-     * Synchronization object for confInfoScheduled
-     */
-    private final Object confInfoScheduledSyncRoot = new Object();
-
     /**
      * Creates a new call peer with address <tt>peerAddress</tt>.
      *
@@ -1071,22 +1060,22 @@ public void setState(CallPeerState newState, String reason, int reasonCode)
     }
 
     /**
-     * Returns the last <tt>ConferenceInfoDocument</tt> sent by us to this
-     * <tt>CallPeer</tt>. It is a document with state <tt>full</tt>
-     * @return the last <tt>ConferenceInfoDocument</tt> sent by us to this
-     * <tt>CallPeer</tt>. It is a document with state <tt>full</tt>
+     * Returns the state described by the last <tt>ConferenceInfoDocument</tt>
+     * sent by us to this <tt>CallPeer</tt>. It is a state <tt>full</tt>
+     * @return the state described by the last <tt>ConferenceInfoDocument</tt>
+     * sent by us to this <tt>CallPeer</tt>. It is a state <tt>full</tt>
      */
-    public ConferenceInfoDocument getLastConferenceInfoSent()
+    public ConferenceInfoState getLastConferenceInfoSent()
     {
         return lastConferenceInfoSent;
     }
 
     /**
-     * Sets the last <tt>ConferenceInfoDocument</tt> sent by us to this
-     * <tt>CallPeer</tt>.
-     * @param confInfo the document to set.
+     * Sets the state described by the last <tt>ConferenceInfoDocument</tt>
+     * sent by us to this <tt>CallPeer</tt>.
+     * @param confInfo the state to set.
      */
-    public void setLastConferenceInfoSent(ConferenceInfoDocument confInfo)
+    public void setLastConferenceInfoSent(ConferenceInfoState confInfo)
     {
         lastConferenceInfoSent = confInfo;
     }
@@ -1163,34 +1152,6 @@ public int getLastConferenceInfoReceivedVersion()
      */
     public abstract String getEntity();
 
-    /**
-     * Check whether a conference-info document is scheduled to be sent to
-     * this <tt>CallPeer</tt> (i.e. there is a thread which will eventually
-     * (after sleeping a certain amount of time) trigger a document to be sent)
-     * @return <tt>true</tt> if there is a conference-info document  scheduled
-     * to be sent to this <tt>CallPeer</tt> and <tt>false</tt> otherwise.
-     */
-    public boolean isConfInfoScheduled()
-    {
-        synchronized (confInfoScheduledSyncRoot)
-        {
-            return confInfoScheduled;
-        }
-    }
-
-    /**
-     * Sets the property which indicates whether a conference-info document
-     * is scheduled to be sent to this <tt>CallPeer</tt>.
-     * @param confInfoScheduled
-     */
-    public void setConfInfoScheduled(boolean confInfoScheduled)
-    {
-        synchronized (confInfoScheduledSyncRoot)
-        {
-            this.confInfoScheduled = confInfoScheduled;
-        }
-    }
-
     /**
      * Returns the direction of the session for media of type <tt>mediaType</tt>
      * that we have with this <tt>CallPeer</tt>. This is the direction of the
@@ -65,6 +65,13 @@
      */
     public static final String OPT_CLIST_PASSWORD = "OPT_CLIST_PASSWORD";
 
+    /**
+     * The name of the property under which the user may specify the URI of
+     * the resource list server which the presence of the contact list is
+     * subscribed to with a single subscription.
+     */
+    public static final String RLS_URI = "RLS_URI";
+
     /**
      * Default properties prefix used in jitsi-defaults.properties file
      * for SIP protocol.
@@ -0,0 +1,184 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.replacement;
+
+/**
+ * Immutable metadata of a link, as resolved by a {@link LinkMetadataResolver}.
+ * Metadata that could not be resolved is represented by <tt>null</tt> values
+ * (or <tt>-1</tt> for the content length), such that failed resolutions can be
+ * cached as well.
+ */
+public final class LinkMetadata
+{
+    /**
+     * The link.
+     */
+    private final String url;
+
+    /**
+     * The content type of the resource, or <tt>null</tt> if unknown.
+     */
+    private final String contentType;
+
+    /**
+     * The content length of the resource in bytes, or <tt>-1</tt> if unknown.
+     */
+    private final long contentLength;
+
+    /**
+     * The URL of a thumbnail of the resource, or <tt>null</tt> if unknown.
+     */
+    private final String thumbnailUrl;
+
+    /**
+     * The time at which the metadata was resolved, in milliseconds since the
+     * epoch.
+     */
+    private final long resolvedAt;
+
+    /**
+     * Constructor.
+     *
+     * @param url the link
+     * @param contentType the content type, or <tt>null</tt> if unknown
+     * @param contentLength the content length, or <tt>-1</tt> if unknown
+     * @param thumbnailUrl the thumbnail URL, or <tt>null</tt> if unknown
+     * @param resolvedAt the time of resolution in milliseconds since the epoch
+     */
+    public LinkMetadata(final String url, final String contentType,
+        final long contentLength, final String thumbnailUrl,
+        final long resolvedAt)
+    {
+        if (url == null)
+        {
+            throw new IllegalArgumentException("url cannot be null");
+        }
+        this.url = url;
+        this.contentType = contentType;
+        this.contentLength = contentLength < 0 ? -1 : contentLength;
+        this.thumbnailUrl = thumbnailUrl;
+        this.resolvedAt = resolvedAt;
+    }
+
+    /**
+     * Create metadata for a link that could not be resolved.
+     *
+     * @param url the link
+     * @return returns metadata without any information
+     */
+    public static LinkMetadata unresolved(final String url)
+    {
+        return new LinkMetadata(url, null, -1, null,
+            System.currentTimeMillis());
+    }
+
+    /**
+     * Get the link.
+     *
+     * @return returns the link
+     */
+    public String getUrl()
+    {
+        return this.url;
+    }
+
+    /**
+     * Get the content type.
+     *
+     * @return returns the content type, or <tt>null</tt> if unknown
+     */
+    public String getContentType()
+    {
+        return this.contentType;
+    }
+
+    /**
+     * Get the content length.
+     *
+     * @return returns the content length in bytes, or <tt>-1</tt> if unknown
+     */
+    public long getContentLength()
+    {
+        return this.contentLength;
+    }
+
+    /**
+     * Get the thumbnail URL.
+     *
+     * @return returns the thumbnail URL, or <tt>null</tt> if unknown
+     */
+    public String getThumbnailUrl()
+    {
+        return this.thumbnailUrl;
+    }
+
+    /**
+     * Get the time of resolution.
+     *
+     * @return returns the time in milliseconds since the epoch
+     */
+    public long getResolvedAt()
+    {
+        return this.resolvedAt;
+    }
+
+    /**
+     * Check whether anything is known about the resource, i.e. whether the
+     * metadata is not the result of a failed resolution.
+     *
+     * @return returns <tt>true</tt> if the content type or the thumbnail is
+     *         known
+     */
+    public boolean isResolved()
+    {
+        return this.contentType != null || this.thumbnailUrl != null;
+    }
+
+    /**
+     * Check whether the resource is an image.
+     *
+     * @return returns <tt>true</tt> if the content type is an image type
+     */
+    public boolean isImage()
+    {
+        return this.contentType != null && this.contentType.contains("image");
+    }
+
+    /**
+     * Check whether the metadata is older than the provided time-to-live.
+     *
+     * @param ttl the time-to-live in milliseconds
+     * @param now the current time in milliseconds since the epoch
+     * @return returns <tt>true</tt> if expired
+     */
+    public boolean isExpired(final long ttl, final long now)
+    {
+        return now - this.resolvedAt >= ttl || now < this.resolvedAt;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "LinkMetadata[" + this.url + ", type=" + this.contentType
+            + ", length=" + this.contentLength + ", thumbnail="
+            + this.thumbnailUrl + "]";
+    }
+}
@@ -0,0 +1,687 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.replacement;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Asynchronous, caching resolver of {@link LinkMetadata} for use by
+ * replacement services that need to probe remote resources.
+ *
+ * <p>
+ * Resolutions are performed by a bounded pool of worker threads. Concurrent
+ * requests for the same link share a single resolution. Resolved metadata is
+ * kept in an LRU cache with a time-to-live and is optionally persisted to a
+ * file, such that the same link is not probed again for every occurrence in a
+ * conversation or every time history is reloaded. Failed resolutions are
+ * cached in memory as well, but only for a short time, such that a transient
+ * failure does not suppress the preview for long, and are not persisted.
+ * </p>
+ *
+ * <p>
+ * If the worker pool is saturated, the request is not queued and an
+ * unresolved result is returned instead, i.e. the link will be rendered
+ * without preview.
+ * </p>
+ */
+public class LinkMetadataResolver
+{
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER =
+        Logger.getLogger(LinkMetadataResolver.class);
+
+    /**
+     * Default number of worker threads.
+     */
+    public static final int DEFAULT_THREADS = 2;
+
+    /**
+     * Default maximum number of pending resolutions.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * Default maximum number of cached entries.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 512;
+
+    /**
+     * Default time-to-live of cached entries: 1 day.
+     */
+    public static final long DEFAULT_TTL = 24L * 60L * 60L * 1000L;
+
+    /**
+     * Default time-to-live of failed resolutions: 5 minutes.
+     */
+    public static final long DEFAULT_FAILURE_TTL = 5L * 60L * 1000L;
+
+    /**
+     * Number of newly resolved entries after which the cache file is written.
+     */
+    private static final int SAVE_THRESHOLD = 16;
+
+    /**
+     * Time in seconds after which idle worker threads are released.
+     */
+    private static final long KEEP_ALIVE = 30L;
+
+    /**
+     * Separator of the fields of a persisted entry.
+     */
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * The fetcher that performs the actual resolution.
+     */
+    private final Fetcher fetcher;
+
+    /**
+     * LRU cache of resolved metadata. Instance is also used as lock for
+     * {@link #pending} and {@link #modifications}.
+     */
+    private final LinkedHashMap<String, LinkMetadata> cache;
+
+    /**
+     * Resolutions that are currently in progress.
+     */
+    private final HashMap<String, Future<LinkMetadata>> pending =
+        new HashMap<String, Future<LinkMetadata>>();
+
+    /**
+     * The worker pool.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Time-to-live of cached entries in milliseconds.
+     */
+    private final long ttl;
+
+    /**
+     * Time-to-live of failed resolutions in milliseconds.
+     */
+    private final long failureTtl;
+
+    /**
+     * Lock that serializes writing the cache file.
+     */
+    private final Object saveLock = new Object();
+
+    /**
+     * The file in which the cache is persisted, or <tt>null</tt> if the cache
+     * is memory-only.
+     */
+    private final File store;
+
+    /**
+     * Number of entries resolved since the cache was last persisted.
+     */
+    private int modifications = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param name name of the resolver, used for naming worker threads
+     * @param fetcher the fetcher that performs the actual resolution
+     * @param threads the maximum number of worker threads
+     * @param queueCapacity the maximum number of pending resolutions
+     * @param cacheSize the maximum number of cached entries
+     * @param ttl the time-to-live of cached entries in milliseconds
+     * @param store the file in which to persist the cache, or <tt>null</tt>
+     *            for a memory-only cache
+     */
+    public LinkMetadataResolver(final String name, final Fetcher fetcher,
+        final int threads, final int queueCapacity, final int cacheSize,
+        final long ttl, final File store)
+    {
+        this(name, fetcher, threads, queueCapacity, cacheSize, ttl,
+            Math.min(ttl, DEFAULT_FAILURE_TTL), store);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name name of the resolver, used for naming worker threads
+     * @param fetcher the fetcher that performs the actual resolution
+     * @param threads the maximum number of worker threads
+     * @param queueCapacity the maximum number of pending resolutions
+     * @param cacheSize the maximum number of cached entries
+     * @param ttl the time-to-live of cached entries in milliseconds
+     * @param failureTtl the time-to-live of failed resolutions in milliseconds
+     * @param store the file in which to persist the cache, or <tt>null</tt>
+     *            for a memory-only cache
+     */
+    public LinkMetadataResolver(final String name, final Fetcher fetcher,
+        final int threads, final int queueCapacity, final int cacheSize,
+        final long ttl, final long failureTtl, final File store)
+    {
+        if (name == null)
+        {
+            throw new IllegalArgumentException("name cannot be null");
+        }
+        if (fetcher == null)
+        {
+            throw new IllegalArgumentException("fetcher cannot be null");
+        }
+        if (threads < 1 || queueCapacity < 1 || cacheSize < 1)
+        {
+            throw new IllegalArgumentException(
+                "threads, queue capacity and cache size must be positive");
+        }
+        if (ttl < 0 || failureTtl < 0)
+        {
+            throw new IllegalArgumentException("ttl cannot be negative");
+        }
+        this.fetcher = fetcher;
+        this.ttl = ttl;
+        this.failureTtl = failureTtl;
+        this.store = store;
+        this.cache = new LinkedHashMap<String, LinkMetadata>(16, 0.75f, true)
+        {
+            /**
+             * Serial version UID.
+             */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                final Map.Entry<String, LinkMetadata> eldest)
+            {
+                return size() > cacheSize;
+            }
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE,
+            TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+            new WorkerFactory(name));
+        this.executor.allowCoreThreadTimeOut(true);
+        load();
+    }
+
+    /**
+     * Get metadata from cache without resolving it.
+     *
+     * @param url the link
+     * @return returns the cached metadata or <tt>null</tt> if not available or
+     *         expired
+     */
+    public LinkMetadata getCached(final String url)
+    {
+        final long now = System.currentTimeMillis();
+        synchronized (this.cache)
+        {
+            final LinkMetadata metadata = this.cache.get(url);
+            if (metadata == null)
+            {
+                return null;
+            }
+            if (isExpired(metadata, now))
+            {
+                this.cache.remove(url);
+                return null;
+            }
+            return metadata;
+        }
+    }
+
+    /**
+     * Resolve metadata asynchronously. Cached metadata is returned immediately
+     * in the form of a completed future.
+     *
+     * @param url the link
+     * @return returns the future result of the resolution
+     */
+    public Future<LinkMetadata> resolveAsync(final String url)
+    {
+        if (url == null)
+        {
+            throw new IllegalArgumentException("url cannot be null");
+        }
+        final FutureTask<LinkMetadata> task;
+        synchronized (this.cache)
+        {
+            final LinkMetadata cached = getCached(url);
+            if (cached != null)
+            {
+                return completed(cached);
+            }
+            final Future<LinkMetadata> current = this.pending.get(url);
+            if (current != null)
+            {
+                return current;
+            }
+            task = new Resolution(url);
+            this.pending.put(url, task);
+        }
+        try
+        {
+            this.executor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            LOGGER.debug("Link metadata resolver saturated, skipping " + url);
+            synchronized (this.cache)
+            {
+                this.pending.remove(url);
+            }
+            return completed(LinkMetadata.unresolved(url));
+        }
+        return task;
+    }
+
+    /**
+     * Resolve metadata, waiting at most <tt>timeout</tt> milliseconds for the
+     * result. This method must not be called on the event dispatch thread.
+     *
+     * @param url the link
+     * @param timeout the maximum time to wait in milliseconds
+     * @return returns the resolved metadata, or unresolved metadata in case of
+     *         failure or time-out
+     */
+    public LinkMetadata resolve(final String url, final long timeout)
+    {
+        final Future<LinkMetadata> future = resolveAsync(url);
+        try
+        {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            LOGGER.debug("Failed to resolve link metadata for " + url, e);
+        }
+        catch (TimeoutException e)
+        {
+            LOGGER.debug("Time-out while resolving link metadata for " + url);
+        }
+        return LinkMetadata.unresolved(url);
+    }
+
+    /**
+     * Get the number of cached entries.
+     *
+     * @return returns the number of cached entries
+     */
+    public int getCacheSize()
+    {
+        synchronized (this.cache)
+        {
+            return this.cache.size();
+        }
+    }
+
+    /**
+     * Stop the resolver. Pending resolutions are cancelled and the cache is
+     * persisted.
+     */
+    public void stop()
+    {
+        this.executor.shutdownNow();
+        save();
+    }
+
+    /**
+     * Check whether cached metadata has expired. Failed resolutions expire
+     * after the failure time-to-live.
+     *
+     * @param metadata the metadata
+     * @param now the current time in milliseconds since the epoch
+     * @return returns <tt>true</tt> if expired
+     */
+    private boolean isExpired(final LinkMetadata metadata, final long now)
+    {
+        return metadata.isExpired(
+            metadata.isResolved() ? this.ttl : this.failureTtl, now);
+    }
+
+    /**
+     * Store resolved metadata in the cache.
+     *
+     * @param url the link
+     * @param metadata the metadata
+     */
+    private void store(final String url, final LinkMetadata metadata)
+    {
+        final boolean persist;
+        synchronized (this.cache)
+        {
+            this.cache.put(url, metadata);
+            this.pending.remove(url);
+            this.modifications++;
+            persist = this.modifications >= SAVE_THRESHOLD;
+        }
+        if (persist)
+        {
+            save();
+        }
+    }
+
+    /**
+     * Load persisted entries from the cache file. Expired entries are skipped.
+     */
+    private void load()
+    {
+        if (this.store == null || !this.store.exists())
+        {
+            return;
+        }
+        final Properties props = new Properties();
+        try
+        {
+            final InputStream in = new FileInputStream(this.store);
+            try
+            {
+                props.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Failed to load link metadata cache from "
+                + this.store, e);
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        synchronized (this.cache)
+        {
+            for (String url : props.stringPropertyNames())
+            {
+                final LinkMetadata metadata =
+                    parse(url, props.getProperty(url));
+                if (metadata != null && !isExpired(metadata, now))
+                {
+                    this.cache.put(url, metadata);
+                }
+            }
+        }
+    }
+
+    /**
+     * Persist the cached entries to the cache file. Unresolved entries are not
+     * persisted.
+     *
+     * Saves are serialized, such that worker threads that reach the save
+     * threshold at the same time do not write the file concurrently. The
+     * entries are written to a temporary file first, which then replaces the
+     * cache file, such that a failed or interrupted save does not leave a
+     * corrupt cache file behind.
+     */
+    private void save()
+    {
+        if (this.store == null)
+        {
+            return;
+        }
+        synchronized (this.saveLock)
+        {
+            // Take the snapshot while holding the save lock, such that an
+            // older snapshot never overwrites a newer one.
+            final Properties props = new Properties();
+            synchronized (this.cache)
+            {
+                for (LinkMetadata metadata : this.cache.values())
+                {
+                    if (!metadata.isResolved())
+                    {
+                        continue;
+                    }
+                    props.setProperty(metadata.getUrl(), format(metadata));
+                }
+                this.modifications = 0;
+            }
+            File temp = null;
+            try
+            {
+                final File parent =
+                    this.store.getAbsoluteFile().getParentFile();
+                if (!parent.exists() && !parent.mkdirs())
+                {
+                    LOGGER.warn("Failed to create directory " + parent);
+                    return;
+                }
+                temp = File.createTempFile(this.store.getName(), ".tmp",
+                    parent);
+                final OutputStream out = new FileOutputStream(temp);
+                try
+                {
+                    props.store(out, null);
+                }
+                finally
+                {
+                    out.close();
+                }
+                replace(temp, this.store);
+                temp = null;
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Failed to save link metadata cache to "
+                    + this.store, e);
+            }
+            finally
+            {
+                if (temp != null && !temp.delete())
+                {
+                    LOGGER.debug("Failed to delete temporary file " + temp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace a file by another file, atomically if the file system supports
+     * it.
+     *
+     * @param source the new file
+     * @param target the file to replace
+     * @throws IOException in case the file cannot be replaced
+     */
+    private static void replace(final File source, final File target)
+        throws IOException
+    {
+        try
+        {
+            Files.move(source.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(source.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Format metadata for persisting.
+     *
+     * @param metadata the metadata
+     * @return returns the formatted value
+     */
+    private static String format(final LinkMetadata metadata)
+    {
+        final StringBuilder value = new StringBuilder();
+        value.append(metadata.getResolvedAt()).append(SEPARATOR);
+        value.append(metadata.getContentLength()).append(SEPARATOR);
+        if (metadata.getContentType() != null)
+        {
+            value.append(metadata.getContentType());
+        }
+        value.append(SEPARATOR);
+        if (metadata.getThumbnailUrl() != null)
+        {
+            value.append(metadata.getThumbnailUrl());
+        }
+        return value.toString();
+    }
+
+    /**
+     * Parse persisted metadata.
+     *
+     * @param url the link
+     * @param value the formatted value
+     * @return returns the metadata, or <tt>null</tt> if the value is invalid
+     */
+    private static LinkMetadata parse(final String url, final String value)
+    {
+        final String[] fields = value.split(String.valueOf(SEPARATOR), -1);
+        if (fields.length != 4)
+        {
+            return null;
+        }
+        try
+        {
+            return new LinkMetadata(url,
+                fields[2].isEmpty() ? null : fields[2],
+                Long.parseLong(fields[1]),
+                fields[3].isEmpty() ? null : fields[3],
+                Long.parseLong(fields[0]));
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Create an already completed future.
+     *
+     * @param metadata the result
+     * @return returns the completed future
+     */
+    private static Future<LinkMetadata> completed(final LinkMetadata metadata)
+    {
+        final FutureTask<LinkMetadata> task =
+            new FutureTask<LinkMetadata>(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                }
+            }, metadata);
+        task.run();
+        return task;
+    }
+
+    /**
+     * Strategy for resolving the metadata of a link.
+     */
+    public interface Fetcher
+    {
+        /**
+         * Resolve the metadata of a link. This method is called on a worker
+         * thread and may block.
+         *
+         * @param url the link
+         * @return returns the resolved metadata
+         * @throws Exception in case of failure to resolve
+         */
+        LinkMetadata fetch(String url) throws Exception;
+    }
+
+    /**
+     * Resolution of a single link. Failures result in unresolved metadata,
+     * which is cached for the failure time-to-live in order to prevent
+     * repeated probing of broken links.
+     */
+    private final class Resolution
+        extends FutureTask<LinkMetadata>
+    {
+        /**
+         * Constructor.
+         *
+         * @param url the link to resolve
+         */
+        private Resolution(final String url)
+        {
+            super(new Callable<LinkMetadata>()
+            {
+                @Override
+                public LinkMetadata call()
+                {
+                    LinkMetadata metadata;
+                    try
+                    {
+                        metadata = fetcher.fetch(url);
+                    }
+                    catch (Exception e)
+                    {
+                        LOGGER.debug("Failed to resolve link metadata for "
+                            + url, e);
+                        metadata = null;
+                    }
+                    if (metadata == null || !url.equals(metadata.getUrl()))
+                    {
+                        metadata = LinkMetadata.unresolved(url);
+                    }
+                    store(url, metadata);
+                    return metadata;
+                }
+            });
+        }
+    }
+
+    /**
+     * Thread factory for daemon worker threads.
+     */
+    private static final class WorkerFactory
+        implements ThreadFactory
+    {
+        /**
+         * Name prefix of worker threads.
+         */
+        private final String name;
+
+        /**
+         * Counter for numbering worker threads.
+         */
+        private final AtomicInteger counter = new AtomicInteger();
+
+        /**
+         * Constructor.
+         *
+         * @param name name prefix of worker threads
+         */
+        private WorkerFactory(final String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            final Thread thread = new Thread(runnable,
+                this.name + "-link-resolver-" + this.counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,811 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.io.*;
+import java.net.*;
+import java.text.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.service.dns.*;
+
+import net.java.sip.communicator.util.SRVRecord;
+
+import org.xbill.DNS.*;
+
+/**
+ * Non-blocking counterpart of the DNS lookups in <tt>NetworkUtils</tt>. The
+ * lookups are executed by a bounded pool of daemon threads and their results
+ * are returned as <tt>Future</tt>s, so that callers can issue several queries
+ * (e.g. the A and AAAA queries for a host or the A/AAAA queries for all
+ * targets of a SRV answer) at once and only wait for the answer they need
+ * next.
+ *
+ * <p>
+ * The queue of pending lookups is bounded as well. When it is full, the
+ * lookup is executed by the thread which starts it, which slows down callers
+ * issuing more lookups than the pool can handle instead of queuing them
+ * without limit.
+ * </p>
+ *
+ * <p>
+ * The class also implements the connection racing of RFC 8305 ("Happy
+ * Eyeballs") for callers which open their sockets themselves: the addresses
+ * are interleaved by family, the first one gets a head start of
+ * {@link #CONNECTION_ATTEMPT_DELAY} and a new connection attempt is started
+ * whenever the previous one failed or did not complete within that delay.
+ * The attempts run in a pool of their own so that a slow connect never holds
+ * up a lookup.
+ * </p>
+ *
+ * <p>
+ * The tasks executed by the pool never wait for other tasks of the pool, so
+ * callers blocking on a result while running in the pool cannot deadlock it.
+ * </p>
+ */
+public class AsyncDnsResolver
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>AsyncDnsResolver</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(AsyncDnsResolver.class);
+
+    /**
+     * The delay in milliseconds after which the next connection attempt is
+     * started while the previous one is still pending, as recommended by
+     * RFC 8305.
+     */
+    public static final long CONNECTION_ATTEMPT_DELAY = 250;
+
+    /**
+     * The number of threads which execute lookups for the shared instance.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * The maximum number of lookups waiting for a thread of the pool.
+     */
+    private static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * The shared instance which uses the default resolver of dnsjava.
+     */
+    private static AsyncDnsResolver instance;
+
+    /**
+     * The resolver to send the queries to or <tt>null</tt> to use the default
+     * resolver and cache of dnsjava as configured by <tt>NetworkUtils</tt>.
+     */
+    private final Resolver resolver;
+
+    /**
+     * The cache used with {@link #resolver}.
+     */
+    private final Cache cache;
+
+    /**
+     * The executor which runs the lookups.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The executor which runs the connection attempts.
+     */
+    private final ExecutorService connector;
+
+    /**
+     * Returns the instance shared by the application, which uses the default
+     * resolver of dnsjava.
+     *
+     * @return the shared <tt>AsyncDnsResolver</tt>
+     */
+    public static synchronized AsyncDnsResolver getInstance()
+    {
+        if (instance == null)
+            instance = new AsyncDnsResolver(null, THREADS);
+        return instance;
+    }
+
+    /**
+     * Initializes a new <tt>AsyncDnsResolver</tt>.
+     *
+     * @param resolver the resolver to send the queries to or <tt>null</tt> to
+     * use the default resolver of dnsjava. A specific resolver gets its own
+     * cache.
+     * @param threads the maximum number of concurrent lookups
+     */
+    public AsyncDnsResolver(Resolver resolver, int threads)
+    {
+        this(resolver, threads, QUEUE_CAPACITY);
+    }
+
+    /**
+     * Initializes a new <tt>AsyncDnsResolver</tt>.
+     *
+     * @param resolver the resolver to send the queries to or <tt>null</tt> to
+     * use the default resolver of dnsjava. A specific resolver gets its own
+     * cache.
+     * @param threads the maximum number of concurrent lookups
+     * @param queueCapacity the maximum number of lookups waiting for a thread
+     * before lookups are executed by the threads which start them
+     */
+    AsyncDnsResolver(Resolver resolver, int threads, int queueCapacity)
+    {
+        this.resolver = resolver;
+        this.cache = (resolver == null) ? null : new Cache();
+
+        ThreadFactory threadFactory
+            = new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread t
+                        = new Thread(r, AsyncDnsResolver.class.getSimpleName());
+
+                    t.setDaemon(true);
+                    return t;
+                }
+            };
+
+        executor
+            = new ThreadPoolExecutor(
+                    threads, threads,
+                    60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueCapacity),
+                    threadFactory,
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        // a race starts at most one attempt per address
+        connector = Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * Waits for the result of a lookup started by this class.
+     *
+     * @param future the lookup to wait for
+     * @return the result of the lookup or <tt>null</tt> if the current thread
+     * was interrupted while waiting
+     * @throws ParseException if the domain of the lookup is not a valid domain
+     * name.
+     * @throws DnssecException when a DNSSEC validation failure occurred.
+     */
+    public static <T> T get(Future<T> future)
+        throws ParseException, DnssecException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException ie)
+        {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException ee)
+        {
+            Throwable cause = ee.getCause();
+
+            if (cause instanceof ParseException)
+                throw (ParseException) cause;
+            if (cause instanceof DnssecException)
+                throw (DnssecException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Starts a SRV lookup. The records of the result are ordered by priority
+     * and weight.
+     *
+     * @param domain the name of the domain to resolve (_proto._tcp included).
+     * @return the pending SRV records of <tt>domain</tt>, <tt>null</tt> if
+     * there are none
+     * @see NetworkUtils#getSRVRecords(String)
+     */
+    public Future<SRVRecord[]> getSRVRecords(final String domain)
+    {
+        return executor.submit(
+                new Callable<SRVRecord[]>()
+                {
+                    public SRVRecord[] call()
+                        throws ParseException, DnssecException
+                    {
+                        SRVRecord[] records
+                            = NetworkUtils.toSRVRecords(
+                                    domain,
+                                    lookup(domain, Type.SRV));
+
+                        return
+                            (records == null || records.length == 0)
+                                ? null
+                                : records;
+                    }
+                });
+    }
+
+    /**
+     * Starts a SRV lookup for a service of a domain.
+     *
+     * @param service the service that we are trying to get a record for.
+     * @param proto the protocol that we'd like <tt>service</tt> on.
+     * @param domain the name of the domain to resolve.
+     * @return the pending SRV records, <tt>null</tt> if there are none
+     * @see NetworkUtils#getSRVRecords(String, String, String)
+     */
+    public Future<SRVRecord[]> getSRVRecords(
+            String service,
+            String proto,
+            String domain)
+    {
+        return getSRVRecords("_" + service + "._" + proto + "." + domain);
+    }
+
+    /**
+     * Starts a NAPTR lookup.
+     *
+     * @param domain the name of the domain to resolve.
+     * @return the pending NAPTR values of <tt>domain</tt> or <tt>null</tt> if
+     * no records were found
+     * @see NetworkUtils#getNAPTRRecords(String)
+     */
+    public Future<String[][]> getNAPTRRecords(final String domain)
+    {
+        return executor.submit(
+                new Callable<String[][]>()
+                {
+                    public String[][] call()
+                        throws ParseException, DnssecException
+                    {
+                        return
+                            NetworkUtils.toNAPTRRecords(
+                                    domain,
+                                    lookup(domain, Type.NAPTR));
+                    }
+                });
+    }
+
+    /**
+     * Starts the A and AAAA lookups of a domain concurrently. The addresses of
+     * the preferred family (IPv6 if <tt>java.net.preferIPv6Addresses</tt> is
+     * set, IPv4 otherwise) come first in the result.
+     *
+     * @param domain the name of the domain to resolve.
+     * @param port the port number of the returned <tt>InetSocketAddress</tt>es
+     * @return the pending addresses of <tt>domain</tt>
+     * @see NetworkUtils#getAandAAAARecords(String, int)
+     */
+    public Future<InetSocketAddress[]> getAandAAAARecords(
+            final String domain,
+            final int port)
+    {
+        if (NetworkUtils.strToIPv4(domain) != null
+            || NetworkUtils.strToIPv6(domain) != null)
+        {
+            // IP literals are not looked up
+            FutureTask<InetSocketAddress[]> literal
+                = new FutureTask<InetSocketAddress[]>(
+                        new Callable<InetSocketAddress[]>()
+                        {
+                            public InetSocketAddress[] call()
+                                throws ParseException, DnssecException
+                            {
+                                return
+                                    NetworkUtils.getAandAAAARecords(
+                                            domain,
+                                            port);
+                            }
+                        });
+
+            literal.run();
+            return literal;
+        }
+
+        boolean v6first = Boolean.getBoolean("java.net.preferIPv6Addresses");
+
+        return
+            new AddressFuture(
+                    domain,
+                    getAddresses(domain, v6first ? Type.AAAA : Type.A, port),
+                    getAddresses(domain, v6first ? Type.A : Type.AAAA, port));
+    }
+
+    /**
+     * Resolves the A and AAAA records of a domain for a caller which waits for
+     * the result. The lookup of the preferred family runs in the current
+     * thread while the other one is executed by the pool, so a synchronous
+     * caller occupies at most one pending lookup of the pool.
+     *
+     * @param domain the name of the domain to resolve.
+     * @param port the port number of the returned <tt>InetSocketAddress</tt>es
+     * @return the addresses of <tt>domain</tt>, those of the preferred family
+     * first, or <tt>null</tt> if the current thread was interrupted
+     * @throws ParseException if <tt>domain</tt> is not a valid domain name.
+     * @throws DnssecException when a DNSSEC validation failure occurred.
+     * @see NetworkUtils#getAandAAAARecords(String, int)
+     */
+    public InetSocketAddress[] resolveAandAAAARecords(
+            final String domain,
+            final int port)
+        throws ParseException, DnssecException
+    {
+        boolean v6first = Boolean.getBoolean("java.net.preferIPv6Addresses");
+        Future<List<InetSocketAddress>> second
+            = getAddresses(domain, v6first ? Type.A : Type.AAAA, port);
+        FutureTask<List<InetSocketAddress>> first
+            = new FutureTask<List<InetSocketAddress>>(
+                    addressLookup(domain, v6first ? Type.AAAA : Type.A, port));
+
+        first.run();
+        return get(new AddressFuture(domain, first, second));
+    }
+
+    /**
+     * Starts the A and AAAA lookups of all targets of a SRV answer at once.
+     *
+     * @param records the SRV records to resolve the targets of
+     * @return the pending addresses of each target, in the order of
+     * <tt>records</tt>
+     */
+    public List<Future<InetSocketAddress[]>> getAandAAAARecords(
+            SRVRecord[] records)
+    {
+        List<Future<InetSocketAddress[]>> addresses
+            = new ArrayList<Future<InetSocketAddress[]>>(records.length);
+
+        for (SRVRecord record : records)
+        {
+            addresses.add(
+                getAandAAAARecords(record.getTarget(), record.getPort()));
+        }
+        return addresses;
+    }
+
+    /**
+     * Starts a lookup of the addresses of one family.
+     *
+     * @param domain the name of the domain to resolve.
+     * @param type {@link Type#A} or {@link Type#AAAA}
+     * @param port the port number of the returned <tt>InetSocketAddress</tt>es
+     * @return the pending addresses
+     */
+    private Future<List<InetSocketAddress>> getAddresses(
+            String domain,
+            int type,
+            int port)
+    {
+        return executor.submit(addressLookup(domain, type, port));
+    }
+
+    /**
+     * Creates a lookup of the addresses of one family.
+     *
+     * @param domain the name of the domain to resolve.
+     * @param type {@link Type#A} or {@link Type#AAAA}
+     * @param port the port number of the returned <tt>InetSocketAddress</tt>es
+     * @return the lookup, to be run by the caller or by the pool
+     */
+    private Callable<List<InetSocketAddress>> addressLookup(
+            final String domain,
+            final int type,
+            final int port)
+    {
+        return
+            new Callable<List<InetSocketAddress>>()
+            {
+                public List<InetSocketAddress> call()
+                    throws ParseException, DnssecException
+                {
+                    return
+                        NetworkUtils.toSocketAddresses(
+                                domain,
+                                lookup(domain, type),
+                                port);
+                }
+            };
+    }
+
+    /**
+     * Runs a lookup in the current thread.
+     *
+     * @param domain the name of the domain to resolve.
+     * @param type the type of the records to obtain.
+     * @return the records returned by the DNS server or <tt>null</tt>
+     * @throws ParseException if <tt>domain</tt> is not a valid domain name.
+     * @throws DnssecException when a DNSSEC validation failure occurred.
+     */
+    private Record[] lookup(String domain, int type)
+        throws ParseException, DnssecException
+    {
+        Lookup lookup;
+
+        try
+        {
+            if (resolver == null)
+            {
+                lookup = NetworkUtils.createLookup(domain, type);
+            }
+            else
+            {
+                lookup = new Lookup(domain, type);
+                lookup.setResolver(resolver);
+                lookup.setCache(cache);
+            }
+        }
+        catch (TextParseException tpe)
+        {
+            logger.error("Failed to parse domain <" + domain + ">", tpe);
+            throw new ParseException(tpe.getMessage(), 0);
+        }
+
+        try
+        {
+            return lookup.run();
+        }
+        catch (DnssecRuntimeException e)
+        {
+            throw new DnssecException(e);
+        }
+    }
+
+    /**
+     * Connects to the first reachable address of <tt>addresses</tt>, racing
+     * the connection attempts as described in RFC 8305. The addresses are
+     * interleaved by family, starting with the family of the first address,
+     * and the next attempt is started as soon as the previous one failed or
+     * after {@link #CONNECTION_ATTEMPT_DELAY} milliseconds. The attempts which
+     * lose the race are cancelled and their sockets closed.
+     *
+     * @param addresses the addresses to connect to, in order of preference
+     * @param timeout the timeout of each connection attempt in milliseconds,
+     * <tt>0</tt> for none
+     * @return the connected socket
+     * @throws IOException if no address could be connected to; the exception
+     * is the failure of the last attempt
+     */
+    public Socket connect(InetSocketAddress[] addresses, int timeout)
+        throws IOException
+    {
+        if (addresses.length == 0)
+            throw new ConnectException("No addresses to connect to");
+
+        InetSocketAddress[] ordered = interleave(addresses);
+        CompletionService<Socket> completion
+            = new ExecutorCompletionService<Socket>(connector);
+        List<ConnectAttempt> attempts
+            = new ArrayList<ConnectAttempt>(ordered.length);
+        List<Future<Socket>> futures
+            = new ArrayList<Future<Socket>>(ordered.length);
+        int next = 0;
+        int pending = 0;
+        Socket socket = null;
+        IOException failure = null;
+
+        try
+        {
+            while (socket == null && (next < ordered.length || pending > 0))
+            {
+                if (next < ordered.length)
+                {
+                    ConnectAttempt attempt
+                        = new ConnectAttempt(ordered[next++], timeout);
+
+                    attempts.add(attempt);
+                    futures.add(completion.submit(attempt));
+                    pending++;
+                }
+
+                Future<Socket> done
+                    = (next < ordered.length)
+                        ? completion.poll(
+                                CONNECTION_ATTEMPT_DELAY,
+                                TimeUnit.MILLISECONDS)
+                        : completion.take();
+
+                while (done != null && socket == null)
+                {
+                    pending--;
+                    try
+                    {
+                        socket = done.get();
+                    }
+                    catch (ExecutionException ee)
+                    {
+                        Throwable cause = ee.getCause();
+
+                        if (logger.isDebugEnabled())
+                            logger.debug("Connection attempt failed", cause);
+                        failure
+                            = (cause instanceof IOException)
+                                ? (IOException) cause
+                                : new IOException(cause);
+                    }
+                    done = completion.poll();
+                }
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting");
+        }
+        finally
+        {
+            for (Future<Socket> future : futures)
+                future.cancel(false);
+            for (ConnectAttempt attempt : attempts)
+                attempt.abandon(socket);
+        }
+
+        if (socket == null)
+            throw failure;
+        return socket;
+    }
+
+    /**
+     * Orders addresses for connection racing as described in RFC 8305: the
+     * families alternate, starting with the family of the first address, and
+     * the relative order of the addresses of each family is kept.
+     *
+     * @param addresses the addresses in order of preference
+     * @return the interleaved addresses
+     */
+    static InetSocketAddress[] interleave(InetSocketAddress[] addresses)
+    {
+        if (addresses.length == 0)
+            return addresses;
+
+        boolean v6first = addresses[0].getAddress() instanceof Inet6Address;
+        List<InetSocketAddress> first = new ArrayList<InetSocketAddress>();
+        List<InetSocketAddress> second = new ArrayList<InetSocketAddress>();
+
+        for (InetSocketAddress address : addresses)
+        {
+            boolean v6 = address.getAddress() instanceof Inet6Address;
+
+            ((v6 == v6first) ? first : second).add(address);
+        }
+
+        InetSocketAddress[] result = new InetSocketAddress[addresses.length];
+        int i = 0;
+
+        for (int j = 0; j < Math.max(first.size(), second.size()); j++)
+        {
+            if (j < first.size())
+                result[i++] = first.get(j);
+            if (j < second.size())
+                result[i++] = second.get(j);
+        }
+        return result;
+    }
+
+    /**
+     * Combines the pending A and AAAA lookups of a domain. The lookups are
+     * already running; this <tt>Future</tt> only waits for them and merges
+     * their results.
+     */
+    private static class AddressFuture
+        implements Future<InetSocketAddress[]>
+    {
+        /**
+         * The resolved domain.
+         */
+        private final String domain;
+
+        /**
+         * The lookup of the preferred family.
+         */
+        private final Future<List<InetSocketAddress>> first;
+
+        /**
+         * The lookup of the other family.
+         */
+        private final Future<List<InetSocketAddress>> second;
+
+        /**
+         * Initializes a new <tt>AddressFuture</tt>.
+         *
+         * @param domain the resolved domain
+         * @param first the lookup of the preferred family
+         * @param second the lookup of the other family
+         */
+        AddressFuture(
+                String domain,
+                Future<List<InetSocketAddress>> first,
+                Future<List<InetSocketAddress>> second)
+        {
+            this.domain = domain;
+            this.first = first;
+            this.second = second;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            boolean cancelled = first.cancel(mayInterruptIfRunning);
+
+            return second.cancel(mayInterruptIfRunning) || cancelled;
+        }
+
+        public boolean isCancelled()
+        {
+            return first.isCancelled() || second.isCancelled();
+        }
+
+        public boolean isDone()
+        {
+            return first.isDone() && second.isDone();
+        }
+
+        public InetSocketAddress[] get()
+            throws InterruptedException,
+                   ExecutionException
+        {
+            return merge(first.get(), second.get());
+        }
+
+        public InetSocketAddress[] get(long timeout, TimeUnit unit)
+            throws InterruptedException,
+                   ExecutionException,
+                   TimeoutException
+        {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            List<InetSocketAddress> firstAddresses
+                = first.get(timeout, unit);
+
+            return
+                merge(
+                    firstAddresses,
+                    second.get(
+                            deadline - System.nanoTime(),
+                            TimeUnit.NANOSECONDS));
+        }
+
+        /**
+         * Concatenates the addresses of both families.
+         *
+         * @param firstAddresses the addresses of the preferred family
+         * @param secondAddresses the addresses of the other family
+         * @return the addresses of the preferred family followed by the
+         * addresses of the other family
+         */
+        private InetSocketAddress[] merge(
+                List<InetSocketAddress> firstAddresses,
+                List<InetSocketAddress> secondAddresses)
+        {
+            List<InetSocketAddress> addresses
+                = new ArrayList<InetSocketAddress>(
+                        firstAddresses.size() + secondAddresses.size());
+
+            addresses.addAll(firstAddresses);
+            addresses.addAll(secondAddresses);
+            if(logger.isTraceEnabled())
+                logger.trace("A or AAAA addresses of " + domain + ": "
+                    + addresses);
+            return addresses.toArray(new InetSocketAddress[addresses.size()]);
+        }
+    }
+
+    /**
+     * A connection attempt of {@link #connect(InetSocketAddress[], int)}.
+     */
+    private static class ConnectAttempt
+        implements Callable<Socket>
+    {
+        /**
+         * The address to connect to.
+         */
+        private final InetSocketAddress address;
+
+        /**
+         * The timeout of the attempt in milliseconds.
+         */
+        private final int timeout;
+
+        /**
+         * Whether the attempt lost the race. Guarded by <tt>this</tt>.
+         */
+        private boolean abandoned;
+
+        /**
+         * The socket of the attempt. Guarded by <tt>this</tt>.
+         */
+        private Socket socket;
+
+        /**
+         * Initializes a new <tt>ConnectAttempt</tt>.
+         *
+         * @param address the address to connect to
+         * @param timeout the timeout of the attempt in milliseconds
+         */
+        ConnectAttempt(InetSocketAddress address, int timeout)
+        {
+            this.address = address;
+            this.timeout = timeout;
+        }
+
+        public Socket call()
+            throws IOException
+        {
+            Socket s = new Socket();
+
+            synchronized (this)
+            {
+                if (abandoned)
+                    throw new InterruptedIOException("Attempt abandoned");
+                socket = s;
+            }
+
+            try
+            {
+                s.connect(address, timeout);
+            }
+            catch (IOException ioe)
+            {
+                close(s);
+                throw ioe;
+            }
+
+            synchronized (this)
+            {
+                if (abandoned)
+                {
+                    close(s);
+                    throw new InterruptedIOException("Attempt abandoned");
+                }
+            }
+            return s;
+        }
+
+        /**
+         * Stops the attempt and closes its socket unless it is the socket
+         * which won the race. Closing the socket aborts a pending connect.
+         *
+         * @param winner the socket which won the race or <tt>null</tt>
+         */
+        synchronized void abandon(Socket winner)
+        {
+            abandoned = true;
+            if (socket != null && socket != winner)
+                close(socket);
+        }
+
+        /**
+         * Closes a socket, ignoring failures.
+         *
+         * @param s the socket to close
+         */
+        private static void close(Socket s)
+        {
+            try
+            {
+                s.close();
+            }
+            catch (IOException ioe)
+            {
+                logger.debug("Failed to close socket", ioe);
+            }
+        }
+    }
+}
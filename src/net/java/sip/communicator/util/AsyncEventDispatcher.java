@@ -0,0 +1,662 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Delivers events to their listeners on the threads of a shared
+ * <tt>Executor</tt> instead of the thread which fires them, so that a slow
+ * listener does not hold up the thread reading from the network.
+ *
+ * <p>
+ * Each listener has a queue per source of events: a listener receives the
+ * events of a source in the order they were fired, one at a time, while the
+ * events of other sources or for other listeners are delivered in parallel.
+ * The queues are bounded. When the queue of a listener is full, the firing
+ * thread either waits for the listener to catch up or drops the event, as
+ * chosen by the {@link Overflow} policy of the event. The queues are dropped
+ * as soon as they are empty.
+ * </p>
+ * <p>
+ * The time the events wait in the queues and the time the listeners take to
+ * handle them are recorded per class of listener, and the listeners which
+ * take longer than a threshold are reported.
+ * </p>
+ */
+public class AsyncEventDispatcher
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>AsyncEventDispatcher</tt> class for
+     * logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(AsyncEventDispatcher.class);
+
+    /**
+     * The number of events of a queue delivered one after the other before
+     * the thread is given back to the <tt>Executor</tt>.
+     */
+    private static final int MAX_EVENTS_PER_RUN = 16;
+
+    /**
+     * The number of slow deliveries of a class of listeners between two
+     * reports after the first one.
+     */
+    private static final int SLOW_REPORT_INTERVAL = 100;
+
+    /**
+     * Delivers an event to a listener.
+     *
+     * @param <L> the type of the listener
+     * @param <E> the type of the event
+     */
+    public interface Delivery<L, E>
+    {
+        /**
+         * Delivers an event to a listener.
+         *
+         * @param listener the listener
+         * @param event the event
+         */
+        public void deliver(L listener, E event);
+    }
+
+    /**
+     * What to do with an event for a listener whose queue is full.
+     */
+    public enum Overflow
+    {
+        /**
+         * The firing thread waits for the listener to catch up, for events
+         * which must not be lost such as messages.
+         */
+        BLOCK,
+
+        /**
+         * The event is dropped, for events which are superseded by the next
+         * ones such as typing notifications.
+         */
+        DROP
+    }
+
+    /**
+     * The <tt>Executor</tt> which delivers the events.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum number of events waiting for a listener from a source.
+     */
+    private final int capacity;
+
+    /**
+     * The time in nanoseconds above which a listener is reported as slow.
+     */
+    private final long slowThresholdNanos;
+
+    /**
+     * The queues of the events waiting for their listener, by listener and
+     * source. It is also the lock of the queues.
+     */
+    private final Map<QueueKey, EventQueue> queues
+        = new HashMap<QueueKey, EventQueue>();
+
+    /**
+     * The number of threads waiting for room in a full queue.
+     */
+    private int waitingForRoom = 0;
+
+    /**
+     * Whether the current thread is delivering events of this dispatcher.
+     */
+    private final ThreadLocal<Boolean> delivering = new ThreadLocal<Boolean>();
+
+    /**
+     * The statistics of the listeners by the name of their class.
+     */
+    private final ConcurrentMap<String, ListenerStatistics> statistics
+        = new ConcurrentHashMap<String, ListenerStatistics>();
+
+    /**
+     * Initializes a new <tt>AsyncEventDispatcher</tt>.
+     *
+     * @param executor the <tt>Executor</tt> which delivers the events
+     * @param capacity the maximum number of events waiting for a listener
+     * from a source
+     * @param slowThresholdMillis the time in milliseconds above which a
+     * listener handling an event is reported as slow
+     */
+    public AsyncEventDispatcher(
+            Executor executor,
+            int capacity,
+            long slowThresholdMillis)
+    {
+        if (executor == null)
+            throw new NullPointerException("executor");
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity " + capacity);
+
+        this.executor = executor;
+        this.capacity = capacity;
+        this.slowThresholdNanos
+            = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    }
+
+    /**
+     * Queues an event for delivery to listeners, after the events fired
+     * before it by the same source for each of them. The exceptions thrown by
+     * the listeners are logged.
+     *
+     * @param <L> the type of the listeners
+     * @param <E> the type of the event
+     * @param source the source of the event which orders its delivery
+     * @param listeners the listeners to deliver the event to
+     * @param event the event
+     * @param delivery the <tt>Delivery</tt> which calls the listeners
+     * @param overflow what to do if the queue of a listener is full
+     */
+    public <L, E> void dispatch(
+            Object source,
+            Collection<? extends L> listeners,
+            E event,
+            Delivery<? super L, ? super E> delivery,
+            Overflow overflow)
+    {
+        for (L listener : listeners)
+        {
+            enqueue(
+                    new QueueKey(listener, source),
+                    new Event<L, E>(
+                            listener,
+                            event,
+                            delivery,
+                            getStatistics(listener)),
+                    overflow);
+        }
+    }
+
+    /**
+     * Returns the statistics of the listeners by the name of their class.
+     *
+     * @return a description of the latencies, the slow deliveries and the
+     * dropped events of the listeners by the name of their class
+     */
+    public Map<String, String> getStatistics()
+    {
+        Map<String, String> result = new TreeMap<String, String>();
+
+        for (Map.Entry<String, ListenerStatistics> e : statistics.entrySet())
+            result.put(e.getKey(), e.getValue().toString());
+        return result;
+    }
+
+    /**
+     * Returns the number of queues with events waiting for their listener.
+     *
+     * @return the number of queues with events waiting for their listener
+     */
+    public int getActiveQueueCount()
+    {
+        synchronized (queues)
+        {
+            return queues.size();
+        }
+    }
+
+    /**
+     * Gets the statistics of the class of a listener.
+     *
+     * @param listener the listener
+     * @return the statistics of the class of <tt>listener</tt>
+     */
+    private ListenerStatistics getStatistics(Object listener)
+    {
+        String name = listener.getClass().getName();
+        ListenerStatistics listenerStatistics = statistics.get(name);
+
+        if (listenerStatistics == null)
+        {
+            listenerStatistics = new ListenerStatistics(name);
+
+            ListenerStatistics existing
+                = statistics.putIfAbsent(name, listenerStatistics);
+
+            if (existing != null)
+                listenerStatistics = existing;
+        }
+        return listenerStatistics;
+    }
+
+    /**
+     * Adds an event to the queue of its listener and source, starting the
+     * delivery of the queue if it was empty.
+     *
+     * @param key the listener and the source of the event
+     * @param event the event
+     * @param overflow what to do if the queue is full
+     */
+    private void enqueue(QueueKey key, Event<?, ?> event, Overflow overflow)
+    {
+        EventQueue started = null;
+        boolean blocked = false;
+        boolean interrupted = false;
+
+        synchronized (queues)
+        {
+            while (true)
+            {
+                EventQueue queue = queues.get(key);
+
+                if (queue == null)
+                {
+                    queue = new EventQueue(key);
+                    queues.put(key, queue);
+                    started = queue;
+                }
+
+                /*
+                 * A listener which fires events from a delivery thread cannot
+                 * wait for the delivery threads to catch up, and a thread
+                 * which has been interrupted should not wait anymore.
+                 */
+                if ((queue.events.size() < capacity)
+                        || (delivering.get() != null)
+                        || interrupted)
+                {
+                    queue.events.add(event);
+                    event.statistics.updateMaxQueued(queue.events.size());
+                    break;
+                }
+                if (overflow == Overflow.DROP)
+                {
+                    event.statistics.dropped.incrementAndGet();
+                    return;
+                }
+                if (!blocked)
+                {
+                    blocked = true;
+                    event.statistics.blocked.incrementAndGet();
+                }
+
+                waitingForRoom++;
+                try
+                {
+                    queues.wait();
+                }
+                catch (InterruptedException ie)
+                {
+                    interrupted = true;
+                }
+                finally
+                {
+                    waitingForRoom--;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        if (started != null)
+            submit(started);
+    }
+
+    /**
+     * Hands an <tt>EventQueue</tt> to the <tt>Executor</tt>. If the
+     * <tt>Executor</tt> rejects it, for example because it has been shut
+     * down, the events of the queue are delivered on the current thread.
+     *
+     * @param queue the <tt>EventQueue</tt> to deliver
+     */
+    private void submit(EventQueue queue)
+    {
+        try
+        {
+            executor.execute(queue);
+        }
+        catch (RejectedExecutionException ree)
+        {
+            logger.warn(
+                    "Delivering the events for " + queue.key.listener
+                        + " on the firing thread",
+                    ree);
+            queue.run();
+        }
+    }
+
+    /**
+     * An event waiting for delivery to a listener.
+     *
+     * @param <L> the type of the listener
+     * @param <E> the type of the event
+     */
+    private static class Event<L, E>
+    {
+        /**
+         * The listener to deliver the event to.
+         */
+        private final L listener;
+
+        /**
+         * The event.
+         */
+        private final E event;
+
+        /**
+         * The <tt>Delivery</tt> which calls the listener.
+         */
+        private final Delivery<? super L, ? super E> delivery;
+
+        /**
+         * The statistics of the class of the listener.
+         */
+        final ListenerStatistics statistics;
+
+        /**
+         * The time in nanoseconds at which the event was queued.
+         */
+        final long queuedNanos = System.nanoTime();
+
+        /**
+         * Initializes a new <tt>Event</tt>.
+         *
+         * @param listener the listener to deliver the event to
+         * @param event the event
+         * @param delivery the <tt>Delivery</tt> which calls the listener
+         * @param statistics the statistics of the class of the listener
+         */
+        Event(
+                L listener,
+                E event,
+                Delivery<? super L, ? super E> delivery,
+                ListenerStatistics statistics)
+        {
+            this.listener = listener;
+            this.event = event;
+            this.delivery = delivery;
+            this.statistics = statistics;
+        }
+
+        /**
+         * Delivers the event to the listener.
+         */
+        void deliver()
+        {
+            delivery.deliver(listener, event);
+        }
+
+        @Override
+        public String toString()
+        {
+            return event.toString();
+        }
+    }
+
+    /**
+     * The events waiting for a listener from a source, which are delivered
+     * one after the other.
+     */
+    private class EventQueue
+        implements Runnable
+    {
+        /**
+         * The listener and the source of the events.
+         */
+        final QueueKey key;
+
+        /**
+         * The events waiting for delivery.
+         */
+        final Queue<Event<?, ?>> events = new ArrayDeque<Event<?, ?>>();
+
+        /**
+         * Initializes a new <tt>EventQueue</tt>.
+         *
+         * @param key the listener and the source of the events
+         */
+        EventQueue(QueueKey key)
+        {
+            this.key = key;
+        }
+
+        public void run()
+        {
+            Boolean wasDelivering = delivering.get();
+
+            delivering.set(Boolean.TRUE);
+            try
+            {
+                if (deliver())
+                {
+                    // let the other queues be delivered
+                    submit(this);
+                }
+            }
+            finally
+            {
+                delivering.set(wasDelivering);
+            }
+        }
+
+        /**
+         * Delivers the events of the queue one after the other.
+         *
+         * @return <tt>true</tt> if the queue still has events to deliver,
+         * <tt>false</tt> if it is empty and has been dropped
+         */
+        private boolean deliver()
+        {
+            for (int i = 0; i < MAX_EVENTS_PER_RUN; i++)
+            {
+                Event<?, ?> event;
+
+                synchronized (queues)
+                {
+                    event = events.poll();
+                    if (event == null)
+                    {
+                        queues.remove(key);
+                        return false;
+                    }
+                    if (waitingForRoom > 0)
+                        queues.notifyAll();
+                }
+
+                long startNanos = System.nanoTime();
+
+                try
+                {
+                    event.deliver();
+                }
+                catch (Throwable t)
+                {
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                    logger.error(
+                            "Failed to deliver " + event + " to "
+                                + key.listener,
+                            t);
+                }
+                finally
+                {
+                    event.statistics.delivered(
+                            event,
+                            startNanos - event.queuedNanos,
+                            System.nanoTime() - startNanos);
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * The listener and the source of the events of an <tt>EventQueue</tt>.
+     * Listeners are compared by identity, as they are in the lists of
+     * listeners of the operation sets.
+     */
+    private static class QueueKey
+    {
+        /**
+         * The listener.
+         */
+        final Object listener;
+
+        /**
+         * The source of the events.
+         */
+        private final Object source;
+
+        /**
+         * Initializes a new <tt>QueueKey</tt>.
+         *
+         * @param listener the listener
+         * @param source the source of the events
+         */
+        QueueKey(Object listener, Object source)
+        {
+            this.listener = listener;
+            this.source = source;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof QueueKey))
+                return false;
+
+            QueueKey other = (QueueKey) obj;
+
+            return (listener == other.listener) && (source == other.source);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * System.identityHashCode(listener)
+                + System.identityHashCode(source);
+        }
+    }
+
+    /**
+     * The latencies, the slow deliveries and the overflows of a class of
+     * listeners.
+     */
+    private class ListenerStatistics
+    {
+        /**
+         * The name of the class of the listeners.
+         */
+        private final String name;
+
+        /**
+         * The time the events waited in the queues.
+         */
+        private final LatencyHistogram queued = new LatencyHistogram();
+
+        /**
+         * The time the listeners took to handle the events.
+         */
+        private final LatencyHistogram handled = new LatencyHistogram();
+
+        /**
+         * The number of events the listeners took longer than the threshold
+         * to handle.
+         */
+        private final AtomicLong slow = new AtomicLong();
+
+        /**
+         * The number of events dropped because a queue was full.
+         */
+        final AtomicLong dropped = new AtomicLong();
+
+        /**
+         * The number of events which waited for room in a full queue.
+         */
+        final AtomicLong blocked = new AtomicLong();
+
+        /**
+         * The maximum number of events which waited in a queue.
+         */
+        private final AtomicInteger maxQueued = new AtomicInteger();
+
+        /**
+         * Initializes a new <tt>ListenerStatistics</tt>.
+         *
+         * @param name the name of the class of the listeners
+         */
+        ListenerStatistics(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Records the delivery of an event.
+         *
+         * @param event the event
+         * @param queuedNanos the time the event waited in its queue
+         * @param handledNanos the time the listener took to handle the event
+         */
+        void delivered(Event<?, ?> event, long queuedNanos, long handledNanos)
+        {
+            queued.record(queuedNanos);
+            handled.record(handledNanos);
+            if (handledNanos > slowThresholdNanos)
+            {
+                long count = slow.incrementAndGet();
+
+                if ((count == 1) || (count % SLOW_REPORT_INTERVAL == 0))
+                {
+                    logger.warn(
+                            name + " took "
+                                + TimeUnit.NANOSECONDS.toMillis(handledNanos)
+                                + " ms to handle " + event + " (" + count
+                                + " slow deliveries so far)");
+                }
+            }
+        }
+
+        /**
+         * Records the number of events waiting in a queue.
+         *
+         * @param size the number of events waiting in a queue
+         */
+        void updateMaxQueued(int size)
+        {
+            int max;
+
+            while (size > (max = maxQueued.get()))
+            {
+                if (maxQueued.compareAndSet(max, size))
+                    break;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return
+                "queued " + queued + ", handled " + handled + ", slow "
+                    + slow.get() + ", dropped " + dropped.get()
+                    + ", blocked " + blocked.get() + ", max queued "
+                    + maxQueued.get();
+        }
+    }
+}
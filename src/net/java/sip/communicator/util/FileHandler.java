@@ -18,6 +18,9 @@
 package net.java.sip.communicator.util;
 
 import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
 import java.util.logging.*;
 
 /**
@@ -27,6 +30,21 @@
  * home directory. If the pattern option is missing creates log
  * directory in sip-communicator's home directory.
  * If the directory is missing create it.
+ * <p>
+ * Unless the <tt>async</tt> property is <tt>false</tt>, records are written
+ * by a background thread, so that the threads which log (e.g. the SIP stack
+ * when tracing whole messages) never wait for the disk. The logging threads
+ * hand the records over through a bounded lock-free queue; the writer
+ * formats them and flushes the file once per batch. When the queue is full
+ * the <tt>dropPolicy</tt> property decides what happens:
+ * <ul>
+ * <li><tt>BLOCK</tt> - the logging thread waits for room in the queue;</li>
+ * <li><tt>DROP</tt> - the record is dropped;</li>
+ * <li><tt>DROP_BELOW_WARNING</tt> (default) - the record is dropped unless it
+ * is a warning or an error, for which the logging thread waits.</li>
+ * </ul>
+ * The number of dropped records is reported in the log and is available from
+ * {@link #getDroppedRecordCount()}.
  *
  * @author Damian Minkov
  */
@@ -60,6 +78,90 @@
      */
     public static String pattern = null;
 
+    /**
+     * The policy applied to a record logged while the queue of the
+     * asynchronous writer is full.
+     */
+    public enum DropPolicy
+    {
+        /**
+         * The logging thread waits for room in the queue.
+         */
+        BLOCK,
+
+        /**
+         * The record is dropped.
+         */
+        DROP,
+
+        /**
+         * The record is dropped unless it is a warning or an error, for which
+         * the logging thread waits.
+         */
+        DROP_BELOW_WARNING
+    }
+
+    /**
+     * The default number of records which may be waiting to be written.
+     */
+    private static final int DEFAULT_QUEUE_SIZE = 8192;
+
+    /**
+     * The maximum number of records written between two flushes.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The time in milliseconds the writer waits for records before it checks
+     * whether the handler has been closed.
+     */
+    private static final long WRITER_WAIT_TIMEOUT = 1000;
+
+    /**
+     * The time in nanoseconds a logging thread waits before it retries to
+     * queue a record which must not be dropped.
+     */
+    private static final long BLOCK_WAIT_NANOS = 100000;
+
+    /**
+     * The records waiting to be written or <tt>null</tt> if records are
+     * written by the logging threads.
+     */
+    private final RingBuffer<LogRecord> queue;
+
+    /**
+     * The policy applied to a record logged while the queue is full.
+     */
+    private final DropPolicy dropPolicy;
+
+    /**
+     * The thread which writes the queued records or <tt>null</tt> if records
+     * are written by the logging threads.
+     */
+    private final Thread writer;
+
+    /**
+     * The number of records dropped because the queue was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The number of dropped records already reported in the log. Only
+     * accessed by the writer.
+     */
+    private long droppedReported = 0;
+
+    /**
+     * Whether the writer is writing a batch and the file is to be flushed
+     * only at its end. Only accessed by the writer.
+     */
+    private boolean batching = false;
+
+    /**
+     * Whether this handler has been closed.
+     */
+    private volatile boolean closed = false;
+
     /**
      * Initialize a <tt>FileHandler</tt> to write to a set of files.  When
      * (approximately) the given limit has been written to one file,
@@ -87,6 +189,28 @@ public FileHandler(String pattern, int limit, int count)
         throws IOException, SecurityException
     {
         super(pattern, limit, count);
+
+        if (isAsync())
+        {
+            queue = new RingBuffer<LogRecord>(getQueueSize());
+            dropPolicy = getDropPolicy();
+            writer = new Thread(FileHandler.class.getName() + " writer")
+            {
+                @Override
+                public void run()
+                {
+                    writeQueuedRecords();
+                }
+            };
+            writer.setDaemon(true);
+            writer.start();
+        }
+        else
+        {
+            queue = null;
+            dropPolicy = null;
+            writer = null;
+        }
     }
 
     /**
@@ -103,7 +227,186 @@ public FileHandler()
         throws  IOException,
                 SecurityException
     {
-        super(getPattern(), getLimit(), getCount());
+        this(getPattern(), getLimit(), getCount());
+    }
+
+    /**
+     * Writes a record, or queues it to be written by the writer thread if
+     * this handler is asynchronous.
+     *
+     * @param record the record to write
+     */
+    @Override
+    public void publish(LogRecord record)
+    {
+        if (queue == null || Thread.currentThread() == writer)
+        {
+            super.publish(record);
+            return;
+        }
+        if (!isLoggable(record))
+            return;
+
+        // the caller of the log statement is only known on this thread
+        Formatter formatter = getFormatter();
+
+        if (formatter instanceof ScLogFormatter)
+            record = ((ScLogFormatter) formatter).locate(record);
+        else
+            record.getSourceClassName();
+
+        if (queue.offer(record))
+            return;
+
+        boolean wait;
+
+        switch (dropPolicy)
+        {
+        case BLOCK:
+            wait = true;
+            break;
+        case DROP:
+            wait = false;
+            break;
+        default:
+            wait = record.getLevel().intValue() >= Level.WARNING.intValue();
+            break;
+        }
+
+        if (!wait)
+        {
+            dropped.incrementAndGet();
+            return;
+        }
+        while (!queue.offer(record))
+        {
+            if (closed || !writer.isAlive())
+            {
+                super.publish(record);
+                return;
+            }
+            queue.wakeUp();
+            LockSupport.parkNanos(this, BLOCK_WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Flushes the file, unless the writer is in the middle of a batch.
+     */
+    @Override
+    public void flush()
+    {
+        if (batching && Thread.currentThread() == writer)
+            return;
+        super.flush();
+    }
+
+    /**
+     * Writes the queued records and closes the file.
+     */
+    @Override
+    public void close()
+    {
+        if (writer != null && Thread.currentThread() != writer)
+        {
+            closed = true;
+            queue.wakeUp();
+            try
+            {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.close();
+    }
+
+    /**
+     * Returns the number of records dropped because the queue of the
+     * asynchronous writer was full.
+     *
+     * @return the number of dropped records
+     */
+    public long getDroppedRecordCount()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the queued records in batches, flushing the file after each
+     * batch, until this handler is closed.
+     */
+    private void writeQueuedRecords()
+    {
+        LogRecord[] batch = new LogRecord[BATCH_SIZE];
+
+        while (true)
+        {
+            int count = queue.drainTo(batch);
+
+            if (count == 0)
+            {
+                // the records queued before the close have been written
+                if (closed)
+                    break;
+                queue.await(WRITER_WAIT_TIMEOUT);
+                continue;
+            }
+
+            batching = true;
+            try
+            {
+                for (int i = 0; i < count; i++)
+                {
+                    super.publish(batch[i]);
+                    batch[i] = null;
+                }
+                reportDropped();
+            }
+            catch (Throwable t)
+            {
+                /*
+                 * XXX ThreadDeath must be rethrown; otherwise, the
+                 * related Thread will not die.
+                 */
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+                reportError(null, (t instanceof Exception)
+                        ? (Exception) t
+                        : new Exception(t),
+                    ErrorManager.WRITE_FAILURE);
+            }
+            finally
+            {
+                batching = false;
+            }
+            super.flush();
+        }
+    }
+
+    /**
+     * Writes a warning with the number of records dropped since the last
+     * report, if any.
+     */
+    private void reportDropped()
+    {
+        long dropped = this.dropped.get();
+
+        if (dropped > droppedReported)
+        {
+            LogRecord record
+                = new LogRecord(
+                        Level.WARNING,
+                        (dropped - droppedReported)
+                            + " log records were dropped because they were"
+                            + " logged faster than they could be written.");
+
+            record.setLoggerName(FileHandler.class.getName());
+            droppedReported = dropped;
+            super.publish(record);
+        }
     }
 
     /**
@@ -172,6 +475,63 @@ private static String getPattern()
         return pattern;
     }
 
+    /**
+     * Returns whether records are written by a background thread; the
+     * default is <tt>true</tt>.
+     *
+     * @return <tt>true</tt> if records are written asynchronously
+     */
+    private static boolean isAsync()
+    {
+        String async = LogManager.getLogManager().getProperty(
+                        FileHandler.class.getName() + ".async");
+
+        return (async == null) || Boolean.parseBoolean(async.trim());
+    }
+
+    /**
+     * Returns the number of records which may be waiting to be written or the
+     * default value.
+     *
+     * @return the size of the queue of the asynchronous writer
+     */
+    private static int getQueueSize()
+    {
+        String queueSizeStr = LogManager.getLogManager().getProperty(
+                        FileHandler.class.getName() + ".queueSize");
+        int queueSize = DEFAULT_QUEUE_SIZE;
+
+        try
+        {
+            queueSize = Integer.parseInt(queueSizeStr.trim());
+        }
+        catch (Exception ex) {}
+
+        return (queueSize > 0) ? queueSize : DEFAULT_QUEUE_SIZE;
+    }
+
+    /**
+     * Returns the policy applied to a record logged while the queue of the
+     * asynchronous writer is full or the default
+     * {@link DropPolicy#DROP_BELOW_WARNING}.
+     *
+     * @return the drop policy
+     */
+    private static DropPolicy getDropPolicy()
+    {
+        String dropPolicyStr = LogManager.getLogManager().getProperty(
+                        FileHandler.class.getName() + ".dropPolicy");
+        DropPolicy dropPolicy = DropPolicy.DROP_BELOW_WARNING;
+
+        try
+        {
+            dropPolicy = DropPolicy.valueOf(dropPolicyStr.trim());
+        }
+        catch (Exception ex) {}
+
+        return dropPolicy;
+    }
+
     /**
      * Returns the count of the log files or the default value 1;
      * @return file count
@@ -0,0 +1,213 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs tasks on the threads of a shared <tt>Executor</tt> while keeping the
+ * tasks submitted with the same key in order: a task only starts after all
+ * the tasks submitted before it with an equal key have completed. Tasks with
+ * different keys run in parallel.
+ *
+ * <p>
+ * At most one task per key is handed to the <tt>Executor</tt> at a time, the
+ * others wait in a queue of their key which is dropped as soon as it is
+ * empty, so keys which are only used for a while, such as the Call-IDs of SIP
+ * dialogs, do not accumulate. A key with many pending tasks gives its thread
+ * back to the <tt>Executor</tt> every few tasks so that it does not starve
+ * the others.
+ * </p>
+ */
+public class KeyedSerialExecutor
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>KeyedSerialExecutor</tt> class for
+     * logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(KeyedSerialExecutor.class);
+
+    /**
+     * The number of tasks of a key run one after the other before the thread
+     * is given back to the <tt>Executor</tt>.
+     */
+    private static final int MAX_TASKS_PER_RUN = 16;
+
+    /**
+     * The <tt>Executor</tt> which runs the tasks.
+     */
+    private final Executor executor;
+
+    /**
+     * The tasks waiting for the running task of their key to complete, by
+     * key. A key is mapped as long as one of its tasks is running or waiting
+     * for a thread of the <tt>Executor</tt>.
+     */
+    private final Map<Object, Queue<Runnable>> pending
+        = new HashMap<Object, Queue<Runnable>>();
+
+    /**
+     * Initializes a new <tt>KeyedSerialExecutor</tt>.
+     *
+     * @param executor the <tt>Executor</tt> which runs the tasks
+     */
+    public KeyedSerialExecutor(Executor executor)
+    {
+        if (executor == null)
+            throw new NullPointerException("executor");
+
+        this.executor = executor;
+    }
+
+    /**
+     * Runs a task after all the tasks submitted before it with an equal key.
+     * The exceptions thrown by the task are logged and do not prevent the
+     * next tasks of its key from running.
+     *
+     * @param key the key which orders the task
+     * @param task the task to run
+     * @throws RejectedExecutionException if the <tt>Executor</tt> does not
+     * accept the task
+     */
+    public void execute(Object key, Runnable task)
+    {
+        if (key == null)
+            throw new NullPointerException("key");
+        if (task == null)
+            throw new NullPointerException("task");
+
+        synchronized (pending)
+        {
+            Queue<Runnable> queue = pending.get(key);
+
+            if (queue != null)
+            {
+                queue.add(task);
+                return;
+            }
+            pending.put(key, new ArrayDeque<Runnable>());
+        }
+
+        submit(new Worker(key, task));
+    }
+
+    /**
+     * Returns the number of keys with a running or waiting task.
+     *
+     * @return the number of keys with a running or waiting task
+     */
+    public int getActiveKeyCount()
+    {
+        synchronized (pending)
+        {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Hands a <tt>Worker</tt> to the <tt>Executor</tt>. If the
+     * <tt>Executor</tt> rejects it, the key and the tasks waiting for it are
+     * dropped so that later tasks of the key are not stuck behind them.
+     *
+     * @param worker the <tt>Worker</tt> to run
+     */
+    private void submit(Worker worker)
+    {
+        try
+        {
+            executor.execute(worker);
+        }
+        catch (RejectedExecutionException ree)
+        {
+            Queue<Runnable> dropped;
+
+            synchronized (pending)
+            {
+                dropped = pending.remove(worker.key);
+            }
+            if ((dropped != null) && !dropped.isEmpty())
+            {
+                logger.warn(
+                        "Dropped " + dropped.size() + " task(s) of "
+                            + worker.key);
+            }
+            throw ree;
+        }
+    }
+
+    /**
+     * Runs the tasks of a key one after the other.
+     */
+    private class Worker
+        implements Runnable
+    {
+        /**
+         * The key of the tasks.
+         */
+        final Object key;
+
+        /**
+         * The next task to run.
+         */
+        private Runnable task;
+
+        /**
+         * Initializes a new <tt>Worker</tt>.
+         *
+         * @param key the key of the tasks
+         * @param task the first task to run
+         */
+        Worker(Object key, Runnable task)
+        {
+            this.key = key;
+            this.task = task;
+        }
+
+        public void run()
+        {
+            for (int i = 0; i < MAX_TASKS_PER_RUN; i++)
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (Throwable t)
+                {
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                    logger.error("Task of " + key + " failed", t);
+                }
+
+                synchronized (pending)
+                {
+                    task = pending.get(key).poll();
+                    if (task == null)
+                    {
+                        pending.remove(key);
+                        return;
+                    }
+                }
+            }
+
+            // let the tasks of the other keys run
+            submit(this);
+        }
+    }
+}
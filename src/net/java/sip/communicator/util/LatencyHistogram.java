@@ -0,0 +1,169 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counts durations in buckets whose bounds are powers of two microseconds,
+ * so that recording a duration costs a couple of atomic increments and the
+ * percentiles are known within a factor of two. Bucket <tt>0</tt> counts the
+ * durations under one microsecond and bucket <tt>i</tt> the durations from
+ * <tt>2^(i-1)</tt> up to <tt>2^i</tt> microseconds.
+ */
+public class LatencyHistogram
+{
+    /**
+     * The number of buckets. The last bucket counts every duration over half
+     * an hour.
+     */
+    private static final int BUCKET_COUNT = 32;
+
+    /**
+     * The number of durations in each bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * The number of recorded durations.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The sum of the recorded durations in nanoseconds.
+     */
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * The longest recorded duration in nanoseconds.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+            nanos = 0;
+
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int bucket
+            = Math.min(
+                    BUCKET_COUNT - 1,
+                    Long.SIZE - Long.numberOfLeadingZeros(micros));
+
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+
+        long oldMax;
+
+        while (nanos > (oldMax = max.get()))
+        {
+            if (max.compareAndSet(oldMax, nanos))
+                break;
+        }
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return the number of recorded durations
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean of the recorded durations.
+     *
+     * @return the mean of the recorded durations in microseconds
+     */
+    public long getMeanMicros()
+    {
+        long count = getCount();
+
+        return (count == 0)
+            ? 0
+            : TimeUnit.NANOSECONDS.toMicros(total.get() / count);
+    }
+
+    /**
+     * Returns the longest recorded duration.
+     *
+     * @return the longest recorded duration in microseconds
+     */
+    public long getMaxMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(max.get());
+    }
+
+    /**
+     * Returns the upper bound of the bucket of a percentile of the recorded
+     * durations, i.e. a duration which at least <tt>percentile</tt> percent
+     * of the recorded durations do not exceed.
+     *
+     * @param percentile the percentile between <tt>0</tt> and <tt>100</tt>
+     * @return the upper bound of the percentile in microseconds
+     */
+    public long getPercentileMicros(double percentile)
+    {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+
+        // the buckets may be incremented while they are read
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        if (count == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(count * percentile / 100D);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT - 1; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(1L << i, getMaxMicros());
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * Returns a summary of the recorded durations.
+     *
+     * @return a summary of the recorded durations
+     */
+    @Override
+    public String toString()
+    {
+        return "count=" + getCount()
+            + " mean=" + getMeanMicros() + "us"
+            + " p50<=" + getPercentileMicros(50) + "us"
+            + " p99<=" + getPercentileMicros(99) + "us"
+            + " max=" + getMaxMicros() + "us";
+    }
+}
@@ -561,6 +561,21 @@ public static SRVRecord[] getSRVRecords(
         {
             throw new DnssecException(e);
         }
+        return toSRVRecords(domain, records);
+    }
+
+    /**
+     * Converts the records returned by a SRV lookup into <tt>SRVRecord</tt>s
+     * ordered by priority and weight.
+     *
+     * @param domain the domain which was resolved.
+     * @param records the records returned by the lookup or <tt>null</tt>.
+     *
+     * @return the sorted <tt>SRVRecord</tt>s or <tt>null</tt> if
+     * <tt>records</tt> is <tt>null</tt>.
+     */
+    static SRVRecord[] toSRVRecords(String domain, Record[] records)
+    {
         if (records == null)
         {
             return null;
@@ -707,6 +722,22 @@ public static String[][] getNAPTRRecords(String domain)
         {
             throw new DnssecException(e);
         }
+        return toNAPTRRecords(domain, records);
+    }
+
+    /**
+     * Converts the records returned by a NAPTR lookup into an array of
+     * [Order, Service(Transport), Replacement, Preference] sorted by order,
+     * preference and protocol, skipping records which are not for SIP.
+     *
+     * @param domain the domain which was resolved.
+     * @param records the records returned by the lookup or <tt>null</tt>.
+     *
+     * @return the sorted values or <tt>null</tt> if <tt>records</tt> is
+     * <tt>null</tt>.
+     */
+    static String[][] toNAPTRRecords(String domain, Record[] records)
+    {
         if (records == null)
         {
 
@@ -922,61 +953,57 @@ public static InetSocketAddress[] getAandAAAARecords(String domain, int port)
             }
         }
 
-        List<InetSocketAddress> addresses = new LinkedList<InetSocketAddress>();
-        boolean v6lookup = Boolean.getBoolean("java.net.preferIPv6Addresses");
+        // the A and AAAA queries are sent concurrently, one of them from the
+        // current thread
+        return AsyncDnsResolver.getInstance()
+            .resolveAandAAAARecords(domain, port);
+    }
+
+    /**
+     * Converts the records returned by an A or AAAA lookup into
+     * <tt>InetSocketAddress</tt>es. The created addresses carry
+     * <tt>domain</tt> as their host name to avoid PTR queries.
+     *
+     * @param domain the domain which was resolved.
+     * @param records the records returned by the lookup or <tt>null</tt>.
+     * @param port the port number of the returned <tt>InetSocketAddress</tt>es
+     *
+     * @return the addresses in the order of <tt>records</tt>.
+     */
+    static List<InetSocketAddress> toSocketAddresses(
+            String domain,
+            Record[] records,
+            int port)
+    {
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
 
-        for(int i = 0; i < 2; i++)
+        if(records != null)
         {
-            Lookup lookup;
-            try
-            {
-                lookup = createLookup(domain, v6lookup ? Type.AAAA : Type.A);
-            }
-            catch (TextParseException tpe)
-            {
-                logger.error("Failed to parse domain <" + domain + ">", tpe);
-                throw new ParseException(tpe.getMessage(), 0);
-            }
-            Record[] records = null;
-            try
-            {
-                records = lookup.run();
-            }
-            catch(DnssecRuntimeException e)
-            {
-                throw new DnssecException(e);
-            }
-            if(records != null)
+            for(Record r : records)
             {
-                for(Record r : records)
+                byte[] address;
+
+                if (r instanceof AAAARecord)
+                    address = ((AAAARecord)r).getAddress().getAddress();
+                else if (r instanceof ARecord)
+                    address = ((ARecord)r).getAddress().getAddress();
+                else
+                    continue;
+
+                try
                 {
-                    try
-                    {
-                        addresses.add(
-                            new InetSocketAddress(
-                                // create a new InetAddress filled with the
-                                // domain name to avoid PTR queries
-                                InetAddress.getByAddress(
-                                    domain,
-                                    v6lookup
-                                      ? ((AAAARecord)r).getAddress().getAddress()
-                                      : ((ARecord)r).getAddress().getAddress()
-                                ),
-                                port
-                            )
-                        );
-                    }
-                    catch (UnknownHostException e)
-                    {
-                        logger.error("Invalid record returned from DNS", e);
-                    }
+                    addresses.add(
+                        new InetSocketAddress(
+                            InetAddress.getByAddress(domain, address),
+                            port));
+                }
+                catch (UnknownHostException e)
+                {
+                    logger.error("Invalid record returned from DNS", e);
                 }
             }
-            v6lookup = !v6lookup;
         }
-        if(logger.isTraceEnabled())
-            logger.trace("A or AAAA addresses: " + addresses);
-        return addresses.toArray(new InetSocketAddress[0]);
+        return addresses;
     }
 
     /**
@@ -1245,7 +1272,7 @@ private static boolean isMappedIPv4Addr(byte[] address)
      *
      * @throws TextParseException if <tt>domain</tt> is not a valid domain name.
      */
-    private static Lookup createLookup(String domain, int type)
+    static Lookup createLookup(String domain, int type)
         throws TextParseException
     {
         // make domain name absolute if requested
@@ -0,0 +1,236 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * A bounded lock-free queue for many producers and a single consumer, used
+ * to hand work such as log records or logged packets from the threads which
+ * produce it to a single thread which writes it out. The producers must never
+ * block on the consumer, so offering an element fails if the queue is full
+ * and the producer decides whether to drop it or to retry.
+ *
+ * <p>
+ * Every slot carries a sequence number which tells whether it is free for
+ * the producer claiming the position or holds an element for the consumer,
+ * so producers only contend on the tail position and never on the consumer.
+ * </p>
+ *
+ * @param <E> the type of the queued elements
+ */
+public class RingBuffer<E>
+{
+    /**
+     * The elements in the queue.
+     */
+    private final AtomicReferenceArray<E> slots;
+
+    /**
+     * The sequence numbers of the slots. A slot at index <tt>i</tt> is free
+     * for the producer of position <tt>p</tt> if its sequence number is
+     * <tt>p</tt>, and holds the element of position <tt>p</tt> if its
+     * sequence number is <tt>p + 1</tt>.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * The mask which maps a position to the index of its slot.
+     */
+    private final int mask;
+
+    /**
+     * The next position to be claimed by a producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The next position to be taken by the consumer. Only accessed by the
+     * consumer.
+     */
+    private long head = 0;
+
+    /**
+     * The consumer thread if it is waiting for elements.
+     */
+    private volatile Thread waiter;
+
+    /**
+     * Initializes a new <tt>RingBuffer</tt>.
+     *
+     * @param capacity the minimum number of elements the queue can hold. It is
+     * rounded up to a power of two.
+     */
+    public RingBuffer(int capacity)
+    {
+        int size = 1;
+
+        while (size < capacity && size < (1 << 30))
+            size <<= 1;
+
+        slots = new AtomicReferenceArray<E>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the number of elements the queue can hold.
+     *
+     * @return the capacity of the queue
+     */
+    public int getCapacity()
+    {
+        return mask + 1;
+    }
+
+    /**
+     * Adds an element to the queue unless the queue is full. May be called by
+     * any number of threads concurrently.
+     *
+     * @param element the element to add
+     * @return <tt>true</tt> if the element was added, <tt>false</tt> if the
+     * queue is full
+     */
+    public boolean offer(E element)
+    {
+        long position = tail.get();
+        int index;
+
+        while (true)
+        {
+            index = (int) (position & mask);
+
+            long diff = sequences.get(index) - position;
+
+            if (diff == 0)
+            {
+                if (tail.compareAndSet(position, position + 1))
+                    break;
+                position = tail.get();
+            }
+            else if (diff < 0)
+            {
+                // the consumer has not taken the element of the previous
+                // round from this slot yet
+                return false;
+            }
+            else
+            {
+                // another producer has claimed this position
+                position = tail.get();
+            }
+        }
+
+        slots.set(index, element);
+        sequences.set(index, position + 1);
+
+        Thread waiter = this.waiter;
+
+        if (waiter != null)
+            LockSupport.unpark(waiter);
+        return true;
+    }
+
+    /**
+     * Takes the next element from the queue. Must only be called by the
+     * consumer.
+     *
+     * @return the next element or <tt>null</tt> if the queue is empty
+     */
+    public E poll()
+    {
+        int index = (int) (head & mask);
+
+        if (sequences.get(index) != head + 1)
+            return null;
+
+        E element = slots.get(index);
+
+        slots.set(index, null);
+        sequences.set(index, head + mask + 1);
+        head++;
+        return element;
+    }
+
+    /**
+     * Takes up to <tt>batch.length</tt> elements from the queue. Must only be
+     * called by the consumer.
+     *
+     * @param batch the array to store the elements in, from index <tt>0</tt>
+     * @return the number of elements taken
+     */
+    public int drainTo(E[] batch)
+    {
+        int count = 0;
+        E element;
+
+        while (count < batch.length && (element = poll()) != null)
+            batch[count++] = element;
+        return count;
+    }
+
+    /**
+     * Returns whether the queue holds no elements. Must only be called by the
+     * consumer.
+     *
+     * @return <tt>true</tt> if the queue is empty
+     */
+    public boolean isEmpty()
+    {
+        return sequences.get((int) (head & mask)) != head + 1;
+    }
+
+    /**
+     * Waits until an element is added, {@link #wakeUp()} is called or a
+     * timeout elapses. Must only be called by the consumer.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     */
+    public void await(long timeout)
+    {
+        waiter = Thread.currentThread();
+        try
+        {
+            if (isEmpty())
+            {
+                LockSupport.parkNanos(
+                        this,
+                        TimeUnit.MILLISECONDS.toNanos(timeout));
+            }
+        }
+        finally
+        {
+            waiter = null;
+        }
+    }
+
+    /**
+     * Wakes the consumer up if it is waiting for elements.
+     */
+    public void wakeUp()
+    {
+        Thread waiter = this.waiter;
+
+        if (waiter != null)
+            LockSupport.unpark(waiter);
+    }
+}
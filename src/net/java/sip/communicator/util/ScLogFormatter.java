@@ -100,8 +100,10 @@ public synchronized String format(LogRecord record)
 
         if(!timestampDisabled)
         {
-            //current time
+            //time of the record, which may be formatted later when the
+            //record is written asynchronously
             Calendar cal = Calendar.getInstance();
+            cal.setTimeInMillis(record.getMillis());
             int year = cal.get(Calendar.YEAR);
             int month = cal.get(Calendar.MONTH) + 1;
             int day = cal.get(Calendar.DAY_OF_MONTH);
@@ -127,7 +129,10 @@ public synchronized String format(LogRecord record)
         sb.append("[" + record.getThreadID() + "] ");
 
         //caller method
-        int lineNumber = inferCaller(record);
+        int lineNumber
+            = (record instanceof LocatedLogRecord)
+                ? ((LocatedLogRecord) record).lineNumber
+                : inferCaller(record);
         String loggerName = record.getLoggerName();
 
         if(loggerName == null)
@@ -172,6 +177,26 @@ public synchronized String format(LogRecord record)
         return sb.toString();
     }
 
+    /**
+     * Returns a copy of a record which knows the class, method and line that
+     * called the current log statement. The caller can only be found on the
+     * thread which logs the record, so a handler which formats records on
+     * another thread has to locate them first.
+     *
+     * @param record the record logged by the current thread
+     * @return a copy of <tt>record</tt> with its caller
+     */
+    public LogRecord locate(LogRecord record)
+    {
+        if (record instanceof LocatedLogRecord)
+            return record;
+
+        LocatedLogRecord located = new LocatedLogRecord(record);
+
+        located.lineNumber = inferCaller(located);
+        return located;
+    }
+
     /**
      * Try to extract the name of the class and method that called the current
      * log statement.
@@ -251,4 +276,40 @@ private static void loadProgramNameProperty()
         programName = manager.getProperty(cname + PROGRAM_NAME_PROPERTY);
     }
     
+    /**
+     * A <tt>LogRecord</tt> which remembers the line of its caller.
+     */
+    private static class LocatedLogRecord
+        extends LogRecord
+    {
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 0L;
+
+        /**
+         * The line that the caller made the call from or <tt>-1</tt> if
+         * unknown.
+         */
+        int lineNumber = -1;
+
+        /**
+         * Initializes a new <tt>LocatedLogRecord</tt> as a copy of a record.
+         *
+         * @param record the record to copy
+         */
+        LocatedLogRecord(LogRecord record)
+        {
+            super(record.getLevel(), record.getMessage());
+
+            setLoggerName(record.getLoggerName());
+            setMillis(record.getMillis());
+            setParameters(record.getParameters());
+            setResourceBundle(record.getResourceBundle());
+            setResourceBundleName(record.getResourceBundleName());
+            setSequenceNumber(record.getSequenceNumber());
+            setThreadID(record.getThreadID());
+            setThrown(record.getThrown());
+        }
+    }
 }
@@ -0,0 +1,413 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.osgi.framework.*;
+import org.osgi.util.tracker.*;
+
+/**
+ * Caches the OSGi services looked up by their <tt>Class</tt> in
+ * <tt>ServiceTracker</tt>s, so that looking up the same service again
+ * returns the current service without going through the framework's
+ * registry.
+ * <p>
+ * A tracker is opened per <tt>BundleContext</tt> and service <tt>Class</tt>
+ * the first time the service is looked up and it follows the registrations
+ * of the service from then on. The trackers of a <tt>BundleContext</tt> are
+ * closed when its bundle stops. Bundles which are neither starting nor active
+ * look their services up in the registry as they used to.
+ * </p>
+ */
+public final class ServiceCache
+{
+    /**
+     * The trackers of the <tt>BundleContext</tt>s of the started bundles.
+     */
+    private static final ConcurrentMap<BundleContext, ContextTrackers>
+        contexts = new ConcurrentHashMap<BundleContext, ContextTrackers>();
+
+    /**
+     * The number of lookups answered by an open tracker.
+     */
+    private static final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * The number of lookups which opened a tracker.
+     */
+    private static final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * The number of lookups which went through the registry because the
+     * bundle of their <tt>BundleContext</tt> was not started.
+     */
+    private static final AtomicLong uncachedCount = new AtomicLong();
+
+    /**
+     * Prevents the creation of <tt>ServiceCache</tt> instances.
+     */
+    private ServiceCache()
+    {
+    }
+
+    /**
+     * Gets an OSGi service registered in a specific <tt>BundleContext</tt> by
+     * its <tt>Class</tt>.
+     *
+     * @param <T> the very type of the OSGi service to get
+     * @param bundleContext the <tt>BundleContext</tt> in which the service to
+     * get has been registered
+     * @param serviceClass the <tt>Class</tt> with which the service to get has
+     * been registered in the <tt>bundleContext</tt>
+     * @return the OSGi service registered in <tt>bundleContext</tt> with the
+     * specified <tt>serviceClass</tt> if such a service exists there;
+     * otherwise, <tt>null</tt>
+     */
+    public static <T> T getService(
+            BundleContext bundleContext,
+            Class<T> serviceClass)
+    {
+        ContextTrackers trackers = contexts.get(bundleContext);
+
+        if (trackers == null)
+        {
+            if (!isStarted(bundleContext))
+            {
+                uncachedCount.incrementAndGet();
+                return lookUpService(bundleContext, serviceClass);
+            }
+
+            trackers = new ContextTrackers(bundleContext);
+
+            ContextTrackers existing
+                = contexts.putIfAbsent(bundleContext, trackers);
+
+            if (existing == null)
+                trackers.open();
+            else
+                trackers = existing;
+        }
+
+        T service = trackers.getService(serviceClass);
+
+        // The bundle stopped while the tracker was being opened.
+        if ((service == null) && trackers.isClosed())
+        {
+            uncachedCount.incrementAndGet();
+            service = lookUpService(bundleContext, serviceClass);
+        }
+        return service;
+    }
+
+    /**
+     * Gets the number of lookups answered by a tracker which was already
+     * open.
+     *
+     * @return the number of lookups which did not go through the registry
+     */
+    public static long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of lookups which opened a tracker.
+     *
+     * @return the number of lookups which opened a tracker
+     */
+    public static long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the number of lookups which went through the registry because the
+     * bundle of their <tt>BundleContext</tt> was not started.
+     *
+     * @return the number of lookups which did not use a tracker
+     */
+    public static long getUncachedCount()
+    {
+        return uncachedCount.get();
+    }
+
+    /**
+     * Gets the number of lookups of each service <tt>Class</tt> done by the
+     * bundles which are currently started.
+     *
+     * @return the number of lookups of the services by the names of their
+     * <tt>Class</tt>es
+     */
+    public static Map<String, Long> getLookupCounts()
+    {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+
+        for (ContextTrackers trackers : contexts.values())
+        {
+            for (CountingTracker<?> tracker : trackers.trackers.values())
+            {
+                String name = tracker.serviceClass.getName();
+                Long count = counts.get(name);
+                long lookups = tracker.lookupCount.get();
+
+                counts.put(
+                        name,
+                        (count == null) ? lookups : (count + lookups));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Determines whether the bundle of a <tt>BundleContext</tt> is starting
+     * or active and may thus have its services cached.
+     *
+     * @param bundleContext the <tt>BundleContext</tt>
+     * @return <tt>true</tt> if the bundle of <tt>bundleContext</tt> is
+     * starting or active
+     */
+    private static boolean isStarted(BundleContext bundleContext)
+    {
+        try
+        {
+            int state = bundleContext.getBundle().getState();
+
+            return (state & (Bundle.STARTING | Bundle.ACTIVE)) != 0;
+        }
+        catch (IllegalStateException ise)
+        {
+            // the BundleContext is no longer valid
+            return false;
+        }
+    }
+
+    /**
+     * Gets an OSGi service through the registry of the framework.
+     *
+     * @param <T> the very type of the OSGi service to get
+     * @param bundleContext the <tt>BundleContext</tt> in which the service to
+     * get has been registered
+     * @param serviceClass the <tt>Class</tt> with which the service to get has
+     * been registered in the <tt>bundleContext</tt>
+     * @return the OSGi service registered in <tt>bundleContext</tt> with the
+     * specified <tt>serviceClass</tt> if such a service exists there;
+     * otherwise, <tt>null</tt>
+     */
+    private static <T> T lookUpService(
+            BundleContext bundleContext,
+            Class<T> serviceClass)
+    {
+        ServiceReference<T> serviceReference
+            = bundleContext.getServiceReference(serviceClass);
+
+        return
+            (serviceReference == null)
+                ? null
+                : bundleContext.getService(serviceReference);
+    }
+
+    /**
+     * The trackers of the services looked up through a
+     * <tt>BundleContext</tt>, which are closed when its bundle stops.
+     */
+    private static class ContextTrackers
+        implements SynchronousBundleListener
+    {
+        /**
+         * The <tt>BundleContext</tt> of the trackers.
+         */
+        private final BundleContext bundleContext;
+
+        /**
+         * The trackers by the <tt>Class</tt> of their services.
+         */
+        private final ConcurrentMap<Class<?>, CountingTracker<?>> trackers
+            = new ConcurrentHashMap<Class<?>, CountingTracker<?>>();
+
+        /**
+         * Whether the bundle of {@link #bundleContext} has stopped.
+         */
+        private volatile boolean closed = false;
+
+        /**
+         * Initializes new <tt>ContextTrackers</tt>.
+         *
+         * @param bundleContext the <tt>BundleContext</tt> of the trackers
+         */
+        ContextTrackers(BundleContext bundleContext)
+        {
+            this.bundleContext = bundleContext;
+        }
+
+        /**
+         * Starts listening to the bundle of {@link #bundleContext} stopping.
+         */
+        void open()
+        {
+            try
+            {
+                bundleContext.addBundleListener(this);
+            }
+            catch (IllegalStateException ise)
+            {
+                close();
+            }
+        }
+
+        /**
+         * Determines whether the bundle of {@link #bundleContext} has
+         * stopped.
+         *
+         * @return <tt>true</tt> if the trackers are closed
+         */
+        boolean isClosed()
+        {
+            return closed;
+        }
+
+        /**
+         * Gets the current service of a specific <tt>Class</tt>, opening its
+         * tracker the first time.
+         *
+         * @param <T> the very type of the OSGi service to get
+         * @param serviceClass the <tt>Class</tt> of the service
+         * @return the service or <tt>null</tt> if no such service is
+         * registered or the trackers are closed
+         */
+        @SuppressWarnings("unchecked")
+        <T> T getService(Class<T> serviceClass)
+        {
+            CountingTracker<T> tracker
+                = (CountingTracker<T>) trackers.get(serviceClass);
+
+            if (tracker == null)
+            {
+                if (closed)
+                    return null;
+
+                tracker = new CountingTracker<T>(bundleContext, serviceClass);
+                try
+                {
+                    tracker.open();
+                }
+                catch (IllegalStateException ise)
+                {
+                    // the BundleContext is no longer valid
+                    close();
+                    return null;
+                }
+
+                CountingTracker<T> existing
+                    = (CountingTracker<T>)
+                        trackers.putIfAbsent(serviceClass, tracker);
+
+                if (existing == null)
+                {
+                    missCount.incrementAndGet();
+                    // the bundle may have stopped in the meantime
+                    if (closed)
+                        tracker.close();
+                }
+                else
+                {
+                    tracker.close();
+                    tracker = existing;
+                    hitCount.incrementAndGet();
+                }
+            }
+            else
+            {
+                hitCount.incrementAndGet();
+            }
+
+            tracker.lookupCount.incrementAndGet();
+            return closed ? null : tracker.getService();
+        }
+
+        /**
+         * Closes the trackers when the bundle of {@link #bundleContext}
+         * stops.
+         *
+         * @param event the <tt>BundleEvent</tt>
+         */
+        public void bundleChanged(BundleEvent event)
+        {
+            if ((event.getType() == BundleEvent.STOPPING)
+                    && event.getBundle().equals(bundleContext.getBundle()))
+            {
+                close();
+            }
+        }
+
+        /**
+         * Closes the trackers and forgets about {@link #bundleContext}.
+         */
+        private void close()
+        {
+            closed = true;
+            contexts.remove(bundleContext, this);
+            try
+            {
+                bundleContext.removeBundleListener(this);
+            }
+            catch (IllegalStateException ise)
+            {
+                // the framework has already removed the listener
+            }
+            for (CountingTracker<?> tracker : trackers.values())
+                tracker.close();
+            trackers.clear();
+        }
+    }
+
+    /**
+     * A <tt>ServiceTracker</tt> which counts the lookups of its service.
+     *
+     * @param <T> the very type of the tracked service
+     */
+    private static class CountingTracker<T>
+        extends ServiceTracker<T, T>
+    {
+        /**
+         * The <tt>Class</tt> of the tracked service.
+         */
+        private final Class<T> serviceClass;
+
+        /**
+         * The number of lookups of the tracked service.
+         */
+        private final AtomicLong lookupCount = new AtomicLong();
+
+        /**
+         * Initializes a new <tt>CountingTracker</tt>.
+         *
+         * @param bundleContext the <tt>BundleContext</tt> to track the
+         * service in
+         * @param serviceClass the <tt>Class</tt> of the service to track
+         */
+        CountingTracker(BundleContext bundleContext, Class<T> serviceClass)
+        {
+            super(bundleContext, serviceClass, null);
+
+            this.serviceClass = serviceClass;
+        }
+    }
+}
@@ -32,7 +32,8 @@
 {
     /**
      * Gets an OSGi service registered in a specific <tt>BundleContext</tt> by
-     * its <tt>Class</tt>
+     * its <tt>Class</tt>. The service is cached in a <tt>ServiceTracker</tt>
+     * so that the next lookups do not go through the registry.
      *
      * @param <T> the very type of the OSGi service to get
      * @param bundleContext the <tt>BundleContext</tt> in which the service to
@@ -42,18 +43,13 @@
      * @return the OSGi service registered in <tt>bundleContext</tt> with the
      * specified <tt>serviceClass</tt> if such a service exists there;
      * otherwise, <tt>null</tt>
+     * @see ServiceCache#getService(BundleContext, Class)
      */
     public static <T> T getService(
             BundleContext bundleContext,
             Class<T> serviceClass)
     {
-        ServiceReference<T> serviceReference
-            = bundleContext.getServiceReference(serviceClass);
-
-        return
-            (serviceReference == null)
-                ? null
-                : bundleContext.getService(serviceReference);
+        return ServiceCache.getService(bundleContext, serviceClass);
     }
 
     /**
@@ -0,0 +1,234 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.dns;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import junit.framework.*;
+
+import org.xbill.DNS.*;
+
+/**
+ * Tests for the hit/miss accounting, negative caching and background refresh
+ * of the shared DNS cache.
+ */
+public class DnsCacheTest
+    extends TestCase
+{
+    private static final long TTL = 100;
+
+    private DnsCache cache;
+
+    private StubResolver resolver;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        this.cache = new DnsCache();
+        this.resolver = new StubResolver();
+        this.resolver.records.add(new ARecord(Name.fromString("host.test."),
+            DClass.IN, TTL, InetAddress.getByName("192.0.2.1")));
+    }
+
+    private Record[] lookup(String name, int type) throws Exception
+    {
+        Lookup lookup = new Lookup(name, type);
+        lookup.setResolver(this.resolver);
+        lookup.setCache(this.cache);
+        return lookup.run();
+    }
+
+    public void testSecondLookupIsHit() throws Exception
+    {
+        Assert.assertEquals(1, lookup("host.test.", Type.A).length);
+        Assert.assertEquals(1, lookup("host.test.", Type.A).length);
+        Assert.assertEquals(1, this.resolver.queries);
+        Assert.assertEquals(1, this.cache.getMisses());
+        Assert.assertEquals(1, this.cache.getHits());
+    }
+
+    public void testFollowUpLookupIsNotCounted() throws Exception
+    {
+        // Lookup looks the question up again when addMessage returns no
+        // response, which it does for a failure
+        Name name = Name.fromString("host.test.");
+        Assert.assertTrue(
+            this.cache.lookupRecords(name, Type.A, Credibility.NORMAL)
+                .isUnknown());
+        Message failure = Message.newQuery(
+            Record.newRecord(name, Type.A, DClass.IN));
+        failure.getHeader().setRcode(Rcode.SERVFAIL);
+        Assert.assertNull(this.cache.addMessage(failure));
+        this.cache.lookupRecords(name, Type.A, Credibility.NORMAL);
+        Assert.assertEquals(1, this.cache.getMisses());
+
+        // only the follow-up is skipped
+        this.cache.lookupRecords(name, Type.A, Credibility.NORMAL);
+        Assert.assertEquals(2, this.cache.getMisses());
+    }
+
+    public void testFollowUpIsNotInheritedByOtherLookups() throws Exception
+    {
+        // an answer added without a lookup that follows it up
+        Name name = Name.fromString("host.test.");
+        Message failure = Message.newQuery(
+            Record.newRecord(name, Type.A, DClass.IN));
+        failure.getHeader().setRcode(Rcode.SERVFAIL);
+        Assert.assertNull(this.cache.addMessage(failure));
+
+        this.cache.lookupRecords(
+            Name.fromString("other.test."), Type.A, Credibility.NORMAL);
+        Assert.assertEquals(1, this.cache.getMisses());
+        this.cache.lookupRecords(name, Type.A, Credibility.NORMAL);
+        Assert.assertEquals(2, this.cache.getMisses());
+    }
+
+    public void testNegativeAnswerIsCached() throws Exception
+    {
+        Assert.assertNull(lookup("missing.test.", Type.A));
+        Assert.assertNull(lookup("missing.test.", Type.A));
+        Assert.assertEquals(1, this.resolver.queries);
+        Assert.assertEquals(1, this.cache.getNegativeHits());
+    }
+
+    public void testActiveAnswerIsRefreshedBeforeExpiry() throws Exception
+    {
+        lookup("host.test.", Type.A);
+        long now = System.currentTimeMillis();
+
+        Assert.assertEquals("too early", 0, this.cache.prefetch(
+            this.resolver, now + TTL * 1000 / 2));
+        Assert.assertEquals(1, this.cache.prefetch(
+            this.resolver, now + TTL * 1000 * 95 / 100));
+        Assert.assertEquals(2, this.resolver.queries);
+        Assert.assertEquals(1, this.cache.getPrefetches());
+        Assert.assertEquals(1, lookup("host.test.", Type.A).length);
+        Assert.assertEquals(2, this.resolver.queries);
+    }
+
+    public void testIdleAnswerIsNotRefreshed() throws Exception
+    {
+        lookup("host.test.", Type.A);
+        long now = System.currentTimeMillis();
+
+        Assert.assertEquals(0, this.cache.prefetch(
+            this.resolver, now + DnsCache.IDLE_TIMEOUT + 1));
+        Assert.assertEquals(1, this.resolver.queries);
+    }
+
+    public void testValidationDropsUnvalidatedAnswers() throws Exception
+    {
+        lookup("host.test.", Type.A);
+        this.cache.setValidating(true);
+        lookup("host.test.", Type.A);
+        Assert.assertEquals(2, this.resolver.queries);
+
+        // an insecure answer is never refreshed in the background
+        long now = System.currentTimeMillis();
+        Assert.assertEquals(0, this.cache.prefetch(
+            this.resolver, now + TTL * 1000 * 95 / 100));
+
+        this.resolver.secure = true;
+        this.cache.clearCache();
+        lookup("host.test.", Type.A);
+        Assert.assertEquals(1, this.cache.prefetch(
+            this.resolver, now + TTL * 1000 * 95 / 100));
+    }
+
+    /**
+     * Answers queries from a fixed list of records.
+     */
+    private static class StubResolver
+        implements Resolver
+    {
+        final List<Record> records = new ArrayList<Record>();
+
+        int queries;
+
+        boolean secure;
+
+        public Message send(Message query) throws IOException
+        {
+            this.queries++;
+            Record question = query.getQuestion();
+            Message response = new Message(query.getHeader().getID());
+            response.getHeader().setFlag(Flags.QR);
+            response.getHeader().setFlag(Flags.AA);
+            if (this.secure)
+                response.getHeader().setFlag(Flags.AD);
+            response.addRecord(question, Section.QUESTION);
+            for (Record r : this.records)
+            {
+                if (r.getName().equals(question.getName())
+                    && r.getType() == question.getType())
+                {
+                    response.addRecord(r, Section.ANSWER);
+                }
+            }
+            if (response.getSectionArray(Section.ANSWER).length == 0)
+            {
+                response.getHeader().setRcode(Rcode.NXDOMAIN);
+                response.addRecord(new SOARecord(Name.fromString("test."),
+                    DClass.IN, TTL, Name.fromString("ns.test."),
+                    Name.fromString("admin.test."), 1, 60, 60, 60, TTL),
+                    Section.AUTHORITY);
+            }
+            return response;
+        }
+
+        public Object sendAsync(Message query, ResolverListener listener)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setPort(int port)
+        {
+        }
+
+        public void setTCP(boolean flag)
+        {
+        }
+
+        public void setIgnoreTruncation(boolean flag)
+        {
+        }
+
+        public void setEDNS(int level)
+        {
+        }
+
+        public void setEDNS(int level, int payloadSize, int flags,
+            List options)
+        {
+        }
+
+        public void setTSIGKey(TSIG key)
+        {
+        }
+
+        public void setTimeout(int secs, int msecs)
+        {
+        }
+
+        public void setTimeout(int secs)
+        {
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.chat;
+
+import javax.swing.text.*;
+import javax.swing.text.html.*;
+
+import junit.framework.*;
+
+/**
+ * Tests for the chat transcript window.
+ */
+public class ChatTranscriptWindowTest
+    extends TestCase
+{
+    private HTMLDocument document;
+
+    private Element body;
+
+    @Override
+    protected void setUp()
+    {
+        this.document =
+            (HTMLDocument) new HTMLEditorKit().createDefaultDocument();
+        Element root = this.document.getDefaultRootElement();
+        this.body = root.getElement(root.getElementCount() - 1);
+    }
+
+    private void appendHeader(final String name) throws Exception
+    {
+        this.document.insertBeforeEnd(this.body,
+            "<table id=\"messageHeader\"><tr><td>" + name
+                + "</td></tr></table>");
+    }
+
+    private void appendMessage(final String id) throws Exception
+    {
+        this.document.insertBeforeEnd(this.body, "<div id=\""
+            + ChatHtmlUtils.MESSAGE_TEXT_ID + id + "\">" + id + "</div>");
+    }
+
+    private void appendBubble(final String... ids) throws Exception
+    {
+        StringBuilder html = new StringBuilder(
+            "<table><tr><td><table><tr><td id=\"bubble\">");
+        for (String id : ids)
+        {
+            html.append("<div id=\"").append(ChatHtmlUtils.MESSAGE_TEXT_ID)
+                .append(id).append("\">").append(id).append("</div>");
+        }
+        html.append("</td></tr></table></td></tr></table>");
+        this.document.insertBeforeEnd(this.body, html.toString());
+    }
+
+    private void appendStatus(final String text) throws Exception
+    {
+        this.document.insertBeforeEnd(this.body,
+            "<div id=\"statusMessage\">" + text + "</div>");
+    }
+
+    private String text() throws BadLocationException
+    {
+        return this.document.getText(0, this.document.getLength()).trim()
+            .replace('\n', ' ');
+    }
+
+    public void testConstructionBadWindowSize()
+    {
+        try
+        {
+            new ChatTranscriptWindow(0, 1);
+            Assert.fail("Should have thrown IAE for bad window size.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testConstructionBadMargin()
+    {
+        try
+        {
+            new ChatTranscriptWindow(1, 0);
+            Assert.fail("Should have thrown IAE for bad margin.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testNoTrimWithinWindow() throws Exception
+    {
+        ChatTranscriptWindow window = new ChatTranscriptWindow(10, 5);
+        for (int i = 0; i < 5; i++)
+        {
+            appendStatus("s" + i);
+        }
+        Assert.assertFalse(window.isTrimNeeded(this.document));
+        Assert.assertEquals(0, window.trim(this.document));
+    }
+
+    public void testTrimNeededBeyondMargin() throws Exception
+    {
+        ChatTranscriptWindow window = new ChatTranscriptWindow(4, 2);
+        // default document already contains an implied paragraph
+        for (int i = 0; i < 5; i++)
+        {
+            appendStatus("s" + i);
+        }
+        Assert.assertFalse(window.isTrimNeeded(this.document));
+        appendStatus("s5");
+        Assert.assertTrue(window.isTrimNeeded(this.document));
+        Assert.assertFalse(window.isOverflowing(this.document));
+        appendStatus("s6");
+        appendStatus("s7");
+        Assert.assertTrue(window.isOverflowing(this.document));
+    }
+
+    public void testTrimKeepsMostRecentBlocks() throws Exception
+    {
+        ChatTranscriptWindow window = new ChatTranscriptWindow(3, 2);
+        for (int i = 0; i < 8; i++)
+        {
+            appendStatus("s" + i);
+        }
+        Assert.assertEquals(6, window.trim(this.document));
+        Assert.assertEquals(3, this.body.getElementCount());
+        Assert.assertEquals("s5 s6 s7", text());
+        Assert.assertFalse(window.isTrimNeeded(this.document));
+    }
+
+    public void testTrimDoesNotOrphanConsecutiveMessages() throws Exception
+    {
+        ChatTranscriptWindow window = new ChatTranscriptWindow(3, 1);
+        appendHeader("alice");
+        appendMessage("1");
+        appendHeader("bob");
+        appendMessage("2");
+        appendMessage("3");
+        appendMessage("4");
+        // Cut would fall between bob's header and his messages, so his
+        // messages are removed together with the header.
+        window.trim(this.document);
+        Assert.assertEquals("4", text());
+    }
+
+    public void testNestedMessagesAreCounted() throws Exception
+    {
+        ChatTranscriptWindow window = new ChatTranscriptWindow(4, 2);
+        // the implied paragraph and 6 messages in 2 bubbles
+        appendBubble("1", "2", "3");
+        appendBubble("4", "5", "6");
+        Assert.assertEquals(3, this.body.getElementCount());
+        Assert.assertTrue(window.isTrimNeeded(this.document));
+        Assert.assertFalse(window.isOverflowing(this.document));
+        appendBubble("7", "8");
+        Assert.assertTrue(window.isOverflowing(this.document));
+    }
+
+    public void testTrimRemovesWholeBubbles() throws Exception
+    {
+        ChatTranscriptWindow window = new ChatTranscriptWindow(4, 1);
+        appendBubble("1", "2");
+        appendBubble("3", "4", "5");
+        appendBubble("6", "7");
+        Assert.assertEquals(6, window.trim(this.document));
+        Assert.assertEquals("6 7", text());
+        Assert.assertFalse(window.isTrimNeeded(this.document));
+    }
+
+    public void testTrimKeepsLastBlock() throws Exception
+    {
+        ChatTranscriptWindow window = new ChatTranscriptWindow(1, 1);
+        appendHeader("alice");
+        appendMessage("1");
+        appendMessage("2");
+        appendMessage("3");
+        window.trim(this.document);
+        Assert.assertEquals(1, this.body.getElementCount());
+        Assert.assertEquals("3", text());
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.chat.conference;
+
+import java.util.*;
+
+import javax.swing.event.*;
+
+import junit.framework.*;
+
+import net.java.sip.communicator.impl.gui.main.chat.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+import org.easymock.*;
+
+/**
+ * Tests the sorting, the deduplication and the notifications of the chat
+ * contact list model.
+ */
+public class ChatContactListModelTest
+    extends TestCase
+{
+    /**
+     * The notifications of {@link #model} as <tt>"added 0-1"</tt>,
+     * <tt>"removed 2-2"</tt> or <tt>"changed 3-3"</tt>.
+     */
+    private final List<String> events = new ArrayList<String>();
+
+    private ChatContactListModel model;
+
+    /**
+     * A <tt>ChatContact</tt> which is not a member of a chat room and is
+     * therefore sorted after the members.
+     */
+    private static class PlainChatContact
+        extends ChatContact<Object>
+    {
+        private final String name;
+
+        PlainChatContact(String name)
+        {
+            super(new Object());
+            this.name = name;
+        }
+
+        @Override
+        protected byte[] getAvatarBytes()
+        {
+            return null;
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public String getUID()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * A <tt>ChatRoomMember</tt> with a name and a role which may be changed.
+     */
+    private static class Member
+    {
+        String name;
+
+        ChatRoomMemberRole role;
+
+        final ChatRoomMember member
+            = EasyMock.createNiceMock(ChatRoomMember.class);
+
+        Member(String name, ChatRoomMemberRole role)
+        {
+            this.name = name;
+            this.role = role;
+
+            EasyMock.expect(member.getName()).andStubAnswer(
+                new IAnswer<String>()
+                {
+                    public String answer()
+                    {
+                        return Member.this.name;
+                    }
+                });
+            EasyMock.expect(member.getRole()).andStubAnswer(
+                new IAnswer<ChatRoomMemberRole>()
+                {
+                    public ChatRoomMemberRole answer()
+                    {
+                        return Member.this.role;
+                    }
+                });
+            EasyMock.replay(member);
+        }
+
+        ConferenceChatContact contact()
+        {
+            return new ConferenceChatContact(member);
+        }
+
+        /**
+         * Notifies a model that a property of this member has changed.
+         */
+        void changed(ChatContactListModel model)
+        {
+            model.chatRoomPropertyChanged(
+                new ChatRoomMemberPropertyChangeEvent(
+                        member, null, "name", null, name));
+        }
+    }
+
+    private static Member member(String name)
+    {
+        return new Member(name, ChatRoomMemberRole.MEMBER);
+    }
+
+    @Override
+    protected void setUp()
+    {
+        ChatSession chatSession = EasyMock.createNiceMock(ChatSession.class);
+
+        EasyMock.replay(chatSession);
+        model = new ChatContactListModel(chatSession);
+        model.addListDataListener(
+            new ListDataListener()
+            {
+                public void intervalAdded(ListDataEvent e)
+                {
+                    record("added", e);
+                }
+
+                public void intervalRemoved(ListDataEvent e)
+                {
+                    record("removed", e);
+                }
+
+                public void contentsChanged(ListDataEvent e)
+                {
+                    record("changed", e);
+                }
+            });
+    }
+
+    private void record(String type, ListDataEvent e)
+    {
+        events.add(type + " " + e.getIndex0() + "-" + e.getIndex1());
+    }
+
+    private void assertNames(String... names)
+    {
+        List<String> actual = new ArrayList<String>();
+
+        for (int i = 0; i < model.getSize(); i++)
+            actual.add(model.getElementAt(i).getName());
+        Assert.assertEquals(Arrays.asList(names), actual);
+    }
+
+    private void assertEvents(String... expected)
+    {
+        Assert.assertEquals(Arrays.asList(expected), events);
+        events.clear();
+    }
+
+    public void testContactsAreSortedByRoleThenName()
+    {
+        model.addElement(member("bob").contact());
+        model.addElement(new PlainChatContact("aaron"));
+        model.addElement(
+            new Member("carol", ChatRoomMemberRole.MODERATOR).contact());
+        model.addElement(member("Alice").contact());
+        model.addElement(
+            new Member("dave", ChatRoomMemberRole.OWNER).contact());
+
+        assertNames("dave", "carol", "Alice", "bob", "aaron");
+        assertEvents(
+            "added 0-0", "added 1-1", "added 0-0", "added 1-1", "added 0-0");
+    }
+
+    public void testDuplicatesAreIgnoredByDescriptor()
+    {
+        Member alice = member("alice");
+        Member bob = member("bob");
+
+        model.addElement(alice.contact());
+        assertEvents("added 0-0");
+
+        model.addElement(alice.contact());
+        assertNames("alice");
+        assertEvents();
+
+        model.addElements(
+            Arrays.asList(alice.contact(), bob.contact(), bob.contact()));
+        assertNames("alice", "bob");
+        assertEvents("added 1-1");
+
+        model.addElements(Arrays.asList(alice.contact(), bob.contact()));
+        assertNames("alice", "bob");
+        assertEvents();
+    }
+
+    public void testAddElementsNotifiesRunsOfAddedContacts()
+    {
+        model.addElement(member("b").contact());
+        model.addElement(member("d").contact());
+        events.clear();
+
+        model.addElements(
+            Arrays.asList(
+                    member("e").contact(),
+                    member("a").contact(),
+                    member("f").contact(),
+                    member("c").contact()));
+
+        assertNames("a", "b", "c", "d", "e", "f");
+        assertEvents("added 0-0", "added 2-2", "added 4-5");
+    }
+
+    public void testAddedContactsGoAfterEqualOnes()
+    {
+        ConferenceChatContact first = member("same").contact();
+        ConferenceChatContact second = member("Same").contact();
+        ConferenceChatContact third = member("SAME").contact();
+
+        model.addElement(first);
+        model.addElements(Arrays.asList(second));
+        model.addElement(third);
+
+        Assert.assertSame(first, model.getElementAt(0));
+        Assert.assertSame(second, model.getElementAt(1));
+        Assert.assertSame(third, model.getElementAt(2));
+        assertEvents("added 0-0", "added 1-1", "added 2-2");
+    }
+
+    public void testRemoveElement()
+    {
+        Member bob = member("bob");
+
+        model.addElements(
+            Arrays.asList(
+                    member("alice").contact(),
+                    bob.contact(),
+                    member("carol").contact()));
+        assertEvents("added 0-2");
+
+        model.removeElement(bob.contact());
+        assertNames("alice", "carol");
+        assertEvents("removed 1-1");
+
+        model.removeElement(bob.contact());
+        assertEvents();
+    }
+
+    public void testChangedContactIsResorted()
+    {
+        Member alice = member("alice");
+        Member bob = member("bob");
+
+        model.addElements(
+            Arrays.asList(
+                    alice.contact(),
+                    bob.contact(),
+                    member("carol").contact()));
+        events.clear();
+
+        alice.name = "dave";
+        alice.changed(model);
+        assertNames("bob", "carol", "dave");
+        assertEvents("removed 0-0", "added 2-2");
+
+        // a change which keeps the index is a change of the contents
+        bob.role = ChatRoomMemberRole.ADMINISTRATOR;
+        bob.changed(model);
+        assertNames("bob", "carol", "dave");
+        assertEvents("changed 0-0");
+
+        alice.name = "Dave";
+        alice.changed(model);
+        assertNames("bob", "carol", "Dave");
+        assertEvents("changed 2-2");
+
+        alice.role = ChatRoomMemberRole.OWNER;
+        alice.changed(model);
+        assertNames("Dave", "bob", "carol");
+        assertEvents("removed 2-2", "added 0-0");
+
+        // the members which are not in the list are ignored
+        member("eve").changed(model);
+        assertEvents();
+
+        // the contact is found by its new role and name once changed
+        model.removeElement(alice.contact());
+        model.removeElement(bob.contact());
+        assertNames("carol");
+        assertEvents("removed 0-0", "removed 0-0");
+    }
+
+    public void testRenamedMemberIsFound()
+    {
+        NamedMember alice = new NamedMember("alice");
+
+        model.addElements(
+            Arrays.asList(
+                    new ConferenceChatContact(alice),
+                    member("bob").contact(),
+                    member("carol").contact()));
+        events.clear();
+
+        // the hash code of the member changes before the change is notified
+        alice.name = "dave";
+        model.chatRoomPropertyChanged(
+            new ChatRoomMemberPropertyChangeEvent(
+                    alice, null, "name", "alice", "dave"));
+        assertNames("bob", "carol", "dave");
+        assertEvents("removed 0-0", "added 2-2");
+
+        model.removeElement(new ConferenceChatContact(alice));
+        assertNames("bob", "carol");
+        assertEvents("removed 2-2");
+    }
+
+    public void testEqualMemberIsFound()
+    {
+        model.addElement(new ConferenceChatContact(new NamedMember("alice")));
+        model.addElement(new ConferenceChatContact(new NamedMember("bob")));
+        events.clear();
+
+        // another instance of the same member
+        model.removeElement(new ConferenceChatContact(new NamedMember("bob")));
+        assertNames("alice");
+        assertEvents("removed 1-1");
+    }
+
+    /**
+     * A <tt>ChatRoomMember</tt> which is equal to the members with the same
+     * name, as the IRC ones are.
+     */
+    private static class NamedMember
+        implements ChatRoomMember
+    {
+        String name;
+
+        NamedMember(String name)
+        {
+            this.name = name;
+        }
+
+        public ChatRoom getChatRoom()
+        {
+            return null;
+        }
+
+        public ProtocolProviderService getProtocolProvider()
+        {
+            return null;
+        }
+
+        public String getContactAddress()
+        {
+            return name;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public byte[] getAvatar()
+        {
+            return null;
+        }
+
+        public Contact getContact()
+        {
+            return null;
+        }
+
+        public ChatRoomMemberRole getRole()
+        {
+            return ChatRoomMemberRole.MEMBER;
+        }
+
+        public void setRole(ChatRoomMemberRole role)
+        {
+        }
+
+        public PresenceStatus getPresenceStatus()
+        {
+            return null;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return name.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return (obj instanceof NamedMember)
+                && name.equals(((NamedMember) obj).name);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.chat.replacers;
+
+import java.util.*;
+import java.util.regex.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.replacement.*;
+
+/**
+ * Tests for the precompiled replacement service matcher.
+ */
+public class ReplacementServiceMatcherTest
+    extends TestCase
+{
+    public void testNullServices()
+    {
+        try
+        {
+            new ReplacementServiceMatcher().getSnapshot(null);
+            Assert.fail("Should have thrown IAE for null services.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testNoServices()
+    {
+        ReplacementServiceMatcher.Snapshot snapshot =
+            new ReplacementServiceMatcher().getSnapshot(
+                Collections.<ReplacementService>emptyList());
+        Assert.assertNull(snapshot.matcher("some text"));
+    }
+
+    public void testSnapshotIsReused()
+    {
+        ReplacementServiceMatcher matcher = new ReplacementServiceMatcher();
+        List<ReplacementService> services = Arrays.<ReplacementService>asList(
+            new Service("A", "a+"), new Service("B", "b+"));
+        ReplacementServiceMatcher.Snapshot first =
+            matcher.getSnapshot(services);
+        Assert.assertSame(first, matcher.getSnapshot(services));
+    }
+
+    public void testSnapshotRecompiledOnPatternChange()
+    {
+        ReplacementServiceMatcher matcher = new ReplacementServiceMatcher();
+        Service service = new Service("A", "a+");
+        List<ReplacementService> services =
+            Arrays.<ReplacementService>asList(service);
+        ReplacementServiceMatcher.Snapshot first =
+            matcher.getSnapshot(services);
+        service.pattern = "x+";
+        ReplacementServiceMatcher.Snapshot second =
+            matcher.getSnapshot(services);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals("x+", second.getPattern(service).pattern());
+    }
+
+    public void testSnapshotRecompiledOnServiceChange()
+    {
+        ReplacementServiceMatcher matcher = new ReplacementServiceMatcher();
+        Service a = new Service("A", "a+");
+        Service b = new Service("B", "b+");
+        ReplacementServiceMatcher.Snapshot first = matcher.getSnapshot(
+            Arrays.<ReplacementService>asList(a));
+        ReplacementServiceMatcher.Snapshot second = matcher.getSnapshot(
+            Arrays.<ReplacementService>asList(a, b));
+        Assert.assertNotSame(first, second);
+        Assert.assertNull(first.getPattern(b));
+        Assert.assertNotNull(second.getPattern(b));
+    }
+
+    public void testSinglePassIdentifiesServices()
+    {
+        Service youtube =
+            new Service("YOUTUBE", "(https?://)?youtube\\.com/(\\w+)");
+        Service smiley =
+            new Service("SMILEY", "(?<!(alt='|alt=\"))(:\\)|;\\))");
+        Service image = new Service("IMAGE", "http://[^ ]+\\.(png|jpg)");
+        ReplacementServiceMatcher.Snapshot snapshot =
+            new ReplacementServiceMatcher().getSnapshot(
+                Arrays.<ReplacementService>asList(youtube, smiley, image));
+        Matcher m = snapshot.matcher(
+            "look :) at http://youtube.com/abc and http://x.org/y.png ;)");
+        List<String> found = new ArrayList<String>();
+        while (m.find())
+        {
+            found.add(snapshot.getMatchingService(m).getSourceName() + "="
+                + m.group());
+        }
+        Assert.assertEquals(Arrays.asList("SMILEY=:)",
+            "YOUTUBE=http://youtube.com/abc", "IMAGE=http://x.org/y.png",
+            "SMILEY=;)"), found);
+    }
+
+    public void testFirstServiceWinsOnSamePosition()
+    {
+        Service first = new Service("FIRST", "http://\\S+");
+        Service second = new Service("SECOND", "http://\\S+\\.png");
+        ReplacementServiceMatcher.Snapshot snapshot =
+            new ReplacementServiceMatcher().getSnapshot(
+                Arrays.<ReplacementService>asList(first, second));
+        Matcher m = snapshot.matcher("http://x.org/y.png");
+        Assert.assertTrue(m.find());
+        Assert.assertSame(first, snapshot.getMatchingService(m));
+    }
+
+    public void testCaseInsensitive()
+    {
+        Service service = new Service("A", "youtube");
+        ReplacementServiceMatcher.Snapshot snapshot =
+            new ReplacementServiceMatcher().getSnapshot(
+                Arrays.<ReplacementService>asList(service));
+        Assert.assertTrue(snapshot.matcher("YouTube").find());
+    }
+
+    private static final class Service
+        implements ReplacementService
+    {
+        private final String name;
+
+        private String pattern;
+
+        private Service(final String name, final String pattern)
+        {
+            this.name = name;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public String getReplacement(String sourceString)
+        {
+            return sourceString;
+        }
+
+        @Override
+        public String getSourceName()
+        {
+            return this.name;
+        }
+
+        @Override
+        public String getPattern()
+        {
+            return this.pattern;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.metahistory;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Tests the bounded merge of the sorted records of several history services.
+ */
+public class RecordsMergerTest
+    extends TestCase
+{
+    /**
+     * Orders the strings by their first character only, so that the strings
+     * with the same first character are equal.
+     */
+    private static final Comparator<String> FIRST_CHAR
+        = new Comparator<String>()
+        {
+            public int compare(String s1, String s2)
+            {
+                return s1.charAt(0) - s2.charAt(0);
+            }
+        };
+
+    private static List<List<String>> lists(String... lists)
+    {
+        List<List<String>> result = new ArrayList<List<String>>();
+
+        for (String list : lists)
+        {
+            result.add(
+                list.length() == 0
+                    ? Collections.<String>emptyList()
+                    : Arrays.asList(list.split(" ")));
+        }
+        return result;
+    }
+
+    public void testMergeAll()
+    {
+        Assert.assertEquals(
+            Arrays.asList("a", "b", "c", "d", "e", "f"),
+            RecordsMerger.merge(
+                    lists("a d", "", "b c f", "e"),
+                    FIRST_CHAR, Integer.MAX_VALUE, false));
+    }
+
+    public void testMergeFirst()
+    {
+        Assert.assertEquals(
+            Arrays.asList("a", "b", "c"),
+            RecordsMerger.merge(
+                    lists("a d", "b c f", "e"),
+                    FIRST_CHAR, 3, false));
+    }
+
+    public void testMergeLast()
+    {
+        Assert.assertEquals(
+            Arrays.asList("d", "e", "f"),
+            RecordsMerger.merge(
+                    lists("a d", "b c f", "e"),
+                    FIRST_CHAR, 3, true));
+        Assert.assertEquals(
+            Arrays.asList("a", "b"),
+            RecordsMerger.merge(lists("a", "b"), FIRST_CHAR, 5, true));
+    }
+
+    public void testEqualRecordsKeepServiceOrder()
+    {
+        List<List<String>> lists = lists("a1 b1", "a2 b2", "b3");
+
+        Assert.assertEquals(
+            Arrays.asList("a1", "a2", "b1", "b2", "b3"),
+            RecordsMerger.merge(lists, FIRST_CHAR, Integer.MAX_VALUE, false));
+        Assert.assertEquals(
+            Arrays.asList("b1", "b2", "b3"),
+            RecordsMerger.merge(lists, FIRST_CHAR, 3, true));
+    }
+
+    public void testMergeNothing()
+    {
+        Assert.assertTrue(
+            RecordsMerger.merge(lists(), FIRST_CHAR, 10, false).isEmpty());
+        Assert.assertTrue(
+            RecordsMerger.merge(lists("a"), FIRST_CHAR, 0, true).isEmpty());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.netaddr;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+/**
+ * Tests for the prefix matching, invalidation and concurrent use of the local
+ * host cache.
+ */
+public class LocalHostCacheTest
+    extends TestCase
+{
+    private static InetAddress addr(String address) throws Exception
+    {
+        return InetAddress.getByName(address);
+    }
+
+    public void testHostPrefixesMatchSingleDestination() throws Exception
+    {
+        LocalHostCache cache = new LocalHostCache(32, 128);
+        cache.put(addr("192.0.2.1"), addr("10.0.0.1"), cache.getGeneration());
+
+        Assert.assertEquals(addr("10.0.0.1"), cache.get(addr("192.0.2.1")));
+        Assert.assertNull(cache.get(addr("192.0.2.2")));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    public void testPrefixIsSharedByDestinations() throws Exception
+    {
+        LocalHostCache cache = new LocalHostCache(20, 48);
+        cache.put(addr("192.0.2.1"), addr("10.0.0.1"), cache.getGeneration());
+        cache.put(addr("2001:db8:1::1"), addr("2001:db8:ff::1"),
+            cache.getGeneration());
+
+        Assert.assertEquals(addr("10.0.0.1"), cache.get(addr("192.0.15.200")));
+        Assert.assertNull(cache.get(addr("192.0.16.1")));
+        Assert.assertEquals(addr("2001:db8:ff::1"),
+            cache.get(addr("2001:db8:1:abcd::2")));
+        Assert.assertNull(cache.get(addr("2001:db8:2::1")));
+    }
+
+    public void testClearInvalidatesEntries() throws Exception
+    {
+        LocalHostCache cache = new LocalHostCache(32, 128);
+        cache.put(addr("192.0.2.1"), addr("10.0.0.1"), cache.getGeneration());
+        cache.clear();
+
+        Assert.assertNull(cache.get(addr("192.0.2.1")));
+    }
+
+    public void testLookupStartedBeforeClearIsNotCached() throws Exception
+    {
+        LocalHostCache cache = new LocalHostCache(32, 128);
+        int generation = cache.getGeneration();
+        cache.clear();
+        cache.put(addr("192.0.2.1"), addr("10.0.0.1"), generation);
+
+        Assert.assertNull(cache.get(addr("192.0.2.1")));
+    }
+
+    /**
+     * Runs many concurrent lookups for a few destinations and checks that
+     * each destination is resolved about once.
+     */
+    public void testConcurrentLookups() throws Exception
+    {
+        final LocalHostCache cache = new LocalHostCache(32, 128);
+        final InetAddress[] destinations = new InetAddress[16];
+        for (int i = 0; i < destinations.length; i++)
+            destinations[i] = addr("192.0.2." + (i + 1));
+        final InetAddress localHost = addr("10.0.0.1");
+        final int lookups = 20000;
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+        try
+        {
+            for (int t = 0; t < threads; t++)
+            {
+                results.add(executor.submit(new Callable<Integer>()
+                {
+                    public Integer call() throws Exception
+                    {
+                        int resolved = 0;
+                        for (int i = 0; i < lookups; i++)
+                        {
+                            InetAddress dst
+                                = destinations[i % destinations.length];
+                            if (cache.get(dst) == null)
+                            {
+                                cache.put(dst, localHost,
+                                    cache.getGeneration());
+                                resolved++;
+                            }
+                        }
+                        return resolved;
+                    }
+                }));
+            }
+
+            int resolved = 0;
+            for (Future<Integer> result : results)
+                resolved += result.get(30, TimeUnit.SECONDS);
+
+            Assert.assertTrue("resolved " + resolved,
+                resolved >= destinations.length
+                    && resolved <= destinations.length * threads);
+            Assert.assertEquals(threads * lookups,
+                cache.getHits() + cache.getMisses());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
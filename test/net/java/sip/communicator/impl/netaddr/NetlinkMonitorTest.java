@@ -0,0 +1,111 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.netaddr;
+
+import java.nio.*;
+
+import junit.framework.*;
+
+/**
+ * Tests for the classification of the rtnetlink messages received by the
+ * netlink monitor.
+ */
+public class NetlinkMonitorTest
+    extends TestCase
+{
+    private static final int RTM_NEWLINK = 16;
+
+    private static final int RTM_DELADDR = 21;
+
+    private static final int RTM_NEWROUTE = 24;
+
+    private static final int RTM_DELROUTE = 25;
+
+    private static final int NLMSG_DONE = 3;
+
+    /**
+     * Builds a datagram of netlink messages of the given types, each with a
+     * payload of the given size.
+     */
+    private static ByteBuffer datagram(int payload, int... types)
+    {
+        int length = 16 + payload;
+        int aligned = (length + 3) & ~3;
+        ByteBuffer buf
+            = ByteBuffer.allocate(aligned * types.length)
+                .order(ByteOrder.nativeOrder());
+
+        for (int i = 0; i < types.length; i++)
+        {
+            buf.putInt(i * aligned, length);
+            buf.putShort(i * aligned + 4, (short) types[i]);
+        }
+        return buf;
+    }
+
+    public void testLinkAndAddressMessages()
+    {
+        Assert.assertEquals(
+            NetlinkMonitor.LINK_CHANGED,
+            NetlinkMonitor.parse(datagram(40, RTM_NEWLINK)));
+        Assert.assertEquals(
+            NetlinkMonitor.LINK_CHANGED,
+            NetlinkMonitor.parse(datagram(40, RTM_DELADDR)));
+    }
+
+    public void testRouteMessages()
+    {
+        Assert.assertEquals(
+            NetlinkMonitor.ROUTE_CHANGED,
+            NetlinkMonitor.parse(datagram(40, RTM_NEWROUTE)));
+        Assert.assertEquals(
+            NetlinkMonitor.ROUTE_CHANGED,
+            NetlinkMonitor.parse(datagram(40, RTM_DELROUTE)));
+    }
+
+    public void testAllMessagesOfADatagramAreRead()
+    {
+        // the payload is not a multiple of four bytes
+        Assert.assertEquals(
+            NetlinkMonitor.LINK_CHANGED | NetlinkMonitor.ROUTE_CHANGED,
+            NetlinkMonitor.parse(datagram(13, RTM_NEWROUTE, RTM_NEWLINK)));
+        Assert.assertEquals(
+            NetlinkMonitor.ROUTE_CHANGED,
+            NetlinkMonitor.parse(datagram(13, NLMSG_DONE, RTM_DELROUTE)));
+    }
+
+    public void testOtherAndMalformedMessages()
+    {
+        Assert.assertEquals(0, NetlinkMonitor.parse(datagram(4, NLMSG_DONE)));
+
+        // a truncated message still counts
+        ByteBuffer truncated = datagram(1000, RTM_NEWLINK);
+        truncated.limit(20);
+        Assert.assertEquals(
+            NetlinkMonitor.LINK_CHANGED,
+            NetlinkMonitor.parse(truncated));
+
+        // a length shorter than the header ends the datagram
+        ByteBuffer broken = datagram(0, RTM_NEWROUTE, RTM_NEWLINK);
+        broken.putInt(0, 0);
+        Assert.assertEquals(
+            NetlinkMonitor.ROUTE_CHANGED,
+            NetlinkMonitor.parse(broken));
+        Assert.assertEquals(0, NetlinkMonitor.parse(datagram(0)));
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.netaddr;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+
+import net.java.sip.communicator.service.netaddr.event.*;
+
+/**
+ * Tests for the debouncing of the change notifications and the detection of
+ * address changes of the network configuration watcher.
+ */
+public class NetworkConfigurationWatcherTest
+    extends TestCase
+{
+    private final BlockingQueue<ChangeEvent> events
+        = new LinkedBlockingQueue<ChangeEvent>();
+
+    private final AtomicInteger captures = new AtomicInteger();
+
+    private volatile NetworkInterfaceSnapshot current;
+
+    private NetworkConfigurationWatcher watcher;
+
+    private static InetAddress addr(String address) throws Exception
+    {
+        return InetAddress.getByName(address);
+    }
+
+    private static NetworkInterfaceSnapshot snapshot(
+            String iface,
+            InetAddress... addresses)
+    {
+        Map<String, List<InetAddress>> all
+            = new LinkedHashMap<String, List<InetAddress>>();
+        Map<String, List<InetAddress>> active
+            = new HashMap<String, List<InetAddress>>();
+
+        all.put(iface, Arrays.asList(addresses));
+        if (addresses.length > 0)
+            active.put(iface, Arrays.asList(addresses));
+        return new NetworkInterfaceSnapshot(all, active);
+    }
+
+    private void start(NetworkInterfaceSnapshot initial)
+    {
+        current = initial;
+        watcher
+            = new NetworkConfigurationWatcher(
+                    new NetworkEventDispatcher()
+                    {
+                        @Override
+                        protected void fireChangeEvent(
+                                ChangeEvent evt,
+                                int wait)
+                        {
+                            events.add(evt);
+                        }
+                    })
+            {
+                @Override
+                NetworkInterfaceSnapshot captureSnapshot()
+                {
+                    captures.incrementAndGet();
+                    return current;
+                }
+            };
+        Assert.assertEquals(1, captures.get());
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        if (watcher != null)
+            watcher.stop();
+    }
+
+    public void testBurstOfNotificationsIsOneCheck() throws Exception
+    {
+        start(snapshot("eth0", addr("10.0.0.1")));
+        current = snapshot("eth0", addr("10.0.0.1"), addr("10.0.0.2"));
+
+        for (int i = 0; i < 10; i++)
+            watcher.netlinkChanged();
+
+        ChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("no event", event);
+        Assert.assertEquals(ChangeEvent.ADDRESS_UP, event.getType());
+
+        // nothing else is checked or fired after the burst
+        Assert.assertNull(events.poll(1, TimeUnit.SECONDS));
+        Assert.assertEquals(2, captures.get());
+    }
+
+    public void testAddedAddressIsDetected() throws Exception
+    {
+        start(snapshot("eth0", addr("10.0.0.1")));
+        current = snapshot("eth0", addr("10.0.0.1"), addr("10.0.0.2"));
+        watcher.netlinkChanged();
+
+        ChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("no event", event);
+        Assert.assertEquals(ChangeEvent.ADDRESS_UP, event.getType());
+        Assert.assertEquals("eth0", event.getSource());
+        Assert.assertEquals(addr("10.0.0.2"), event.getAddress());
+    }
+
+    public void testRemovedAddressIsDetected() throws Exception
+    {
+        start(snapshot("eth0", addr("10.0.0.1"), addr("10.0.0.2")));
+        current = snapshot("eth0", addr("10.0.0.2"));
+        watcher.netlinkChanged();
+
+        ChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("no event", event);
+        Assert.assertEquals(ChangeEvent.ADDRESS_DOWN, event.getType());
+        Assert.assertEquals("eth0", event.getSource());
+        Assert.assertEquals(addr("10.0.0.1"), event.getAddress());
+        Assert.assertNull(events.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    public void testRemovedInterfaceIsDetected() throws Exception
+    {
+        start(snapshot("eth0", addr("10.0.0.1")));
+        current = snapshot("eth0");
+        watcher.netlinkChanged();
+
+        ChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("no event", event);
+        Assert.assertEquals(ChangeEvent.IFACE_DOWN, event.getType());
+        Assert.assertEquals("eth0", event.getSource());
+    }
+
+    public void testRouteChangeRunsListeners() throws Exception
+    {
+        start(snapshot("eth0", addr("10.0.0.1")));
+        final AtomicInteger routeChanges = new AtomicInteger();
+        Runnable listener
+            = new Runnable()
+            {
+                public void run()
+                {
+                    routeChanges.incrementAndGet();
+                }
+            };
+
+        watcher.addRouteChangeListener(listener);
+        watcher.addRouteChangeListener(listener);
+        watcher.routeChanged();
+        Assert.assertEquals(1, routeChanges.get());
+
+        watcher.removeRouteChangeListener(listener);
+        watcher.routeChanged();
+        Assert.assertEquals(1, routeChanges.get());
+        Assert.assertEquals(1, captures.get());
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.packetlogging;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+import junit.framework.*;
+
+/**
+ * Tests for the key extraction and storage of packet log indexes and for
+ * extracting the packets of a call from indexed and unindexed segments.
+ */
+public class PacketLogIndexTest
+    extends TestCase
+{
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        this.dir = File.createTempFile("packetlog", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        for (File f : this.dir.listFiles())
+            f.delete();
+        this.dir.delete();
+    }
+
+    private static byte[] bytes(String s) throws Exception
+    {
+        return s.getBytes("UTF-8");
+    }
+
+    private static String callId(String message) throws Exception
+    {
+        byte[] data = bytes(message);
+        return PacketLogIndex.getSipCallId(data, 0, data.length);
+    }
+
+    public void testSipCallId() throws Exception
+    {
+        Assert.assertEquals("abc@host", callId(
+            "INVITE sip:bob@host SIP/2.0\r\nVia: SIP/2.0/UDP x\r\n"
+                + "Call-ID: abc@host\r\nCSeq: 1 INVITE\r\n\r\n"));
+        Assert.assertEquals("compact", callId(
+            "SIP/2.0 200 OK\r\nv: SIP/2.0/UDP x\r\ni:compact\r\n\r\n"));
+        Assert.assertEquals("lower", callId(
+            "BYE sip:x SIP/2.0\r\ncall-id :  lower \r\n\r\n"));
+        Assert.assertNull(callId(
+            "INVITE sip:x SIP/2.0\r\nIn-Reply-To: y\r\n\r\nCall-ID: body"));
+    }
+
+    public void testXmppIds() throws Exception
+    {
+        byte[] data = bytes("<iq id=\"st1\" type='set'><jingle "
+            + "xmlns='urn:xmpp:jingle:1' action='session-initiate' "
+            + "sid='s42'/></iq>");
+        Assert.assertEquals(Arrays.asList("st1", "s42"),
+            PacketLogIndex.getXmppIds(data, 0, data.length));
+
+        data = bytes("<message to='a@b' id='m1'><body>sid='x'</body>"
+            + "</message>");
+        Assert.assertEquals(Arrays.asList("m1"),
+            PacketLogIndex.getXmppIds(data, 0, data.length));
+
+        data = bytes("<presence xid='nope'/>");
+        Assert.assertTrue(
+            PacketLogIndex.getXmppIds(data, 0, data.length).isEmpty());
+    }
+
+    public void testWriteAndRead() throws Exception
+    {
+        PacketLogIndex index = new PacketLogIndex();
+        index.add("SIP", Arrays.asList("call1"), 2000, 24);
+        index.add("JABBER", Arrays.asList("st1", "call1"), 1000, 100);
+        index.add("RTP", Collections.<String>emptyList(), 3000, 200);
+        index.add("SIP", Arrays.asList("call1"), 2500, 300);
+
+        File file = new File(this.dir, "jitsi1.idx");
+        index.write(file);
+        PacketLogIndex read = PacketLogIndex.read(file);
+
+        Assert.assertEquals(1000, read.getStart());
+        Assert.assertEquals(3000, read.getEnd());
+        Assert.assertEquals(4, read.getPacketCount());
+        Assert.assertEquals(Integer.valueOf(2), read.getProtocols().get("SIP"));
+        Assert.assertEquals(Arrays.asList(24L, 100L, 300L),
+            read.getOffsets("call1"));
+        Assert.assertEquals(Arrays.asList(100L), read.getOffsets("st1"));
+        Assert.assertTrue(read.getOffsets("none").isEmpty());
+        Assert.assertTrue(read.overlaps(2900, 5000));
+        Assert.assertFalse(read.overlaps(3001, 5000));
+    }
+
+    /**
+     * Builds a pcap segment of fake IPv4/UDP SIP packets and its index.
+     */
+    private void writeSegment(String fileName, String indexName,
+        String[] callIds, boolean gzip) throws Exception
+    {
+        ByteArrayOutputStream pcap = new ByteArrayOutputStream();
+        pcap.write(new byte[24]);
+        PacketLogIndex index = new PacketLogIndex();
+
+        for (String callId : callIds)
+        {
+            byte[] payload = bytes("MESSAGE sip:x SIP/2.0\r\nCall-ID: "
+                + callId + "\r\n\r\n");
+            byte[] packet = new byte[14 + 20 + 8 + payload.length];
+            packet[12] = 0x08;
+            packet[14 + 9] = 0x11;
+            System.arraycopy(payload, 0, packet, 42, payload.length);
+
+            index.add("SIP", Arrays.asList(callId), 0, pcap.size());
+            byte[] header = new byte[16];
+            header[8] = (byte) packet.length;
+            header[9] = (byte) (packet.length >> 8);
+            pcap.write(header);
+            pcap.write(packet);
+        }
+
+        OutputStream out = new FileOutputStream(new File(this.dir, fileName));
+        if (gzip)
+            out = new GZIPOutputStream(out);
+        out.write(pcap.toByteArray());
+        out.close();
+        if (indexName != null)
+            index.write(new File(this.dir, indexName));
+    }
+
+    public void testExtractFromIndexedAndScannedSegments() throws Exception
+    {
+        writeSegment("jitsi0.pcap", null, new String[] { "a", "b", "a" },
+            false);
+        writeSegment("jitsi1.pcap.gz", "jitsi1.idx",
+            new String[] { "b", "a", "c" }, true);
+        writeSegment("jitsi2.pcap.gz", "jitsi2.idx",
+            new String[] { "c", "c" }, true);
+
+        Assert.assertEquals(Arrays.asList(2, 1, 0), new ArrayList<Integer>(
+            PacketLogExtractor.getSegments(this.dir, "jitsi").keySet()));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(3,
+            PacketLogExtractor.extract(this.dir, "jitsi", "a", out));
+        out.reset();
+        Assert.assertEquals(3,
+            PacketLogExtractor.extract(this.dir, "jitsi", "c", out));
+        Assert.assertEquals(0,
+            PacketLogExtractor.extract(this.dir, "jitsi", "none",
+                new ByteArrayOutputStream()));
+    }
+}
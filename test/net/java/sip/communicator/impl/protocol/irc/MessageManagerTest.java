@@ -0,0 +1,154 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.concurrent.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+
+import org.easymock.*;
+
+import com.ircclouds.irc.api.*;
+import com.ircclouds.irc.api.listeners.*;
+import com.ircclouds.irc.api.state.*;
+
+public class MessageManagerTest
+    extends TestCase
+{
+    private SendQueue queue;
+
+    private IRCApi irc;
+
+    private Contact contact;
+
+    private final MessageIrcImpl message = new MessageIrcImpl("hello",
+        OperationSetBasicInstantMessaging.DEFAULT_MIME_TYPE,
+        OperationSetBasicInstantMessaging.DEFAULT_MIME_ENCODING, null);
+
+    @Override
+    protected void setUp()
+    {
+        this.queue = new SendQueue("test", 5, 0L);
+        this.irc = EasyMock.createMock(IRCApi.class);
+        this.irc.addListener(EasyMock.anyObject(IMessageListener.class));
+        EasyMock.expectLastCall();
+        this.contact = EasyMock.createMock(Contact.class);
+        EasyMock.expect(this.contact.getAddress()).andReturn("nick")
+            .anyTimes();
+        EasyMock.replay(this.contact);
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        this.queue.stop();
+    }
+
+    private MessageManager createManager()
+    {
+        IrcConnection connection = EasyMock.createMock(IrcConnection.class);
+        IIRCState state = EasyMock.createMock(IIRCState.class);
+        EasyMock.expect(state.isConnected()).andReturn(true).anyTimes();
+        ProtocolProviderServiceIrcImpl provider =
+            EasyMock.createMock(ProtocolProviderServiceIrcImpl.class);
+        IdentityManager identity = EasyMock.createMock(IdentityManager.class);
+        EasyMock.expect(identity.getIdentityString())
+            .andReturn("me!user@host").anyTimes();
+        EasyMock.replay(connection, state, provider, identity);
+        return new MessageManager(connection, this.irc, this.queue, state,
+            provider, identity);
+    }
+
+    public void testDeliveredOnceMessageIsSent()
+        throws OperationFailedException, InterruptedException
+    {
+        this.irc.message("nick", "hello");
+        EasyMock.expectLastCall();
+        EasyMock.replay(this.irc);
+        Outcome outcome = new Outcome();
+
+        createManager().message(this.contact, this.message, outcome);
+
+        Assert.assertTrue(outcome.done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(outcome.delivered);
+        Assert.assertFalse(outcome.failed);
+        EasyMock.verify(this.irc);
+    }
+
+    public void testFailedWhenSendingFails()
+        throws OperationFailedException, InterruptedException
+    {
+        this.irc.message("nick", "hello");
+        EasyMock.expectLastCall().andThrow(
+            new IllegalStateException("channel closed"));
+        EasyMock.replay(this.irc);
+        Outcome outcome = new Outcome();
+
+        createManager().message(this.contact, this.message, outcome);
+
+        Assert.assertTrue(outcome.done.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(outcome.delivered);
+        Assert.assertTrue(outcome.failed);
+        Assert.assertTrue(outcome.cause instanceof IllegalStateException);
+    }
+
+    public void testFailedWhenQueueIsStopped()
+        throws OperationFailedException
+    {
+        EasyMock.replay(this.irc);
+        MessageManager manager = createManager();
+        this.queue.stop();
+        Outcome outcome = new Outcome();
+
+        manager.message(this.contact, this.message, outcome);
+
+        Assert.assertEquals(0, outcome.done.getCount());
+        Assert.assertFalse(outcome.delivered);
+        Assert.assertTrue(outcome.failed);
+        Assert.assertNull(outcome.cause);
+        EasyMock.verify(this.irc);
+    }
+
+    private static final class Outcome
+        implements MessageManager.DeliveryListener
+    {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile boolean delivered = false;
+
+        private volatile boolean failed = false;
+
+        private volatile Exception cause;
+
+        @Override
+        public void delivered()
+        {
+            this.delivered = true;
+            this.done.countDown();
+        }
+
+        @Override
+        public void failed(final Exception cause)
+        {
+            this.failed = true;
+            this.cause = cause;
+            this.done.countDown();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+public class SendQueueTest
+    extends TestCase
+{
+    public void testConstructionBadBurst()
+    {
+        try
+        {
+            new SendQueue("test", 0, 100L);
+            Assert.fail("Should have thrown IAE for bad burst.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testConstructionBadRefillInterval()
+    {
+        try
+        {
+            new SendQueue("test", 1, -1L);
+            Assert.fail("Should have thrown IAE for bad refill interval.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testSendNullTask()
+    {
+        SendQueue queue = new SendQueue("test", 1, 0L);
+        try
+        {
+            queue.send(SendQueue.Priority.USER, null);
+            Assert.fail("Should have thrown IAE for null task.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+        finally
+        {
+            queue.stop();
+        }
+    }
+
+    public void testBurstIsSentImmediately() throws InterruptedException
+    {
+        SendQueue queue = new SendQueue("test", 3, 60000L);
+        CountDownLatch latch = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++)
+        {
+            queue.send(SendQueue.Priority.USER, new CountDown(latch));
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(3, queue.getSentCount(SendQueue.Priority.USER));
+        Assert.assertEquals(0, queue.getThrottledCount());
+        queue.stop();
+    }
+
+    public void testLinesBeyondBurstAreThrottled() throws InterruptedException
+    {
+        SendQueue queue = new SendQueue("test", 1, 60000L);
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.send(SendQueue.Priority.USER, new CountDown(latch));
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        CountDownLatch second = new CountDownLatch(1);
+        queue.send(SendQueue.Priority.USER, new CountDown(second));
+        Assert.assertFalse(second.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, queue.getQueueSize());
+        queue.stop();
+        Assert.assertEquals(0, queue.getQueueSize());
+        Assert.assertEquals(1, queue.getDroppedCount());
+    }
+
+    public void testRefillReleasesLines() throws InterruptedException
+    {
+        SendQueue queue = new SendQueue("test", 1, 50L);
+        CountDownLatch latch = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++)
+        {
+            queue.send(SendQueue.Priority.USER, new CountDown(latch));
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(4, queue.getSentCount(SendQueue.Priority.USER));
+        Assert.assertEquals(3, queue.getThrottledCount());
+        queue.stop();
+    }
+
+    public void testUserPriorityOvertakesMaintenance()
+        throws InterruptedException
+    {
+        SendQueue queue = new SendQueue("test", 1, 100L);
+        final List<String> order =
+            Collections.synchronizedList(new ArrayList<String>());
+        // First line consumes the only token, such that the remaining lines
+        // have to wait in the queue together.
+        CountDownLatch first = new CountDownLatch(1);
+        queue.send(SendQueue.Priority.MAINTENANCE, new Record(order, "WHO 1",
+            first));
+        Assert.assertTrue(first.await(5, TimeUnit.SECONDS));
+        CountDownLatch latch = new CountDownLatch(3);
+        queue.send(SendQueue.Priority.MAINTENANCE, new Record(order, "WHO 2",
+            latch));
+        queue.send(SendQueue.Priority.CONTROL, new Record(order, "JOIN",
+            latch));
+        queue.send(SendQueue.Priority.USER, new Record(order, "PRIVMSG",
+            latch));
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(
+            Arrays.asList("WHO 1", "PRIVMSG", "JOIN", "WHO 2"), order);
+        queue.stop();
+    }
+
+    public void testDiscardedCallbackOnStop() throws InterruptedException
+    {
+        SendQueue queue = new SendQueue("test", 1, 60000L);
+        CountDownLatch sent = new CountDownLatch(1);
+        queue.send(SendQueue.Priority.USER, new CountDown(sent));
+        Assert.assertTrue(sent.await(5, TimeUnit.SECONDS));
+        CountDownLatch discarded = new CountDownLatch(1);
+        queue.send(SendQueue.Priority.CONTROL, new CountDown(
+            new CountDownLatch(1)), new CountDown(discarded));
+        queue.stop();
+        Assert.assertTrue(discarded.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testSendAfterStopIsDiscarded() throws InterruptedException
+    {
+        SendQueue queue = new SendQueue("test", 1, 0L);
+        queue.stop();
+        CountDownLatch discarded = new CountDownLatch(1);
+        queue.send(SendQueue.Priority.USER, new CountDown(
+            new CountDownLatch(1)), new CountDown(discarded));
+        Assert.assertTrue(discarded.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, queue.getDroppedCount());
+    }
+
+    public void testFailingTaskDoesNotStopQueue() throws InterruptedException
+    {
+        SendQueue queue = new SendQueue("test", 2, 0L);
+        queue.send(SendQueue.Priority.USER, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                throw new IllegalStateException("channel closed");
+            }
+        });
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.send(SendQueue.Priority.USER, new CountDown(latch));
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        queue.stop();
+    }
+
+    private static final class CountDown
+        implements Runnable
+    {
+        private final CountDownLatch latch;
+
+        private CountDown(final CountDownLatch latch)
+        {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run()
+        {
+            this.latch.countDown();
+        }
+    }
+
+    private static final class Record
+        implements Runnable
+    {
+        private final List<String> order;
+
+        private final String line;
+
+        private final CountDownLatch latch;
+
+        private Record(final List<String> order, final String line,
+            final CountDownLatch latch)
+        {
+            this.order = order;
+            this.line = line;
+            this.latch = latch;
+        }
+
+        @Override
+        public void run()
+        {
+            this.order.add(this.line);
+            this.latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Tests the parsing of PIDF and watcher information documents on the
+ * documents Jitsi publishes, the examples of RFC 3863, RFC 4480 and RFC 3858
+ * and the broken documents of some SIMPLE implementations.
+ */
+public class PresenceDocumentParserTest
+    extends TestCase
+{
+    /**
+     * A document as published by Jitsi.
+     */
+    private static final String JITSI
+        = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"
+            + "<presence xmlns=\"urn:ietf:params:xml:ns:pidf\""
+            + " xmlns:dm=\"urn:ietf:params:xml:ns:pidf:data-model\""
+            + " xmlns:rpid=\"urn:ietf:params:xml:ns:pidf:rpid\""
+            + " entity=\"sip:alice@example.com\">"
+            + "<dm:person id=\"p4159\"><rpid:activities><rpid:away/>"
+            + "</rpid:activities>"
+            + "<rpid:status-icon>http://example.com/alice.png"
+            + "</rpid:status-icon></dm:person>"
+            + "<tuple id=\"t4109\"><status><basic>open</basic></status>"
+            + "<contact>sip:alice@example.com</contact>"
+            + "<note>Away</note></tuple></presence>";
+
+    /**
+     * The example of RFC 4480 section 3.
+     */
+    private static final String RPID
+        = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<presence xmlns=\"urn:ietf:params:xml:ns:pidf\"\n"
+            + "    xmlns:dm=\"urn:ietf:params:xml:ns:pidf:data-model\"\n"
+            + "    xmlns:r=\"urn:ietf:params:xml:ns:pidf:rpid\"\n"
+            + "    entity=\"pres:someone@example.com\">\n"
+            + "  <tuple id=\"bs35r9\">\n"
+            + "    <status>\n"
+            + "      <basic>open</basic>\n"
+            + "    </status>\n"
+            + "    <contact priority=\"0.8\">im:someone@mobilecarrier.net"
+            + "</contact>\n"
+            + "    <timestamp>2005-05-30T22:00:29Z</timestamp>\n"
+            + "  </tuple>\n"
+            + "  <dm:person id=\"p1\">\n"
+            + "    <r:activities>\n"
+            + "      <r:meeting/>\n"
+            + "      <r:on-the-phone/>\n"
+            + "    </r:activities>\n"
+            + "    <r:class>calendar</r:class>\n"
+            + "    <r:mood><r:angry/></r:mood>\n"
+            + "    <dm:note>Meeting</dm:note>\n"
+            + "  </dm:person>\n"
+            + "</presence>";
+
+    public void testJitsiDocument()
+        throws IOException
+    {
+        PresenceDocumentParser.Presence presence
+            = PresenceDocumentParser.parsePresence(JITSI);
+
+        Assert.assertEquals("sip:alice@example.com", presence.getEntity());
+        Assert.assertEquals("away", presence.getActivity());
+        Assert.assertEquals(
+            "http://example.com/alice.png",
+            presence.getStatusIcon());
+        Assert.assertEquals("Away", presence.getNote());
+        Assert.assertEquals(1, presence.getTuples().size());
+
+        PresenceDocumentParser.Tuple tuple = presence.getTuples().get(0);
+
+        Assert.assertTrue(tuple.hasStatus());
+        Assert.assertEquals("open", tuple.getBasic());
+        Assert.assertEquals(1, tuple.getContacts().size());
+        Assert.assertEquals(
+            "sip:alice@example.com",
+            tuple.getContacts().get(0).getUri());
+        Assert.assertNull(tuple.getContacts().get(0).getPriority());
+        Assert.assertEquals(Arrays.asList("Away"), tuple.getNotes());
+    }
+
+    public void testRpidDocument()
+        throws IOException
+    {
+        PresenceDocumentParser.Presence presence
+            = PresenceDocumentParser.parsePresence(RPID);
+
+        Assert.assertEquals("pres:someone@example.com", presence.getEntity());
+        // meeting does not map to a status, on-the-phone does
+        Assert.assertEquals("on-the-phone", presence.getActivity());
+        Assert.assertNull(presence.getStatusIcon());
+        // the note of the person is not in the PIDF namespace
+        Assert.assertEquals("Meeting", presence.getNote());
+
+        PresenceDocumentParser.Tuple tuple = presence.getTuples().get(0);
+
+        Assert.assertEquals("open", tuple.getBasic());
+        Assert.assertEquals("0.8", tuple.getContacts().get(0).getPriority());
+        Assert.assertTrue(tuple.getNotes().isEmpty());
+    }
+
+    public void testMissingNamespaces()
+        throws IOException
+    {
+        PresenceDocumentParser.Presence presence
+            = PresenceDocumentParser.parsePresence(
+                    "<presence entity=\"sip:bob@example.com\">"
+                        + "<person><activities><busy/></activities></person>"
+                        + "<tuple><status><basic>  closed  </basic></status>"
+                        + "</tuple>"
+                        + "<tuple><note>On the phone</note></tuple>"
+                        + "</presence>");
+
+        Assert.assertEquals("busy", presence.getActivity());
+        Assert.assertEquals("On the phone", presence.getNote());
+        Assert.assertEquals(2, presence.getTuples().size());
+        Assert.assertEquals(
+            "closed",
+            presence.getTuples().get(0).getBasic());
+
+        // a tuple without a status is not an error
+        PresenceDocumentParser.Tuple noStatus = presence.getTuples().get(1);
+
+        Assert.assertFalse(noStatus.hasStatus());
+        Assert.assertNull(noStatus.getBasic());
+        Assert.assertTrue(noStatus.getContacts().isEmpty());
+    }
+
+    public void testPidfNamespaceIsPreferred()
+        throws IOException
+    {
+        PresenceDocumentParser.Presence presence
+            = PresenceDocumentParser.parsePresence(
+                    "<presence xmlns=\"urn:ietf:params:xml:ns:pidf\""
+                        + " xmlns:x=\"urn:example:extension\""
+                        + " entity=\"sip:carol@example.com\">"
+                        + "<tuple id=\"a\">"
+                        + "<status><basic>open</basic>"
+                        + "<x:basic>closed</x:basic></status>"
+                        + "<x:status><basic>closed</basic></x:status>"
+                        + "<contact priority=\"0.2\">sip:carol@a.example.com"
+                        + "</contact>"
+                        + "<x:contact>sip:ignored@example.com</x:contact>"
+                        + "<contact priority=\"1\">sip:carol@b.example.com"
+                        + "</contact>"
+                        + "<note>Online</note></tuple>"
+                        + "<x:note>ignored</x:note>"
+                        + "</presence>");
+
+        PresenceDocumentParser.Tuple tuple = presence.getTuples().get(0);
+
+        Assert.assertEquals("open", tuple.getBasic());
+        Assert.assertEquals(2, tuple.getContacts().size());
+        Assert.assertEquals(
+            "sip:carol@b.example.com",
+            tuple.getContacts().get(1).getUri());
+        Assert.assertEquals("Online", presence.getNote());
+    }
+
+    public void testWatcherInfo()
+        throws IOException
+    {
+        PresenceDocumentParser.WatcherInfo watcherInfo
+            = PresenceDocumentParser.parseWatcherInfo(
+                    "<?xml version=\"1.0\"?>\n"
+                        + "<watcherinfo"
+                        + " xmlns=\"urn:ietf:params:xml:ns:watcherinfo\"\n"
+                        + "    version=\"0\" state=\"full\">\n"
+                        + "  <watcher-list resource=\"sip:B@example.com\""
+                        + " package=\"presence\">\n"
+                        + "    <watcher status=\"active\"\n"
+                        + "      id=\"8ajksjda7s\"\n"
+                        + "      duration-subscribed=\"509\"\n"
+                        + "      event=\"approved\" >sip:A@example.com"
+                        + "</watcher>\n"
+                        + "    <watcher status=\"pending\"\n"
+                        + "      id=\"hh8juja87s997-ass7\"\n"
+                        + "      display-name=\"Mr. C\"\n"
+                        + "      event=\"subscribe\">sip:C@example.com"
+                        + "</watcher>\n"
+                        + "  </watcher-list>\n"
+                        + "</watcherinfo>");
+
+        Assert.assertEquals("full", watcherInfo.getState());
+        Assert.assertEquals("0", watcherInfo.getVersion());
+        Assert.assertNull(watcherInfo.getWatcherList("sip:A@example.com"));
+
+        PresenceDocumentParser.WatcherList watcherList
+            = watcherInfo.getWatcherList("sip:B@example.com");
+
+        Assert.assertEquals("presence", watcherList.getPackage());
+        Assert.assertEquals(2, watcherList.getWatchers().size());
+
+        PresenceDocumentParser.Watcher watcher
+            = watcherList.getWatchers().get(1);
+
+        Assert.assertEquals("pending", watcher.getStatus());
+        Assert.assertEquals("subscribe", watcher.getEvent());
+        Assert.assertEquals("sip:C@example.com", watcher.getUri());
+    }
+
+    public void testInvalidDocuments()
+    {
+        try
+        {
+            PresenceDocumentParser.parsePresence("<presence><tuple>");
+            Assert.fail("parsed a truncated document");
+        }
+        catch (IOException expected)
+        {
+        }
+        try
+        {
+            PresenceDocumentParser.parsePresence("<watcherinfo/>");
+            Assert.fail("parsed a document without presence");
+        }
+        catch (IOException expected)
+        {
+        }
+        try
+        {
+            PresenceDocumentParser.parseWatcherInfo(
+                    "<!DOCTYPE watcherinfo ["
+                        + "<!ENTITY e SYSTEM \"file:///etc/passwd\">]>"
+                        + "<watcherinfo>&e;</watcherinfo>");
+            Assert.fail("resolved an external entity");
+        }
+        catch (IOException expected)
+        {
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Tests the parsing of the notifications of resource lists, based on the
+ * examples of RFC 4662.
+ */
+public class ResourceListNotificationTest
+    extends TestCase
+{
+    private static final String PIDF_BOB
+        = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+            + "<presence xmlns=\"urn:ietf:params:xml:ns:pidf\"\r\n"
+            + "    entity=\"sip:bob@vancouver.example.com\">\r\n"
+            + "  <tuple id=\"sg89ae\"><status><basic>open</basic></status>"
+            + "</tuple>\r\n"
+            + "</presence>";
+
+    private static String part(String headers, String body)
+    {
+        return headers.replace("\n", "\r\n") + "\r\n" + body + "\r\n";
+    }
+
+    private static byte[] multipart(String boundary, String... parts)
+        throws UnsupportedEncodingException
+    {
+        StringBuilder body = new StringBuilder();
+
+        for (String part : parts)
+            body.append("--").append(boundary).append("\r\n").append(part);
+        body.append("--").append(boundary).append("--\r\n");
+        return body.toString().getBytes("UTF-8");
+    }
+
+    private static String rlmi(String list, String... resources)
+    {
+        StringBuilder rlmi
+            = new StringBuilder(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+                        + "<list xmlns=\"urn:ietf:params:xml:ns:rlmi\" ")
+                .append(list)
+                .append(">\r\n");
+
+        for (String resource : resources)
+            rlmi.append(resource).append("\r\n");
+        return rlmi.append("</list>").toString();
+    }
+
+    public void testFullState()
+        throws IOException
+    {
+        byte[] body
+            = multipart(
+                    "50UBfW7LSCVLtggUPe5z",
+                    part(
+                        "Content-Transfer-Encoding: binary\n"
+                            + "Content-ID: <nXYxAE@pres.vancouver.example.com>\n"
+                            + "Content-Type: application/rlmi+xml;"
+                            + "charset=\"UTF-8\"\n",
+                        rlmi(
+                            "uri=\"sip:adam-friends@pres.vancouver.example.com\""
+                                + " version=\"1\" fullState=\"true\"",
+                            "<name xml:lang=\"en\">Buddy List</name>",
+                            "<resource uri=\"sip:bob@vancouver.example.com\">"
+                                + "<name>Bob Smith</name>"
+                                + "<instance id=\"juwigmtboe\" state=\"active\""
+                                + " cid=\"bUZBsM@pres.vancouver.example.com\"/>"
+                                + "</resource>",
+                            "<resource uri=\"sip:ed@dallas.example.net\">"
+                                + "<instance id=\"ydieloxfhd\""
+                                + " state=\"terminated\" reason=\"rejected\"/>"
+                                + "</resource>",
+                            "<resource uri=\"sip:cathy@example.net\"/>")),
+                    part(
+                        "Content-Transfer-Encoding: binary\n"
+                            + "Content-ID: <bUZBsM@pres.vancouver.example.com>\n"
+                            + "Content-Type: application/pidf+xml;"
+                            + "charset=\"UTF-8\"\n",
+                        PIDF_BOB));
+
+        ResourceListNotification notification
+            = ResourceListNotification.parse("50UBfW7LSCVLtggUPe5z", body);
+
+        Assert.assertEquals(
+            "sip:adam-friends@pres.vancouver.example.com",
+            notification.getUri());
+        Assert.assertEquals(1, notification.getVersion());
+        Assert.assertTrue(notification.isFullState());
+
+        List<ResourceListNotification.Resource> resources
+            = notification.getResources();
+
+        Assert.assertEquals(3, resources.size());
+
+        ResourceListNotification.Resource bob = resources.get(0);
+
+        Assert.assertEquals("sip:bob@vancouver.example.com", bob.getUri());
+        Assert.assertEquals("active", bob.getState());
+        Assert.assertEquals("application/pidf+xml", bob.getContentType());
+        Assert.assertEquals(PIDF_BOB, bob.getContent());
+
+        ResourceListNotification.Resource ed = resources.get(1);
+
+        Assert.assertEquals("terminated", ed.getState());
+        Assert.assertEquals("rejected", ed.getReason());
+        Assert.assertNull(ed.getContent());
+
+        ResourceListNotification.Resource cathy = resources.get(2);
+
+        Assert.assertNull(cathy.getState());
+        Assert.assertNull(cathy.getContent());
+    }
+
+    public void testNestedList()
+        throws IOException
+    {
+        byte[] nested
+            = multipart(
+                    "inner",
+                    part(
+                        "Content-ID: <nested-rlmi@example.com>\n"
+                            + "Content-Type: application/rlmi+xml\n",
+                        rlmi(
+                            "uri=\"sip:nested@example.com\" version=\"3\""
+                                + " fullState=\"false\"",
+                            "<resource uri=\"sip:bob@vancouver.example.com\">"
+                                + "<instance id=\"a\" state=\"active\""
+                                + " cid=\"bob@example.com\"/></resource>")),
+                    part(
+                        "Content-ID: <bob@example.com>\n"
+                            + "Content-Type: application/pidf+xml\n",
+                        PIDF_BOB));
+        byte[] body
+            = multipart(
+                    "outer",
+                    part(
+                        "Content-ID: <rlmi@example.com>\n"
+                            + "Content-Type: application/rlmi+xml\n",
+                        rlmi(
+                            "uri=\"sip:list@example.com\" version=\"7\""
+                                + " fullState=\"false\"",
+                            "<resource uri=\"sip:nested@example.com\">"
+                                + "<instance id=\"b\" state=\"active\""
+                                + " cid=\"nested@example.com\"/></resource>")),
+                    part(
+                        "Content-ID: <nested@example.com>\n"
+                            + "Content-Type: multipart/related;"
+                            + "type=\"application/rlmi+xml\";"
+                            + "boundary=\"inner\"\n",
+                        new String(nested, "UTF-8")));
+
+        ResourceListNotification notification
+            = ResourceListNotification.parse("outer", body);
+
+        Assert.assertEquals(7, notification.getVersion());
+        Assert.assertFalse(notification.isFullState());
+        Assert.assertEquals(1, notification.getResources().size());
+
+        ResourceListNotification.Resource bob
+            = notification.getResources().get(0);
+
+        Assert.assertEquals("sip:bob@vancouver.example.com", bob.getUri());
+        Assert.assertEquals(PIDF_BOB, bob.getContent());
+    }
+
+    public void testPartWithoutContentType()
+        throws IOException
+    {
+        byte[] body
+            = multipart(
+                    "b",
+                    part(
+                        "Content-Type: application/rlmi+xml\n",
+                        rlmi(
+                            "uri=\"sip:list@example.com\" version=\"1\""
+                                + " fullState=\"true\"",
+                            "<resource uri=\"sip:bob@vancouver.example.com\">"
+                                + "<instance id=\"a\" state=\"active\""
+                                + " cid=\"bob@example.com\"/></resource>")),
+                    part("Content-ID: <bob@example.com>\n", "open"));
+
+        ResourceListNotification.Resource bob
+            = ResourceListNotification.parse("b", body).getResources().get(0);
+
+        Assert.assertEquals("text/plain", bob.getContentType());
+        Assert.assertEquals("open", bob.getContent());
+    }
+
+    public void testInvalidBodies()
+        throws UnsupportedEncodingException
+    {
+        assertInvalid("b", "no delimiter at all".getBytes("UTF-8"));
+        assertInvalid(
+            "b",
+            multipart(
+                "b",
+                part("Content-Type: application/pidf+xml\n", PIDF_BOB)));
+        assertInvalid(
+            "b",
+            multipart(
+                "b",
+                part("Content-Type: application/rlmi+xml\n", "<list")));
+    }
+
+    private static void assertInvalid(String boundary, byte[] body)
+    {
+        try
+        {
+            ResourceListNotification.parse(boundary, body);
+            Assert.fail("parsed an invalid notification");
+        }
+        catch (IOException expected)
+        {
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+
+import javax.sip.message.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+
+import org.easymock.*;
+
+/**
+ * Tests the dispatching of requests to the providers of many accounts.
+ */
+public class SipRoutingTableTest
+    extends TestCase
+{
+    private final Request request = EasyMock.createMock(Request.class);
+
+    /**
+     * Creates a provider mock for an account.
+     *
+     * @param userID the user ID of the account
+     * @param fromRegistrar whether the request comes from the registrar of
+     * the provider
+     * @return the provider mock
+     */
+    private ProtocolProviderServiceSipImpl createProvider(
+        String userID,
+        boolean fromRegistrar)
+    {
+        AccountID accountID = EasyMock.createMock(AccountID.class);
+        SipRegistrarConnection registrarConnection
+            = EasyMock.createMock(SipRegistrarConnection.class);
+        ProtocolProviderServiceSipImpl provider
+            = EasyMock.createMock(ProtocolProviderServiceSipImpl.class);
+
+        EasyMock.expect(accountID.getUserID()).andReturn(userID).anyTimes();
+        EasyMock.expect(accountID.getAccountPropertyBoolean(
+                ProtocolProviderFactory.FORCE_PROXY_BYPASS, false))
+            .andReturn(false).anyTimes();
+        EasyMock.expect(registrarConnection.isRegistrarless())
+            .andReturn(false).anyTimes();
+        EasyMock.expect(
+                registrarConnection.isRequestFromSameConnection(request))
+            .andReturn(fromRegistrar).anyTimes();
+        EasyMock.expect(provider.getAccountID())
+            .andReturn(accountID).anyTimes();
+        EasyMock.expect(provider.getRegistrarConnection())
+            .andReturn(registrarConnection).anyTimes();
+        EasyMock.replay(accountID, registrarConnection, provider);
+        return provider;
+    }
+
+    public void testAddRemove()
+    {
+        SipRoutingTable table = new SipRoutingTable();
+        ProtocolProviderServiceSipImpl alice = createProvider("alice", true);
+
+        Assert.assertTrue(table.add(alice));
+        Assert.assertFalse(table.add(alice));
+        Assert.assertEquals(1, table.size());
+        Assert.assertEquals(
+            Arrays.asList(alice), table.getCandidates("alice", request));
+
+        Assert.assertTrue(table.remove(alice));
+        Assert.assertFalse(table.remove(alice));
+        Assert.assertEquals(0, table.size());
+        Assert.assertTrue(table.getCandidates("alice", request).isEmpty());
+        Assert.assertNull(table.getAnyCandidate(request));
+    }
+
+    public void testCandidatesOfManyAccounts()
+    {
+        SipRoutingTable table = new SipRoutingTable();
+        List<ProtocolProviderServiceSipImpl> providers
+            = new ArrayList<ProtocolProviderServiceSipImpl>();
+
+        for (int i = 0; i < 200; i++)
+        {
+            ProtocolProviderServiceSipImpl provider
+                = createProvider("user" + i, true);
+
+            providers.add(provider);
+            table.add(provider);
+        }
+
+        for (int i = 0; i < 200; i++)
+        {
+            Assert.assertEquals(
+                Arrays.asList(providers.get(i)),
+                table.getCandidates("user" + i, request));
+        }
+        Assert.assertTrue(table.getCandidates("nobody", request).isEmpty());
+        Assert.assertTrue(table.getCandidates(null, request).isEmpty());
+        Assert.assertEquals(providers, table.getProviders());
+
+        table.remove(providers.get(100));
+        Assert.assertTrue(table.getCandidates("user100", request).isEmpty());
+        Assert.assertEquals(
+            Arrays.asList(providers.get(101)),
+            table.getCandidates("user101", request));
+    }
+
+    public void testCandidatesAreFilteredByRegistrar()
+    {
+        SipRoutingTable table = new SipRoutingTable();
+        ProtocolProviderServiceSipImpl other = createProvider("bob", false);
+        ProtocolProviderServiceSipImpl bob1 = createProvider("bob", true);
+        ProtocolProviderServiceSipImpl bob2 = createProvider("bob", true);
+
+        table.add(other);
+        table.add(bob1);
+        table.add(bob2);
+
+        Assert.assertEquals(
+            Arrays.asList(bob1, bob2), table.getCandidates("bob", request));
+        Assert.assertSame(bob1, table.getAnyCandidate(request));
+
+        table.remove(bob1);
+        table.remove(bob2);
+        Assert.assertTrue(table.getCandidates("bob", request).isEmpty());
+        Assert.assertNull(table.getAnyCandidate(request));
+    }
+}
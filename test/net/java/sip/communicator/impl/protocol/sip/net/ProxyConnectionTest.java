@@ -0,0 +1,135 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip.net;
+
+import java.io.*;
+import java.net.*;
+
+import javax.sip.*;
+
+import junit.framework.*;
+
+/**
+ * Tests the connection racing of the SIP proxy connection.
+ */
+public class ProxyConnectionTest
+    extends TestCase
+{
+    /**
+     * A <tt>ProxyConnection</tt> which returns the addresses of a single host
+     * in order.
+     */
+    private static class HostConnection
+        extends ProxyConnection
+    {
+        private final InetSocketAddress[] addresses;
+
+        private int index;
+
+        HostConnection(String transport, InetSocketAddress... addresses)
+        {
+            super(null);
+            this.transport = transport;
+            this.addresses = addresses;
+        }
+
+        @Override
+        protected boolean getNextAddressFromDns()
+        {
+            if (index >= addresses.length)
+                return false;
+            socketAddress = addresses[index++];
+            return true;
+        }
+
+        @Override
+        protected InetSocketAddress[] getHostAddresses()
+        {
+            return addresses;
+        }
+    }
+
+    private ServerSocket listening;
+
+    private InetSocketAddress refused;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        listening = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+
+        ServerSocket closed
+            = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+
+        refused = (InetSocketAddress) closed.getLocalSocketAddress();
+        closed.close();
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        listening.close();
+    }
+
+    public void testReachableAddressWins() throws Exception
+    {
+        InetSocketAddress reachable
+            = (InetSocketAddress) listening.getLocalSocketAddress();
+        ProxyConnection connection
+            = new HostConnection(ListeningPoint.TCP, refused, reachable);
+
+        Assert.assertTrue(connection.getNextAddress());
+        Assert.assertSame(refused, connection.getAddress());
+
+        connection.raceAddresses();
+        Assert.assertSame(reachable, connection.getAddress());
+
+        // the connection is already established for the stack
+        listening.setSoTimeout(1000);
+        listening.accept().close();
+
+        // the failover does not return the winner again
+        Assert.assertFalse(connection.getNextAddress());
+    }
+
+    public void testAddressIsKeptWhenNoneConnects() throws Exception
+    {
+        ProxyConnection connection
+            = new HostConnection(
+                    ListeningPoint.TLS,
+                    refused,
+                    new InetSocketAddress(refused.getAddress(),
+                        refused.getPort()));
+
+        Assert.assertTrue(connection.getNextAddress());
+        connection.raceAddresses();
+        Assert.assertSame(refused, connection.getAddress());
+    }
+
+    public void testDatagramTransportIsNotRaced() throws Exception
+    {
+        InetSocketAddress reachable
+            = (InetSocketAddress) listening.getLocalSocketAddress();
+        ProxyConnection connection
+            = new HostConnection(ListeningPoint.UDP, refused, reachable);
+
+        Assert.assertTrue(connection.getNextAddress());
+        connection.raceAddresses();
+        Assert.assertSame(refused, connection.getAddress());
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.replacement.directimage;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.replacement.*;
+
+import com.sun.net.httpserver.*;
+
+/**
+ * Tests for link metadata resolution of direct image links against a local
+ * HTTP server.
+ */
+public class DirectImageMetadataFetcherTest
+    extends TestCase
+{
+    private HttpServer server;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final List<String> methods =
+        Collections.synchronizedList(new ArrayList<String>());
+
+    private volatile CountDownLatch release;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        this.release = new CountDownLatch(0);
+        this.server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.createContext("/image.png",
+            new Handler("image/png", 1234));
+        this.server.createContext("/page.png", new Handler("text/html", 10));
+        this.server.createContext("/nohead.png", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                methods.add(exchange.getRequestMethod());
+                requests.incrementAndGet();
+                if ("HEAD".equals(exchange.getRequestMethod()))
+                {
+                    exchange.sendResponseHeaders(
+                        HttpURLConnection.HTTP_BAD_METHOD, -1);
+                }
+                else
+                {
+                    exchange.getResponseHeaders().set("Content-Type",
+                        "image/gif");
+                    exchange.sendResponseHeaders(200, 3);
+                    exchange.getResponseBody().write(new byte[3]);
+                }
+                exchange.close();
+            }
+        });
+        this.server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        this.server.stop(0);
+    }
+
+    private String url(final String path)
+    {
+        return "http://localhost:" + this.server.getAddress().getPort() + path;
+    }
+
+    public void testFetchImage() throws Exception
+    {
+        LinkMetadata metadata =
+            new DirectImageMetadataFetcher().fetch(url("/image.png"));
+        Assert.assertTrue(metadata.isImage());
+        Assert.assertEquals(1234, metadata.getContentLength());
+        Assert.assertEquals(Arrays.asList("HEAD"), this.methods);
+    }
+
+    public void testFetchNonImage() throws Exception
+    {
+        LinkMetadata metadata =
+            new DirectImageMetadataFetcher().fetch(url("/page.png"));
+        Assert.assertFalse(metadata.isImage());
+    }
+
+    public void testFetchFallsBackToGet() throws Exception
+    {
+        LinkMetadata metadata =
+            new DirectImageMetadataFetcher().fetch(url("/nohead.png"));
+        Assert.assertTrue(metadata.isImage());
+        Assert.assertEquals(3, metadata.getContentLength());
+        Assert.assertEquals(Arrays.asList("HEAD", "GET"), this.methods);
+    }
+
+    public void testFetchMissing() throws Exception
+    {
+        LinkMetadata metadata =
+            new DirectImageMetadataFetcher().fetch(url("/missing.png"));
+        Assert.assertNull(metadata.getContentType());
+        Assert.assertEquals(-1, metadata.getContentLength());
+    }
+
+    public void testContentTypeFromExtension()
+    {
+        Assert.assertEquals("image/png", DirectImageMetadataFetcher
+            .getContentTypeFromExtension("ftp://host/a.png"));
+        Assert.assertNull(DirectImageMetadataFetcher
+            .getContentTypeFromExtension("ftp://host/a.txt"));
+    }
+
+    public void testResolverProbesOnce()
+    {
+        LinkMetadataResolver resolver = resolver(null);
+        for (int i = 0; i < 5; i++)
+        {
+            Assert.assertTrue(
+                resolver.resolve(url("/image.png"), 5000L).isImage());
+        }
+        Assert.assertEquals(1, this.requests.get());
+        resolver.stop();
+    }
+
+    public void testResolverCoalescesConcurrentRequests() throws Exception
+    {
+        this.release = new CountDownLatch(1);
+        LinkMetadataResolver resolver = resolver(null);
+        Future<LinkMetadata> first = resolver.resolveAsync(url("/image.png"));
+        Future<LinkMetadata> second = resolver.resolveAsync(url("/image.png"));
+        Assert.assertSame(first, second);
+        this.release.countDown();
+        Assert.assertTrue(first.get(5, TimeUnit.SECONDS).isImage());
+        Assert.assertEquals(1, this.requests.get());
+        resolver.stop();
+    }
+
+    public void testResolverCachesFailures()
+    {
+        LinkMetadataResolver resolver = resolver(null);
+        Assert.assertFalse(
+            resolver.resolve(url("/missing.png"), 5000L).isImage());
+        Assert.assertNotNull(resolver.getCached(url("/missing.png")));
+        resolver.stop();
+    }
+
+    public void testResolverExpiresEntries()
+    {
+        LinkMetadataResolver resolver = new LinkMetadataResolver("test",
+            new DirectImageMetadataFetcher(), 1, 4, 4, 0L, null);
+        resolver.resolve(url("/image.png"), 5000L);
+        resolver.resolve(url("/image.png"), 5000L);
+        Assert.assertNull(resolver.getCached(url("/image.png")));
+        Assert.assertEquals(2, this.requests.get());
+        resolver.stop();
+    }
+
+    public void testResolverEvictsLeastRecentlyUsed()
+    {
+        LinkMetadataResolver resolver = new LinkMetadataResolver("test",
+            new DirectImageMetadataFetcher(), 1, 4, 1,
+            LinkMetadataResolver.DEFAULT_TTL, null);
+        resolver.resolve(url("/image.png"), 5000L);
+        resolver.resolve(url("/page.png"), 5000L);
+        Assert.assertEquals(1, resolver.getCacheSize());
+        Assert.assertNull(resolver.getCached(url("/image.png")));
+        Assert.assertNotNull(resolver.getCached(url("/page.png")));
+        resolver.stop();
+    }
+
+    public void testResolverPersistsCache() throws Exception
+    {
+        File store = File.createTempFile("linkmetadata", ".properties");
+        store.deleteOnExit();
+        LinkMetadataResolver resolver = resolver(store);
+        resolver.resolve(url("/image.png"), 5000L);
+        resolver.resolve(url("/missing.png"), 5000L);
+        resolver.stop();
+
+        LinkMetadataResolver reloaded = resolver(store);
+        LinkMetadata metadata = reloaded.getCached(url("/image.png"));
+        Assert.assertNotNull(metadata);
+        Assert.assertEquals("image/png", metadata.getContentType());
+        Assert.assertEquals(1234, metadata.getContentLength());
+        Assert.assertNull(reloaded.getCached(url("/missing.png")));
+        Assert.assertEquals(1, this.requests.get());
+        reloaded.stop();
+    }
+
+    public void testResolverRetriesFailuresAfterFailureTtl()
+    {
+        final AtomicInteger fetches = new AtomicInteger();
+        LinkMetadataResolver resolver = new LinkMetadataResolver("test",
+            new LinkMetadataResolver.Fetcher()
+            {
+                @Override
+                public LinkMetadata fetch(String url) throws Exception
+                {
+                    if (fetches.incrementAndGet() == 1)
+                    {
+                        throw new IOException("connection reset");
+                    }
+                    return new LinkMetadata(url, "image/png", 1, null,
+                        System.currentTimeMillis());
+                }
+            }, 1, 4, 4, LinkMetadataResolver.DEFAULT_TTL, 0L, null);
+        Assert.assertFalse(resolver.resolve("http://a/", 5000L).isResolved());
+        Assert.assertNull(resolver.getCached("http://a/"));
+        Assert.assertTrue(resolver.resolve("http://a/", 5000L).isImage());
+        Assert.assertTrue(resolver.resolve("http://a/", 5000L).isImage());
+        Assert.assertEquals(2, fetches.get());
+        resolver.stop();
+    }
+
+    public void testResolverSavesConcurrently() throws Exception
+    {
+        File dir = File.createTempFile("linkmetadata", "");
+        Assert.assertTrue(dir.delete());
+        Assert.assertTrue(dir.mkdir());
+        File store = new File(dir, "cache.properties");
+        LinkMetadataResolver.Fetcher fetcher =
+            new LinkMetadataResolver.Fetcher()
+            {
+                @Override
+                public LinkMetadata fetch(String url)
+                {
+                    return new LinkMetadata(url, "image/png", 1, null,
+                        System.currentTimeMillis());
+                }
+            };
+        LinkMetadataResolver resolver = new LinkMetadataResolver("test",
+            fetcher, 8, 256, 256, LinkMetadataResolver.DEFAULT_TTL, store);
+        List<Future<LinkMetadata>> futures =
+            new ArrayList<Future<LinkMetadata>>();
+        for (int i = 0; i < 200; i++)
+        {
+            futures.add(resolver.resolveAsync("http://host/" + i));
+        }
+        for (Future<LinkMetadata> future : futures)
+        {
+            Assert.assertTrue(future.get(5, TimeUnit.SECONDS).isResolved());
+        }
+        resolver.stop();
+
+        LinkMetadataResolver reloaded = new LinkMetadataResolver("test",
+            fetcher, 1, 4, 256, LinkMetadataResolver.DEFAULT_TTL, store);
+        Assert.assertEquals(200, reloaded.getCacheSize());
+        reloaded.stop();
+        Assert.assertEquals(Arrays.asList("cache.properties"),
+            Arrays.asList(dir.list()));
+        Assert.assertTrue(store.delete());
+        Assert.assertTrue(dir.delete());
+    }
+
+    private LinkMetadataResolver resolver(final File store)
+    {
+        return new LinkMetadataResolver("test",
+            new DirectImageMetadataFetcher(), 2, 4, 16,
+            LinkMetadataResolver.DEFAULT_TTL, store);
+    }
+
+    private final class Handler
+        implements HttpHandler
+    {
+        private final String contentType;
+
+        private final int length;
+
+        private Handler(final String contentType, final int length)
+        {
+            this.contentType = contentType;
+            this.length = length;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            methods.add(exchange.getRequestMethod());
+            requests.incrementAndGet();
+            try
+            {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type",
+                this.contentType);
+            exchange.getResponseHeaders().set("Content-Length",
+                String.valueOf(this.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        }
+    }
+}
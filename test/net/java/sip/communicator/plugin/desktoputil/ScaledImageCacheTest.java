@@ -0,0 +1,159 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.desktoputil;
+
+import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.swing.*;
+
+import junit.framework.*;
+
+/**
+ * Tests the caching, the eviction and the background loading of the scaled
+ * icons.
+ */
+public class ScaledImageCacheTest
+    extends TestCase
+{
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final ScaledImageCache.Loader loader
+        = new ScaledImageCache.Loader()
+        {
+            public ImageIcon load(
+                    byte[] imageBytes,
+                    Object shape,
+                    int width,
+                    int height)
+            {
+                loads.incrementAndGet();
+                if (imageBytes[0] == 0)
+                    return null;
+                return
+                    new ImageIcon(
+                            new BufferedImage(
+                                    width, height,
+                                    BufferedImage.TYPE_INT_ARGB));
+            }
+        };
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp()
+    {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    public void testIconsAreCachedByContent()
+    {
+        ScaledImageCache cache
+            = new ScaledImageCache(loader, 1024 * 1024, executor);
+        ImageIcon icon = cache.get(new byte[] { 1, 2, 3 }, "shape", 10, 10);
+
+        Assert.assertNotNull(icon);
+        Assert.assertSame(
+            icon,
+            cache.get(new byte[] { 1, 2, 3 }, "shape", 10, 10));
+        Assert.assertEquals(1, loads.get());
+
+        // another size, shape or content is another icon
+        cache.get(new byte[] { 1, 2, 3 }, "shape", 20, 20);
+        cache.get(new byte[] { 1, 2, 3 }, "other", 10, 10);
+        cache.get(new byte[] { 1, 2, 4 }, "shape", 10, 10);
+        Assert.assertEquals(4, loads.get());
+
+        Map<String, String> statistics = cache.getStatistics();
+
+        Assert.assertEquals("1", statistics.get("hits"));
+        Assert.assertEquals("4", statistics.get("misses"));
+        Assert.assertEquals("4", statistics.get("entries"));
+    }
+
+    public void testFailuresAreCached()
+    {
+        ScaledImageCache cache
+            = new ScaledImageCache(loader, 1024 * 1024, executor);
+        byte[] imageBytes = new byte[] { 0 };
+
+        Assert.assertNull(cache.get(imageBytes, "shape", 10, 10));
+        Assert.assertNull(cache.get(imageBytes, "shape", 10, 10));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    public void testLeastRecentlyUsedIconsAreEvicted()
+    {
+        // 10x10 icons from 1 byte take 401 bytes each
+        ScaledImageCache cache = new ScaledImageCache(loader, 1000, executor);
+        byte[] a = new byte[] { 1 };
+        byte[] b = new byte[] { 2 };
+        byte[] c = new byte[] { 3 };
+
+        cache.get(a, "shape", 10, 10);
+        cache.get(b, "shape", 10, 10);
+        cache.get(a, "shape", 10, 10);
+        cache.get(c, "shape", 10, 10);
+        Assert.assertEquals(3, loads.get());
+        Assert.assertEquals("1", cache.getStatistics().get("evictions"));
+        Assert.assertEquals("802/1000", cache.getStatistics().get("bytes"));
+
+        // a was used after b so b is the one which was evicted
+        cache.get(a, "shape", 10, 10);
+        Assert.assertEquals(3, loads.get());
+        cache.get(b, "shape", 10, 10);
+        Assert.assertEquals(4, loads.get());
+
+        // an icon over the budget is not cached at all
+        cache.get(a, "shape", 100, 100);
+        cache.get(a, "shape", 100, 100);
+        Assert.assertEquals(6, loads.get());
+    }
+
+    public void testIconsAreLoadedInTheBackground()
+        throws Exception
+    {
+        ScaledImageCache cache
+            = new ScaledImageCache(loader, 1024 * 1024, executor);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        Runnable callback
+            = new Runnable()
+            {
+                public void run()
+                {
+                    loaded.countDown();
+                }
+            };
+        byte[] imageBytes = new byte[] { 1 };
+
+        Assert.assertNull(
+            cache.getLater(imageBytes, "shape", 10, 10, callback));
+        Assert.assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(
+            cache.getLater(imageBytes, "shape", 10, 10, callback));
+        Assert.assertEquals(1, loads.get());
+    }
+}
@@ -87,25 +87,41 @@ public void testJoinWithChannelNoPassword()
     {
         IrcConnection connection = EasyMock.createMock(IrcConnection.class);
         IRCApi client = EasyMock.createMock(IRCApi.class);
+        SendQueue queue = EasyMock.createMock(SendQueue.class);
+        Capture<Runnable> task = new Capture<Runnable>();
         EasyMock.expect(connection.getClient()).andReturn(client);
+        EasyMock.expect(connection.getSendQueue()).andReturn(queue);
+        queue.send(EasyMock.eq(SendQueue.Priority.CONTROL),
+            EasyMock.capture(task));
+        EasyMock.expectLastCall();
         client.joinChannel(EasyMock.eq("#test"), EasyMock.eq(""));
         EasyMock.expectLastCall();
-        EasyMock.replay(connection, client);
+        EasyMock.replay(connection, client, queue);
 
         Join join = new Join(null, connection);
         join.execute("#test", "/join #test");
+        task.getValue().run();
+        EasyMock.verify(client, queue);
     }
 
     public void testJoinWithChannelWithPassword()
     {
         IrcConnection connection = EasyMock.createMock(IrcConnection.class);
         IRCApi client = EasyMock.createMock(IRCApi.class);
+        SendQueue queue = EasyMock.createMock(SendQueue.class);
+        Capture<Runnable> task = new Capture<Runnable>();
         EasyMock.expect(connection.getClient()).andReturn(client);
+        EasyMock.expect(connection.getSendQueue()).andReturn(queue);
+        queue.send(EasyMock.eq(SendQueue.Priority.CONTROL),
+            EasyMock.capture(task));
+        EasyMock.expectLastCall();
         client.joinChannel(EasyMock.eq("#test"), EasyMock.eq("top-secret"));
         EasyMock.expectLastCall();
-        EasyMock.replay(connection, client);
+        EasyMock.replay(connection, client, queue);
 
         Join join = new Join(null, connection);
         join.execute("#test", "/join #test top-secret");
+        task.getValue().run();
+        EasyMock.verify(client, queue);
     }
 }
@@ -89,12 +89,20 @@ public void testSendMessage()
         ProtocolProviderServiceIrcImpl provider = EasyMock.createMock(ProtocolProviderServiceIrcImpl.class);
         IrcConnection connection = EasyMock.createMock(IrcConnection.class);
         IRCApi client = EasyMock.createMock(IRCApi.class);
+        SendQueue queue = EasyMock.createMock(SendQueue.class);
+        Capture<Runnable> task = new Capture<Runnable>();
         EasyMock.expect(connection.getClient()).andReturn(client);
+        EasyMock.expect(connection.getSendQueue()).andReturn(queue);
+        queue.send(EasyMock.eq(SendQueue.Priority.USER),
+            EasyMock.capture(task));
+        EasyMock.expectLastCall();
         client.act(EasyMock.eq("#test"), EasyMock.eq("says hello world!"));
         EasyMock.expectLastCall();
-        EasyMock.replay(provider, connection, client);
+        EasyMock.replay(provider, connection, client, queue);
 
         Me me = new Me(provider, connection);
         me.execute("#test", "/me says hello world!");
+        task.getValue().run();
+        EasyMock.verify(client, queue);
     }
 }
@@ -102,12 +102,20 @@ public void testCorrectModeCommand()
     {
         IrcConnection connection = EasyMock.createMock(IrcConnection.class);
         IRCApi client = EasyMock.createMock(IRCApi.class);
+        SendQueue queue = EasyMock.createMock(SendQueue.class);
+        Capture<Runnable> task = new Capture<Runnable>();
         EasyMock.expect(connection.getClient()).andReturn(client);
+        EasyMock.expect(connection.getSendQueue()).andReturn(queue);
+        queue.send(EasyMock.eq(SendQueue.Priority.CONTROL),
+            EasyMock.capture(task));
+        EasyMock.expectLastCall();
         client.changeMode(EasyMock.eq("#test +o ThaDud3"));
         EasyMock.expectLastCall();
-        EasyMock.replay(connection, client);
+        EasyMock.replay(connection, client, queue);
 
         Mode mode = new Mode(null, connection);
         mode.execute("#test", "/mode +o ThaDud3");
+        task.getValue().run();
+        EasyMock.verify(client, queue);
     }
 }
@@ -127,12 +127,20 @@ public void testPrivateMessage()
         ProtocolProviderServiceIrcImpl provider = EasyMock.createMock(ProtocolProviderServiceIrcImpl.class);
         IrcConnection connection = EasyMock.createMock(IrcConnection.class);
         IRCApi client = EasyMock.createMock(IRCApi.class);
+        SendQueue queue = EasyMock.createMock(SendQueue.class);
+        Capture<Runnable> task = new Capture<Runnable>();
         EasyMock.expect(connection.getClient()).andReturn(client);
+        EasyMock.expect(connection.getSendQueue()).andReturn(queue);
+        queue.send(EasyMock.eq(SendQueue.Priority.USER),
+            EasyMock.capture(task));
+        EasyMock.expectLastCall();
         client.message(EasyMock.eq("target"), EasyMock.eq("This is my target message."));
         EasyMock.expectLastCall();
-        EasyMock.replay(provider, connection);
+        EasyMock.replay(provider, connection, client, queue);
 
         Msg msg = new Msg(provider, connection);
         msg.execute("#test", "/msg target This is my target message.");
+        task.getValue().run();
+        EasyMock.verify(client, queue);
     }
 }
@@ -0,0 +1,192 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.notification;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+/**
+ * Tests the coalescing and the rate limiting of the notifications.
+ */
+public class NotificationThrottleTest
+    extends TestCase
+{
+    private final NotificationAction popup
+        = new PopupMessageNotificationAction(null);
+
+    private final NotificationAction sound
+        = new SoundNotificationAction("sound", -1);
+
+    private final List<NotificationAction> actions
+        = Arrays.asList(popup, sound);
+
+    private final BlockingQueue<Fired> fired
+        = new LinkedBlockingQueue<Fired>();
+
+    private final NotificationThrottle.Sink sink
+        = new NotificationThrottle.Sink()
+        {
+            public void fire(
+                    NotificationData data,
+                    List<NotificationAction> actions)
+            {
+                fired.add(new Fired(data, actions));
+            }
+        };
+
+    private Timer timer;
+
+    @Override
+    protected void setUp()
+    {
+        timer = new Timer(true);
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        timer.cancel();
+    }
+
+    public void testNotificationsOfASourceAreCoalesced()
+        throws Exception
+    {
+        NotificationThrottle throttle
+            = new NotificationThrottle(
+                    new NotificationThrottlePolicy(300, "{0} new: {2}"),
+                    sink,
+                    timer);
+
+        for (int i = 1; i <= 5; i++)
+            throttle.fire(data("room1", "m" + i), actions);
+        throttle.fire(data("room2", "other"), actions);
+
+        // the first notification of each source goes through right away
+        Assert.assertEquals("m1", poll(0).data.getMessage());
+        Assert.assertEquals("other", poll(0).data.getMessage());
+        Assert.assertNull(fired.poll());
+
+        // the held notifications are replaced by a single one
+        Fired coalesced = poll(2000);
+
+        Assert.assertEquals("4 new: m5", coalesced.data.getMessage());
+        Assert.assertEquals("title", coalesced.data.getTitle());
+        Assert.assertEquals(
+            "room1",
+            coalesced.data.getExtra(
+                    NotificationData.POPUP_MESSAGE_HANDLER_TAG_EXTRA));
+        Assert.assertEquals(actions, coalesced.actions);
+        Assert.assertEquals(4, throttle.getCoalescedCount());
+        Assert.assertEquals(3, throttle.getSupersededCount());
+
+        // a single held notification keeps its message
+        throttle.fire(data("room1", "m6"), Arrays.asList(sound));
+        Fired single = poll(2000);
+
+        Assert.assertEquals("m6", single.data.getMessage());
+        Assert.assertEquals(Arrays.asList(sound), single.actions);
+
+        // the window closes once nothing was held during it
+        Thread.sleep(700);
+        throttle.fire(data("room1", "m7"), actions);
+        Assert.assertEquals("m7", poll(0).data.getMessage());
+    }
+
+    public void testActionsOfHeldNotificationsAreMerged()
+        throws Exception
+    {
+        NotificationThrottle throttle
+            = new NotificationThrottle(
+                    new NotificationThrottlePolicy(200, null),
+                    sink,
+                    timer);
+
+        throttle.fire(data("chat", "m1"), actions);
+        throttle.fire(data("chat", "m2"), Arrays.asList(popup));
+        throttle.fire(data("chat", "m3"), Arrays.asList(sound));
+        poll(0);
+
+        Fired coalesced = poll(2000);
+
+        Assert.assertEquals("m3", coalesced.data.getMessage());
+        Assert.assertEquals(actions, coalesced.actions);
+    }
+
+    public void testActionsAreRateLimited()
+    {
+        NotificationThrottlePolicy policy
+            = new NotificationThrottlePolicy(0, null);
+
+        policy.setRateLimit(NotificationAction.ACTION_SOUND, 2, 60000);
+
+        NotificationThrottle throttle
+            = new NotificationThrottle(policy, sink, timer);
+
+        for (int i = 0; i < 5; i++)
+            throttle.fire(data("room" + i, "m" + i), actions);
+
+        int popups = 0;
+        int sounds = 0;
+        Fired f;
+
+        while ((f = fired.poll()) != null)
+        {
+            if (f.actions.contains(popup))
+                popups++;
+            if (f.actions.contains(sound))
+                sounds++;
+        }
+        Assert.assertEquals(5, popups);
+        Assert.assertEquals(2, sounds);
+        Assert.assertEquals(3, throttle.getRateLimitedCount());
+    }
+
+    private static NotificationData data(Object source, String message)
+    {
+        Map<String, Object> extras = new HashMap<String, Object>();
+
+        extras.put(NotificationData.POPUP_MESSAGE_HANDLER_TAG_EXTRA, source);
+        return
+            new NotificationData("IncomingMessage", "title", message, null,
+                    extras);
+    }
+
+    private Fired poll(long timeout)
+        throws InterruptedException
+    {
+        Fired f = fired.poll(timeout, TimeUnit.MILLISECONDS);
+
+        Assert.assertNotNull(f);
+        return f;
+    }
+
+    private static class Fired
+    {
+        final NotificationData data;
+
+        final List<NotificationAction> actions;
+
+        Fired(NotificationData data, List<NotificationAction> actions)
+        {
+            this.data = data;
+            this.actions = actions;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol;
+
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+/**
+ * Tests the order of the transform layers.
+ */
+public class OperationSetInstantMessageTransformImplTest
+    extends TestCase
+{
+    public void testLayersAreOrderedByPriority()
+    {
+        OperationSetInstantMessageTransformImpl opSet
+            = new OperationSetInstantMessageTransformImpl();
+        Layer a = new Layer("a");
+        Layer b = new Layer("b");
+        Layer c = new Layer("c");
+        Layer d = new Layer("d");
+
+        opSet.addTransformLayer(5, a);
+        opSet.addTransformLayer(b);
+        opSet.addTransformLayer(5, c);
+        opSet.addTransformLayer(0, d);
+
+        Assert.assertEquals(Arrays.asList(d, b, a, c), layers(opSet));
+        Assert.assertTrue(opSet.containsLayer(a));
+
+        opSet.removeTransformLayer(a);
+        Assert.assertEquals(Arrays.asList(d, b, c), layers(opSet));
+        Assert.assertFalse(opSet.containsLayer(a));
+    }
+
+    public void testSnapshotsAreNotModified()
+    {
+        OperationSetInstantMessageTransformImpl opSet
+            = new OperationSetInstantMessageTransformImpl();
+        Layer a = new Layer("a");
+
+        opSet.addTransformLayer(a);
+
+        OperationSetInstantMessageTransformImpl.Layer[] snapshot
+            = opSet.getLayers();
+
+        opSet.addTransformLayer(new Layer("b"));
+        opSet.removeTransformLayer(a);
+
+        Assert.assertEquals(1, snapshot.length);
+        Assert.assertSame(a, snapshot[0].transformLayer);
+        Assert.assertEquals(1, opSet.getLayers().length);
+    }
+
+    private static List<TransformLayer> layers(
+            OperationSetInstantMessageTransformImpl opSet)
+    {
+        List<TransformLayer> layers = new ArrayList<TransformLayer>();
+
+        for (OperationSetInstantMessageTransformImpl.Layer layer
+                : opSet.getLayers())
+        {
+            layers.add(layer.transformLayer);
+        }
+        return layers;
+    }
+
+    private static class Layer
+        implements TransformLayer
+    {
+        private final String name;
+
+        Layer(String name)
+        {
+            this.name = name;
+        }
+
+        public MessageReceivedEvent messageReceived(MessageReceivedEvent evt)
+        {
+            return evt;
+        }
+
+        public MessageDeliveredEvent[] messageDeliveryPending(
+                MessageDeliveredEvent evt)
+        {
+            return new MessageDeliveredEvent[] { evt };
+        }
+
+        public MessageDeliveredEvent messageDelivered(
+                MessageDeliveredEvent evt)
+        {
+            return evt;
+        }
+
+        public MessageDeliveryFailedEvent messageDeliveryFailed(
+                MessageDeliveryFailedEvent evt)
+        {
+            return evt;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+}
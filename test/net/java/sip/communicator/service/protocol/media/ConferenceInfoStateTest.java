@@ -0,0 +1,149 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Tests for the difference computation of conference states.
+ */
+public class ConferenceInfoStateTest
+    extends TestCase
+{
+    private static ConferenceInfoState.User user(final String entity,
+        final ConferenceInfoDocument.EndpointStatusType status,
+        final String srcId)
+    {
+        ConferenceInfoState.Media audio =
+            new ConferenceInfoState.Media("audio", "audio", srcId, "sendrecv");
+        ConferenceInfoState.Endpoint endpoint =
+            new ConferenceInfoState.Endpoint(entity, status,
+                Collections.singletonList(audio));
+        return new ConferenceInfoState.User(entity, entity.toUpperCase(),
+            Collections.singletonList(endpoint));
+    }
+
+    private static ConferenceInfoState state(
+        final ConferenceInfoState.User... users)
+    {
+        return new ConferenceInfoState("focus", users.length,
+            Arrays.asList(users));
+    }
+
+    private static ConferenceInfoState.User connected(final String entity)
+    {
+        return user(entity,
+            ConferenceInfoDocument.EndpointStatusType.connected, "1");
+    }
+
+    public void testUserLookup()
+    {
+        ConferenceInfoState state = state(connected("a"), connected("b"));
+        Assert.assertEquals("b", state.getUser("b").getEntity());
+        Assert.assertNull(state.getUser("c"));
+    }
+
+    public void testWithVersionAndSid()
+    {
+        ConferenceInfoState state = state(connected("a"));
+        ConferenceInfoState sent = state.withSid("sid").withVersion(3);
+        Assert.assertEquals(1, state.getVersion());
+        Assert.assertNull(state.getSid());
+        Assert.assertEquals(3, sent.getVersion());
+        Assert.assertEquals("sid", sent.getSid());
+        Assert.assertTrue(sent.matches(state));
+        Assert.assertNull(sent.diff(state));
+    }
+
+    public void testEqualStatesMatch()
+    {
+        ConferenceInfoState from = state(connected("a"), connected("b"));
+        ConferenceInfoState to = state(connected("a"), connected("b"));
+        Assert.assertTrue(to.matches(from));
+        Assert.assertNull(to.diff(from));
+    }
+
+    public void testEmptyStringsMatchNull()
+    {
+        ConferenceInfoState.Media a =
+            new ConferenceInfoState.Media("audio", "audio", "", "sendrecv");
+        ConferenceInfoState.Media b =
+            new ConferenceInfoState.Media("audio", "audio", null, "sendrecv");
+        Assert.assertEquals(a, b);
+    }
+
+    public void testChangedUserIsPartial()
+    {
+        ConferenceInfoState from = state(connected("a"), connected("b"));
+        ConferenceInfoState to = state(connected("a"),
+            user("b", ConferenceInfoDocument.EndpointStatusType.on_hold, "1"));
+        Assert.assertFalse(to.matches(from));
+        ConferenceInfoState.Diff diff = to.diff(from);
+        Assert.assertTrue(diff.isPartial());
+        Assert.assertEquals(1, diff.getChangedUsers().size());
+        Assert.assertEquals("b",
+            diff.getChangedUsers().iterator().next().getEntity());
+        Assert.assertTrue(diff.getDeletedUsers().isEmpty());
+    }
+
+    public void testRemovedUser()
+    {
+        ConferenceInfoState from =
+            state(connected("a"), connected("b"), connected("c"));
+        ConferenceInfoState to = state(connected("a"), connected("c"));
+        ConferenceInfoState.Diff diff = to.diff(from);
+        Assert.assertTrue(diff.isPartial());
+        Assert.assertEquals(Arrays.asList("b"), diff.getDeletedUsers());
+        Assert.assertTrue(diff.getChangedUsers().isEmpty());
+    }
+
+    public void testAllUsersChangedIsFull()
+    {
+        ConferenceInfoState from = state(connected("a"));
+        ConferenceInfoState to =
+            state(user("a", ConferenceInfoDocument.EndpointStatusType.connected,
+                "2"), connected("b"));
+        ConferenceInfoState.Diff diff = to.diff(from);
+        Assert.assertFalse(diff.isPartial());
+        Assert.assertEquals(2, diff.getChangedUsers().size());
+    }
+
+    public void testLargeConferenceSingleChange()
+    {
+        List<ConferenceInfoState.User> fromUsers =
+            new ArrayList<ConferenceInfoState.User>();
+        List<ConferenceInfoState.User> toUsers =
+            new ArrayList<ConferenceInfoState.User>();
+        for (int i = 0; i < 200; i++)
+        {
+            fromUsers.add(connected("user" + i));
+            toUsers.add(i == 100
+                ? user("user" + i,
+                    ConferenceInfoDocument.EndpointStatusType.on_hold, "1")
+                : connected("user" + i));
+        }
+        ConferenceInfoState from =
+            new ConferenceInfoState("focus", 200, fromUsers);
+        ConferenceInfoState to = new ConferenceInfoState("focus", 200, toUsers);
+        ConferenceInfoState.Diff diff = to.diff(from);
+        Assert.assertTrue(diff.isPartial());
+        Assert.assertEquals(1, diff.getChangedUsers().size());
+    }
+}
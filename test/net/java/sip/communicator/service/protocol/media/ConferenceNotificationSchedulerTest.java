@@ -0,0 +1,126 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+
+/**
+ * Tests for coalescing of conference notifications.
+ */
+public class ConferenceNotificationSchedulerTest
+    extends TestCase
+{
+    private ConferenceNotificationScheduler scheduler;
+
+    @Override
+    protected void setUp()
+    {
+        this.scheduler = new ConferenceNotificationScheduler(2);
+    }
+
+    public void testBurstIsCoalesced() throws Exception
+    {
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicInteger last = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 50; i++)
+        {
+            final int value = i;
+            this.scheduler.schedule("conference", new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    runs.incrementAndGet();
+                    last.set(value);
+                    done.countDown();
+                }
+            }, 100);
+        }
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        Assert.assertEquals(1, runs.get());
+        Assert.assertEquals("latest task executes", 49, last.get());
+        Assert.assertEquals(1, this.scheduler.getExecutedCount());
+        Assert.assertEquals(49, this.scheduler.getSuppressedCount());
+    }
+
+    public void testKeysAreIndependent() throws Exception
+    {
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable task = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                done.countDown();
+            }
+        };
+        Assert.assertTrue(this.scheduler.schedule("a", task, 0));
+        Assert.assertTrue(this.scheduler.schedule("b", task, 0));
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testRequestDuringRunIsNotLost() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch second = new CountDownLatch(1);
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        this.scheduler.schedule("peer", new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                maxConcurrent.set(concurrent.incrementAndGet());
+                started.countDown();
+                try
+                {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                concurrent.decrementAndGet();
+            }
+        }, 0);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(this.scheduler.schedule("peer", new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                maxConcurrent.set(
+                    Math.max(maxConcurrent.get(), concurrent.incrementAndGet()));
+                concurrent.decrementAndGet();
+                second.countDown();
+            }
+        }, 0));
+        Thread.sleep(100);
+        Assert.assertEquals("second run waits for the first", 1,
+            second.getCount());
+        release.countDown();
+        Assert.assertTrue(second.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, maxConcurrent.get());
+    }
+}
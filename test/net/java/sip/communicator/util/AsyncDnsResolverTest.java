@@ -0,0 +1,395 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+import org.xbill.DNS.*;
+
+/**
+ * Tests for the asynchronous resolver against a local stand-in DNS server.
+ */
+public class AsyncDnsResolverTest
+    extends TestCase
+{
+    /**
+     * The delay of every answer of the stand-in server in milliseconds.
+     */
+    private static final long ANSWER_DELAY = 400;
+
+    private DnsServer server;
+
+    private AsyncDnsResolver resolver;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        this.server = new DnsServer();
+        this.server.add(new ARecord(Name.fromString("host.test."),
+            DClass.IN, 60, InetAddress.getByName("192.0.2.1")));
+        this.server.add(new AAAARecord(Name.fromString("host.test."),
+            DClass.IN, 60, InetAddress.getByName("2001:db8::1")));
+        this.server.add(new ARecord(Name.fromString("other.test."),
+            DClass.IN, 60, InetAddress.getByName("192.0.2.2")));
+        this.server.add(new org.xbill.DNS.SRVRecord(
+            Name.fromString("_sip._udp.test."), DClass.IN, 60, 20, 0, 5060,
+            Name.fromString("other.test.")));
+        this.server.add(new org.xbill.DNS.SRVRecord(
+            Name.fromString("_sip._udp.test."), DClass.IN, 60, 10, 0, 5070,
+            Name.fromString("host.test.")));
+        this.server.add(new NAPTRRecord(Name.fromString("test."), DClass.IN,
+            60, 10, 0, "s", "SIP+D2U", "", Name.fromString("_sip._udp.test.")));
+        this.server.start();
+
+        SimpleResolver simple = new SimpleResolver("127.0.0.1");
+        simple.setPort(this.server.getPort());
+        simple.setTimeout(5);
+        this.resolver = new AsyncDnsResolver(simple, 4);
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        this.server.stop();
+    }
+
+    public void testAandAAAAQueriesAreConcurrent() throws Exception
+    {
+        long start = System.currentTimeMillis();
+        InetSocketAddress[] addresses = AsyncDnsResolver.get(
+            this.resolver.getAandAAAARecords("host.test.", 5060));
+        long duration = System.currentTimeMillis() - start;
+
+        Assert.assertEquals(2, addresses.length);
+        Assert.assertTrue(addresses[0].getAddress() instanceof Inet4Address);
+        Assert.assertTrue(addresses[1].getAddress() instanceof Inet6Address);
+        Assert.assertEquals("host.test.", addresses[0].getHostName());
+        Assert.assertEquals(5060, addresses[1].getPort());
+        Assert.assertTrue("queries ran sequentially: " + duration,
+            duration < 2 * ANSWER_DELAY);
+    }
+
+    public void testMissingFamily() throws Exception
+    {
+        InetSocketAddress[] addresses = AsyncDnsResolver.get(
+            this.resolver.getAandAAAARecords("other.test.", 5060));
+        Assert.assertEquals(1, addresses.length);
+        Assert.assertEquals("192.0.2.2",
+            addresses[0].getAddress().getHostAddress());
+    }
+
+    public void testLiteralIsNotLookedUp() throws Exception
+    {
+        Future<InetSocketAddress[]> future =
+            this.resolver.getAandAAAARecords("192.0.2.7", 5060);
+        Assert.assertTrue(future.isDone());
+        Assert.assertEquals(1, future.get().length);
+        Assert.assertEquals(0, this.server.getQueryCount());
+    }
+
+    public void testSRVTargetsAreResolvedConcurrently() throws Exception
+    {
+        net.java.sip.communicator.util.SRVRecord[] records =
+            AsyncDnsResolver.get(
+                this.resolver.getSRVRecords("sip", "udp", "test."));
+        Assert.assertEquals(2, records.length);
+        Assert.assertEquals("host.test.", records[0].getTarget());
+        Assert.assertEquals(5070, records[0].getPort());
+
+        long start = System.currentTimeMillis();
+        List<Future<InetSocketAddress[]>> targets =
+            this.resolver.getAandAAAARecords(records);
+        Assert.assertEquals(2,
+            AsyncDnsResolver.get(targets.get(0)).length);
+        Assert.assertEquals(1,
+            AsyncDnsResolver.get(targets.get(1)).length);
+        long duration = System.currentTimeMillis() - start;
+        Assert.assertTrue("targets resolved sequentially: " + duration,
+            duration < 2 * ANSWER_DELAY);
+    }
+
+    public void testNAPTR() throws Exception
+    {
+        String[][] records =
+            AsyncDnsResolver.get(this.resolver.getNAPTRRecords("test."));
+        Assert.assertEquals(1, records.length);
+        Assert.assertEquals("UDP", records[0][1]);
+        Assert.assertEquals("_sip._udp.test", records[0][2]);
+    }
+
+    public void testNoRecords() throws Exception
+    {
+        Assert.assertNull(AsyncDnsResolver.get(
+            this.resolver.getSRVRecords("sip", "tcp", "test.")));
+        Assert.assertEquals(0, AsyncDnsResolver.get(
+            this.resolver.getAandAAAARecords("missing.test.", 5060)).length);
+    }
+
+    public void testSynchronousResolution() throws Exception
+    {
+        long start = System.currentTimeMillis();
+        InetSocketAddress[] addresses =
+            this.resolver.resolveAandAAAARecords("host.test.", 5060);
+        long duration = System.currentTimeMillis() - start;
+
+        Assert.assertEquals(2, addresses.length);
+        Assert.assertTrue(addresses[0].getAddress() instanceof Inet4Address);
+        Assert.assertTrue(addresses[1].getAddress() instanceof Inet6Address);
+        Assert.assertTrue("queries ran sequentially: " + duration,
+            duration < 2 * ANSWER_DELAY);
+    }
+
+    public void testFullQueueRunsLookupInCaller() throws Exception
+    {
+        SimpleResolver simple = new SimpleResolver("127.0.0.1");
+        simple.setPort(this.server.getPort());
+        simple.setTimeout(5);
+        AsyncDnsResolver bounded = new AsyncDnsResolver(simple, 1, 1);
+
+        // the A lookup occupies the thread and the AAAA lookup the queue
+        Future<InetSocketAddress[]> pending =
+            bounded.getAandAAAARecords("host.test.", 5060);
+        long start = System.currentTimeMillis();
+        Future<String[][]> naptr = bounded.getNAPTRRecords("test.");
+        long duration = System.currentTimeMillis() - start;
+
+        Assert.assertTrue(naptr.isDone());
+        Assert.assertTrue("lookup was queued: " + duration,
+            duration >= ANSWER_DELAY / 2);
+        Assert.assertEquals(1, AsyncDnsResolver.get(naptr).length);
+        Assert.assertEquals(2, AsyncDnsResolver.get(pending).length);
+    }
+
+    public void testInterleave() throws Exception
+    {
+        InetSocketAddress a1 = address("192.0.2.1");
+        InetSocketAddress a2 = address("192.0.2.2");
+        InetSocketAddress a3 = address("192.0.2.3");
+        InetSocketAddress b1 = address("2001:db8::1");
+        InetSocketAddress b2 = address("2001:db8::2");
+        Assert.assertEquals(Arrays.asList(b1, a1, b2, a2, a3),
+            Arrays.asList(AsyncDnsResolver.interleave(
+                new InetSocketAddress[] { b1, b2, a1, a2, a3 })));
+        Assert.assertEquals(Arrays.asList(a1, b1, a2),
+            Arrays.asList(AsyncDnsResolver.interleave(
+                new InetSocketAddress[] { a1, a2, b1 })));
+    }
+
+    public void testConnectSkipsUnreachableAddress() throws Exception
+    {
+        ServerSocket listening =
+            new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        InetSocketAddress refused = refusedAddress();
+        try
+        {
+            Socket socket = this.resolver.connect(new InetSocketAddress[] {
+                refused,
+                (InetSocketAddress) listening.getLocalSocketAddress()
+            }, 2000);
+            Assert.assertTrue(socket.isConnected());
+            Assert.assertEquals(listening.getLocalPort(), socket.getPort());
+            socket.close();
+        }
+        finally
+        {
+            listening.close();
+        }
+    }
+
+    public void testPreferredAddressHasHeadStart() throws Exception
+    {
+        ServerSocket preferred =
+            new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        ServerSocket other =
+            new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        try
+        {
+            Socket socket = this.resolver.connect(new InetSocketAddress[] {
+                (InetSocketAddress) preferred.getLocalSocketAddress(),
+                (InetSocketAddress) other.getLocalSocketAddress()
+            }, 2000);
+            Assert.assertEquals(preferred.getLocalPort(), socket.getPort());
+            socket.close();
+
+            // the first attempt connected within the delay
+            other.setSoTimeout((int) (2 * AsyncDnsResolver
+                .CONNECTION_ATTEMPT_DELAY));
+            try
+            {
+                other.accept().close();
+                Assert.fail("the second address was attempted");
+            }
+            catch (SocketTimeoutException expected)
+            {
+            }
+        }
+        finally
+        {
+            preferred.close();
+            other.close();
+        }
+    }
+
+    public void testConnectFailsWhenAllAddressesFail() throws Exception
+    {
+        InetSocketAddress refused = refusedAddress();
+        try
+        {
+            this.resolver.connect(
+                new InetSocketAddress[] { refused, refused }, 2000);
+            Assert.fail("connected to a closed port");
+        }
+        catch (IOException expected)
+        {
+        }
+    }
+
+    private static InetSocketAddress address(String ip)
+        throws UnknownHostException
+    {
+        return new InetSocketAddress(InetAddress.getByName(ip), 5060);
+    }
+
+    /**
+     * Returns a local address on which no socket listens.
+     */
+    private static InetSocketAddress refusedAddress() throws IOException
+    {
+        ServerSocket closed =
+            new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        InetSocketAddress refused = (InetSocketAddress)
+            closed.getLocalSocketAddress();
+        closed.close();
+        return refused;
+    }
+
+    /**
+     * A minimal authoritative DNS server on the loopback interface which
+     * answers every query after {@link #ANSWER_DELAY}.
+     */
+    private static class DnsServer
+        implements Runnable
+    {
+        private final DatagramSocket socket;
+
+        private final List<Record> records = new ArrayList<Record>();
+
+        private final ExecutorService answers =
+            Executors.newCachedThreadPool();
+
+        private volatile int queries;
+
+        DnsServer() throws SocketException, UnknownHostException
+        {
+            this.socket =
+                new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        }
+
+        void add(Record record)
+        {
+            this.records.add(record);
+        }
+
+        int getPort()
+        {
+            return this.socket.getLocalPort();
+        }
+
+        int getQueryCount()
+        {
+            return this.queries;
+        }
+
+        void start()
+        {
+            Thread t = new Thread(this, "DnsServer");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        void stop()
+        {
+            this.socket.close();
+            this.answers.shutdownNow();
+        }
+
+        public void run()
+        {
+            while (!this.socket.isClosed())
+            {
+                final DatagramPacket packet =
+                    new DatagramPacket(new byte[512], 512);
+                try
+                {
+                    this.socket.receive(packet);
+                }
+                catch (IOException e)
+                {
+                    return;
+                }
+                this.queries++;
+                this.answers.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        answer(packet);
+                    }
+                });
+            }
+        }
+
+        private void answer(DatagramPacket packet)
+        {
+            try
+            {
+                Message query = new Message(Arrays.copyOf(
+                    packet.getData(), packet.getLength()));
+                Record question = query.getQuestion();
+                Message response = new Message(query.getHeader().getID());
+                response.getHeader().setFlag(Flags.QR);
+                response.getHeader().setFlag(Flags.AA);
+                response.addRecord(question, Section.QUESTION);
+                boolean known = false;
+                for (Record r : this.records)
+                {
+                    if (!r.getName().equals(question.getName()))
+                        continue;
+                    known = true;
+                    if (r.getType() == question.getType())
+                        response.addRecord(r, Section.ANSWER);
+                }
+                if (!known)
+                    response.getHeader().setRcode(Rcode.NXDOMAIN);
+
+                Thread.sleep(ANSWER_DELAY);
+                byte[] data = response.toWire();
+                this.socket.send(new DatagramPacket(data, data.length,
+                    packet.getSocketAddress()));
+            }
+            catch (Exception e)
+            {
+                // the test fails on the timeout of the resolver
+            }
+        }
+    }
+}
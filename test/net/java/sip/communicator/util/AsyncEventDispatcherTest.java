@@ -0,0 +1,286 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+/**
+ * Tests the ordering, the isolation of the listeners and the overflow
+ * policies of the asynchronous event dispatcher.
+ */
+public class AsyncEventDispatcherTest
+    extends TestCase
+{
+    private static final AsyncEventDispatcher.Delivery<Listener, Integer>
+        DELIVERY
+            = new AsyncEventDispatcher.Delivery<Listener, Integer>()
+            {
+                public void deliver(Listener listener, Integer event)
+                {
+                    listener.received(event);
+                }
+            };
+
+    private ExecutorService pool;
+
+    @Override
+    protected void setUp()
+    {
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        pool.shutdownNow();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    public void testEventsOfASourceAreDeliveredInOrder()
+        throws Exception
+    {
+        AsyncEventDispatcher dispatcher
+            = new AsyncEventDispatcher(pool, 10000, 1000);
+        final int events = 1000;
+        List<Listener> listeners = new ArrayList<Listener>();
+
+        for (int i = 0; i < 3; i++)
+            listeners.add(new Listener(2 * events));
+        for (int i = 0; i < events; i++)
+        {
+            dispatcher.dispatch(
+                    "source1",
+                    listeners,
+                    i,
+                    DELIVERY,
+                    AsyncEventDispatcher.Overflow.BLOCK);
+            dispatcher.dispatch(
+                    "source2",
+                    listeners,
+                    events + i,
+                    DELIVERY,
+                    AsyncEventDispatcher.Overflow.BLOCK);
+        }
+
+        for (Listener listener : listeners)
+        {
+            Assert.assertTrue(listener.await());
+
+            int last1 = -1;
+            int last2 = events - 1;
+
+            for (int event : listener.events)
+            {
+                if (event < events)
+                {
+                    Assert.assertEquals(last1 + 1, event);
+                    last1 = event;
+                }
+                else
+                {
+                    Assert.assertEquals(last2 + 1, event);
+                    last2 = event;
+                }
+            }
+        }
+    }
+
+    public void testSlowListenerDoesNotHoldUpTheOthers()
+        throws Exception
+    {
+        AsyncEventDispatcher dispatcher
+            = new AsyncEventDispatcher(pool, 100, 1000);
+        final CountDownLatch release = new CountDownLatch(1);
+        Listener slow
+            = new Listener(1)
+            {
+                @Override
+                void received(int event)
+                {
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.received(event);
+                }
+            };
+        Listener fast = new Listener(1);
+
+        dispatcher.dispatch(
+                "source",
+                Arrays.asList(slow, fast),
+                1,
+                DELIVERY,
+                AsyncEventDispatcher.Overflow.BLOCK);
+
+        // neither the firing thread nor the fast listener wait for the slow
+        Assert.assertTrue(fast.await());
+        release.countDown();
+        Assert.assertTrue(slow.await());
+    }
+
+    public void testOverflow()
+        throws Exception
+    {
+        AsyncEventDispatcher dispatcher
+            = new AsyncEventDispatcher(pool, 2, 1000);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        Listener blocked
+            = new Listener(4)
+            {
+                @Override
+                void received(int event)
+                {
+                    started.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.received(event);
+                }
+            };
+        final List<Listener> listeners = Collections.singletonList(blocked);
+
+        dispatcher.dispatch(
+                "source",
+                listeners,
+                1,
+                DELIVERY,
+                AsyncEventDispatcher.Overflow.DROP);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= 4; i++)
+        {
+            dispatcher.dispatch(
+                    "source",
+                    listeners,
+                    i,
+                    DELIVERY,
+                    AsyncEventDispatcher.Overflow.DROP);
+        }
+
+        // the queue holds 2 events, the third one is dropped
+        Assert.assertTrue(
+            dispatcher.getStatistics().values().iterator().next()
+                .contains("dropped 1"));
+
+        final AsyncEventDispatcher d = dispatcher;
+        Thread firing
+            = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    d.dispatch(
+                            "source",
+                            listeners,
+                            5,
+                            DELIVERY,
+                            AsyncEventDispatcher.Overflow.BLOCK);
+                }
+            };
+
+        firing.start();
+        firing.join(200);
+        // the firing thread waits for room in the queue
+        Assert.assertTrue(firing.isAlive());
+
+        release.countDown();
+        firing.join(5000);
+        Assert.assertFalse(firing.isAlive());
+        Assert.assertTrue(blocked.await());
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 5), blocked.events);
+    }
+
+    public void testFailingListenerDoesNotStopItsQueue()
+        throws Exception
+    {
+        AsyncEventDispatcher dispatcher
+            = new AsyncEventDispatcher(pool, 10, 1000);
+        Listener listener
+            = new Listener(1)
+            {
+                @Override
+                void received(int event)
+                {
+                    if (event == 1)
+                        throw new IllegalStateException("expected");
+                    super.received(event);
+                }
+            };
+        List<Listener> listeners = Collections.singletonList(listener);
+
+        dispatcher.dispatch(
+                "source",
+                listeners,
+                1,
+                DELIVERY,
+                AsyncEventDispatcher.Overflow.BLOCK);
+        dispatcher.dispatch(
+                "source",
+                listeners,
+                2,
+                DELIVERY,
+                AsyncEventDispatcher.Overflow.BLOCK);
+
+        Assert.assertTrue(listener.await());
+        Assert.assertEquals(Arrays.asList(2), listener.events);
+
+        // the queue is dropped once it is empty
+        for (int i = 0; dispatcher.getActiveQueueCount() != 0 && i < 50; i++)
+            Thread.sleep(10);
+        Assert.assertEquals(0, dispatcher.getActiveQueueCount());
+    }
+
+    private static class Listener
+    {
+        final List<Integer> events
+            = Collections.synchronizedList(new ArrayList<Integer>());
+
+        private final CountDownLatch done;
+
+        Listener(int expected)
+        {
+            done = new CountDownLatch(expected);
+        }
+
+        void received(int event)
+        {
+            events.add(event);
+            done.countDown();
+        }
+
+        boolean await()
+            throws InterruptedException
+        {
+            return done.await(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.*;
+
+import junit.framework.*;
+
+/**
+ * Tests that the asynchronous file handler writes every queued record, in
+ * order, before it closes.
+ */
+public class FileHandlerTest
+    extends TestCase
+{
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        dir = File.createTempFile("filehandler", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+
+    public void testRecordsOfAllThreadsAreWrittenInOrder() throws Exception
+    {
+        final FileHandler handler
+            = new FileHandler(
+                    new File(dir, "test%g.log").getPath(), 0, 1);
+        final int threads = 4;
+        final int records = 2000;
+        Thread[] loggers = new Thread[threads];
+
+        handler.setFormatter(new ScLogFormatter());
+        handler.setLevel(Level.ALL);
+        for (int t = 0; t < threads; t++)
+        {
+            final int id = t;
+
+            loggers[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < records; i++)
+                    {
+                        LogRecord record
+                            = new LogRecord(
+                                    Level.WARNING,
+                                    "record " + id + " " + i);
+
+                        record.setLoggerName(FileHandlerTest.class.getName());
+                        handler.publish(record);
+                    }
+                }
+            };
+            loggers[t].start();
+        }
+        for (Thread logger : loggers)
+            logger.join();
+        handler.close();
+
+        int[] next = new int[threads];
+        BufferedReader in
+            = new BufferedReader(
+                    new FileReader(new File(dir, "test0.log")));
+
+        try
+        {
+            String line;
+
+            while ((line = in.readLine()) != null)
+            {
+                int index = line.indexOf("record ");
+
+                if (index < 0)
+                    continue;
+
+                Scanner s = new Scanner(line.substring(index + 7));
+                int id = s.nextInt();
+
+                Assert.assertEquals(next[id]++, s.nextInt());
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        // warnings are never dropped
+        for (int t = 0; t < threads; t++)
+            Assert.assertEquals(records, next[t]);
+        Assert.assertEquals(0, handler.getDroppedRecordCount());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+/**
+ * Tests the ordering of the tasks of a key and the parallelism of the tasks
+ * of different keys in the keyed serial executor.
+ */
+public class KeyedSerialExecutorTest
+    extends TestCase
+{
+    private ExecutorService pool;
+
+    @Override
+    protected void setUp()
+    {
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        pool.shutdownNow();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    public void testTasksOfAKeyRunInOrder()
+        throws Exception
+    {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor(pool);
+        final int keys = 8;
+        final int tasks = 500;
+        final List<List<Integer>> runs = new ArrayList<List<Integer>>();
+        final CountDownLatch done = new CountDownLatch(keys * tasks);
+
+        for (int k = 0; k < keys; k++)
+            runs.add(Collections.synchronizedList(new ArrayList<Integer>()));
+
+        for (int i = 0; i < tasks; i++)
+        {
+            for (int k = 0; k < keys; k++)
+            {
+                final List<Integer> run = runs.get(k);
+                final int task = i;
+
+                executor.execute(
+                        "key" + k,
+                        new Runnable()
+                        {
+                            public void run()
+                            {
+                                run.add(task);
+                                done.countDown();
+                            }
+                        });
+            }
+        }
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (List<Integer> run : runs)
+        {
+            Assert.assertEquals(tasks, run.size());
+            for (int i = 0; i < tasks; i++)
+                Assert.assertEquals(i, (int) run.get(i));
+        }
+    }
+
+    public void testKeysRunInParallel()
+        throws Exception
+    {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor(pool);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute(
+                "slow",
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            blocked.await();
+                        }
+                        catch (InterruptedException ie)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+        executor.execute(
+                "fast",
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        done.countDown();
+                    }
+                });
+
+        // the fast key is not stuck behind the slow one
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        blocked.countDown();
+    }
+
+    public void testFailingTaskDoesNotStopTheKey()
+        throws Exception
+    {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor(pool);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute(
+                "key",
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        throw new IllegalStateException("expected");
+                    }
+                });
+        executor.execute(
+                "key",
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        done.countDown();
+                    }
+                });
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        // the queue of the key is dropped once it is empty
+        for (int i = 0; executor.getActiveKeyCount() != 0 && i < 50; i++)
+            Thread.sleep(10);
+        Assert.assertEquals(0, executor.getActiveKeyCount());
+    }
+}
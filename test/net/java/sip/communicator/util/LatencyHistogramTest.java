@@ -0,0 +1,72 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+/**
+ * Tests the percentiles of the latency histogram.
+ */
+public class LatencyHistogramTest
+    extends TestCase
+{
+    public void testEmpty()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMeanMicros());
+        Assert.assertEquals(0, histogram.getPercentileMicros(99));
+    }
+
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // 90 fast durations and 10 slow ones
+        for (int i = 0; i < 90; i++)
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        for (int i = 0; i < 10; i++)
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(50000, histogram.getMaxMicros());
+        Assert.assertEquals(5090, histogram.getMeanMicros());
+
+        // within a factor of two of the durations
+        Assert.assertEquals(128, histogram.getPercentileMicros(50));
+        Assert.assertEquals(128, histogram.getPercentileMicros(90));
+        Assert.assertEquals(50000, histogram.getPercentileMicros(99));
+    }
+
+    public void testHugeDurationsAreCapped()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(TimeUnit.DAYS.toNanos(1));
+        histogram.record(-1);
+
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(1, histogram.getPercentileMicros(50));
+        Assert.assertEquals(
+            TimeUnit.DAYS.toMicros(1),
+            histogram.getPercentileMicros(100));
+    }
+}
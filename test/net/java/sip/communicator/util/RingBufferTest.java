@@ -0,0 +1,170 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+
+/**
+ * Tests for the ordering, bounds and concurrent use of the lock-free ring
+ * buffer.
+ */
+public class RingBufferTest
+    extends TestCase
+{
+    public void testCapacityIsRoundedUpToPowerOfTwo()
+    {
+        Assert.assertEquals(1024, new RingBuffer<Object>(1000)
+            .getCapacity());
+        Assert.assertEquals(8, new RingBuffer<Object>(8).getCapacity());
+    }
+
+    public void testElementsArePolledInOrder()
+    {
+        RingBuffer<Integer> queue = new RingBuffer<Integer>(4);
+
+        // wrap around the ring a few times
+        for (int round = 0; round < 3; round++)
+        {
+            for (int i = 0; i < 4; i++)
+                Assert.assertTrue(queue.offer(round * 4 + i));
+            for (int i = 0; i < 4; i++)
+                Assert.assertEquals(round * 4 + i, (int) queue.poll());
+            Assert.assertNull(queue.poll());
+            Assert.assertTrue(queue.isEmpty());
+        }
+    }
+
+    public void testFullQueueRejects()
+    {
+        RingBuffer<Integer> queue = new RingBuffer<Integer>(2);
+
+        Assert.assertTrue(queue.offer(1));
+        Assert.assertTrue(queue.offer(2));
+        Assert.assertFalse(queue.offer(3));
+        Assert.assertFalse(queue.offer(4));
+
+        Integer[] batch = new Integer[8];
+        Assert.assertEquals(2, queue.drainTo(batch));
+        Assert.assertEquals(1, (int) batch[0]);
+        Assert.assertEquals(2, (int) batch[1]);
+        Assert.assertTrue(queue.offer(5));
+    }
+
+    public void testAwaitReturnsWhenElementIsOffered() throws Exception
+    {
+        final RingBuffer<Integer> queue
+            = new RingBuffer<Integer>(4);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            executor.submit(new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    Thread.sleep(50);
+                    queue.offer(1);
+                    return null;
+                }
+            });
+
+            long start = System.currentTimeMillis();
+            while (queue.isEmpty()
+                && System.currentTimeMillis() - start < 10000)
+            {
+                queue.await(10000);
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+            Assert.assertEquals(1, (int) queue.poll());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Offers elements from several producers while a consumer drains them and
+     * checks that every element is either received once or rejected, and that each producer's elements keep their order.
+     */
+    public void testConcurrentProducers() throws Exception
+    {
+        final RingBuffer<long[]> queue
+            = new RingBuffer<long[]>(256);
+        final int producers = 4;
+        final int perProducer = 50000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        final CountDownLatch done = new CountDownLatch(producers);
+        final AtomicLong dropped = new AtomicLong();
+
+        try
+        {
+            for (int p = 0; p < producers; p++)
+            {
+                final int producer = p;
+                executor.submit(new Runnable()
+                {
+                    public void run()
+                    {
+                        for (int i = 0; i < perProducer; i++)
+                        {
+                            if (!queue.offer(new long[] { producer, i }))
+                                dropped.incrementAndGet();
+                        }
+                        done.countDown();
+                    }
+                });
+            }
+
+            long[] last = new long[producers];
+            Arrays.fill(last, -1);
+            long received = 0;
+            long[][] batch = new long[64][];
+
+            while (true)
+            {
+                int count = queue.drainTo(batch);
+                for (int i = 0; i < count; i++)
+                {
+                    int producer = (int) batch[i][0];
+                    Assert.assertTrue(batch[i][1] > last[producer]);
+                    last[producer] = batch[i][1];
+                }
+                received += count;
+                if (count == 0)
+                {
+                    if (done.getCount() == 0 && queue.isEmpty())
+                        break;
+                    queue.await(10);
+                }
+            }
+
+            Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals((long) producers * perProducer,
+                received + dropped.get());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.util;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import junit.framework.*;
+
+import org.osgi.framework.*;
+
+/**
+ * Tests that the service cache answers repeated lookups without going
+ * through the registry, follows the registrations of the services and
+ * forgets about the bundles which stop.
+ */
+public class ServiceCacheTest
+    extends TestCase
+{
+    public void testLookupsDoNotGoThroughTheRegistry()
+    {
+        FakeBundle bundle = new FakeBundle();
+
+        bundle.register(Runnable.class, "first");
+        for (int i = 0; i < 10; i++)
+        {
+            Assert.assertEquals(
+                "first",
+                ServiceCache.getService(bundle.context, Runnable.class));
+        }
+        Assert.assertEquals(1, bundle.registryLookups);
+        Assert.assertEquals(
+            Long.valueOf(10),
+            ServiceCache.getLookupCounts().get(Runnable.class.getName()));
+        bundle.stop();
+    }
+
+    public void testRegistrationsAreFollowed()
+    {
+        FakeBundle bundle = new FakeBundle();
+
+        Assert.assertNull(
+            ServiceCache.getService(bundle.context, Runnable.class));
+
+        ServiceReference<?> first = bundle.register(Runnable.class, "first");
+
+        Assert.assertEquals(
+            "first",
+            ServiceCache.getService(bundle.context, Runnable.class));
+
+        bundle.unregister(first);
+        Assert.assertNull(
+            ServiceCache.getService(bundle.context, Runnable.class));
+
+        bundle.register(Runnable.class, "second");
+        Assert.assertEquals(
+            "second",
+            ServiceCache.getService(bundle.context, Runnable.class));
+        Assert.assertEquals(1, bundle.registryLookups);
+        bundle.stop();
+    }
+
+    public void testStoppedBundlesAreNotCached()
+    {
+        FakeBundle bundle = new FakeBundle();
+
+        bundle.register(Runnable.class, "first");
+        ServiceCache.getService(bundle.context, Runnable.class);
+        bundle.stop();
+
+        Assert.assertTrue(bundle.serviceListeners.isEmpty());
+        Assert.assertTrue(bundle.bundleListeners.isEmpty());
+        Assert.assertNull(
+            ServiceCache.getLookupCounts().get(Runnable.class.getName()));
+
+        // the lookups during the stop of the bundle use the registry
+        Assert.assertEquals(
+            "first",
+            ServiceCache.getService(bundle.context, Runnable.class));
+        Assert.assertEquals(
+            "first",
+            ServiceCache.getService(bundle.context, Runnable.class));
+        Assert.assertEquals(3, bundle.registryLookups);
+        Assert.assertTrue(bundle.serviceListeners.isEmpty());
+    }
+
+    /**
+     * A bundle with a registry of its own, implementing the part of the
+     * framework API the <tt>ServiceTracker</tt>s use.
+     */
+    private static class FakeBundle
+        implements InvocationHandler
+    {
+        final BundleContext context = proxy(BundleContext.class, this);
+
+        final Bundle bundle = proxy(Bundle.class, this);
+
+        final List<ServiceReference<?>> references
+            = new ArrayList<ServiceReference<?>>();
+
+        final Map<ServiceReference<?>, Object> services
+            = new HashMap<ServiceReference<?>, Object>();
+
+        final List<ServiceListener> serviceListeners
+            = new ArrayList<ServiceListener>();
+
+        final List<BundleListener> bundleListeners
+            = new ArrayList<BundleListener>();
+
+        int state = Bundle.ACTIVE;
+
+        int registryLookups = 0;
+
+        long nextServiceId = 1;
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, InvocationHandler handler)
+        {
+            return
+                (T) Proxy.newProxyInstance(
+                        ServiceCacheTest.class.getClassLoader(),
+                        new Class<?>[] { type },
+                        handler);
+        }
+
+        ServiceReference<?> register(Class<?> type, Object service)
+        {
+            final Map<String, Object> properties
+                = new HashMap<String, Object>();
+
+            properties.put(
+                    Constants.OBJECTCLASS,
+                    new String[] { type.getName() });
+            properties.put(Constants.SERVICE_ID, nextServiceId++);
+
+            ServiceReference<?> reference
+                = proxy(
+                        ServiceReference.class,
+                        new InvocationHandler()
+                        {
+                            public Object invoke(
+                                    Object proxy,
+                                    Method method,
+                                    Object[] args)
+                            {
+                                String name = method.getName();
+
+                                if (name.equals("getProperty"))
+                                    return properties.get(args[0]);
+                                if (name.equals("equals"))
+                                    return proxy == args[0];
+                                if (name.equals("hashCode"))
+                                    return System.identityHashCode(proxy);
+                                return null;
+                            }
+                        });
+
+            references.add(reference);
+            services.put(reference, service);
+            fire(new ServiceEvent(ServiceEvent.REGISTERED, reference));
+            return reference;
+        }
+
+        void unregister(ServiceReference<?> reference)
+        {
+            fire(new ServiceEvent(ServiceEvent.UNREGISTERING, reference));
+            references.remove(reference);
+            services.remove(reference);
+        }
+
+        void stop()
+        {
+            state = Bundle.STOPPING;
+            for (BundleListener listener
+                    : new ArrayList<BundleListener>(bundleListeners))
+            {
+                listener.bundleChanged(
+                        new BundleEvent(BundleEvent.STOPPING, bundle));
+            }
+        }
+
+        private void fire(ServiceEvent event)
+        {
+            for (ServiceListener listener
+                    : new ArrayList<ServiceListener>(serviceListeners))
+            {
+                listener.serviceChanged(event);
+            }
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable
+        {
+            String name = method.getName();
+
+            if (name.equals("equals"))
+                return proxy == args[0];
+            if (name.equals("hashCode"))
+                return System.identityHashCode(proxy);
+            if (name.equals("getBundle"))
+                return bundle;
+            if (name.equals("getState"))
+                return state;
+            if (name.equals("createFilter"))
+                return FrameworkUtil.createFilter((String) args[0]);
+            if (name.equals("addServiceListener"))
+                serviceListeners.add((ServiceListener) args[0]);
+            else if (name.equals("removeServiceListener"))
+                serviceListeners.remove(args[0]);
+            else if (name.equals("addBundleListener"))
+                bundleListeners.add((BundleListener) args[0]);
+            else if (name.equals("removeBundleListener"))
+                bundleListeners.remove(args[0]);
+            else if (name.equals("getServiceReferences"))
+            {
+                registryLookups++;
+                return
+                    references.isEmpty()
+                        ? null
+                        : references.toArray(
+                                new ServiceReference<?>[references.size()]);
+            }
+            else if (name.equals("getServiceReference"))
+            {
+                registryLookups++;
+                return references.isEmpty() ? null : references.get(0);
+            }
+            else if (name.equals("getService"))
+                return services.get(args[0]);
+            else if (name.equals("ungetService"))
+                return services.containsKey(args[0]);
+            return null;
+        }
+    }
+}